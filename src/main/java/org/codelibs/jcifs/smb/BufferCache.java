@@ -17,6 +17,8 @@
  */
 package org.codelibs.jcifs.smb;
 
+import java.nio.ByteBuffer;
+
 /**
  * Internal API for managing reusable buffers
  *
@@ -40,4 +42,76 @@ public interface BufferCache {
      */
     void releaseBuffer(byte[] buf);
 
+    /**
+     * Gets a buffer of at least the given size
+     *
+     * @param minSize the minimum size of the buffer
+     * @return a buffer from the cache, or a new one
+     */
+    default byte[] getBuffer(final int minSize) {
+        final byte[] buf = getBuffer();
+        if (buf.length >= minSize) {
+            return buf;
+        }
+        releaseBuffer(buf, 0);
+        return new byte[minSize];
+    }
+
+    /**
+     * Return a buffer to the cache, only the given range was written to
+     *
+     * Only the dirty range needs to be cleared before the buffer is reused.
+     *
+     * @param buf the buffer to return to the cache for reuse
+     * @param dirtyLength number of bytes at the start of the buffer that may have been written to
+     */
+    default void releaseBuffer(final byte[] buf, final int dirtyLength) {
+        releaseBuffer(buf);
+    }
+
+    /**
+     * Gets a byte buffer of at least the given capacity
+     *
+     * Depending on the configuration the buffer may be a direct buffer. The buffer is cleared, its limit is the
+     * requested size.
+     *
+     * @param minSize the minimum capacity of the buffer
+     * @return a buffer from the cache, or a new one
+     */
+    default ByteBuffer getByteBuffer(final int minSize) {
+        return ByteBuffer.wrap(getBuffer(minSize), 0, minSize).slice();
+    }
+
+    /**
+     * Return a byte buffer obtained from {@link #getByteBuffer(int)} to the cache
+     *
+     * @param buf the buffer to return to the cache for reuse
+     */
+    default void releaseByteBuffer(final ByteBuffer buf) {
+        if (buf != null && buf.hasArray() && buf.arrayOffset() == 0) {
+            releaseBuffer(buf.array());
+        }
+    }
+
+    /**
+     * @return number of buffer requests served from the cache
+     */
+    default long getCacheHits() {
+        return 0;
+    }
+
+    /**
+     * @return number of buffer requests that required a new allocation
+     */
+    default long getCacheMisses() {
+        return 0;
+    }
+
+    /**
+     * @return total number of bytes allocated for new buffers
+     */
+    default long getAllocatedBytes() {
+        return 0;
+    }
+
 }
\ No newline at end of file
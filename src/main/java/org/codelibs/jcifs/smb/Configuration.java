@@ -224,6 +224,16 @@ public interface Configuration {
      */
     int getConnTimeout();
 
+    /**
+     * Property {@code jcifs.client.useVirtualThreads} (boolean, default false)
+     *
+     * Run the receive loop of each transport on a virtual thread instead of a dedicated platform thread.
+     * This is only effective on Java runtimes providing virtual threads, otherwise platform threads are used.
+     *
+     * @return whether to use virtual threads for transports
+     */
+    boolean isUseVirtualThreads();
+
     /**
      * Property {@code org.codelibs.jcifs.smb.impl.client.sessionTimeout} (int, default 35000)
      *
@@ -359,6 +369,35 @@ public interface Configuration {
      */
     List<ResolverType> getResolveOrder();
 
+    /**
+     * Property {@code jcifs.resolveParallel} (boolean, default false)
+     *
+     * If enabled all resolvers in {@link #getResolveOrder()} are queried at the same time and the first successful answer
+     * is used. Answers that are available at the same time are chosen by their position in the resolve order.
+     *
+     * @return whether to query the resolvers concurrently
+     */
+    boolean isResolveParallel();
+
+    /**
+     * Property {@code jcifs.resolveTimeout} in milliseconds (int, default 0)
+     *
+     * Only used when resolving in parallel, resolvers that did not answer within this time are abandoned.
+     *
+     * @return maximum time to wait for a resolver, 0 - wait until every resolver has answered or failed
+     */
+    int getResolveTimeout();
+
+    /**
+     * Property {@code jcifs.resolverTimeout} in milliseconds (int, default 10000)
+     *
+     * Only used when resolving in parallel, a resolver that has been running for this long is cancelled while the others
+     * may still answer.
+     *
+     * @return maximum time a single resolver may take, 0 - no limit
+     */
+    int getResolverTimeout();
+
     /**
      *
      * Property {@code org.codelibs.jcifs.smb.netbios.baddr} (string, default {@code 255.255.255.255})
@@ -433,6 +472,23 @@ public interface Configuration {
      */
     int getSessionLimit();
 
+    /**
+     * Property {@code jcifs.client.serverConnectionLimit} (int, default 0)
+     *
+     * Once a server has this many pooled connections, further requests share the least loaded compatible connection
+     * even if it exceeds the session limit. A new connection is still opened if none of the existing ones can be used.
+     *
+     * @return maximum number of pooled connections to a single server address and local binding, 0 for no limit
+     */
+    int getServerConnectionLimit();
+
+    /**
+     * Property {@code jcifs.client.transportSweepInterval} in milliseconds (int, default 30000)
+     *
+     * @return interval at which unused, unconnected transports are removed from the pool, 0 - never
+     */
+    int getTransportSweepInterval();
+
     /**
      *
      * Property {@code org.codelibs.jcifs.smb.encoding} (string, default {@code Cp850})
@@ -490,14 +546,41 @@ public interface Configuration {
     /**
      * Property {@code org.codelibs.jcifs.smb.impl.client.encryptionEnabled} (boolean, default false)
      *
-     * This is an experimental option allowing to indicate support during protocol
-     * negotiation, SMB encryption is not implemented yet.
+     * Indicate SMB3 encryption support during protocol negotiation. Messages are encrypted
+     * if the server requires encryption for the session or the share.
      *
      * @return whether SMB encryption is enabled
      * @since 2.1
      */
     boolean isEncryptionEnabled();
 
+    /**
+     * Property {@code jcifs.client.signingGmacEnabled} (boolean, default true)
+     *
+     * Offer AES-128-GMAC as the preferred SMB 3.1.1 signing algorithm in the signing capabilities negotiate context.
+     * AES-CMAC is still offered, and used if the server does not support GMAC.
+     *
+     * @return whether to offer AES-GMAC signing
+     */
+    boolean isSigningGmacEnabled();
+
+    /**
+     * Property {@code jcifs.client.compressionEnabled} (boolean, default false)
+     *
+     * Negotiate SMB 3.1.1 compression (plain LZ77 and Pattern_V1). When the server supports it, large writes are sent
+     * compressed and large reads request compressed responses.
+     *
+     * @return whether to negotiate compression
+     */
+    boolean isCompressionEnabled();
+
+    /**
+     * Property {@code jcifs.client.compressionThreshold} (int, default 4096)
+     *
+     * @return minimum data size of a read or write for compression to be attempted
+     */
+    int getCompressionThreshold();
+
     /**
      *
      * Property {@code org.codelibs.jcifs.smb.impl.client.forceExtendedSecurity} (boolean, default false)
@@ -564,6 +647,49 @@ public interface Configuration {
      */
     int getNetbiosCachePolicy();
 
+    /**
+     * Property {@code jcifs.netbios.cacheMaxSize} (int, default 4096)
+     *
+     * Once the limit is reached the least recently used names are evicted.
+     *
+     * @return maximum number of cached names, 0 for no limit
+     */
+    int getNetbiosCacheMaxSize();
+
+    /**
+     * Property {@code jcifs.netbios.negativeCachePolicy} in seconds (int, default 30)
+     *
+     * Failed lookups are remembered for this long, so that unresolvable names do not repeat the whole resolver sequence.
+     *
+     * @return negative cache timeout, in seconds, 0 - do not cache failures
+     */
+    int getNetbiosNegativeCachePolicy();
+
+    /**
+     * Property {@code jcifs.netbios.cacheRefreshAhead} in seconds (int, default 60)
+     *
+     * A cached name that is used within this time before it expires is resolved again in the background.
+     *
+     * @return refresh-ahead window, in seconds, 0 - disable background refresh
+     */
+    int getNetbiosCacheRefreshAhead();
+
+    /**
+     * Property {@code jcifs.sidCacheMaxSize} (int, default 10000)
+     *
+     * Once the limit is exceeded expired entries and then arbitrary entries are evicted.
+     *
+     * @return maximum number of cached SID names, 0 for no limit
+     */
+    int getSidCacheMaxSize();
+
+    /**
+     * Property {@code jcifs.sidCacheTtl} in seconds (int, default 3600)
+     *
+     * @return time to live, in seconds, for resolved SID names, 0 - never expire
+     */
+    int getSidCacheTtl();
+
     /**
      * Gets the maximum buffer size for IO operations
      *
@@ -583,10 +709,17 @@ public interface Configuration {
      *
      * Property {@code org.codelibs.jcifs.smb.impl.maxBuffers} (int, default 16)
      *
-     * @return number of buffers to keep in cache
+     * @return number of buffers to keep in cache for each buffer size class
      */
     int getBufferCacheSize();
 
+    /**
+     * Property {@code org.codelibs.jcifs.smb.impl.directBuffers} (boolean, default false)
+     *
+     * @return whether pooled {@link java.nio.ByteBuffer}s are allocated as direct buffers
+     */
+    boolean isUseDirectBuffers();
+
     /**
      *
      * Property {@code org.codelibs.jcifs.smb.impl.client.listCount} (int, default 200)
@@ -621,6 +754,28 @@ public interface Configuration {
      */
     boolean isIgnoreCopyToException();
 
+    /**
+     * Property {@code jcifs.client.recursiveOperationParallelism} (int, default 4)
+     *
+     * Number of files and directories processed concurrently by
+     * {@link org.codelibs.jcifs.smb.impl.SmbFile#copyTo(SmbResource, int, RecursiveOperationListener)} and
+     * {@link org.codelibs.jcifs.smb.impl.SmbFile#delete(int, RecursiveOperationListener)} when no explicit parallelism is
+     * given.
+     *
+     * @return default parallelism of recursive operations
+     */
+    int getRecursiveOperationParallelism();
+
+    /**
+     * Property {@code jcifs.client.copyChunkParallelism} (int, default 4)
+     *
+     * Number of server side copy (FSCTL_SRV_COPYCHUNK) requests kept in flight while copying a single large file. Each
+     * request copies up to the server's per request limit, usually 16 MiB. 1 sends one request at a time.
+     *
+     * @return maximum number of outstanding server side copy requests per file
+     */
+    int getCopyChunkParallelism();
+
     /**
      * Gets the batch limit for a specific SMB command
      *
@@ -646,6 +801,101 @@ public interface Configuration {
      */
     int getMaxRequestRetries();
 
+    /**
+     * Property {@code org.codelibs.jcifs.smb.impl.client.readAheadWindow} (int, default 0)
+     *
+     * Number of read requests to keep in flight when sequentially reading files over SMB2. Each request reads up to
+     * the negotiated maximum read size. Values below 2 disable read-ahead.
+     *
+     * @return number of pipelined read requests per input stream
+     */
+    int getReadAheadWindow();
+
+    /**
+     * Property {@code org.codelibs.jcifs.smb.impl.client.writeBehindWindow} (int, default 0)
+     *
+     * Number of write requests to keep in flight when writing files over SMB2. Write errors are reported on the next
+     * write, flush or close. Values below 2 disable write-behind.
+     *
+     * @return number of pipelined write requests per output stream
+     */
+    int getWriteBehindWindow();
+
+    /**
+     * Property {@code org.codelibs.jcifs.smb.impl.client.writeBehindMaxBytes} (int, default 1048576)
+     *
+     * @return maximum amount of data sent but not yet acknowledged per output stream when write-behind is enabled
+     */
+    int getWriteBehindMaxBytes();
+
+    /**
+     * Property {@code jcifs.client.randomAccessBufferSize} (int, default 0)
+     *
+     * Size of the blocks cached by a buffered {@link org.codelibs.jcifs.smb.impl.SmbRandomAccessFile}. Small reads are
+     * served from cached blocks, sequential access reads ahead several blocks at once and small writes are coalesced
+     * until the next seek, flush or close. 0 disables buffering.
+     *
+     * @return block size of the random access file cache in bytes
+     */
+    int getRandomAccessBufferSize();
+
+    /**
+     * Property {@code jcifs.client.randomAccessBufferBlocks} (int, default 16)
+     *
+     * @return maximum number of blocks cached per buffered random access file
+     */
+    int getRandomAccessBufferBlocks();
+
+    /**
+     * Property {@code org.codelibs.jcifs.smb.impl.client.useLeases} (boolean, default false)
+     *
+     * Request read/handle leases when opening files over SMB 3.x. While a lease is held, file attributes and the
+     * content of small files are served from a client side cache and idle handles are kept open. The cache is
+     * invalidated when the server breaks the lease.
+     *
+     * @return whether to use SMB3 leases
+     */
+    boolean isUseLeases();
+
+    /**
+     * Property {@code org.codelibs.jcifs.smb.impl.client.maxLeases} (int, default 1000)
+     *
+     * @return maximum number of leases (and cached files) tracked per server connection
+     */
+    int getMaxLeases();
+
+    /**
+     * Property {@code org.codelibs.jcifs.smb.impl.client.leaseTimeout} (int, default 30000)
+     *
+     * @return time in milliseconds an unused file handle is kept open while a handle caching lease is held
+     */
+    int getLeaseTimeout();
+
+    /**
+     * Property {@code org.codelibs.jcifs.smb.impl.client.leaseCacheMaxFileSize} (int, default 65536)
+     *
+     * @return maximum size of files whose content is cached while a read caching lease is held, 0 to disable
+     */
+    int getLeaseCacheMaxFileSize();
+
+    /**
+     * Property {@code org.codelibs.jcifs.smb.impl.client.useMultiChannel} (boolean, default false)
+     *
+     * Open additional connections to SMB 3.x servers supporting multichannel and bind authenticated sessions to them.
+     * Large read and write requests are then spread over all channels, a failing channel is dropped and its requests
+     * are retried on the primary connection.
+     *
+     * @return whether to use SMB3 multichannel
+     */
+    boolean isUseMultiChannel();
+
+    /**
+     * Property {@code org.codelibs.jcifs.smb.impl.client.maxChannels} (int, default 4)
+     *
+     * @return maximum number of channels per session when multichannel is enabled, including the primary connection
+     */
+    int getMaxChannels();
+
     /**
      * Property {@code org.codelibs.jcifs.smb.impl.client.strictResourceLifecycle} (bool, default false)
      *
@@ -67,4 +67,34 @@ public interface DfsResolver {
      */
     void cache(CIFSContext tc, String path, DfsReferralData dr);
 
-}
\ No newline at end of file
+    /**
+     * @return number of DFS referral requests sent by this resolver
+     */
+    default long getReferralRequestCount() {
+        return 0;
+    }
+
+    /**
+     * @return number of DFS referral requests that failed
+     */
+    default long getReferralFailureCount() {
+        return 0;
+    }
+
+    /**
+     * Divide by {@link #getReferralRequestCount()} for the average referral latency.
+     *
+     * @return total time spent on DFS referral requests, in nanoseconds
+     */
+    default long getReferralTimeNanos() {
+        return 0;
+    }
+
+    /**
+     * @return number of lookups that shared the result of an identical referral request already in flight
+     */
+    default long getCoalescedLookupCount() {
+        return 0;
+    }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb;
+
+/**
+ * Progress callback for recursive copy and delete operations
+ *
+ * Callbacks are invoked from the worker threads of the operation and may be called concurrently.
+ */
+public interface RecursiveOperationListener {
+
+    /**
+     * Called after a file or directory has been processed successfully
+     *
+     * @param path
+     *            URL of the processed resource
+     * @param directory
+     *            whether the resource is a directory
+     * @param bytes
+     *            number of bytes copied, 0 for deletions and directories
+     */
+    default void completed(final String path, final boolean directory, final long bytes) {
+    }
+
+    /**
+     * Called when processing a file or directory failed, the operation continues with the remaining entries
+     *
+     * @param path
+     *            URL of the resource
+     * @param error
+     *            the failure
+     */
+    default void failed(final String path, final CIFSException error) {
+    }
+}
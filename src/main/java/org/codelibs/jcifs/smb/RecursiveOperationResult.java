@@ -0,0 +1,53 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb;
+
+import java.util.Map;
+
+/**
+ * Outcome of a recursive copy or delete operation
+ */
+public interface RecursiveOperationResult {
+
+    /**
+     * @return number of files processed successfully
+     */
+    long getFileCount();
+
+    /**
+     * @return number of directories processed successfully
+     */
+    long getDirectoryCount();
+
+    /**
+     * @return number of bytes copied
+     */
+    long getByteCount();
+
+    /**
+     * @return failures keyed by resource URL
+     */
+    Map<String, CIFSException> getFailures();
+
+    /**
+     * @return whether all entries were processed successfully
+     */
+    default boolean isSuccessful() {
+        return getFailures().isEmpty();
+    }
+}
@@ -17,6 +17,9 @@
  */
 package org.codelibs.jcifs.smb;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Handle to an open file
  *
@@ -69,4 +72,103 @@ public interface SmbFileHandle extends AutoCloseable {
      */
     long getInitialSize();
 
-}
\ No newline at end of file
+    /**
+     * Read from the file at the given position without waiting for the data
+     *
+     * A single read request is sent, so fewer bytes than remaining in the buffer may be read. Once the returned future
+     * completes, the buffer position has been advanced by the number of bytes read. The buffer must not be accessed and
+     * the handle must stay open until then.
+     *
+     * The future is completed by the transport thread, dependent actions should not block.
+     *
+     * @param dst
+     *            buffer to read into
+     * @param position
+     *            file position to read from
+     * @return future completed with the number of bytes read, -1 if the position is at or beyond the end of the file
+     */
+    CompletableFuture<Integer> readAsync(ByteBuffer dst, long position);
+
+    /**
+     * Write to the file at the given position without waiting for the server to acknowledge the data
+     *
+     * A single write request is sent, so fewer bytes than remaining in the buffer may be written. Once the returned
+     * future completes, the buffer position has been advanced by the number of bytes written. The handle must stay open
+     * until then.
+     *
+     * The future is completed by the transport thread, dependent actions should not block.
+     *
+     * @param src
+     *            buffer holding the data to write
+     * @param position
+     *            file position to write at
+     * @return future completed with the number of bytes written
+     */
+    CompletableFuture<Integer> writeAsync(ByteBuffer src, long position);
+
+    /**
+     * Read from the file at the given position
+     *
+     * The buffer is split into requests of at most the negotiated read size which are all sent before waiting for the
+     * first response, so large reads are pipelined. The file pointer of other users of this handle is not involved,
+     * several threads may read different ranges of one handle concurrently.
+     *
+     * @param dst
+     *            buffer to read into, its position is advanced by the number of bytes read
+     * @param position
+     *            file position to read from
+     * @return number of bytes read, less than requested only at the end of the file, -1 if the position is at or beyond
+     *         the end of the file
+     * @throws CIFSException
+     *             if any of the reads fails
+     */
+    int read(ByteBuffer dst, long position) throws CIFSException;
+
+    /**
+     * Read a contiguous range of the file into a sequence of buffers
+     *
+     * Buffers are filled in order, see {@link #read(ByteBuffer, long)}.
+     *
+     * @param dsts
+     *            buffers to read into
+     * @param position
+     *            file position to read from
+     * @return number of bytes read, -1 if the position is at or beyond the end of the file
+     * @throws CIFSException
+     *             if any of the reads fails
+     */
+    long read(ByteBuffer[] dsts, long position) throws CIFSException;
+
+    /**
+     * Write to the file at the given position
+     *
+     * The buffer is split into requests of at most the negotiated write size which are all sent before waiting for the
+     * first response. The file pointer of other users of this handle is not involved, several threads may write
+     * different ranges of one handle concurrently.
+     *
+     * @param src
+     *            buffer holding the data to write, its position is advanced by the number of bytes written
+     * @param position
+     *            file position to write at
+     * @return number of bytes written
+     * @throws CIFSException
+     *             if any of the writes fails
+     */
+    int write(ByteBuffer src, long position) throws CIFSException;
+
+    /**
+     * Write the contents of a sequence of buffers to a contiguous range of the file
+     *
+     * Buffers are written in order, see {@link #write(ByteBuffer, long)}.
+     *
+     * @param srcs
+     *            buffers holding the data to write
+     * @param position
+     *            file position to write at
+     * @return number of bytes written
+     * @throws CIFSException
+     *             if any of the writes fails
+     */
+    long write(ByteBuffer[] srcs, long position) throws CIFSException;
+
+}
@@ -20,6 +20,9 @@ package org.codelibs.jcifs.smb;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This class represents a resource on an SMB network. Mainly these
@@ -88,6 +91,24 @@ public interface SmbResource extends AutoCloseable {
      */
     boolean exists() throws CIFSException;
 
+    /**
+     * Asynchronously determines if this resource exists
+     *
+     * Where supported the query is sent without waiting and the future is completed by the transport thread once the
+     * response arrives, so dependent actions should not block. The default implementation completes the future with the
+     * result of {@link #exists()} before returning.
+     *
+     * @return future completed with whether the resource exists
+     * @see #exists()
+     */
+    default CompletableFuture<Boolean> existsAsync() {
+        try {
+            return CompletableFuture.completedFuture(exists());
+        } catch (final CIFSException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     /**
      * Fetch a child resource
      *
@@ -648,6 +669,29 @@ public interface SmbResource extends AutoCloseable {
      */
     CloseableIterator<SmbResource> children() throws CIFSException;
 
+    /**
+     * Asynchronously fetch all children
+     *
+     * The returned resources must be closed by the caller. The default implementation completes the future with the
+     * result of {@link #children()} before returning.
+     *
+     * @return future completed with the child resources
+     */
+    default CompletableFuture<List<SmbResource>> listAsync() {
+        final List<SmbResource> children = new ArrayList<>();
+        try (CloseableIterator<SmbResource> it = children()) {
+            while (it.hasNext()) {
+                children.add(it.next());
+            }
+            return CompletableFuture.completedFuture(children);
+        } catch (final CIFSException e) {
+            for (final SmbResource r : children) {
+                r.close();
+            }
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     /**
      * Fetch children matching pattern, server-side filtering
      *
@@ -65,4 +65,27 @@ public interface SmbTransport extends AutoCloseable {
      */
     String getRemoteHostName();
 
+    /**
+     * @return number of sessions established over this transport
+     */
+    default long getSessionSetupCount() {
+        return 0;
+    }
+
+    /**
+     * Divide by {@link #getSessionSetupCount()} for the average session setup latency.
+     *
+     * @return total time spent on session setup, in nanoseconds
+     */
+    default long getSessionSetupTime() {
+        return 0;
+    }
+
+    /**
+     * @return maximum session setup latency, in nanoseconds
+     */
+    default long getSessionSetupTimeMax() {
+        return 0;
+    }
+
 }
\ No newline at end of file
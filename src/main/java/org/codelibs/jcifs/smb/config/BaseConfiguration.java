@@ -76,6 +76,12 @@ public class BaseConfiguration implements Configuration {
     protected boolean ipcSigningEnforced = true;
     /** Whether SMB3 encryption is enabled */
     protected boolean encryptionEnabled = false;
+    /** Whether AES-GMAC signing is offered for SMB 3.1.1 */
+    protected boolean signingGmacEnabled = true;
+    /** Whether SMB 3.1.1 compression is negotiated */
+    protected boolean compressionEnabled = false;
+    /** Minimum read/write size for compression */
+    protected int compressionThreshold = 4096;
     /** Whether to use NT status codes instead of DOS error codes */
     protected boolean useNtStatus = true;
     /** Whether to use extended security negotiation */
@@ -110,6 +116,10 @@ public class BaseConfiguration implements Configuration {
     protected int capabilities = 0;
     /** Maximum number of concurrent SMB sessions */
     protected int sessionLimit = SmbConstants.DEFAULT_SSN_LIMIT;
+    /** Maximum number of pooled connections per server */
+    protected int serverConnectionLimit = 0;
+    /** Interval for removing unused connections from the pool in milliseconds */
+    protected int transportSweepInterval = 30000;
     /** Whether to disable Nagle's algorithm for TCP connections */
     protected boolean smbTcpNoDelay = false;
     /** Response timeout in milliseconds for SMB operations */
@@ -118,6 +128,8 @@ public class BaseConfiguration implements Configuration {
     protected int smbSocketTimeout = SmbConstants.DEFAULT_SO_TIMEOUT;
     /** Connection timeout in milliseconds for establishing SMB connections */
     protected int smbConnectionTimeout = SmbConstants.DEFAULT_CONN_TIMEOUT;
+    /** Whether transport reader threads are virtual threads */
+    protected boolean useVirtualThreads = false;
     /** Session timeout in milliseconds for SMB sessions */
     protected int smbSessionTimeout = SmbConstants.DEFAULT_SO_TIMEOUT;
     /** Whether idle timeout is disabled for connections */
@@ -162,6 +174,16 @@ public class BaseConfiguration implements Configuration {
     protected String netbiosHostname;
     /** NetBIOS name cache policy in seconds */
     protected int netbiosCachePolicy = 60 * 60 * 10;
+    /** Maximum number of cached NetBIOS names */
+    protected int netbiosCacheMaxSize = 4096;
+    /** NetBIOS negative cache timeout in seconds */
+    protected int netbiosNegativeCachePolicy = 30;
+    /** NetBIOS cache refresh-ahead window in seconds */
+    protected int netbiosCacheRefreshAhead = 60;
+    /** Maximum number of cached SID names */
+    protected int sidCacheMaxSize = 10000;
+    /** SID name cache timeout in seconds */
+    protected int sidCacheTtl = 3600;
     /** NetBIOS socket timeout in milliseconds */
     protected int netbiosSocketTimeout = 5000;
     /** NetBIOS send buffer size */
@@ -186,12 +208,20 @@ public class BaseConfiguration implements Configuration {
     protected InetAddress broadcastAddress;
     /** Order of name resolution methods to use */
     protected List<ResolverType> resolverOrder;
+    /** Whether to query all resolvers concurrently */
+    protected boolean resolveParallel = false;
+    /** Maximum time to wait for parallel resolution in milliseconds */
+    protected int resolveTimeout = 0;
+    /** Maximum time a single resolver may take when resolving in parallel, in milliseconds */
+    protected int resolverTimeout = 10000;
     /** Maximum buffer size for IO operations */
     protected int maximumBufferSize = 0x10000;
     /** Maximum buffer size for SMB transaction operations */
     protected int transactionBufferSize = 0xFFFF - 512;
     /** Number of buffers to keep in cache */
     protected int bufferCacheSize = 16;
+    /** Whether pooled ByteBuffers are allocated outside the heap */
+    protected boolean useDirectBuffers = false;
     /** Maximum size for list operations */
     protected int smbListSize = 65435;
     /** Maximum number of entries to return in list operations */
@@ -200,8 +230,34 @@ public class BaseConfiguration implements Configuration {
     protected long smbAttributeExpiration = 5000L;
     /** Whether to ignore exceptions during file copy operations */
     protected boolean ignoreCopyToException = false;
+    /** Number of worker threads for parallel recursive copy and delete */
+    protected int recursiveOperationParallelism = 4;
+    /** Number of server side copy requests in flight per file */
+    protected int copyChunkParallelism = 4;
     /** Maximum number of request retries on failure */
     protected int maxRequestRetries = 2;
+    /** Number of pipelined read requests per input stream */
+    protected int readAheadWindow = 0;
+    /** Number of pipelined write requests per output stream */
+    protected int writeBehindWindow = 0;
+    /** Maximum amount of unacknowledged data per output stream */
+    protected int writeBehindMaxBytes = 1024 * 1024;
+    /** Block size of the random access file page cache */
+    protected int randomAccessBufferSize = 0;
+    /** Number of blocks cached per random access file */
+    protected int randomAccessBufferBlocks = 16;
+    /** Whether to request SMB3 leases and cache file data and attributes */
+    protected boolean useLeases = false;
+    /** Maximum number of leases tracked per connection */
+    protected int maxLeases = 1000;
+    /** Time in milliseconds an unused file handle is kept open under a handle lease */
+    protected int leaseTimeout = 30000;
+    /** Maximum size of files whose content is cached under a read lease */
+    protected int leaseCacheMaxFileSize = 65536;
+    /** Whether to open additional SMB3 channels for sessions */
+    protected boolean useMultiChannel = false;
+    /** Maximum number of channels per session, including the primary connection */
+    protected int maxChannels = 4;
     /** Whether to trace resource usage for debugging */
     protected boolean traceResourceUsage;
     /** Whether to enforce strict resource lifecycle management */
@@ -271,6 +327,11 @@ public class BaseConfiguration implements Configuration {
         return this.smbConnectionTimeout;
     }
 
+    @Override
+    public boolean isUseVirtualThreads() {
+        return this.useVirtualThreads;
+    }
+
     @Override
     public int getResponseTimeout() {
         return this.smbResponseTimeout;
@@ -457,6 +518,21 @@ public class BaseConfiguration implements Configuration {
         return this.resolverOrder;
     }
 
+    @Override
+    public boolean isResolveParallel() {
+        return this.resolveParallel;
+    }
+
+    @Override
+    public int getResolveTimeout() {
+        return this.resolveTimeout;
+    }
+
+    @Override
+    public int getResolverTimeout() {
+        return this.resolverTimeout;
+    }
+
     @Override
     public InetAddress[] getWinsServers() {
         return this.winsServer;
@@ -487,6 +563,31 @@ public class BaseConfiguration implements Configuration {
         return this.netbiosCachePolicy;
     }
 
+    @Override
+    public int getNetbiosCacheMaxSize() {
+        return this.netbiosCacheMaxSize;
+    }
+
+    @Override
+    public int getNetbiosNegativeCachePolicy() {
+        return this.netbiosNegativeCachePolicy;
+    }
+
+    @Override
+    public int getNetbiosCacheRefreshAhead() {
+        return this.netbiosCacheRefreshAhead;
+    }
+
+    @Override
+    public int getSidCacheMaxSize() {
+        return this.sidCacheMaxSize;
+    }
+
+    @Override
+    public int getSidCacheTtl() {
+        return this.sidCacheTtl;
+    }
+
     @Override
     public int getNetbiosRcvBufSize() {
         return this.netbiosRevcBufferSize;
@@ -522,6 +623,16 @@ public class BaseConfiguration implements Configuration {
         return this.sessionLimit;
     }
 
+    @Override
+    public int getServerConnectionLimit() {
+        return this.serverConnectionLimit;
+    }
+
+    @Override
+    public int getTransportSweepInterval() {
+        return this.transportSweepInterval;
+    }
+
     @Override
     public String getOemEncoding() {
         return this.oemEncoding;
@@ -557,6 +668,21 @@ public class BaseConfiguration implements Configuration {
         return this.encryptionEnabled;
     }
 
+    @Override
+    public boolean isSigningGmacEnabled() {
+        return this.signingGmacEnabled;
+    }
+
+    @Override
+    public boolean isCompressionEnabled() {
+        return this.compressionEnabled;
+    }
+
+    @Override
+    public int getCompressionThreshold() {
+        return this.compressionThreshold;
+    }
+
     @Override
     public boolean isForceExtendedSecurity() {
         return this.forceExtendedSecurity;
@@ -577,6 +703,11 @@ public class BaseConfiguration implements Configuration {
         return this.bufferCacheSize;
     }
 
+    @Override
+    public boolean isUseDirectBuffers() {
+        return this.useDirectBuffers;
+    }
+
     @Override
     public int getListCount() {
         return this.smbListCount;
@@ -597,11 +728,76 @@ public class BaseConfiguration implements Configuration {
         return this.ignoreCopyToException;
     }
 
+    @Override
+    public int getRecursiveOperationParallelism() {
+        return this.recursiveOperationParallelism;
+    }
+
+    @Override
+    public int getCopyChunkParallelism() {
+        return this.copyChunkParallelism;
+    }
+
     @Override
     public int getMaxRequestRetries() {
         return this.maxRequestRetries;
     }
 
+    @Override
+    public int getReadAheadWindow() {
+        return this.readAheadWindow;
+    }
+
+    @Override
+    public int getWriteBehindWindow() {
+        return this.writeBehindWindow;
+    }
+
+    @Override
+    public int getWriteBehindMaxBytes() {
+        return this.writeBehindMaxBytes;
+    }
+
+    @Override
+    public int getRandomAccessBufferSize() {
+        return this.randomAccessBufferSize;
+    }
+
+    @Override
+    public int getRandomAccessBufferBlocks() {
+        return this.randomAccessBufferBlocks;
+    }
+
+    @Override
+    public boolean isUseLeases() {
+        return this.useLeases;
+    }
+
+    @Override
+    public int getMaxLeases() {
+        return this.maxLeases;
+    }
+
+    @Override
+    public int getLeaseTimeout() {
+        return this.leaseTimeout;
+    }
+
+    @Override
+    public int getLeaseCacheMaxFileSize() {
+        return this.leaseCacheMaxFileSize;
+    }
+
+    @Override
+    public boolean isUseMultiChannel() {
+        return this.useMultiChannel;
+    }
+
+    @Override
+    public int getMaxChannels() {
+        return this.maxChannels;
+    }
+
     @Override
     public boolean isTraceResourceUsage() {
         return this.traceResourceUsage;
@@ -297,6 +297,16 @@ public class DelegatingConfiguration implements Configuration {
         return this.delegate.getConnTimeout();
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Configuration#isUseVirtualThreads()
+     */
+    @Override
+    public boolean isUseVirtualThreads() {
+        return this.delegate.isUseVirtualThreads();
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -456,6 +466,36 @@ public class DelegatingConfiguration implements Configuration {
         return this.delegate.getResolveOrder();
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Configuration#isResolveParallel()
+     */
+    @Override
+    public boolean isResolveParallel() {
+        return this.delegate.isResolveParallel();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Configuration#getResolveTimeout()
+     */
+    @Override
+    public int getResolveTimeout() {
+        return this.delegate.getResolveTimeout();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Configuration#getResolverTimeout()
+     */
+    @Override
+    public int getResolverTimeout() {
+        return this.delegate.getResolverTimeout();
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -536,6 +576,26 @@ public class DelegatingConfiguration implements Configuration {
         return this.delegate.getSessionLimit();
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Configuration#getServerConnectionLimit()
+     */
+    @Override
+    public int getServerConnectionLimit() {
+        return this.delegate.getServerConnectionLimit();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Configuration#getTransportSweepInterval()
+     */
+    @Override
+    public int getTransportSweepInterval() {
+        return this.delegate.getTransportSweepInterval();
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -616,6 +676,36 @@ public class DelegatingConfiguration implements Configuration {
         return this.delegate.isEncryptionEnabled();
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Configuration#isSigningGmacEnabled()
+     */
+    @Override
+    public boolean isSigningGmacEnabled() {
+        return this.delegate.isSigningGmacEnabled();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Configuration#isCompressionEnabled()
+     */
+    @Override
+    public boolean isCompressionEnabled() {
+        return this.delegate.isCompressionEnabled();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Configuration#getCompressionThreshold()
+     */
+    @Override
+    public int getCompressionThreshold() {
+        return this.delegate.getCompressionThreshold();
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -696,6 +786,56 @@ public class DelegatingConfiguration implements Configuration {
         return this.delegate.getNetbiosCachePolicy();
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Configuration#getNetbiosCacheMaxSize()
+     */
+    @Override
+    public int getNetbiosCacheMaxSize() {
+        return this.delegate.getNetbiosCacheMaxSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Configuration#getNetbiosNegativeCachePolicy()
+     */
+    @Override
+    public int getNetbiosNegativeCachePolicy() {
+        return this.delegate.getNetbiosNegativeCachePolicy();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Configuration#getNetbiosCacheRefreshAhead()
+     */
+    @Override
+    public int getNetbiosCacheRefreshAhead() {
+        return this.delegate.getNetbiosCacheRefreshAhead();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Configuration#getSidCacheMaxSize()
+     */
+    @Override
+    public int getSidCacheMaxSize() {
+        return this.delegate.getSidCacheMaxSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Configuration#getSidCacheTtl()
+     */
+    @Override
+    public int getSidCacheTtl() {
+        return this.delegate.getSidCacheTtl();
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -716,6 +856,16 @@ public class DelegatingConfiguration implements Configuration {
         return this.delegate.getBufferCacheSize();
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Configuration#isUseDirectBuffers()
+     */
+    @Override
+    public boolean isUseDirectBuffers() {
+        return this.delegate.isUseDirectBuffers();
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -756,6 +906,26 @@ public class DelegatingConfiguration implements Configuration {
         return this.delegate.isIgnoreCopyToException();
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Configuration#getRecursiveOperationParallelism()
+     */
+    @Override
+    public int getRecursiveOperationParallelism() {
+        return this.delegate.getRecursiveOperationParallelism();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Configuration#getCopyChunkParallelism()
+     */
+    @Override
+    public int getCopyChunkParallelism() {
+        return this.delegate.getCopyChunkParallelism();
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -806,6 +976,116 @@ public class DelegatingConfiguration implements Configuration {
         return this.delegate.getMaxRequestRetries();
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Configuration#getReadAheadWindow()
+     */
+    @Override
+    public int getReadAheadWindow() {
+        return this.delegate.getReadAheadWindow();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Configuration#getWriteBehindWindow()
+     */
+    @Override
+    public int getWriteBehindWindow() {
+        return this.delegate.getWriteBehindWindow();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Configuration#getWriteBehindMaxBytes()
+     */
+    @Override
+    public int getWriteBehindMaxBytes() {
+        return this.delegate.getWriteBehindMaxBytes();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Configuration#getRandomAccessBufferSize()
+     */
+    @Override
+    public int getRandomAccessBufferSize() {
+        return this.delegate.getRandomAccessBufferSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Configuration#getRandomAccessBufferBlocks()
+     */
+    @Override
+    public int getRandomAccessBufferBlocks() {
+        return this.delegate.getRandomAccessBufferBlocks();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Configuration#isUseLeases()
+     */
+    @Override
+    public boolean isUseLeases() {
+        return this.delegate.isUseLeases();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Configuration#getMaxLeases()
+     */
+    @Override
+    public int getMaxLeases() {
+        return this.delegate.getMaxLeases();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Configuration#getLeaseTimeout()
+     */
+    @Override
+    public int getLeaseTimeout() {
+        return this.delegate.getLeaseTimeout();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Configuration#getLeaseCacheMaxFileSize()
+     */
+    @Override
+    public int getLeaseCacheMaxFileSize() {
+        return this.delegate.getLeaseCacheMaxFileSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Configuration#isUseMultiChannel()
+     */
+    @Override
+    public boolean isUseMultiChannel() {
+        return this.delegate.isUseMultiChannel();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Configuration#getMaxChannels()
+     */
+    @Override
+    public int getMaxChannels() {
+        return this.delegate.getMaxChannels();
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -51,6 +51,9 @@ public final class PropertyConfiguration extends BaseConfiguration implements Co
         this.signingEnforced = Config.getBoolean(p, "jcifs.client.signingEnforced", false);
         this.ipcSigningEnforced = Config.getBoolean(p, "jcifs.client.ipcSigningEnforced", true);
         this.encryptionEnabled = Config.getBoolean(p, "jcifs.client.encryptionEnabled", false);
+        this.signingGmacEnabled = Config.getBoolean(p, "jcifs.client.signingGmacEnabled", true);
+        this.compressionEnabled = Config.getBoolean(p, "jcifs.client.compressionEnabled", false);
+        this.compressionThreshold = Config.getInt(p, "jcifs.client.compressionThreshold", 4096);
         this.requireSecureNegotiate = Config.getBoolean(p, "jcifs.client.requireSecureNegotiate", true);
         this.sendNTLMTargetName = Config.getBoolean(p, "jcifs.client.SendNTLMTargetName", true);
 
@@ -79,13 +82,27 @@ public final class PropertyConfiguration extends BaseConfiguration implements Co
         this.capabilities = Config.getInt(p, "jcifs.client.capabilities", 0);
 
         this.sessionLimit = Config.getInt(p, "jcifs.client.ssnLimit", SmbConstants.DEFAULT_SSN_LIMIT);
+        this.serverConnectionLimit = Config.getInt(p, "jcifs.client.serverConnectionLimit", 0);
+        this.transportSweepInterval = Config.getInt(p, "jcifs.client.transportSweepInterval", 30000);
 
         this.maxRequestRetries = Config.getInt(p, "jcifs.client.maxRequestRetries", 2);
+        this.readAheadWindow = Config.getInt(p, "jcifs.client.readAheadWindow", 0);
+        this.writeBehindWindow = Config.getInt(p, "jcifs.client.writeBehindWindow", 0);
+        this.writeBehindMaxBytes = Config.getInt(p, "jcifs.client.writeBehindMaxBytes", 1024 * 1024);
+        this.randomAccessBufferSize = Config.getInt(p, "jcifs.client.randomAccessBufferSize", 0);
+        this.randomAccessBufferBlocks = Config.getInt(p, "jcifs.client.randomAccessBufferBlocks", 16);
+        this.useLeases = Config.getBoolean(p, "jcifs.client.useLeases", false);
+        this.maxLeases = Config.getInt(p, "jcifs.client.maxLeases", 1000);
+        this.leaseTimeout = Config.getInt(p, "jcifs.client.leaseTimeout", 30000);
+        this.leaseCacheMaxFileSize = Config.getInt(p, "jcifs.client.leaseCacheMaxFileSize", 65536);
+        this.useMultiChannel = Config.getBoolean(p, "jcifs.client.useMultiChannel", false);
+        this.maxChannels = Config.getInt(p, "jcifs.client.maxChannels", 4);
 
         this.smbTcpNoDelay = Config.getBoolean(p, "jcifs.client.tcpNoDelay", false);
         this.smbResponseTimeout = Config.getInt(p, "jcifs.client.responseTimeout", SmbConstants.DEFAULT_RESPONSE_TIMEOUT);
         this.smbSocketTimeout = Config.getInt(p, "jcifs.client.soTimeout", SmbConstants.DEFAULT_SO_TIMEOUT);
         this.smbConnectionTimeout = Config.getInt(p, "jcifs.client.connTimeout", SmbConstants.DEFAULT_CONN_TIMEOUT);
+        this.useVirtualThreads = Config.getBoolean(p, "jcifs.client.useVirtualThreads", false);
         this.smbSessionTimeout = Config.getInt(p, "jcifs.client.sessionTimeout", SmbConstants.DEFAULT_CONN_TIMEOUT);
         this.idleTimeoutDisabled = Config.getBoolean(p, "jcifs.client.disableIdleTimeout", false);
 
@@ -115,6 +132,11 @@ public final class PropertyConfiguration extends BaseConfiguration implements Co
         this.netbiosHostname = p.getProperty("jcifs.netbios.hostname", null);
 
         this.netbiosCachePolicy = Config.getInt(p, "jcifs.netbios.cachePolicy", 60 * 10) * 60; /* 10 hours */
+        this.netbiosCacheMaxSize = Config.getInt(p, "jcifs.netbios.cacheMaxSize", 4096);
+        this.netbiosNegativeCachePolicy = Config.getInt(p, "jcifs.netbios.negativeCachePolicy", 30);
+        this.netbiosCacheRefreshAhead = Config.getInt(p, "jcifs.netbios.cacheRefreshAhead", 60);
+        this.sidCacheMaxSize = Config.getInt(p, "jcifs.sidCacheMaxSize", 10000);
+        this.sidCacheTtl = Config.getInt(p, "jcifs.sidCacheTtl", 3600);
 
         this.netbiosSocketTimeout = Config.getInt(p, "jcifs.netbios.soTimeout", 5000);
         this.netbiosSendBufferSize = Config.getInt(p, "jcifs.netbios.snd_buf_size", 576);
@@ -131,12 +153,15 @@ public final class PropertyConfiguration extends BaseConfiguration implements Co
 
         this.transactionBufferSize = Config.getInt(p, "jcifs.client.transaction_buf_size", 0xFFFF) - 512;
         this.bufferCacheSize = Config.getInt(p, "jcifs.maxBuffers", 16);
+        this.useDirectBuffers = Config.getBoolean(p, "jcifs.directBuffers", false);
 
         this.smbListSize = Config.getInt(p, "jcifs.client.listSize", 65435);
         this.smbListCount = Config.getInt(p, "jcifs.client.listCount", 200);
 
         this.smbAttributeExpiration = Config.getLong(p, "jcifs.client.attrExpirationPeriod", 5000L);
         this.ignoreCopyToException = Config.getBoolean(p, "jcifs.client.ignoreCopyToException", false);
+        this.recursiveOperationParallelism = Config.getInt(p, "jcifs.client.recursiveOperationParallelism", 4);
+        this.copyChunkParallelism = Config.getInt(p, "jcifs.client.copyChunkParallelism", 4);
         this.broadcastAddress = Config.getInetAddress(p, "jcifs.netbios.baddr", null);
 
         this.traceResourceUsage = Config.getBoolean(p, "jcifs.traceResources", false);
@@ -158,6 +183,9 @@ public final class PropertyConfiguration extends BaseConfiguration implements Co
         }
 
         initResolverOrder(p.getProperty("jcifs.resolveOrder"));
+        this.resolveParallel = Config.getBoolean(p, "jcifs.resolveParallel", false);
+        this.resolveTimeout = Config.getInt(p, "jcifs.resolveTimeout", 0);
+        this.resolverTimeout = Config.getInt(p, "jcifs.resolverTimeout", 10000);
         initDisallowCompound(p.getProperty("jcifs.client.disallowCompound"));
         initDefaults();
     }
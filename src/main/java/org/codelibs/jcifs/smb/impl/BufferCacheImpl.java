@@ -18,7 +18,10 @@
 
 package org.codelibs.jcifs.smb.impl;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.codelibs.jcifs.smb.BufferCache;
 import org.codelibs.jcifs.smb.Configuration;
@@ -26,14 +29,28 @@ import org.codelibs.jcifs.smb.Configuration;
 /**
  * Cache for reusable byte buffers
  *
+ * Buffers are kept in power of two size classes, from {@link #MIN_CLASS_SIZE} up to the maximum buffer size. Each
+ * class has a fixed number of slots which are claimed with atomic operations, threads start searching at different
+ * slots so that concurrent users rarely touch the same slot. Only the part of a buffer that was written to is cleared
+ * when it is returned.
  *
  * <p>This class is intended for internal use.</p>
  */
 public class BufferCacheImpl implements BufferCache {
 
-    private final Object[] cache;
+    /**
+     * Size of the smallest buffer class
+     */
+    static final int MIN_CLASS_SIZE = 4096;
+
     private final int bufferSize;
-    private int freeBuffers = 0;
+    private final SizeClass[] classes;
+    private final SizeClass[] byteBufferClasses;
+    private final boolean direct;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
 
     /**
      * Constructs a buffer cache using configuration settings.
@@ -41,7 +58,7 @@ public class BufferCacheImpl implements BufferCache {
      * @param cfg the configuration to use for buffer cache settings
      */
     public BufferCacheImpl(final Configuration cfg) {
-        this(cfg.getBufferCacheSize(), cfg.getMaximumBufferSize());
+        this(cfg.getBufferCacheSize(), cfg.getMaximumBufferSize(), cfg.isUseDirectBuffers());
     }
 
     /**
@@ -52,8 +69,32 @@ public class BufferCacheImpl implements BufferCache {
      *
      */
     public BufferCacheImpl(final int maxBuffers, final int maxSize) {
-        this.cache = new Object[maxBuffers];
+        this(maxBuffers, maxSize, false);
+    }
+
+    /**
+     * Constructs a buffer cache with specified parameters.
+     *
+     * @param maxBuffers the maximum number of buffers to cache per size class
+     * @param maxSize the size of the largest buffers in bytes
+     * @param direct whether byte buffers are allocated as direct buffers
+     */
+    public BufferCacheImpl(final int maxBuffers, final int maxSize, final boolean direct) {
         this.bufferSize = maxSize;
+        this.direct = direct;
+        int n = 1;
+        for (int sz = MIN_CLASS_SIZE; sz > 0 && sz < maxSize; sz <<= 1) {
+            n++;
+        }
+        this.classes = new SizeClass[n];
+        this.byteBufferClasses = new SizeClass[n];
+        int sz = MIN_CLASS_SIZE;
+        for (int i = 0; i < n - 1; i++, sz <<= 1) {
+            this.classes[i] = new SizeClass(sz, maxBuffers);
+            this.byteBufferClasses[i] = new SizeClass(sz, maxBuffers);
+        }
+        this.classes[n - 1] = new SizeClass(maxSize, maxBuffers);
+        this.byteBufferClasses[n - 1] = new SizeClass(maxSize, maxBuffers);
     }
 
     /**
@@ -63,21 +104,36 @@ public class BufferCacheImpl implements BufferCache {
      */
     @Override
     public byte[] getBuffer() {
-        synchronized (this.cache) {
-            byte[] buf;
-
-            if (this.freeBuffers > 0) {
-                for (int i = 0; i < this.cache.length; i++) {
-                    if (this.cache[i] != null) {
-                        buf = (byte[]) this.cache[i];
-                        this.cache[i] = null;
-                        this.freeBuffers--;
-                        return buf;
-                    }
-                }
-            }
-            return new byte[this.bufferSize];
+        return get(this.classes.length - 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.BufferCache#getBuffer(int)
+     */
+    @Override
+    public byte[] getBuffer(final int minSize) {
+        final int idx = classFor(minSize);
+        if (idx < 0) {
+            this.misses.increment();
+            this.allocatedBytes.add(minSize);
+            return new byte[minSize];
         }
+        return get(idx);
+    }
+
+    private byte[] get(final int idx) {
+        final SizeClass sc = this.classes[idx];
+        final byte[] buf = (byte[]) sc.poll();
+        if (buf != null) {
+            this.hits.increment();
+            return buf;
+        }
+        this.misses.increment();
+        final byte[] b = new byte[sc.size];
+        this.allocatedBytes.add(sc.size);
+        return b;
     }
 
     /**
@@ -87,21 +143,190 @@ public class BufferCacheImpl implements BufferCache {
      */
     @Override
     public void releaseBuffer(final byte[] buf) {
+        if (buf == null) {
+            return;
+        }
+        releaseBuffer(buf, buf.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.BufferCache#releaseBuffer(byte[], int)
+     */
+    @Override
+    public void releaseBuffer(final byte[] buf, final int dirtyLength) {
         if (buf == null) {
             return;
         }
         // better safe than sorry: prevent leaks if there is some out of bound access
-        Arrays.fill(buf, (byte) 0);
-        synchronized (this.cache) {
-            if (this.freeBuffers < this.cache.length) {
-                for (int i = 0; i < this.cache.length; i++) {
-                    if (this.cache[i] == null) {
-                        this.cache[i] = buf;
-                        this.freeBuffers++;
-                        return;
-                    }
+        Arrays.fill(buf, 0, Math.min(Math.max(dirtyLength, 0), buf.length), (byte) 0);
+        final int idx = classOf(buf.length);
+        if (idx >= 0) {
+            this.classes[idx].offer(buf);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.BufferCache#getByteBuffer(int)
+     */
+    @Override
+    public ByteBuffer getByteBuffer(final int minSize) {
+        final int idx = classFor(minSize);
+        ByteBuffer buf = null;
+        if (idx >= 0) {
+            buf = (ByteBuffer) this.byteBufferClasses[idx].poll();
+        }
+        if (buf != null) {
+            this.hits.increment();
+        } else {
+            this.misses.increment();
+            final int size = idx >= 0 ? this.byteBufferClasses[idx].size : minSize;
+            this.allocatedBytes.add(size);
+            buf = this.direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        }
+        buf.clear().limit(minSize);
+        return buf;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Contents of direct buffers are not cleared, as they are never exposed as arrays.
+     *
+     * @see org.codelibs.jcifs.smb.BufferCache#releaseByteBuffer(java.nio.ByteBuffer)
+     */
+    @Override
+    public void releaseByteBuffer(final ByteBuffer buf) {
+        if (buf == null || buf.isDirect() != this.direct) {
+            return;
+        }
+        if (buf.hasArray()) {
+            Arrays.fill(buf.array(), buf.arrayOffset(), buf.arrayOffset() + buf.limit(), (byte) 0);
+        }
+        final int idx = classOf(buf.capacity());
+        if (idx >= 0 && this.byteBufferClasses[idx].size == buf.capacity()) {
+            this.byteBufferClasses[idx].offer(buf);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.BufferCache#getCacheHits()
+     */
+    @Override
+    public long getCacheHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.BufferCache#getCacheMisses()
+     */
+    @Override
+    public long getCacheMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.BufferCache#getAllocatedBytes()
+     */
+    @Override
+    public long getAllocatedBytes() {
+        return this.allocatedBytes.sum();
+    }
+
+    /**
+     * @return number of buffers currently cached
+     */
+    int getCachedBuffers() {
+        int n = 0;
+        for (final SizeClass sc : this.classes) {
+            n += sc.count();
+        }
+        return n;
+    }
+
+    /**
+     * @param size
+     * @return smallest class holding buffers of at least size bytes, -1 if larger than the maximum buffer size
+     */
+    private int classFor(final int size) {
+        for (int i = 0; i < this.classes.length; i++) {
+            if (this.classes[i].size >= size) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param length
+     * @return largest class a buffer of the given length can serve, -1 if it is too small for any
+     */
+    private int classOf(final int length) {
+        for (int i = this.classes.length - 1; i >= 0; i--) {
+            if (length >= this.classes[i].size) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static final class SizeClass {
+
+        final int size;
+        private final AtomicReferenceArray<Object> slots;
+
+        SizeClass(final int size, final int maxBuffers) {
+            this.size = size;
+            this.slots = new AtomicReferenceArray<>(maxBuffers);
+        }
+
+        private int start() {
+            final int n = this.slots.length();
+            return n <= 1 ? 0 : (int) ((Thread.currentThread().getId() * 0x9E3779B9L >>> 16) % n);
+        }
+
+        Object poll() {
+            final int n = this.slots.length();
+            final int start = start();
+            for (int i = 0; i < n; i++) {
+                final int idx = (start + i) % n;
+                final Object o = this.slots.get(idx);
+                if (o != null && this.slots.compareAndSet(idx, o, null)) {
+                    return o;
+                }
+            }
+            return null;
+        }
+
+        boolean offer(final Object o) {
+            final int n = this.slots.length();
+            final int start = start();
+            for (int i = 0; i < n; i++) {
+                final int idx = (start + i) % n;
+                if (this.slots.get(idx) == null && this.slots.compareAndSet(idx, null, o)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        int count() {
+            int c = 0;
+            for (int i = 0; i < this.slots.length(); i++) {
+                if (this.slots.get(i) != null) {
+                    c++;
                 }
             }
+            return c;
         }
     }
 }
@@ -19,13 +19,18 @@
 package org.codelibs.jcifs.smb.impl;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.codelibs.jcifs.smb.CIFSContext;
+import org.codelibs.jcifs.smb.CIFSException;
 import org.codelibs.jcifs.smb.DfsReferralData;
 import org.codelibs.jcifs.smb.DfsResolver;
 import org.codelibs.jcifs.smb.SmbTransport;
@@ -55,30 +60,32 @@ public class DfsImpl implements DfsResolver {
         }
     }
 
-    private static class NegativeCacheEntry<T> extends CacheEntry<T> {
-
-        /**
-         * @param ttl
-         */
-        NegativeCacheEntry(final long ttl) {
-            super(ttl);
-        }
-
-    }
-
     private static final Logger log = LoggerFactory.getLogger(DfsImpl.class);
     private static final String DC_ENTRY = "dc";
 
-    private CacheEntry<Map<String, CacheEntry<DfsReferralDataInternal>>> _domains = null; /*
-                                                                                           * aka trusted domains cache
-                                                                                           */
+    /*
+     * aka trusted domains cache, maps each domain to its roots and each root to the cache of its links
+     */
+    private volatile CacheEntry<Map<String, DfsReferralCache>> domains = null;
     private final Object domainsLock = new Object();
 
-    private final Map<String, CacheEntry<DfsReferralDataInternal>> dcCache = new HashMap<>();
-    private final Object dcLock = new Object();
+    private final Map<String, CacheEntry<DfsReferralDataInternal>> dcCache = new ConcurrentHashMap<>();
+
+    /*
+     * stand-alone referrals, keyed by \server\share\path
+     */
+    private final DfsReferralCache referrals = new DfsReferralCache();
+
+    private final ThreadPoolExecutor refreshExecutor;
 
-    private CacheEntry<DfsReferralDataInternal> referrals = null;
-    private final Object referralsLock = new Object();
+    /*
+     * referral lookups currently in flight, keyed by kind and path
+     */
+    private final SingleFlight<String, DfsReferralDataInternal> lookups = new SingleFlight<>();
+
+    private final LongAdder referralRequests = new LongAdder();
+    private final LongAdder referralFailures = new LongAdder();
+    private final LongAdder referralTime = new LongAdder();
 
     /**
      * Constructs a DFS resolver implementation
@@ -86,20 +93,35 @@ public class DfsImpl implements DfsResolver {
      * @param tc the CIFS context containing configuration
      */
     public DfsImpl(final CIFSContext tc) {
+        this.refreshExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            final Thread t = new Thread(r, "JCIFS-DfsRefresh");
+            t.setDaemon(true);
+            return t;
+        });
+        this.refreshExecutor.allowCoreThreadTimeOut(true);
     }
 
-    private Map<String, Map<String, CacheEntry<DfsReferralDataInternal>>> getTrustedDomains(final CIFSContext tf) throws SmbAuthException {
+    private Map<String, Map<String, DfsReferralCache>> getTrustedDomains(final CIFSContext tf) throws SmbAuthException {
         if (tf.getConfig().isDfsDisabled() || tf.getCredentials().getUserDomain() == null
                 || tf.getCredentials().getUserDomain().isEmpty()) {
             return null;
         }
 
-        if (this._domains != null && System.currentTimeMillis() > this._domains.expiration) {
-            this._domains = null;
+        CacheEntry<Map<String, DfsReferralCache>> d = this.domains;
+        if (d != null && System.currentTimeMillis() <= d.expiration) {
+            return d.map;
         }
-        if (this._domains != null) {
-            return this._domains.map;
+        synchronized (this.domainsLock) {
+            d = this.domains;
+            if (d != null && System.currentTimeMillis() <= d.expiration) {
+                return d.map;
+            }
+            return loadTrustedDomains(tf, d);
         }
+    }
+
+    private Map<String, Map<String, DfsReferralCache>> loadTrustedDomains(final CIFSContext tf,
+            final CacheEntry<Map<String, DfsReferralCache>> old) throws SmbAuthException {
         try {
             final String authDomain = tf.getCredentials().getUserDomain();
             // otherwise you end up with a wrong server name for kerberos
@@ -108,40 +130,41 @@ public class DfsImpl implements DfsResolver {
             // UniAddress addr = UniAddress.getByName(authDomain, true, tf);
             // SmbTransport trans = tf.getTransportPool().getSmbTransport(tf, addr, 0);
             try (SmbTransport dc = getDc(tf, authDomain)) {
-                final CacheEntry<Map<String, CacheEntry<DfsReferralDataInternal>>> entry =
-                        new CacheEntry<>(tf.getConfig().getDfsTtl() * 10L);
+                final CacheEntry<Map<String, DfsReferralCache>> entry = new CacheEntry<>(tf.getConfig().getDfsTtl() * 10L);
                 DfsReferralData initial = null;
                 @SuppressWarnings("resource")
                 final SmbTransportInternal trans = dc != null ? dc.unwrap(SmbTransportInternal.class) : null;
                 if (trans != null) {
                     // get domain referral
-                    initial = trans.getDfsReferrals(tf.withAnonymousCredentials(), "", trans.getRemoteHostName(), authDomain, 0);
+                    initial = sendReferralRequest(trans, tf.withAnonymousCredentials(), "", trans.getRemoteHostName(), authDomain);
                 }
                 if (initial != null) {
                     final DfsReferralDataInternal start = initial.unwrap(DfsReferralDataInternal.class);
                     DfsReferralDataInternal dr = start;
                     do {
                         final String domain = dr.getServer().toLowerCase();
-                        entry.map.put(domain, new HashMap<>());
+                        // keep the roots of domains we already know, their entries expire individually
+                        final Map<String, DfsReferralCache> roots = old != null ? old.map.get(domain) : null;
+                        entry.map.put(domain, roots != null ? roots : new ConcurrentHashMap<>());
                         if (log.isTraceEnabled()) {
                             log.trace("Inserting cache entry for domain " + domain + ": " + dr);
                         }
                         dr = dr.next();
                     } while (dr != start);
-                    this._domains = entry;
-                    return this._domains.map;
+                    this.domains = entry;
+                    return entry.map;
                 }
             }
         } catch (final IOException ioe) {
             if (log.isDebugEnabled()) {
                 log.debug("getting trusted domains failed: " + tf.getCredentials().getUserDomain(), ioe);
             }
-            final CacheEntry<Map<String, CacheEntry<DfsReferralDataInternal>>> entry = new CacheEntry<>(tf.getConfig().getDfsTtl() * 10L);
-            this._domains = entry;
+            final CacheEntry<Map<String, DfsReferralCache>> entry = new CacheEntry<>(tf.getConfig().getDfsTtl() * 10L);
+            this.domains = entry;
             if (tf.getConfig().isDfsStrictView() && ioe instanceof SmbAuthException) {
                 throw (SmbAuthException) ioe;
             }
-            return this._domains.map;
+            return entry.map;
         }
         return null;
     }
@@ -154,14 +177,12 @@ public class DfsImpl implements DfsResolver {
      */
     @Override
     public boolean isTrustedDomain(final CIFSContext tf, String domain) throws SmbAuthException {
-        synchronized (this.domainsLock) {
-            final Map<String, Map<String, CacheEntry<DfsReferralDataInternal>>> domains = getTrustedDomains(tf);
-            if (domains == null) {
-                return false;
-            }
-            domain = domain.toLowerCase(Locale.ROOT);
-            return domains.get(domain) != null;
+        final Map<String, Map<String, DfsReferralCache>> trusted = getTrustedDomains(tf);
+        if (trusted == null) {
+            return false;
         }
+        domain = domain.toLowerCase(Locale.ROOT);
+        return trusted.get(domain) != null;
     }
 
     private DfsReferralData getDcReferrals(final CIFSContext tf, final String domain) throws SmbAuthException {
@@ -169,50 +190,52 @@ public class DfsImpl implements DfsResolver {
             return null;
         }
         final String dom = domain.toLowerCase(Locale.ROOT);
-        synchronized (this.dcLock) {
-            CacheEntry<DfsReferralDataInternal> ce = this.dcCache.get(dom);
-            if (ce != null && System.currentTimeMillis() > ce.expiration) {
-                ce = null;
-            }
-            if (ce != null) {
-                final DfsReferralDataInternal ri = ce.map.get(DC_ENTRY);
-                if (ri == NEGATIVE_ENTRY) {
-                    return null;
-                }
-                return ri;
-            }
-            ce = new CacheEntry<>(tf.getConfig().getDfsTtl());
-            try {
-                try (SmbTransportInternal trans =
-                        tf.getTransportPool().getSmbTransport(tf, domain, 0, false, false).unwrap(SmbTransportInternal.class)) {
-                    synchronized (trans) {
-                        final DfsReferralData dr = trans.getDfsReferrals(tf.withAnonymousCredentials(), "\\" + dom, domain, dom, 0);
-
-                        if (dr != null) {
-                            if (log.isDebugEnabled()) {
-                                log.debug("Got DC referral " + dr);
-                            }
-                            final DfsReferralDataInternal dri = dr.unwrap(DfsReferralDataInternal.class);
-                            ce.map.put(DC_ENTRY, dri);
-                            this.dcCache.put(dom, ce);
-                            return dr;
+        final CacheEntry<DfsReferralDataInternal> ce = this.dcCache.get(dom);
+        if (ce != null && System.currentTimeMillis() <= ce.expiration) {
+            final DfsReferralDataInternal ri = ce.map.get(DC_ENTRY);
+            return ri != NEGATIVE_ENTRY ? ri : null;
+        }
+        return this.lookups.execute("dc:" + dom, () -> fetchDcReferrals(tf, domain, dom));
+    }
+
+    private DfsReferralDataInternal fetchDcReferrals(final CIFSContext tf, final String domain, final String dom)
+            throws SmbAuthException {
+        CacheEntry<DfsReferralDataInternal> ce = this.dcCache.get(dom);
+        if (ce != null && System.currentTimeMillis() <= ce.expiration) {
+            // fetched by a lookup that completed in the meantime
+            final DfsReferralDataInternal ri = ce.map.get(DC_ENTRY);
+            return ri != NEGATIVE_ENTRY ? ri : null;
+        }
+        ce = new CacheEntry<>(tf.getConfig().getDfsTtl());
+        try {
+            try (SmbTransportInternal trans =
+                    tf.getTransportPool().getSmbTransport(tf, domain, 0, false, false).unwrap(SmbTransportInternal.class)) {
+                synchronized (trans) {
+                    final DfsReferralData dr = sendReferralRequest(trans, tf.withAnonymousCredentials(), "\\" + dom, domain, dom);
+
+                    if (dr != null) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("Got DC referral " + dr);
                         }
+                        final DfsReferralDataInternal dri = dr.unwrap(DfsReferralDataInternal.class);
+                        ce.map.put(DC_ENTRY, dri);
+                        this.dcCache.put(dom, ce);
+                        return dri;
                     }
                 }
-            } catch (final IOException ioe) {
-                if (log.isDebugEnabled()) {
-                    log.debug(String.format("Getting domain controller for %s failed", domain), ioe);
-                }
-                ce.map.put(DC_ENTRY, NEGATIVE_ENTRY);
-                if (tf.getConfig().isDfsStrictView() && ioe instanceof SmbAuthException) {
-                    throw (SmbAuthException) ioe;
-                }
+            }
+        } catch (final IOException ioe) {
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("Getting domain controller for %s failed", domain), ioe);
             }
             ce.map.put(DC_ENTRY, NEGATIVE_ENTRY);
-            this.dcCache.put(dom, ce);
-            return null;
+            if (tf.getConfig().isDfsStrictView() && ioe instanceof SmbAuthException) {
+                throw (SmbAuthException) ioe;
+            }
         }
-
+        ce.map.put(DC_ENTRY, NEGATIVE_ENTRY);
+        this.dcCache.put(dom, ce);
+        return null;
     }
 
     /**
@@ -296,7 +319,7 @@ public class DfsImpl implements DfsResolver {
             if (log.isDebugEnabled()) {
                 log.debug("Fetching referral for " + p);
             }
-            final DfsReferralData dr = trans.getDfsReferrals(tf, p, targetHost, targetDomain, 0);
+            final DfsReferralData dr = sendReferralRequest(trans, tf, p, targetHost, targetDomain);
             if (dr != null) {
 
                 if (log.isDebugEnabled()) {
@@ -347,33 +370,31 @@ public class DfsImpl implements DfsResolver {
 
         DfsReferralDataInternal dr = null;
         final long now = System.currentTimeMillis();
-        synchronized (this.domainsLock) {
+        /*
+         * domains that can contain DFS points to maps of roots for each
+         */
+        final Map<String, Map<String, DfsReferralCache>> trusted = getTrustedDomains(tf);
+        if (trusted != null) {
+            if (log.isTraceEnabled()) {
+                dumpReferralCache(trusted);
+            }
+
+            root = root.toLowerCase();
             /*
-             * domains that can contain DFS points to maps of roots for each
+             * domain-based DFS root shares to links for each
              */
-            final Map<String, Map<String, CacheEntry<DfsReferralDataInternal>>> domains = getTrustedDomains(tf);
-            if (domains != null) {
-                if (log.isTraceEnabled()) {
-                    dumpReferralCache(domains);
-                }
-
-                root = root.toLowerCase();
-                /*
-                 * domain-based DFS root shares to links for each
-                 */
-                final Map<String, CacheEntry<DfsReferralDataInternal>> roots = domains.get(domain);
-                if (roots != null) {
-                    dr = getLinkReferral(tf, domain, root, path, now, roots);
-                }
+            final Map<String, DfsReferralCache> roots = trusted.get(domain);
+            if (roots != null) {
+                dr = getLinkReferral(tf, domain, root, path, now, roots);
+            }
 
-                if (tf.getConfig().isDfsConvertToFQDN() && dr instanceof DfsReferralDataImpl) {
-                    ((DfsReferralDataImpl) dr).fixupDomain(domain);
-                }
+            if (tf.getConfig().isDfsConvertToFQDN() && dr instanceof DfsReferralDataImpl) {
+                ((DfsReferralDataImpl) dr).fixupDomain(domain);
             }
         }
 
         if (dr == null && path != null) {
-            dr = getStandaloneCached(domain, root, path, now);
+            dr = getStandaloneCached(tf, domain, root, path, now);
         }
 
         if (dr != null && dr.isIntermediate()) {
@@ -430,22 +451,20 @@ public class DfsImpl implements DfsResolver {
     }
 
     /**
-     * @param domains
+     * @param trusted
      */
-    private static void dumpReferralCache(final Map<String, Map<String, CacheEntry<DfsReferralDataInternal>>> domains) {
-        for (final Entry<String, Map<String, CacheEntry<DfsReferralDataInternal>>> entry : domains.entrySet()) {
+    private static void dumpReferralCache(final Map<String, Map<String, DfsReferralCache>> trusted) {
+        for (final Entry<String, Map<String, DfsReferralCache>> entry : trusted.entrySet()) {
             log.trace("Domain " + entry.getKey());
-            for (final Entry<String, CacheEntry<DfsReferralDataInternal>> entry2 : entry.getValue().entrySet()) {
+            for (final Entry<String, DfsReferralCache> entry2 : entry.getValue().entrySet()) {
                 log.trace("  Root " + entry2.getKey());
-                if (entry2.getValue().map != null) {
-                    for (final Entry<String, DfsReferralDataInternal> entry3 : entry2.getValue().map.entrySet()) {
-                        final DfsReferralDataInternal start = entry3.getValue();
-                        DfsReferralDataInternal r = start;
-                        do {
-                            log.trace("    " + entry3.getKey() + " => " + entry3.getValue());
-                            r = r.next();
-                        } while (r != start);
-                    }
+                for (final DfsReferralCache.Entry e : entry2.getValue().entries()) {
+                    final DfsReferralDataInternal start = e.getReferral();
+                    DfsReferralDataInternal r = start;
+                    do {
+                        log.trace("    " + e.getPath() + " => " + r);
+                        r = r.next();
+                    } while (r != start);
                 }
             }
         }
@@ -462,8 +481,8 @@ public class DfsImpl implements DfsResolver {
      * @throws SmbAuthException
      */
     private DfsReferralDataInternal getLinkReferral(final CIFSContext tf, final String domain, final String root, final String path,
-            final long now, final Map<String, CacheEntry<DfsReferralDataInternal>> roots) throws SmbAuthException {
-        DfsReferralDataInternal dr = null;
+            final long now, final Map<String, DfsReferralCache> roots) throws SmbAuthException {
+        DfsReferralDataInternal dr;
         if (log.isTraceEnabled()) {
             log.trace("Is a domain referral for " + domain);
         }
@@ -472,50 +491,63 @@ public class DfsImpl implements DfsResolver {
             log.trace("Resolving root " + root);
         }
         /*
-         * The link entries contain maps of referrals by path representing DFS links.
+         * The link cache holds the root referral at "\" and the referrals of the DFS links below it.
          * Note that paths are relative to the root like "\" and not "\example.com\root".
          */
-        CacheEntry<DfsReferralDataInternal> links = roots.get(root);
-        if (links != null && now > links.expiration) {
+        final DfsReferralCache links = roots.computeIfAbsent(root, k -> new DfsReferralCache());
+        DfsReferralCache.Entry rootEntry = links.get("\\");
+        if (rootEntry != null && rootEntry.isExpired(now)) {
             if (log.isDebugEnabled()) {
-                log.debug("Removing expired " + links.map);
+                log.debug("Removing expired root referral " + rootEntry.getReferral());
             }
-            roots.remove(root);
-            links = null;
+            links.remove("\\", rootEntry);
+            rootEntry = null;
         }
 
-        if (links == null) {
-            log.trace("Loadings roots");
-            final String refServerName = domain;
-            dr = fetchRootReferral(tf, domain, root, refServerName);
-            links = cacheRootReferral(tf, domain, root, roots, dr, links);
-        } else if (links instanceof NegativeCacheEntry) {
-            links = null;
+        final String lookupKey = "root:" + domain + "\\" + root;
+        if (rootEntry == null) {
+            dr = this.lookups.execute(lookupKey, () -> {
+                final DfsReferralCache.Entry fetched = links.get("\\");
+                if (fetched != null && !fetched.isExpired(System.currentTimeMillis())) {
+                    // fetched by a lookup that completed in the meantime
+                    return fetched.getReferral() != NEGATIVE_ENTRY ? fetched.getReferral() : null;
+                }
+                log.trace("Loadings roots");
+                final String refServerName = domain;
+                final DfsReferralDataInternal rdr = fetchRootReferral(tf, domain, root, refServerName);
+                cacheRootReferral(tf, links, rdr);
+                return rdr;
+            });
         } else {
-            dr = links.map.get("\\");
+            dr = rootEntry.getReferral();
+            if (dr == NEGATIVE_ENTRY) {
+                dr = null;
+            } else {
+                scheduleRefresh(rootEntry, now, () -> this.lookups.execute(lookupKey, () -> {
+                    final DfsReferralDataInternal fresh = fetchRootReferral(tf, domain, root, domain);
+                    if (fresh != null) {
+                        cacheRootReferral(tf, links, fresh);
+                    }
+                    return fresh;
+                }));
+            }
         }
 
-        if (links != null) {
+        if (dr != null) {
             return getLinkReferral(tf, domain, root, path, dr, now, links);
         }
-        return dr;
+        return null;
     }
 
     /**
      * @param tf
-     * @param domain
-     * @param root
-     * @param roots
-     * @param dr
      * @param links
-     * @return
+     * @param dr
      */
-    private static CacheEntry<DfsReferralDataInternal> cacheRootReferral(final CIFSContext tf, final String domain, final String root,
-            final Map<String, CacheEntry<DfsReferralDataInternal>> roots, final DfsReferralDataInternal dr,
-            CacheEntry<DfsReferralDataInternal> links) {
+    private static void cacheRootReferral(final CIFSContext tf, final DfsReferralCache links, final DfsReferralDataInternal dr) {
         if (dr != null) {
-            links = new CacheEntry<>(tf.getConfig().getDfsTtl());
-            links.map.put("\\", dr);
+            links.put("\\", dr, dr.getExpiration());
+            final Map<String, DfsReferralDataInternal> view = links.asMap();
             DfsReferralDataInternal tmp = dr;
             do {
                 /*
@@ -525,7 +557,7 @@ public class DfsImpl implements DfsResolver {
                  * attempts to resolve DFS use the last successful
                  * referral first.
                  */
-                tmp.setCacheMap(links.map);
+                tmp.setCacheMap(view);
                 tmp.setKey("\\");
                 tmp = tmp.next();
             } while (tmp != dr);
@@ -533,12 +565,9 @@ public class DfsImpl implements DfsResolver {
             if (log.isDebugEnabled()) {
                 log.debug("Have referral " + dr);
             }
-
-            roots.put(root, links);
         } else {
-            roots.put(root, new NegativeCacheEntry<>(tf.getConfig().getDfsTtl()));
+            links.put("\\", NEGATIVE_ENTRY, System.currentTimeMillis() + tf.getConfig().getDfsTtl() * 1000L);
         }
-        return links;
     }
 
     /**
@@ -602,9 +631,8 @@ public class DfsImpl implements DfsResolver {
      * @throws SmbAuthException
      */
     private DfsReferralDataInternal getLinkReferral(final CIFSContext tf, final String domain, final String root, final String path,
-            final DfsReferralDataInternal rootDr, final long now, final CacheEntry<DfsReferralDataInternal> links) throws SmbAuthException {
-        DfsReferralDataInternal dr = rootDr;
-        String link;
+            final DfsReferralDataInternal rootDr, final long now, final DfsReferralCache links) throws SmbAuthException {
+        final String link;
 
         if (path == null || path.length() <= 1) {
             /*
@@ -623,88 +651,104 @@ public class DfsImpl implements DfsResolver {
             log.trace("Initial link is " + link);
         }
 
-        if (dr == null || !link.equals(dr.getLink())) {
-            while (true) {
-                dr = links.map.get(link);
-
-                if (dr != null) {
-                    if (log.isTraceEnabled()) {
-                        log.trace("Found at " + link);
-                    }
-                    break;
-                }
-
-                // walk up trying to find a match, do not go up to the root
-                final int nextSep = link.lastIndexOf('\\');
-                if (nextSep <= 0) {
-                    if (log.isTraceEnabled()) {
-                        log.trace("Not found " + link);
-                    }
-                    break;
-                }
-                link = link.substring(0, nextSep);
-            }
+        if (link.equals("\\")) {
+            return rootDr;
         }
 
-        if (dr != null && now > dr.getExpiration()) {
+        // longest cached link that is a prefix of the path, do not go up to the root
+        final DfsReferralCache.Entry e = links.lookup(link, 1, now);
+        if (e != null) {
             if (log.isTraceEnabled()) {
-                log.trace("Expiring links " + link);
+                log.trace("Have cached referral for " + e.getPath() + " " + e.getReferral());
             }
-            links.map.remove(link);
-            dr = null;
+            scheduleRefresh(e, now, () -> {
+                final DfsReferralCache.Entry re = links.get("\\");
+                if (re != null && re.getReferral() != NEGATIVE_ENTRY) {
+                    this.lookups.execute(linkLookupKey(domain, root, e.getPath()),
+                            () -> fetchLinkReferral(tf, domain, root, e.getPath(), re.getReferral(), links));
+                }
+            });
+            return e.getReferral();
         }
 
-        if (dr == null) {
-            if (tf.getConfig().isDfsConvertToFQDN()) {
-                rootDr.fixupDomain(domain);
+        if (log.isTraceEnabled()) {
+            log.trace("Not found " + link);
+        }
+        return this.lookups.execute(linkLookupKey(domain, root, link), () -> {
+            final DfsReferralCache.Entry fetched = links.lookup(link, 1, System.currentTimeMillis());
+            if (fetched != null) {
+                // fetched by a lookup that completed in the meantime
+                return fetched.getReferral();
             }
+            return fetchLinkReferral(tf, domain, root, path, rootDr, links);
+        });
+    }
 
-            try (SmbTransportInternal trans = getReferralTransport(tf, rootDr)) {
-                if (trans == null) {
-                    return null;
-                }
+    private static String linkLookupKey(final String domain, final String root, final String link) {
+        return "link:" + domain + "\\" + root + link.toLowerCase(Locale.ROOT);
+    }
 
-                dr = getReferral(tf, trans, domain, domain, trans.getRemoteHostName(), root, path);
-                if (dr != null) {
+    /**
+     * @param tf
+     * @param domain
+     * @param root
+     * @param path
+     * @param rootDr
+     * @param links
+     * @return
+     * @throws SmbAuthException
+     */
+    private DfsReferralDataInternal fetchLinkReferral(final CIFSContext tf, final String domain, final String root, final String path,
+            final DfsReferralDataInternal rootDr, final DfsReferralCache links) throws SmbAuthException {
+        if (tf.getConfig().isDfsConvertToFQDN()) {
+            rootDr.fixupDomain(domain);
+        }
 
-                    if (tf.getConfig().isDfsConvertToFQDN() && dr instanceof DfsReferralDataImpl) {
-                        ((DfsReferralDataImpl) dr).fixupDomain(domain);
-                    }
+        try (SmbTransportInternal trans = getReferralTransport(tf, rootDr)) {
+            if (trans == null) {
+                return null;
+            }
 
-                    DfsReferralDataInternal next = dr;
-                    do {
-                        next.stripPathConsumed(1 + domain.length() + 1 + root.length());
-                        next = next.next();
-                    } while (next != dr);
+            final DfsReferralDataInternal dr = getReferral(tf, trans, domain, domain, trans.getRemoteHostName(), root, path);
+            if (dr == null) {
+                log.debug("No referral found for " + path);
+                return null;
+            }
 
-                    if (dr.getPathConsumed() > (path != null ? path.length() : 0)) {
-                        log.error("Consumed more than we provided");
-                    }
+            if (tf.getConfig().isDfsConvertToFQDN() && dr instanceof DfsReferralDataImpl) {
+                ((DfsReferralDataImpl) dr).fixupDomain(domain);
+            }
 
-                    link = path != null && dr.getPathConsumed() > 0 ? path.substring(0, dr.getPathConsumed()) : "\\";
-                    dr.setLink(link);
-                    if (log.isTraceEnabled()) {
-                        log.trace("Have referral " + dr);
-                    }
-                    links.map.put(link, dr);
-                } else {
-                    log.debug("No referral found for " + link);
-                }
+            DfsReferralDataInternal next = dr;
+            do {
+                next.stripPathConsumed(1 + domain.length() + 1 + root.length());
+                next = next.next();
+            } while (next != dr);
+
+            if (dr.getPathConsumed() > (path != null ? path.length() : 0)) {
+                log.error("Consumed more than we provided");
+            }
+
+            final String link = path != null && dr.getPathConsumed() > 0 ? path.substring(0, dr.getPathConsumed()) : "\\";
+            dr.setLink(link);
+            if (log.isTraceEnabled()) {
+                log.trace("Have referral " + dr);
             }
-        } else if (log.isTraceEnabled()) {
-            log.trace("Have cached referral for " + dr.getLink() + " " + dr);
+            links.put(link, dr, dr.getExpiration());
+            return dr;
         }
-        return dr;
     }
 
     /**
+     * @param tf
      * @param domain
      * @param root
      * @param path
      * @param now
      * @return
      */
-    private DfsReferralDataInternal getStandaloneCached(final String domain, final String root, final String path, final long now) {
+    private DfsReferralDataInternal getStandaloneCached(final CIFSContext tf, final String domain, final String root, final String path,
+            final long now) {
         if (log.isTraceEnabled()) {
             log.trace("No match for domain based root, checking standalone " + domain);
         }
@@ -712,50 +756,74 @@ public class DfsImpl implements DfsResolver {
          * We did not match a domain based root. Now try to match the
          * longest path in the list of stand-alone referrals.
          */
-
-        CacheEntry<DfsReferralDataInternal> refs;
-        synchronized (this.referralsLock) {
-            refs = this.referrals;
-            if (refs == null || now > refs.expiration) {
-                refs = new CacheEntry<>(0);
-            }
-            this.referrals = refs;
-        }
         String key = "\\" + domain + "\\" + root;
         if (!path.equals("\\")) {
             key += path;
         }
 
-        key = key.toLowerCase(Locale.ROOT);
-
-        final int searchLen = key.length();
-        for (final String cachedKey : refs.map.keySet()) {
-            final int cachedKeyLen = cachedKey.length();
-
-            boolean match = false;
-            if (cachedKeyLen == searchLen) {
-                match = cachedKey.equals(key);
-            } else if (cachedKeyLen < searchLen) {
-                match = key.startsWith(cachedKey);
-            } else if (log.isTraceEnabled()) {
-                log.trace(key + " vs. " + cachedKey);
+        final DfsReferralCache.Entry e = this.referrals.lookup(key, 2, now);
+        if (e == null) {
+            if (log.isTraceEnabled()) {
+                log.trace("No match for " + key);
             }
+            return null;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Matched " + e.getPath());
+        }
+        scheduleRefresh(e, now, () -> refreshStandalone(tf, e));
+        return e.getReferral();
+    }
 
-            if (match) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Matched " + cachedKey);
-                }
-                return refs.map.get(cachedKey);
+    private void refreshStandalone(final CIFSContext tf, final DfsReferralCache.Entry e) throws IOException {
+        final String path = e.getPath();
+        final String server = path.substring(1, path.indexOf('\\', 1));
+        try (SmbTransportInternal trans = tf.getTransportPool()
+                .getSmbTransport(tf, server, 0, false, false)
+                .unwrap(SmbTransportInternal.class)) {
+            final DfsReferralData dr = sendReferralRequest(trans, tf, path, server, e.getReferral().getDomain());
+            if (dr != null) {
+                cache(tf, path, dr);
             }
         }
-        if (log.isTraceEnabled()) {
-            log.trace("No match for " + key);
+    }
+
+    private DfsReferralData sendReferralRequest(final SmbTransportInternal trans, final CIFSContext tf, final String path,
+            final String targetHost, final String targetDomain) throws CIFSException {
+        final long start = System.nanoTime();
+        try {
+            return trans.getDfsReferrals(tf, path, targetHost, targetDomain, 0);
+        } catch (final CIFSException | RuntimeException e) {
+            this.referralFailures.increment();
+            throw e;
+        } finally {
+            this.referralRequests.increment();
+            this.referralTime.add(System.nanoTime() - start);
         }
-        return null;
     }
 
     @Override
-    public synchronized void cache(final CIFSContext tc, final String path, final DfsReferralData dr) {
+    public long getReferralRequestCount() {
+        return this.referralRequests.sum();
+    }
+
+    @Override
+    public long getReferralFailureCount() {
+        return this.referralFailures.sum();
+    }
+
+    @Override
+    public long getReferralTimeNanos() {
+        return this.referralTime.sum();
+    }
+
+    @Override
+    public long getCoalescedLookupCount() {
+        return this.lookups.getCoalescedCount();
+    }
+
+    @Override
+    public void cache(final CIFSContext tc, final String path, final DfsReferralData dr) {
         if (tc.getConfig().isDfsDisabled() || !(dr instanceof DfsReferralDataInternal)) {
             return;
         }
@@ -774,7 +842,7 @@ public class DfsImpl implements DfsResolver {
 
         final String server = path.substring(1, s1).toLowerCase(Locale.ROOT);
         final String share = path.substring(s1 + 1, s2);
-        String key = path.substring(0, dr.getPathConsumed()).toLowerCase(Locale.ROOT);
+        final String key = path.substring(0, dr.getPathConsumed());
 
         final DfsReferralDataInternal dri = (DfsReferralDataInternal) dr;
 
@@ -798,21 +866,38 @@ public class DfsImpl implements DfsResolver {
             next = next.next();
         } while (next != dri);
 
-        if (key.charAt(key.length() - 1) != '\\') {
-            key += '\\';
-        }
+        this.referrals.put(key, dri, dri.getExpiration());
+    }
 
+    /**
+     * Refresh a cache entry in the background if it is used close to its expiration
+     *
+     * Only one refresh per entry is started. A successful refresh replaces the entry, after a failure the entry is kept
+     * until it expires and is then fetched again on demand.
+     */
+    private void scheduleRefresh(final DfsReferralCache.Entry e, final long now, final Refresh refresh) {
+        if (!e.startRefresh(now)) {
+            return;
+        }
         if (log.isDebugEnabled()) {
-            log.debug("Key is " + key);
+            log.debug("Refreshing referral for " + e.getPath() + " ahead of expiration");
         }
-
-        CacheEntry<DfsReferralDataInternal> refs = this.referrals;
-        synchronized (this.referralsLock) {
-            if (refs == null || System.currentTimeMillis() + 10000 > refs.expiration) {
-                refs = new CacheEntry<>(tc.getConfig().getDfsTtl());
-            }
-            this.referrals = refs;
+        try {
+            this.refreshExecutor.execute(() -> {
+                try {
+                    refresh.run();
+                } catch (final IOException | RuntimeException ex) {
+                    log.debug("Failed to refresh referral for " + e.getPath(), ex);
+                }
+            });
+        } catch (final RejectedExecutionException ex) {
+            e.refreshDone();
         }
-        refs.map.put(key, dri);
+    }
+
+    @FunctionalInterface
+    private interface Refresh {
+
+        void run() throws IOException;
     }
 }
@@ -0,0 +1,293 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.impl;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.codelibs.jcifs.smb.internal.dfs.DfsReferralDataInternal;
+
+/**
+ * Path component trie holding DFS referrals
+ *
+ * Keys are backslash separated paths that are matched case insensitively component by component, so a lookup costs
+ * one hash probe per path component regardless of the number of cached referrals. Every entry carries its own
+ * expiration, entries are never dropped as a group.
+ *
+ * Lookups do not lock, insertions and removals only touch the node of the affected path.
+ */
+final class DfsReferralCache {
+
+    /**
+     * Fraction of an entry's lifetime after which it becomes eligible for refresh
+     */
+    private static final int REFRESH_DIVISOR = 5;
+
+    private final Node root = new Node();
+
+    /**
+     * Cached referral
+     */
+    static final class Entry {
+
+        private final String path;
+        private final DfsReferralDataInternal referral;
+        private final long refreshAfter;
+        private final long expiration;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(final String path, final DfsReferralDataInternal referral, final long now, final long expiration) {
+            this.path = path;
+            this.referral = referral;
+            this.expiration = expiration;
+            this.refreshAfter = expiration - Math.max(0, expiration - now) / REFRESH_DIVISOR;
+        }
+
+        /**
+         * @return the path this entry was inserted with
+         */
+        String getPath() {
+            return this.path;
+        }
+
+        /**
+         * @return the cached referral
+         */
+        DfsReferralDataInternal getReferral() {
+            return this.referral;
+        }
+
+        /**
+         * @return expiration time in milliseconds
+         */
+        long getExpiration() {
+            return this.expiration;
+        }
+
+        boolean isExpired(final long now) {
+            return now > this.expiration;
+        }
+
+        /**
+         * Claim the refresh of this entry
+         *
+         * An entry is due for refresh once it is used during the last part of its lifetime. Only one caller can claim
+         * the refresh until {@link #refreshDone()} is called.
+         *
+         * @param now
+         *            current time in milliseconds
+         * @return whether the caller should refresh this entry
+         */
+        boolean startRefresh(final long now) {
+            return now >= this.refreshAfter && !isExpired(now) && this.refreshing.compareAndSet(false, true);
+        }
+
+        void refreshDone() {
+            this.refreshing.set(false);
+        }
+    }
+
+    private static final class Node {
+
+        final Map<String, Node> children = new ConcurrentHashMap<>(4);
+        volatile Entry entry;
+    }
+
+    /**
+     * Insert or replace a referral
+     *
+     * @param path
+     *            backslash separated path
+     * @param referral
+     *            the referral
+     * @param expiration
+     *            expiration time in milliseconds
+     * @return the new entry
+     */
+    Entry put(final String path, final DfsReferralDataInternal referral, final long expiration) {
+        final Entry e = new Entry(path, referral, System.currentTimeMillis(), expiration);
+        Node n = this.root;
+        int i = skipSeparators(path, 0);
+        while (i < path.length()) {
+            final int end = componentEnd(path, i);
+            n = n.children.computeIfAbsent(key(path, i, end), k -> new Node());
+            i = skipSeparators(path, end);
+        }
+        n.entry = e;
+        return e;
+    }
+
+    /**
+     * @param path
+     *            backslash separated path
+     * @return the entry stored for exactly this path, or null
+     */
+    Entry get(final String path) {
+        final Node n = find(path);
+        return n != null ? n.entry : null;
+    }
+
+    /**
+     * Remove an entry, unless it has been replaced in the meantime
+     *
+     * @param path
+     *            backslash separated path
+     * @param e
+     *            the entry to remove
+     */
+    void remove(final String path, final Entry e) {
+        final Node n = find(path);
+        if (n != null && n.entry == e) {
+            n.entry = null;
+        }
+    }
+
+    /**
+     * Find the entry with the longest path that is a prefix of the given one
+     *
+     * Expired entries are removed along the way and never returned.
+     *
+     * @param path
+     *            backslash separated path
+     * @param minDepth
+     *            minimum number of path components an entry must have to match
+     * @param now
+     *            current time in milliseconds
+     * @return the longest matching entry, or null
+     */
+    Entry lookup(final String path, final int minDepth, final long now) {
+        Entry match = null;
+        Node n = this.root;
+        int depth = 0;
+        int i = skipSeparators(path, 0);
+        while (n != null) {
+            final Entry e = n.entry;
+            if (e != null && depth >= minDepth) {
+                if (e.isExpired(now)) {
+                    if (n.entry == e) {
+                        n.entry = null;
+                    }
+                } else {
+                    match = e;
+                }
+            }
+            if (i >= path.length()) {
+                break;
+            }
+            final int end = componentEnd(path, i);
+            n = n.children.get(key(path, i, end));
+            i = skipSeparators(path, end);
+            depth++;
+        }
+        return match;
+    }
+
+    /**
+     * @return all entries currently stored
+     */
+    List<Entry> entries() {
+        final List<Entry> res = new ArrayList<>();
+        collect(this.root, res);
+        return res;
+    }
+
+    /**
+     * Map view for {@link DfsReferralDataInternal#setCacheMap(Map)}
+     *
+     * Putting a referral through this view replaces the referral stored at that path while keeping its expiration, this
+     * is how a referral that was successfully used moves to the front of its list.
+     *
+     * @return map view keyed by path
+     */
+    Map<String, DfsReferralDataInternal> asMap() {
+        return new MapView();
+    }
+
+    private Node find(final String path) {
+        Node n = this.root;
+        int i = skipSeparators(path, 0);
+        while (n != null && i < path.length()) {
+            final int end = componentEnd(path, i);
+            n = n.children.get(key(path, i, end));
+            i = skipSeparators(path, end);
+        }
+        return n;
+    }
+
+    private static void collect(final Node n, final List<Entry> res) {
+        final Entry e = n.entry;
+        if (e != null) {
+            res.add(e);
+        }
+        for (final Node c : n.children.values()) {
+            collect(c, res);
+        }
+    }
+
+    private static int skipSeparators(final String path, int i) {
+        while (i < path.length() && path.charAt(i) == '\\') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int componentEnd(final String path, final int start) {
+        final int end = path.indexOf('\\', start);
+        return end < 0 ? path.length() : end;
+    }
+
+    private static String key(final String path, final int start, final int end) {
+        return path.substring(start, end).toLowerCase(Locale.ROOT);
+    }
+
+    private final class MapView extends AbstractMap<String, DfsReferralDataInternal> {
+
+        @Override
+        public DfsReferralDataInternal get(final Object key) {
+            final DfsReferralCache.Entry e = key instanceof final String k ? DfsReferralCache.this.get(k) : null;
+            return e != null ? e.getReferral() : null;
+        }
+
+        @Override
+        public DfsReferralDataInternal put(final String key, final DfsReferralDataInternal value) {
+            final DfsReferralCache.Entry old = DfsReferralCache.this.get(key);
+            if (old == null) {
+                return null;
+            }
+            DfsReferralCache.this.put(key, value, old.getExpiration());
+            return old.getReferral();
+        }
+
+        @Override
+        public Set<Map.Entry<String, DfsReferralDataInternal>> entrySet() {
+            final Set<Map.Entry<String, DfsReferralDataInternal>> res = new HashSet<>();
+            for (final DfsReferralCache.Entry e : entries()) {
+                res.add(new SimpleImmutableEntry<>(e.getPath(), e.getReferral()));
+            }
+            return Collections.unmodifiableSet(res);
+        }
+    }
+}
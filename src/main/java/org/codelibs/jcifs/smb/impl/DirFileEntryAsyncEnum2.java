@@ -0,0 +1,177 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.impl;
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.codelibs.jcifs.smb.CIFSException;
+import org.codelibs.jcifs.smb.SmbConstants;
+import org.codelibs.jcifs.smb.SmbResource;
+import org.codelibs.jcifs.smb.internal.smb2.create.Smb2CloseRequest;
+import org.codelibs.jcifs.smb.internal.smb2.create.Smb2CreateRequest;
+import org.codelibs.jcifs.smb.internal.smb2.create.Smb2CreateResponse;
+import org.codelibs.jcifs.smb.internal.smb2.info.Smb2QueryDirectoryRequest;
+import org.codelibs.jcifs.smb.internal.smb2.info.Smb2QueryDirectoryResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * SMB2 directory listing driven by response futures
+ *
+ * The directory is opened and queried using a single compound, further queries are sent from a pool thread once the
+ * previous response has been received. The transport thread only decodes the results.
+ */
+final class DirFileEntryAsyncEnum2 {
+
+    private static final Logger log = LoggerFactory.getLogger(DirFileEntryAsyncEnum2.class);
+
+    private final SmbTreeHandleImpl th;
+    private final SmbResource parent;
+    private final String wildcard;
+    private final List<SmbResource> results = new ArrayList<>();
+    private byte[] fileId;
+    private int lastIndex;
+
+    /**
+     * @param th
+     *            connected tree, a reference is held until the listing completes
+     * @param parent
+     *            directory to list
+     * @param wildcard
+     *            file name pattern
+     */
+    DirFileEntryAsyncEnum2(final SmbTreeHandleImpl th, final SmbResource parent, final String wildcard) {
+        this.th = th.acquire();
+        this.parent = parent;
+        this.wildcard = wildcard;
+    }
+
+    /**
+     * @return future completed with the child resources
+     */
+    CompletableFuture<List<SmbResource>> start() {
+        final Smb2CreateRequest create = new Smb2CreateRequest(this.th.getConfig(), this.parent.getLocator().getUNCPath());
+        create.setCreateOptions(Smb2CreateRequest.FILE_DIRECTORY_FILE);
+        create.setDesiredAccess(SmbConstants.FILE_READ_DATA | SmbConstants.FILE_READ_ATTRIBUTES);
+        final Smb2QueryDirectoryRequest query = new Smb2QueryDirectoryRequest(this.th.getConfig());
+        query.setFileName(this.wildcard);
+        create.chain(query);
+
+        final CompletableFuture<Boolean> first;
+        try {
+            first = this.th.sendFuture(create).handle((r, e) -> {
+                final Smb2CreateResponse createResp = create.getResponse();
+                if (createResp != null && createResp.isReceived() && createResp.getStatus() == NtStatus.NT_STATUS_SUCCESS) {
+                    this.fileId = createResp.getFileId();
+                }
+                if (e != null) {
+                    final Smb2QueryDirectoryResponse qr = query.getResponse();
+                    if (this.fileId != null && qr != null && qr.isReceived() && qr.getStatus() == NtStatus.NT_STATUS_NO_SUCH_FILE) {
+                        // this simply indicates an empty listing
+                        return false;
+                    }
+                    throw wrap(e);
+                }
+                return add(query.getResponse());
+            });
+        } catch (final CIFSException e) {
+            done(null, e);
+            return CompletableFuture.failedFuture(e);
+        }
+        return first.thenComposeAsync(this::next).whenCompleteAsync(this::done);
+    }
+
+    private CompletableFuture<List<SmbResource>> next(final boolean more) {
+        if (!more) {
+            return CompletableFuture.completedFuture(this.results);
+        }
+        final Smb2QueryDirectoryRequest query = new Smb2QueryDirectoryRequest(this.th.getConfig(), this.fileId);
+        query.setFileName(this.wildcard);
+        query.setFileIndex(this.lastIndex);
+        query.setQueryFlags(Smb2QueryDirectoryRequest.SMB2_INDEX_SPECIFIED);
+        try {
+            return this.th.sendFuture(query).handle((r, e) -> {
+                if (e != null) {
+                    if (e instanceof final SmbException se && se.getNtStatus() == NtStatus.NT_STATUS_NO_MORE_FILES) {
+                        log.debug("End of listing", se);
+                        return false;
+                    }
+                    throw wrap(e);
+                }
+                return r.getStatus() != NtStatus.NT_STATUS_NO_MORE_FILES && add(r);
+            }).thenComposeAsync(this::next);
+        } catch (final CIFSException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private boolean add(final Smb2QueryDirectoryResponse r) {
+        final FileEntry[] entries = r.getResults();
+        if (entries == null || entries.length == 0) {
+            return false;
+        }
+        for (final FileEntry e : entries) {
+            final String name = e.getName();
+            if (name.length() < 3) {
+                final int h = name.hashCode();
+                if ((h == SmbFile.HASH_DOT || h == SmbFile.HASH_DOT_DOT) && (name.equals(".") || name.equals(".."))) {
+                    continue;
+                }
+            }
+            try {
+                this.results.add(new SmbFile(this.parent, name, true, SmbConstants.TYPE_FILESYSTEM, e.getAttributes(), e.createTime(),
+                        e.lastModified(), e.lastAccess(), e.length()));
+            } catch (final MalformedURLException ex) {
+                throw new CompletionException(new SmbException("Invalid file name " + name, ex));
+            }
+        }
+        this.lastIndex = entries[entries.length - 1].getFileIndex();
+        return true;
+    }
+
+    private void done(final List<SmbResource> list, final Throwable e) {
+        try {
+            if (e != null) {
+                for (final SmbResource r : this.results) {
+                    r.close();
+                }
+            }
+            if (this.fileId != null && this.th.isConnected()) {
+                try {
+                    this.th.sendFuture(new Smb2CloseRequest(this.th.getConfig(), this.fileId));
+                } catch (final CIFSException ex) {
+                    log.debug("Failed to close directory", ex);
+                }
+            }
+        } finally {
+            this.fileId = null;
+            this.th.release();
+        }
+    }
+
+    private static CompletionException wrap(final Throwable e) {
+        if (e instanceof final CompletionException ce) {
+            return ce;
+        }
+        return new CompletionException(e);
+    }
+}
@@ -44,5 +44,10 @@ public enum RequestParam {
     /**
      * Save the raw payload for further inspection
      */
-    RETAIN_PAYLOAD
+    RETAIN_PAYLOAD,
+
+    /**
+     * Do not block waiting for credits, only valid for asynchronous sends
+     */
+    NO_CREDIT_WAIT
 }
@@ -20,11 +20,19 @@ package org.codelibs.jcifs.smb.impl;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.codelibs.jcifs.smb.CIFSContext;
 import org.codelibs.jcifs.smb.CIFSException;
+import org.codelibs.jcifs.smb.Configuration;
 import org.codelibs.jcifs.smb.SidResolver;
 import org.codelibs.jcifs.smb.dcerpc.DcerpcHandle;
 import org.codelibs.jcifs.smb.dcerpc.UnicodeString;
@@ -41,6 +49,8 @@ import org.codelibs.jcifs.smb.dcerpc.msrpc.SamrPolicyHandle;
 import org.codelibs.jcifs.smb.dcerpc.msrpc.lsarpc;
 import org.codelibs.jcifs.smb.dcerpc.msrpc.lsarpc.LsarTranslatedName;
 import org.codelibs.jcifs.smb.dcerpc.msrpc.samr;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Internal use only: SID resolver cache
@@ -51,7 +61,14 @@ import org.codelibs.jcifs.smb.dcerpc.msrpc.samr;
  */
 public class SIDCacheImpl implements SidResolver {
 
-    private final Map<SID, SID> sidCache = new HashMap<>();
+    private static final Logger log = LoggerFactory.getLogger(SIDCacheImpl.class);
+
+    private final ConcurrentHashMap<SID, CachedName> sidCache = new ConcurrentHashMap<>();
+    private final ReentrantLock evictLock = new ReentrantLock();
+    private final int maxSize;
+    private final long ttl;
+
+    private final ConcurrentHashMap<LookupKey, Lookup> lookups = new ConcurrentHashMap<>();
 
     /**
      * Constructs a SID cache implementation.
@@ -59,6 +76,88 @@ public class SIDCacheImpl implements SidResolver {
      * @param baseContext the CIFS context for this cache
      */
     public SIDCacheImpl(final CIFSContext baseContext) {
+        final Configuration config = baseContext.getConfig();
+        this.maxSize = config != null ? config.getSidCacheMaxSize() : 10000;
+        this.ttl = config != null ? config.getSidCacheTtl() * 1000L : 3600 * 1000L;
+    }
+
+    /**
+     * Resolved name of a SID
+     */
+    private static final class CachedName {
+
+        final int type;
+        final String domainName;
+        final String acctName;
+        final long expiration;
+
+        CachedName(final SID sid, final long expiration) {
+            this.type = sid.type;
+            this.domainName = sid.domainName;
+            this.acctName = sid.acctName;
+            this.expiration = expiration;
+        }
+
+        void apply(final SID s) {
+            s.type = this.type;
+            s.domainName = this.domainName;
+            s.acctName = this.acctName;
+        }
+    }
+
+    /**
+     * Identifies the server and credentials used for a lookup
+     */
+    private static final class LookupKey {
+
+        final String server;
+        final CIFSContext tc;
+
+        LookupKey(final String server, final CIFSContext tc) {
+            this.server = server;
+            this.tc = tc;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof LookupKey)) {
+                return false;
+            }
+            final LookupKey o = (LookupKey) obj;
+            return Objects.equals(this.server, o.server) && this.tc == o.tc;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(this.server) * 31 + System.identityHashCode(this.tc);
+        }
+    }
+
+    /**
+     * SIDs waiting to be resolved with a single request
+     */
+    private static final class Batch {
+
+        final Map<SID, SID> sids = new LinkedHashMap<>();
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        boolean hasLeader;
+    }
+
+    /**
+     * Lookup state for one server
+     *
+     * Only one batch per server is sent at a time, SIDs requested in the meantime are collected into the next batch.
+     * The LSA policy handle stays open as long as batches keep arriving, the state is dropped once they stop.
+     */
+    private static final class Lookup {
+
+        final ReentrantLock lock = new ReentrantLock();
+        final ReentrantLock sendLock = new ReentrantLock();
+        Batch next;
+        boolean removed;
+
+        DcerpcHandle handle;
+        LsaPolicyHandle policyHandle;
     }
 
     void resolveSids(final DcerpcHandle handle, final LsaPolicyHandle policyHandle, final org.codelibs.jcifs.smb.SID[] sids)
@@ -99,48 +198,210 @@ public class SIDCacheImpl implements SidResolver {
 
     void resolveSids0(final String authorityServerName, final CIFSContext tc, final org.codelibs.jcifs.smb.SID[] sids)
             throws CIFSException {
-        synchronized (this.sidCache) {
-            try (DcerpcHandle handle = DcerpcHandle.getHandle("ncacn_np:" + authorityServerName + "[\\PIPE\\lsarpc]", tc)) {
+        final Lookup l = this.lookups.computeIfAbsent(new LookupKey(authorityServerName, tc), k -> new Lookup());
+        l.sendLock.lock();
+        try {
+            if (l.policyHandle == null) {
+                l.handle = DcerpcHandle.getHandle("ncacn_np:" + authorityServerName + "[\\PIPE\\lsarpc]", tc);
                 String server = authorityServerName;
                 final int dot = server.indexOf('.');
                 if (dot > 0 && !Character.isDigit(server.charAt(0))) {
                     server = server.substring(0, dot);
                 }
-                try (LsaPolicyHandle policyHandle = new LsaPolicyHandle(handle, "\\\\" + server, 0x00000800)) {
-                    resolveSids(handle, policyHandle, sids);
-                }
+                l.policyHandle = new LsaPolicyHandle(l.handle, "\\\\" + server, 0x00000800);
+            }
+            resolveSids(l.handle, l.policyHandle, sids);
+        } catch (final IOException e) {
+            closeLookup(l);
+            throw new CIFSException("Failed to resolve SIDs", e);
+        } finally {
+            l.sendLock.unlock();
+        }
+    }
+
+    private static void closeLookup(final Lookup l) {
+        final DcerpcHandle handle = l.handle;
+        final LsaPolicyHandle policyHandle = l.policyHandle;
+        l.handle = null;
+        l.policyHandle = null;
+        if (policyHandle != null) {
+            try {
+                policyHandle.close();
             } catch (final IOException e) {
-                throw new CIFSException("Failed to resolve SIDs", e);
+                log.debug("Failed to close LSA policy handle", e);
+            }
+        }
+        if (handle != null) {
+            try {
+                handle.close();
+            } catch (final IOException e) {
+                log.debug("Failed to close LSA handle", e);
             }
         }
     }
 
+    /**
+     * Resolve SIDs that are not cached
+     *
+     * Concurrent calls for the same server are merged into a single lookup. The first caller to add SIDs to a batch
+     * sends it once the previous batch for the server has completed.
+     */
+    private void resolveMissing(final String authorityServerName, final CIFSContext tc, final List<SID> missing) throws CIFSException {
+        final LookupKey key = new LookupKey(authorityServerName, tc);
+        Lookup l;
+        Batch b = null;
+        boolean leader = false;
+        do {
+            l = this.lookups.computeIfAbsent(key, k -> new Lookup());
+            l.lock.lock();
+            try {
+                // a lookup removed in the meantime must not be reused, retry with a fresh one
+                if (!l.removed) {
+                    if (l.next == null) {
+                        l.next = new Batch();
+                    }
+                    b = l.next;
+                    for (final SID s : missing) {
+                        b.sids.putIfAbsent(s, s);
+                    }
+                    leader = !b.hasLeader;
+                    b.hasLeader = true;
+                }
+            } finally {
+                l.lock.unlock();
+            }
+        } while (b == null);
+
+        if (leader) {
+            sendBatch(authorityServerName, tc, l, b);
+        }
+
+        try {
+            b.done.join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof CIFSException) {
+                throw (CIFSException) e.getCause();
+            }
+            throw new CIFSException("Failed to resolve SIDs", e.getCause());
+        }
+
+        for (final SID s : missing) {
+            final SID resolved = b.sids.get(s);
+            if (resolved != s) {
+                s.type = resolved.type;
+                s.domainName = resolved.domainName;
+                s.acctName = resolved.acctName;
+            }
+        }
+    }
+
+    private void sendBatch(final String authorityServerName, final CIFSContext tc, final Lookup l, final Batch b) {
+        boolean more = false;
+        l.sendLock.lock();
+        try {
+            l.lock.lock();
+            try {
+                // no more SIDs can be added from here on
+                l.next = null;
+            } finally {
+                l.lock.unlock();
+            }
+
+            final SID[] resolved = b.sids.values().toArray(new SID[b.sids.size()]);
+            if (log.isDebugEnabled()) {
+                log.debug("Resolving {} SIDs with {}", resolved.length, authorityServerName);
+            }
+            resolveSids0(authorityServerName, tc, resolved);
+            final long expiration = this.ttl > 0 ? System.currentTimeMillis() + this.ttl : -1;
+            for (final SID sid : resolved) {
+                this.sidCache.put(sid, new CachedName(sid, expiration));
+            }
+            evictIfFull();
+            b.done.complete(null);
+        } catch (final CIFSException | RuntimeException e) {
+            b.done.completeExceptionally(e);
+        } finally {
+            if (!b.done.isDone()) {
+                // an error propagates to this caller, the others waiting for the batch must not hang
+                b.done.completeExceptionally(new CIFSException("Failed to resolve SIDs"));
+            }
+            l.lock.lock();
+            try {
+                more = l.next != null;
+                if (!more) {
+                    // entries are keyed by context, do not keep them around once idle
+                    l.removed = true;
+                    this.lookups.remove(new LookupKey(authorityServerName, tc), l);
+                }
+            } finally {
+                l.lock.unlock();
+            }
+            if (!more) {
+                // keep the policy handle only while requests are queued
+                closeLookup(l);
+            }
+            l.sendLock.unlock();
+        }
+    }
+
+    private boolean getCached(final SID s, final long now) {
+        final CachedName c = this.sidCache.get(s);
+        if (c == null) {
+            return false;
+        }
+        if (c.expiration >= 0 && c.expiration < now) {
+            this.sidCache.remove(s, c);
+            return false;
+        }
+        c.apply(s);
+        return true;
+    }
+
+    /**
+     * Remove expired entries and, if the cache is still full, arbitrary further entries
+     *
+     * Eviction is not LRU, tracking access order would need a lock on every lookup.
+     */
+    private void evictIfFull() {
+        if (this.maxSize <= 0 || this.sidCache.size() <= this.maxSize || !this.evictLock.tryLock()) {
+            return;
+        }
+        try {
+            final long now = System.currentTimeMillis();
+            this.sidCache.values().removeIf(c -> c.expiration >= 0 && c.expiration < now);
+            // drop an additional tenth to avoid evicting on every insert
+            int excess = this.sidCache.size() - this.maxSize + this.maxSize / 10;
+            final Iterator<SID> it = this.sidCache.keySet().iterator();
+            while (excess-- > 0 && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        } finally {
+            this.evictLock.unlock();
+        }
+    }
+
+    /**
+     * @return number of cached SID names
+     */
+    int getCacheSize() {
+        return this.sidCache.size();
+    }
+
     @Override
     public void resolveSids(final CIFSContext tc, final String authorityServerName, final org.codelibs.jcifs.smb.SID[] sids,
             final int offset, final int length) throws CIFSException {
         final ArrayList<SID> list = new ArrayList<>(sids.length);
-        int si;
-
-        synchronized (this.sidCache) {
-            for (si = 0; si < length; si++) {
-                final SID s = sids[offset + si].unwrap(SID.class);
-                final SID sid = this.sidCache.get(s);
-                if (sid != null) {
-                    s.type = sid.type;
-                    s.domainName = sid.domainName;
-                    s.acctName = sid.acctName;
-                } else {
-                    list.add(s);
-                }
+        final long now = System.currentTimeMillis();
+        for (int si = 0; si < length; si++) {
+            final SID s = sids[offset + si].unwrap(SID.class);
+            if (!getCached(s, now)) {
+                list.add(s);
             }
+        }
 
-            if (list.size() > 0) {
-                final SID[] resolved = list.toArray(new SID[list.size()]);
-                resolveSids0(authorityServerName, tc, resolved);
-                for (si = 0; si < resolved.length; si++) {
-                    this.sidCache.put(resolved[si], resolved[si]);
-                }
-            }
+        if (list.size() > 0) {
+            resolveMissing(authorityServerName, tc, list);
         }
     }
 
@@ -149,8 +410,9 @@ public class SIDCacheImpl implements SidResolver {
      * <p>
      * This method will attempt
      * to resolve SIDs using a cache and cache the results of any SIDs that
-     * required resolving with the authority. SID cache entries are currently not
-     * expired because under normal circumstances SID information never changes.
+     * required resolving with the authority. Concurrent calls for the same server are
+     * merged into a single request. Cache entries expire after
+     * {@link Configuration#getSidCacheTtl()}.
      *
      * @param authorityServerName
      *            The hostname of the server that should be queried. For maximum efficiency this should be the hostname
@@ -168,28 +430,16 @@ public class SIDCacheImpl implements SidResolver {
     public void resolveSids(final CIFSContext tc, final String authorityServerName, final org.codelibs.jcifs.smb.SID[] sids)
             throws CIFSException {
         final ArrayList<SID> list = new ArrayList<>(sids.length);
-        int si;
-
-        synchronized (this.sidCache) {
-            for (si = 0; si < sids.length; si++) {
-                final SID s = sids[si].unwrap(SID.class);
-                final SID sid = this.sidCache.get(s);
-                if (sid != null) {
-                    s.type = sid.type;
-                    s.domainName = sid.domainName;
-                    s.acctName = sid.acctName;
-                } else {
-                    list.add(s);
-                }
+        final long now = System.currentTimeMillis();
+        for (int si = 0; si < sids.length; si++) {
+            final SID s = sids[si].unwrap(SID.class);
+            if (!getCached(s, now)) {
+                list.add(s);
             }
+        }
 
-            if (list.size() > 0) {
-                final SID[] resolved = list.toArray(new SID[list.size()]);
-                resolveSids0(authorityServerName, tc, resolved);
-                for (si = 0; si < resolved.length; si++) {
-                    this.sidCache.put(resolved[si], resolved[si]);
-                }
-            }
+        if (list.size() > 0) {
+            resolveMissing(authorityServerName, tc, list);
         }
     }
 
@@ -198,22 +448,20 @@ public class SIDCacheImpl implements SidResolver {
         final lsarpc.LsarDomainInfo info = new lsarpc.LsarDomainInfo();
         MsrpcQueryInformationPolicy rpc;
 
-        synchronized (this.sidCache) {
-            try (DcerpcHandle handle = DcerpcHandle.getHandle("ncacn_np:" + server + "[\\PIPE\\lsarpc]", tc)) {
-                // NetApp doesn't like the 'generic' access mask values
-                try (LsaPolicyHandle policyHandle = new LsaPolicyHandle(handle, null, 0x00000001)) {
-                    rpc = new MsrpcQueryInformationPolicy(policyHandle, (short) lsarpc.POLICY_INFO_ACCOUNT_DOMAIN, info);
-                    handle.sendrecv(rpc);
-                    if (rpc.retval != 0) {
-                        throw new SmbException(rpc.retval, false);
-                    }
+        try (DcerpcHandle handle = DcerpcHandle.getHandle("ncacn_np:" + server + "[\\PIPE\\lsarpc]", tc)) {
+            // NetApp doesn't like the 'generic' access mask values
+            try (LsaPolicyHandle policyHandle = new LsaPolicyHandle(handle, null, 0x00000001)) {
+                rpc = new MsrpcQueryInformationPolicy(policyHandle, (short) lsarpc.POLICY_INFO_ACCOUNT_DOMAIN, info);
+                handle.sendrecv(rpc);
+                if (rpc.retval != 0) {
+                    throw new SmbException(rpc.retval, false);
                 }
-
-                return new SID(info.sid, org.codelibs.jcifs.smb.SID.SID_TYPE_DOMAIN, new UnicodeString(info.name, false).toString(), null,
-                        false);
-            } catch (final IOException e) {
-                throw new CIFSException("Failed to get SID from server", e);
             }
+
+            return new SID(info.sid, org.codelibs.jcifs.smb.SID.SID_TYPE_DOMAIN, new UnicodeString(info.name, false).toString(), null,
+                    false);
+        } catch (final IOException e) {
+            throw new CIFSException("Failed to get SID from server", e);
         }
     }
 
@@ -223,34 +471,32 @@ public class SIDCacheImpl implements SidResolver {
         final lsarpc.LsarSidArray sidarray = new lsarpc.LsarSidArray();
         MsrpcGetMembersInAlias rpc = null;
 
-        synchronized (this.sidCache) {
-            try (DcerpcHandle handle = DcerpcHandle.getHandle("ncacn_np:" + authorityServerName + "[\\PIPE\\samr]", tc)) {
-                final SamrPolicyHandle policyHandle = new SamrPolicyHandle(handle, authorityServerName, 0x00000030);
-                final SamrDomainHandle domainHandle = new SamrDomainHandle(handle, policyHandle, 0x00000200, domsid.unwrap(sid_t.class));
-                try (SamrAliasHandle aliasHandle = new SamrAliasHandle(handle, domainHandle, 0x0002000c, rid)) {
-                    rpc = new MsrpcGetMembersInAlias(aliasHandle, sidarray);
-                    handle.sendrecv(rpc);
-                    if (rpc.retval != 0) {
-                        throw new SmbException(rpc.retval, false);
-                    }
-                    final SID[] sids = new SID[rpc.sids.num_sids];
+        try (DcerpcHandle handle = DcerpcHandle.getHandle("ncacn_np:" + authorityServerName + "[\\PIPE\\samr]", tc)) {
+            final SamrPolicyHandle policyHandle = new SamrPolicyHandle(handle, authorityServerName, 0x00000030);
+            final SamrDomainHandle domainHandle = new SamrDomainHandle(handle, policyHandle, 0x00000200, domsid.unwrap(sid_t.class));
+            try (SamrAliasHandle aliasHandle = new SamrAliasHandle(handle, domainHandle, 0x0002000c, rid)) {
+                rpc = new MsrpcGetMembersInAlias(aliasHandle, sidarray);
+                handle.sendrecv(rpc);
+                if (rpc.retval != 0) {
+                    throw new SmbException(rpc.retval, false);
+                }
+                final SID[] sids = new SID[rpc.sids.num_sids];
 
-                    final String origin_server = handle.getServer();
-                    final CIFSContext origin_ctx = handle.getTransportContext();
+                final String origin_server = handle.getServer();
+                final CIFSContext origin_ctx = handle.getTransportContext();
 
-                    for (int i = 0; i < sids.length; i++) {
-                        sids[i] = new SID(rpc.sids.sids[i].sid, 0, null, null, false);
-                        sids[i].origin_server = origin_server;
-                        sids[i].origin_ctx = origin_ctx;
-                    }
-                    if (sids.length > 0 && (flags & SID.SID_FLAG_RESOLVE_SIDS) != 0) {
-                        resolveSids(origin_ctx, origin_server, sids);
-                    }
-                    return sids;
+                for (int i = 0; i < sids.length; i++) {
+                    sids[i] = new SID(rpc.sids.sids[i].sid, 0, null, null, false);
+                    sids[i].origin_server = origin_server;
+                    sids[i].origin_ctx = origin_ctx;
                 }
-            } catch (final IOException e) {
-                throw new CIFSException("Failed to get group member SIDs", e);
+                if (sids.length > 0 && (flags & SID.SID_FLAG_RESOLVE_SIDS) != 0) {
+                    resolveSids(origin_ctx, origin_server, sids);
+                }
+                return sids;
             }
+        } catch (final IOException e) {
+            throw new CIFSException("Failed to get group member SIDs", e);
         }
 
     }
@@ -265,45 +511,43 @@ public class SIDCacheImpl implements SidResolver {
     public Map<org.codelibs.jcifs.smb.SID, List<org.codelibs.jcifs.smb.SID>> getLocalGroupsMap(final CIFSContext tc,
             final String authorityServerName, final int flags) throws CIFSException {
         final SID domSid = getServerSid(tc, authorityServerName);
-        synchronized (this.sidCache) {
-            try (DcerpcHandle handle = DcerpcHandle.getHandle("ncacn_np:" + authorityServerName + "[\\PIPE\\samr]", tc)) {
-                final samr.SamrSamArray sam = new samr.SamrSamArray();
-                try (SamrPolicyHandle policyHandle = new SamrPolicyHandle(handle, authorityServerName, 0x02000000);
-                        SamrDomainHandle domainHandle = new SamrDomainHandle(handle, policyHandle, 0x02000000, domSid)) {
-                    final MsrpcEnumerateAliasesInDomain rpc = new MsrpcEnumerateAliasesInDomain(domainHandle, 0xFFFF, sam);
-                    handle.sendrecv(rpc);
-                    if (rpc.retval != 0) {
-                        throw new SmbException(rpc.retval, false);
-                    }
+        try (DcerpcHandle handle = DcerpcHandle.getHandle("ncacn_np:" + authorityServerName + "[\\PIPE\\samr]", tc)) {
+            final samr.SamrSamArray sam = new samr.SamrSamArray();
+            try (SamrPolicyHandle policyHandle = new SamrPolicyHandle(handle, authorityServerName, 0x02000000);
+                    SamrDomainHandle domainHandle = new SamrDomainHandle(handle, policyHandle, 0x02000000, domSid)) {
+                final MsrpcEnumerateAliasesInDomain rpc = new MsrpcEnumerateAliasesInDomain(domainHandle, 0xFFFF, sam);
+                handle.sendrecv(rpc);
+                if (rpc.retval != 0) {
+                    throw new SmbException(rpc.retval, false);
+                }
 
-                    final Map<org.codelibs.jcifs.smb.SID, List<org.codelibs.jcifs.smb.SID>> map = new HashMap<>();
-
-                    for (int ei = 0; ei < rpc.sam.count; ei++) {
-                        final samr.SamrSamEntry entry = rpc.sam.entries[ei];
-
-                        final SID[] mems = getGroupMemberSids(tc, authorityServerName, domSid, entry.idx, flags);
-                        final SID groupSid = new SID(domSid, entry.idx);
-                        groupSid.type = org.codelibs.jcifs.smb.SID.SID_TYPE_ALIAS;
-                        groupSid.domainName = domSid.getDomainName();
-                        groupSid.acctName = new UnicodeString(entry.name, false).toString();
-
-                        for (final SID mem : mems) {
-                            List<org.codelibs.jcifs.smb.SID> groups = map.get(mem);
-                            if (groups == null) {
-                                groups = new ArrayList<>();
-                                map.put(mem, groups);
-                            }
-                            if (!groups.contains(groupSid)) {
-                                groups.add(groupSid);
-                            }
+                final Map<org.codelibs.jcifs.smb.SID, List<org.codelibs.jcifs.smb.SID>> map = new HashMap<>();
+
+                for (int ei = 0; ei < rpc.sam.count; ei++) {
+                    final samr.SamrSamEntry entry = rpc.sam.entries[ei];
+
+                    final SID[] mems = getGroupMemberSids(tc, authorityServerName, domSid, entry.idx, flags);
+                    final SID groupSid = new SID(domSid, entry.idx);
+                    groupSid.type = org.codelibs.jcifs.smb.SID.SID_TYPE_ALIAS;
+                    groupSid.domainName = domSid.getDomainName();
+                    groupSid.acctName = new UnicodeString(entry.name, false).toString();
+
+                    for (final SID mem : mems) {
+                        List<org.codelibs.jcifs.smb.SID> groups = map.get(mem);
+                        if (groups == null) {
+                            groups = new ArrayList<>();
+                            map.put(mem, groups);
+                        }
+                        if (!groups.contains(groupSid)) {
+                            groups.add(groupSid);
                         }
                     }
-
-                    return map;
                 }
-            } catch (final IOException e) {
-                throw new CIFSException("Failed to resolve groups", e);
+
+                return map;
             }
+        } catch (final IOException e) {
+            throw new CIFSException("Failed to resolve groups", e);
         }
     }
 }
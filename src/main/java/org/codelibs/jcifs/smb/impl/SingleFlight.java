@@ -0,0 +1,124 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.impl;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces concurrent executions of the same operation
+ *
+ * While an operation for a key is running, further callers for the same key do not start their own but wait for the
+ * running one and receive its result or exception. Results are not retained once the operation completes, caching is
+ * up to the caller.
+ *
+ * @param <K>
+ *            key type
+ * @param <V>
+ *            result type
+ */
+final class SingleFlight<K, V> {
+
+    /**
+     * Operation to run
+     *
+     * @param <V>
+     *            result type
+     * @param <E>
+     *            exception type
+     */
+    @FunctionalInterface
+    interface Loader<V, E extends Exception> {
+
+        /**
+         * @return the result, may be null
+         * @throws E
+         *             if the operation fails
+         */
+        V load() throws E;
+    }
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Run the operation, or wait for the one already running for this key
+     *
+     * @param <E>
+     *            exception type
+     * @param key
+     *            operation key
+     * @param loader
+     *            operation to run if none is in flight for the key
+     * @return the operation result
+     * @throws E
+     *             if the operation failed, waiting callers receive the same exception instance
+     */
+    <E extends Exception> V execute(final K key, final Loader<V, E> loader) throws E {
+        final CompletableFuture<V> f = new CompletableFuture<>();
+        final CompletableFuture<V> running = this.inFlight.putIfAbsent(key, f);
+        if (running != null) {
+            this.coalesced.increment();
+            return await(running);
+        }
+
+        try {
+            final V v = loader.load();
+            f.complete(v);
+            return v;
+        } catch (final Throwable t) {
+            f.completeExceptionally(t);
+            throw t;
+        } finally {
+            this.inFlight.remove(key, f);
+        }
+    }
+
+    /**
+     * @return number of callers that waited for an operation already in flight
+     */
+    long getCoalescedCount() {
+        return this.coalesced.sum();
+    }
+
+    /**
+     * @return number of operations currently running
+     */
+    int getInFlightCount() {
+        return this.inFlight.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V, E extends Exception> V await(final CompletableFuture<V> f) throws E {
+        try {
+            return f.join();
+        } catch (final CompletionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof final RuntimeException re) {
+                throw re;
+            }
+            if (cause instanceof final Error err) {
+                throw err;
+            }
+            throw (E) cause;
+        }
+    }
+}
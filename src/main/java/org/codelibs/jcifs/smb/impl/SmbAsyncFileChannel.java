@@ -0,0 +1,176 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonReadableChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Asynchronous file channel backed by an open SMB2 file handle
+ *
+ * Each read or write is a single request, see {@link org.codelibs.jcifs.smb.SmbFileHandle#readAsync(ByteBuffer, long)}.
+ * Completion handlers run on the given executor, never on the transport thread.
+ *
+ * File locks are not supported.
+ */
+public final class SmbAsyncFileChannel extends AsynchronousFileChannel {
+
+    private final SmbFileHandleImpl handle;
+    private final SmbFileChannel channel;
+    private final boolean readable;
+    private final boolean writable;
+    private final Executor executor;
+
+    /**
+     * @param handle
+     *            open file handle, this channel takes ownership
+     * @param readable
+     *            whether the file is opened for reading
+     * @param writable
+     *            whether the file is opened for writing
+     * @param executor
+     *            executor running completion handlers, the common pool if null
+     */
+    SmbAsyncFileChannel(final SmbFileHandleImpl handle, final boolean readable, final boolean writable, final Executor executor) {
+        this.handle = handle;
+        this.channel = new SmbFileChannel(handle, readable, writable, false);
+        this.readable = readable;
+        this.writable = writable;
+        this.executor = executor != null ? executor : ForkJoinPool.commonPool();
+    }
+
+    @Override
+    public long size() throws IOException {
+        return this.channel.size();
+    }
+
+    @Override
+    public AsynchronousFileChannel truncate(final long size) throws IOException {
+        this.channel.truncate(size);
+        return this;
+    }
+
+    @Override
+    public void force(final boolean metaData) throws IOException {
+        this.channel.force(metaData);
+    }
+
+    @Override
+    public Future<Integer> read(final ByteBuffer dst, final long position) {
+        return readAsync(dst, position);
+    }
+
+    @Override
+    public <A> void read(final ByteBuffer dst, final long position, final A attachment,
+            final CompletionHandler<Integer, ? super A> handler) {
+        complete(readAsync(dst, position), attachment, handler);
+    }
+
+    @Override
+    public Future<Integer> write(final ByteBuffer src, final long position) {
+        return writeAsync(src, position);
+    }
+
+    @Override
+    public <A> void write(final ByteBuffer src, final long position, final A attachment,
+            final CompletionHandler<Integer, ? super A> handler) {
+        complete(writeAsync(src, position), attachment, handler);
+    }
+
+    private CompletableFuture<Integer> readAsync(final ByteBuffer dst, final long position) {
+        if (position < 0) {
+            throw new IllegalArgumentException("Negative position");
+        }
+        if (!isOpen()) {
+            return CompletableFuture.failedFuture(new ClosedChannelException());
+        }
+        if (!this.readable) {
+            throw new NonReadableChannelException();
+        }
+        return this.handle.readAsync(dst, position);
+    }
+
+    private CompletableFuture<Integer> writeAsync(final ByteBuffer src, final long position) {
+        if (position < 0) {
+            throw new IllegalArgumentException("Negative position");
+        }
+        if (!isOpen()) {
+            return CompletableFuture.failedFuture(new ClosedChannelException());
+        }
+        if (!this.writable) {
+            throw new NonWritableChannelException();
+        }
+        return this.handle.writeAsync(src, position);
+    }
+
+    private <A> void complete(final CompletableFuture<Integer> f, final A attachment, final CompletionHandler<Integer, ? super A> handler) {
+        f.whenCompleteAsync((n, e) -> {
+            if (e != null) {
+                handler.failed(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e, attachment);
+            } else {
+                handler.completed(n, attachment);
+            }
+        }, this.executor);
+    }
+
+    /**
+     * Not supported
+     */
+    @Override
+    public <A> void lock(final long position, final long size, final boolean shared, final A attachment,
+            final CompletionHandler<FileLock, ? super A> handler) {
+        throw new UnsupportedOperationException("File locks are not supported");
+    }
+
+    /**
+     * Not supported
+     */
+    @Override
+    public Future<FileLock> lock(final long position, final long size, final boolean shared) {
+        throw new UnsupportedOperationException("File locks are not supported");
+    }
+
+    /**
+     * Not supported
+     */
+    @Override
+    public FileLock tryLock(final long position, final long size, final boolean shared) throws IOException {
+        throw new UnsupportedOperationException("File locks are not supported");
+    }
+
+    @Override
+    public boolean isOpen() {
+        return this.channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
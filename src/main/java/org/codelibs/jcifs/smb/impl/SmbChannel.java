@@ -0,0 +1,111 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codelibs.jcifs.smb.internal.smb2.Smb2SigningDigest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An additional connection bound to an SMB3 session
+ *
+ * Holds a usage reference on its transport until it is closed.
+ */
+final class SmbChannel {
+
+    private static final Logger log = LoggerFactory.getLogger(SmbChannel.class);
+
+    private final SmbTransportImpl transport;
+    private final Smb2SigningDigest digest;
+    private final AtomicLong requests = new AtomicLong();
+    private volatile boolean failed;
+
+    /**
+     * @param transport
+     *            the channel's connection, already acquired
+     * @param digest
+     *            the channel's signing digest
+     */
+    SmbChannel(final SmbTransportImpl transport, final Smb2SigningDigest digest) {
+        this.transport = transport;
+        this.digest = digest;
+    }
+
+    /**
+     * @return the channel's connection
+     */
+    SmbTransportImpl getTransport() {
+        return this.transport;
+    }
+
+    /**
+     * @return the digest used to sign requests on this channel
+     */
+    Smb2SigningDigest getDigest() {
+        return this.digest;
+    }
+
+    /**
+     * @return the number of requests outstanding on this channel
+     */
+    int getLoad() {
+        return this.transport.getInflightRequests();
+    }
+
+    /**
+     * @return the number of requests sent over this channel
+     */
+    long getRequestCount() {
+        return this.requests.get();
+    }
+
+    void requestSent() {
+        this.requests.incrementAndGet();
+    }
+
+    /**
+     * @return whether the channel failed and must no longer be used
+     */
+    boolean isFailed() {
+        return this.failed || this.transport.isFailed();
+    }
+
+    void setFailed() {
+        this.failed = true;
+    }
+
+    /**
+     * Disconnect the channel and release the transport
+     */
+    void close() {
+        try {
+            this.transport.disconnect(true, false);
+        } catch (final Exception e) {
+            log.debug("Failed to disconnect channel", e);
+        } finally {
+            this.transport.release();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SmbChannel[" + this.transport + ",requests=" + this.requests + ",failed=" + this.failed + "]";
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.impl;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.codelibs.jcifs.smb.CIFSContext;
+import org.codelibs.jcifs.smb.DialectVersion;
+import org.codelibs.jcifs.smb.internal.CommonServerMessageBlockRequest;
+import org.codelibs.jcifs.smb.internal.CommonServerMessageBlockResponse;
+import org.codelibs.jcifs.smb.internal.smb2.Smb2Constants;
+import org.codelibs.jcifs.smb.internal.smb2.Smb2SigningDigest;
+import org.codelibs.jcifs.smb.internal.smb2.io.Smb2ReadRequest;
+import org.codelibs.jcifs.smb.internal.smb2.io.Smb2WriteRequest;
+import org.codelibs.jcifs.smb.internal.smb2.ioctl.NetworkInterfaceInfo;
+import org.codelibs.jcifs.smb.internal.smb2.ioctl.NetworkInterfaceInfoResponse;
+import org.codelibs.jcifs.smb.internal.smb2.ioctl.Smb2IoctlRequest;
+import org.codelibs.jcifs.smb.internal.smb2.ioctl.Smb2IoctlResponse;
+import org.codelibs.jcifs.smb.internal.smb2.nego.Smb2NegotiateResponse;
+import org.codelibs.jcifs.smb.netbios.UniAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Manages the additional channels of an SMB3 session
+ *
+ * Once a tree is connected, the server's network interfaces are queried and additional connections are opened and
+ * bound to the session in the background. Read and write requests are then sent over the least loaded channel, all
+ * other requests stay on the primary connection. A channel that fails is dropped, requests pending on it are retried on
+ * the primary connection by the session.
+ */
+final class SmbChannelManager {
+
+    private static final Logger log = LoggerFactory.getLogger(SmbChannelManager.class);
+
+    private final SmbSessionImpl session;
+    private final int maxChannels;
+
+    private final List<SmbChannel> channels = new CopyOnWriteArrayList<>();
+    private final Map<CommonServerMessageBlockResponse, SmbChannel> pending = new IdentityHashMap<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean shutdown;
+
+    /**
+     * @param session
+     * @param maxChannels
+     *            maximum number of channels including the primary connection
+     */
+    SmbChannelManager(final SmbSessionImpl session, final int maxChannels) {
+        this.session = session;
+        this.maxChannels = maxChannels;
+    }
+
+    /**
+     * @return the currently usable additional channels
+     */
+    List<SmbChannel> getChannels() {
+        return Collections.unmodifiableList(this.channels);
+    }
+
+    /**
+     * Start setting up additional channels in the background, only the first call has an effect
+     *
+     * @param tree
+     *            connected tree used to query the server's interfaces
+     */
+    void start(final SmbTreeImpl tree) {
+        if (!this.started.compareAndSet(false, true)) {
+            return;
+        }
+        this.shutdown = false;
+        final SmbTreeImpl t = tree.acquire();
+        final Thread thread;
+        try (SmbTransportImpl primary = this.session.getTransport()) {
+            thread = primary.newThread(() -> {
+                try {
+                    establish(t);
+                } catch (final Exception e) {
+                    log.debug("Failed to set up additional channels", e);
+                } finally {
+                    t.release();
+                }
+            }, "jcifs multichannel " + tree.getShare());
+        }
+        thread.start();
+    }
+
+    /**
+     * Query the server's interfaces and bind new channels until the channel limit is reached
+     *
+     * @param tree
+     * @throws Exception
+     */
+    void establish(final SmbTreeImpl tree) throws Exception {
+        final Smb2IoctlRequest req =
+                new Smb2IoctlRequest(this.session.getConfig(), Smb2IoctlRequest.FSCTL_QUERY_NETWORK_INTERFACE_INFO);
+        req.setFlags(Smb2IoctlRequest.SMB2_O_IOCTL_IS_FSCTL);
+        final Smb2IoctlResponse resp = tree.send(req, RequestParam.NO_RETRY);
+        final List<NetworkInterfaceInfo> interfaces = resp.getOutputData(NetworkInterfaceInfoResponse.class).getInterfaces();
+        if (log.isDebugEnabled()) {
+            log.debug("Server interfaces " + interfaces);
+        }
+
+        try (SmbTransportImpl primary = this.session.getTransport()) {
+            final InetAddress primaryAddress = primary.getRemoteAddress().toInetAddress();
+            final List<NetworkInterfaceInfo> targets =
+                    selectTargets(interfaces, primaryAddress, this.maxChannels - 1 - this.channels.size());
+            for (final NetworkInterfaceInfo target : targets) {
+                if (this.shutdown) {
+                    return;
+                }
+                final int port = target.getPort() != 0 ? target.getPort() : primary.getRemotePort();
+                try {
+                    final SmbChannel ch = connect(primary, target.getAddress(), port);
+                    if (ch != null) {
+                        add(ch);
+                    }
+                } catch (final Exception e) {
+                    log.debug("Failed to set up channel to " + target.getAddress(), e);
+                }
+            }
+        }
+    }
+
+    private SmbChannel connect(final SmbTransportImpl primary, final InetAddress address, final int port) throws Exception {
+        final CIFSContext ctx = primary.getContext();
+        final SmbTransportImpl trans = ctx.getTransportPool()
+                .getSmbTransport(ctx, new UniAddress(address), port, true, primary.isSigningEnforced())
+                .unwrap(SmbTransportImpl.class);
+        boolean ok = false;
+        try {
+            trans.ensureConnected();
+            final Smb2NegotiateResponse pnego = (Smb2NegotiateResponse) primary.getNegotiateResponse();
+            if (!(trans.getNegotiateResponse() instanceof final Smb2NegotiateResponse nego)
+                    || nego.getDialectRevision() != pnego.getDialectRevision() || !Arrays.equals(nego.getServerGuid(), pnego.getServerGuid())
+                    || (nego.getCommonCapabilities() & Smb2Constants.SMB2_GLOBAL_CAP_MULTI_CHANNEL) == 0) {
+                log.debug("Connection to " + address + " cannot be bound to the session");
+                return null;
+            }
+            final Smb2SigningDigest digest = this.session.bindChannel(trans);
+            trans.setPrimaryTransport(primary);
+            ok = true;
+            if (log.isDebugEnabled()) {
+                log.debug("Bound channel " + trans + " to session");
+            }
+            return new SmbChannel(trans, digest);
+        } finally {
+            if (!ok) {
+                try {
+                    trans.disconnect(true, false);
+                } finally {
+                    trans.release();
+                }
+            }
+        }
+    }
+
+    private void add(final SmbChannel ch) {
+        this.channels.add(ch);
+        if (this.shutdown && this.channels.remove(ch)) {
+            ch.close();
+        }
+    }
+
+    /**
+     * Choose the interfaces to open additional connections to
+     *
+     * Interfaces are ranked by RSS capability, link speed and address family. Each interface gets at most one
+     * connection, unless it is RSS capable, in which case connections are spread round robin. The primary connection
+     * counts against the interface it was made to. Loopback addresses are only used if the primary connection is made to
+     * one as well.
+     *
+     * @param interfaces
+     *            the server's interfaces
+     * @param primaryAddress
+     *            address of the primary connection
+     * @param count
+     *            number of connections wanted
+     * @return the interfaces to connect to, one entry per connection
+     */
+    static List<NetworkInterfaceInfo> selectTargets(final List<NetworkInterfaceInfo> interfaces, final InetAddress primaryAddress,
+            final int count) {
+        final Map<Integer, NetworkInterfaceInfo> byIndex = new HashMap<>();
+        final Map<Integer, Integer> used = new HashMap<>();
+        final List<NetworkInterfaceInfo> usable = new ArrayList<>();
+        final boolean allowLoopback = primaryAddress.isLoopbackAddress();
+        for (final NetworkInterfaceInfo info : interfaces) {
+            final InetAddress addr = info.getAddress();
+            if (addr == null || addr.isLoopbackAddress() && !allowLoopback || addr.isLinkLocalAddress() || addr.isAnyLocalAddress()) {
+                continue;
+            }
+            if (addr.equals(primaryAddress)) {
+                used.put(info.getInterfaceIndex(), 1);
+                byIndex.put(info.getInterfaceIndex(), info);
+            }
+            usable.add(info);
+        }
+        usable.sort(Comparator.comparing(NetworkInterfaceInfo::isRssCapable)
+                .thenComparingLong(NetworkInterfaceInfo::getLinkSpeed)
+                .thenComparing(i -> i.getAddress().getAddress().length == 4)
+                .reversed());
+        for (final NetworkInterfaceInfo info : usable) {
+            byIndex.putIfAbsent(info.getInterfaceIndex(), info);
+        }
+
+        final List<NetworkInterfaceInfo> targets = new ArrayList<>();
+        boolean added = true;
+        while (targets.size() < count && added) {
+            added = false;
+            for (final NetworkInterfaceInfo info : usable) {
+                if (targets.size() >= count) {
+                    break;
+                }
+                final NetworkInterfaceInfo rep = byIndex.get(info.getInterfaceIndex());
+                if (rep != info) {
+                    // other address of an interface already considered
+                    continue;
+                }
+                final int n = used.getOrDefault(info.getInterfaceIndex(), 0);
+                if (n == 0 || info.isRssCapable()) {
+                    used.put(info.getInterfaceIndex(), n + 1);
+                    targets.add(info);
+                    added = true;
+                }
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * Select the channel to send a request on
+     *
+     * @param request
+     * @return the channel to use, null to use the primary connection
+     */
+    SmbChannel select(final CommonServerMessageBlockRequest request) {
+        if (this.channels.isEmpty() || !(request instanceof Smb2ReadRequest) && !(request instanceof Smb2WriteRequest)) {
+            return null;
+        }
+        SmbChannel best = null;
+        try (SmbTransportImpl primary = this.session.getTransport()) {
+            int min = primary.getInflightRequests();
+            for (final SmbChannel ch : this.channels) {
+                if (ch.isFailed()) {
+                    continue;
+                }
+                final int load = ch.getLoad();
+                if (load < min) {
+                    best = ch;
+                    min = load;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Remember the channel a pending response is expected on
+     *
+     * @param response
+     * @param ch
+     */
+    void track(final CommonServerMessageBlockResponse response, final SmbChannel ch) {
+        ch.requestSent();
+        synchronized (this.pending) {
+            this.pending.put(response, ch);
+        }
+    }
+
+    /**
+     * @param response
+     * @return the channel the response is expected on, null if it was sent on the primary connection
+     */
+    SmbChannel complete(final CommonServerMessageBlockResponse response) {
+        synchronized (this.pending) {
+            return this.pending.remove(response);
+        }
+    }
+
+    /**
+     * Drop a failed channel
+     *
+     * @param ch
+     */
+    void fail(final SmbChannel ch) {
+        ch.setFailed();
+        if (this.channels.remove(ch)) {
+            log.warn("Channel failed, removing " + ch);
+            ch.close();
+        }
+    }
+
+    /**
+     * Close all additional channels, channels may be set up again afterwards
+     */
+    void shutdown() {
+        this.shutdown = true;
+        for (final SmbChannel ch : this.channels) {
+            if (this.channels.remove(ch)) {
+                ch.close();
+            }
+        }
+        synchronized (this.pending) {
+            this.pending.clear();
+        }
+        this.started.set(false);
+    }
+}
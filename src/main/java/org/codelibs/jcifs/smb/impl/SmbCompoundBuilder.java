@@ -0,0 +1,204 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codelibs.jcifs.smb.CIFSException;
+import org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2;
+import org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2Request;
+import org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2Response;
+import org.codelibs.jcifs.smb.internal.smb2.create.Smb2CloseRequest;
+import org.codelibs.jcifs.smb.internal.smb2.create.Smb2CloseResponse;
+import org.codelibs.jcifs.smb.internal.smb2.create.Smb2CreateRequest;
+import org.codelibs.jcifs.smb.internal.smb2.create.Smb2CreateResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builder for SMB2 compound requests
+ *
+ * Requests are sent together in a single message. Each request added with {@link #add(ServerMessageBlock2Request)}
+ * is related to the previous one, so it operates on the file opened by the last CREATE in the compound, while
+ * {@link #open(String, int, int, int, int, int)} starts a new, unrelated CREATE. Any number of open/close pairs can
+ * be combined, e.g. to check or create a whole directory hierarchy in one round trip.
+ *
+ * The transport splits the compound if it does not fit into the negotiated buffer size or if not enough credits are
+ * available, passing on the file id of the last CREATE to the remaining requests. Failures are reported for the first
+ * request that failed, after making sure that no file opened by the compound is left open.
+ *
+ * A builder can only be sent once and is not thread safe.
+ */
+final class SmbCompoundBuilder {
+
+    private static final Logger log = LoggerFactory.getLogger(SmbCompoundBuilder.class);
+
+    private final SmbTreeHandleImpl tree;
+
+    private final List<Smb2CreateRequest> opens = new ArrayList<>(4);
+    private final List<Smb2CloseRequest> closes = new ArrayList<>(4);
+
+    private ServerMessageBlock2Request<?> head;
+    private ServerMessageBlock2Request<?> tail;
+    private int size;
+
+    /**
+     * @param tree
+     *            tree to send the compound on, must be connected using SMB2
+     */
+    SmbCompoundBuilder(final SmbTreeHandleImpl tree) {
+        this.tree = tree;
+    }
+
+    /**
+     * @return number of requests in this compound
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * @return the first request of this compound, null if empty
+     */
+    ServerMessageBlock2Request<?> getHead() {
+        return this.head;
+    }
+
+    /**
+     * Add a request related to the previous one
+     *
+     * @param <R>
+     *            request type
+     * @param request
+     * @return the added request
+     */
+    <R extends ServerMessageBlock2Request<?>> R add(final R request) {
+        if (this.head == null) {
+            this.head = request;
+        } else {
+            this.tail.chain(request);
+        }
+        this.tail = request;
+        this.size++;
+        return request;
+    }
+
+    /**
+     * Add a request that is not related to the previous one
+     *
+     * @param <R>
+     *            request type
+     * @param request
+     * @return the added request
+     */
+    <R extends ServerMessageBlock2Request<?>> R addUnrelated(final R request) {
+        add(request);
+        request.clearFlags(ServerMessageBlock2.SMB2_FLAGS_RELATED_OPERATIONS);
+        return request;
+    }
+
+    /**
+     * Add a CREATE for the given path
+     *
+     * Following related requests operate on the opened file, the handle is closed again if the compound fails.
+     *
+     * @param path
+     * @param createDisposition
+     * @param createOptions
+     * @param fileAttributes
+     * @param desiredAccess
+     * @param shareAccess
+     * @return the create request
+     */
+    Smb2CreateRequest open(final String path, final int createDisposition, final int createOptions, final int fileAttributes,
+            final int desiredAccess, final int shareAccess) {
+        final Smb2CreateRequest cr = addUnrelated(new Smb2CreateRequest(this.tree.getConfig(), path));
+        cr.setCreateDisposition(createDisposition);
+        cr.setCreateOptions(createOptions);
+        cr.setFileAttributes(fileAttributes);
+        cr.setDesiredAccess(desiredAccess);
+        cr.setShareAccess(shareAccess);
+        this.opens.add(cr);
+        this.closes.add(null);
+        return cr;
+    }
+
+    /**
+     * Add a CLOSE for the file opened by the last CREATE
+     *
+     * @param path
+     *            path of the file, for diagnostics only
+     * @return the close request
+     */
+    Smb2CloseRequest close(final String path) {
+        final int last = this.opens.size() - 1;
+        if (last < 0 || this.closes.get(last) != null) {
+            throw new IllegalStateException("No open file to close");
+        }
+        final Smb2CloseRequest close = add(new Smb2CloseRequest(this.tree.getConfig(), path));
+        this.closes.set(last, close);
+        return close;
+    }
+
+    /**
+     * Send the compound and wait for all responses
+     *
+     * Files opened without a matching {@link #close(String)} stay open when successful.
+     *
+     * @param <T>
+     *            response type of the first request
+     * @param params
+     * @return the response to the first request
+     * @throws CIFSException
+     *             for the first request that failed
+     */
+    @SuppressWarnings("unchecked")
+    <T extends ServerMessageBlock2Response> T send(final RequestParam... params) throws CIFSException {
+        if (this.head == null) {
+            throw new IllegalStateException("Empty compound");
+        }
+        try {
+            return (T) this.tree.send(this.head, params);
+        } catch (CIFSException | RuntimeException e) {
+            closeLeftOpen(e);
+            throw e;
+        }
+    }
+
+    private void closeLeftOpen(final Exception e) {
+        for (int i = 0; i < this.opens.size(); i++) {
+            final Smb2CreateResponse createResp = this.opens.get(i).getResponse();
+            if (createResp == null || !createResp.isReceived() || createResp.getStatus() != NtStatus.NT_STATUS_SUCCESS) {
+                continue;
+            }
+            final Smb2CloseRequest close = this.closes.get(i);
+            final Smb2CloseResponse closeResp = close != null ? close.getResponse() : null;
+            if (closeResp != null && closeResp.isReceived() && closeResp.getStatus() == NtStatus.NT_STATUS_SUCCESS) {
+                continue;
+            }
+            try {
+                // make sure that the handle is closed when one of the requests fails
+                this.tree.send(new Smb2CloseRequest(this.tree.getConfig(), createResp.getFileId()), RequestParam.NO_RETRY);
+            } catch (final Exception e2) {
+                log.debug("Failed to close after failure", e2);
+                e.addSuppressed(e2);
+            }
+        }
+    }
+}
@@ -19,6 +19,8 @@ package org.codelibs.jcifs.smb.impl;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 import org.codelibs.jcifs.smb.CIFSException;
 import org.codelibs.jcifs.smb.CloseableIterator;
@@ -83,6 +85,264 @@ public final class SmbCopyUtil {
         }
     }
 
+    /**
+     * Request a resume key identifying the source file of a server side copy
+     *
+     * @param sh
+     *            tree of the source file
+     * @param sfd
+     *            open source file
+     * @return the resume key
+     * @throws CIFSException
+     *             if the server does not support server side copy
+     */
+    static byte[] requestResumeKey(final SmbTreeHandleImpl sh, final SmbFileHandleImpl sfd) throws CIFSException {
+        final Smb2IoctlRequest resumeReq =
+                new Smb2IoctlRequest(sh.getConfig(), Smb2IoctlRequest.FSCTL_SRV_REQUEST_RESUME_KEY, sfd.getFileId());
+        resumeReq.setFlags(Smb2IoctlRequest.SMB2_O_IOCTL_IS_FSCTL);
+        final Smb2IoctlResponse resumeResp = sh.send(resumeReq);
+        return resumeResp.getOutputData(SrvRequestResumeKeyResponse.class).getResumeKey();
+    }
+
+    /**
+     * Server side copy limits, see MS-SMB2 3.3.3 (ServerSideCopyMaxNumberofChunks etc.)
+     */
+    static final class ChunkLimits {
+
+        /**
+         * Windows defaults, used until the server tells otherwise
+         */
+        static final ChunkLimits DEFAULT = new ChunkLimits(256, 1024 * 1024, 16 * 1024 * 1024);
+
+        final int maxChunks;
+        final int maxChunkSize;
+        final int maxTotal;
+
+        ChunkLimits(final int maxChunks, final int maxChunkSize, final int maxTotal) {
+            this.maxChunks = maxChunks;
+            this.maxChunkSize = maxChunkSize;
+            this.maxTotal = maxTotal;
+        }
+    }
+
+    /**
+     * Check whether a file can be copied on the server
+     *
+     * FSCTL_SRV_COPYCHUNK works between any two shares of the same server, as long as the resume key is used in the
+     * session it was obtained in. Copies between different shares are disabled for a connection once one failed.
+     *
+     * @param sh
+     *            tree of the source file
+     * @param dh
+     *            tree of the target file
+     * @return whether a server side copy should be attempted
+     */
+    static boolean isServerSideCopyPossible(final SmbTreeHandleImpl sh, final SmbTreeHandleImpl dh) {
+        if (!sh.isSMB2() || !dh.isSMB2()) {
+            return false;
+        }
+        if (sh.isSameTree(dh)) {
+            return true;
+        }
+        if (!sh.isSameSession(dh)) {
+            return false;
+        }
+        try (SmbSessionImpl session = dh.getSession(); SmbTransportImpl transport = session.getTransport()) {
+            return !transport.isCrossShareCopyUnsupported();
+        }
+    }
+
+    /**
+     * Remember that server side copies between different shares do not work with this server
+     *
+     * @param dh
+     *            tree of the target file
+     */
+    static void crossShareCopyFailed(final SmbTreeHandleImpl dh) {
+        try (SmbSessionImpl session = dh.getSession(); SmbTransportImpl transport = session.getTransport()) {
+            transport.setCrossShareCopyUnsupported();
+        }
+    }
+
+    private static ChunkLimits getChunkLimits(final SmbTreeHandleImpl dh) {
+        try (SmbSessionImpl session = dh.getSession(); SmbTransportImpl transport = session.getTransport()) {
+            return transport.getCopyChunkLimits();
+        }
+    }
+
+    private static void setChunkLimits(final SmbTreeHandleImpl dh, final ChunkLimits limits) {
+        try (SmbSessionImpl session = dh.getSession(); SmbTransportImpl transport = session.getTransport()) {
+            transport.setCopyChunkLimits(limits);
+        }
+    }
+
+    /**
+     * Copy a range of the source file on the server
+     *
+     * The copychunk limits of the server are cached per connection. Until they are known the first request is sent on
+     * its own, if the server rejects it the limits from its reply are used. After that up to
+     * {@link org.codelibs.jcifs.smb.Configuration#getCopyChunkParallelism()} requests are kept in flight.
+     *
+     * @param dh
+     *            tree of the target file, must use the same session as the source file
+     * @param resumeKey
+     *            resume key of the source file
+     * @param dfd
+     *            open target file
+     * @param srcOff
+     *            offset in the source file
+     * @param dstOff
+     *            offset in the target file
+     * @param count
+     *            number of bytes to copy
+     * @param write
+     *            whether the target file is opened for writing only
+     * @return number of bytes copied, less than requested if the source file ends earlier
+     * @throws CIFSException
+     *             if the copy fails
+     */
+    static long copyChunks(final SmbTreeHandleImpl dh, final byte[] resumeKey, final SmbFileHandleImpl dfd, final long srcOff,
+            final long dstOff, final long count, final boolean write) throws CIFSException {
+        ChunkLimits limits = getChunkLimits(dh);
+        boolean known = limits != null;
+        if (!known) {
+            limits = ChunkLimits.DEFAULT;
+        }
+
+        long ooff = 0;
+        while (!known && ooff < count) {
+            final long wsize = Math.min(count - ooff, limits.maxTotal);
+            final Smb2IoctlRequest copy = createCopyRequest(dh, resumeKey, dfd, srcOff + ooff, dstOff + ooff, wsize, limits, write);
+            try {
+                final long n = bytesWritten(dh.send(copy, RequestParam.NO_RETRY));
+                known = true;
+                setChunkLimits(dh, limits);
+                if (n <= 0) {
+                    // source ends before the requested range
+                    return ooff;
+                }
+                ooff += n;
+            } catch (final SmbException e) {
+                // the server tells us its limits if it does not like ours
+                final Smb2IoctlResponse response = copy.getResponse();
+                if (response.isReceived() && !response.isError() && response.getStatus() == NtStatus.NT_STATUS_INVALID_PARAMETER) {
+                    final SrvCopyChunkCopyResponse outputData = response.getOutputData(SrvCopyChunkCopyResponse.class);
+                    if (outputData.getChunksWritten() > 0 && outputData.getChunkBytesWritten() > 0 && outputData.getTotalBytesWritten() > 0) {
+                        limits = new ChunkLimits(outputData.getChunksWritten(), outputData.getChunkBytesWritten(),
+                                outputData.getTotalBytesWritten());
+                        log.debug("Server side copy limits {} chunks of {} bytes, {} bytes total", limits.maxChunks, limits.maxChunkSize,
+                                limits.maxTotal);
+                        setChunkLimits(dh, limits);
+                        known = true;
+                        continue;
+                    }
+                }
+                throw e;
+            }
+        }
+
+        final int window = Math.max(1, dh.getConfig().getCopyChunkParallelism());
+        final Deque<PendingCopy> pending = new ArrayDeque<>();
+        try {
+            while (ooff < count || !pending.isEmpty()) {
+                if (ooff < count && pending.size() < window) {
+                    final long wsize = Math.min(count - ooff, limits.maxTotal);
+                    final Smb2IoctlRequest copy = createCopyRequest(dh, resumeKey, dfd, srcOff + ooff, dstOff + ooff, wsize, limits, write);
+                    final Smb2IoctlResponse resp = pending.isEmpty() ? dh.sendAsync(copy, RequestParam.NO_RETRY)
+                            : dh.sendAsync(copy, RequestParam.NO_RETRY, RequestParam.NO_CREDIT_WAIT);
+                    if (resp != null) {
+                        pending.addLast(new PendingCopy(copy, resp, ooff, wsize));
+                        ooff += wsize;
+                        continue;
+                    }
+                }
+
+                final PendingCopy p = pending.removeFirst();
+                final long n = bytesWritten(dh.waitForResponse(p.request, p.response));
+                if (n < p.length) {
+                    // short copy, either the source ended or the server stopped early: discard the later ranges
+                    drain(dh, pending);
+                    if (n <= 0) {
+                        return p.offset;
+                    }
+                    ooff = p.offset + n;
+                }
+            }
+        } catch (final CIFSException e) {
+            drain(dh, pending);
+            throw e;
+        }
+        return count;
+    }
+
+    private static Smb2IoctlRequest createCopyRequest(final SmbTreeHandleImpl dh, final byte[] resumeKey, final SmbFileHandleImpl dfd,
+            final long srcOff, final long dstOff, final long wsize, final ChunkLimits limits, final boolean write) throws CIFSException {
+        int chunks = (int) (wsize / limits.maxChunkSize);
+        int lastChunkSize;
+        if (chunks + 1 > limits.maxChunks) {
+            chunks = limits.maxChunks;
+            lastChunkSize = limits.maxChunkSize;
+        } else {
+            lastChunkSize = (int) (wsize % limits.maxChunkSize);
+            if (lastChunkSize != 0) {
+                chunks++;
+            } else {
+                lastChunkSize = limits.maxChunkSize;
+            }
+        }
+
+        final SrvCopychunk[] chunkInfo = new SrvCopychunk[chunks];
+        long ioff = 0;
+        for (int i = 0; i < chunks; i++) {
+            final int csize = i == chunks - 1 ? lastChunkSize : limits.maxChunkSize;
+            chunkInfo[i] = new SrvCopychunk(srcOff + ioff, dstOff + ioff, csize);
+            ioff += limits.maxChunkSize;
+        }
+
+        // FSCTL_SRV_COPYCHUNK_WRITE allows to open the file for writing only, FSCTL_SRV_COPYCHUNK also
+        // needs read access
+        final Smb2IoctlRequest copy = new Smb2IoctlRequest(dh.getConfig(),
+                write ? Smb2IoctlRequest.FSCTL_SRV_COPYCHUNK_WRITE : Smb2IoctlRequest.FSCTL_SRV_COPYCHUNK, dfd.getFileId());
+        copy.setFlags(Smb2IoctlRequest.SMB2_O_IOCTL_IS_FSCTL);
+        copy.setInputData(new SrvCopychunkCopy(resumeKey, chunkInfo));
+        return copy;
+    }
+
+    private static long bytesWritten(final Smb2IoctlResponse resp) throws CIFSException {
+        final SrvCopyChunkCopyResponse r = resp.getOutputData(SrvCopyChunkCopyResponse.class);
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Wrote %d bytes (%d chunks, last partial write %d)", r.getTotalBytesWritten(), r.getChunksWritten(),
+                    r.getChunkBytesWritten()));
+        }
+        return r.getTotalBytesWritten() & 0xFFFFFFFFL;
+    }
+
+    private static void drain(final SmbTreeHandleImpl dh, final Deque<PendingCopy> pending) {
+        PendingCopy p;
+        while ((p = pending.pollFirst()) != null) {
+            try {
+                dh.waitForResponse(p.request, p.response);
+            } catch (final CIFSException e) {
+                log.debug("Ignoring failure of discarded copy request", e);
+            }
+        }
+    }
+
+    private static final class PendingCopy {
+
+        final Smb2IoctlRequest request;
+        final Smb2IoctlResponse response;
+        final long offset;
+        final long length;
+
+        PendingCopy(final Smb2IoctlRequest request, final Smb2IoctlResponse response, final long offset, final long length) {
+            this.request = request;
+            this.response = response;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
     /**
      * @param dest
      * @param b
@@ -97,16 +357,13 @@ public final class SmbCopyUtil {
     static void copyFile(final SmbFile src, final SmbFile dest, final byte[][] b, final int bsize, final WriterThread w,
             final SmbTreeHandleImpl sh, final SmbTreeHandleImpl dh) throws SmbException {
 
-        if (sh.isSMB2() && dh.isSMB2() && sh.isSameTree(dh)) {
-            try {
-                serverSideCopy(src, dest, sh, dh, false);
+        try {
+            if (tryServerSideCopy(src, dest, sh, dh)) {
                 return;
-            } catch (final SmbUnsupportedOperationException e) {
-                log.debug("Server side copy not supported, falling back to normal copying", e);
-            } catch (final CIFSException e) {
-                log.warn("Server side copy failed", e);
-                throw SmbException.wrap(e);
             }
+        } catch (final CIFSException e) {
+            log.warn("Server side copy failed", e);
+            throw SmbException.wrap(e);
         }
 
         try (SmbFileHandleImpl sfd = src.openUnshared(0, SmbConstants.O_RDONLY, SmbConstants.FILE_SHARE_READ, SmbConstants.ATTR_NORMAL, 0);
@@ -146,22 +403,14 @@ public final class SmbCopyUtil {
                     off += read;
                 }
 
+                // wait for outstanding pipelined writes before setting the file times
+                fos.flush();
+
                 if (log.isDebugEnabled()) {
                     log.debug(String.format("Copied a total of %d bytes", off));
                 }
 
-                if (dh.isSMB2()) {
-                    final Smb2SetInfoRequest req = new Smb2SetInfoRequest(dh.getConfig(), dfd.getFileId());
-                    req.setFileInformation(new FileBasicInfo(ctime, atime, mtime, 0L, attrs));
-                    dh.send(req);
-                } else if (dh.hasCapability(SmbConstants.CAP_NT_SMBS)) {
-                    // use the open file descriptor
-                    dh.send(new Trans2SetFileInformation(dh.getConfig(), dfd.getFid(), attrs, ctime, mtime, atime),
-                            new Trans2SetFileInformationResponse(dh.getConfig()));
-                } else {
-                    dh.send(new SmbComSetInformation(dh.getConfig(), dest.getUncPath(), attrs, mtime),
-                            new SmbComSetInformationResponse(dh.getConfig()));
-                }
+                setTargetInfo(dh, dfd, dest, attrs, ctime, mtime, atime);
             }
         } catch (final IOException se) {
             if (!src.getContext().getConfig().isIgnoreCopyToException()) {
@@ -171,6 +420,64 @@ public final class SmbCopyUtil {
         }
     }
 
+    /**
+     * Copy a file on the server if possible
+     *
+     * A failed copy between two different shares falls back to normal copying, as not all servers support it. Only a
+     * status saying that the server does not support it disables server side copies between shares for the connection.
+     *
+     * @return whether the file was copied
+     * @throws CIFSException
+     *             if a server side copy within a share failed
+     */
+    static boolean tryServerSideCopy(final SmbFile src, final SmbFile dest, final SmbTreeHandleImpl sh, final SmbTreeHandleImpl dh)
+            throws CIFSException {
+        if (!isServerSideCopyPossible(sh, dh)) {
+            return false;
+        }
+        try {
+            serverSideCopy(src, dest, sh, dh, false);
+            return true;
+        } catch (final CIFSException e) {
+            final boolean unsupported = isCopyUnsupported(e);
+            if (sh.isSameTree(dh)) {
+                if (!unsupported) {
+                    throw e;
+                }
+                log.debug("Server side copy not supported, falling back to normal copying", e);
+            } else if (unsupported) {
+                log.debug("Server side copy between shares not supported, falling back to normal copying", e);
+                crossShareCopyFailed(dh);
+            } else {
+                log.debug("Server side copy between shares failed, falling back to normal copying", e);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param e
+     *            failure of a server side copy
+     * @return whether the failure means that the server cannot do the copy at all
+     */
+    static boolean isCopyUnsupported(final CIFSException e) {
+        if (e instanceof SmbUnsupportedOperationException) {
+            return true;
+        }
+        if (!(e instanceof SmbException)) {
+            return false;
+        }
+        switch (((SmbException) e).getNtStatus()) {
+        case 0xC00000BB: // NT_STATUS_NOT_SUPPORTED
+        case 0xC0000010: // NT_STATUS_INVALID_DEVICE_REQUEST
+        case 0xC0000024: // NT_STATUS_OBJECT_TYPE_MISMATCH
+        case 0xC00000D4: // NT_STATUS_NOT_SAME_DEVICE
+            return true;
+        default:
+            return false;
+        }
+    }
+
     /**
      * @param src
      * @param dest
@@ -200,118 +507,22 @@ public final class SmbCopyUtil {
                 if (sfd.getInitialSize() == 0) {
                     try (SmbFileHandleImpl edfd = openCopyTargetFile(dest, attrs, !write)) {
                         // Set timestamps for empty files
-                        if (dh.isSMB2()) {
-                            final Smb2SetInfoRequest req = new Smb2SetInfoRequest(dh.getConfig(), edfd.getFileId());
-                            req.setFileInformation(new FileBasicInfo(ctime, atime, mtime, 0L, attrs));
-                            dh.send(req);
-                        } else if (dh.hasCapability(SmbConstants.CAP_NT_SMBS)) {
-                            dh.send(new Trans2SetFileInformation(dh.getConfig(), edfd.getFid(), attrs, ctime, mtime, atime),
-                                    new Trans2SetFileInformationResponse(dh.getConfig()));
-                        } else {
-                            dh.send(new SmbComSetInformation(dh.getConfig(), dest.getUncPath(), attrs, mtime),
-                                    new SmbComSetInformationResponse(dh.getConfig()));
-                        }
+                        setTargetInfo(dh, edfd, dest, attrs, ctime, mtime, atime);
                         return;
                     }
                 }
 
-                final Smb2IoctlRequest resumeReq =
-                        new Smb2IoctlRequest(sh.getConfig(), Smb2IoctlRequest.FSCTL_SRV_REQUEST_RESUME_KEY, sfd.getFileId());
-                resumeReq.setFlags(Smb2IoctlRequest.SMB2_O_IOCTL_IS_FSCTL);
-                final Smb2IoctlResponse resumeResp = sh.send(resumeReq);
-                final SrvRequestResumeKeyResponse rkresp = resumeResp.getOutputData(SrvRequestResumeKeyResponse.class);
                 size = sfd.getInitialSize();
-                resumeKey = rkresp.getResumeKey();
+                resumeKey = requestResumeKey(sh, sfd);
 
-                // start with some reasonably safe defaults, the server will till us if it does not like it
                 // can we resume this if we loose the file descriptor?
-
-                int maxChunks = 256;
-                int maxChunkSize = 1024 * 1024;
-                int byteLimit = 16 * 1024 * 1024;
-                boolean retry = false;
-                do {
-                    long ooff = 0;
-                    while (ooff < size) {
-                        long wsize = size - ooff;
-                        if (wsize > byteLimit) {
-                            wsize = byteLimit;
-                        }
-
-                        int chunks = (int) (wsize / maxChunkSize);
-                        int lastChunkSize;
-                        if (chunks + 1 > maxChunks) {
-                            chunks = maxChunks;
-                            lastChunkSize = maxChunkSize;
-                        } else {
-                            lastChunkSize = (int) (wsize % maxChunkSize);
-                            if (lastChunkSize != 0) {
-                                chunks++;
-                            } else {
-                                lastChunkSize = maxChunkSize;
-                            }
-                        }
-
-                        final SrvCopychunk[] chunkInfo = new SrvCopychunk[chunks];
-                        long ioff = 0;
-                        for (int i = 0; i < chunks; i++) {
-                            final long absoff = ooff + ioff;
-                            final int csize = i == chunks - 1 ? lastChunkSize : maxChunkSize;
-                            chunkInfo[i] = new SrvCopychunk(absoff, absoff, csize);
-                            ioff += maxChunkSize;
-                        }
-
-                        if (dfd == null || !dfd.isValid()) {
-                            // don't reopen the file for every round if it's not necessary, keep the lock
-                            dfd = openCopyTargetFile(dest, attrs, !write);
-                        }
-
-                        // FSCTL_SRV_COPYCHUNK_WRITE allows to open the file for writing only, FSCTL_SRV_COPYCHUNK also
-                        // needs read access
-                        final Smb2IoctlRequest copy = new Smb2IoctlRequest(sh.getConfig(),
-                                write ? Smb2IoctlRequest.FSCTL_SRV_COPYCHUNK_WRITE : Smb2IoctlRequest.FSCTL_SRV_COPYCHUNK, dfd.getFileId());
-                        copy.setFlags(Smb2IoctlRequest.SMB2_O_IOCTL_IS_FSCTL);
-                        copy.setInputData(new SrvCopychunkCopy(resumeKey, chunkInfo));
-
-                        try {
-                            final SrvCopyChunkCopyResponse r =
-                                    dh.send(copy, RequestParam.NO_RETRY).getOutputData(SrvCopyChunkCopyResponse.class);
-                            if (log.isDebugEnabled()) {
-                                log.debug(String.format("Wrote %d bytes (%d chunks, last partial write %d)", r.getTotalBytesWritten(),
-                                        r.getChunksWritten(), r.getChunkBytesWritten()));
-                            }
-                            ooff += r.getTotalBytesWritten();
-                        } catch (final SmbException e) {
-                            final Smb2IoctlResponse response = copy.getResponse();
-                            if (!retry && response.isReceived() && !response.isError()
-                                    && response.getStatus() == NtStatus.NT_STATUS_INVALID_PARAMETER) {
-                                retry = true;
-                                final SrvCopyChunkCopyResponse outputData = response.getOutputData(SrvCopyChunkCopyResponse.class);
-                                maxChunks = outputData.getChunksWritten();
-                                maxChunkSize = outputData.getChunkBytesWritten();
-                                byteLimit = outputData.getTotalBytesWritten();
-                                continue;
-                            }
-                            throw e;
-                        }
-                    }
-                    break;
-                } while (retry);
+                dfd = openCopyTargetFile(dest, attrs, !write);
+                copyChunks(dh, resumeKey, dfd, 0, 0, size, write);
             }
 
             // Set timestamps on the destination file after successful copy
             if (dfd != null && dfd.isValid()) {
-                if (dh.isSMB2()) {
-                    final Smb2SetInfoRequest req = new Smb2SetInfoRequest(dh.getConfig(), dfd.getFileId());
-                    req.setFileInformation(new FileBasicInfo(ctime, atime, mtime, 0L, attrs));
-                    dh.send(req);
-                } else if (dh.hasCapability(SmbConstants.CAP_NT_SMBS)) {
-                    dh.send(new Trans2SetFileInformation(dh.getConfig(), dfd.getFid(), attrs, ctime, mtime, atime),
-                            new Trans2SetFileInformationResponse(dh.getConfig()));
-                } else {
-                    dh.send(new SmbComSetInformation(dh.getConfig(), dest.getUncPath(), attrs, mtime),
-                            new SmbComSetInformationResponse(dh.getConfig()));
-                }
+                setTargetInfo(dh, dfd, dest, attrs, ctime, mtime, atime);
             }
         } catch (final SmbUnsupportedOperationException e) {
             throw e;
@@ -324,6 +535,76 @@ public final class SmbCopyUtil {
         }
     }
 
+    /**
+     * Set times and attributes of a copied file, using the open handle where possible
+     */
+    private static void setTargetInfo(final SmbTreeHandleImpl dh, final SmbFileHandleImpl dfd, final SmbFile dest, final int attrs,
+            final long ctime, final long mtime, final long atime) throws CIFSException {
+        if (dh.isSMB2()) {
+            final Smb2SetInfoRequest req = new Smb2SetInfoRequest(dh.getConfig(), dfd.getFileId());
+            req.setFileInformation(new FileBasicInfo(ctime, atime, mtime, 0L, attrs));
+            dh.send(req);
+        } else if (dh.hasCapability(SmbConstants.CAP_NT_SMBS)) {
+            // use the open file descriptor
+            dh.send(new Trans2SetFileInformation(dh.getConfig(), dfd.getFid(), attrs, ctime, mtime, atime),
+                    new Trans2SetFileInformationResponse(dh.getConfig()));
+        } else {
+            dh.send(new SmbComSetInformation(dh.getConfig(), dest.getUncPath(), attrs, mtime),
+                    new SmbComSetInformationResponse(dh.getConfig()));
+        }
+    }
+
+    /**
+     * Copy a single file in the calling thread, without a separate writer thread
+     *
+     * Used by parallel recursive copies where concurrency comes from copying several files at once.
+     *
+     * @param src
+     *            source file
+     * @param dest
+     *            target file
+     * @param buf
+     *            copy buffer
+     * @param sh
+     *            source tree handle
+     * @param dh
+     *            target tree handle
+     * @return number of bytes copied
+     * @throws CIFSException
+     *             if the copy fails
+     */
+    static long copyFileDirect(final SmbFile src, final SmbFile dest, final byte[] buf, final SmbTreeHandleImpl sh,
+            final SmbTreeHandleImpl dh) throws CIFSException {
+        if (tryServerSideCopy(src, dest, sh, dh)) {
+            return src.length();
+        }
+
+        final int attrs = src.getAttributes();
+        final long mtime = src.lastModified();
+        final long ctime = src.createTime();
+        final long atime = src.lastAccess();
+        try (SmbFileHandleImpl sfd = src.openUnshared(0, SmbConstants.O_RDONLY, SmbConstants.FILE_SHARE_READ, SmbConstants.ATTR_NORMAL, 0);
+                SmbFileInputStream fis = new SmbFileInputStream(src, sh, sfd);
+                SmbFileHandleImpl dfd = openCopyTargetFile(dest, attrs, false);
+                SmbFileOutputStream fos =
+                        new SmbFileOutputStream(dest, dh, dfd, SmbConstants.O_CREAT | SmbConstants.O_WRONLY | SmbConstants.O_TRUNC,
+                                SmbConstants.FILE_WRITE_DATA | SmbConstants.FILE_WRITE_ATTRIBUTES, SmbConstants.FILE_NO_SHARE)) {
+            long off = 0L;
+            int n;
+            while ((n = fis.read(buf)) > 0) {
+                fos.write(buf, 0, n);
+                off += n;
+            }
+            fos.flush();
+            setTargetInfo(dh, dfd, dest, attrs, ctime, mtime, atime);
+            return off;
+        } catch (final CIFSException e) {
+            throw e;
+        } catch (final IOException e) {
+            throw new SmbException("Failed to copy file from [" + src.toString() + "] to [" + dest.toString() + "]", e);
+        }
+    }
+
     /**
      * @param dest
      * @param b
@@ -25,6 +25,8 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.codelibs.jcifs.smb.Address;
 import org.codelibs.jcifs.smb.CIFSContext;
@@ -217,6 +219,37 @@ final class SmbEnumerationUtil {
         }
     }
 
+    static CompletableFuture<List<SmbResource>> doEnumAsync(final SmbFile parent, final String wildcard, final int searchAttributes) {
+        final SmbResourceLocator locator = parent.getLocator();
+        try {
+            if (!locator.getURL().getHost().isEmpty() && locator.getType() != SmbConstants.TYPE_WORKGROUP && !locator.isRoot()) {
+                try (SmbTreeHandleImpl th = parent.ensureTreeConnected()) {
+                    if (th.isSMB2()) {
+                        return new DirFileEntryAsyncEnum2(th, parent, wildcard).start();
+                    }
+                }
+            }
+        } catch (final CIFSException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        // server/share enumeration and SMB1 listings are only available synchronously
+        return CompletableFuture.supplyAsync(() -> {
+            final List<SmbResource> list = new ArrayList<>();
+            try (CloseableIterator<SmbResource> it = doEnum(parent, wildcard, searchAttributes, null, null)) {
+                while (it.hasNext()) {
+                    list.add(it.next());
+                }
+                return list;
+            } catch (final CIFSException e) {
+                for (final SmbResource r : list) {
+                    r.close();
+                }
+                throw new CompletionException(e);
+            }
+        });
+    }
+
     private static DosFileFilter unwrapDOSFilter(final ResourceFilter ff) {
         if (ff instanceof ResourceFilterWrapper) {
             final SmbFileFilter sff = ((ResourceFilterWrapper) ff).getFileFilter();
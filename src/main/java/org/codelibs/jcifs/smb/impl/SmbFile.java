@@ -25,12 +25,18 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.UnknownHostException;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import org.codelibs.jcifs.smb.CIFSContext;
 import org.codelibs.jcifs.smb.CIFSException;
 import org.codelibs.jcifs.smb.CloseableIterator;
 import org.codelibs.jcifs.smb.Configuration;
+import org.codelibs.jcifs.smb.RecursiveOperationListener;
+import org.codelibs.jcifs.smb.RecursiveOperationResult;
 import org.codelibs.jcifs.smb.ResourceFilter;
 import org.codelibs.jcifs.smb.ResourceNameFilter;
 import org.codelibs.jcifs.smb.SmbConstants;
@@ -87,6 +93,8 @@ import org.codelibs.jcifs.smb.internal.smb2.create.Smb2CreateResponse;
 import org.codelibs.jcifs.smb.internal.smb2.info.Smb2QueryInfoRequest;
 import org.codelibs.jcifs.smb.internal.smb2.info.Smb2QueryInfoResponse;
 import org.codelibs.jcifs.smb.internal.smb2.info.Smb2SetInfoRequest;
+import org.codelibs.jcifs.smb.internal.smb2.lease.Smb2LeaseContext;
+import org.codelibs.jcifs.smb.internal.smb2.lease.Smb2LeaseState;
 import org.codelibs.jcifs.smb.util.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -348,6 +356,12 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
      * Mask for attributes that can be retrieved from the server
      */
     protected static final int ATTR_GET_MASK = 0x7FFF;
+
+    private static final int LEASE_MODIFY_ACCESS = FILE_WRITE_DATA | FILE_APPEND_DATA | FILE_WRITE_EA | FILE_WRITE_ATTRIBUTES | DELETE
+            | WRITE_DAC | WRITE_OWNER | GENERIC_WRITE | GENERIC_ALL;
+
+    private static final int CACHED_SECURITY_INFO =
+            SecurityInfo.OWNER_SECURITY_INFO | SecurityInfo.GROUP_SECURITY_INFO | SecurityInfo.DACL_SECURITY_INFO;
     /**
      * Mask for attributes that can be set on the server
      */
@@ -376,6 +390,8 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
     private long size;
     private long sizeExpiration;
     private boolean isExists;
+    private SecurityDescriptor securityDescriptor;
+    private long securityExpiration;
 
     private final CIFSContext transportContext;
     private SmbTreeConnection treeConnection;
@@ -665,6 +681,22 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
             boolean haveSize = true, haveAttributes = true;
             long fileSize = 0;
             if (h.isSMB2()) {
+                final boolean write = isModifying(flags, access);
+                final SmbLeaseManager leases = (options & 1) == 0 && this.fileLocator.getType() != TYPE_NAMED_PIPE ? h.getLeaseManager() : null;
+                SmbLeaseManager.Lease lease = null;
+                if (leases != null) {
+                    lease = leases.requestLease(SmbLeaseManager.pathKey(h.getTreeId(), uncPath));
+                    if (!write && (flags & (O_CREAT | O_EXCL)) == 0) {
+                        final SmbFileHandleImpl cached = leases.unpark(lease);
+                        if (cached != null) {
+                            if (cached.isCompatible(access, sharing) && cached.unpark()) {
+                                return reuseHandle(cached, leases, h.getTreeId(), uncPath, config);
+                            }
+                            cached.closeParked();
+                        }
+                    }
+                }
+
                 final Smb2CreateRequest req = new Smb2CreateRequest(config, uncPath);
                 req.setDesiredAccess(access);
 
@@ -682,10 +714,21 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
 
                 req.setShareAccess(sharing);
                 req.setFileAttributes(attrs);
+                if (lease != null) {
+                    // write caching is never requested, writes always go to the server
+                    req.setRequestedOplockLevel(Smb2CreateRequest.SMB2_OPLOCK_LEVEL_LEASE);
+                    req.addCreateContext(new Smb2LeaseContext(lease.getKey(), Smb2LeaseState.SMB2_LEASE_READ_HANDLE, true));
+                }
                 final Smb2CreateResponse resp = h.send(req);
                 info = resp;
                 fileSize = resp.getEndOfFile();
                 fh = new SmbFileHandleImpl(config, resp.getFileId(), h, uncPath, flags, access, 0, 0, resp.getEndOfFile());
+                if (lease != null) {
+                    final Smb2LeaseContext granted = resp.getLeaseContext();
+                    leases.opened(lease, granted != null ? granted.getLeaseState() : Smb2LeaseState.SMB2_LEASE_NONE,
+                            granted != null ? granted.getEpoch() : 0, h, resp, write);
+                    fh.setLease(leases, lease, write, sharing);
+                }
             } else if (h.hasCapability(SmbConstants.CAP_NT_SMBS)) {
                 final SmbComNTCreateAndXResponse resp = new SmbComNTCreateAndXResponse(config);
                 final SmbComNTCreateAndX req = new SmbComNTCreateAndX(config, uncPath, flags, access, sharing, attrs, options, null);
@@ -747,6 +790,57 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
         }
     }
 
+    private SmbFileHandleImpl reuseHandle(final SmbFileHandleImpl fh, final SmbLeaseManager leases, final long treeId, final String uncPath,
+            final Configuration config) {
+        final SmbBasicFileInfo info = leases.getCachedInfo(SmbLeaseManager.pathKey(treeId, uncPath));
+        if (info != null) {
+            setCachedInfo(info, config);
+        }
+        this.isExists = true;
+        return fh;
+    }
+
+    private void setCachedInfo(final SmbBasicFileInfo info, final Configuration config) {
+        final long attrTimeout = System.currentTimeMillis() + config.getAttributeCacheTimeout();
+        this.isExists = true;
+        this.size = info.getSize();
+        this.sizeExpiration = attrTimeout;
+        this.createTime = info.getCreateTime();
+        this.lastModified = info.getLastWriteTime();
+        this.lastAccess = info.getLastAccessTime();
+        this.attributes = info.getAttributes() & ATTR_GET_MASK;
+        this.attrExpiration = attrTimeout;
+    }
+
+    /**
+     * @param flags
+     * @param access
+     * @return whether an open with these parameters may modify the file
+     */
+    static boolean isModifying(final int flags, final int access) {
+        return (flags & O_TRUNC) != 0 || (access & LEASE_MODIFY_ACCESS) != 0;
+    }
+
+    /**
+     * Drop lease cached information after a modification through a handle not tracked by the lease manager
+     */
+    private void invalidateLeaseCache(final SmbTreeHandleImpl th, final String uncPath) {
+        final SmbLeaseManager leases = th.getLeaseManager();
+        if (leases != null) {
+            leases.invalidate(SmbLeaseManager.pathKey(th.getTreeId(), uncPath));
+        }
+    }
+
+    /**
+     * Close a cached handle before deleting the file, instead of waiting for the server to break the lease
+     */
+    private void closeLeaseCachedHandle(final SmbTreeHandleImpl th, final String uncPath) {
+        final SmbLeaseManager leases = th.getLeaseManager();
+        if (leases != null) {
+            leases.closeCached(SmbLeaseManager.pathKey(th.getTreeId(), uncPath));
+        }
+    }
+
     /**
      * Returns the UNC path of this resource relative to the share
      *
@@ -779,6 +873,15 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
          */
 
         if (th.isSMB2()) {
+            final SmbLeaseManager leases = th.getLeaseManager();
+            if (leases != null) {
+                final SmbBasicFileInfo cached = leases.getCachedInfo(SmbLeaseManager.pathKey(th.getTreeId(), path));
+                if (cached != null) {
+                    // attributes cannot have changed while holding a read lease
+                    setCachedInfo(cached, th.getConfig());
+                    return cached;
+                }
+            }
             // just open and close. withOpen will store the attributes
             return (SmbBasicFileInfo) withOpen(th, Smb2CreateRequest.FILE_OPEN, SmbConstants.FILE_READ_ATTRIBUTES,
                     SmbConstants.FILE_SHARE_READ | SmbConstants.FILE_SHARE_WRITE, null);
@@ -888,6 +991,96 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
         return this.isExists;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * With SMB2 an open/close compound for the file is sent without waiting and the attribute cache is updated from the
+     * response. The tree connection is established before returning if necessary. Servers, workgroups, shares, SMB1
+     * connections and DFS referrals are handled by {@link #exists()}.
+     *
+     * @see org.codelibs.jcifs.smb.SmbResource#existsAsync()
+     */
+    @Override
+    public CompletableFuture<Boolean> existsAsync() {
+        if (this.attrExpiration > System.currentTimeMillis()) {
+            log.trace("Using cached attributes");
+            return CompletableFuture.completedFuture(this.isExists);
+        }
+        if (this.url.getHost().length() == 0 || this.fileLocator.getShare() == null) {
+            return SmbResource.super.existsAsync();
+        }
+
+        try (SmbTreeHandleImpl th = ensureTreeConnected()) {
+            if (!th.isSMB2() || this.fileLocator.getType() == TYPE_SHARE) {
+                return SmbResource.super.existsAsync();
+            }
+            final Configuration config = th.getConfig();
+            final String uncPath = this.fileLocator.getUNCPath();
+            final SmbLeaseManager leases = th.getLeaseManager();
+            if (leases != null) {
+                final SmbBasicFileInfo cached = leases.getCachedInfo(SmbLeaseManager.pathKey(th.getTreeId(), uncPath));
+                if (cached != null) {
+                    setCachedInfo(cached, config);
+                    return CompletableFuture.completedFuture(true);
+                }
+            }
+
+            final Smb2CreateRequest cr = new Smb2CreateRequest(config, uncPath);
+            cr.setCreateDisposition(Smb2CreateRequest.FILE_OPEN);
+            cr.setFileAttributes(SmbConstants.ATTR_NORMAL);
+            cr.setDesiredAccess(SmbConstants.FILE_READ_ATTRIBUTES);
+            cr.setShareAccess(SmbConstants.FILE_SHARE_READ | SmbConstants.FILE_SHARE_WRITE);
+            final Smb2CloseRequest closeReq = new Smb2CloseRequest(config, uncPath);
+            closeReq.setCloseFlags(Smb2CloseResponse.SMB2_CLOSE_FLAG_POSTQUERY_ATTIB);
+            cr.chain(closeReq);
+
+            return th.sendFuture(cr).thenApply(createResp -> {
+                final Smb2CloseResponse closeResp = closeReq.getResponse();
+                if ((closeResp.getCloseFlags() & Smb2CloseResponse.SMB2_CLOSE_FLAG_POSTQUERY_ATTIB) != 0) {
+                    setCachedInfo(closeResp, config);
+                } else {
+                    setCachedInfo(createResp, config);
+                }
+                return true;
+            }).exceptionallyCompose(e -> existsFailed(e, config));
+        } catch (final CIFSException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private CompletableFuture<Boolean> existsFailed(final Throwable e, final Configuration config) {
+        final Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof DfsReferral) {
+            // let the synchronous path follow the referral
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return exists();
+                } catch (final SmbException se) {
+                    throw new CompletionException(se);
+                }
+            });
+        }
+        if (cause instanceof final SmbException se) {
+            switch (se.getNtStatus()) {
+            case NtStatus.NT_STATUS_NO_SUCH_FILE:
+            case NtStatus.NT_STATUS_OBJECT_NAME_INVALID:
+            case NtStatus.NT_STATUS_OBJECT_NAME_NOT_FOUND:
+            case NtStatus.NT_STATUS_OBJECT_PATH_NOT_FOUND:
+                log.trace("existsAsync:", se);
+                this.attributes = ATTR_READONLY | ATTR_DIRECTORY;
+                this.createTime = 0L;
+                this.lastModified = 0L;
+                this.lastAccess = 0L;
+                this.isExists = false;
+                this.attrExpiration = System.currentTimeMillis() + config.getAttributeCacheTimeout();
+                return CompletableFuture.completedFuture(false);
+            default:
+                break;
+            }
+        }
+        return CompletableFuture.failedFuture(cause);
+    }
+
     @Override
     public int getType() throws SmbException {
         try {
@@ -1257,6 +1450,18 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
         return SmbEnumerationUtil.doEnum(this, "*", ATTR_DIRECTORY | ATTR_HIDDEN | ATTR_SYSTEM, null, null);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * With SMB2 the directory is listed using requests sent without waiting, otherwise the listing runs on a pool thread.
+     *
+     * @see org.codelibs.jcifs.smb.SmbResource#listAsync()
+     */
+    @Override
+    public CompletableFuture<List<SmbResource>> listAsync() {
+        return SmbEnumerationUtil.doEnumAsync(this, "*", ATTR_DIRECTORY | ATTR_HIDDEN | ATTR_SYSTEM);
+    }
+
     @Override
     public CloseableIterator<SmbResource> children(final String wildcard) throws CIFSException {
         return SmbEnumerationUtil.doEnum(this, wildcard, ATTR_DIRECTORY | ATTR_HIDDEN | ATTR_SYSTEM, null, null);
@@ -1284,11 +1489,17 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
         }
         try (SmbTreeHandleImpl sh = ensureTreeConnected(); SmbTreeHandleImpl th = dest.ensureTreeConnected()) {
 
-            // this still might be required for standalone DFS
-            if (!exists()) {
+            final boolean smb2 = sh.isSMB2();
+            if (smb2) {
+                // a missing source fails the open, only resolve the paths
+                sh.ensureDFSResolved();
+                th.ensureDFSResolved();
+            } else if (!exists()) {
+                // this still might be required for standalone DFS
                 throw new SmbException(NtStatus.NT_STATUS_OBJECT_NAME_NOT_FOUND, null);
+            } else {
+                dest.exists();
             }
-            dest.exists();
 
             if (this.fileLocator.isRootOrShare() || dest.fileLocator.isRootOrShare()) {
                 throw new SmbException("Invalid operation for workgroups, servers, or shares");
@@ -1296,8 +1507,13 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
 
             if (!sh.isSameTree(th)) {
                 // trigger requests to resolve the actual target
-                exists();
-                dest.exists();
+                if (smb2) {
+                    sh.ensureDFSResolved();
+                    th.ensureDFSResolved();
+                } else {
+                    exists();
+                    dest.exists();
+                }
 
                 if (!Objects.equals(getServerWithDfs(), dest.getServerWithDfs()) || !Objects.equals(getShare(), dest.getShare())) {
                     throw new SmbException("Cannot rename between different trees");
@@ -1312,7 +1528,11 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
             /*
              * Rename Request / Response
              */
-            if (sh.isSMB2()) {
+            if (smb2) {
+                closeLeaseCachedHandle(sh, getUncPath());
+                if (replace) {
+                    closeLeaseCachedHandle(sh, dest.getUncPath());
+                }
                 final Smb2SetInfoRequest req = new Smb2SetInfoRequest(sh.getConfig());
                 req.setFileInformation(new FileRenameInformation2(dest.getUncPath().substring(1), replace));
                 withOpen(sh, Smb2CreateRequest.FILE_OPEN, FILE_WRITE_ATTRIBUTES | DELETE, FILE_SHARE_READ | FILE_SHARE_WRITE, req);
@@ -1324,7 +1544,7 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
                 sh.send(new SmbComRename(sh.getConfig(), getUncPath(), dest.getUncPath()), new SmbComBlankResponse(sh.getConfig()));
             }
 
-            this.attrExpiration = this.sizeExpiration = 0;
+            clearAttributeCache();
         } catch (final CIFSException e) {
             throw SmbException.wrap(e);
         }
@@ -1347,6 +1567,7 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
     void clearAttributeCache() {
         this.attrExpiration = 0;
         this.sizeExpiration = 0;
+        this.securityExpiration = 0;
     }
 
     @Override
@@ -1355,24 +1576,7 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
             throw new SmbException("Invalid target resource");
         }
         try (SmbTreeHandleImpl sh = ensureTreeConnected(); SmbTreeHandleImpl dh = dest.ensureTreeConnected()) {
-            if (!exists()) {
-                throw new SmbException(NtStatus.NT_STATUS_OBJECT_NAME_NOT_FOUND, null);
-            }
-
-            /*
-             * Should be able to copy an entire share actually
-             */
-            if (this.fileLocator.getShare() == null || dest.getLocator().getShare() == null) {
-                throw new SmbException("Invalid operation for workgroups or servers");
-            }
-
-            /*
-             * It is invalid for the source path to be a child of the destination
-             * path or visa versa.
-             */
-            if (this.fileLocator.overlaps(dest.getLocator())) {
-                throw new SmbException("Source and destination paths overlap.");
-            }
+            checkCopyTarget(dest);
 
             final WriterThread w = new WriterThread();
             w.setDaemon(true);
@@ -1397,6 +1601,64 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
         }
     }
 
+    /**
+     * Recursively copy this file or directory using several worker threads
+     *
+     * Unlike {@link #copyTo(SmbResource)} a failure to copy an entry does not abort the operation, failures are
+     * reported to the listener and collected in the result.
+     *
+     * @param d
+     *            target resource
+     * @param parallelism
+     *            number of files copied concurrently, 0 to use
+     *            {@link org.codelibs.jcifs.smb.Configuration#getRecursiveOperationParallelism()}
+     * @param listener
+     *            progress listener, may be null
+     * @return counts and failures of the copy
+     * @throws SmbException
+     *             if the copy cannot be started or is interrupted
+     */
+    public RecursiveOperationResult copyTo(final SmbResource d, final int parallelism, final RecursiveOperationListener listener)
+            throws SmbException {
+        if (!(d instanceof final SmbFile dest)) {
+            throw new SmbException("Invalid target resource");
+        }
+        try (SmbTreeHandleImpl sh = ensureTreeConnected(); SmbTreeHandleImpl dh = dest.ensureTreeConnected();
+                SmbRecursiveOperation op = new SmbRecursiveOperation(recursiveParallelism(parallelism), listener)) {
+            checkCopyTarget(dest);
+            final int bsize = Math.min(sh.getReceiveBufferSize() - 70, dh.getSendBufferSize() - 70);
+            return op.copy(this, dest, bsize);
+        } catch (final CIFSException e) {
+            throw SmbException.wrap(e);
+        }
+    }
+
+    private void checkCopyTarget(final SmbFile dest) throws CIFSException {
+        if (!exists()) {
+            throw new SmbException(NtStatus.NT_STATUS_OBJECT_NAME_NOT_FOUND, null);
+        }
+
+        /*
+         * Should be able to copy an entire share actually
+         */
+        if (this.fileLocator.getShare() == null || dest.getLocator().getShare() == null) {
+            throw new SmbException("Invalid operation for workgroups or servers");
+        }
+
+        /*
+         * It is invalid for the source path to be a child of the destination
+         * path or visa versa.
+         */
+        if (this.fileLocator.overlaps(dest.getLocator())) {
+            throw new SmbException("Source and destination paths overlap.");
+        }
+    }
+
+    private int recursiveParallelism(final int parallelism) {
+        final int p = parallelism > 0 ? parallelism : getContext().getConfig().getRecursiveOperationParallelism();
+        return Math.max(1, p);
+    }
+
     @Override
     public void delete() throws SmbException {
         try {
@@ -1407,26 +1669,44 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
         close();
     }
 
-    void delete(final String fileName) throws CIFSException {
+    /**
+     * Recursively delete this file or directory using several worker threads
+     *
+     * Unlike {@link #delete()} a failure to delete an entry does not abort the operation, failures are reported to the
+     * listener and collected in the result. Directories are only deleted once all their contents have been deleted.
+     *
+     * @param parallelism
+     *            number of entries deleted concurrently, 0 to use
+     *            {@link org.codelibs.jcifs.smb.Configuration#getRecursiveOperationParallelism()}
+     * @param listener
+     *            progress listener, may be null
+     * @return counts and failures of the deletion
+     * @throws SmbException
+     *             if the deletion cannot be started or is interrupted
+     */
+    public RecursiveOperationResult delete(final int parallelism, final RecursiveOperationListener listener) throws SmbException {
         if (this.fileLocator.isRootOrShare()) {
             throw new SmbException("Invalid operation for workgroups, servers, or shares");
         }
-
-        try (SmbTreeHandleImpl th = ensureTreeConnected()) {
+        try (SmbTreeHandleImpl th = ensureTreeConnected();
+                SmbRecursiveOperation op = new SmbRecursiveOperation(recursiveParallelism(parallelism), listener)) {
             if (!exists()) {
                 throw new SmbException(NtStatus.NT_STATUS_OBJECT_NAME_NOT_FOUND, null);
             }
+            return op.delete(this);
+        } catch (final CIFSException e) {
+            throw SmbException.wrap(e);
+        }
+    }
 
-            if ((this.attributes & ATTR_READONLY) != 0) {
-                setReadWrite();
-            }
-
-            /*
-             * Delete or Delete Directory Request / Response
-             */
+    void delete(final String fileName) throws CIFSException {
+        if (this.fileLocator.isRootOrShare()) {
+            throw new SmbException("Invalid operation for workgroups, servers, or shares");
+        }
 
-            if (log.isDebugEnabled()) {
-                log.debug("delete: " + fileName);
+        try (SmbTreeHandleImpl th = ensureTreeConnected()) {
+            if (!exists()) {
+                throw new SmbException(NtStatus.NT_STATUS_OBJECT_NAME_NOT_FOUND, null);
             }
 
             if ((this.attributes & ATTR_DIRECTORY) != 0) {
@@ -1457,29 +1737,60 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
                         throw se;
                     }
                 }
+            }
 
-                if (th.isSMB2()) {
-                    final Smb2CreateRequest req = new Smb2CreateRequest(th.getConfig(), fileName);
-                    req.setDesiredAccess(0x10000); // delete
-                    req.setCreateOptions(Smb2CreateRequest.FILE_DELETE_ON_CLOSE | Smb2CreateRequest.FILE_DIRECTORY_FILE);
-                    req.setCreateDisposition(Smb2CreateRequest.FILE_OPEN);
-                    req.chain(new Smb2CloseRequest(th.getConfig(), fileName));
-                    th.send(req);
-                } else {
-                    th.send(new SmbComDeleteDirectory(th.getConfig(), fileName), new SmbComBlankResponse(th.getConfig()));
-                }
-            } else if (th.isSMB2()) {
-                final Smb2CreateRequest req = new Smb2CreateRequest(th.getConfig(), fileName.substring(1));
+            deleteSingle(th, fileName);
+        }
+    }
+
+    /**
+     * Delete this file or empty directory without enumerating its contents
+     *
+     * The attributes must already be known, i.e. the resource must come from a listing or exists() must have been
+     * called.
+     *
+     * @param th
+     *            tree handle
+     * @param fileName
+     *            UNC path to delete
+     * @throws CIFSException
+     *             if the deletion fails
+     */
+    void deleteSingle(final SmbTreeHandleImpl th, final String fileName) throws CIFSException {
+        if ((this.attributes & ATTR_READONLY) != 0) {
+            setReadWrite();
+        }
+
+        /*
+         * Delete or Delete Directory Request / Response
+         */
+
+        if (log.isDebugEnabled()) {
+            log.debug("delete: " + fileName);
+        }
+
+        if ((this.attributes & ATTR_DIRECTORY) != 0) {
+            if (th.isSMB2()) {
+                final Smb2CreateRequest req = new Smb2CreateRequest(th.getConfig(), fileName);
                 req.setDesiredAccess(0x10000); // delete
-                req.setCreateOptions(Smb2CreateRequest.FILE_DELETE_ON_CLOSE);
+                req.setCreateOptions(Smb2CreateRequest.FILE_DELETE_ON_CLOSE | Smb2CreateRequest.FILE_DIRECTORY_FILE);
+                req.setCreateDisposition(Smb2CreateRequest.FILE_OPEN);
                 req.chain(new Smb2CloseRequest(th.getConfig(), fileName));
                 th.send(req);
             } else {
-                th.send(new SmbComDelete(th.getConfig(), fileName), new SmbComBlankResponse(th.getConfig()));
+                th.send(new SmbComDeleteDirectory(th.getConfig(), fileName), new SmbComBlankResponse(th.getConfig()));
             }
-            this.attrExpiration = this.sizeExpiration = 0;
+        } else if (th.isSMB2()) {
+            closeLeaseCachedHandle(th, fileName);
+            final Smb2CreateRequest req = new Smb2CreateRequest(th.getConfig(), fileName.substring(1));
+            req.setDesiredAccess(0x10000); // delete
+            req.setCreateOptions(Smb2CreateRequest.FILE_DELETE_ON_CLOSE);
+            req.chain(new Smb2CloseRequest(th.getConfig(), fileName));
+            th.send(req);
+        } else {
+            th.send(new SmbComDelete(th.getConfig(), fileName), new SmbComBlankResponse(th.getConfig()));
         }
-
+        this.attrExpiration = this.sizeExpiration = 0;
     }
 
     @Override
@@ -1569,10 +1880,13 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
         }
 
         try (SmbTreeHandleImpl th = ensureTreeConnected()) {
-            // should not normally be required, but samba without NTStatus does not properly resolve the path and fails
-            // with
-            // STATUS_UNSUCCESSFUL
-            exists();
+            if (th.isSMB2()) {
+                th.ensureDFSResolved();
+            } else {
+                // should not normally be required, but samba without NTStatus does not properly resolve the path and
+                // fails with STATUS_UNSUCCESSFUL
+                exists();
+            }
             // get the path again, this may have changed through DFS referrals
             path = this.fileLocator.getUNCPath();
 
@@ -1602,7 +1916,58 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
     @Override
     public void mkdirs() throws SmbException {
         final String p = this.fileLocator.getParent();
-        try (SmbTreeHandle th = ensureTreeConnected(); SmbFile parent = new SmbFile(p, getContext())) {
+        try (SmbTreeHandleImpl th = ensureTreeConnected()) {
+            if (th.isSMB2() && !this.fileLocator.isRootOrShare()) {
+                th.ensureDFSResolved();
+                // only the first request of a compound is resolved in DFS
+                if (!th.isPossiblyDfs()) {
+                    mkdirs2(th);
+                    return;
+                }
+            }
+            mkdirs(p);
+        } catch (final CIFSException e) {
+            throw SmbException.wrap(e);
+        }
+    }
+
+    /**
+     * Create all missing directories in a single compound, opening the existing ones
+     */
+    private void mkdirs2(final SmbTreeHandleImpl th) throws CIFSException {
+        String path = this.fileLocator.getUNCPath();
+        if (path.length() > 1 && path.charAt(path.length() - 1) == '\\') {
+            path = path.substring(0, path.length() - 1);
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("mkdirs: " + path);
+        }
+
+        final SmbCompoundBuilder compound = th.compound();
+        for (int i = path.indexOf('\\', 1); i > 0; i = path.indexOf('\\', i + 1)) {
+            final String parent = path.substring(0, i);
+            compound.open(parent, Smb2CreateRequest.FILE_OPEN_IF, Smb2CreateRequest.FILE_DIRECTORY_FILE, 0, FILE_READ_ATTRIBUTES,
+                    FILE_SHARE_READ | FILE_SHARE_WRITE);
+            compound.close(parent);
+        }
+        compound.open(path, Smb2CreateRequest.FILE_CREATE, Smb2CreateRequest.FILE_DIRECTORY_FILE, 0, 0x00120089,
+                FILE_SHARE_READ | FILE_SHARE_WRITE);
+        compound.close(path);
+
+        try {
+            compound.send();
+        } catch (final SmbException e) {
+            log.debug("mkdirs", e);
+            if (e.getNtStatus() != NtStatus.NT_STATUS_OBJECT_NAME_COLLISION) {
+                throw e;
+            }
+        }
+        this.attrExpiration = this.sizeExpiration = 0;
+    }
+
+    private void mkdirs(final String p) throws CIFSException {
+        try (SmbFile parent = new SmbFile(p, getContext())) {
             try {
                 if (!parent.exists()) {
                     if (log.isDebugEnabled()) {
@@ -1626,8 +1991,6 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
                     throw e;
                 }
             }
-        } catch (final CIFSException e) {
-            throw SmbException.wrap(e);
         } catch (final MalformedURLException e) {
             throw new SmbException("Invalid URL in mkdirs", e);
         }
@@ -1687,64 +2050,42 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
     protected <T extends ServerMessageBlock2Response> T withOpen(final SmbTreeHandleImpl th, final int createDisposition,
             final int createOptions, final int fileAttributes, final int desiredAccess, final int shareAccess,
             final ServerMessageBlock2Request<T> first, final ServerMessageBlock2Request<?>... others) throws CIFSException {
-        final Smb2CreateRequest cr = new Smb2CreateRequest(th.getConfig(), getUncPath());
-        try {
-            cr.setCreateDisposition(createDisposition);
-            cr.setCreateOptions(createOptions);
-            cr.setFileAttributes(fileAttributes);
-            cr.setDesiredAccess(desiredAccess);
-            cr.setShareAccess(shareAccess);
-
-            ServerMessageBlock2Request<?> cur = cr;
-
-            if (first != null) {
-                cr.chain(first);
-                cur = first;
-
-                for (final ServerMessageBlock2Request<?> req : others) {
-                    cur.chain(req);
-                    cur = req;
-                }
+        if (createDisposition != Smb2CreateRequest.FILE_OPEN || (desiredAccess & LEASE_MODIFY_ACCESS) != 0) {
+            invalidateLeaseCache(th, getUncPath());
+        }
+        final String path = getUncPath();
+        final SmbCompoundBuilder compound = th.compound();
+        compound.open(path, createDisposition, createOptions, fileAttributes, desiredAccess, shareAccess);
+        if (first != null) {
+            compound.add(first);
+            for (final ServerMessageBlock2Request<?> req : others) {
+                compound.add(req);
             }
+        }
+        final Smb2CloseRequest closeReq = compound.close(path);
+        closeReq.setCloseFlags(Smb2CloseResponse.SMB2_CLOSE_FLAG_POSTQUERY_ATTIB);
 
-            final Smb2CloseRequest closeReq = new Smb2CloseRequest(th.getConfig(), getUncPath());
-            closeReq.setCloseFlags(Smb2CloseResponse.SMB2_CLOSE_FLAG_POSTQUERY_ATTIB);
-            cur.chain(closeReq);
+        final Smb2CreateResponse createResp = compound.send();
 
-            final Smb2CreateResponse createResp = th.send(cr);
+        final Smb2CloseResponse closeResp = closeReq.getResponse();
+        SmbBasicFileInfo info;
 
-            final Smb2CloseResponse closeResp = closeReq.getResponse();
-            SmbBasicFileInfo info;
+        if ((closeResp.getCloseFlags() & Smb2CloseResponse.SMB2_CLOSE_FLAG_POSTQUERY_ATTIB) != 0) {
+            info = closeResp;
+        } else {
+            info = createResp;
+        }
 
-            if ((closeResp.getCloseFlags() & Smb2CloseResponse.SMB2_CLOSE_FLAG_POSTQUERY_ATTIB) != 0) {
-                info = closeResp;
-            } else {
-                info = createResp;
-            }
+        this.isExists = true;
+        this.createTime = info.getCreateTime();
+        this.lastModified = info.getLastWriteTime();
+        this.lastAccess = info.getLastAccessTime();
+        this.attributes = info.getAttributes() & ATTR_GET_MASK;
+        this.attrExpiration = System.currentTimeMillis() + th.getConfig().getAttributeCacheTimeout();
 
-            this.isExists = true;
-            this.createTime = info.getCreateTime();
-            this.lastModified = info.getLastWriteTime();
-            this.lastAccess = info.getLastAccessTime();
-            this.attributes = info.getAttributes() & ATTR_GET_MASK;
-            this.attrExpiration = System.currentTimeMillis() + th.getConfig().getAttributeCacheTimeout();
-
-            this.size = info.getSize();
-            this.sizeExpiration = System.currentTimeMillis() + th.getConfig().getAttributeCacheTimeout();
-            return (T) createResp.getNextResponse();
-        } catch (CIFSException | RuntimeException e) {
-            try {
-                // make sure that the handle is closed when one of the requests fails
-                final Smb2CreateResponse createResp = cr.getResponse();
-                if (createResp.isReceived() && createResp.getStatus() == NtStatus.NT_STATUS_SUCCESS) {
-                    th.send(new Smb2CloseRequest(th.getConfig(), createResp.getFileId()), RequestParam.NO_RETRY);
-                }
-            } catch (final Exception e2) {
-                log.debug("Failed to close after failure", e2);
-                e.addSuppressed(e2);
-            }
-            throw e;
-        }
+        this.size = info.getSize();
+        this.sizeExpiration = System.currentTimeMillis() + th.getConfig().getAttributeCacheTimeout();
+        return (T) createResp.getNextResponse();
     }
 
     @Override
@@ -1770,13 +2111,22 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
 
     void setPathInformation(final int attrs, final long ctime, final long mtime, final long atime) throws CIFSException {
         try (SmbTreeHandleImpl th = ensureTreeConnected()) {
-            if (!exists()) {
-                throw new SmbException(NtStatus.NT_STATUS_OBJECT_NAME_NOT_FOUND, null);
+            final boolean smb2 = th.isSMB2();
+            final int dir;
+            if (!smb2 || attrs == 0 && ctime == 0 && mtime == 0 && atime == 0) {
+                // zero attributes are left unchanged by SMB2, clearing them on a directory needs the directory flag
+                if (!exists()) {
+                    throw new SmbException(NtStatus.NT_STATUS_OBJECT_NAME_NOT_FOUND, null);
+                }
+                dir = this.attributes & ATTR_DIRECTORY;
+            } else if (attrs != 0 && this.attrExpiration > System.currentTimeMillis()) {
+                dir = this.attributes & ATTR_DIRECTORY;
+            } else {
+                // the server keeps the directory flag, a missing file fails the open
+                dir = 0;
             }
 
-            final int dir = this.attributes & ATTR_DIRECTORY;
-
-            if (th.isSMB2()) {
+            if (smb2) {
 
                 final Smb2SetInfoRequest req = new Smb2SetInfoRequest(th.getConfig());
                 req.setFileInformation(new FileBasicInfo(ctime, atime, mtime, 0L, attrs | dir));
@@ -2098,6 +2448,65 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
         return new SmbRandomAccessFile(this, mode, sharing, false);
     }
 
+    /**
+     * Open a file channel, only supported with SMB2
+     *
+     * @param openFlags
+     *            combination of {@link SmbConstants#O_RDONLY}, {@link SmbConstants#O_WRONLY}, {@link SmbConstants#O_RDWR},
+     *            {@link SmbConstants#O_APPEND}, {@link SmbConstants#O_CREAT}, {@link SmbConstants#O_EXCL} and
+     *            {@link SmbConstants#O_TRUNC}
+     * @param sharing
+     *            share access flags
+     * @return a file channel, reads and writes are positional SMB2 requests
+     * @throws SmbException
+     *             if the file cannot be opened
+     */
+    public SmbFileChannel openFileChannel(final int openFlags, final int sharing) throws SmbException {
+        final SmbFileHandleImpl fh = openChannelHandle(openFlags, sharing);
+        return new SmbFileChannel(fh, (openFlags & O_RDONLY) != 0, (openFlags & O_WRONLY) != 0, (openFlags & O_APPEND) != 0);
+    }
+
+    /**
+     * Open an asynchronous file channel, only supported with SMB2
+     *
+     * @param openFlags
+     *            see {@link #openFileChannel(int, int)}, {@link SmbConstants#O_APPEND} is not supported
+     * @param sharing
+     *            share access flags
+     * @param executor
+     *            executor running completion handlers, the common pool if null
+     * @return an asynchronous file channel
+     * @throws SmbException
+     *             if the file cannot be opened
+     */
+    public SmbAsyncFileChannel openAsyncFileChannel(final int openFlags, final int sharing, final Executor executor) throws SmbException {
+        if ((openFlags & O_APPEND) != 0) {
+            throw new IllegalArgumentException("Append is not supported for asynchronous channels");
+        }
+        final SmbFileHandleImpl fh = openChannelHandle(openFlags, sharing);
+        return new SmbAsyncFileChannel(fh, (openFlags & O_RDONLY) != 0, (openFlags & O_WRONLY) != 0, executor);
+    }
+
+    private SmbFileHandleImpl openChannelHandle(final int openFlags, final int sharing) throws SmbException {
+        int access = FILE_READ_ATTRIBUTES;
+        if ((openFlags & O_RDONLY) != 0) {
+            access |= FILE_READ_DATA;
+        }
+        if ((openFlags & O_WRONLY) != 0) {
+            access |= FILE_WRITE_DATA | FILE_APPEND_DATA;
+        }
+        try (SmbTreeHandleImpl th = ensureTreeConnected()) {
+            if (!th.isSMB2()) {
+                throw new SmbUnsupportedOperationException("File channels require SMB2");
+            }
+            final SmbFileHandleImpl fh = openUnshared(openFlags, access, sharing, ATTR_NORMAL, 0);
+            clearAttributeCache();
+            return fh;
+        } catch (final CIFSException e) {
+            throw SmbException.wrap(e);
+        }
+    }
+
     private void processAces(final ACE[] aces, final boolean resolveSids) throws IOException {
         String server = this.fileLocator.getServerWithDfs();
         int ai;
@@ -2147,6 +2556,22 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
     }
 
     SecurityDescriptor querySecurity(final SmbTreeHandleImpl th, final int types) throws CIFSException {
+        if ((types & ~CACHED_SECURITY_INFO) != 0) {
+            return querySecurity0(th, types);
+        }
+
+        // owner, group and DACL are fetched together, so that e.g. getSecurity() and getOwnerUser() need a single query
+        final long now = System.currentTimeMillis();
+        SecurityDescriptor desc = this.securityDescriptor;
+        if (desc == null || this.securityExpiration <= now) {
+            desc = querySecurity0(th, CACHED_SECURITY_INFO);
+            this.securityDescriptor = desc;
+            this.securityExpiration = now + th.getConfig().getAttributeCacheTimeout();
+        }
+        return desc;
+    }
+
+    private SecurityDescriptor querySecurity0(final SmbTreeHandleImpl th, final int types) throws CIFSException {
         if (th.isSMB2()) {
             final Smb2QueryInfoRequest req = new Smb2QueryInfoRequest(th.getConfig());
             req.setInfoType(Smb2Constants.SMB2_0_INFO_SECURITY);
@@ -0,0 +1,404 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.codelibs.jcifs.smb.CIFSException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Block cache for a single random access file
+ *
+ * Reads are served from a small LRU cache of fixed size blocks. A miss loads the block, and when the file is read
+ * sequentially also the following blocks, with a single read. The number of blocks read ahead doubles on each
+ * sequential miss, up to half of the cache, and drops back to one on a random access.
+ *
+ * Small writes are collected in a write buffer as long as they are contiguous and written out when the buffer is
+ * full, on a non-contiguous write, before a block is loaded and on {@link #flush()}. Cached blocks are updated with
+ * the written data, so they always reflect the file contents as seen by this client.
+ *
+ * Changes to the file made by other clients are not visible while the affected blocks are cached.
+ *
+ * This class is not thread safe.
+ */
+class SmbFileBlockCache {
+
+    private static final Logger log = LoggerFactory.getLogger(SmbFileBlockCache.class);
+
+    /**
+     * Access to the underlying file
+     */
+    interface Backend {
+
+        /**
+         * @param pos
+         *            file position to read from
+         * @param b
+         *            destination buffer
+         * @param off
+         *            destination offset
+         * @param len
+         *            maximum number of bytes to read
+         * @return number of bytes read, may be short, -1 at the end of the file
+         * @throws CIFSException
+         *             if the read fails
+         */
+        int read(long pos, byte[] b, int off, int len) throws CIFSException;
+
+        /**
+         * @param pos
+         *            file position to write at
+         * @param b
+         *            source buffer
+         * @param off
+         *            source offset
+         * @param len
+         *            number of bytes to write
+         * @throws CIFSException
+         *             if the write fails
+         */
+        void write(long pos, byte[] b, int off, int len) throws CIFSException;
+    }
+
+    private final Backend backend;
+    private final int blockSize;
+    private final int maxBlocks;
+    private final Map<Long, Block> blocks;
+
+    private final byte[] writeBuffer;
+    private long writePos;
+    private int writeLength;
+    private CIFSException failure;
+
+    private long lastMiss = -2;
+    private int readAhead = 1;
+
+    /**
+     * @param backend
+     *            file access
+     * @param blockSize
+     *            size of cached blocks, also the size of the write buffer
+     * @param maxBlocks
+     *            maximum number of cached blocks
+     */
+    SmbFileBlockCache(final Backend backend, final int blockSize, final int maxBlocks) {
+        this.backend = backend;
+        this.blockSize = blockSize;
+        this.maxBlocks = Math.max(1, maxBlocks);
+        this.blocks = new LinkedHashMap<>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Long, Block> eldest) {
+                return size() > SmbFileBlockCache.this.maxBlocks;
+            }
+        };
+        this.writeBuffer = new byte[blockSize];
+    }
+
+    /**
+     * @return the block size
+     */
+    int getBlockSize() {
+        return this.blockSize;
+    }
+
+    /**
+     * @return number of cached blocks
+     */
+    int getCachedBlocks() {
+        return this.blocks.size();
+    }
+
+    /**
+     * @return number of blocks read on the next sequential miss
+     */
+    int getReadAhead() {
+        return this.readAhead;
+    }
+
+    /**
+     * @return amount of data written but not yet sent
+     */
+    int getPendingBytes() {
+        return this.writeLength;
+    }
+
+    /**
+     * Read data at the given file position
+     *
+     * @param pos
+     *            file position
+     * @param b
+     *            destination buffer
+     * @param off
+     *            destination offset
+     * @param len
+     *            number of bytes to read
+     * @return number of bytes read, -1 at the end of the file
+     * @throws CIFSException
+     *             if loading a block or a previous write failed
+     */
+    int read(long pos, final byte[] b, int off, int len) throws CIFSException {
+        checkFailure();
+        int total = 0;
+        while (len > 0) {
+            final Block blk = getBlock(pos / this.blockSize);
+            final int boff = (int) (pos % this.blockSize);
+            if (boff >= blk.length) {
+                break;
+            }
+            final int n = Math.min(len, blk.length - boff);
+            System.arraycopy(blk.data, boff, b, off, n);
+            total += n;
+            pos += n;
+            off += n;
+            len -= n;
+            if (blk.length < this.blockSize) {
+                // end of file
+                break;
+            }
+        }
+        return total > 0 || len == 0 ? total : -1;
+    }
+
+    /**
+     * Write data at the given file position
+     *
+     * @param pos
+     *            file position
+     * @param b
+     *            source buffer
+     * @param off
+     *            source offset
+     * @param len
+     *            number of bytes to write
+     * @throws CIFSException
+     *             if this or a previous write failed
+     */
+    void write(final long pos, final byte[] b, final int off, final int len) throws CIFSException {
+        checkFailure();
+        if (len <= 0) {
+            return;
+        }
+        updateBlocks(pos, b, off, len);
+
+        if (this.writeLength > 0 && pos != this.writePos + this.writeLength) {
+            flush();
+        }
+        if (this.writeLength == 0 && len >= this.writeBuffer.length) {
+            try {
+                this.backend.write(pos, b, off, len);
+            } catch (final CIFSException e) {
+                fail(e);
+                throw e;
+            }
+            return;
+        }
+
+        int done = 0;
+        while (done < len) {
+            if (this.writeLength == 0) {
+                this.writePos = pos + done;
+            }
+            final int n = Math.min(len - done, this.writeBuffer.length - this.writeLength);
+            System.arraycopy(b, off + done, this.writeBuffer, this.writeLength, n);
+            this.writeLength += n;
+            done += n;
+            if (this.writeLength == this.writeBuffer.length) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Write out buffered data
+     *
+     * @throws CIFSException
+     *             if this or a previous write failed
+     */
+    void flush() throws CIFSException {
+        checkFailure();
+        if (this.writeLength == 0) {
+            return;
+        }
+        final int len = this.writeLength;
+        this.writeLength = 0;
+        try {
+            this.backend.write(this.writePos, this.writeBuffer, 0, len);
+        } catch (final CIFSException e) {
+            fail(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Write out buffered data, a failure is reported by the next operation
+     */
+    void flushDeferred() {
+        try {
+            flush();
+        } catch (final CIFSException e) {
+            log.debug("Deferred write failed", e);
+        }
+    }
+
+    /**
+     * Drop all cached blocks, buffered data is written first
+     *
+     * @throws CIFSException
+     *             if writing buffered data failed
+     */
+    void invalidate() throws CIFSException {
+        try {
+            flush();
+        } finally {
+            this.blocks.clear();
+            this.lastMiss = -2;
+            this.readAhead = 1;
+        }
+    }
+
+    /**
+     * Drop the cached blocks overlapping a range that is written without going through the cache, buffered data is
+     * written first so it cannot overwrite the new data later
+     *
+     * Short blocks before the range are dropped as well since the write may extend the file past them.
+     *
+     * @param pos
+     *            start of the range
+     * @param len
+     *            length of the range
+     * @throws CIFSException
+     *             if writing buffered data failed
+     */
+    void invalidate(final long pos, final long len) throws CIFSException {
+        flush();
+        if (len <= 0) {
+            return;
+        }
+        final long first = pos / this.blockSize;
+        final long last = (pos + len - 1) / this.blockSize;
+        this.blocks.entrySet().removeIf(e -> e.getKey() <= last && (e.getKey() >= first || e.getValue().length < this.blockSize));
+    }
+
+    private Block getBlock(final long index) throws CIFSException {
+        final Block blk = this.blocks.get(index);
+        if (blk != null) {
+            return blk;
+        }
+        // the server needs to see buffered writes before we read from it
+        flush();
+
+        if (index == this.lastMiss + 1) {
+            this.readAhead = Math.min(this.readAhead * 2, Math.max(1, this.maxBlocks / 2));
+        } else {
+            this.readAhead = 1;
+        }
+        int count = 1;
+        while (count < this.readAhead && !this.blocks.containsKey(index + count)) {
+            count++;
+        }
+        this.lastMiss = index + count - 1;
+        return load(index, count);
+    }
+
+    private Block load(final long index, final int count) throws CIFSException {
+        final byte[] buf = new byte[count * this.blockSize];
+        final long start = index * this.blockSize;
+        int n = 0;
+        while (n < buf.length) {
+            final int r = this.backend.read(start + n, buf, n, buf.length - n);
+            if (r <= 0) {
+                break;
+            }
+            n += r;
+        }
+
+        Block first = null;
+        for (int i = 0; i < count; i++) {
+            final int len = Math.max(0, Math.min(this.blockSize, n - i * this.blockSize));
+            final Block blk = new Block(new byte[this.blockSize], len);
+            System.arraycopy(buf, i * this.blockSize, blk.data, 0, len);
+            if (i == 0) {
+                first = blk;
+            }
+            this.blocks.put(index + i, blk);
+            if (len < this.blockSize) {
+                break;
+            }
+        }
+        // make sure the requested block is the most recently used one
+        this.blocks.get(index);
+        return first;
+    }
+
+    private void updateBlocks(long pos, final byte[] b, int off, int len) {
+        if (this.blocks.isEmpty()) {
+            return;
+        }
+        final Iterator<Map.Entry<Long, Block>> it = this.blocks.entrySet().iterator();
+        final long end = pos + len;
+        while (it.hasNext()) {
+            final Map.Entry<Long, Block> e = it.next();
+            final long bstart = e.getKey() * this.blockSize;
+            final Block blk = e.getValue();
+            if (bstart + this.blockSize <= pos) {
+                // the file now extends past this block
+                blk.length = this.blockSize;
+                continue;
+            }
+            final long s = Math.max(bstart, pos);
+            final long t = Math.min(bstart + this.blockSize, end);
+            if (s >= t) {
+                continue;
+            }
+            System.arraycopy(b, (int) (off + s - pos), blk.data, (int) (s - bstart), (int) (t - s));
+            // data beyond the previous end of the block is zero, as is the gap in the file
+            blk.length = Math.max(blk.length, (int) (t - bstart));
+        }
+    }
+
+    private void checkFailure() throws CIFSException {
+        if (this.failure != null) {
+            throw new SmbException("A previous write failed", this.failure);
+        }
+    }
+
+    private void fail(final CIFSException e) {
+        if (this.failure == null) {
+            this.failure = e;
+        }
+    }
+
+    private static final class Block {
+
+        final byte[] data;
+        int length;
+
+        Block(final byte[] data, final int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonReadableChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+import org.codelibs.jcifs.smb.CIFSException;
+import org.codelibs.jcifs.smb.internal.fscc.FileEndOfFileInformation;
+import org.codelibs.jcifs.smb.internal.fscc.FileInformation;
+import org.codelibs.jcifs.smb.internal.fscc.FileStandardInfo;
+import org.codelibs.jcifs.smb.internal.smb2.info.Smb2QueryInfoRequest;
+import org.codelibs.jcifs.smb.internal.smb2.info.Smb2QueryInfoResponse;
+import org.codelibs.jcifs.smb.internal.smb2.info.Smb2SetInfoRequest;
+import org.codelibs.jcifs.smb.internal.smb2.io.Smb2FlushRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * File channel backed by an open SMB2 file handle
+ *
+ * Reads and writes are positional SMB2 requests, see {@link org.codelibs.jcifs.smb.SmbFileHandle#read(ByteBuffer, long)}.
+ * Operations with an explicit position may be used concurrently from several threads, operations using the channel
+ * position are serialized.
+ *
+ * {@link #transferTo(long, long, WritableByteChannel)} and {@link #transferFrom(ReadableByteChannel, long, long)} between
+ * two channels on the same server session are done on the server using copychunk.
+ *
+ * Memory mapping and file locks are not supported.
+ */
+public final class SmbFileChannel extends FileChannel {
+
+    private static final Logger log = LoggerFactory.getLogger(SmbFileChannel.class);
+
+    private static final int TRANSFER_SIZE = 1024 * 1024;
+
+    private final SmbFileHandleImpl handle;
+    private final boolean readable;
+    private final boolean writable;
+    private final boolean append;
+
+    private final Object positionLock = new Object();
+    private long position;
+
+    private byte[] resumeKey;
+
+    /**
+     * @param handle
+     *            open file handle, this channel takes ownership
+     * @param readable
+     *            whether the file is opened for reading
+     * @param writable
+     *            whether the file is opened for writing
+     * @param append
+     *            whether writes always go to the end of the file
+     */
+    SmbFileChannel(final SmbFileHandleImpl handle, final boolean readable, final boolean writable, final boolean append) {
+        this.handle = handle;
+        this.readable = readable;
+        this.writable = writable;
+        this.append = append;
+    }
+
+    @Override
+    public int read(final ByteBuffer dst) throws IOException {
+        checkReadable();
+        synchronized (this.positionLock) {
+            final int n = this.handle.read(dst, this.position);
+            if (n > 0) {
+                this.position += n;
+            }
+            return n;
+        }
+    }
+
+    @Override
+    public long read(final ByteBuffer[] dsts, final int offset, final int length) throws IOException {
+        checkReadable();
+        synchronized (this.positionLock) {
+            final long n = this.handle.read(Arrays.copyOfRange(dsts, offset, offset + length), this.position);
+            if (n > 0) {
+                this.position += n;
+            }
+            return n;
+        }
+    }
+
+    @Override
+    public int read(final ByteBuffer dst, final long pos) throws IOException {
+        checkReadable();
+        if (pos < 0) {
+            throw new IllegalArgumentException("Negative position");
+        }
+        return this.handle.read(dst, pos);
+    }
+
+    @Override
+    public int write(final ByteBuffer src) throws IOException {
+        checkWritable();
+        synchronized (this.positionLock) {
+            if (this.append) {
+                this.position = size();
+            }
+            final int n = this.handle.write(src, this.position);
+            this.position += n;
+            return n;
+        }
+    }
+
+    @Override
+    public long write(final ByteBuffer[] srcs, final int offset, final int length) throws IOException {
+        checkWritable();
+        synchronized (this.positionLock) {
+            if (this.append) {
+                this.position = size();
+            }
+            final long n = this.handle.write(Arrays.copyOfRange(srcs, offset, offset + length), this.position);
+            this.position += n;
+            return n;
+        }
+    }
+
+    @Override
+    public int write(final ByteBuffer src, final long pos) throws IOException {
+        checkWritable();
+        if (pos < 0) {
+            throw new IllegalArgumentException("Negative position");
+        }
+        return this.handle.write(src, pos);
+    }
+
+    @Override
+    public long position() throws IOException {
+        checkOpen();
+        synchronized (this.positionLock) {
+            return this.position;
+        }
+    }
+
+    @Override
+    public FileChannel position(final long newPosition) throws IOException {
+        checkOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position");
+        }
+        synchronized (this.positionLock) {
+            this.position = newPosition;
+        }
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        checkOpen();
+        try (SmbTreeHandleImpl th = this.handle.getTree()) {
+            final Smb2QueryInfoRequest req = new Smb2QueryInfoRequest(th.getConfig(), this.handle.getFileId());
+            req.setFileInfoClass(FileInformation.FILE_STANDARD_INFO);
+            final Smb2QueryInfoResponse resp = th.send(req);
+            return resp.getInfo(FileStandardInfo.class).getSize();
+        }
+    }
+
+    @Override
+    public FileChannel truncate(final long size) throws IOException {
+        checkWritable();
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative size");
+        }
+        if (size < size()) {
+            try (SmbTreeHandleImpl th = this.handle.getTree()) {
+                final Smb2SetInfoRequest req = new Smb2SetInfoRequest(th.getConfig(), this.handle.getFileId());
+                req.setFileInformation(new FileEndOfFileInformation(size));
+                th.send(req, RequestParam.NO_RETRY);
+            }
+        }
+        synchronized (this.positionLock) {
+            if (this.position > size) {
+                this.position = size;
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public void force(final boolean metaData) throws IOException {
+        checkOpen();
+        if (!this.writable) {
+            return;
+        }
+        try (SmbTreeHandleImpl th = this.handle.getTree()) {
+            th.send(new Smb2FlushRequest(th.getConfig(), this.handle.getFileId()));
+        }
+    }
+
+    @Override
+    public long transferTo(final long pos, final long count, final WritableByteChannel target) throws IOException {
+        checkReadable();
+        if (pos < 0 || count < 0) {
+            throw new IllegalArgumentException();
+        }
+        if (target instanceof final SmbFileChannel dest && dest.writable && dest.isOpen() && !dest.append) {
+            synchronized (dest.positionLock) {
+                final long n = serverSideCopy(this, pos, dest, dest.position, count);
+                if (n >= 0) {
+                    dest.position += n;
+                    return n;
+                }
+            }
+        }
+
+        final ByteBuffer buf = ByteBuffer.allocate((int) Math.min(count, TRANSFER_SIZE));
+        long done = 0;
+        while (done < count) {
+            buf.clear().limit((int) Math.min(buf.capacity(), count - done));
+            final int n = this.handle.read(buf, pos + done);
+            if (n <= 0) {
+                break;
+            }
+            buf.flip();
+            while (buf.hasRemaining()) {
+                target.write(buf);
+            }
+            done += n;
+        }
+        return done;
+    }
+
+    @Override
+    public long transferFrom(final ReadableByteChannel src, final long pos, final long count) throws IOException {
+        checkWritable();
+        if (pos < 0 || count < 0) {
+            throw new IllegalArgumentException();
+        }
+        if (src instanceof final SmbFileChannel source && source.readable && source.isOpen()) {
+            synchronized (source.positionLock) {
+                final long n = serverSideCopy(source, source.position, this, pos, count);
+                if (n >= 0) {
+                    source.position += n;
+                    return n;
+                }
+            }
+        }
+
+        final ByteBuffer buf = ByteBuffer.allocate((int) Math.min(count, TRANSFER_SIZE));
+        long done = 0;
+        while (done < count) {
+            buf.clear().limit((int) Math.min(buf.capacity(), count - done));
+            final int n = src.read(buf);
+            if (n <= 0) {
+                break;
+            }
+            buf.flip();
+            while (buf.hasRemaining()) {
+                done += this.handle.write(buf, pos + done);
+            }
+        }
+        return done;
+    }
+
+    /**
+     * @return number of bytes copied, -1 if a server side copy is not possible
+     */
+    private static long serverSideCopy(final SmbFileChannel src, final long srcPos, final SmbFileChannel dest, final long destPos,
+            final long count) throws IOException {
+        try (SmbTreeHandleImpl sh = src.handle.getTree(); SmbTreeHandleImpl dh = dest.handle.getTree()) {
+            if (!SmbCopyUtil.isServerSideCopyPossible(sh, dh)) {
+                return -1;
+            }
+            final long n = Math.min(count, Math.max(0, src.size() - srcPos));
+            if (n == 0) {
+                return 0;
+            }
+            try {
+                return SmbCopyUtil.copyChunks(dh, src.getResumeKey(sh), dest.handle, srcPos, destPos, n, !dest.readable);
+            } catch (final SmbUnsupportedOperationException e) {
+                log.debug("Server side copy not supported, falling back to normal copying", e);
+                return -1;
+            } catch (final CIFSException e) {
+                if (sh.isSameTree(dh)) {
+                    throw e;
+                }
+                log.debug("Server side copy between shares failed, falling back to normal copying", e);
+                SmbCopyUtil.crossShareCopyFailed(dh);
+                return -1;
+            }
+        }
+    }
+
+    private synchronized byte[] getResumeKey(final SmbTreeHandleImpl th) throws CIFSException {
+        if (this.resumeKey == null) {
+            this.resumeKey = SmbCopyUtil.requestResumeKey(th, this.handle);
+        }
+        return this.resumeKey;
+    }
+
+    /**
+     * Not supported
+     */
+    @Override
+    public MappedByteBuffer map(final MapMode mode, final long pos, final long size) throws IOException {
+        throw new UnsupportedOperationException("Memory mapping is not supported");
+    }
+
+    /**
+     * Not supported
+     */
+    @Override
+    public FileLock lock(final long pos, final long size, final boolean shared) throws IOException {
+        throw new UnsupportedOperationException("File locks are not supported");
+    }
+
+    /**
+     * Not supported
+     */
+    @Override
+    public FileLock tryLock(final long pos, final long size, final boolean shared) throws IOException {
+        throw new UnsupportedOperationException("File locks are not supported");
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+        this.handle.close();
+    }
+
+    private void checkOpen() throws ClosedChannelException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    private void checkReadable() throws ClosedChannelException {
+        checkOpen();
+        if (!this.readable) {
+            throw new NonReadableChannelException();
+        }
+    }
+
+    private void checkWritable() throws ClosedChannelException {
+        checkOpen();
+        if (!this.writable) {
+            throw new NonWritableChannelException();
+        }
+    }
+}
@@ -17,7 +17,12 @@
  */
 package org.codelibs.jcifs.smb.impl;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.codelibs.jcifs.smb.CIFSException;
@@ -26,6 +31,8 @@ import org.codelibs.jcifs.smb.SmbFileHandle;
 import org.codelibs.jcifs.smb.internal.smb1.com.SmbComBlankResponse;
 import org.codelibs.jcifs.smb.internal.smb1.com.SmbComClose;
 import org.codelibs.jcifs.smb.internal.smb2.create.Smb2CloseRequest;
+import org.codelibs.jcifs.smb.internal.smb2.io.Smb2ReadRequest;
+import org.codelibs.jcifs.smb.internal.smb2.io.Smb2WriteRequest;
 import org.codelibs.jcifs.smb.util.Hexdump;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,6 +63,12 @@ class SmbFileHandleImpl implements SmbFileHandle {
 
     private final long initialSize;
 
+    private SmbLeaseManager leaseManager;
+    private SmbLeaseManager.Lease lease;
+    private boolean leaseWrite;
+    private int leaseSharing;
+    private boolean parked;
+
     /**
      * @param cfg
      * @param fid
@@ -146,6 +159,78 @@ class SmbFileHandleImpl implements SmbFileHandle {
         return this.initialSize;
     }
 
+    /**
+     * Associate the handle with the lease it was opened with
+     *
+     * @param mgr
+     * @param l
+     * @param write
+     *            whether the handle was opened for modification
+     * @param sharing
+     *            share access the handle was opened with
+     */
+    void setLease(final SmbLeaseManager mgr, final SmbLeaseManager.Lease l, final boolean write, final int sharing) {
+        this.leaseManager = mgr;
+        this.lease = l;
+        this.leaseWrite = write;
+        this.leaseSharing = sharing;
+    }
+
+    /**
+     * @return the lease the handle was opened with, null if none
+     */
+    SmbLeaseManager.Lease getLease() {
+        return this.lease;
+    }
+
+    /**
+     * @param acc
+     *            requested access
+     * @param sharing
+     *            requested share access
+     * @return whether this handle can be used for an open with the given parameters
+     */
+    boolean isCompatible(final int acc, final int sharing) {
+        return (this.access & acc) == acc && this.leaseSharing == sharing;
+    }
+
+    /**
+     * Reuse a handle that was kept open after its last release
+     *
+     * @return whether the handle is still valid, if not it has been closed
+     * @throws CIFSException
+     */
+    synchronized boolean unpark() throws CIFSException {
+        if (!this.parked) {
+            return false;
+        }
+        this.parked = false;
+        this.tree.acquire();
+        if (!isValid()) {
+            closeInternal(0L, false);
+            return false;
+        }
+        this.usageCount.set(1);
+        if (log.isDebugEnabled()) {
+            log.debug("Reusing file handle " + this);
+        }
+        return true;
+    }
+
+    /**
+     * Close a handle that was kept open after its last release
+     *
+     * @throws CIFSException
+     */
+    synchronized void closeParked() throws CIFSException {
+        if (!this.parked) {
+            return;
+        }
+        this.parked = false;
+        this.tree.acquire();
+        closeInternal(0L, false);
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -202,9 +287,253 @@ class SmbFileHandleImpl implements SmbFileHandle {
                 t.release();
             }
             this.tree = null;
+            final SmbLeaseManager.Lease l = this.lease;
+            if (l != null) {
+                this.lease = null;
+                this.leaseManager.closed(l, this.leaseWrite);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Only supported with SMB2, the read size is limited by the negotiated maximum. Buffers without an accessible
+     * backing array are read into a temporary array first.
+     *
+     * @see org.codelibs.jcifs.smb.SmbFileHandle#readAsync(java.nio.ByteBuffer, long)
+     */
+    @Override
+    public CompletableFuture<Integer> readAsync(final ByteBuffer dst, final long position) {
+        try (SmbTreeHandleImpl th = getTree()) {
+            if (!th.isSMB2()) {
+                throw new SmbUnsupportedOperationException("Asynchronous reads require SMB2");
+            }
+            final int len = Math.min(dst.remaining(), th.getReceiveBufferSize());
+            if (len == 0) {
+                return CompletableFuture.completedFuture(0);
+            }
+            final boolean direct = dst.hasArray();
+            final byte[] buf = direct ? dst.array() : new byte[len];
+            final int off = direct ? dst.arrayOffset() + dst.position() : 0;
+
+            final Smb2ReadRequest request = new Smb2ReadRequest(this.cfg, getFileId(), buf, off);
+            request.setOffset(position);
+            request.setReadLength(len);
+            return th.sendFuture(request).handle((resp, e) -> {
+                if (e != null) {
+                    if (e instanceof final SmbException se && se.getNtStatus() == NtStatus.NT_STATUS_END_OF_FILE) {
+                        return -1;
+                    }
+                    throw new CompletionException(e);
+                }
+                final int n = resp.getDataLength();
+                if (direct) {
+                    dst.position(dst.position() + n);
+                } else {
+                    dst.put(buf, 0, n);
+                }
+                return n;
+            });
+        } catch (final CIFSException e) {
+            return CompletableFuture.failedFuture(e);
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Only supported with SMB2, the write size is limited by the negotiated maximum. The data is sent before this method
+     * returns.
+     *
+     * @see org.codelibs.jcifs.smb.SmbFileHandle#writeAsync(java.nio.ByteBuffer, long)
+     */
+    @Override
+    public CompletableFuture<Integer> writeAsync(final ByteBuffer src, final long position) {
+        try (SmbTreeHandleImpl th = getTree()) {
+            if (!th.isSMB2()) {
+                throw new SmbUnsupportedOperationException("Asynchronous writes require SMB2");
+            }
+            final int len = Math.min(src.remaining(), th.getSendBufferSize());
+            if (len == 0) {
+                return CompletableFuture.completedFuture(0);
+            }
+            final byte[] buf;
+            final int off;
+            if (src.hasArray()) {
+                buf = src.array();
+                off = src.arrayOffset() + src.position();
+            } else {
+                buf = new byte[len];
+                off = 0;
+                src.duplicate().get(buf);
+            }
+
+            final Smb2WriteRequest request = new Smb2WriteRequest(this.cfg, getFileId());
+            request.setOffset(position);
+            request.setData(buf, off, len);
+            return th.sendFuture(request).thenApply(resp -> {
+                final int n = resp.getCount();
+                src.position(src.position() + n);
+                return n;
+            });
+        } catch (final CIFSException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Only supported with SMB2.
+     *
+     * @see org.codelibs.jcifs.smb.SmbFileHandle#read(java.nio.ByteBuffer, long)
+     */
+    @Override
+    public int read(final ByteBuffer dst, final long position) throws CIFSException {
+        return (int) read(new ByteBuffer[] { dst }, position);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Only supported with SMB2.
+     *
+     * @see org.codelibs.jcifs.smb.SmbFileHandle#read(java.nio.ByteBuffer[], long)
+     */
+    @Override
+    public long read(final ByteBuffer[] dsts, final long position) throws CIFSException {
+        final int chunkSize;
+        try (SmbTreeHandleImpl th = getTree()) {
+            if (!th.isSMB2()) {
+                throw new SmbUnsupportedOperationException("Positional reads require SMB2");
+            }
+            chunkSize = th.getReceiveBufferSize();
+        }
+        final List<ByteBuffer> chunks = split(dsts, chunkSize);
+        final List<CompletableFuture<Integer>> futures = new ArrayList<>(chunks.size());
+        final int[] lengths = new int[chunks.size()];
+        long pos = position;
+        for (int i = 0; i < lengths.length; i++) {
+            final ByteBuffer chunk = chunks.get(i);
+            lengths[i] = chunk.remaining();
+            futures.add(readAsync(chunk, pos));
+            pos += lengths[i];
+        }
+        final int[] counts = awaitAll(futures);
+
+        long total = 0;
+        boolean eof = false;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                total += counts[i];
+            }
+            if (counts[i] < lengths[i]) {
+                eof = true;
+                break;
+            }
+        }
+        advance(dsts, total);
+        return total == 0 && eof ? -1 : total;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Only supported with SMB2.
+     *
+     * @see org.codelibs.jcifs.smb.SmbFileHandle#write(java.nio.ByteBuffer, long)
+     */
+    @Override
+    public int write(final ByteBuffer src, final long position) throws CIFSException {
+        return (int) write(new ByteBuffer[] { src }, position);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Only supported with SMB2.
+     *
+     * @see org.codelibs.jcifs.smb.SmbFileHandle#write(java.nio.ByteBuffer[], long)
+     */
+    @Override
+    public long write(final ByteBuffer[] srcs, final long position) throws CIFSException {
+        final int chunkSize;
+        try (SmbTreeHandleImpl th = getTree()) {
+            if (!th.isSMB2()) {
+                throw new SmbUnsupportedOperationException("Positional writes require SMB2");
+            }
+            chunkSize = th.getSendBufferSize();
+        }
+        final List<ByteBuffer> chunks = split(srcs, chunkSize);
+        final List<CompletableFuture<Integer>> futures = new ArrayList<>(chunks.size());
+        final int[] lengths = new int[chunks.size()];
+        long pos = position;
+        for (int i = 0; i < lengths.length; i++) {
+            final ByteBuffer chunk = chunks.get(i);
+            lengths[i] = chunk.remaining();
+            futures.add(writeAsync(chunk, pos));
+            pos += lengths[i];
+        }
+        final int[] counts = awaitAll(futures);
+
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            total += counts[i];
+            if (counts[i] < lengths[i]) {
+                break;
+            }
+        }
+        advance(srcs, total);
+        return total;
+    }
+
+    /**
+     * Slice the remaining contents of the buffers into chunks of at most the given size
+     */
+    private static List<ByteBuffer> split(final ByteBuffer[] bufs, final int chunkSize) {
+        final List<ByteBuffer> chunks = new ArrayList<>();
+        for (final ByteBuffer buf : bufs) {
+            for (int off = buf.position(); off < buf.limit(); off += chunkSize) {
+                final int len = Math.min(chunkSize, buf.limit() - off);
+                chunks.add(buf.duplicate().position(off).limit(off + len).slice());
+            }
+        }
+        return chunks;
+    }
+
+    private static void advance(final ByteBuffer[] bufs, long n) {
+        for (int i = 0; i < bufs.length && n > 0; i++) {
+            final int step = (int) Math.min(n, bufs[i].remaining());
+            bufs[i].position(bufs[i].position() + step);
+            n -= step;
+        }
+    }
+
+    /**
+     * Wait for all requests, the buffers must not be released while any of them is outstanding
+     */
+    private static int[] awaitAll(final List<CompletableFuture<Integer>> futures) throws CIFSException {
+        final int[] counts = new int[futures.size()];
+        Throwable failure = null;
+        for (int i = 0; i < counts.length; i++) {
+            try {
+                counts[i] = futures.get(i).join();
+            } catch (final CompletionException e) {
+                if (failure == null) {
+                    failure = e.getCause() != null ? e.getCause() : e;
+                }
+            }
+        }
+        if (failure instanceof final CIFSException ce) {
+            throw ce;
+        }
+        if (failure != null) {
+            throw new SmbException("Positional I/O failed", failure);
+        }
+        return counts;
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -226,6 +555,12 @@ class SmbFileHandleImpl implements SmbFileHandle {
     public synchronized void release() throws CIFSException {
         final long usage = this.usageCount.decrementAndGet();
         if (usage == 0) {
+            if (this.lease != null && isValid() && this.leaseManager.park(this.lease, this)) {
+                // keep the handle, and with it the lease, open. The tree is no longer used until the handle is reused.
+                this.parked = true;
+                this.tree.release();
+                return;
+            }
             closeInternal(0L, false);
         } else if (log.isTraceEnabled()) {
             log.trace(String.format("Release %s (%d)", this, usage));
@@ -31,6 +31,7 @@ import org.codelibs.jcifs.smb.internal.smb1.com.SmbComReadAndX;
 import org.codelibs.jcifs.smb.internal.smb1.com.SmbComReadAndXResponse;
 import org.codelibs.jcifs.smb.internal.smb2.io.Smb2ReadRequest;
 import org.codelibs.jcifs.smb.internal.smb2.io.Smb2ReadResponse;
+import org.codelibs.jcifs.smb.internal.smb2.lease.Smb2LeaseState;
 import org.codelibs.jcifs.smb.util.transport.TransportException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,6 +56,8 @@ public class SmbFileInputStream extends InputStream {
 
     private boolean smb2;
 
+    private SmbFileReadAhead readAhead;
+
     /**
      * Creates an input stream for reading from the specified SMB URL
      *
@@ -129,6 +132,15 @@ public class SmbFileInputStream extends InputStream {
         if (this.smb2) {
             this.readSize = th.getReceiveBufferSize();
             this.readSizeFile = th.getReceiveBufferSize();
+            if (this.file.getType() == SmbConstants.TYPE_FILESYSTEM) {
+                final int window = th.getConfig().getReadAheadWindow();
+                if (window > 1) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Enabling read-ahead with " + window + " requests of " + this.readSizeFile);
+                    }
+                    this.readAhead = new SmbFileReadAhead(window, this.readSizeFile);
+                }
+            }
             return;
         }
 
@@ -208,6 +220,11 @@ public class SmbFileInputStream extends InputStream {
     @Override
     public void close() throws IOException {
         try {
+            final SmbFileReadAhead ra = this.readAhead;
+            if (ra != null) {
+                this.readAhead = null;
+                ra.close();
+            }
             final SmbFileHandleImpl h = this.handle;
             if (h != null) {
                 h.close();
@@ -299,6 +316,32 @@ public class SmbFileInputStream extends InputStream {
             final int type = this.file.getType();
             int r, n;
             final int blockSize = type == SmbConstants.TYPE_FILESYSTEM ? this.readSizeFile : this.readSize;
+
+            if (type == SmbConstants.TYPE_FILESYSTEM && fd.getLease() != null) {
+                final byte[] data = getLeaseCachedData(fd, th);
+                if (data != null) {
+                    if (this.fp >= data.length) {
+                        return -1;
+                    }
+                    n = (int) Math.min(len, data.length - this.fp);
+                    System.arraycopy(data, (int) this.fp, b, off, n);
+                    this.fp += n;
+                    return n;
+                }
+            }
+
+            if (this.readAhead != null && th.isSMB2()) {
+                try {
+                    n = this.readAhead.read(fd, this.fp, b, off, len);
+                    if (n > 0) {
+                        this.fp += n;
+                    }
+                    return n;
+                } catch (final CIFSException e) {
+                    log.debug("Read-ahead failed, retrying synchronously", e);
+                }
+            }
+
             do {
                 r = len > blockSize ? blockSize : len;
 
@@ -365,6 +408,56 @@ public class SmbFileInputStream extends InputStream {
         }
     }
 
+    /**
+     * Get the file contents cached under the file's lease, loading them if possible
+     *
+     * @return the cached file contents, null if not available
+     */
+    private byte[] getLeaseCachedData(final SmbFileHandleImpl fd, final SmbTreeHandleImpl th) throws IOException {
+        final SmbLeaseManager leases = th.getLeaseManager();
+        final SmbLeaseManager.Lease lease = fd.getLease();
+        if (leases == null) {
+            return null;
+        }
+        final byte[] cached = leases.getCachedData(lease);
+        if (cached != null || !Smb2LeaseState.canCacheRead(leases.getState(lease)) || !leases.isCacheableSize(fd.getInitialSize())) {
+            return cached;
+        }
+
+        final long generation = leases.getGeneration(lease);
+        final byte[] data = new byte[(int) fd.getInitialSize()];
+        int pos = 0;
+        try {
+            while (pos < data.length) {
+                final Smb2ReadRequest request = new Smb2ReadRequest(th.getConfig(), fd.getFileId(), data, pos);
+                request.setOffset(pos);
+                request.setReadLength(Math.min(this.readSizeFile, data.length - pos));
+                final int n = th.send(request, RequestParam.NO_RETRY).getDataLength();
+                if (n <= 0) {
+                    break;
+                }
+                pos += n;
+            }
+        } catch (final SmbException e) {
+            if (e.getNtStatus() != 0xC0000011) {
+                throw seToIoe(e);
+            }
+            log.debug("Reached end of file", e);
+        } catch (final CIFSException e) {
+            throw seToIoe(SmbException.wrap(e));
+        }
+
+        if (pos != data.length) {
+            // file changed since it was opened, don't cache
+            return null;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Caching " + data.length + " bytes of " + fd);
+        }
+        leases.setCachedData(lease, generation, data);
+        return data;
+    }
+
     /**
      * This stream class is unbuffered. Therefore this method will always
      * return 0 for streams connected to regular files. However, a
@@ -66,6 +66,8 @@ public class SmbFileOutputStream extends OutputStream {
 
     private final boolean smb2;
 
+    private SmbFileWriteBehind writeBehind;
+
     /**
      * Creates an {@link java.io.OutputStream} for writing bytes to a file on
      * an SMB server represented by the {@link org.codelibs.jcifs.smb.impl.SmbFile} parameter. See
@@ -149,6 +151,15 @@ public class SmbFileOutputStream extends OutputStream {
         if (this.smb2) {
             this.writeSize = sendBufferSize;
             this.writeSizeFile = sendBufferSize;
+            if (this.file.getType() == SmbConstants.TYPE_FILESYSTEM) {
+                final int window = th.getConfig().getWriteBehindWindow();
+                if (window > 1) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Enabling write-behind with " + window + " requests of " + sendBufferSize);
+                    }
+                    this.writeBehind = new SmbFileWriteBehind(window, th.getConfig().getWriteBehindMaxBytes());
+                }
+            }
             return;
         }
 
@@ -202,12 +213,24 @@ public class SmbFileOutputStream extends OutputStream {
     @Override
     public void close() throws IOException {
         try {
-            if (this.handle.isValid()) {
-                this.handle.close();
+            final SmbFileWriteBehind wb = this.writeBehind;
+            if (wb != null) {
+                this.writeBehind = null;
+                try {
+                    wb.flush();
+                } finally {
+                    wb.close();
+                }
             }
         } finally {
-            this.file.clearAttributeCache();
-            this.tmp = null;
+            try {
+                if (this.handle.isValid()) {
+                    this.handle.close();
+                }
+            } finally {
+                this.file.clearAttributeCache();
+                this.tmp = null;
+            }
         }
     }
 
@@ -296,6 +319,20 @@ public class SmbFileOutputStream extends OutputStream {
         writeDirect(b, off, len, 0);
     }
 
+    /**
+     * Waits for all outstanding writes if write-behind is enabled.
+     *
+     * @throws IOException
+     *             if a previous write failed
+     */
+    @Override
+    public void flush() throws IOException {
+        final SmbFileWriteBehind wb = this.writeBehind;
+        if (wb != null) {
+            wb.flush();
+        }
+    }
+
     /**
      * Just bypasses TransWaitNamedPipe - used by DCERPC bind.
      *
@@ -319,6 +356,16 @@ public class SmbFileOutputStream extends OutputStream {
                 log.debug("write: fid=" + fh + ",off=" + off + ",len=" + len + ",fp=" + this.fp);
             }
 
+            if (this.writeBehind != null) {
+                if (flags == 0 && this.file.getType() == SmbConstants.TYPE_FILESYSTEM) {
+                    this.writeBehind.write(fh, this.fp, b, off, len, this.writeSizeFile);
+                    this.fp += len;
+                    return;
+                }
+                // keep ordering with the pipelined writes
+                this.writeBehind.flush();
+            }
+
             int w;
             do {
                 final int blockSize = this.file.getType() == SmbConstants.TYPE_FILESYSTEM ? this.writeSizeFile : this.writeSize;
@@ -0,0 +1,280 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.impl;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.codelibs.jcifs.smb.CIFSException;
+import org.codelibs.jcifs.smb.internal.smb2.io.Smb2ReadRequest;
+import org.codelibs.jcifs.smb.internal.smb2.io.Smb2ReadResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sequential SMB2 read pipeline for a single open file
+ *
+ * Keeps up to a configured number of read requests in flight ahead of the current read position and hands out the
+ * data in file order. Credits are taken from the transport's credit pool, only the first outstanding request waits for
+ * credits, further requests are only sent if credits are immediately available.
+ *
+ * Any change in position (seek/skip), a different file handle or a short read drops the pipeline.
+ *
+ * This class is not thread safe.
+ */
+class SmbFileReadAhead implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(SmbFileReadAhead.class);
+
+    private static final int STATUS_END_OF_FILE = 0xC0000011;
+
+    private final int window;
+    private final int blockSize;
+
+    private final Deque<PendingRead> pending = new ArrayDeque<>();
+    private final Deque<byte[]> freeBuffers = new ArrayDeque<>();
+
+    private SmbFileHandleImpl handle;
+    private SmbTreeHandleImpl tree;
+    private long position = -1;
+    private long nextOffset;
+    private boolean eof;
+
+    /**
+     * @param window
+     *            maximum number of outstanding read requests
+     * @param blockSize
+     *            size of each read request, must not exceed the negotiated maximum read size
+     */
+    SmbFileReadAhead(final int window, final int blockSize) {
+        this.window = window;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * @return the maximum number of outstanding read requests
+     */
+    int getWindow() {
+        return this.window;
+    }
+
+    /**
+     * @return the size of each read request
+     */
+    int getBlockSize() {
+        return this.blockSize;
+    }
+
+    /**
+     * @return number of read requests currently in flight or not yet consumed
+     */
+    int getPendingCount() {
+        return this.pending.size();
+    }
+
+    /**
+     * Read data at the given file position
+     *
+     * Blocks only until the first outstanding block is available, data from further blocks that have already
+     * arrived is returned as well.
+     *
+     * @param fd
+     *            file handle to read from
+     * @param pos
+     *            file position to read from
+     * @param b
+     *            destination buffer
+     * @param off
+     *            destination offset
+     * @param len
+     *            maximum number of bytes to read
+     * @return number of bytes read, -1 if the end of file was reached
+     * @throws CIFSException
+     *             if a read request failed, the pipeline is dropped in that case
+     */
+    int read(final SmbFileHandleImpl fd, final long pos, final byte[] b, int off, int len) throws CIFSException {
+        if (fd != this.handle || pos != this.position) {
+            if (log.isTraceEnabled() && this.handle != null) {
+                log.trace("Read-ahead position changed from " + this.position + " to " + pos);
+            }
+            reset();
+            this.handle = fd.acquire();
+            this.tree = fd.getTree();
+            this.position = pos;
+            this.nextOffset = pos;
+        }
+
+        int total = 0;
+        try {
+            fill();
+            while (len > 0) {
+                final PendingRead head = this.pending.peekFirst();
+                if (head == null) {
+                    break;
+                }
+                if (!head.isCollected()) {
+                    if (total > 0 && !head.response.isReceived()) {
+                        // return what we have instead of blocking again
+                        break;
+                    }
+                    collect(head);
+                }
+
+                final int n = Math.min(head.available - head.pos, len);
+                if (n > 0) {
+                    System.arraycopy(head.buffer, head.pos, b, off, n);
+                    head.pos += n;
+                    this.position += n;
+                    total += n;
+                    off += n;
+                    len -= n;
+                }
+
+                if (head.pos == head.available) {
+                    this.pending.removeFirst();
+                    this.freeBuffers.addLast(head.buffer);
+                    if (head.available < head.length) {
+                        // short read, usually end of file. Any further blocks are not contiguous
+                        this.eof = true;
+                        drain();
+                        break;
+                    }
+                    fill();
+                }
+            }
+        } catch (final CIFSException e) {
+            reset();
+            throw e;
+        }
+
+        if (total == 0 && this.eof) {
+            // allow the file to be read again if it grows
+            reset();
+            return -1;
+        }
+        return total;
+    }
+
+    /**
+     * Drop all outstanding requests and release the file handle
+     */
+    void reset() {
+        drain();
+        this.eof = false;
+        this.position = -1;
+        final SmbTreeHandleImpl th = this.tree;
+        final SmbFileHandleImpl fh = this.handle;
+        this.tree = null;
+        this.handle = null;
+        if (th != null) {
+            th.release();
+        }
+        if (fh != null) {
+            try {
+                fh.release();
+            } catch (final CIFSException e) {
+                log.debug("Failed to release file handle", e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        reset();
+        this.freeBuffers.clear();
+    }
+
+    private void fill() throws CIFSException {
+        while (!this.eof && this.pending.size() < this.window) {
+            byte[] buffer = this.freeBuffers.pollFirst();
+            if (buffer == null) {
+                buffer = new byte[this.blockSize];
+            }
+
+            final Smb2ReadRequest request = new Smb2ReadRequest(this.tree.getConfig(), this.handle.getFileId(), buffer, 0);
+            request.setOffset(this.nextOffset);
+            request.setReadLength(this.blockSize);
+            request.setRemainingBytes(this.blockSize * (this.window - this.pending.size() - 1));
+
+            final Smb2ReadResponse response;
+            if (this.pending.isEmpty()) {
+                response = this.tree.sendAsync(request);
+            } else {
+                response = this.tree.sendAsync(request, RequestParam.NO_CREDIT_WAIT);
+            }
+
+            if (response == null) {
+                // out of credits, keep what we have in flight
+                this.freeBuffers.addFirst(buffer);
+                if (log.isTraceEnabled()) {
+                    log.trace("No credits available, read-ahead limited to " + this.pending.size());
+                }
+                return;
+            }
+            this.pending.addLast(new PendingRead(request, response, buffer, this.blockSize));
+            this.nextOffset += this.blockSize;
+        }
+    }
+
+    private void collect(final PendingRead pr) throws CIFSException {
+        try {
+            pr.available = this.tree.waitForResponse(pr.request, pr.response).getDataLength();
+        } catch (final SmbException e) {
+            if (e.getNtStatus() != STATUS_END_OF_FILE) {
+                throw e;
+            }
+            log.debug("Reached end of file", e);
+            pr.available = 0;
+        }
+    }
+
+    private void drain() {
+        PendingRead pr;
+        while ((pr = this.pending.pollFirst()) != null) {
+            if (!pr.isCollected()) {
+                try {
+                    this.tree.waitForResponse(pr.request, pr.response);
+                } catch (final CIFSException e) {
+                    log.trace("Ignoring failure of discarded read-ahead request", e);
+                }
+            }
+            this.freeBuffers.addLast(pr.buffer);
+        }
+    }
+
+    private static final class PendingRead {
+
+        final Smb2ReadRequest request;
+        final Smb2ReadResponse response;
+        final byte[] buffer;
+        final int length;
+        int available = -1;
+        int pos;
+
+        PendingRead(final Smb2ReadRequest request, final Smb2ReadResponse response, final byte[] buffer, final int length) {
+            this.request = request;
+            this.response = response;
+            this.buffer = buffer;
+            this.length = length;
+        }
+
+        boolean isCollected() {
+            return this.available >= 0;
+        }
+    }
+}
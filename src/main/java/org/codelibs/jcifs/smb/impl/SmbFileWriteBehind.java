@@ -0,0 +1,258 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.impl;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.codelibs.jcifs.smb.CIFSException;
+import org.codelibs.jcifs.smb.internal.smb2.io.Smb2WriteRequest;
+import org.codelibs.jcifs.smb.internal.smb2.io.Smb2WriteResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * SMB2 write-behind pipeline for a single open file
+ *
+ * Writes are encoded and sent immediately but their responses are only collected once the number of outstanding
+ * requests or the amount of unacknowledged data exceeds the configured limits, or on {@link #flush()}. The request data
+ * is copied to the transport buffer while sending, so the caller may reuse its buffer as soon as
+ * {@link #write(SmbFileHandleImpl, long, byte[], int, int, int)} returns.
+ *
+ * A failed write is reported by the next call to write or flush, after that the pipeline stays failed.
+ *
+ * This class is not thread safe.
+ */
+class SmbFileWriteBehind implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(SmbFileWriteBehind.class);
+
+    private final int window;
+    private final long maxBytes;
+
+    private final Deque<PendingWrite> pending = new ArrayDeque<>();
+    private long pendingBytes;
+
+    private SmbFileHandleImpl handle;
+    private SmbTreeHandleImpl tree;
+    private CIFSException failure;
+
+    /**
+     * @param window
+     *            maximum number of outstanding write requests
+     * @param maxBytes
+     *            maximum amount of data written but not yet acknowledged by the server
+     */
+    SmbFileWriteBehind(final int window, final long maxBytes) {
+        this.window = window;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the maximum number of outstanding write requests
+     */
+    int getWindow() {
+        return this.window;
+    }
+
+    /**
+     * @return the maximum amount of unacknowledged data
+     */
+    long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    /**
+     * @return number of write requests not yet acknowledged
+     */
+    int getPendingCount() {
+        return this.pending.size();
+    }
+
+    /**
+     * @return amount of data not yet acknowledged
+     */
+    long getPendingBytes() {
+        return this.pendingBytes;
+    }
+
+    /**
+     * Write data at the given file position
+     *
+     * @param fd
+     *            file handle to write to
+     * @param pos
+     *            file position to write at
+     * @param b
+     *            source buffer
+     * @param off
+     *            source offset
+     * @param len
+     *            number of bytes to write
+     * @param blockSize
+     *            maximum size of a single write request
+     * @throws CIFSException
+     *             if this or a previous write failed
+     */
+    void write(final SmbFileHandleImpl fd, long pos, final byte[] b, int off, int len, final int blockSize) throws CIFSException {
+        checkFailure();
+        if (fd != this.handle) {
+            if (this.handle != null) {
+                flush();
+                release();
+            }
+            this.handle = fd.acquire();
+            this.tree = fd.getTree();
+        }
+
+        try {
+            reapCompleted();
+            while (len > 0) {
+                final int w = len > blockSize ? blockSize : len;
+                while (!this.pending.isEmpty() && (this.pending.size() >= this.window || this.pendingBytes + w > this.maxBytes)) {
+                    collect(this.pending.removeFirst());
+                }
+
+                final Smb2WriteRequest wr = new Smb2WriteRequest(this.tree.getConfig(), fd.getFileId());
+                wr.setOffset(pos);
+                wr.setData(b, off, w);
+                wr.setRemainingBytes(len - w);
+
+                final Smb2WriteResponse resp;
+                if (this.pending.isEmpty()) {
+                    resp = this.tree.sendAsync(wr);
+                } else {
+                    resp = this.tree.sendAsync(wr, RequestParam.NO_CREDIT_WAIT);
+                }
+
+                if (resp == null) {
+                    // out of credits, wait for the oldest write to return some
+                    collect(this.pending.removeFirst());
+                    continue;
+                }
+
+                this.pending.addLast(new PendingWrite(wr, resp, w));
+                this.pendingBytes += w;
+                pos += w;
+                off += w;
+                len -= w;
+            }
+        } catch (final CIFSException e) {
+            fail(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Wait for all outstanding writes
+     *
+     * @throws CIFSException
+     *             if any write failed
+     */
+    void flush() throws CIFSException {
+        checkFailure();
+        try {
+            PendingWrite pw;
+            while ((pw = this.pending.pollFirst()) != null) {
+                collect(pw);
+            }
+        } catch (final CIFSException e) {
+            fail(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Wait for all outstanding writes, ignoring errors, and release the file handle
+     */
+    @Override
+    public void close() {
+        drain();
+        release();
+    }
+
+    private void checkFailure() throws CIFSException {
+        if (this.failure != null) {
+            throw new SmbException("A previous write failed", this.failure);
+        }
+    }
+
+    private void fail(final CIFSException e) {
+        if (this.failure == null) {
+            this.failure = e;
+        }
+        drain();
+    }
+
+    private void reapCompleted() throws CIFSException {
+        PendingWrite head;
+        while ((head = this.pending.peekFirst()) != null && head.response.isReceived()) {
+            collect(this.pending.removeFirst());
+        }
+    }
+
+    private void collect(final PendingWrite pw) throws CIFSException {
+        this.pendingBytes -= pw.length;
+        final long cnt = this.tree.waitForResponse(pw.request, pw.response).getCount();
+        if (cnt != pw.length) {
+            throw new SmbException("Short write, server accepted " + cnt + " of " + pw.length + " bytes");
+        }
+    }
+
+    private void drain() {
+        PendingWrite pw;
+        while ((pw = this.pending.pollFirst()) != null) {
+            this.pendingBytes -= pw.length;
+            try {
+                this.tree.waitForResponse(pw.request, pw.response);
+            } catch (final CIFSException e) {
+                log.debug("Ignoring failure of discarded write", e);
+            }
+        }
+    }
+
+    private void release() {
+        final SmbTreeHandleImpl th = this.tree;
+        final SmbFileHandleImpl fh = this.handle;
+        this.tree = null;
+        this.handle = null;
+        if (th != null) {
+            th.release();
+        }
+        if (fh != null) {
+            try {
+                fh.release();
+            } catch (final CIFSException e) {
+                log.debug("Failed to release file handle", e);
+            }
+        }
+    }
+
+    private static final class PendingWrite {
+
+        final Smb2WriteRequest request;
+        final Smb2WriteResponse response;
+        final int length;
+
+        PendingWrite(final Smb2WriteRequest request, final Smb2WriteResponse response, final int length) {
+            this.request = request;
+            this.response = response;
+            this.length = length;
+        }
+    }
+}
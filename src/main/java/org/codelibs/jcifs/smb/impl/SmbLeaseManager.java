@@ -0,0 +1,540 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.codelibs.jcifs.smb.Configuration;
+import org.codelibs.jcifs.smb.internal.SmbBasicFileInfo;
+import org.codelibs.jcifs.smb.internal.smb2.lease.Smb2LeaseKey;
+import org.codelibs.jcifs.smb.internal.smb2.lease.Smb2LeaseState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Client lease table and lease protected cache for a single server connection
+ *
+ * Each file opened with a lease gets a lease key that is reused for all further opens of the same path, so that opens
+ * by this client do not break each other's leases. While a read caching lease is held, the file attributes and the
+ * content of small files are cached. With a handle caching lease the last handle is not closed but parked, so that
+ * the lease (and with it the cache) survives until the server breaks it, the handle times out or it is evicted.
+ *
+ * The number of tracked leases is bounded, least recently used leases without active handles are evicted first.
+ */
+final class SmbLeaseManager {
+
+    private static final Logger log = LoggerFactory.getLogger(SmbLeaseManager.class);
+
+    private final int maxLeases;
+    private final long handleTimeout;
+    private final int maxFileSize;
+
+    private final LinkedHashMap<String, Lease> byPath = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Smb2LeaseKey, Lease> byKey = new HashMap<>();
+    private final Deque<Lease> parked = new ArrayDeque<>();
+
+    /**
+     * @param config
+     */
+    SmbLeaseManager(final Configuration config) {
+        this(config.getMaxLeases(), config.getLeaseTimeout(), config.getLeaseCacheMaxFileSize());
+    }
+
+    /**
+     * @param maxLeases
+     *            maximum number of tracked leases
+     * @param handleTimeout
+     *            time in milliseconds an unused handle is kept open
+     * @param maxFileSize
+     *            maximum size of cached file content
+     */
+    SmbLeaseManager(final int maxLeases, final long handleTimeout, final int maxFileSize) {
+        this.maxLeases = Math.max(1, maxLeases);
+        this.handleTimeout = handleTimeout;
+        this.maxFileSize = maxFileSize;
+    }
+
+    /**
+     * @param treeId
+     *            tree the file is opened on
+     * @param path
+     *            share relative path
+     * @return the lease table key for the file
+     */
+    static String pathKey(final long treeId, final String path) {
+        return treeId + ":" + path.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @param size
+     * @return whether content of this size may be cached
+     */
+    boolean isCacheableSize(final long size) {
+        return size >= 0 && size <= this.maxFileSize;
+    }
+
+    /**
+     * @return number of tracked leases
+     */
+    synchronized int size() {
+        return this.byPath.size();
+    }
+
+    /**
+     * Get the lease to request when opening a file
+     *
+     * @param path
+     *            lease table key, see {@link #pathKey(long, String)}
+     * @return the lease for this path, possibly not granted yet
+     */
+    Lease requestLease(final String path) {
+        final List<SmbFileHandleImpl> toClose = new ArrayList<>();
+        Lease lease;
+        synchronized (this) {
+            expire(toClose);
+            lease = this.byPath.get(path);
+            if (lease == null) {
+                lease = new Lease(new Smb2LeaseKey(), path);
+                this.byPath.put(path, lease);
+                this.byKey.put(lease.key, lease);
+                evict(toClose);
+            }
+        }
+        closeAll(toClose);
+        return lease;
+    }
+
+    /**
+     * @param path
+     *            lease table key
+     * @return the lease for this path, if it currently allows read caching
+     */
+    Lease getCachingLease(final String path) {
+        final List<SmbFileHandleImpl> toClose = new ArrayList<>();
+        try {
+            synchronized (this) {
+                expire(toClose);
+                final Lease lease = this.byPath.get(path);
+                if (lease == null) {
+                    return null;
+                }
+                checkParked(lease);
+                return lease.canCacheRead() ? lease : null;
+            }
+        } finally {
+            closeAll(toClose);
+        }
+    }
+
+    /**
+     * @param lease
+     * @return the current cache generation of the lease, changes whenever the cache is invalidated
+     */
+    synchronized long getGeneration(final Lease lease) {
+        return lease.generation;
+    }
+
+    /**
+     * @param lease
+     * @return the current state of the lease
+     */
+    synchronized int getState(final Lease lease) {
+        return lease.state;
+    }
+
+    /**
+     * @param lease
+     * @return the tree the file was last opened on
+     */
+    synchronized SmbTreeHandleImpl getTree(final Lease lease) {
+        return lease.tree;
+    }
+
+    /**
+     * Find a lease by key, e.g. for a lease break
+     *
+     * @param key
+     * @return the lease, null if unknown
+     */
+    synchronized Lease getLease(final Smb2LeaseKey key) {
+        return this.byKey.get(key);
+    }
+
+    /**
+     * Record a new open of the file
+     *
+     * @param lease
+     * @param state
+     *            granted lease state, {@link Smb2LeaseState#SMB2_LEASE_NONE} if no lease was granted
+     * @param epoch
+     *            lease epoch
+     * @param tree
+     *            tree the file was opened on, used for acknowledging breaks
+     * @param info
+     *            file information returned by the open
+     * @param write
+     *            whether the file was opened for modification
+     */
+    synchronized void opened(final Lease lease, final int state, final int epoch, final SmbTreeHandleImpl tree, final SmbBasicFileInfo info,
+            final boolean write) {
+        if (lease.opens == 0 || epoch == 0 || epoch > lease.epoch || lease.epoch - epoch > 0x7FFF) {
+            lease.state = state;
+            lease.epoch = epoch;
+        }
+        lease.opens++;
+        lease.tree = tree;
+        if (write) {
+            lease.writers++;
+            lease.invalidate();
+        } else if (info != null && lease.canCacheRead() && lease.info == null) {
+            lease.info = new CachedFileInfo(info);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Opened " + lease);
+        }
+    }
+
+    /**
+     * Record that a handle using the lease was closed
+     *
+     * @param lease
+     * @param write
+     *            whether the handle was opened for modification
+     */
+    synchronized void closed(final Lease lease, final boolean write) {
+        if (lease.opens <= 0) {
+            // lease table was cleared in the meantime
+            return;
+        }
+        lease.opens--;
+        if (write && lease.writers > 0) {
+            lease.writers--;
+        }
+        if (lease.opens == 0) {
+            // the server releases the lease with the last handle
+            lease.reset();
+        }
+    }
+
+    /**
+     * Keep a handle open instead of closing it
+     *
+     * @param lease
+     * @param fh
+     * @return whether the handle was parked, if false the caller has to close it
+     */
+    synchronized boolean park(final Lease lease, final SmbFileHandleImpl fh) {
+        if (lease.parked != null || lease.writers > 0 || !Smb2LeaseState.canCacheHandle(lease.state) || this.byPath.get(lease.path) != lease) {
+            return false;
+        }
+        lease.parked = fh;
+        lease.parkedAt = System.currentTimeMillis();
+        this.parked.addLast(lease);
+        if (log.isDebugEnabled()) {
+            log.debug("Keeping handle open " + fh);
+        }
+        return true;
+    }
+
+    /**
+     * Take the parked handle of a lease
+     *
+     * @param lease
+     * @return the parked handle, null if there is none
+     */
+    synchronized SmbFileHandleImpl unpark(final Lease lease) {
+        final SmbFileHandleImpl fh = lease.parked;
+        lease.parked = null;
+        return fh;
+    }
+
+    /**
+     * Apply a lease break
+     *
+     * @param key
+     * @param newState
+     * @param epoch
+     * @return the lease, null if unknown
+     */
+    synchronized Lease leaseBroken(final Smb2LeaseKey key, final int newState, final int epoch) {
+        final Lease lease = this.byKey.get(key);
+        if (lease == null) {
+            return null;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Lease break " + lease + " to " + Smb2LeaseState.toString(newState));
+        }
+        lease.state = newState;
+        if (epoch != 0) {
+            lease.epoch = epoch;
+        }
+        if (!Smb2LeaseState.canCacheRead(newState)) {
+            lease.invalidate();
+        }
+        return lease;
+    }
+
+    /**
+     * Drop cached content after a local modification
+     *
+     * @param path
+     *            lease table key
+     */
+    synchronized void invalidate(final String path) {
+        final Lease lease = this.byPath.get(path);
+        if (lease != null) {
+            lease.invalidate();
+        }
+    }
+
+    /**
+     * Drop cached content and close the cached handle, if any, before modifying the file
+     *
+     * @param path
+     *            lease table key
+     */
+    void closeCached(final String path) {
+        SmbFileHandleImpl fh = null;
+        synchronized (this) {
+            final Lease lease = this.byPath.get(path);
+            if (lease != null) {
+                lease.invalidate();
+                fh = lease.parked;
+                lease.parked = null;
+            }
+        }
+        if (fh != null) {
+            closeAll(Collections.singletonList(fh));
+        }
+    }
+
+    /**
+     * @param lease
+     * @return cached file content, null if not available
+     */
+    synchronized byte[] getCachedData(final Lease lease) {
+        return lease.canCacheRead() ? lease.data : null;
+    }
+
+    /**
+     * @param lease
+     * @param generation
+     *            cache generation the data was read in
+     * @param data
+     */
+    synchronized void setCachedData(final Lease lease, final long generation, final byte[] data) {
+        if (lease.generation == generation && lease.canCacheRead() && isCacheableSize(data.length)) {
+            lease.data = data;
+        }
+    }
+
+    /**
+     * @param path
+     *            lease table key
+     * @return cached file information, null if not available
+     */
+    SmbBasicFileInfo getCachedInfo(final String path) {
+        final Lease lease = getCachingLease(path);
+        if (lease == null) {
+            return null;
+        }
+        synchronized (this) {
+            return lease.canCacheRead() ? lease.info : null;
+        }
+    }
+
+    /**
+     * Forget all leases, the connection was lost
+     */
+    void clear() {
+        synchronized (this) {
+            for (final Lease lease : this.byPath.values()) {
+                final SmbFileHandleImpl fh = lease.parked;
+                if (fh != null) {
+                    fh.markClosed();
+                }
+                lease.parked = null;
+                lease.opens = 0;
+                lease.writers = 0;
+                lease.reset();
+            }
+            this.byPath.clear();
+            this.byKey.clear();
+            this.parked.clear();
+        }
+    }
+
+    private void checkParked(final Lease lease) {
+        final SmbFileHandleImpl fh = lease.parked;
+        if (fh != null && !fh.isValid()) {
+            // handle was closed on the server side, e.g. because the session expired
+            log.debug("Dropping invalid parked handle");
+            fh.markClosed();
+            lease.parked = null;
+            closed(lease, false);
+        }
+    }
+
+    private void expire(final List<SmbFileHandleImpl> toClose) {
+        final long now = System.currentTimeMillis();
+        Lease lease;
+        while ((lease = this.parked.peekFirst()) != null) {
+            if (lease.parked != null && now - lease.parkedAt < this.handleTimeout) {
+                break;
+            }
+            this.parked.removeFirst();
+            if (lease.parked != null) {
+                toClose.add(lease.parked);
+                lease.parked = null;
+            }
+        }
+    }
+
+    private void evict(final List<SmbFileHandleImpl> toClose) {
+        final Iterator<Lease> it = this.byPath.values().iterator();
+        while (this.byPath.size() > this.maxLeases && it.hasNext()) {
+            final Lease lease = it.next();
+            if (lease.opens > (lease.parked != null ? 1 : 0)) {
+                continue;
+            }
+            if (lease.parked != null) {
+                toClose.add(lease.parked);
+                lease.parked = null;
+            }
+            it.remove();
+            this.byKey.remove(lease.key);
+            lease.invalidate();
+        }
+    }
+
+    private static void closeAll(final List<SmbFileHandleImpl> toClose) {
+        for (final SmbFileHandleImpl fh : toClose) {
+            try {
+                fh.closeParked();
+            } catch (final Exception e) {
+                log.debug("Failed to close cached handle", e);
+            }
+        }
+    }
+
+    /**
+     * A lease on a single file
+     */
+    static final class Lease {
+
+        final Smb2LeaseKey key;
+        final String path;
+        int state;
+        int epoch;
+        int opens;
+        int writers;
+        long generation;
+        SmbBasicFileInfo info;
+        byte[] data;
+        SmbFileHandleImpl parked;
+        long parkedAt;
+        SmbTreeHandleImpl tree;
+
+        Lease(final Smb2LeaseKey key, final String path) {
+            this.key = key;
+            this.path = path;
+        }
+
+        /**
+         * @return the lease key
+         */
+        Smb2LeaseKey getKey() {
+            return this.key;
+        }
+
+        boolean canCacheRead() {
+            return Smb2LeaseState.canCacheRead(this.state) && this.writers == 0 && this.opens > 0;
+        }
+
+        void invalidate() {
+            this.generation++;
+            this.info = null;
+            this.data = null;
+        }
+
+        void reset() {
+            this.state = Smb2LeaseState.SMB2_LEASE_NONE;
+            invalidate();
+        }
+
+        @Override
+        public String toString() {
+            return "Lease[" + this.path + ",key=" + this.key + ",state=" + Smb2LeaseState.toString(this.state) + ",epoch=" + this.epoch
+                    + ",opens=" + this.opens + "]";
+        }
+    }
+
+    /**
+     * Snapshot of file information
+     */
+    private static final class CachedFileInfo implements SmbBasicFileInfo {
+
+        private final int attributes;
+        private final long createTime;
+        private final long lastWriteTime;
+        private final long lastAccessTime;
+        private final long size;
+
+        CachedFileInfo(final SmbBasicFileInfo info) {
+            this.attributes = info.getAttributes();
+            this.createTime = info.getCreateTime();
+            this.lastWriteTime = info.getLastWriteTime();
+            this.lastAccessTime = info.getLastAccessTime();
+            this.size = info.getSize();
+        }
+
+        @Override
+        public int getAttributes() {
+            return this.attributes;
+        }
+
+        @Override
+        public long getCreateTime() {
+            return this.createTime;
+        }
+
+        @Override
+        public long getLastWriteTime() {
+            return this.lastWriteTime;
+        }
+
+        @Override
+        public long getLastAccessTime() {
+            return this.lastAccessTime;
+        }
+
+        @Override
+        public long getSize() {
+            return this.size;
+        }
+    }
+}
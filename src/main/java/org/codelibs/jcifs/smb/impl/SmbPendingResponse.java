@@ -0,0 +1,174 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.impl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.codelibs.jcifs.smb.CIFSException;
+import org.codelibs.jcifs.smb.internal.CommonServerMessageBlockRequest;
+import org.codelibs.jcifs.smb.internal.CommonServerMessageBlockResponse;
+import org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Completes a future once the response(s) to an asynchronously sent request have been received
+ *
+ * The future is completed on the thread receiving the last response, usually the transport reader thread. Collecting
+ * the response does not block in that case. Responses carrying a transport error are collected on a pool thread, as
+ * the session may retry the request on another channel.
+ *
+ * Interim responses extend the deadline by the configured response timeout. If no final response arrives in time, the
+ * future fails with the exception thrown by
+ * {@link SmbTreeHandleImpl#waitForResponse(CommonServerMessageBlockRequest, CommonServerMessageBlockResponse)}.
+ *
+ * @param <T>
+ *            response type
+ */
+final class SmbPendingResponse<T extends CommonServerMessageBlockResponse> {
+
+    private static final Logger log = LoggerFactory.getLogger(SmbPendingResponse.class);
+
+    private final SmbTreeHandleImpl tree;
+    private final CommonServerMessageBlockRequest request;
+    private final T response;
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+    private final AtomicBoolean collected = new AtomicBoolean();
+    private final long interimTimeout;
+    private volatile long deadline;
+
+    /**
+     * @param tree
+     *            tree the request was sent on, a reference is held until the response is collected
+     * @param request
+     *            the sent request
+     * @param response
+     *            the response returned when sending
+     */
+    SmbPendingResponse(final SmbTreeHandleImpl tree, final CommonServerMessageBlockRequest request, final T response) {
+        this.tree = tree.acquire();
+        this.request = request;
+        this.response = response;
+        this.interimTimeout = tree.getConfig().getResponseTimeout();
+        final Long exp = response.getExpiration();
+        this.deadline = exp != null ? exp : 0;
+    }
+
+    /**
+     * @return the future to be completed with the response
+     */
+    CompletableFuture<T> start() {
+        CommonServerMessageBlockRequest cur = this.request;
+        CommonServerMessageBlockResponse resp = this.response;
+        while (resp != null) {
+            resp.setSignalListener(this::signalled);
+            cur = cur.getNext();
+            resp = cur != null ? cur.getResponse() : null;
+        }
+        if (this.deadline > 0) {
+            scheduleTimeout();
+        }
+        // the responses may have arrived before the listeners were set
+        signalled();
+        return this.future;
+    }
+
+    /**
+     * @return whether the responses have been collected
+     */
+    boolean isCollected() {
+        return this.collected.get();
+    }
+
+    private void signalled() {
+        if (this.collected.get()) {
+            return;
+        }
+        CommonServerMessageBlockResponse error = null;
+        CommonServerMessageBlockRequest cur = this.request;
+        CommonServerMessageBlockResponse resp = this.response;
+        while (resp != null) {
+            if (!resp.isReceived()) {
+                if (resp instanceof final ServerMessageBlock2Response r2 && r2.isAsync() && r2.getStatus() == NtStatus.NT_STATUS_PENDING) {
+                    // interim response, the server will send the final one later
+                    this.deadline = System.currentTimeMillis() + this.interimTimeout;
+                }
+                return;
+            }
+            if (error == null && resp.isError()) {
+                error = resp;
+            }
+            cur = cur.getNext();
+            resp = cur != null ? cur.getResponse() : null;
+        }
+
+        if (!this.collected.compareAndSet(false, true)) {
+            return;
+        }
+        if (error != null) {
+            final CommonServerMessageBlockResponse failed = error;
+            CompletableFuture.runAsync(() -> collect(failed));
+        } else {
+            collect(null);
+        }
+    }
+
+    private void scheduleTimeout() {
+        final long delay = Math.max(1, this.deadline - System.currentTimeMillis());
+        CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(this::checkTimeout);
+    }
+
+    private void checkTimeout() {
+        if (this.collected.get()) {
+            return;
+        }
+        if (this.deadline > System.currentTimeMillis()) {
+            scheduleTimeout();
+            return;
+        }
+        if (this.collected.compareAndSet(false, true)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Timeout waiting for response to " + this.request);
+            }
+            collect(null);
+        }
+    }
+
+    private void collect(final CommonServerMessageBlockResponse failed) {
+        T resp = null;
+        Exception ex = null;
+        try {
+            resp = this.tree.waitForResponse(this.request, this.response);
+            if (failed != null && failed.isError()) {
+                ex = new SmbException("Failed to receive response", failed.getException());
+            }
+        } catch (final CIFSException | RuntimeException e) {
+            ex = e;
+        } finally {
+            // release before completing, dependent actions may run inline
+            this.tree.release();
+        }
+        if (ex != null) {
+            this.future.completeExceptionally(ex);
+        } else {
+            this.future.complete(resp);
+        }
+    }
+}
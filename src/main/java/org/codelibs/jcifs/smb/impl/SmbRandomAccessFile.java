@@ -20,6 +20,8 @@ package org.codelibs.jcifs.smb.impl;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
 
 import org.codelibs.jcifs.smb.CIFSContext;
 import org.codelibs.jcifs.smb.CIFSException;
@@ -67,6 +69,8 @@ public class SmbRandomAccessFile implements SmbRandomAccess {
 
     private final int sharing;
 
+    private SmbFileBlockCache cache;
+
     /**
      * Instantiate a random access file from URL
      *
@@ -135,6 +139,11 @@ public class SmbRandomAccessFile implements SmbRandomAccess {
             }
 
             this.fp = 0L;
+
+            final int bufferSize = th.getConfig().getRandomAccessBufferSize();
+            if (bufferSize > 0) {
+                this.cache = new SmbFileBlockCache(new FileBackend(), bufferSize, th.getConfig().getRandomAccessBufferBlocks());
+            }
         } catch (final CIFSException e) {
             throw SmbException.wrap(e);
         }
@@ -164,8 +173,227 @@ public class SmbRandomAccessFile implements SmbRandomAccess {
         try (SmbFileHandleImpl fh = ensureOpen()) {}
     }
 
+    /**
+     * Enable or disable buffering
+     *
+     * With buffering, small reads are served from a cache of fixed size blocks, sequential reads fetch several blocks
+     * at once and small contiguous writes are collected until the next seek, {@link #flush()} or {@link #close()}.
+     * Errors writing buffered data may therefore be reported by a later operation.
+     *
+     * Buffered data is written out before changing the mode.
+     *
+     * @param blockSize
+     *            size of the cached blocks and the write buffer, 0 disables buffering
+     * @param blocks
+     *            maximum number of cached blocks
+     * @throws SmbException
+     *             if writing buffered data fails
+     */
+    public void setBuffering(final int blockSize, final int blocks) throws SmbException {
+        final SmbFileBlockCache c = this.cache;
+        this.cache = null;
+        if (c != null) {
+            try {
+                c.flush();
+            } catch (final CIFSException e) {
+                throw SmbException.wrap(e);
+            }
+        }
+        if (blockSize > 0) {
+            this.cache = new SmbFileBlockCache(new FileBackend(), blockSize, blocks);
+        }
+    }
+
+    /**
+     * @return whether reads and writes are buffered
+     */
+    public boolean isBuffered() {
+        return this.cache != null;
+    }
+
+    /**
+     * Write out buffered data
+     *
+     * @throws SmbException
+     *             if writing buffered data, or a previous buffered write, failed
+     */
+    public void flush() throws SmbException {
+        if (this.cache != null) {
+            try {
+                this.cache.flush();
+            } catch (final CIFSException e) {
+                throw SmbException.wrap(e);
+            }
+        }
+    }
+
+    /**
+     * Read from the given file position without waiting for the data
+     *
+     * The file pointer is neither used nor updated.
+     *
+     * @param dst
+     *            buffer to read into
+     * @param position
+     *            file position to read from
+     * @return future completed with the number of bytes read, -1 at the end of the file
+     * @see SmbFileHandle#readAsync(ByteBuffer, long)
+     */
+    public CompletableFuture<Integer> readAsync(final ByteBuffer dst, final long position) {
+        try (SmbFileHandleImpl fh = ensureOpen()) {
+            flushCache();
+            return fh.readAsync(dst, position);
+        } catch (final CIFSException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Write at the given file position without waiting for the server to acknowledge the data
+     *
+     * The file pointer is neither used nor updated.
+     *
+     * @param src
+     *            buffer holding the data to write
+     * @param position
+     *            file position to write at
+     * @return future completed with the number of bytes written
+     * @see SmbFileHandle#writeAsync(ByteBuffer, long)
+     */
+    public CompletableFuture<Integer> writeAsync(final ByteBuffer src, final long position) {
+        try (SmbFileHandleImpl fh = ensureOpen()) {
+            invalidateCache(position, src.remaining());
+            return fh.writeAsync(src, position);
+        } catch (final CIFSException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Read from the given file position, several threads may do so concurrently
+     *
+     * The file pointer is neither used nor updated.
+     *
+     * @param dst
+     *            buffer to read into
+     * @param position
+     *            file position to read from
+     * @return number of bytes read, -1 at the end of the file
+     * @throws SmbException
+     *             if the read fails
+     * @see SmbFileHandle#read(ByteBuffer, long)
+     */
+    public int read(final ByteBuffer dst, final long position) throws SmbException {
+        try (SmbFileHandleImpl fh = ensureOpen()) {
+            flushCache();
+            return fh.read(dst, position);
+        } catch (final CIFSException e) {
+            throw SmbException.wrap(e);
+        }
+    }
+
+    /**
+     * Read a contiguous range of the file into a sequence of buffers, several threads may do so concurrently
+     *
+     * The file pointer is neither used nor updated.
+     *
+     * @param dsts
+     *            buffers to read into
+     * @param position
+     *            file position to read from
+     * @return number of bytes read, -1 at the end of the file
+     * @throws SmbException
+     *             if the read fails
+     * @see SmbFileHandle#read(ByteBuffer[], long)
+     */
+    public long read(final ByteBuffer[] dsts, final long position) throws SmbException {
+        try (SmbFileHandleImpl fh = ensureOpen()) {
+            flushCache();
+            return fh.read(dsts, position);
+        } catch (final CIFSException e) {
+            throw SmbException.wrap(e);
+        }
+    }
+
+    /**
+     * Write at the given file position, several threads may do so concurrently
+     *
+     * The file pointer is neither used nor updated.
+     *
+     * @param src
+     *            buffer holding the data to write
+     * @param position
+     *            file position to write at
+     * @return number of bytes written
+     * @throws SmbException
+     *             if the write fails
+     * @see SmbFileHandle#write(ByteBuffer, long)
+     */
+    public int write(final ByteBuffer src, final long position) throws SmbException {
+        try (SmbFileHandleImpl fh = ensureOpen()) {
+            invalidateCache(position, src.remaining());
+            return fh.write(src, position);
+        } catch (final CIFSException e) {
+            throw SmbException.wrap(e);
+        }
+    }
+
+    /**
+     * Write the contents of a sequence of buffers to a contiguous range of the file, several threads may do so
+     * concurrently
+     *
+     * The file pointer is neither used nor updated.
+     *
+     * @param srcs
+     *            buffers holding the data to write
+     * @param position
+     *            file position to write at
+     * @return number of bytes written
+     * @throws SmbException
+     *             if the write fails
+     * @see SmbFileHandle#write(ByteBuffer[], long)
+     */
+    public long write(final ByteBuffer[] srcs, final long position) throws SmbException {
+        try (SmbFileHandleImpl fh = ensureOpen()) {
+            long len = 0;
+            for (final ByteBuffer src : srcs) {
+                len += src.remaining();
+            }
+            invalidateCache(position, len);
+            return fh.write(srcs, position);
+        } catch (final CIFSException e) {
+            throw SmbException.wrap(e);
+        }
+    }
+
+    /**
+     * Buffered writes have to reach the server before it is read from directly
+     */
+    private void flushCache() throws CIFSException {
+        if (this.cache != null) {
+            this.cache.flush();
+        }
+    }
+
+    /**
+     * Cached blocks of a range written directly are stale
+     */
+    private void invalidateCache(final long position, final long len) throws CIFSException {
+        if (this.cache != null) {
+            this.cache.invalidate(position, len);
+        }
+    }
+
     @Override
     public synchronized void close() throws SmbException {
+        SmbException failure = null;
+        if (this.cache != null) {
+            try {
+                this.cache.flush();
+            } catch (final CIFSException e) {
+                failure = SmbException.wrap(e);
+            }
+        }
         try {
             if (this.handle != null) {
                 try {
@@ -181,6 +409,9 @@ public class SmbRandomAccessFile implements SmbRandomAccess {
                 this.file.close();
             }
         }
+        if (failure != null) {
+            throw failure;
+        }
     }
 
     @Override
@@ -197,11 +428,23 @@ public class SmbRandomAccessFile implements SmbRandomAccess {
     }
 
     @Override
-    public int read(final byte b[], int off, int len) throws SmbException {
+    public int read(final byte b[], final int off, final int len) throws SmbException {
         if (len <= 0) {
             return 0;
         }
-        final long start = this.fp;
+        try {
+            final int n = this.cache != null ? this.cache.read(this.fp, b, off, len) : readDirect(this.fp, b, off, len);
+            if (n > 0) {
+                this.fp += n;
+            }
+            return n;
+        } catch (final CIFSException e) {
+            throw SmbException.wrap(e);
+        }
+    }
+
+    int readDirect(long pos, final byte b[], int off, int len) throws CIFSException {
+        final long start = pos;
 
         try (SmbFileHandleImpl fh = ensureOpen(); SmbTreeHandleImpl th = fh.getTree()) {
 
@@ -212,7 +455,7 @@ public class SmbRandomAccessFile implements SmbRandomAccess {
 
                 if (th.isSMB2()) {
                     final Smb2ReadRequest request = new Smb2ReadRequest(th.getConfig(), fh.getFileId(), b, off);
-                    request.setOffset(this.fp);
+                    request.setOffset(pos);
                     request.setReadLength(r);
                     request.setRemainingBytes(len - off);
                     try {
@@ -226,31 +469,25 @@ public class SmbRandomAccessFile implements SmbRandomAccess {
                         n = -1;
                     }
                 } else {
-                    final SmbComReadAndX request = new SmbComReadAndX(th.getConfig(), fh.getFid(), this.fp, r, null);
+                    final SmbComReadAndX request = new SmbComReadAndX(th.getConfig(), fh.getFid(), pos, r, null);
                     if (this.largeReadX) {
                         request.setMaxCount(r & 0xFFFF);
                         request.setOpenTimeout(r >> 16 & 0xFFFF);
                     }
 
-                    try {
-                        th.send(request, response, RequestParam.NO_RETRY);
-                        n = response.getDataLength();
-                    } catch (final CIFSException e) {
-                        throw SmbException.wrap(e);
-                    }
+                    th.send(request, response, RequestParam.NO_RETRY);
+                    n = response.getDataLength();
                 }
                 if (n <= 0) {
-                    return (int) (this.fp - start > 0L ? this.fp - start : -1);
+                    return (int) (pos - start > 0L ? pos - start : -1);
                 }
-                this.fp += n;
+                pos += n;
                 len -= n;
                 off += n;
                 response.adjustOffset(n);
             } while (len > 0 && n == r);
 
-            return (int) (this.fp - start);
-        } catch (final CIFSException e) {
-            throw SmbException.wrap(e);
+            return (int) (pos - start);
         }
     }
 
@@ -293,11 +530,23 @@ public class SmbRandomAccessFile implements SmbRandomAccess {
     }
 
     @Override
-    public void write(final byte b[], int off, int len) throws SmbException {
+    public void write(final byte b[], final int off, final int len) throws SmbException {
         if (len <= 0) {
             return;
         }
+        try {
+            if (this.cache != null) {
+                this.cache.write(this.fp, b, off, len);
+                this.fp += len;
+            } else {
+                this.fp = writeDirect(this.fp, b, off, len);
+            }
+        } catch (final CIFSException e) {
+            throw SmbException.wrap(e);
+        }
+    }
 
+    long writeDirect(long pos, final byte b[], int off, int len) throws CIFSException {
         // ensure file is open
         try (SmbFileHandleImpl fh = ensureOpen(); SmbTreeHandleImpl th = fh.getTree()) {
             int w;
@@ -307,24 +556,23 @@ public class SmbRandomAccessFile implements SmbRandomAccess {
 
                 if (th.isSMB2()) {
                     final Smb2WriteRequest request = new Smb2WriteRequest(th.getConfig(), fh.getFileId());
-                    request.setOffset(this.fp);
+                    request.setOffset(pos);
                     request.setRemainingBytes(len - w - off);
                     request.setData(b, off, w);
                     final Smb2WriteResponse resp = th.send(request, RequestParam.NO_RETRY);
                     cnt = resp.getCount();
                 } else {
                     final SmbComWriteAndX request =
-                            new SmbComWriteAndX(th.getConfig(), fh.getFid(), this.fp, len - w - off, b, off, w, null);
+                            new SmbComWriteAndX(th.getConfig(), fh.getFid(), pos, len - w - off, b, off, w, null);
                     th.send(request, this.write_andx_resp, RequestParam.NO_RETRY);
                     cnt = this.write_andx_resp.getCount();
                 }
 
-                this.fp += cnt;
+                pos += cnt;
                 len -= cnt;
                 off += cnt;
             } while (len > 0);
-        } catch (final CIFSException e) {
-            throw SmbException.wrap(e);
+            return pos;
         }
     }
 
@@ -335,16 +583,28 @@ public class SmbRandomAccessFile implements SmbRandomAccess {
 
     @Override
     public void seek(final long pos) {
+        if (this.cache != null) {
+            // a failure is reported by the next operation
+            this.cache.flushDeferred();
+        }
         this.fp = pos;
     }
 
     @Override
     public long length() throws SmbException {
+        flush();
         return this.file.length();
     }
 
     @Override
     public void setLength(final long newLength) throws SmbException {
+        if (this.cache != null) {
+            try {
+                this.cache.invalidate();
+            } catch (final CIFSException e) {
+                throw SmbException.wrap(e);
+            }
+        }
         try (SmbFileHandleImpl fh = ensureOpen(); SmbTreeHandleImpl th = fh.getTree()) {
             if (th.isSMB2()) {
                 final Smb2SetInfoRequest req = new Smb2SetInfoRequest(th.getConfig(), fh.getFileId());
@@ -573,4 +833,17 @@ public class SmbRandomAccessFile implements SmbRandomAccess {
         write(dst, 0, size);
     }
 
+    private final class FileBackend implements SmbFileBlockCache.Backend {
+
+        @Override
+        public int read(final long pos, final byte[] b, final int off, final int len) throws CIFSException {
+            return readDirect(pos, b, off, len);
+        }
+
+        @Override
+        public void write(final long pos, final byte[] b, final int off, final int len) throws CIFSException {
+            writeDirect(pos, b, off, len);
+        }
+    }
+
 }
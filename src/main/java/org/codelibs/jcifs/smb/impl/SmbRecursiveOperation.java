@@ -0,0 +1,401 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.impl;
+
+import java.net.MalformedURLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.codelibs.jcifs.smb.CIFSException;
+import org.codelibs.jcifs.smb.CloseableIterator;
+import org.codelibs.jcifs.smb.RecursiveOperationListener;
+import org.codelibs.jcifs.smb.RecursiveOperationResult;
+import org.codelibs.jcifs.smb.SmbConstants;
+import org.codelibs.jcifs.smb.SmbResource;
+import org.codelibs.jcifs.smb.internal.fscc.FileBasicInfo;
+import org.codelibs.jcifs.smb.internal.smb2.create.Smb2CreateRequest;
+import org.codelibs.jcifs.smb.internal.smb2.info.Smb2SetInfoRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Recursive copy or delete of a directory tree using a bounded pool of worker threads
+ *
+ * Every file and directory is processed as a separate task, so up to {@code parallelism} requests are outstanding at
+ * a time instead of one. Failures of individual entries are collected and reported through the
+ * {@link RecursiveOperationListener} and the result instead of aborting the whole operation. A directory whose
+ * contents could not be deleted completely is not deleted itself.
+ *
+ * With SMB2 new directories are created with their attributes and times in a single CREATE/SET_INFO/CLOSE compound.
+ */
+final class SmbRecursiveOperation implements RecursiveOperationResult, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(SmbRecursiveOperation.class);
+
+    private static final AtomicInteger ID = new AtomicInteger();
+
+    private static final RecursiveOperationListener NOOP = new RecursiveOperationListener() {
+    };
+
+    private final ExecutorService executor;
+    private final RecursiveOperationListener listener;
+
+    private final LongAdder files = new LongAdder();
+    private final LongAdder directories = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final Map<String, CIFSException> failures = new ConcurrentHashMap<>();
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Object doneLock = new Object();
+
+    private ThreadLocal<byte[]> buffers;
+
+    /**
+     * @param parallelism
+     *            number of worker threads
+     * @param listener
+     *            progress listener, may be null
+     */
+    SmbRecursiveOperation(final int parallelism, final RecursiveOperationListener listener) {
+        final int id = ID.incrementAndGet();
+        final AtomicInteger thread = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+            final Thread t = new Thread(r, "JCIFS-Recursive-" + id + "-" + thread.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.listener = listener != null ? listener : NOOP;
+    }
+
+    @Override
+    public long getFileCount() {
+        return this.files.sum();
+    }
+
+    @Override
+    public long getDirectoryCount() {
+        return this.directories.sum();
+    }
+
+    @Override
+    public long getByteCount() {
+        return this.bytes.sum();
+    }
+
+    @Override
+    public Map<String, CIFSException> getFailures() {
+        return Collections.unmodifiableMap(this.failures);
+    }
+
+    @Override
+    public void close() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Copy a file or directory tree and wait for completion
+     *
+     * @param src
+     *            source resource
+     * @param dest
+     *            target resource
+     * @param bufferSize
+     *            copy buffer size per worker
+     * @return this
+     * @throws CIFSException
+     *             if interrupted while waiting
+     */
+    RecursiveOperationResult copy(final SmbFile src, final SmbFile dest, final int bufferSize) throws CIFSException {
+        this.buffers = ThreadLocal.withInitial(() -> new byte[bufferSize]);
+        submit(() -> copyEntry(src, dest), null);
+        awaitCompletion();
+        return this;
+    }
+
+    /**
+     * Delete a file or directory tree and wait for completion
+     *
+     * @param root
+     *            resource to delete
+     * @return this
+     * @throws CIFSException
+     *             if interrupted while waiting
+     */
+    RecursiveOperationResult delete(final SmbFile root) throws CIFSException {
+        submit(() -> deleteEntry(root, null, false), null);
+        awaitCompletion();
+        return this;
+    }
+
+    /**
+     * @param task
+     *            task to run on a worker thread
+     * @param rejected
+     *            releases the resources held by the task if it cannot be run, may be null
+     */
+    private void submit(final Runnable task, final Runnable rejected) {
+        this.pending.incrementAndGet();
+        try {
+            this.executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (final RuntimeException e) {
+                    log.warn("Unexpected failure in recursive operation", e);
+                } finally {
+                    taskDone();
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            // operation was aborted
+            try {
+                if (rejected != null) {
+                    rejected.run();
+                }
+            } finally {
+                taskDone();
+            }
+        }
+    }
+
+    private void taskDone() {
+        if (this.pending.decrementAndGet() == 0) {
+            synchronized (this.doneLock) {
+                this.doneLock.notifyAll();
+            }
+        }
+    }
+
+    private void awaitCompletion() throws CIFSException {
+        synchronized (this.doneLock) {
+            while (this.pending.get() > 0) {
+                try {
+                    this.doneLock.wait();
+                } catch (final InterruptedException e) {
+                    this.executor.shutdownNow();
+                    Thread.currentThread().interrupt();
+                    throw new SmbException("Interrupted while waiting for recursive operation", e);
+                }
+            }
+        }
+    }
+
+    private void failed(final SmbFile file, final CIFSException e) {
+        final String path = file.getURL().toString();
+        log.debug("Recursive operation failed for " + path, e);
+        this.failures.put(path, e);
+        this.listener.failed(path, e);
+    }
+
+    private void copyEntry(final SmbFile src, final SmbFile dest) {
+        try {
+            if (src.isDirectory()) {
+                copyDirectory(src, dest);
+            } else {
+                final long n;
+                try (SmbTreeHandleImpl sh = src.ensureTreeConnected(); SmbTreeHandleImpl dh = dest.ensureTreeConnected()) {
+                    n = SmbCopyUtil.copyFileDirect(src, dest, this.buffers.get(), sh, dh);
+                }
+                this.files.increment();
+                this.bytes.add(n);
+                this.listener.completed(dest.getURL().toString(), false, n);
+            }
+        } catch (final CIFSException e) {
+            failed(src, e);
+        } finally {
+            dest.clearAttributeCache();
+        }
+    }
+
+    private void copyDirectory(final SmbFile src, final SmbFile dest) throws CIFSException {
+        if (dest.getLocator().getUNCPath().length() > 1) {
+            createDirectory(src, dest);
+            this.directories.increment();
+            this.listener.completed(dest.getURL().toString(), true, 0);
+        }
+
+        try (CloseableIterator<SmbResource> it = src.children("*")) {
+            while (it.hasNext()) {
+                final SmbResource r = it.next();
+                if (!(r instanceof final SmbFile child)) {
+                    r.close();
+                    continue;
+                }
+                final SmbFile ndest;
+                try {
+                    ndest = new SmbFile(dest, r.getLocator().getName(), true, r.getLocator().getType(), r.getAttributes(), r.createTime(),
+                            r.lastModified(), r.lastAccess(), r.length());
+                } catch (final MalformedURLException e) {
+                    r.close();
+                    throw new SmbException(src.getURL().toString(), e);
+                }
+                submit(() -> {
+                    try {
+                        copyEntry(child, ndest);
+                    } finally {
+                        child.close();
+                        ndest.close();
+                    }
+                }, () -> {
+                    child.close();
+                    ndest.close();
+                });
+            }
+        }
+    }
+
+    private static void createDirectory(final SmbFile src, final SmbFile dest) throws CIFSException {
+        try (SmbTreeHandleImpl dh = dest.ensureTreeConnected()) {
+            final int attrs = src.getAttributes();
+            if (dh.isSMB2()) {
+                final Smb2SetInfoRequest req = new Smb2SetInfoRequest(dh.getConfig());
+                req.setFileInformation(new FileBasicInfo(src.createTime(), src.lastAccess(), src.lastModified(), 0L,
+                        attrs | SmbConstants.ATTR_DIRECTORY));
+                dest.withOpen(dh, Smb2CreateRequest.FILE_CREATE, Smb2CreateRequest.FILE_DIRECTORY_FILE, SmbConstants.ATTR_DIRECTORY,
+                        SmbConstants.FILE_READ_ATTRIBUTES | SmbConstants.FILE_WRITE_ATTRIBUTES,
+                        SmbConstants.FILE_SHARE_READ | SmbConstants.FILE_SHARE_WRITE, req);
+            } else {
+                dest.mkdir();
+                if (dh.hasCapability(SmbConstants.CAP_NT_SMBS)) {
+                    dest.setPathInformation(attrs, src.createTime(), src.lastModified(), src.lastAccess());
+                } else {
+                    dest.setPathInformation(attrs, 0L, src.lastModified(), 0L);
+                }
+            }
+        } catch (final SmbException se) {
+            // same as a sequential copy, an existing target directory is reused
+            if (se.getNtStatus() != NtStatus.NT_STATUS_ACCESS_DENIED && se.getNtStatus() != NtStatus.NT_STATUS_OBJECT_NAME_COLLISION) {
+                throw se;
+            }
+            log.trace("createDirectory", se);
+        }
+    }
+
+    private void deleteEntry(final SmbFile file, final DirectoryNode parent, final boolean owned) {
+        boolean directory = false;
+        try {
+            if (!file.exists()) {
+                throw new SmbException(NtStatus.NT_STATUS_OBJECT_NAME_NOT_FOUND, null);
+            }
+            directory = file.isDirectory();
+            if (directory) {
+                final DirectoryNode node = new DirectoryNode(file, parent, owned);
+                try (CloseableIterator<SmbResource> it = file.children("*")) {
+                    while (it.hasNext()) {
+                        final SmbResource r = it.next();
+                        if (!(r instanceof final SmbFile child)) {
+                            r.close();
+                            continue;
+                        }
+                        node.remaining.incrementAndGet();
+                        submit(() -> deleteEntry(child, node, true), () -> {
+                            // keep the directory, its contents are not deleted
+                            node.failed = true;
+                            child.close();
+                            node.childDone();
+                        });
+                    }
+                } catch (final CIFSException e) {
+                    // some servers do not send '.' and '..' and report an empty directory as NO_SUCH_FILE
+                    if (!(e instanceof final SmbException se) || se.getNtStatus() != NtStatus.NT_STATUS_NO_SUCH_FILE) {
+                        node.failed = true;
+                        failed(file, e);
+                    }
+                } finally {
+                    node.childDone();
+                }
+                return;
+            }
+
+            deleteSingle(file);
+            this.files.increment();
+            this.listener.completed(file.getURL().toString(), false, 0);
+        } catch (final CIFSException e) {
+            failed(file, e);
+            if (parent != null) {
+                parent.failed = true;
+            }
+        } finally {
+            if (!directory) {
+                if (owned) {
+                    file.close();
+                }
+                if (parent != null) {
+                    parent.childDone();
+                }
+            }
+        }
+    }
+
+    private static void deleteSingle(final SmbFile file) throws CIFSException {
+        try (SmbTreeHandleImpl th = file.ensureTreeConnected()) {
+            file.deleteSingle(th, file.getLocator().getUNCPath());
+        }
+    }
+
+    /**
+     * Directory waiting for its contents to be deleted
+     */
+    private final class DirectoryNode {
+
+        final SmbFile file;
+        final DirectoryNode parent;
+        final boolean owned;
+        // one extra for the enumeration itself
+        final AtomicInteger remaining = new AtomicInteger(1);
+        volatile boolean failed;
+
+        DirectoryNode(final SmbFile file, final DirectoryNode parent, final boolean owned) {
+            this.file = file;
+            this.parent = parent;
+            this.owned = owned;
+        }
+
+        void childDone() {
+            if (this.remaining.decrementAndGet() != 0) {
+                return;
+            }
+            try {
+                if (!this.failed) {
+                    deleteSingle(this.file);
+                    SmbRecursiveOperation.this.directories.increment();
+                    SmbRecursiveOperation.this.listener.completed(this.file.getURL().toString(), true, 0);
+                } else if (this.parent != null) {
+                    this.parent.failed = true;
+                }
+            } catch (final CIFSException e) {
+                failed(this.file, e);
+                if (this.parent != null) {
+                    this.parent.failed = true;
+                }
+            } finally {
+                if (this.owned) {
+                    this.file.close();
+                }
+                if (this.parent != null) {
+                    this.parent.childDone();
+                }
+            }
+        }
+    }
+}
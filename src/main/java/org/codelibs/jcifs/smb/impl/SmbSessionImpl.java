@@ -28,9 +28,12 @@ import java.util.EnumSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.security.auth.Subject;
 
@@ -59,6 +62,7 @@ import org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2Request;
 import org.codelibs.jcifs.smb.internal.smb2.Smb2Constants;
 import org.codelibs.jcifs.smb.internal.smb2.Smb2EncryptionContext;
 import org.codelibs.jcifs.smb.internal.smb2.Smb2SigningDigest;
+import org.codelibs.jcifs.smb.internal.smb2.io.Smb2WriteRequest;
 import org.codelibs.jcifs.smb.internal.smb2.nego.Smb2NegotiateResponse;
 import org.codelibs.jcifs.smb.internal.smb2.session.Smb2LogoffRequest;
 import org.codelibs.jcifs.smb.internal.smb2.session.Smb2SessionSetupRequest;
@@ -81,6 +85,12 @@ final class SmbSessionImpl implements SmbSessionInternal {
      * 3 - disconnecting
      */
     private final AtomicInteger connectionState = new AtomicInteger();
+
+    /*
+     * Guards connectionState transitions, session setups on different sessions of one transport run concurrently
+     */
+    private final ReentrantLock setupLock = new ReentrantLock();
+    private final Condition setupDone = this.setupLock.newCondition();
     private int uid;
     private List<SmbTreeImpl> trees;
 
@@ -101,12 +111,15 @@ final class SmbSessionImpl implements SmbSessionInternal {
 
     private SMBSigningDigest digest;
     private Smb2EncryptionContext encryptionContext;
+    private boolean encryptData;
 
     private final String targetDomain;
     private final String targetHost;
 
     private byte[] preauthIntegrityHash;
 
+    private final SmbChannelManager channels;
+
     SmbSessionImpl(CIFSContext tf, String targetHost, String targetDomain, SmbTransportImpl transport) {
         this.transportContext = tf;
         this.targetDomain = targetDomain;
@@ -121,6 +134,7 @@ final class SmbSessionImpl implements SmbSessionInternal {
             throw new IllegalArgumentException("Credentials must implement CredentialsInternal, but got: " + credentialType);
         }
         this.credentials = internalCredentials.clone();
+        this.channels = new SmbChannelManager(this, tf.getConfig().getMaxChannels());
     }
 
     /**
@@ -372,10 +386,7 @@ final class SmbSessionImpl implements SmbSessionInternal {
 
                 request.setSessionId(this.sessionId);
                 request.setUid(this.uid);
-
-                if (request.getDigest() == null) {
-                    request.setDigest(getDigest());
-                }
+                setupSecurity(request);
 
                 if (request instanceof RequestWithPath rpath) {
                     ((RequestWithPath) request).setFullUNCPath(getTargetDomain(), getTargetHost(), rpath.getFullUNCPath());
@@ -386,7 +397,12 @@ final class SmbSessionImpl implements SmbSessionInternal {
                         log.trace("Request " + request);
                     }
                     try {
-                        response = this.transport.send(request, response, params);
+                        final SmbChannel ch = this.channels.select(request);
+                        if (ch != null) {
+                            response = sendOnChannel(ch, request, response, params);
+                        } else {
+                            response = this.transport.send(request, response, params);
+                        }
                     } catch (SmbException e) {
                         if (e.getNtStatus() != 0xC000035C && e.getNtStatus() != 0xC0000203 || !trans.isSMB2()) {
                             throw e;
@@ -421,68 +437,314 @@ final class SmbSessionImpl implements SmbSessionInternal {
                 }
             } finally {
                 request.setDigest(null);
+                if (request instanceof ServerMessageBlock2 r2) {
+                    r2.setEncryptionContext(null);
+                }
                 this.expiration = System.currentTimeMillis() + this.transportContext.getConfig().getSoTimeout();
             }
         }
     }
 
+    /**
+     * Send a request on this already established session without waiting for the response
+     *
+     * @param request
+     * @param params
+     * @return the pending response, null if no credits were available and {@link RequestParam#NO_CREDIT_WAIT} was
+     *         requested
+     * @throws CIFSException
+     */
+    <T extends CommonServerMessageBlockResponse> T sendAsync(CommonServerMessageBlockRequest request, Set<RequestParam> params)
+            throws CIFSException {
+        if (!isConnected()) {
+            throw new SmbException("Session is not established");
+        }
+        request.setSessionId(this.sessionId);
+        request.setUid(this.uid);
+        setupSecurity(request);
+        final SmbChannel ch = this.channels.select(request);
+        if (ch != null) {
+            try {
+                setupChannelSecurity(ch, request);
+                final T response = ch.getTransport().sendAsync(request, params);
+                if (response != null) {
+                    this.channels.track(response, ch);
+                }
+                return response;
+            } catch (SmbException e) {
+                if (!ch.isFailed() && !ch.getTransport().isDisconnected()) {
+                    throw e;
+                }
+                log.debug("Send failed on channel, using primary connection", e);
+                this.channels.fail(ch);
+                request.setDigest(null);
+                setupSecurity(request);
+            }
+        }
+        return this.transport.sendAsync(request, params);
+    }
+
+    /**
+     * Wait for the response to a request sent via {@link #sendAsync(CommonServerMessageBlockRequest, Set)}
+     *
+     * If the channel the request was sent on fails, the request is sent again on the primary connection. Writes are not
+     * repeated but fail, their data may refer to a caller's buffer that has been reused since it was sent.
+     *
+     * @param request
+     * @param response
+     * @return the received response
+     * @throws CIFSException
+     */
+    <T extends CommonServerMessageBlockResponse> T waitForResponse(CommonServerMessageBlockRequest request, T response)
+            throws CIFSException {
+        final SmbChannel ch = this.channels.complete(response);
+        if (ch == null) {
+            return this.transport.waitForResponse(request, response);
+        }
+        try {
+            return ch.getTransport().waitForResponse(request, response);
+        } catch (SmbException e) {
+            if (!ch.isFailed() && !ch.getTransport().isDisconnected()) {
+                throw e;
+            }
+            this.channels.fail(ch);
+            if (hasBorrowedData(request)) {
+                throw new SmbException("Channel failed before the write was acknowledged", e);
+            }
+            log.debug("Channel failed, retrying on primary connection", e);
+            request.setDigest(null);
+            return send(request, response, EnumSet.of(RequestParam.NO_RETRY));
+        }
+    }
+
+    /**
+     * Write data is sent from the caller's buffer, which is no longer guaranteed to be unchanged once sendAsync returned
+     */
+    private static boolean hasBorrowedData(CommonServerMessageBlockRequest request) {
+        for (CommonServerMessageBlockRequest cur = request; cur != null; cur = cur.getNext()) {
+            if (cur instanceof Smb2WriteRequest) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private <T extends CommonServerMessageBlockResponse> T sendOnChannel(SmbChannel ch, CommonServerMessageBlockRequest request,
+            T response, Set<RequestParam> params) throws CIFSException {
+        try {
+            setupChannelSecurity(ch, request);
+            ch.requestSent();
+            return ch.getTransport().send(request, response, params);
+        } catch (SmbException e) {
+            if (!ch.isFailed() && !ch.getTransport().isDisconnected()) {
+                throw e;
+            }
+            log.debug("Channel failed, retrying on primary connection", e);
+            this.channels.fail(ch);
+            request.setDigest(null);
+            setupSecurity(request);
+            if (response != null) {
+                response.clearReceived();
+            }
+            return this.transport.send(request, response, params);
+        }
+    }
+
+    /**
+     * Requests on a bound channel are signed with the channel's key
+     */
+    private static void setupChannelSecurity(SmbChannel ch, CommonServerMessageBlockRequest request) {
+        if (request.getDigest() != null) {
+            request.setDigest(ch.getDigest());
+        }
+    }
+
+    /**
+     * Start setting up additional channels if multichannel is enabled and supported by the server
+     *
+     * @param tree
+     *            a connected tree
+     */
+    void startChannels(SmbTreeImpl tree) {
+        try {
+            if (!getConfig().isUseMultiChannel() || this.credentials.isAnonymous() || !(this.digest instanceof Smb2SigningDigest)
+                    || !(this.transport.getNegotiateResponse() instanceof Smb2NegotiateResponse nego)
+                    || !nego.getSelectedDialect().atLeast(DialectVersion.SMB300)
+                    || (nego.getCommonCapabilities() & Smb2Constants.SMB2_GLOBAL_CAP_MULTI_CHANNEL) == 0) {
+                return;
+            }
+        } catch (SmbException e) {
+            log.debug("Failed to check multichannel support", e);
+            return;
+        }
+        this.channels.start(tree);
+    }
+
+    /**
+     * @return the channel manager of this session
+     */
+    SmbChannelManager getChannelManager() {
+        return this.channels;
+    }
+
+    /**
+     * Bind this session to an additional connection
+     *
+     * The user is authenticated again on the new connection, with the session setup requests carrying the session id and
+     * the binding flag, signed with the session's key. With SMB 3.1.1 the channel's signing key is derived using the
+     * preauth integrity hash of the new connection.
+     *
+     * @param trans
+     *            connected transport, must have negotiated the same dialect as the session's transport
+     * @return the digest to sign requests on the new channel with
+     * @throws CIFSException
+     * @throws GeneralSecurityException
+     */
+    Smb2SigningDigest bindChannel(SmbTransportImpl trans) throws CIFSException, GeneralSecurityException {
+        final Smb2NegotiateResponse negoResp = (Smb2NegotiateResponse) trans.getNegotiateResponse();
+        final int dialect = negoResp.getDialectRevision();
+        final boolean preauthIntegrity = negoResp.getSelectedDialect().atLeast(DialectVersion.SMB311);
+        final int securityMode =
+                (negoResp.getSecurityMode() & Smb2Constants.SMB2_NEGOTIATE_SIGNING_REQUIRED) != 0 || trans.isSigningEnforced()
+                        ? Smb2Constants.SMB2_NEGOTIATE_SIGNING_REQUIRED
+                        : Smb2Constants.SMB2_NEGOTIATE_SIGNING_ENABLED;
+        final Smb2SigningDigest requestDigest =
+                new BindingSigningDigest(this.sessionKey, dialect, this.preauthIntegrityHash, negoResp.getSelectedSigningAlgorithm());
+        byte[] channelHash = preauthIntegrity ? trans.getPreauthIntegrityHash() : null;
+
+        final Subject s = this.credentials.getSubject();
+        final SSPContext ctx = createContext(trans, this.targetDomain, negoResp, true, s);
+        byte[] token = negoResp.getSecurityBlob();
+        Smb2SessionSetupResponse response = null;
+        while (!ctx.isEstablished()) {
+            token = createToken(ctx, token, s);
+            if (token == null) {
+                throw new SmbException("No token for channel binding");
+            }
+            final Smb2SessionSetupRequest request =
+                    new Smb2SessionSetupRequest(this.getContext(), securityMode, negoResp.getCommonCapabilities(), 0, token);
+            request.setSessionBinding(true);
+            request.setSessionId(this.sessionId);
+            request.setDigest(requestDigest);
+            request.retainPayload();
+            try {
+                response = trans.send(request, null, EnumSet.of(RequestParam.RETAIN_PAYLOAD));
+            } catch (SmbException e) {
+                final Smb2SessionSetupResponse sessResponse = request.getResponse();
+                if (!sessResponse.isReceived() || sessResponse.isError()
+                        || sessResponse.getStatus() != NtStatus.NT_STATUS_MORE_PROCESSING_REQUIRED) {
+                    throw e;
+                }
+                response = sessResponse;
+            }
+
+            if (preauthIntegrity) {
+                final byte[] reqBytes = request.getRawPayload();
+                channelHash = trans.calculatePreauthHash(reqBytes, 0, reqBytes.length, channelHash);
+                if (response.getStatus() == NtStatus.NT_STATUS_MORE_PROCESSING_REQUIRED) {
+                    final byte[] respBytes = response.getRawPayload();
+                    channelHash = trans.calculatePreauthHash(respBytes, 0, respBytes.length, channelHash);
+                }
+            }
+            token = response.getBlob();
+        }
+
+        if (response == null || response.getStatus() != NtStatus.NT_STATUS_SUCCESS) {
+            throw new SmbException("Channel binding did not complete");
+        }
+        final Smb2SigningDigest channelDigest =
+                new Smb2SigningDigest(this.sessionKey, dialect, channelHash, negoResp.getSelectedSigningAlgorithm());
+        response.setDigest(channelDigest);
+        final byte[] payload = response.getRawPayload();
+        if (!response.isSigned() || !response.verifySignature(payload, 0, payload.length)) {
+            throw new SmbException("Signature validation failed for channel binding");
+        }
+        if (this.encryptionContext != null) {
+            trans.setEncryptionContext(this.sessionId, this.encryptionContext);
+        }
+        return channelDigest;
+    }
+
     <T extends CommonServerMessageBlock> T sessionSetup(CommonServerMessageBlockRequest chained, T chainedResponse)
             throws CIFSException, GeneralSecurityException {
         try (SmbTransportImpl trans = getTransport()) {
-            synchronized (trans) {
-
+            this.setupLock.lock();
+            try {
                 while (!this.connectionState.compareAndSet(0, 1)) {
                     int st = this.connectionState.get();
                     if (st == 2 || st == 3) { // connected or disconnecting
                         return chainedResponse;
                     }
                     try {
-                        this.transport.wait();
+                        this.setupDone.await();
                     } catch (InterruptedException ie) {
                         throw new SmbException(ie.getMessage(), ie);
                     }
                 }
+            } finally {
+                this.setupLock.unlock();
+            }
 
-                try {
-                    trans.ensureConnected();
-
-                    /*
-                     * Session Setup And X Request / Response
-                     */
+            final long start = System.nanoTime();
+            try {
+                trans.ensureConnected();
 
-                    if (log.isDebugEnabled()) {
-                        log.debug("sessionSetup: " + this.credentials);
-                    }
+                /*
+                 * Session Setup And X Request / Response
+                 */
 
-                    /*
-                     * We explicitly set uid to 0 here to prevent a new
-                     * SMB_COM_SESSION_SETUP_ANDX from having it's uid set to an
-                     * old value when the session is re-established. Otherwise a
-                     * "The parameter is incorrect" error can occur.
-                     */
-                    this.uid = 0;
+                if (log.isDebugEnabled()) {
+                    log.debug("sessionSetup: " + this.credentials);
+                }
 
-                    if (trans.isSMB2()) {
-                        return sessionSetupSMB2(trans, this.targetDomain, (ServerMessageBlock2Request<?>) chained, chainedResponse);
-                    }
+                /*
+                 * We explicitly set uid to 0 here to prevent a new
+                 * SMB_COM_SESSION_SETUP_ANDX from having it's uid set to an
+                 * old value when the session is re-established. Otherwise a
+                 * "The parameter is incorrect" error can occur.
+                 */
+                this.uid = 0;
 
-                    sessionSetupSMB1(trans, this.targetDomain, (ServerMessageBlock) chained, (ServerMessageBlock) chainedResponse);
-                    return chainedResponse;
-                } catch (Exception se) {
-                    log.debug("Session setup failed", se);
-                    if (this.connectionState.compareAndSet(1, 0)) {
-                        // only try to logoff if we have not completed the session setup, ignore errors from chained
-                        // responses
-                        logoff(true, true);
+                final T resp;
+                if (trans.isSMB2()) {
+                    // preauth hash and signing digest are per session, no need to serialize on the transport
+                    resp = sessionSetupSMB2(trans, this.targetDomain, (ServerMessageBlock2Request<?>) chained, chainedResponse);
+                } else {
+                    // SMB1 signing state is shared by the transport
+                    synchronized (trans) {
+                        sessionSetupSMB1(trans, this.targetDomain, (ServerMessageBlock) chained, (ServerMessageBlock) chainedResponse);
                     }
-                    throw se;
-                } finally {
-                    trans.notifyAll();
+                    resp = chainedResponse;
                 }
+                final long took = System.nanoTime() - start;
+                trans.sessionSetupCompleted(took);
+                if (log.isDebugEnabled()) {
+                    log.debug("Session setup took " + TimeUnit.NANOSECONDS.toMillis(took) + " ms");
+                }
+                return resp;
+            } catch (Exception se) {
+                log.debug("Session setup failed", se);
+                if (this.connectionState.compareAndSet(1, 0)) {
+                    // only try to logoff if we have not completed the session setup, ignore errors from chained
+                    // responses
+                    logoff(true, true);
+                }
+                throw se;
+            } finally {
+                signalSetupDone();
             }
         }
     }
 
+    private void signalSetupDone() {
+        this.setupLock.lock();
+        try {
+            this.setupDone.signalAll();
+        } finally {
+            this.setupLock.unlock();
+        }
+    }
+
     /**
      * @param trans
      * @param chain
@@ -555,20 +817,6 @@ final class SmbSessionImpl implements SmbSessionInternal {
                     anonymous = true;
                 }
 
-                if ((response.getSessionFlags() & Smb2SessionSetupResponse.SMB2_SESSION_FLAG_ENCRYPT_DATA) != 0) {
-                    // Server requires encryption - create encryption context
-                    try {
-                        if (log.isDebugEnabled()) {
-                            log.debug("Server requires encryption, creating encryption context");
-                        }
-                        SmbTransportImpl transport = getTransport();
-                        this.encryptionContext = transport.createEncryptionContext(this.sessionKey, this.preauthIntegrityHash);
-                    } catch (CIFSException e) {
-                        log.error("Failed to create encryption context", e);
-                        throw new SmbAuthException("Failed to setup required encryption", e);
-                    }
-                }
-
                 if (preauthIntegrity) {
                     byte[] reqBytes = request.getRawPayload();
                     this.preauthIntegrityHash = trans.calculatePreauthHash(reqBytes, 0, reqBytes.length, this.preauthIntegrityHash);
@@ -600,8 +848,8 @@ final class SmbSessionImpl implements SmbSessionInternal {
                         if (this.preauthIntegrityHash != null && log.isDebugEnabled()) {
                             log.debug("Final preauth integrity hash " + Hexdump.toHexString(this.preauthIntegrityHash));
                         }
-                        Smb2SigningDigest dgst =
-                                new Smb2SigningDigest(this.sessionKey, negoResp.getDialectRevision(), this.preauthIntegrityHash);
+                        Smb2SigningDigest dgst = new Smb2SigningDigest(this.sessionKey, negoResp.getDialectRevision(),
+                                this.preauthIntegrityHash, negoResp.getSelectedSigningAlgorithm());
                         // verify the server signature here, this is not done automatically as we don't set the
                         // request digest
                         // Ignore a missing signature for SMB < 3.0, as
@@ -622,6 +870,9 @@ final class SmbSessionImpl implements SmbSessionInternal {
                 } else if (log.isDebugEnabled()) {
                     log.debug("No digest setup " + anonymous + " B " + isSignatureSetupRequired());
                 }
+                if (response != null) {
+                    setupEncryption(trans, negoResp, response, anonymous);
+                }
                 setSessionSetup(response);
                 if (ex != null) {
                     throw ex;
@@ -631,6 +882,58 @@ final class SmbSessionImpl implements SmbSessionInternal {
         }
     }
 
+    /**
+     * Sets up the encryption context once the session keys are known
+     *
+     * The context is created whenever the server supports encryption so that it is available for shares requiring
+     * encryption, all requests on this session are encrypted if the server requires it for the whole session.
+     */
+    private void setupEncryption(SmbTransportImpl trans, Smb2NegotiateResponse negoResp, Smb2SessionSetupResponse response,
+            boolean anonymous) throws CIFSException {
+        boolean required = (response.getSessionFlags() & Smb2SessionSetupResponse.SMB2_SESSION_FLAG_ENCRYPT_DATA) != 0;
+        if (anonymous || this.sessionKey == null || !negoResp.isEncryptionSupported()
+                || !negoResp.getSelectedDialect().atLeast(DialectVersion.SMB300)) {
+            if (required) {
+                throw new SmbAuthException("Server requires encryption, but encryption is not available");
+            }
+            return;
+        }
+
+        try {
+            this.encryptionContext = trans.createEncryptionContext(this.sessionKey, this.preauthIntegrityHash);
+        } catch (CIFSException e) {
+            if (required) {
+                throw new SmbAuthException("Failed to setup required encryption", e);
+            }
+            log.warn("Failed to create encryption context", e);
+            return;
+        }
+        this.encryptData = required;
+        trans.setEncryptionContext(response.getSessionId(), this.encryptionContext);
+        if (log.isDebugEnabled()) {
+            log.debug("Encryption available for session, required " + required);
+        }
+    }
+
+    /**
+     * Applies the session's encryption or signing to a request
+     *
+     * Encrypted requests are not signed.
+     */
+    private void setupSecurity(CommonServerMessageBlockRequest request) throws SmbException {
+        if (request instanceof ServerMessageBlock2 r2) {
+            if (this.encryptData && r2.getEncryptionContext() == null) {
+                r2.setEncryptionContext(this.encryptionContext);
+            }
+            if (r2.getEncryptionContext() != null) {
+                return;
+            }
+        }
+        if (request.getDigest() == null) {
+            request.setDigest(getDigest());
+        }
+    }
+
     private static byte[] createToken(final SSPContext ctx, final byte[] token, Subject s) throws CIFSException {
         if (s != null) {
             try {
@@ -709,7 +1012,8 @@ final class SmbSessionImpl implements SmbSessionInternal {
         long newSessId = 0;
         long curSessId = this.sessionId;
 
-        synchronized (trans) {
+        this.setupLock.lock();
+        try {
             this.credentials.refresh();
             Subject s = this.credentials.getSubject();
             SSPContext ctx = createContext(trans, tdomain, negoResp, doSigning, s);
@@ -780,6 +1084,8 @@ final class SmbSessionImpl implements SmbSessionInternal {
                     return null;
                 }
             }
+        } finally {
+            this.setupLock.unlock();
         }
     }
 
@@ -1095,8 +1401,8 @@ final class SmbSessionImpl implements SmbSessionInternal {
 
                 if (!inError && trans.isSMB2()) {
                     Smb2LogoffRequest request = new Smb2LogoffRequest(getConfig());
-                    request.setDigest(getDigest());
                     request.setSessionId(this.sessionId);
+                    setupSecurity(request);
                     try {
                         this.transport.send(request.ignoreDisconnect(), null);
                     } catch (SmbException se) {
@@ -1122,9 +1428,15 @@ final class SmbSessionImpl implements SmbSessionInternal {
         } catch (SmbException e) {
             log.warn("Error in logoff", e);
         } finally {
+            this.channels.shutdown();
             this.connectionState.set(0);
             this.digest = null;
-            this.transport.notifyAll();
+            if (this.encryptionContext != null) {
+                this.transport.setEncryptionContext(this.sessionId, null);
+                this.encryptionContext = null;
+                this.encryptData = false;
+            }
+            signalSetupDone();
         }
         return wasInUse;
     }
@@ -1213,6 +1525,13 @@ final class SmbSessionImpl implements SmbSessionInternal {
         return this.encryptionContext != null;
     }
 
+    /**
+     * @return whether the server requires all messages on this session to be encrypted
+     */
+    public boolean isEncryptionRequired() {
+        return this.encryptData;
+    }
+
     /**
      * @return the encryption context for this session, or null if encryption is not enabled
      */
@@ -1248,4 +1567,23 @@ final class SmbSessionImpl implements SmbSessionInternal {
         return this.encryptionContext.decryptMessage(encryptedMessage);
     }
 
+
+    /**
+     * Signs channel binding requests with the session's key
+     *
+     * Verification is skipped, with SMB 3.1.1 the final binding response is signed with the channel's key and is
+     * verified explicitly.
+     */
+    private static final class BindingSigningDigest extends Smb2SigningDigest {
+
+        BindingSigningDigest(byte[] sessionKey, int dialect, byte[] preauthIntegrityHash, int signingAlgorithm)
+                throws GeneralSecurityException {
+            super(sessionKey, dialect, preauthIntegrityHash, signingAlgorithm);
+        }
+
+        @Override
+        public boolean verify(byte[] data, int offset, int length, int extraPad, CommonServerMessageBlock msg) {
+            return false;
+        }
+    }
 }
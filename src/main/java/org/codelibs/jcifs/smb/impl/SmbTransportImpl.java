@@ -35,12 +35,18 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.codelibs.jcifs.smb.Address;
+import org.codelibs.jcifs.smb.BufferCache;
 import org.codelibs.jcifs.smb.CIFSContext;
 import org.codelibs.jcifs.smb.CIFSException;
 import org.codelibs.jcifs.smb.DfsReferralData;
@@ -73,12 +79,19 @@ import org.codelibs.jcifs.smb.internal.smb1.trans2.Trans2GetDfsReferralResponse;
 import org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2;
 import org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2Request;
 import org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2Response;
+import org.codelibs.jcifs.smb.internal.smb2.Smb2CompressionContext;
 import org.codelibs.jcifs.smb.internal.smb2.Smb2Constants;
 import org.codelibs.jcifs.smb.internal.smb2.Smb2EncryptionContext;
+import org.codelibs.jcifs.smb.internal.smb2.Smb2TransformHeader;
 import org.codelibs.jcifs.smb.internal.smb2.Smb3KeyDerivation;
+import org.codelibs.jcifs.smb.internal.smb2.io.Smb2ReadRequest;
 import org.codelibs.jcifs.smb.internal.smb2.io.Smb2ReadResponse;
+import org.codelibs.jcifs.smb.internal.smb2.io.Smb2WriteRequest;
 import org.codelibs.jcifs.smb.internal.smb2.ioctl.Smb2IoctlRequest;
 import org.codelibs.jcifs.smb.internal.smb2.ioctl.Smb2IoctlResponse;
+import org.codelibs.jcifs.smb.internal.smb2.lease.Smb2LeaseBreakAcknowledgment;
+import org.codelibs.jcifs.smb.internal.smb2.lease.Smb2LeaseBreakNotification;
+import org.codelibs.jcifs.smb.internal.smb2.lease.Smb2LeaseState;
 import org.codelibs.jcifs.smb.internal.smb2.lock.Smb2OplockBreakNotification;
 import org.codelibs.jcifs.smb.internal.smb2.nego.EncryptionNegotiateContext;
 import org.codelibs.jcifs.smb.internal.smb2.nego.Smb2NegotiateRequest;
@@ -94,6 +107,7 @@ import org.codelibs.jcifs.smb.util.transport.Request;
 import org.codelibs.jcifs.smb.util.transport.Response;
 import org.codelibs.jcifs.smb.util.transport.Transport;
 import org.codelibs.jcifs.smb.util.transport.TransportException;
+import org.codelibs.jcifs.smb.util.transport.VirtualThreads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -104,6 +118,11 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
 
     private static Logger log = LoggerFactory.getLogger(SmbTransportImpl.class);
 
+    /**
+     * Write requests with at least this much data are sent without copying the data into a transport buffer
+     */
+    static final int SEPARATE_WRITE_DATA_MIN = 8192;
+
     private boolean smb2 = false;
     private final InetAddress localAddr;
     private final int localPort;
@@ -114,6 +133,20 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
     private OutputStream out;
     private InputStream in;
     private final byte[] sbuf = new byte[1024]; /* small local buffer */
+    private final byte[] tbuf = new byte[Smb2TransformHeader.TRANSFORM_HEADER_SIZE]; /* transform header */
+    /* decrypted message currently being received */
+    private byte[] rbuf;
+    private int rbufPos;
+    private int rbufLen;
+    private int rbufDirty;
+    /* whether the message in rbuf was compressed but not encrypted */
+    private boolean rbufPlainCompressed;
+    private final Map<Long, Smb2EncryptionContext> encryptionContexts = new ConcurrentHashMap<>();
+    private volatile Smb2CompressionContext compressionContext;
+    private final SmbLeaseManager leaseManager;
+    /* lease breaks are handled one at a time, the worker goes away when idle */
+    private final ThreadPoolExecutor leaseBreakExecutor;
+    private volatile SmbTransportImpl primaryTransport;
     private long sessionExpiration;
     private final List<SmbSessionImpl> sessions = new LinkedList<>();
 
@@ -132,17 +165,28 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
 
     private byte[] preauthIntegrityHash = new byte[64];
 
+    private final LongAdder sessionSetups = new LongAdder();
+    private final LongAdder sessionSetupTime = new LongAdder();
+    private final AtomicLong sessionSetupTimeMax = new AtomicLong();
+
+    private volatile SmbCopyUtil.ChunkLimits copyChunkLimits;
+    private volatile boolean crossShareCopyUnsupported;
+
     SmbTransportImpl(final CIFSContext tc, final Address address, final int port, final InetAddress localAddr, final int localPort,
             final boolean forceSigning) {
         this.transportContext = tc;
 
         this.signingEnforced = forceSigning || this.getContext().getConfig().isSigningEnforced();
         this.sessionExpiration = System.currentTimeMillis() + tc.getConfig().getSessionTimeout();
+        this.leaseManager = new SmbLeaseManager(tc.getConfig());
 
         this.address = address;
         this.port = port;
         this.localAddr = localAddr;
         this.localPort = localPort;
+        this.leaseBreakExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                r -> newThread(r, "jcifs lease break " + this.address));
+        this.leaseBreakExecutor.allowCoreThreadTimeOut(true);
 
     }
 
@@ -172,6 +216,24 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
         return this.tconHostName;
     }
 
+    /**
+     * @return the port connected to
+     */
+    int getRemotePort() {
+        return this.port;
+    }
+
+    /**
+     * Mark this transport as an additional channel of a session established on another transport
+     *
+     * Lease breaks may be received on any channel, they are handled by the primary transport.
+     *
+     * @param primary
+     */
+    void setPrimaryTransport(final SmbTransportImpl primary) {
+        this.primaryTransport = primary;
+    }
+
     /**
      *
      * @return number of sessions on this transport
@@ -185,6 +247,12 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
         return this.response_map.size();
     }
 
+    // visible to the transport pool
+    @Override
+    protected long getUsageCount() {
+        return super.getUsageCount();
+    }
+
     @Override
     public boolean isDisconnected() {
         final Socket s = this.socket;
@@ -230,6 +298,23 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
         return this.smb2 || getNegotiateResponse() instanceof Smb2NegotiateResponse;
     }
 
+    /**
+     * @return the lease manager, null if leases are disabled or not supported by the server
+     * @throws SmbException
+     */
+    SmbLeaseManager getLeaseManager() throws SmbException {
+        if (!getContext().getConfig().isUseLeases()) {
+            return null;
+        }
+        final SmbNegotiationResponse nego = getNegotiateResponse();
+        if (!(nego instanceof final Smb2NegotiateResponse r) || r.getSelectedDialect() == null
+                || !r.getSelectedDialect().atLeast(DialectVersion.SMB300)
+                || (r.getCommonCapabilities() & Smb2Constants.SMB2_GLOBAL_CAP_LEASING) == 0) {
+            return null;
+        }
+        return this.leaseManager;
+    }
+
     /**
      * @param digest
      */
@@ -392,6 +477,18 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
                 && (laddr == this.localAddr || laddr != null && laddr.equals(this.localAddr)) && lprt == this.localPort;
     }
 
+    @Override
+    protected Thread newThread(final Runnable task, final String threadName) {
+        if (getContext().getConfig().isUseVirtualThreads()) {
+            final Thread t = VirtualThreads.newThread(task, threadName);
+            if (t != null) {
+                return t;
+            }
+            log.debug("Virtual threads not available, using a platform thread");
+        }
+        return super.newThread(task, threadName);
+    }
+
     void ssn139() throws IOException {
         final CIFSContext tc = this.transportContext;
         final Name calledName = new Name(tc.getConfig(), this.address.firstCalledName(), 0x20, null);
@@ -402,6 +499,7 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
             }
             this.socket.connect(new InetSocketAddress(this.address.getHostAddress(), 139), tc.getConfig().getConnTimeout());
             this.socket.setSoTimeout(tc.getConfig().getSoTimeout());
+            this.socket.setTcpNoDelay(true);
 
             this.out = this.socket.getOutputStream();
             this.in = this.socket.getInputStream();
@@ -453,7 +551,8 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
          * returns and we want to suppress all communication
          * until we have properly negotiated.
          */
-        synchronized (this.inLock) {
+        this.inLock.lock();
+        try {
             if (prt == 139) {
                 ssn139();
             } else {
@@ -468,6 +567,8 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
                 this.socket.connect(new InetSocketAddress(this.address.getHostAddress(), prt),
                         this.transportContext.getConfig().getConnTimeout());
                 this.socket.setSoTimeout(this.transportContext.getConfig().getSoTimeout());
+                // messages are written in one go or as header and data, never wait for more to coalesce
+                this.socket.setTcpNoDelay(true);
 
                 this.out = this.socket.getOutputStream();
                 this.in = this.socket.getInputStream();
@@ -525,6 +626,8 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
             }
             Arrays.fill(this.sbuf, (byte) 0);
             return new SmbNegotiation(comNeg, resp, null, null);
+        } finally {
+            this.inLock.unlock();
         }
     }
 
@@ -694,7 +797,17 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
         /* Adjust negotiated values */
         this.tconHostName = this.address.getHostName();
         this.negotiated = resp.getResponse();
+        this.compressionContext = null;
         if (resp.getResponse().getSelectedDialect().atLeast(DialectVersion.SMB311)) {
+            final Smb2NegotiateResponse nr = (Smb2NegotiateResponse) resp.getResponse();
+            if (nr.getCompressionAlgorithms().length > 0) {
+                this.compressionContext = new Smb2CompressionContext(nr.getCompressionAlgorithms(), nr.isCompressionChained(),
+                        getContext().getConfig().getCompressionThreshold());
+                if (log.isDebugEnabled()) {
+                    log.debug("Negotiated compression " + Arrays.toString(nr.getCompressionAlgorithms()) + " chained "
+                            + nr.isCompressionChained());
+                }
+            }
             updatePreauthHash(resp.getRequestRaw());
             updatePreauthHash(resp.getResponseRaw());
             if (log.isDebugEnabled()) {
@@ -752,11 +865,207 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
             this.socket = null;
             this.digest = null;
             this.tconHostName = null;
+            this.leaseManager.clear();
             this.transportContext.getTransportPool().removeTransport(this);
         }
         return wasInUse;
     }
 
+    /**
+     * Reads and decrypts a message starting with a transform header
+     *
+     * The decrypted message is kept in a pooled buffer and its header is placed into sbuf as if it had been
+     * received unencrypted, so that the regular receive path can continue from there.
+     *
+     * @return the message id of the decrypted message
+     * @throws IOException
+     */
+    private Long peekEncrypted() throws IOException {
+        final int hdrRemain = Smb2TransformHeader.TRANSFORM_HEADER_SIZE - SmbConstants.SMB1_HEADER_LENGTH;
+        System.arraycopy(this.sbuf, 4, this.tbuf, 0, SmbConstants.SMB1_HEADER_LENGTH);
+        if (readn(this.in, this.tbuf, SmbConstants.SMB1_HEADER_LENGTH, hdrRemain) < hdrRemain) {
+            return null;
+        }
+
+        final int size = Encdec.dec_uint16be(this.sbuf, 2) & 0xFFFF | (this.sbuf[1] & 0xFF) << 16;
+        final int msgSize = size - Smb2TransformHeader.TRANSFORM_HEADER_SIZE;
+        if (msgSize < Smb2Constants.SMB2_HEADER_LENGTH) {
+            throw new IOException("Invalid encrypted payload size: " + size);
+        }
+        if (msgSize + Smb2EncryptionContext.AUTH_TAG_LENGTH > getContext().getConfig().getMaximumBufferSize()) {
+            throw new IOException(String.format("Encrypted message size %d exceeds maxiumum buffer size %d", msgSize,
+                    getContext().getConfig().getMaximumBufferSize()));
+        }
+
+        final long sessId = Encdec.dec_uint64le(this.tbuf, 44);
+        final Smb2EncryptionContext enc = this.encryptionContexts.get(sessId);
+        if (enc == null) {
+            throw new IOException("Received encrypted message for unknown session " + sessId);
+        }
+
+        this.smb2 = true;
+        // decryption needs room for the authentication tag after the ciphertext
+        final int bufSize = msgSize + Smb2EncryptionContext.AUTH_TAG_LENGTH;
+        final byte[] buffer = getContext().getBufferCache().getBuffer(bufSize);
+        this.rbuf = buffer;
+        this.rbufDirty = bufSize;
+        if (readn(this.in, buffer, 0, msgSize) < msgSize) {
+            return null;
+        }
+        this.rbufLen = enc.decrypt(this.tbuf, 0, buffer, 0, msgSize);
+
+        if (log.isTraceEnabled()) {
+            log.trace("Decrypted message of size " + this.rbufLen);
+        }
+
+        if (Smb2CompressionContext.isCompressed(buffer, 0)) {
+            this.rbuf = null;
+            try {
+                decompressMessage(buffer, this.rbufLen);
+            } finally {
+                getContext().getBufferCache().releaseBuffer(buffer, bufSize);
+            }
+        }
+        return presentBuffered("Invalid decrypted message");
+    }
+
+    /**
+     * Reads and decompresses a message starting with a compression transform header
+     *
+     * @return the message id of the decompressed message
+     * @throws IOException
+     */
+    private Long peekCompressed() throws IOException {
+        final int size = Encdec.dec_uint16be(this.sbuf, 2) & 0xFFFF | (this.sbuf[1] & 0xFF) << 16;
+        if (size < SmbConstants.SMB1_HEADER_LENGTH || size > getContext().getConfig().getMaximumBufferSize()) {
+            throw new IOException("Invalid compressed message size: " + size);
+        }
+
+        this.smb2 = true;
+        final byte[] buffer = getContext().getBufferCache().getBuffer(size);
+        try {
+            System.arraycopy(this.sbuf, 4, buffer, 0, SmbConstants.SMB1_HEADER_LENGTH);
+            final int remain = size - SmbConstants.SMB1_HEADER_LENGTH;
+            if (readn(this.in, buffer, SmbConstants.SMB1_HEADER_LENGTH, remain) < remain) {
+                return null;
+            }
+            decompressMessage(buffer, size);
+        } finally {
+            getContext().getBufferCache().releaseBuffer(buffer, size);
+        }
+        this.rbufPlainCompressed = true;
+        return presentBuffered("Invalid decompressed message");
+    }
+
+    /**
+     * Decompress a message into a pooled buffer that becomes the current message
+     */
+    private void decompressMessage(final byte[] src, final int len) throws IOException {
+        final int size = Smb2CompressionContext.getOriginalSize(src, 0, len);
+        if (size < Smb2Constants.SMB2_HEADER_LENGTH || size > getContext().getConfig().getMaximumBufferSize()) {
+            throw new IOException("Invalid decompressed message size: " + size);
+        }
+        final byte[] buffer = getContext().getBufferCache().getBuffer(size);
+        this.rbuf = buffer;
+        this.rbufDirty = size;
+        this.rbufLen = Smb2CompressionContext.decompress(src, 0, len, buffer, 0);
+        if (log.isTraceEnabled()) {
+            log.trace("Decompressed message of size " + len + " to " + this.rbufLen);
+        }
+    }
+
+    /**
+     * Present the message in rbuf like one received unencrypted and uncompressed
+     *
+     * @return the message id
+     */
+    private Long presentBuffered(final String error) throws IOException {
+        final byte[] buffer = this.rbuf;
+        if (this.rbufLen < Smb2Constants.SMB2_HEADER_LENGTH || buffer[0] != (byte) 0xFE || buffer[1] != (byte) 'S'
+                || buffer[2] != (byte) 'M' || buffer[3] != (byte) 'B') {
+            throw new IOException(error);
+        }
+
+        this.sbuf[0] = 0;
+        this.sbuf[1] = (byte) (this.rbufLen >> 16 & 0xFF);
+        Encdec.enc_uint16be((short) (this.rbufLen & 0xFFFF), this.sbuf, 2);
+        System.arraycopy(buffer, 0, this.sbuf, 4, Smb2Constants.SMB2_HEADER_LENGTH);
+        this.rbufPos = Smb2Constants.SMB2_HEADER_LENGTH;
+        return Encdec.dec_uint64le(this.sbuf, 28);
+    }
+
+    /**
+     * Read message data following the header, either from the decrypted message or the socket
+     */
+    private int readBody(final byte[] b, final int off, final int len) throws IOException {
+        if (this.rbuf == null) {
+            return readn(this.in, b, off, len);
+        }
+        final int n = Math.min(len, this.rbufLen - this.rbufPos);
+        System.arraycopy(this.rbuf, this.rbufPos, b, off, n);
+        this.rbufPos += n;
+        return n;
+    }
+
+    private void skipBody(final long len) throws IOException {
+        if (this.rbuf == null) {
+            this.in.skip(len);
+        } else {
+            this.rbufPos = this.rbufLen;
+        }
+    }
+
+    /**
+     * Read the remainder of the current SMB2 message, so that it can be inspected before parsing
+     *
+     * @return whether the message is available in rbuf
+     */
+    private boolean bufferBody() throws SmbException {
+        if (this.rbuf != null) {
+            return true;
+        }
+        final int size = Encdec.dec_uint16be(this.sbuf, 2) & 0xFFFF | (this.sbuf[1] & 0xFF) << 16;
+        if (size < Smb2Constants.SMB2_HEADER_LENGTH || size > getContext().getConfig().getMaximumBufferSize()) {
+            return false;
+        }
+        final byte[] buffer = getContext().getBufferCache().getBuffer(size);
+        this.rbuf = buffer;
+        this.rbufDirty = size;
+        System.arraycopy(this.sbuf, 4, buffer, 0, Smb2Constants.SMB2_HEADER_LENGTH);
+        this.rbufPos = Smb2Constants.SMB2_HEADER_LENGTH;
+        try {
+            this.rbufLen = Smb2Constants.SMB2_HEADER_LENGTH
+                    + readn(this.in, buffer, Smb2Constants.SMB2_HEADER_LENGTH, size - Smb2Constants.SMB2_HEADER_LENGTH);
+        } catch (final IOException e) {
+            throw new SmbException("Failed to read notification", e);
+        }
+        return true;
+    }
+
+    private void releaseDecrypted() {
+        final byte[] b = this.rbuf;
+        this.rbufPlainCompressed = false;
+        if (b != null) {
+            this.rbuf = null;
+            getContext().getBufferCache().releaseBuffer(b, this.rbufDirty);
+        }
+    }
+
+    /**
+     * Register the encryption context for a session, used to decrypt incoming messages
+     *
+     * @param sessionId
+     * @param ctx
+     *            encryption context, null to remove
+     */
+    void setEncryptionContext(final long sessionId, final Smb2EncryptionContext ctx) {
+        if (ctx == null) {
+            this.encryptionContexts.remove(sessionId);
+        } else {
+            this.encryptionContexts.put(sessionId, ctx);
+        }
+    }
+
     @Override
     protected long makeKey(final Request request) throws IOException {
         long m = this.mid.incrementAndGet() - 1;
@@ -769,6 +1078,7 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
 
     @Override
     protected Long peekKey() throws IOException {
+        releaseDecrypted();
         do {
             if (readn(this.in, this.sbuf, 0, 4) < 4) {
                 return null;
@@ -779,6 +1089,16 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
             return null;
         }
 
+        if (this.sbuf[0] == (byte) 0x00 && this.sbuf[4] == (byte) 0xFD && this.sbuf[5] == (byte) 'S' && this.sbuf[6] == (byte) 'M'
+                && this.sbuf[7] == (byte) 'B') {
+            return peekEncrypted();
+        }
+
+        if (this.sbuf[0] == (byte) 0x00 && this.sbuf[4] == (byte) 0xFC && this.sbuf[5] == (byte) 'S' && this.sbuf[6] == (byte) 'M'
+                && this.sbuf[7] == (byte) 'B') {
+            return peekCompressed();
+        }
+
         if (log.isTraceEnabled()) {
             log.trace("New data read: " + this);
             log.trace(Hexdump.toHexString(this.sbuf, 4, 32));
@@ -801,7 +1121,7 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
                 if (readn(this.in, this.sbuf, 4 + SmbConstants.SMB1_HEADER_LENGTH, lenDiff) < lenDiff) {
                     return null;
                 }
-                return (long) Encdec.dec_uint64le(this.sbuf, 28);
+                return Encdec.dec_uint64le(this.sbuf, 28);
             }
 
             if (this.sbuf[0] == (byte) 0x00 && this.sbuf[1] == (byte) 0x00 && this.sbuf[4] == (byte) 0xFF && this.sbuf[5] == (byte) 'S'
@@ -836,29 +1156,166 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
     protected void doSend(final Request request) throws IOException {
 
         CommonServerMessageBlock smb = (CommonServerMessageBlock) request;
+        final Smb2EncryptionContext enc = smb instanceof ServerMessageBlock2 ? ((ServerMessageBlock2) smb).getEncryptionContext() : null;
+        final Smb2CompressionContext comp = this.compressionContext;
+        if (comp != null && smb instanceof Smb2ReadRequest) {
+            final Smb2ReadRequest rr = (Smb2ReadRequest) smb;
+            if (rr.getReadLength() >= comp.getThreshold()) {
+                rr.setReadFlags((byte) (rr.getReadFlags() | Smb2ReadRequest.SMB2_READFLAG_REQUEST_COMPRESSED));
+            }
+        }
+        if (smb instanceof Smb2WriteRequest) {
+            final Smb2WriteRequest wr = (Smb2WriteRequest) smb;
+            if (comp != null && wr.getNext() == null && wr.getDataLength() >= comp.getThreshold() && doSendCompressed(wr, enc, comp)) {
+                return;
+            }
+            if (enc == null && wr.getNext() == null && wr.getDataLength() >= SEPARATE_WRITE_DATA_MIN) {
+                doSendWriteData(wr);
+                return;
+            }
+        }
         final byte[] buffer = this.getContext().getBufferCache().getBuffer();
+        int dirty = buffer.length;
         try {
             // synchronize around encode and write so that the ordering for SMB1 signing can be maintained
-            synchronized (this.outLock) {
-                final int n = smb.encode(buffer, 4);
-                Encdec.enc_uint32be(n & 0xFFFF, buffer, 0); /* 4 byte session message header */
+            this.outLock.lock();
+            try {
+                final int off = enc != null ? 4 + Smb2TransformHeader.TRANSFORM_HEADER_SIZE : 4;
+                int n = smb.encode(buffer, off);
                 if (log.isTraceEnabled()) {
                     do {
                         log.trace(smb.toString());
                     } while (smb instanceof AndXServerMessageBlock && (smb = ((AndXServerMessageBlock) smb).getAndx()) != null);
-                    log.trace(Hexdump.toHexString(buffer, 4, n));
+                    log.trace(Hexdump.toHexString(buffer, off, n));
 
                 }
+                if (enc != null) {
+                    // encrypt the whole (compound) message in place, the transform header goes in front of it
+                    n = enc.encrypt(buffer, 4, n, ((ServerMessageBlock2) request).getSessionId());
+                }
+                Encdec.enc_uint32be(n & 0xFFFFFF, buffer, 0); /* 4 byte session message header */
                 /*
                  * For some reason this can sometimes get broken up into another
                  * "NBSS Continuation Message" frame according to WireShark
                  */
 
+                // encryption leaves a copy of the authentication tag after the message
+                dirty = enc != null ? 4 + n + Smb2EncryptionContext.AUTH_TAG_LENGTH : 4 + n;
+                this.out.write(buffer, 0, 4 + n);
+                this.out.flush();
+            } finally {
+                this.outLock.unlock();
+            }
+        } finally {
+            this.getContext().getBufferCache().releaseBuffer(buffer, dirty);
+        }
+    }
+
+    /**
+     * Send a write request with the data written straight from the caller's buffer
+     *
+     * Only the header and fixed part of the request are encoded into a transport buffer, the (signature of the) message
+     * covers the data without it being copied.
+     *
+     * @param request
+     * @throws IOException
+     */
+    private void doSendWriteData(final Smb2WriteRequest request) throws IOException {
+        final BufferCache bufferCache = this.getContext().getBufferCache();
+        final byte[] buffer = bufferCache.getBuffer(4 + Smb2WriteRequest.OVERHEAD);
+        int dirty = buffer.length;
+        try {
+            this.outLock.lock();
+            try {
+                final int n = request.encodeWithoutData(buffer, 4);
+                final int total = n + request.getDataLength();
+                if (log.isTraceEnabled()) {
+                    log.trace(request.toString());
+                    log.trace(Hexdump.toHexString(buffer, 4, n));
+                }
+                Encdec.enc_uint32be(total & 0xFFFFFF, buffer, 0); /* 4 byte session message header */
+                dirty = 4 + n;
                 this.out.write(buffer, 0, 4 + n);
+                this.out.write(request.getData(), request.getDataOffset(), request.getDataLength());
                 this.out.flush();
+            } finally {
+                this.outLock.unlock();
             }
         } finally {
-            this.getContext().getBufferCache().releaseBuffer(buffer);
+            bufferCache.releaseBuffer(buffer, dirty);
+        }
+    }
+
+    /**
+     * Send a write request compressed, and encrypted if required
+     *
+     * The header and fixed part of the request are encoded behind room for the compression transform header, the data
+     * is compressed straight from the caller's buffer. If the data turns out not to be compressible the request is
+     * sent uncompressed.
+     *
+     * @param request
+     * @param enc
+     *            encryption context, null if not encrypted
+     * @param comp
+     * @return whether the request was sent, false if compression was skipped before encoding
+     * @throws IOException
+     */
+    private boolean doSendCompressed(final Smb2WriteRequest request, final Smb2EncryptionContext enc, final Smb2CompressionContext comp)
+            throws IOException {
+        final BufferCache bufferCache = this.getContext().getBufferCache();
+        final byte[] buffer = bufferCache.getBuffer();
+        int dirty = buffer.length;
+        try {
+            this.outLock.lock();
+            try {
+                final byte[] data = request.getData();
+                final int dataOff = request.getDataOffset();
+                final int dataLen = request.getDataLength();
+                if (!comp.shouldCompress(data, dataOff, dataLen)) {
+                    dirty = 0;
+                    return false;
+                }
+
+                final int off = enc != null ? 4 + Smb2TransformHeader.TRANSFORM_HEADER_SIZE : 4;
+                final int prefixOff = off + Smb2CompressionContext.COMPRESSION_HEADER_SIZE;
+                final int prefixLen = request.encodeWithoutData(buffer, prefixOff);
+                // compression may use the whole range up to the size of the uncompressed message
+                dirty = Math.min(buffer.length, prefixOff + prefixLen + dataLen + Smb2EncryptionContext.AUTH_TAG_LENGTH);
+                if (log.isTraceEnabled()) {
+                    log.trace(request.toString());
+                    log.trace(Hexdump.toHexString(buffer, prefixOff, prefixLen));
+                }
+                final int limit = buffer.length - (enc != null ? Smb2EncryptionContext.AUTH_TAG_LENGTH : 0);
+                int n = comp.compress(buffer, off, prefixLen, data, dataOff, dataLen, limit);
+
+                if (n < 0) {
+                    // not worth it, send the message uncompressed
+                    n = prefixLen + dataLen;
+                    if (enc == null) {
+                        Encdec.enc_uint32be(n & 0xFFFFFF, buffer, prefixOff - 4);
+                        this.out.write(buffer, prefixOff - 4, 4 + prefixLen);
+                        this.out.write(data, dataOff, dataLen);
+                        this.out.flush();
+                        return true;
+                    }
+                    System.arraycopy(buffer, prefixOff, buffer, off, prefixLen);
+                    System.arraycopy(data, dataOff, buffer, off + prefixLen, dataLen);
+                } else if (log.isTraceEnabled()) {
+                    log.trace("Compressed message of size " + (prefixLen + dataLen) + " to " + n);
+                }
+
+                if (enc != null) {
+                    n = enc.encrypt(buffer, 4, n, request.getSessionId());
+                }
+                Encdec.enc_uint32be(n & 0xFFFFFF, buffer, 0); /* 4 byte session message header */
+                this.out.write(buffer, 0, 4 + n);
+                this.out.flush();
+                return true;
+            } finally {
+                this.outLock.unlock();
+            }
+        } finally {
+            bufferCache.releaseBuffer(buffer, dirty);
         }
     }
 
@@ -1101,10 +1558,9 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
         } catch (final Exception e) {
             log.warn("Failure decoding message, disconnecting transport", e);
             response.exception(e);
-            synchronized (response) {
-                response.notifyAll();
-            }
             throw e;
+        } finally {
+            releaseDecrypted();
         }
 
     }
@@ -1133,13 +1589,22 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
         }
 
         ServerMessageBlock2Response cur = (ServerMessageBlock2Response) response;
-        final byte[] buffer = getContext().getBufferCache().getBuffer();
+        if ((this.rbuf == null || this.rbufPlainCompressed) && cur.getEncryptionContext() != null) {
+            throw new IOException("Received unencrypted response to encrypted request");
+        }
+        if (nextCommand == 0 && this.rbuf == null && cur instanceof Smb2ReadResponse && size > Smb2ReadResponse.OVERHEAD) {
+            doRecvReadDirect((Smb2ReadResponse) cur, size);
+            return;
+        }
+        final byte[] buffer = getContext().getBufferCache().getBuffer(Math.min(size, maximumBufferSize));
+        int dirty = Smb2Constants.SMB2_HEADER_LENGTH;
         try {
             int rl = nextCommand != 0 ? nextCommand : size;
+            dirty = Math.max(dirty, rl);
 
             // read and decode first
             System.arraycopy(this.sbuf, 4, buffer, 0, Smb2Constants.SMB2_HEADER_LENGTH);
-            readn(this.in, buffer, Smb2Constants.SMB2_HEADER_LENGTH, rl - Smb2Constants.SMB2_HEADER_LENGTH);
+            readBody(buffer, Smb2Constants.SMB2_HEADER_LENGTH, rl - Smb2Constants.SMB2_HEADER_LENGTH);
 
             cur.setReadSize(rl);
             int len = cur.decode(buffer, 0);
@@ -1156,12 +1621,12 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
                 cur = (ServerMessageBlock2Response) cur.getNextResponse();
                 if (cur == null) {
                     log.warn("Response not properly set up");
-                    this.in.skip(size);
+                    skipBody(size);
                     break;
                 }
 
                 // read next header
-                readn(this.in, buffer, 0, Smb2Constants.SMB2_HEADER_LENGTH);
+                readBody(buffer, 0, Smb2Constants.SMB2_HEADER_LENGTH);
                 nextCommand = Encdec.dec_uint32le(buffer, 20);
 
                 if ((nextCommand != 0 ? nextCommand > maximumBufferSize : size > maximumBufferSize)) {
@@ -1176,7 +1641,8 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
                 }
 
                 cur.setReadSize(rl);
-                readn(this.in, buffer, Smb2Constants.SMB2_HEADER_LENGTH, rl - Smb2Constants.SMB2_HEADER_LENGTH);
+                dirty = Math.max(dirty, rl);
+                readBody(buffer, Smb2Constants.SMB2_HEADER_LENGTH, rl - Smb2Constants.SMB2_HEADER_LENGTH);
 
                 len = cur.decode(buffer, 0, true);
                 if (len > rl) {
@@ -1188,7 +1654,63 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
                 size -= rl;
             }
         } finally {
-            getContext().getBufferCache().releaseBuffer(buffer);
+            getContext().getBufferCache().releaseBuffer(buffer, dirty);
+        }
+    }
+
+    /**
+     * Receive a plain, non-compound read response
+     *
+     * The fixed part of the response is read first, if the data extends to the end of the message it is read from the
+     * socket straight into the output buffer of the request, otherwise the message is decoded from a buffer like any
+     * other response.
+     *
+     * @param response
+     * @param size
+     * @throws IOException
+     * @throws SMBProtocolDecodingException
+     */
+    private void doRecvReadDirect(final Smb2ReadResponse response, final int size) throws IOException, SMBProtocolDecodingException {
+        final BufferCache bufferCache = getContext().getBufferCache();
+        byte[] buffer = bufferCache.getBuffer(Smb2ReadResponse.OVERHEAD);
+        int dirty = Smb2ReadResponse.OVERHEAD;
+        try {
+            System.arraycopy(this.sbuf, 4, buffer, 0, Smb2Constants.SMB2_HEADER_LENGTH);
+            if (readn(this.in, buffer, Smb2Constants.SMB2_HEADER_LENGTH, 16) < 16) {
+                throw new EOFException("Unexpected EOF reading read response");
+            }
+
+            final int dataOffset = response.getDirectDataOffset(buffer, 0, size);
+            if (dataOffset >= 0 && dataOffset <= buffer.length) {
+                final int pad = dataOffset - Smb2ReadResponse.OVERHEAD;
+                final int dataLength = size - dataOffset;
+                dirty = dataOffset;
+                if (pad > 0 && readn(this.in, buffer, Smb2ReadResponse.OVERHEAD, pad) < pad) {
+                    throw new EOFException("Unexpected EOF reading read response");
+                }
+                if (readn(this.in, response.getOutputBuffer(), response.getOutputBufferOffset(), dataLength) < dataLength) {
+                    throw new EOFException("Unexpected EOF reading read response data");
+                }
+                response.setDirectDataOffset(dataOffset);
+                response.setReadSize(size);
+                response.decode(buffer, 0);
+                return;
+            }
+
+            // fall back to decoding the whole message from a buffer
+            final byte[] full = bufferCache.getBuffer(size);
+            System.arraycopy(buffer, 0, full, 0, Smb2ReadResponse.OVERHEAD);
+            bufferCache.releaseBuffer(buffer, dirty);
+            buffer = full;
+            dirty = size;
+            readn(this.in, buffer, Smb2ReadResponse.OVERHEAD, size - Smb2ReadResponse.OVERHEAD);
+            response.setReadSize(size);
+            final int len = response.decode(buffer, 0);
+            if (len > size) {
+                throw new IOException(String.format("WHAT? ( read %d decoded %d ): %s", size, len, response));
+            }
+        } finally {
+            bufferCache.releaseBuffer(buffer, dirty);
         }
     }
 
@@ -1199,12 +1721,15 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
      */
     private void doRecvSMB1(final CommonServerMessageBlock resp) throws IOException, SMBProtocolDecodingException {
         final byte[] buffer = getContext().getBufferCache().getBuffer();
+        int dirty = 4 + SMB1_HEADER_LENGTH;
         try {
             System.arraycopy(this.sbuf, 0, buffer, 0, 4 + SMB1_HEADER_LENGTH);
             final int size = Encdec.dec_uint16be(buffer, 2) & 0xFFFF;
             if (size < SMB1_HEADER_LENGTH + 1 || 4 + size > Math.min(0xFFFF, getContext().getConfig().getMaximumBufferSize())) {
                 throw new IOException("Invalid payload size: " + size);
             }
+            // READ_ANDX reads a fixed size parameter block and pad regardless of the size
+            dirty = Math.max(4 + size, 4 + SMB1_HEADER_LENGTH + 27 + 4);
             final int errorCode = Encdec.dec_uint32le(buffer, 9) & 0xFFFFFFFF;
             if (resp.getCommand() == ServerMessageBlock.SMB_COM_READ_ANDX
                     && (errorCode == 0 || errorCode == NtStatus.NT_STATUS_BUFFER_OVERFLOW)) {
@@ -1229,33 +1754,40 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
                 resp.decode(buffer, 4);
             }
         } finally {
-            getContext().getBufferCache().releaseBuffer(buffer);
+            getContext().getBufferCache().releaseBuffer(buffer, dirty);
         }
     }
 
     @Override
     protected void doSkip(final Long key) throws IOException {
-        synchronized (this.inLock) {
-            final int size = Encdec.dec_uint16be(this.sbuf, 2) & 0xFFFF;
-            if (size < 33 || 4 + size > this.getContext().getConfig().getReceiveBufferSize()) {
-                /* log message? */
-                log.warn("Flusing stream input");
-                this.in.skip(this.in.available());
-            } else {
-                final Response notification = createNotification(key);
-                if (notification != null) {
-                    log.debug("Parsing notification");
-                    doRecv(notification);
-                    handleNotification(notification);
-                    return;
-                }
-                log.warn("Skipping message " + key);
-                if (this.isSMB2()) {
-                    this.in.skip(size - Smb2Constants.SMB2_HEADER_LENGTH);
+        this.inLock.lock();
+        try {
+            try {
+                final int size = Encdec.dec_uint16be(this.sbuf, 2) & 0xFFFF;
+                if (this.rbuf == null && (size < 33 || 4 + size > this.getContext().getConfig().getReceiveBufferSize())) {
+                    /* log message? */
+                    log.warn("Flusing stream input");
+                    this.in.skip(this.in.available());
                 } else {
-                    this.in.skip(size - SmbConstants.SMB1_HEADER_LENGTH);
+                    final Response notification = createNotification(key);
+                    if (notification != null) {
+                        log.debug("Parsing notification");
+                        doRecv(notification);
+                        handleNotification(notification);
+                        return;
+                    }
+                    log.warn("Skipping message " + key);
+                    if (this.isSMB2()) {
+                        skipBody(size - Smb2Constants.SMB2_HEADER_LENGTH);
+                    } else {
+                        this.in.skip(size - SmbConstants.SMB1_HEADER_LENGTH);
+                    }
                 }
+            } finally {
+                releaseDecrypted();
             }
+        } finally {
+            this.inLock.unlock();
         }
     }
 
@@ -1263,9 +1795,61 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
      * @param notification
      */
     protected void handleNotification(final Response notification) {
+        if (notification instanceof final Smb2LeaseBreakNotification lbn) {
+            handleLeaseBreak(lbn);
+            return;
+        }
         log.info("Received notification " + notification);
     }
 
+    /**
+     * Apply a lease break and acknowledge it
+     *
+     * Cached data is dropped immediately, closing cached handles and sending the acknowledgment cannot be done on the
+     * receiving thread and is done asynchronously.
+     *
+     * @param notification
+     */
+    private void handleLeaseBreak(final Smb2LeaseBreakNotification notification) {
+        final SmbTransportImpl primary = this.primaryTransport;
+        if (primary != null) {
+            primary.handleLeaseBreak(notification);
+            return;
+        }
+        final SmbLeaseManager.Lease lease = this.leaseManager.leaseBroken(notification.getLeaseKey(), notification.getNewLeaseState(),
+                notification.getNewEpoch());
+        if (lease == null) {
+            log.debug("Received lease break for unknown lease " + notification.getLeaseKey());
+            return;
+        }
+
+        this.leaseBreakExecutor.execute(() -> {
+            if (!Smb2LeaseState.canCacheHandle(notification.getNewLeaseState())) {
+                final SmbFileHandleImpl fh = this.leaseManager.unpark(lease);
+                if (fh != null) {
+                    try {
+                        fh.closeParked();
+                    } catch (final Exception e) {
+                        log.debug("Failed to close cached handle", e);
+                    }
+                }
+            }
+            if (notification.isAckRequired()) {
+                final SmbTreeHandleImpl tree = this.leaseManager.getTree(lease);
+                if (tree == null) {
+                    return;
+                }
+                try (SmbTreeHandleImpl th = tree.acquire()) {
+                    th.send(new Smb2LeaseBreakAcknowledgment(getContext().getConfig(), notification.getLeaseKey(),
+                            notification.getNewLeaseState()), RequestParam.NO_RETRY);
+                } catch (final Exception e) {
+                    // lease may already have been released by closing the last handle
+                    log.debug("Failed to acknowledge lease break", e);
+                }
+            }
+        });
+    }
+
     /**
      * @param key
      * @return
@@ -1282,6 +1866,13 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
             }
             final int cmd = Encdec.dec_uint16le(this.sbuf, 4 + 12) & 0xFFFF;
             if (cmd == 0x12) {
+                // oplock and lease breaks share the command, need the structure size to tell them apart
+                if (!bufferBody() || this.rbufLen - this.rbufPos < 2) {
+                    return new Smb2OplockBreakNotification(getContext().getConfig());
+                }
+                if (Encdec.dec_uint16le(this.rbuf, this.rbufPos) == Smb2LeaseBreakNotification.STRUCTURE_SIZE) {
+                    return new Smb2LeaseBreakNotification(getContext().getConfig());
+                }
                 return new Smb2OplockBreakNotification(getContext().getConfig());
             }
         } else {
@@ -1493,6 +2084,110 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
         return response;
     }
 
+    /**
+     * Send an SMB2 request or compound without waiting for the response
+     *
+     * Credits for the request are taken from the shared credit pool, they are returned when the
+     * response is collected via {@link #waitForResponse(CommonServerMessageBlockRequest, CommonServerMessageBlockResponse)}.
+     *
+     * @param request
+     *            request, must already be set up for the session/tree, compounds must fit into a single message
+     * @param params
+     *            request parameters, {@link RequestParam#NO_CREDIT_WAIT} to not block when no credits are available
+     * @return the response to wait for, null if no credits were available and NO_CREDIT_WAIT was requested
+     * @throws SmbException
+     */
+    @SuppressWarnings("unchecked")
+    <T extends CommonServerMessageBlockResponse> T sendAsync(final CommonServerMessageBlockRequest request, final Set<RequestParam> params)
+            throws SmbException {
+        ensureConnected();
+        if (!this.smb2 || !(request instanceof ServerMessageBlock2Request)) {
+            throw new SmbUnsupportedOperationException("Asynchronous requests require SMB2");
+        }
+
+        this.negotiated.setupRequest(request);
+        final T response = (T) ((ServerMessageBlock2Request<?>) request).initResponse(getContext());
+
+        // compounds are sent as a whole, they cannot be split when running short of credits
+        int cost = 0;
+        int size = 0;
+        for (CommonServerMessageBlockRequest cur = request; cur != null; cur = cur.getNext()) {
+            cost += cur.getCreditCost();
+            size += cur.size();
+        }
+        final int maxSize = getContext().getConfig().getMaximumBufferSize();
+        if (request.getNext() != null && size >= maxSize) {
+            throw new SmbException(String.format("Compound request size %d exceeds allowable size %d: %s", size, maxSize, request));
+        }
+        try {
+            if (params.contains(RequestParam.NO_CREDIT_WAIT)) {
+                if (!this.credits.tryAcquire(cost)) {
+                    return null;
+                }
+            } else if (params.contains(RequestParam.NO_TIMEOUT)) {
+                this.credits.acquire(cost);
+            } else if (!this.credits.tryAcquire(cost, getResponseTimeout(request), TimeUnit.MILLISECONDS)) {
+                throw new SmbException("Failed to acquire credits in time");
+            }
+        } catch (final InterruptedException e) {
+            throw new SmbException("Interrupted while acquiring credits", e);
+        }
+
+        request.setRequestCredits(Math.max(1, this.desiredCredits - this.credits.availablePermits()));
+        try {
+            if (log.isTraceEnabled()) {
+                log.trace("Sending async " + request);
+            }
+            return super.sendAsync(request, response, params);
+        } catch (final IOException ioe) {
+            this.credits.release(cost);
+            throw new SmbException(ioe.getMessage(), ioe);
+        }
+    }
+
+    /**
+     * Wait for the response to a request sent via {@link #sendAsync(CommonServerMessageBlockRequest, Set)}
+     *
+     * @param request
+     * @param response
+     * @return the received response
+     * @throws SmbException
+     *             if the request failed or the response carries an error status
+     */
+    <T extends CommonServerMessageBlockResponse> T waitForResponse(final CommonServerMessageBlockRequest request, final T response)
+            throws SmbException {
+        try {
+            super.waitForResponse(request, response);
+        } catch (final IOException ioe) {
+            throw new SmbException(ioe.getMessage(), ioe);
+        } finally {
+            int grantedCredits = 0;
+            boolean received = false;
+            CommonServerMessageBlockResponse resp = response;
+            CommonServerMessageBlockRequest cur = request;
+            while (resp != null) {
+                if (resp.isReceived() && !resp.isError()) {
+                    grantedCredits += resp.getGrantedCredits();
+                    received = true;
+                }
+                cur = cur.getNext();
+                resp = cur != null ? cur.getResponse() : null;
+            }
+            if (received) {
+                if (grantedCredits == 0 && !isDisconnected()) {
+                    log.debug("Server " + this + " returned zero credits for " + request);
+                }
+                this.credits.release(grantedCredits);
+            }
+        }
+
+        if (!response.isReceived()) {
+            throw new SmbException("No response", response.getException());
+        }
+        checkStatus(request, response);
+        return response;
+    }
+
     /**
      * @param request
      * @param response
@@ -1574,22 +2269,20 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
                 /*
                  * Receive multiple fragments
                  */
-                synchronized (resp) {
-                    while (!resp.isReceived() || resp.hasMoreElements()) {
-                        if (!params.contains(RequestParam.NO_TIMEOUT)) {
-                            resp.wait(timeout);
-                            timeout = resp.getExpiration() - System.currentTimeMillis();
-                            if (timeout <= 0) {
-                                throw new TransportException(this + " timedout waiting for response to " + req);
-                            }
-                        } else {
-                            resp.wait();
-                            if (log.isTraceEnabled()) {
-                                log.trace("Wait returned " + isDisconnected());
-                            }
-                            if (isDisconnected()) {
-                                throw new EOFException("Transport closed while waiting for result");
-                            }
+                while (!resp.isReceived() || resp.hasMoreElements()) {
+                    if (!params.contains(RequestParam.NO_TIMEOUT)) {
+                        resp.awaitSignal(timeout);
+                        timeout = resp.getExpiration() - System.currentTimeMillis();
+                        if (timeout <= 0) {
+                            throw new TransportException(this + " timedout waiting for response to " + req);
+                        }
+                    } else {
+                        resp.awaitSignal(0);
+                        if (log.isTraceEnabled()) {
+                            log.trace("Wait returned " + isDisconnected());
+                        }
+                        if (isDisconnected()) {
+                            throw new EOFException("Transport closed while waiting for result");
                         }
                     }
                 }
@@ -1657,10 +2350,14 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
             }
 
             DfsReferralDataImpl cur = null;
-            final long expiration = System.currentTimeMillis() + ctx.getConfig().getDfsTtl() * 1000;
+            final long now = System.currentTimeMillis();
+            final long maxTtl = ctx.getConfig().getDfsTtl();
             final Referral[] refs = dfsResp.getReferrals();
             for (int di = 0; di < rn; di++) {
-                final DfsReferralDataImpl dr = DfsReferralDataImpl.fromReferral(refs[di], path, expiration, dfsResp.getPathConsumed());
+                // honor the TTL the server assigned to the referral, bounded by the configured cache TTL
+                final long ttl = refs[di].getTtl() > 0 ? Math.min(refs[di].getTtl(), maxTtl) : maxTtl;
+                final DfsReferralDataImpl dr =
+                        DfsReferralDataImpl.fromReferral(refs[di], path, now + ttl * 1000, dfsResp.getPathConsumed());
                 dr.setDomain(targetDomain);
 
                 if ((dfsResp.getTflags() & 0x2) == 0 && (dr.getFlags() & 0x2) == 0) {
@@ -1681,6 +2378,56 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
         }
     }
 
+    void sessionSetupCompleted(final long nanos) {
+        this.sessionSetups.increment();
+        this.sessionSetupTime.add(nanos);
+        this.sessionSetupTimeMax.accumulateAndGet(nanos, Math::max);
+    }
+
+    @Override
+    public long getSessionSetupCount() {
+        return this.sessionSetups.sum();
+    }
+
+    @Override
+    public long getSessionSetupTime() {
+        return this.sessionSetupTime.sum();
+    }
+
+    @Override
+    public long getSessionSetupTimeMax() {
+        return this.sessionSetupTimeMax.get();
+    }
+
+    /**
+     * @return server side copy limits of the server, null if not yet known
+     */
+    SmbCopyUtil.ChunkLimits getCopyChunkLimits() {
+        return this.copyChunkLimits;
+    }
+
+    /**
+     * @param limits
+     *            server side copy limits accepted or announced by the server
+     */
+    void setCopyChunkLimits(final SmbCopyUtil.ChunkLimits limits) {
+        this.copyChunkLimits = limits;
+    }
+
+    /**
+     * @return whether a server side copy between different shares failed before
+     */
+    boolean isCrossShareCopyUnsupported() {
+        return this.crossShareCopyUnsupported;
+    }
+
+    /**
+     * Disable server side copies between different shares on this connection
+     */
+    void setCrossShareCopyUnsupported() {
+        this.crossShareCopyUnsupported = true;
+    }
+
     byte[] getPreauthIntegrityHash() {
         return this.preauthIntegrityHash;
     }
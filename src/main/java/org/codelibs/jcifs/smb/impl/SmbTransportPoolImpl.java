@@ -18,14 +18,22 @@
 package org.codelibs.jcifs.smb.impl;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.codelibs.jcifs.smb.Address;
 import org.codelibs.jcifs.smb.CIFSContext;
@@ -56,11 +64,51 @@ public class SmbTransportPoolImpl implements SmbTransportPool {
 
     private static final Logger log = LoggerFactory.getLogger(SmbTransportPoolImpl.class);
 
-    private final List<SmbTransportImpl> connections = new LinkedList<>();
-    private final List<SmbTransportImpl> nonPooledConnections = new LinkedList<>();
-    private final ConcurrentLinkedQueue<SmbTransportImpl> toRemove = new ConcurrentLinkedQueue<>();
+    private static final ScheduledExecutorService SWEEPER = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread t = new Thread(r, "JCIFS-TransportSweeper");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final ConcurrentHashMap<PoolKey, CopyOnWriteArrayList<SmbTransportImpl>> index = new ConcurrentHashMap<>();
+    private final Map<SmbTransportImpl, PoolKey> connections = new ConcurrentHashMap<>();
+    private final Set<SmbTransportImpl> nonPooledConnections = ConcurrentHashMap.newKeySet();
+    private final AtomicReference<ScheduledFuture<?>> sweepTask = new AtomicReference<>();
     final Map<String, Integer> failCounts = new ConcurrentHashMap<>();
 
+    /**
+     * Index key for pooled connections
+     *
+     * Only covers the parts of {@link SmbTransportImpl#matches(Address, int, InetAddress, int, String)} that cannot
+     * change during the lifetime of a connection, the remaining checks are done on the few candidates per key.
+     */
+    private static final class PoolKey {
+
+        final Address address;
+        final InetAddress localAddr;
+        final int localPort;
+
+        PoolKey(final Address address, final InetAddress localAddr, final int localPort) {
+            this.address = address;
+            this.localAddr = localAddr;
+            this.localPort = localPort;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof PoolKey)) {
+                return false;
+            }
+            final PoolKey o = (PoolKey) obj;
+            return this.address.equals(o.address) && Objects.equals(this.localAddr, o.localAddr) && this.localPort == o.localPort;
+        }
+
+        @Override
+        public int hashCode() {
+            return (this.address.hashCode() * 31 + Objects.hashCode(this.localAddr)) * 31 + this.localPort;
+        }
+    }
+
     @Override
     public SmbTransportImpl getSmbTransport(final CIFSContext tc, final Address address, final int port, final boolean nonPooled) {
         return getSmbTransport(tc, address, port, tc.getConfig().getLocalAddr(), tc.getConfig().getLocalPort(), null, nonPooled);
@@ -85,28 +133,53 @@ public class SmbTransportPoolImpl implements SmbTransportPool {
         if (port <= 0) {
             port = SmbConstants.DEFAULT_PORT;
         }
-        synchronized (this.connections) {
-            cleanup();
-            if (log.isTraceEnabled()) {
-                log.trace("Exclusive " + nonPooled + " enforced signing " + forceSigning);
+        if (log.isTraceEnabled()) {
+            log.trace("Exclusive " + nonPooled + " enforced signing " + forceSigning);
+        }
+        if (nonPooled) {
+            final SmbTransportImpl conn = newTransport(tc, address, port, localAddr, localPort, forceSigning);
+            if (log.isDebugEnabled()) {
+                log.debug("New transport connection " + conn);
             }
-            if (!nonPooled && tc.getConfig().getSessionLimit() != 1) {
-                final SmbTransportImpl existing = findConnection(tc, address, port, localAddr, localPort, hostName, forceSigning, false);
-                if (existing != null) {
-                    return existing;
+            this.nonPooledConnections.add(conn);
+            return conn;
+        }
+
+        final int p = port;
+        final boolean reuse = tc.getConfig().getSessionLimit() != 1;
+        final PoolKey key = new PoolKey(address, localAddr, localPort);
+        final SmbTransportImpl[] result = new SmbTransportImpl[1];
+        // find or create in one step per key, concurrent misses must not open several connections
+        this.index.compute(key, (k, list) -> {
+            if (list != null && reuse) {
+                result[0] = findConnection(tc, list, address, p, localAddr, localPort, hostName, forceSigning, false);
+                if (result[0] != null) {
+                    return list;
                 }
             }
-            final SmbTransportImpl conn = new SmbTransportImpl(tc, address, port, localAddr, localPort, forceSigning);
+            final SmbTransportImpl conn = newTransport(tc, address, p, localAddr, localPort, forceSigning);
             if (log.isDebugEnabled()) {
                 log.debug("New transport connection " + conn);
             }
-            if (nonPooled) {
-                this.nonPooledConnections.add(conn);
-            } else {
-                this.connections.add(0, conn);
+            if (list == null) {
+                list = new CopyOnWriteArrayList<>();
             }
-            return conn;
-        }
+            // newest first
+            list.add(0, conn);
+            this.connections.put(conn, key);
+            result[0] = conn;
+            return list;
+        });
+        scheduleSweep(tc);
+        return result[0];
+    }
+
+    /**
+     * Create a transport connection, it is connected on first use
+     */
+    SmbTransportImpl newTransport(final CIFSContext tc, final Address address, final int port, final InetAddress localAddr,
+            final int localPort, final boolean forceSigning) {
+        return new SmbTransportImpl(tc, address, port, localAddr, localPort, forceSigning);
     }
 
     /**
@@ -121,53 +194,84 @@ public class SmbTransportPoolImpl implements SmbTransportPool {
      */
     private SmbTransportImpl findConnection(final CIFSContext tc, final Address address, final int port, final InetAddress localAddr,
             final int localPort, final String hostName, final boolean forceSigning, final boolean connectedOnly) {
-        for (final SmbTransportImpl conn : this.connections) {
-            if (conn.matches(address, port, localAddr, localPort, hostName)
-                    && (tc.getConfig().getSessionLimit() == 0 || conn.getNumSessions() < tc.getConfig().getSessionLimit())) {
-                try {
-                    if (conn.isFailed() || connectedOnly && conn.isDisconnected()) {
-                        continue;
-                    }
-
-                    if (forceSigning && !conn.isSigningEnforced()) {
-                        // if signing is enforced and was not on the connection, skip
-                        if (log.isTraceEnabled()) {
-                            log.debug("Cannot reuse, signing enforced but connection does not have it enabled " + conn);
-                        }
-                        continue;
-                    }
-
-                    if (!forceSigning && !tc.getConfig().isSigningEnforced() && conn.isSigningEnforced()
-                            && !conn.getNegotiateResponse().isSigningRequired()) {
-                        // if signing is not enforced, dont use connections that have signing enforced
-                        // for purposes that dont require it.
-                        if (log.isTraceEnabled()) {
-                            log.debug("Cannot reuse, signing enforced on connection " + conn);
-                        }
-                        continue;
-                    }
-
-                    if (!conn.getNegotiateResponse().canReuse(tc, forceSigning)) {
-                        if (log.isTraceEnabled()) {
-                            log.trace("Cannot reuse, different config " + conn);
-                        }
-                        continue;
-                    }
-                } catch (final CIFSException e) {
-                    log.debug("Error while checking for reuse", e);
-                    continue;
-                }
+        final List<SmbTransportImpl> candidates = this.index.get(new PoolKey(address, localAddr, localPort));
+        if (candidates == null) {
+            return null;
+        }
+        return findConnection(tc, candidates, address, port, localAddr, localPort, hostName, forceSigning, connectedOnly);
+    }
 
+    private static SmbTransportImpl findConnection(final CIFSContext tc, final List<SmbTransportImpl> candidates, final Address address,
+            final int port, final InetAddress localAddr, final int localPort, final String hostName, final boolean forceSigning,
+            final boolean connectedOnly) {
+        final int sessionLimit = tc.getConfig().getSessionLimit();
+        final int connectionLimit = tc.getConfig().getServerConnectionLimit();
+        SmbTransportImpl leastLoaded = null;
+        int live = 0;
+        for (final SmbTransportImpl conn : candidates) {
+            if (!conn.matches(address, port, localAddr, localPort, hostName) || !canReuse(tc, conn, forceSigning, connectedOnly)) {
+                continue;
+            }
+            live++;
+            final int numSessions = conn.getNumSessions();
+            if (sessionLimit == 0 || numSessions < sessionLimit) {
                 if (log.isTraceEnabled()) {
                     log.trace("Reusing transport connection " + conn);
                 }
                 return conn.acquire();
             }
+            if (leastLoaded == null || numSessions < leastLoaded.getNumSessions()) {
+                leastLoaded = conn;
+            }
         }
 
+        if (leastLoaded != null && connectionLimit > 0 && live >= connectionLimit) {
+            if (log.isDebugEnabled()) {
+                log.debug("Connection limit reached, sharing transport connection " + leastLoaded);
+            }
+            return leastLoaded.acquire();
+        }
         return null;
     }
 
+    private static boolean canReuse(final CIFSContext tc, final SmbTransportImpl conn, final boolean forceSigning,
+            final boolean connectedOnly) {
+        try {
+            if (conn.isFailed() || connectedOnly && conn.isDisconnected()) {
+                return false;
+            }
+
+            if (forceSigning && !conn.isSigningEnforced()) {
+                // if signing is enforced and was not on the connection, skip
+                if (log.isTraceEnabled()) {
+                    log.debug("Cannot reuse, signing enforced but connection does not have it enabled " + conn);
+                }
+                return false;
+            }
+
+            if (!forceSigning && !tc.getConfig().isSigningEnforced() && conn.isSigningEnforced()
+                    && !conn.getNegotiateResponse().isSigningRequired()) {
+                // if signing is not enforced, dont use connections that have signing enforced
+                // for purposes that dont require it.
+                if (log.isTraceEnabled()) {
+                    log.debug("Cannot reuse, signing enforced on connection " + conn);
+                }
+                return false;
+            }
+
+            if (!conn.getNegotiateResponse().canReuse(tc, forceSigning)) {
+                if (log.isTraceEnabled()) {
+                    log.trace("Cannot reuse, different config " + conn);
+                }
+                return false;
+            }
+        } catch (final CIFSException e) {
+            log.debug("Error while checking for reuse", e);
+            return false;
+        }
+        return true;
+    }
+
     @Override
     public SmbTransportImpl getSmbTransport(final CIFSContext tf, final String name, final int port, final boolean exclusive,
             final boolean forceSigning) throws IOException {
@@ -190,13 +294,11 @@ public class SmbTransportPoolImpl implements SmbTransportPool {
             return Integer.compare(fail1, fail2);
         });
 
-        synchronized (this.connections) {
-            for (final Address addr : addrs) {
-                final SmbTransportImpl found = findConnection(tf, addr, port, tf.getConfig().getLocalAddr(), tf.getConfig().getLocalPort(),
-                        name, forceSigning, true);
-                if (found != null) {
-                    return found;
-                }
+        for (final Address addr : addrs) {
+            final SmbTransportImpl found = findConnection(tf, addr, port, tf.getConfig().getLocalAddr(), tf.getConfig().getLocalPort(), name,
+                    forceSigning, true);
+            if (found != null) {
+                return found;
             }
         }
 
@@ -237,32 +339,67 @@ public class SmbTransportPoolImpl implements SmbTransportPool {
      * @return whether (non-exclusive) connection is in the pool
      */
     public boolean contains(final SmbTransport trans) {
-        synchronized (this.connections) {
-            cleanup();
-            return this.connections.contains(trans);
-        }
+        return this.connections.containsKey(trans);
     }
 
     @Override
     public void removeTransport(final SmbTransport trans) {
         if (log.isDebugEnabled()) {
-            log.debug("Scheduling transport connection for removal " + trans + " (" + System.identityHashCode(trans) + ")");
+            log.debug("Removing transport connection " + trans + " (" + System.identityHashCode(trans) + ")");
+        }
+        final SmbTransportImpl conn = (SmbTransportImpl) trans;
+        this.nonPooledConnections.remove(conn);
+        final PoolKey key = this.connections.remove(conn);
+        if (key != null) {
+            this.index.computeIfPresent(key, (k, list) -> {
+                list.remove(conn);
+                return list.isEmpty() ? null : list;
+            });
         }
-        this.toRemove.add((SmbTransportImpl) trans);
     }
 
-    private void cleanup() {
-        synchronized (this.connections) {
-            SmbTransportImpl trans;
-            while ((trans = this.toRemove.poll()) != null) {
-
+    /**
+     * Remove pooled transports that are neither connected nor in use
+     *
+     * Such transports are left behind when a connection attempt fails before the transport could remove itself, or
+     * when a transport was created but never used.
+     */
+    void sweep() {
+        for (final SmbTransportImpl conn : this.connections.keySet()) {
+            if (conn.getUsageCount() == 0 && conn.isFailed()) {
                 if (log.isDebugEnabled()) {
-                    log.debug("Removing transport connection " + trans + " (" + System.identityHashCode(trans) + ")");
+                    log.debug("Sweeping unused transport connection " + conn);
                 }
-                this.connections.remove(trans);
-                this.nonPooledConnections.remove(trans);
+                removeTransport(conn);
             }
         }
+        this.nonPooledConnections.removeIf(conn -> conn.getUsageCount() == 0 && conn.isFailed());
+    }
+
+    private void scheduleSweep(final CIFSContext tc) {
+        final int interval = tc.getConfig().getTransportSweepInterval();
+        if (interval <= 0 || this.sweepTask.get() != null) {
+            return;
+        }
+        // do not keep an abandoned pool alive
+        final WeakReference<SmbTransportPoolImpl> ref = new WeakReference<>(this);
+        final AtomicReference<ScheduledFuture<?>> self = new AtomicReference<>();
+        final ScheduledFuture<?> task = SWEEPER.scheduleWithFixedDelay(() -> {
+            final SmbTransportPoolImpl pool = ref.get();
+            if (pool == null) {
+                self.get().cancel(false);
+                return;
+            }
+            try {
+                pool.sweep();
+            } catch (final RuntimeException e) {
+                log.warn("Failed to sweep transport pool", e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+        self.set(task);
+        if (!this.sweepTask.compareAndSet(null, task)) {
+            task.cancel(false);
+        }
     }
 
     /**
@@ -274,15 +411,17 @@ public class SmbTransportPoolImpl implements SmbTransportPool {
     public boolean close() throws CIFSException {
         boolean inUse = false;
 
-        List<SmbTransportImpl> toClose;
-        synchronized (this.connections) {
-            cleanup();
-            log.debug("Closing pool");
-            toClose = new LinkedList<>(this.connections);
-            toClose.addAll(this.nonPooledConnections);
-            this.connections.clear();
-            this.nonPooledConnections.clear();
+        final ScheduledFuture<?> task = this.sweepTask.getAndSet(null);
+        if (task != null) {
+            task.cancel(false);
         }
+
+        log.debug("Closing pool");
+        final List<SmbTransportImpl> toClose = new ArrayList<>(this.connections.keySet());
+        toClose.addAll(this.nonPooledConnections);
+        this.connections.clear();
+        this.nonPooledConnections.clear();
+        this.index.clear();
         for (final SmbTransportImpl conn : toClose) {
             try {
                 inUse |= conn.disconnect(false, false);
@@ -290,9 +429,6 @@ public class SmbTransportPoolImpl implements SmbTransportPool {
                 log.warn("Failed to close connection", e);
             }
         }
-        synchronized (this.connections) {
-            cleanup();
-        }
         return inUse;
     }
 
@@ -360,6 +360,16 @@ class SmbTreeConnection {
         throw new SmbException("All attempts failed, but no exception");
     }
 
+    <T extends CommonServerMessageBlockResponse> T sendAsync(final CommonServerMessageBlockRequest request, final Set<RequestParam> params)
+            throws CIFSException {
+        try (SmbTreeImpl t = getTree()) {
+            if (t == null) {
+                throw new CIFSException("Failed to get tree connection");
+            }
+            return t.sendAsync(request, params);
+        }
+    }
+
     private <T extends CommonServerMessageBlockResponse> T send0(final SmbResourceLocatorImpl loc,
             final CommonServerMessageBlockRequest request, final T response, final Set<RequestParam> params)
             throws CIFSException, DfsReferral {
@@ -819,6 +829,18 @@ class SmbTreeConnection {
         }
     }
 
+    /**
+     * Only call this method while holding a tree handle
+     *
+     * @return whether request paths on this tree may need to be rewritten for DFS
+     * @throws SmbException
+     */
+    boolean isPossiblyDfs() throws SmbException {
+        try (SmbTreeImpl t = getTree()) {
+            return t.isInDomainDfs() || t.isPossiblyDfs();
+        }
+    }
+
     /**
      *
      * Only call this method while holding a tree handle
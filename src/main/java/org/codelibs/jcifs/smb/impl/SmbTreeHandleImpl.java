@@ -17,7 +17,10 @@
  */
 package org.codelibs.jcifs.smb.impl;
 
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.codelibs.jcifs.smb.CIFSException;
@@ -132,6 +135,65 @@ class SmbTreeHandleImpl implements SmbTreeHandleInternal {
         return this.treeConnection.send(this.resourceLoc, request, response, params);
     }
 
+    /**
+     * Send a request without waiting for the response
+     *
+     * Only supported with SMB2, the tree must already be connected. Pending responses must be collected using
+     * {@link #waitForResponse(CommonServerMessageBlockRequest, CommonServerMessageBlockResponse)}.
+     *
+     * @param request
+     * @param params
+     * @return the pending response, null if no credits were available and {@link RequestParam#NO_CREDIT_WAIT} was
+     *         requested
+     * @throws CIFSException
+     */
+    public <T extends CommonServerMessageBlockResponse> T sendAsync(final org.codelibs.jcifs.smb.internal.Request<T> request,
+            final RequestParam... params) throws CIFSException {
+        return this.treeConnection.sendAsync((CommonServerMessageBlockRequest) request,
+                params.length == 0 ? EnumSet.noneOf(RequestParam.class) : EnumSet.copyOf(Arrays.asList(params)));
+    }
+
+    /**
+     * Send a request, the returned future is completed once the response has been received
+     *
+     * Only supported with SMB2, the tree must already be connected. Compounds are supported as long as they fit into a
+     * single message, the future then completes once all responses have been received.
+     *
+     * The future is usually completed on the transport thread, dependent actions therefore must not block and must
+     * use one of the asynchronous variants (e.g. {@link CompletableFuture#thenComposeAsync(java.util.function.Function)})
+     * if they send further requests.
+     *
+     * @param request
+     * @param params
+     * @return future for the response, null if no credits were available and {@link RequestParam#NO_CREDIT_WAIT} was
+     *         requested
+     * @throws CIFSException
+     *             if sending the request failed
+     */
+    public <T extends CommonServerMessageBlockResponse> CompletableFuture<T> sendFuture(final org.codelibs.jcifs.smb.internal.Request<T> request,
+            final RequestParam... params) throws CIFSException {
+        final T response = sendAsync(request, params);
+        if (response == null) {
+            return null;
+        }
+        return new SmbPendingResponse<>(this, (CommonServerMessageBlockRequest) request, response).start();
+    }
+
+    /**
+     * Wait for the response to a request sent via {@link #sendAsync(org.codelibs.jcifs.smb.internal.Request, RequestParam...)}
+     *
+     * @param request
+     * @param response
+     * @return the received response
+     * @throws CIFSException
+     */
+    public <T extends CommonServerMessageBlockResponse> T waitForResponse(final CommonServerMessageBlockRequest request, final T response)
+            throws CIFSException {
+        try (SmbSessionImpl session = this.treeConnection.getSession()) {
+            return session.waitForResponse(request, response);
+        }
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -256,6 +318,42 @@ class SmbTreeHandleImpl implements SmbTreeHandleInternal {
         return this.treeConnection.isSame(((SmbTreeHandleImpl) th).treeConnection);
     }
 
+    /**
+     * @return whether request paths on this tree may need to be rewritten for DFS
+     * @throws SmbException
+     */
+    public boolean isPossiblyDfs() throws SmbException {
+        return this.treeConnection.isPossiblyDfs();
+    }
+
+    /**
+     * Start building a compound request
+     *
+     * DFS path resolution is only applied to the first request of a compound, later requests must use paths that do
+     * not need to be resolved, see {@link #isPossiblyDfs()}.
+     *
+     * @return a new compound builder for this tree
+     * @throws SmbUnsupportedOperationException
+     *             if the tree is not connected using SMB2
+     */
+    public SmbCompoundBuilder compound() throws SmbUnsupportedOperationException {
+        if (!isSMB2()) {
+            throw new SmbUnsupportedOperationException("Compound requests are only supported with SMB2");
+        }
+        return new SmbCompoundBuilder(this);
+    }
+
+    /**
+     * @param th
+     *            other tree handle
+     * @return whether both trees are connected through the same session
+     */
+    public boolean isSameSession(final SmbTreeHandleImpl th) {
+        try (SmbSessionImpl session = getSession(); SmbSessionImpl other = th.getSession()) {
+            return session != null && session == other;
+        }
+    }
+
     @Override
     public int getSendBufferSize() throws SmbException {
         try (SmbSessionImpl session = this.treeConnection.getSession(); SmbTransportImpl transport = session.getTransport()) {
@@ -284,6 +382,18 @@ class SmbTreeHandleImpl implements SmbTreeHandleInternal {
         }
     }
 
+    /**
+     * @return the lease manager of the connection, null if leases are not used
+     */
+    SmbLeaseManager getLeaseManager() {
+        try (SmbSessionImpl session = this.treeConnection.getSession(); SmbTransportImpl transport = session.getTransport()) {
+            return transport.getLeaseManager();
+        } catch (final SmbException e) {
+            log.debug("Failed to connect for determining lease support", e);
+            return null;
+        }
+    }
+
     /**
      * @return whether this tree handle uses SMB2
      */
@@ -53,6 +53,7 @@ import org.codelibs.jcifs.smb.internal.smb1.trans.SmbComTransaction;
 import org.codelibs.jcifs.smb.internal.smb1.trans2.Trans2FindFirst2;
 import org.codelibs.jcifs.smb.internal.smb1.trans2.Trans2FindFirst2Response;
 import org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2;
+import org.codelibs.jcifs.smb.internal.smb2.Smb2EncryptionContext;
 import org.codelibs.jcifs.smb.internal.smb2.ioctl.Smb2IoctlRequest;
 import org.codelibs.jcifs.smb.internal.smb2.ioctl.Smb2IoctlResponse;
 import org.codelibs.jcifs.smb.internal.smb2.ioctl.ValidateNegotiateInfoRequest;
@@ -60,6 +61,7 @@ import org.codelibs.jcifs.smb.internal.smb2.ioctl.ValidateNegotiateInfoResponse;
 import org.codelibs.jcifs.smb.internal.smb2.nego.Smb2NegotiateRequest;
 import org.codelibs.jcifs.smb.internal.smb2.nego.Smb2NegotiateResponse;
 import org.codelibs.jcifs.smb.internal.smb2.tree.Smb2TreeConnectRequest;
+import org.codelibs.jcifs.smb.internal.smb2.tree.Smb2TreeConnectResponse;
 import org.codelibs.jcifs.smb.internal.smb2.tree.Smb2TreeDisconnectRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -85,6 +87,7 @@ class SmbTreeImpl implements SmbTreeInternal {
     private volatile int tid = -1;
     private volatile String service = "?????";
     private volatile boolean inDfs, inDomainDfs;
+    private volatile boolean encryptData;
     private volatile long treeNum; // used by SmbFile.isOpen
 
     private final AtomicLong usageCount = new AtomicLong(0);
@@ -424,6 +427,7 @@ class SmbTreeImpl implements SmbTreeInternal {
             String svc = null;
             final int t = this.tid;
             request.setTid(t);
+            setupEncryption(sess, request);
 
             if (!transport.isSMB2()) {
                 final ServerMessageBlock req = (ServerMessageBlock) request;
@@ -472,6 +476,44 @@ class SmbTreeImpl implements SmbTreeInternal {
         }
     }
 
+    /**
+     * Send a request on this already connected tree without waiting for the response
+     *
+     * @param request
+     * @param params
+     * @return the pending response, null if no credits were available and {@link RequestParam#NO_CREDIT_WAIT} was
+     *         requested
+     * @throws CIFSException
+     */
+    <T extends CommonServerMessageBlockResponse> T sendAsync(final CommonServerMessageBlockRequest request, final Set<RequestParam> params)
+            throws CIFSException {
+        try (SmbSessionImpl sess = getSession()) {
+            if (!isConnected()) {
+                throw new SmbException("Tree is not connected");
+            }
+            request.setTid(this.tid);
+            setupEncryption(sess, request);
+            return sess.sendAsync(request, params);
+        }
+    }
+
+    /**
+     * Encrypt requests to shares that require it
+     *
+     * @param sess
+     * @param request
+     * @throws SmbException
+     */
+    private void setupEncryption(final SmbSessionImpl sess, final CommonServerMessageBlockRequest request) throws SmbException {
+        if (this.encryptData && request instanceof final ServerMessageBlock2 r2 && r2.getEncryptionContext() == null) {
+            final Smb2EncryptionContext enc = sess.getEncryptionContext();
+            if (enc == null) {
+                throw new SmbException("Share requires encryption, but encryption is not available");
+            }
+            r2.setEncryptionContext(enc);
+        }
+    }
+
     /**
      * @param transport
      * @param request
@@ -646,6 +688,11 @@ class SmbTreeImpl implements SmbTreeInternal {
 
         this.service = rsvc;
         this.inDfs = response.isShareDfs();
+        this.encryptData = response instanceof final Smb2TreeConnectResponse r2
+                && (r2.getShareFlags() & Smb2TreeConnectResponse.SMB2_SHAREFLAG_ENCRYPT_DATA) != 0;
+        if (this.encryptData && sess.getEncryptionContext() == null) {
+            throw new SmbException("Share requires encryption, but encryption is not available");
+        }
         this.treeNum = TREE_CONN_COUNTER.incrementAndGet();
 
         this.connectionState.set(2); // connected
@@ -661,6 +708,8 @@ class SmbTreeImpl implements SmbTreeInternal {
             }
             throw se;
         }
+
+        sess.startChannels(this);
     }
 
     /**
@@ -805,6 +854,7 @@ class SmbTreeImpl implements SmbTreeInternal {
                 }
                 this.inDfs = false;
                 this.inDomainDfs = false;
+                this.encryptData = false;
                 this.connectionState.set(0);
                 transport.notifyAll();
             }
@@ -18,6 +18,8 @@
 
 package org.codelibs.jcifs.smb.internal.smb1;
 
+import java.util.function.BooleanSupplier;
+
 import org.codelibs.jcifs.smb.Configuration;
 import org.codelibs.jcifs.smb.RuntimeCIFSException;
 import org.codelibs.jcifs.smb.SmbConstants;
@@ -31,6 +33,7 @@ import org.codelibs.jcifs.smb.internal.SMBSigningDigest;
 import org.codelibs.jcifs.smb.internal.util.SMBUtil;
 import org.codelibs.jcifs.smb.util.Hexdump;
 import org.codelibs.jcifs.smb.util.Strings;
+import org.codelibs.jcifs.smb.util.transport.ResponseSignal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -278,6 +281,8 @@ public abstract class ServerMessageBlock implements CommonServerMessageBlockRequ
 
     private boolean isError;
 
+    private final ResponseSignal signal = new ResponseSignal();
+
     private byte[] rawPayload;
 
     private boolean retainPayload;
@@ -732,9 +737,7 @@ public abstract class ServerMessageBlock implements CommonServerMessageBlockRequ
     @Override
     public void received() {
         this.received = true;
-        synchronized (this) {
-            notifyAll();
-        }
+        this.signal.signal();
     }
 
     /**
@@ -745,9 +748,7 @@ public abstract class ServerMessageBlock implements CommonServerMessageBlockRequ
     @Override
     public void exception(final Exception e) {
         this.exception = e;
-        synchronized (this) {
-            notifyAll();
-        }
+        this.signal.signal();
     }
 
     /**
@@ -758,9 +759,51 @@ public abstract class ServerMessageBlock implements CommonServerMessageBlockRequ
     @Override
     public void error() {
         this.isError = true;
-        synchronized (this) {
-            notifyAll();
-        }
+        this.signal.signal();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.util.transport.Response#awaitSignal(long)
+     */
+    @Override
+    public void awaitSignal(final long timeout) throws InterruptedException {
+        awaitSignal(timeout, this::isReceived);
+    }
+
+    /**
+     * Wait until signalled or the given condition holds
+     *
+     * @param timeout
+     *            maximum time to wait in milliseconds, 0 to wait without limit
+     * @param done
+     *            condition under which no waiting is required
+     * @throws InterruptedException
+     *             if the waiting thread was interrupted
+     */
+    protected final void awaitSignal(final long timeout, final BooleanSupplier done) throws InterruptedException {
+        this.signal.await(timeout, done);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.util.transport.Response#signal()
+     */
+    @Override
+    public void signal() {
+        this.signal.signal();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.util.transport.Response#setSignalListener(java.lang.Runnable)
+     */
+    @Override
+    public void setSignalListener(final Runnable listener) {
+        this.signal.setListener(listener);
     }
 
     /**
@@ -213,6 +213,18 @@ public abstract class SmbComTransactionResponse extends ServerMessageBlock imple
         return this.errorCode == 0 && this.hasMore;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Waits for the complete response, not only the next fragment.
+     *
+     * @see org.codelibs.jcifs.smb.internal.smb1.ServerMessageBlock#awaitSignal(long)
+     */
+    @Override
+    public void awaitSignal(final long timeout) throws InterruptedException {
+        awaitSignal(timeout, () -> isReceived() && !hasMoreElements());
+    }
+
     @Override
     public SmbComTransactionResponse nextElement() {
         if (this.isPrimary) {
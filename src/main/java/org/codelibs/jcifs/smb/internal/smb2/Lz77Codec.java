@@ -0,0 +1,293 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.internal.smb2;
+
+import java.util.Arrays;
+
+import org.codelibs.jcifs.smb.internal.SMBProtocolDecodingException;
+import org.codelibs.jcifs.smb.internal.util.SMBUtil;
+
+/**
+ * Plain LZ77 compression as specified in [MS-XCA] section 2.3/2.4
+ *
+ * The output consists of 32 bit flag words, each followed by the 32 literals or matches it describes. A match encodes
+ * an offset of up to 8192 bytes and a length of at least 3 bytes, longer lengths use additional nibbles, bytes or
+ * words.
+ *
+ * The compressor keeps a single hash table that is reused for every call, so an instance is not thread safe. The
+ * decompressor is stateless.
+ */
+public final class Lz77Codec {
+
+    private static final int MIN_MATCH = 3;
+    private static final int MAX_OFFSET = 8192;
+    private static final int HASH_BITS = 13;
+
+    /**
+     * Worst case output for a single literal or match, including a new flag word
+     */
+    private static final int MAX_ITEM_SIZE = 2 + 1 + 1 + 2 + 4 + 4;
+
+    private final int[] table = new int[1 << HASH_BITS];
+
+    /**
+     * Compress data
+     *
+     * @param src
+     *            source buffer
+     * @param srcOff
+     *            source offset
+     * @param srcLen
+     *            number of bytes to compress
+     * @param dst
+     *            destination buffer
+     * @param dstOff
+     *            destination offset
+     * @param dstLimit
+     *            end of the usable destination range
+     * @return the compressed length, or -1 if the output does not fit
+     */
+    public int compress(final byte[] src, final int srcOff, final int srcLen, final byte[] dst, final int dstOff, final int dstLimit) {
+        final int[] tab = this.table;
+        Arrays.fill(tab, -1);
+
+        final int end = srcOff + srcLen;
+        int ip = srcOff;
+        int flagPos = dstOff;
+        int op = dstOff + 4;
+        int flags = 0;
+        int flagCount = 0;
+        int halfByte = -1;
+
+        if (op > dstLimit) {
+            return -1;
+        }
+
+        while (ip < end) {
+            if (op + MAX_ITEM_SIZE > dstLimit) {
+                return -1;
+            }
+
+            int matchLen = 0;
+            int matchOff = 0;
+            if (ip + MIN_MATCH <= end) {
+                final int h = hash(src, ip);
+                final int cand = tab[h];
+                tab[h] = ip;
+                if (cand >= 0 && ip - cand <= MAX_OFFSET && src[cand] == src[ip] && src[cand + 1] == src[ip + 1]
+                        && src[cand + 2] == src[ip + 2]) {
+                    int l = MIN_MATCH;
+                    while (ip + l < end && src[cand + l] == src[ip + l]) {
+                        l++;
+                    }
+                    matchLen = l;
+                    matchOff = ip - cand;
+                }
+            }
+
+            if (matchLen == 0) {
+                dst[op++] = src[ip++];
+                flags <<= 1;
+            } else {
+                int len = matchLen - MIN_MATCH;
+                final int token = matchOff - 1 << 3;
+                if (len < 7) {
+                    SMBUtil.writeInt2(token | len, dst, op);
+                    op += 2;
+                } else {
+                    SMBUtil.writeInt2(token | 7, dst, op);
+                    op += 2;
+                    len -= 7;
+                    final int nibble = Math.min(len, 15);
+                    if (halfByte < 0) {
+                        halfByte = op;
+                        dst[op++] = (byte) nibble;
+                    } else {
+                        dst[halfByte] |= (byte) (nibble << 4);
+                        halfByte = -1;
+                    }
+                    if (len >= 15) {
+                        len -= 15;
+                        if (len < 255) {
+                            dst[op++] = (byte) len;
+                        } else {
+                            dst[op++] = (byte) 255;
+                            len += 15 + 7;
+                            if (len < 1 << 16) {
+                                SMBUtil.writeInt2(len, dst, op);
+                                op += 2;
+                            } else {
+                                SMBUtil.writeInt2(0, dst, op);
+                                SMBUtil.writeInt4(len, dst, op + 2);
+                                op += 6;
+                            }
+                        }
+                    }
+                }
+
+                // index the positions covered by the match, the last ones may start a match themselves
+                final int matchEnd = ip + matchLen;
+                for (int i = Math.max(ip + 1, matchEnd - MAX_OFFSET); i + MIN_MATCH <= end && i < matchEnd; i++) {
+                    tab[hash(src, i)] = i;
+                }
+                ip = matchEnd;
+                flags = flags << 1 | 1;
+            }
+
+            if (++flagCount == 32) {
+                SMBUtil.writeInt4(flags, dst, flagPos);
+                flagCount = 0;
+                flags = 0;
+                flagPos = op;
+                op += 4;
+            }
+        }
+
+        // the unused flag bits are set, the decompressor stops at the first match flag without input
+        final long last = (long) flags << 32 - flagCount | (1L << 32 - flagCount) - 1;
+        SMBUtil.writeInt4(last, dst, flagPos);
+        return op - dstOff;
+    }
+
+    private static int hash(final byte[] b, final int i) {
+        final int v = (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16;
+        return v * 0x9E3779B1 >>> 32 - HASH_BITS;
+    }
+
+    /**
+     * Decompress data
+     *
+     * @param src
+     *            source buffer
+     * @param srcOff
+     *            source offset
+     * @param srcLen
+     *            length of the compressed data
+     * @param dst
+     *            destination buffer
+     * @param dstOff
+     *            destination offset
+     * @param dstLimit
+     *            end of the usable destination range
+     * @return the decompressed length
+     * @throws SMBProtocolDecodingException
+     *             if the input is malformed or the output does not fit
+     */
+    public static int decompress(final byte[] src, final int srcOff, final int srcLen, final byte[] dst, final int dstOff,
+            final int dstLimit) throws SMBProtocolDecodingException {
+        final int end = srcOff + srcLen;
+        int ip = srcOff;
+        int op = dstOff;
+        int flags = 0;
+        int flagCount = 0;
+        int halfByte = -1;
+
+        for (;;) {
+            if (flagCount == 0) {
+                if (ip == end) {
+                    break;
+                }
+                if (ip + 4 > end) {
+                    throw new SMBProtocolDecodingException("Truncated LZ77 flags");
+                }
+                flags = SMBUtil.readInt4(src, ip);
+                ip += 4;
+                flagCount = 32;
+            }
+            flagCount--;
+
+            if ((flags & 1 << flagCount) == 0) {
+                if (ip >= end) {
+                    throw new SMBProtocolDecodingException("Truncated LZ77 literal");
+                }
+                if (op >= dstLimit) {
+                    throw new SMBProtocolDecodingException("LZ77 output exceeds buffer");
+                }
+                dst[op++] = src[ip++];
+                continue;
+            }
+
+            if (ip == end) {
+                break;
+            }
+            if (ip + 2 > end) {
+                throw new SMBProtocolDecodingException("Truncated LZ77 match");
+            }
+            final int token = SMBUtil.readInt2(src, ip);
+            ip += 2;
+            long len = token & 7;
+            final int off = (token >>> 3) + 1;
+            if (len == 7) {
+                if (halfByte < 0) {
+                    if (ip >= end) {
+                        throw new SMBProtocolDecodingException("Truncated LZ77 match length");
+                    }
+                    halfByte = ip;
+                    len = src[ip++] & 0xF;
+                } else {
+                    len = (src[halfByte] & 0xFF) >>> 4;
+                    halfByte = -1;
+                }
+                if (len == 15) {
+                    if (ip >= end) {
+                        throw new SMBProtocolDecodingException("Truncated LZ77 match length");
+                    }
+                    len = src[ip++] & 0xFF;
+                    if (len == 255) {
+                        if (ip + 2 > end) {
+                            throw new SMBProtocolDecodingException("Truncated LZ77 match length");
+                        }
+                        len = SMBUtil.readInt2(src, ip);
+                        ip += 2;
+                        if (len == 0) {
+                            if (ip + 4 > end) {
+                                throw new SMBProtocolDecodingException("Truncated LZ77 match length");
+                            }
+                            len = SMBUtil.readInt4(src, ip) & 0xFFFFFFFFL;
+                            ip += 4;
+                        }
+                        if (len < 15 + 7) {
+                            throw new SMBProtocolDecodingException("Invalid LZ77 match length");
+                        }
+                        len -= 15 + 7;
+                    }
+                    len += 15;
+                }
+                len += 7;
+            }
+            len += MIN_MATCH;
+
+            if (off > op - dstOff) {
+                throw new SMBProtocolDecodingException("Invalid LZ77 match offset");
+            }
+            if (len > dstLimit - op) {
+                throw new SMBProtocolDecodingException("LZ77 output exceeds buffer");
+            }
+            final int n = (int) len;
+            if (off >= n) {
+                System.arraycopy(dst, op - off, dst, op, n);
+                op += n;
+            } else {
+                for (int i = 0; i < n; i++, op++) {
+                    dst[op] = dst[op - off];
+                }
+            }
+        }
+        return op - dstOff;
+    }
+}
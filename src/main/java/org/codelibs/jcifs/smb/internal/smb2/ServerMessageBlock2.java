@@ -120,6 +120,7 @@ public abstract class ServerMessageBlock2 implements CommonServerMessageBlock {
 
     private final byte[] signature = new byte[16];
     private Smb2SigningDigest digest = null;
+    private Smb2EncryptionContext encryptionContext;
 
     private final Configuration config;
 
@@ -172,6 +173,7 @@ public abstract class ServerMessageBlock2 implements CommonServerMessageBlock {
     public void reset() {
         this.flags = 0;
         this.digest = null;
+        this.encryptionContext = null;
         this.sessionId = 0;
         this.treeId = 0;
     }
@@ -290,6 +292,16 @@ public abstract class ServerMessageBlock2 implements CommonServerMessageBlock {
         return this.creditCharge;
     }
 
+    /**
+     * Sets the credit charge for this message.
+     *
+     * @param creditCharge
+     *            the creditCharge to set
+     */
+    public final void setCreditCharge(final int creditCharge) {
+        this.creditCharge = creditCharge;
+    }
+
     @Override
     public void retainPayload() {
         this.retainPayload = true;
@@ -334,6 +346,29 @@ public abstract class ServerMessageBlock2 implements CommonServerMessageBlock {
         }
     }
 
+    /**
+     * Gets the encryption context used to encrypt this message.
+     *
+     * @return the encryption context, null if the message is not encrypted
+     */
+    public Smb2EncryptionContext getEncryptionContext() {
+        return this.encryptionContext;
+    }
+
+    /**
+     * Sets the encryption context, messages with an encryption context are sent within a transform header
+     * and are not signed.
+     *
+     * @param encryptionContext
+     *            the encryption context to set, null to send the message unencrypted
+     */
+    public void setEncryptionContext(final Smb2EncryptionContext encryptionContext) {
+        this.encryptionContext = encryptionContext;
+        if (this.next != null) {
+            this.next.setEncryptionContext(encryptionContext);
+        }
+    }
+
     /**
      * Gets the status code for this message.
      *
@@ -539,7 +574,7 @@ public abstract class ServerMessageBlock2 implements CommonServerMessageBlock {
         }
 
         if (this.digest != null) {
-            this.digest.sign(dst, this.headerStart, this.length, this, getResponse());
+            signMessage(this.digest, dst, this.headerStart, this.length);
         }
 
         if (isRetainPayload()) {
@@ -550,6 +585,22 @@ public abstract class ServerMessageBlock2 implements CommonServerMessageBlock {
         return len;
     }
 
+    /**
+     * Sign the encoded message using the given digest
+     *
+     * @param dgst
+     *            signing digest
+     * @param dst
+     *            buffer holding the encoded message
+     * @param start
+     *            offset of the message
+     * @param len
+     *            length of the message
+     */
+    protected void signMessage(final Smb2SigningDigest dgst, final byte[] dst, final int start, final int len) {
+        dgst.sign(dst, start, len, this, getResponse());
+    }
+
     /**
      * Rounds up the size to 8-byte alignment.
      *
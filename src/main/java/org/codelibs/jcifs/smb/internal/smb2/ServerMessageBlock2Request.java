@@ -139,7 +139,33 @@ public abstract class ServerMessageBlock2Request<T extends ServerMessageBlock2Re
      */
     @Override
     public int getCreditCost() {
-        return 1;
+        return Math.max(1, getCreditCharge());
+    }
+
+    /**
+     * Gets the payload size used to determine the credit charge of multi-credit requests.
+     *
+     * This is the larger of the request data size and the expected response data size.
+     *
+     * @return the payload size of this request, in bytes
+     */
+    protected int getPayloadSize() {
+        return 0;
+    }
+
+    /**
+     * Sets up the credit charge for this request.
+     *
+     * @param multiCredit
+     *            whether multi-credit operations have been negotiated, otherwise the credit charge must be zero
+     */
+    public void setupCreditCharge(final boolean multiCredit) {
+        if (!multiCredit) {
+            setCreditCharge(0);
+            return;
+        }
+        final int payloadSize = getPayloadSize();
+        setCreditCharge(payloadSize <= 0 ? 1 : (payloadSize - 1) / Smb2Constants.SMB2_CREDIT_PAYLOAD_SIZE + 1);
     }
 
     /**
@@ -183,6 +209,7 @@ public abstract class ServerMessageBlock2Request<T extends ServerMessageBlock2Re
             return null;
         }
         resp.setDigest(getDigest());
+        resp.setEncryptionContext(getEncryptionContext());
         setResponse(resp);
 
         final ServerMessageBlock2 n = getNext();
@@ -22,6 +22,7 @@ import org.codelibs.jcifs.smb.impl.NtStatus;
 import org.codelibs.jcifs.smb.internal.CommonServerMessageBlockRequest;
 import org.codelibs.jcifs.smb.internal.CommonServerMessageBlockResponse;
 import org.codelibs.jcifs.smb.internal.SMBProtocolDecodingException;
+import org.codelibs.jcifs.smb.util.transport.ResponseSignal;
 
 /**
  * Base class for SMB2/SMB3 response messages.
@@ -33,13 +34,14 @@ import org.codelibs.jcifs.smb.internal.SMBProtocolDecodingException;
  */
 public abstract class ServerMessageBlock2Response extends ServerMessageBlock2 implements CommonServerMessageBlockResponse {
 
-    private boolean received;
-    private boolean error;
+    private volatile boolean received;
+    private volatile boolean error;
     private Long expiration;
 
     private boolean verifyFailed;
     private Exception exception;
     private boolean asyncHandled;
+    private final ResponseSignal signal = new ResponseSignal();
 
     /**
      * Constructor for SMB2 response with configuration and command.
@@ -102,15 +104,11 @@ public abstract class ServerMessageBlock2Response extends ServerMessageBlock2 im
     @Override
     public final void received() {
         if (isAsync() && getStatus() == NtStatus.NT_STATUS_PENDING) {
-            synchronized (this) {
-                notifyAll();
-            }
+            this.signal.signal();
             return;
         }
         this.received = true;
-        synchronized (this) {
-            notifyAll();
-        }
+        this.signal.signal();
     }
 
     /**
@@ -123,9 +121,7 @@ public abstract class ServerMessageBlock2Response extends ServerMessageBlock2 im
         this.error = true;
         this.exception = e;
         this.received = true;
-        synchronized (this) {
-            notifyAll();
-        }
+        this.signal.signal();
     }
 
     /**
@@ -136,9 +132,37 @@ public abstract class ServerMessageBlock2Response extends ServerMessageBlock2 im
     @Override
     public final void error() {
         this.error = true;
-        synchronized (this) {
-            notifyAll();
-        }
+        this.signal.signal();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.util.transport.Response#awaitSignal(long)
+     */
+    @Override
+    public void awaitSignal(final long timeout) throws InterruptedException {
+        this.signal.await(timeout, this::isReceived);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.util.transport.Response#signal()
+     */
+    @Override
+    public void signal() {
+        this.signal.signal();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.util.transport.Response#setSignalListener(java.lang.Runnable)
+     */
+    @Override
+    public void setSignalListener(final Runnable listener) {
+        this.signal.setListener(listener);
     }
 
     /**
@@ -297,11 +321,28 @@ public abstract class ServerMessageBlock2Response extends ServerMessageBlock2 im
         if (dgst != null && !isAsync() && (getConfig().isRequireSecureNegotiate() || getErrorCode() == NtStatus.NT_STATUS_SUCCESS)) {
             // TODO: SMB2 - do we need to check the MIDs?
             // We only read what we were waiting for, so first guess would be no.
-            final boolean verify = dgst.verify(buffer, i, size, 0, this);
+            final boolean verify = verifyDigest(dgst, buffer, i, size);
             this.verifyFailed = verify;
             return !verify;
         }
         return true;
     }
 
+    /**
+     * Check the message signature using the given digest
+     *
+     * @param dgst
+     *            signing digest
+     * @param buffer
+     *            buffer holding the message
+     * @param i
+     *            offset of the message
+     * @param size
+     *            length of the message
+     * @return whether the signature verification failed
+     */
+    protected boolean verifyDigest(final Smb2SigningDigest dgst, final byte[] buffer, final int i, final int size) {
+        return dgst.verify(buffer, i, size, 0, this);
+    }
+
 }
@@ -0,0 +1,430 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.internal.smb2;
+
+import java.util.Arrays;
+
+import org.codelibs.jcifs.smb.internal.SMBProtocolDecodingException;
+import org.codelibs.jcifs.smb.internal.smb2.nego.CompressionNegotiateContext;
+import org.codelibs.jcifs.smb.internal.util.SMBUtil;
+import org.codelibs.jcifs.smb.util.Encdec;
+
+/**
+ * SMB 3.1.1 compression context
+ *
+ * Builds and parses messages starting with a compression transform header ([MS-SMB2] 2.2.42). When chained compression
+ * was negotiated, the message is split into an uncompressed payload holding the SMB2 header and fixed part of the
+ * request, Pattern_V1 payloads for runs of a repeated byte at the start and end of the data, and an LZ77 payload for
+ * the rest. Otherwise the unchained format is used, with the data compressed as a whole.
+ *
+ * Compression reuses per instance state and must be externally synchronized, decompression is stateless.
+ */
+public class Smb2CompressionContext {
+
+    /**
+     * Compression transform header protocol identifier: 0xFC534D42 (0xFC 'S' 'M' 'B')
+     */
+    public static final int COMPRESSION_PROTOCOL_ID = 0xFC534D42;
+
+    /**
+     * Size of the unchained compression transform header, as well as of the chained header including the first payload
+     * header
+     */
+    public static final int COMPRESSION_HEADER_SIZE = 16;
+
+    /**
+     * Payload header flag marking a chained compression transform
+     */
+    public static final int COMPRESSION_FLAG_CHAINED = 0x1;
+
+    private static final int PAYLOAD_HEADER_SIZE = 8;
+    private static final int PATTERN_PAYLOAD_SIZE = 8;
+    private static final int PATTERN_MIN = 64;
+
+    private static final int SNIFF_BLOCK = 64;
+    private static final int SNIFF_BLOCKS = 32;
+    private static final double MAX_ENTROPY = 7.5;
+
+    private final boolean lz77;
+    private final boolean pattern;
+    private final boolean chained;
+    private final int threshold;
+
+    private final Lz77Codec codec = new Lz77Codec();
+    private final int[] histogram = new int[256];
+
+    /**
+     * Create compression context
+     *
+     * @param algorithms
+     *            negotiated compression algorithms
+     * @param chained
+     *            whether chained compression was negotiated
+     * @param threshold
+     *            minimum data size to attempt compression for
+     */
+    public Smb2CompressionContext(final int[] algorithms, final boolean chained, final int threshold) {
+        boolean l = false, p = false;
+        for (final int algorithm : algorithms) {
+            if (algorithm == CompressionNegotiateContext.COMPRESSION_LZ77) {
+                l = true;
+            } else if (algorithm == CompressionNegotiateContext.COMPRESSION_PATTERN_V1) {
+                p = true;
+            }
+        }
+        this.lz77 = l;
+        this.pattern = chained && p;
+        this.chained = chained;
+        this.threshold = threshold;
+    }
+
+    /**
+     * @return minimum data size to attempt compression for
+     */
+    public int getThreshold() {
+        return this.threshold;
+    }
+
+    /**
+     * @return whether chained compression is used
+     */
+    public boolean isChained() {
+        return this.chained;
+    }
+
+    /**
+     * Check whether data is worth compressing
+     *
+     * Data below the threshold is rejected, otherwise the byte entropy of a sample spread over the data is estimated
+     * to skip data that is already compressed or encrypted.
+     *
+     * @param data
+     * @param off
+     * @param len
+     * @return whether compression should be attempted
+     */
+    public boolean shouldCompress(final byte[] data, final int off, final int len) {
+        if (len < this.threshold || len <= 0 || !this.lz77 && !this.pattern) {
+            return false;
+        }
+        return estimateEntropy(data, off, len) < MAX_ENTROPY;
+    }
+
+    double estimateEntropy(final byte[] data, final int off, final int len) {
+        final int[] hist = this.histogram;
+        Arrays.fill(hist, 0);
+        final int n;
+        if (len <= SNIFF_BLOCK * SNIFF_BLOCKS) {
+            for (int i = off; i < off + len; i++) {
+                hist[data[i] & 0xFF]++;
+            }
+            n = len;
+        } else {
+            final long stride = (len - SNIFF_BLOCK) / (SNIFF_BLOCKS - 1);
+            for (int b = 0; b < SNIFF_BLOCKS; b++) {
+                final int start = off + (int) (b * stride);
+                for (int i = start; i < start + SNIFF_BLOCK; i++) {
+                    hist[data[i] & 0xFF]++;
+                }
+            }
+            n = SNIFF_BLOCK * SNIFF_BLOCKS;
+        }
+
+        double entropy = 0;
+        for (final int h : hist) {
+            if (h != 0) {
+                final double p = (double) h / n;
+                entropy -= p * Math.log(p);
+            }
+        }
+        return entropy / Math.log(2);
+    }
+
+    /**
+     * Compress a message
+     *
+     * The uncompressed prefix of the message (SMB2 header and fixed part) must already be encoded at
+     * {@code off + COMPRESSION_HEADER_SIZE}, the compression header is written in front of it and the compressed data
+     * after it.
+     *
+     * @param buffer
+     *            message buffer
+     * @param off
+     *            start of the compressed message
+     * @param prefixLen
+     *            length of the uncompressed prefix
+     * @param data
+     *            data following the prefix
+     * @param dataOff
+     * @param dataLen
+     * @param limit
+     *            end of the usable buffer range
+     * @return the length of the compressed message, or -1 if it would not be smaller than the original message
+     */
+    public int compress(final byte[] buffer, final int off, final int prefixLen, final byte[] data, final int dataOff, final int dataLen,
+            int limit) {
+        final int total = prefixLen + dataLen;
+        limit = Math.min(limit, off + total - 1);
+        int pos = off + COMPRESSION_HEADER_SIZE + prefixLen;
+        if (pos > limit) {
+            return -1;
+        }
+
+        Encdec.enc_uint32be(COMPRESSION_PROTOCOL_ID, buffer, off);
+        if (!this.chained) {
+            if (!this.lz77) {
+                return -1;
+            }
+            SMBUtil.writeInt4(dataLen, buffer, off + 4);
+            SMBUtil.writeInt2(CompressionNegotiateContext.COMPRESSION_LZ77, buffer, off + 8);
+            SMBUtil.writeInt2(0, buffer, off + 10);
+            SMBUtil.writeInt4(prefixLen, buffer, off + 12);
+            final int n = this.codec.compress(data, dataOff, dataLen, buffer, pos, limit);
+            return n < 0 ? -1 : pos + n - off;
+        }
+
+        SMBUtil.writeInt4(total, buffer, off + 4);
+        writePayloadHeader(buffer, off + 8, CompressionNegotiateContext.COMPRESSION_NONE, prefixLen);
+
+        int start = dataOff;
+        int end = dataOff + dataLen;
+        int trail = 0;
+        if (this.pattern) {
+            final int lead = leadingRun(data, start, end);
+            if (lead >= PATTERN_MIN) {
+                pos = writePattern(buffer, pos, limit, data[start], lead);
+                if (pos < 0) {
+                    return -1;
+                }
+                start += lead;
+            }
+            if (start < end) {
+                trail = trailingRun(data, start, end);
+                if (trail >= PATTERN_MIN) {
+                    end -= trail;
+                } else {
+                    trail = 0;
+                }
+            }
+        }
+
+        if (start < end) {
+            final int len = end - start;
+            final int n = this.lz77 && pos + PAYLOAD_HEADER_SIZE + 4 <= limit
+                    ? this.codec.compress(data, start, len, buffer, pos + PAYLOAD_HEADER_SIZE + 4, limit)
+                    : -1;
+            if (n >= 0) {
+                writePayloadHeader(buffer, pos, CompressionNegotiateContext.COMPRESSION_LZ77, n + 4);
+                SMBUtil.writeInt4(len, buffer, pos + PAYLOAD_HEADER_SIZE);
+                pos += PAYLOAD_HEADER_SIZE + 4 + n;
+            } else if (pos + PAYLOAD_HEADER_SIZE + len <= limit) {
+                writePayloadHeader(buffer, pos, CompressionNegotiateContext.COMPRESSION_NONE, len);
+                System.arraycopy(data, start, buffer, pos + PAYLOAD_HEADER_SIZE, len);
+                pos += PAYLOAD_HEADER_SIZE + len;
+            } else {
+                return -1;
+            }
+        }
+
+        if (trail > 0) {
+            pos = writePattern(buffer, pos, limit, data[end], trail);
+            if (pos < 0) {
+                return -1;
+            }
+        }
+        return pos - off;
+    }
+
+    private static void writePayloadHeader(final byte[] buffer, final int pos, final int algorithm, final int length) {
+        SMBUtil.writeInt2(algorithm, buffer, pos);
+        SMBUtil.writeInt2(COMPRESSION_FLAG_CHAINED, buffer, pos + 2);
+        SMBUtil.writeInt4(length, buffer, pos + 4);
+    }
+
+    private static int writePattern(final byte[] buffer, final int pos, final int limit, final byte value, final int repetitions) {
+        if (pos + PAYLOAD_HEADER_SIZE + PATTERN_PAYLOAD_SIZE > limit) {
+            return -1;
+        }
+        writePayloadHeader(buffer, pos, CompressionNegotiateContext.COMPRESSION_PATTERN_V1, PATTERN_PAYLOAD_SIZE);
+        final int p = pos + PAYLOAD_HEADER_SIZE;
+        buffer[p] = value;
+        buffer[p + 1] = 0;
+        SMBUtil.writeInt2(0, buffer, p + 2);
+        SMBUtil.writeInt4(repetitions, buffer, p + 4);
+        return p + PATTERN_PAYLOAD_SIZE;
+    }
+
+    static int leadingRun(final byte[] data, final int start, final int end) {
+        final byte v = data[start];
+        int i = start + 1;
+        while (i < end && data[i] == v) {
+            i++;
+        }
+        return i - start;
+    }
+
+    static int trailingRun(final byte[] data, final int start, final int end) {
+        final byte v = data[end - 1];
+        int i = end - 1;
+        while (i > start && data[i - 1] == v) {
+            i--;
+        }
+        return end - i;
+    }
+
+    /**
+     * Check whether a buffer holds a message with a compression transform header
+     *
+     * @param buffer
+     * @param off
+     * @return whether the protocol id matches
+     */
+    public static boolean isCompressed(final byte[] buffer, final int off) {
+        return Encdec.dec_uint32be(buffer, off) == COMPRESSION_PROTOCOL_ID;
+    }
+
+    /**
+     * Determine the size of a compressed message after decompression
+     *
+     * @param buffer
+     * @param off
+     * @param len
+     * @return the original message size
+     * @throws SMBProtocolDecodingException
+     *             if the header is invalid
+     */
+    public static int getOriginalSize(final byte[] buffer, final int off, final int len) throws SMBProtocolDecodingException {
+        if (len < COMPRESSION_HEADER_SIZE || !isCompressed(buffer, off)) {
+            throw new SMBProtocolDecodingException("Invalid compression transform header");
+        }
+        final long size = SMBUtil.readInt4(buffer, off + 4) & 0xFFFFFFFFL;
+        final long total = isChained(buffer, off) ? size : size + (SMBUtil.readInt4(buffer, off + 12) & 0xFFFFFFFFL);
+        if (total > Integer.MAX_VALUE) {
+            throw new SMBProtocolDecodingException("Invalid compressed message size " + total);
+        }
+        return (int) total;
+    }
+
+    private static boolean isChained(final byte[] buffer, final int off) {
+        return (SMBUtil.readInt2(buffer, off + 10) & COMPRESSION_FLAG_CHAINED) != 0;
+    }
+
+    /**
+     * Decompress a message
+     *
+     * @param src
+     *            buffer holding the compressed message, starting with the compression transform header
+     * @param off
+     * @param len
+     * @param dst
+     *            destination buffer, must hold at least {@link #getOriginalSize(byte[], int, int)} bytes
+     * @param dstOff
+     * @return the length of the decompressed message
+     * @throws SMBProtocolDecodingException
+     *             if the message is malformed or uses an unsupported algorithm
+     */
+    public static int decompress(final byte[] src, final int off, final int len, final byte[] dst, final int dstOff)
+            throws SMBProtocolDecodingException {
+        final int total = getOriginalSize(src, off, len);
+        final int limit = dstOff + total;
+        if (total > dst.length - dstOff) {
+            throw new SMBProtocolDecodingException("Decompression buffer too small");
+        }
+        final int end = off + len;
+
+        if (!isChained(src, off)) {
+            final int algorithm = SMBUtil.readInt2(src, off + 8);
+            final int prefix = SMBUtil.readInt4(src, off + 12);
+            final int start = off + COMPRESSION_HEADER_SIZE;
+            if (prefix < 0 || prefix > end - start || prefix > total) {
+                throw new SMBProtocolDecodingException("Invalid compression offset");
+            }
+            System.arraycopy(src, start, dst, dstOff, prefix);
+            final int n = decompressPayload(algorithm, src, start + prefix, end - start - prefix, dst, dstOff + prefix, limit);
+            if (prefix + n != total) {
+                throw new SMBProtocolDecodingException("Decompressed size does not match");
+            }
+            return total;
+        }
+
+        int ip = off + 8;
+        int op = dstOff;
+        while (ip < end) {
+            if (end - ip < PAYLOAD_HEADER_SIZE) {
+                throw new SMBProtocolDecodingException("Truncated compression payload header");
+            }
+            final int algorithm = SMBUtil.readInt2(src, ip);
+            final int length = SMBUtil.readInt4(src, ip + 4);
+            ip += PAYLOAD_HEADER_SIZE;
+            if (length < 0 || length > end - ip) {
+                throw new SMBProtocolDecodingException("Invalid compression payload length");
+            }
+
+            switch (algorithm) {
+            case CompressionNegotiateContext.COMPRESSION_PATTERN_V1: {
+                if (length < PATTERN_PAYLOAD_SIZE) {
+                    throw new SMBProtocolDecodingException("Truncated pattern payload");
+                }
+                final int repetitions = SMBUtil.readInt4(src, ip + 4);
+                if (repetitions < 0 || repetitions > limit - op) {
+                    throw new SMBProtocolDecodingException("Pattern exceeds message size");
+                }
+                Arrays.fill(dst, op, op + repetitions, src[ip]);
+                op += repetitions;
+                break;
+            }
+            case CompressionNegotiateContext.COMPRESSION_NONE:
+                op += decompressPayload(algorithm, src, ip, length, dst, op, limit);
+                break;
+            default: {
+                if (length < 4) {
+                    throw new SMBProtocolDecodingException("Truncated compression payload");
+                }
+                final int original = SMBUtil.readInt4(src, ip);
+                final int n = decompressPayload(algorithm, src, ip + 4, length - 4, dst, op, limit);
+                if (n != original) {
+                    throw new SMBProtocolDecodingException("Decompressed payload size does not match");
+                }
+                op += n;
+            }
+            }
+            ip += length;
+        }
+
+        if (op - dstOff != total) {
+            throw new SMBProtocolDecodingException("Decompressed size does not match");
+        }
+        return total;
+    }
+
+    private static int decompressPayload(final int algorithm, final byte[] src, final int off, final int len, final byte[] dst,
+            final int dstOff, final int limit) throws SMBProtocolDecodingException {
+        switch (algorithm) {
+        case CompressionNegotiateContext.COMPRESSION_NONE:
+            if (len > limit - dstOff) {
+                throw new SMBProtocolDecodingException("Payload exceeds message size");
+            }
+            System.arraycopy(src, off, dst, dstOff, len);
+            return len;
+        case CompressionNegotiateContext.COMPRESSION_LZ77:
+            return Lz77Codec.decompress(src, off, len, dst, dstOff, limit);
+        default:
+            throw new SMBProtocolDecodingException("Unsupported compression algorithm " + algorithm);
+        }
+    }
+}
@@ -93,6 +93,11 @@ public final class Smb2Constants {
      */
     public static final int SMB2_GLOBAL_CAP_LARGE_MTU = 0x4;
 
+    /**
+     * Payload size covered by a single credit in multi-credit operations
+     */
+    public static final int SMB2_CREDIT_PAYLOAD_SIZE = 65536;
+
     /**
      * Server supports multi-channel connections
      */
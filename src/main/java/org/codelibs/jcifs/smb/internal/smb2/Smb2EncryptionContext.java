@@ -18,6 +18,7 @@
 package org.codelibs.jcifs.smb.internal.smb2;
 
 import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.crypto.Cipher;
@@ -32,6 +33,8 @@ import org.bouncycastle.crypto.params.KeyParameter;
 import org.codelibs.jcifs.smb.CIFSException;
 import org.codelibs.jcifs.smb.DialectVersion;
 import org.codelibs.jcifs.smb.internal.smb2.nego.EncryptionNegotiateContext;
+import org.codelibs.jcifs.smb.internal.util.SMBUtil;
+import org.codelibs.jcifs.smb.util.Encdec;
 
 /**
  * SMB2/SMB3 Encryption Context
@@ -39,6 +42,9 @@ import org.codelibs.jcifs.smb.internal.smb2.nego.EncryptionNegotiateContext;
  * Manages encryption and decryption operations for SMB2/SMB3 sessions.
  * Handles both AES-CCM (SMB 3.0/3.0.2) and AES-GCM (SMB 3.1.1) cipher suites.
  *
+ * Cipher instances are kept for the lifetime of the context and messages are processed in place,
+ * encryption and decryption can run concurrently.
+ *
  * @author mbechler
  */
 public class Smb2EncryptionContext {
@@ -49,6 +55,14 @@ public class Smb2EncryptionContext {
     private final byte[] decryptionKey;
     private final AtomicLong nonceCounter = new AtomicLong(0);
     private final SecureRandom secureRandom = new SecureRandom();
+    private final byte[] nonceSalt = new byte[4];
+
+    private final Object encryptLock = new Object();
+    private final Object decryptLock = new Object();
+    private Cipher gcmEncrypt;
+    private Cipher gcmDecrypt;
+    private AEADBlockCipher ccmEncrypt;
+    private AEADBlockCipher ccmDecrypt;
 
     /**
      * AES-128-CCM cipher identifier for SMB3 encryption
@@ -65,6 +79,21 @@ public class Smb2EncryptionContext {
      */
     public static final int TRANSFORM_FLAG_ENCRYPTED = 0x0001;
 
+    /**
+     * Length of the authentication tag
+     */
+    public static final int AUTH_TAG_LENGTH = 16;
+
+    /**
+     * Additional buffer space required to encrypt or decrypt a message in place
+     */
+    public static final int ENCRYPTION_OVERHEAD = Smb2TransformHeader.TRANSFORM_HEADER_SIZE + AUTH_TAG_LENGTH;
+
+    private static final int NONCE_OFFSET = 20;
+    private static final int AAD_LENGTH = Smb2TransformHeader.TRANSFORM_HEADER_SIZE - NONCE_OFFSET;
+    private static final int GCM_NONCE_LENGTH = 12;
+    private static final int CCM_NONCE_LENGTH = 11;
+
     /**
      * Create encryption context
      *
@@ -82,6 +111,7 @@ public class Smb2EncryptionContext {
         this.dialect = dialect;
         this.encryptionKey = encryptionKey.clone();
         this.decryptionKey = decryptionKey.clone();
+        this.secureRandom.nextBytes(this.nonceSalt);
     }
 
     /**
@@ -132,60 +162,10 @@ public class Smb2EncryptionContext {
      *             if encryption fails
      */
     public byte[] encryptMessage(final byte[] message, final long sessionId) throws CIFSException {
-        try {
-            final byte[] nonce = generateNonce();
-            final int flags = getTransformFlags();
-
-            final Smb2TransformHeader transformHeader = new Smb2TransformHeader(nonce, message.length, flags, sessionId);
-            final byte[] associatedData = transformHeader.getAssociatedData();
-
-            byte[] ciphertext;
-            byte[] authTag;
-
-            if (isGCMCipher()) {
-                // Use AES-GCM
-                final Cipher cipher = createGCMCipher(true, nonce);
-                cipher.updateAAD(associatedData);
-                final byte[] encrypted = cipher.doFinal(message);
-
-                // Split ciphertext and authentication tag
-                final int tagLength = getAuthTagLength();
-                ciphertext = new byte[encrypted.length - tagLength];
-                authTag = new byte[tagLength];
-                System.arraycopy(encrypted, 0, ciphertext, 0, ciphertext.length);
-                System.arraycopy(encrypted, ciphertext.length, authTag, 0, tagLength);
-            } else {
-                // Use AES-CCM with Bouncy Castle
-                final AEADBlockCipher cipher = createCCMCipher(true, nonce, associatedData.length, message.length);
-
-                final byte[] input = new byte[associatedData.length + message.length];
-                System.arraycopy(associatedData, 0, input, 0, associatedData.length);
-                System.arraycopy(message, 0, input, associatedData.length, message.length);
-
-                final byte[] output = new byte[cipher.getOutputSize(input.length)];
-                int len = cipher.processBytes(input, 0, input.length, output, 0);
-                len += cipher.doFinal(output, len);
-
-                // Split ciphertext and authentication tag
-                final int tagLength = getAuthTagLength();
-                ciphertext = new byte[message.length];
-                authTag = new byte[tagLength];
-                System.arraycopy(output, associatedData.length, ciphertext, 0, message.length);
-                System.arraycopy(output, output.length - tagLength, authTag, 0, tagLength);
-            }
-
-            // Set authentication tag in transform header
-            transformHeader.setSignature(authTag);
-
-            // Build final encrypted message
-            final byte[] result = new byte[Smb2TransformHeader.TRANSFORM_HEADER_SIZE + ciphertext.length];
-            transformHeader.encode(result, 0);
-            System.arraycopy(ciphertext, 0, result, Smb2TransformHeader.TRANSFORM_HEADER_SIZE, ciphertext.length);
-
-            return result;
-        } catch (final Exception e) {
-            throw new CIFSException("Failed to encrypt message", e);
-        }
+        final byte[] buffer = new byte[ENCRYPTION_OVERHEAD + message.length];
+        System.arraycopy(message, 0, buffer, Smb2TransformHeader.TRANSFORM_HEADER_SIZE, message.length);
+        final int len = encrypt(buffer, 0, message.length, sessionId);
+        return Arrays.copyOf(buffer, len);
     }
 
     /**
@@ -198,68 +178,153 @@ public class Smb2EncryptionContext {
      *             if decryption fails
      */
     public byte[] decryptMessage(final byte[] encryptedMessage) throws CIFSException {
-        try {
-            // Parse transform header
-            final Smb2TransformHeader transformHeader = Smb2TransformHeader.decode(encryptedMessage, 0);
-            final byte[] associatedData = transformHeader.getAssociatedData();
-            final byte[] nonce = transformHeader.getNonce();
-            final byte[] authTag = transformHeader.getSignature();
-
-            // Extract ciphertext
-            final int ciphertextLength = encryptedMessage.length - Smb2TransformHeader.TRANSFORM_HEADER_SIZE;
-            final byte[] ciphertext = new byte[ciphertextLength];
-            System.arraycopy(encryptedMessage, Smb2TransformHeader.TRANSFORM_HEADER_SIZE, ciphertext, 0, ciphertextLength);
-
-            byte[] plaintext;
+        if (encryptedMessage.length < Smb2TransformHeader.TRANSFORM_HEADER_SIZE) {
+            throw new CIFSException("Message too short for transform header");
+        }
+        final int len = encryptedMessage.length - Smb2TransformHeader.TRANSFORM_HEADER_SIZE;
+        final byte[] buffer = new byte[len + AUTH_TAG_LENGTH];
+        System.arraycopy(encryptedMessage, Smb2TransformHeader.TRANSFORM_HEADER_SIZE, buffer, 0, len);
+        return Arrays.copyOf(buffer, decrypt(encryptedMessage, 0, buffer, 0, len));
+    }
 
-            if (isGCMCipher()) {
-                // Use AES-GCM
-                final Cipher cipher = createGCMCipher(false, nonce);
-                cipher.updateAAD(associatedData);
+    /**
+     * Encrypt a message in place
+     *
+     * The plaintext message must already be placed at <code>off + TRANSFORM_HEADER_SIZE</code>, the transform header
+     * is written in front of it. The buffer must provide {@link #AUTH_TAG_LENGTH} bytes of additional room after the
+     * message.
+     *
+     * @param buffer
+     *            buffer containing the message
+     * @param off
+     *            offset of the transform header
+     * @param len
+     *            plaintext message length
+     * @param sessionId
+     *            session identifier
+     * @return length of the encrypted message including the transform header
+     * @throws CIFSException
+     *             if encryption fails
+     */
+    public int encrypt(final byte[] buffer, final int off, final int len, final long sessionId) throws CIFSException {
+        final int dataOff = off + Smb2TransformHeader.TRANSFORM_HEADER_SIZE;
+        if (dataOff + len + AUTH_TAG_LENGTH > buffer.length) {
+            throw new CIFSException("Buffer too small for encryption");
+        }
 
-                // Combine ciphertext and auth tag for decryption
-                final byte[] input = new byte[ciphertext.length + authTag.length];
-                System.arraycopy(ciphertext, 0, input, 0, ciphertext.length);
-                System.arraycopy(authTag, 0, input, ciphertext.length, authTag.length);
+        // protocol id is sent as 0xFD 'S' 'M' 'B'
+        Encdec.enc_uint32be(Smb2TransformHeader.TRANSFORM_PROTOCOL_ID, buffer, off);
+        writeNonce(buffer, off + NONCE_OFFSET);
+        SMBUtil.writeInt4(len, buffer, off + 36);
+        SMBUtil.writeInt2(0, buffer, off + 40);
+        SMBUtil.writeInt2(getTransformFlags(), buffer, off + 42);
+        SMBUtil.writeInt8(sessionId, buffer, off + 44);
 
-                plaintext = cipher.doFinal(input);
-            } else {
-                // Use AES-CCM with Bouncy Castle
-                final AEADBlockCipher cipher = createCCMCipher(false, nonce, associatedData.length, ciphertext.length);
+        try {
+            final int n;
+            synchronized (this.encryptLock) {
+                if (isGCMCipher()) {
+                    if (this.gcmEncrypt == null) {
+                        this.gcmEncrypt = Cipher.getInstance("AES/GCM/NoPadding");
+                    }
+                    this.gcmEncrypt.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(this.encryptionKey, "AES"),
+                            new GCMParameterSpec(AUTH_TAG_LENGTH * 8, buffer, off + NONCE_OFFSET, GCM_NONCE_LENGTH));
+                    this.gcmEncrypt.updateAAD(buffer, off + NONCE_OFFSET, AAD_LENGTH);
+                    n = this.gcmEncrypt.doFinal(buffer, dataOff, len, buffer, dataOff);
+                } else {
+                    if (this.ccmEncrypt == null) {
+                        this.ccmEncrypt = new CCMBlockCipher(new AESEngine());
+                    }
+                    final byte[] nonce = new byte[CCM_NONCE_LENGTH];
+                    System.arraycopy(buffer, off + NONCE_OFFSET, nonce, 0, CCM_NONCE_LENGTH);
+                    this.ccmEncrypt.init(true, new AEADParameters(new KeyParameter(this.encryptionKey), AUTH_TAG_LENGTH * 8, nonce, null));
+                    this.ccmEncrypt.processAADBytes(buffer, off + NONCE_OFFSET, AAD_LENGTH);
+                    final int p = this.ccmEncrypt.processBytes(buffer, dataOff, len, buffer, dataOff);
+                    n = p + this.ccmEncrypt.doFinal(buffer, dataOff + p);
+                }
+            }
+            if (n != len + AUTH_TAG_LENGTH) {
+                throw new CIFSException("Unexpected ciphertext length " + n);
+            }
+        } catch (final CIFSException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new CIFSException("Failed to encrypt message", e);
+        }
 
-                final byte[] input = new byte[associatedData.length + ciphertext.length + authTag.length];
-                System.arraycopy(associatedData, 0, input, 0, associatedData.length);
-                System.arraycopy(ciphertext, 0, input, associatedData.length, ciphertext.length);
-                System.arraycopy(authTag, 0, input, associatedData.length + ciphertext.length, authTag.length);
+        // the authentication tag is appended to the ciphertext, move it to the signature field
+        System.arraycopy(buffer, dataOff + len, buffer, off + 4, AUTH_TAG_LENGTH);
+        return Smb2TransformHeader.TRANSFORM_HEADER_SIZE + len;
+    }
 
-                final byte[] output = new byte[cipher.getOutputSize(input.length)];
-                int len = cipher.processBytes(input, 0, input.length, output, 0);
-                len += cipher.doFinal(output, len);
+    /**
+     * Decrypt a message in place
+     *
+     * The buffer must provide {@link #AUTH_TAG_LENGTH} bytes of additional room after the ciphertext.
+     *
+     * @param header
+     *            buffer containing the transform header
+     * @param hdrOff
+     *            offset of the transform header
+     * @param buffer
+     *            buffer containing the ciphertext, will contain the plaintext
+     * @param off
+     *            offset of the ciphertext
+     * @param len
+     *            length of the ciphertext
+     * @return plaintext length
+     * @throws CIFSException
+     *             if the message cannot be decrypted or authenticated
+     */
+    public int decrypt(final byte[] header, final int hdrOff, final byte[] buffer, final int off, final int len) throws CIFSException {
+        if (Encdec.dec_uint32be(header, hdrOff) != Smb2TransformHeader.TRANSFORM_PROTOCOL_ID) {
+            throw new CIFSException("Invalid transform header");
+        }
+        if (SMBUtil.readInt4(header, hdrOff + 36) != len) {
+            throw new CIFSException("Transform header message size does not match");
+        }
+        if (off + len + AUTH_TAG_LENGTH > buffer.length) {
+            throw new CIFSException("Buffer too small for decryption");
+        }
 
-                plaintext = new byte[ciphertext.length];
-                System.arraycopy(output, associatedData.length, plaintext, 0, ciphertext.length);
+        // both ciphers expect the authentication tag following the ciphertext
+        System.arraycopy(header, hdrOff + 4, buffer, off + len, AUTH_TAG_LENGTH);
+        try {
+            synchronized (this.decryptLock) {
+                if (isGCMCipher()) {
+                    if (this.gcmDecrypt == null) {
+                        this.gcmDecrypt = Cipher.getInstance("AES/GCM/NoPadding");
+                    }
+                    this.gcmDecrypt.init(Cipher.DECRYPT_MODE, new SecretKeySpec(this.decryptionKey, "AES"),
+                            new GCMParameterSpec(AUTH_TAG_LENGTH * 8, header, hdrOff + NONCE_OFFSET, GCM_NONCE_LENGTH));
+                    this.gcmDecrypt.updateAAD(header, hdrOff + NONCE_OFFSET, AAD_LENGTH);
+                    return this.gcmDecrypt.doFinal(buffer, off, len + AUTH_TAG_LENGTH, buffer, off);
+                }
+                if (this.ccmDecrypt == null) {
+                    this.ccmDecrypt = new CCMBlockCipher(new AESEngine());
+                }
+                final byte[] nonce = new byte[CCM_NONCE_LENGTH];
+                System.arraycopy(header, hdrOff + NONCE_OFFSET, nonce, 0, CCM_NONCE_LENGTH);
+                this.ccmDecrypt.init(false, new AEADParameters(new KeyParameter(this.decryptionKey), AUTH_TAG_LENGTH * 8, nonce, null));
+                this.ccmDecrypt.processAADBytes(header, hdrOff + NONCE_OFFSET, AAD_LENGTH);
+                final int p = this.ccmDecrypt.processBytes(buffer, off, len + AUTH_TAG_LENGTH, buffer, off);
+                return p + this.ccmDecrypt.doFinal(buffer, off + p);
             }
-
-            return plaintext;
         } catch (final Exception e) {
             throw new CIFSException("Failed to decrypt message", e);
         }
     }
 
-    private boolean isGCMCipher() {
-        return this.cipherId == CIPHER_AES_128_GCM;
+    private void writeNonce(final byte[] buffer, final int off) {
+        // counter based nonce, unique per key as long as the counter does not wrap
+        final int nonceLength = isGCMCipher() ? GCM_NONCE_LENGTH : CCM_NONCE_LENGTH;
+        SMBUtil.writeInt8(this.nonceCounter.incrementAndGet(), buffer, off);
+        System.arraycopy(this.nonceSalt, 0, buffer, off + 8, nonceLength - 8);
+        Arrays.fill(buffer, off + nonceLength, off + 16, (byte) 0);
     }
 
-    private int getKeyLength() {
-        // Currently only AES-128 is supported
-        if (this.cipherId == CIPHER_AES_128_CCM || this.cipherId == CIPHER_AES_128_GCM) {
-            return 16;
-        }
-        throw new IllegalArgumentException("Unsupported cipher: " + this.cipherId);
-    }
-
-    private int getAuthTagLength() {
-        return 16; // All SMB3 ciphers use 16-byte authentication tags
+    private boolean isGCMCipher() {
+        return this.cipherId == CIPHER_AES_128_GCM;
     }
 
     private int getTransformFlags() {
@@ -270,32 +335,6 @@ public class Smb2EncryptionContext {
         return this.cipherId;
     }
 
-    private Cipher createGCMCipher(final boolean encrypt, final byte[] nonce) throws Exception {
-        final String algorithm = "AES";
-        final SecretKeySpec keySpec = new SecretKeySpec(encrypt ? this.encryptionKey : this.decryptionKey, algorithm);
-
-        final Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-        final GCMParameterSpec gcmSpec = new GCMParameterSpec(getAuthTagLength() * 8, nonce);
-        cipher.init(encrypt ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE, keySpec, gcmSpec);
-
-        return cipher;
-    }
-
-    private AEADBlockCipher createCCMCipher(final boolean encrypt, final byte[] nonce, final int aadLength, final int plaintextLength) {
-        final AEADBlockCipher cipher = new CCMBlockCipher(new AESEngine());
-
-        final KeyParameter keyParam = new KeyParameter(encrypt ? this.encryptionKey : this.decryptionKey);
-        // CCMBlockCipher requires nonce length between 7 and 13
-        final byte[] adjustedNonce = new byte[13];
-        System.arraycopy(nonce, 0, adjustedNonce, 0, Math.min(13, nonce.length));
-
-        final AEADParameters params = new AEADParameters(keyParam, getAuthTagLength() * 8, adjustedNonce, null);
-
-        cipher.init(encrypt, params);
-
-        return cipher;
-    }
-
     private static byte[] longToBytes(final long value) {
         final byte[] bytes = new byte[8];
         for (int i = 0; i < 8; i++) {
@@ -18,13 +18,20 @@
 package org.codelibs.jcifs.smb.internal.smb2;
 
 import java.security.GeneralSecurityException;
-import java.security.MessageDigest;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.Provider;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.crypto.Cipher;
 import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
 import org.codelibs.jcifs.smb.internal.CommonServerMessageBlock;
 import org.codelibs.jcifs.smb.internal.SMBSigningDigest;
+import org.codelibs.jcifs.smb.internal.smb2.nego.SigningNegotiateContext;
 import org.codelibs.jcifs.smb.internal.util.SMBUtil;
 import org.codelibs.jcifs.smb.util.Crypto;
 import org.slf4j.Logger;
@@ -37,6 +44,10 @@ import org.slf4j.LoggerFactory;
  * message integrity and authenticity. It supports different signing algorithms
  * used in various SMB2/SMB3 dialect versions.
  *
+ * Messages may be signed and verified concurrently. Each operation borrows a MAC
+ * instance from a small pool, so concurrent messages do not contend on a shared
+ * instance and no buffers are allocated per message.
+ *
  * @author mbechler
  */
 public class Smb2SigningDigest implements SMBSigningDigest {
@@ -48,7 +59,13 @@ public class Smb2SigningDigest implements SMBSigningDigest {
      */
     private static final int SIGNATURE_OFFSET = 48;
     private static final int SIGNATURE_LENGTH = 16;
-    private final Mac digest;
+
+    private static final int MAX_POOLED_ENGINES = 8;
+
+    private final int algorithm;
+    private final SecretKeySpec key;
+    private final Queue<Engine> engines = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledEngines = new AtomicInteger();
 
     /**
      * Constructs a SMB2 signing digest with the specified session key and dialect
@@ -65,32 +82,60 @@ public class Smb2SigningDigest implements SMBSigningDigest {
      */
     public Smb2SigningDigest(final byte[] sessionKey, final int dialect, final byte[] preauthIntegrityHash)
             throws GeneralSecurityException {
-        Mac m;
+        this(sessionKey, dialect, preauthIntegrityHash, -1);
+    }
+
+    /**
+     * Constructs a SMB2 signing digest with the specified session key, dialect and negotiated signing algorithm
+     *
+     * @param sessionKey
+     *            the session key for signing
+     * @param dialect
+     *            the SMB2 dialect version
+     * @param preauthIntegrityHash
+     *            the pre-authentication integrity hash (for SMB 3.1.1)
+     * @param signingAlgorithm
+     *            the signing algorithm negotiated for SMB 3.1.1, see {@link SigningNegotiateContext}, -1 if none was
+     *            negotiated
+     * @throws GeneralSecurityException
+     *             if the signing algorithm cannot be initialized
+     */
+    public Smb2SigningDigest(final byte[] sessionKey, final int dialect, final byte[] preauthIntegrityHash, final int signingAlgorithm)
+            throws GeneralSecurityException {
         byte[] signingKey;
         switch (dialect) {
         case Smb2Constants.SMB2_DIALECT_0202:
         case Smb2Constants.SMB2_DIALECT_0210:
-            m = Mac.getInstance("HmacSHA256");
+            this.algorithm = SigningNegotiateContext.SIGNING_HMAC_SHA256;
             signingKey = sessionKey;
             break;
         case Smb2Constants.SMB2_DIALECT_0300:
         case Smb2Constants.SMB2_DIALECT_0302:
             signingKey = Smb3KeyDerivation.deriveSigningKey(dialect, sessionKey, new byte[0] /* unimplemented */);
-            m = Mac.getInstance("AESCMAC", Crypto.getProvider());
+            this.algorithm = SigningNegotiateContext.SIGNING_AES_CMAC;
             break;
         case Smb2Constants.SMB2_DIALECT_0311:
             if (preauthIntegrityHash == null) {
                 throw new IllegalArgumentException("Missing preauthIntegrityHash for SMB 3.1");
             }
             signingKey = Smb3KeyDerivation.deriveSigningKey(dialect, sessionKey, preauthIntegrityHash);
-            m = Mac.getInstance("AESCMAC", Crypto.getProvider());
+            this.algorithm = signingAlgorithm == SigningNegotiateContext.SIGNING_AES_GMAC ? SigningNegotiateContext.SIGNING_AES_GMAC
+                    : SigningNegotiateContext.SIGNING_AES_CMAC;
             break;
         default:
             throw new IllegalArgumentException("Unknown dialect");
         }
 
-        m.init(new SecretKeySpec(signingKey, "HMAC"));
-        this.digest = m;
+        this.key = new SecretKeySpec(signingKey, this.algorithm == SigningNegotiateContext.SIGNING_HMAC_SHA256 ? "HMAC" : "AES");
+        // fail early if the algorithm is unavailable
+        release(new Engine(this.algorithm, this.key));
+    }
+
+    /**
+     * @return the signing algorithm used, see {@link SigningNegotiateContext}
+     */
+    public int getSigningAlgorithm() {
+        return this.algorithm;
     }
 
     /**
@@ -100,10 +145,31 @@ public class Smb2SigningDigest implements SMBSigningDigest {
      *      org.codelibs.jcifs.smb.internal.CommonServerMessageBlock)
      */
     @Override
-    public synchronized void sign(final byte[] data, final int offset, final int length, final CommonServerMessageBlock request,
+    public void sign(final byte[] data, final int offset, final int length, final CommonServerMessageBlock request,
             final CommonServerMessageBlock response) {
-        this.digest.reset();
+        sign(data, offset, length, null, 0, 0);
+    }
 
+    /**
+     * Sign a message whose trailing payload is stored separately
+     *
+     * This is used for messages whose payload is sent directly from the caller's buffer.
+     *
+     * @param data
+     *            buffer holding the message header and the fixed part of the message
+     * @param offset
+     *            offset of the message header
+     * @param length
+     *            length of the message part in data
+     * @param payload
+     *            buffer holding the remainder of the message, may be null
+     * @param payloadOffset
+     *            offset of the payload
+     * @param payloadLength
+     *            length of the payload
+     */
+    public void sign(final byte[] data, final int offset, final int length, final byte[] payload, final int payloadOffset,
+            final int payloadLength) {
         // zero out signature field
         final int index = offset + SIGNATURE_OFFSET;
         for (int i = 0; i < SIGNATURE_LENGTH; i++) {
@@ -115,10 +181,13 @@ public class Smb2SigningDigest implements SMBSigningDigest {
         final int flags = oldFlags | ServerMessageBlock2.SMB2_FLAGS_SIGNED;
         SMBUtil.writeInt4(flags, data, offset + 16);
 
-        this.digest.update(data, offset, length);
-
-        final byte[] sig = this.digest.doFinal();
-        System.arraycopy(sig, 0, data, offset + SIGNATURE_OFFSET, SIGNATURE_LENGTH);
+        final Engine e = acquire();
+        try {
+            final byte[] sig = e.compute(data, offset, length, payload, payloadOffset, payloadLength);
+            System.arraycopy(sig, 0, data, index, SIGNATURE_LENGTH);
+        } finally {
+            release(e);
+        }
     }
 
     /**
@@ -128,32 +197,173 @@ public class Smb2SigningDigest implements SMBSigningDigest {
      * @see org.codelibs.jcifs.smb.internal.SMBSigningDigest#verify(byte[], int, int, int, org.codelibs.jcifs.smb.internal.CommonServerMessageBlock)
      */
     @Override
-    public synchronized boolean verify(final byte[] data, final int offset, final int length, final int extraPad,
+    public boolean verify(final byte[] data, final int offset, final int length, final int extraPad,
             final CommonServerMessageBlock msg) {
-        this.digest.reset();
+        return verify(data, offset, length, null, 0, 0);
+    }
 
+    /**
+     * Verify the signature of a message whose trailing payload is stored separately
+     *
+     * This is used for messages whose payload was received directly into a destination buffer.
+     *
+     * @param data
+     *            buffer holding the message header and the fixed part of the message
+     * @param offset
+     *            offset of the message header
+     * @param length
+     *            length of the message part in data
+     * @param payload
+     *            buffer holding the remainder of the message, may be null
+     * @param payloadOffset
+     *            offset of the payload
+     * @param payloadLength
+     *            length of the payload
+     * @return whether the signature verification failed
+     */
+    public boolean verify(final byte[] data, final int offset, final int length, final byte[] payload, final int payloadOffset,
+            final int payloadLength) {
         final int flags = SMBUtil.readInt4(data, offset + 16);
         if ((flags & ServerMessageBlock2.SMB2_FLAGS_SIGNED) == 0) {
             log.error("The server did not sign a message we expected to be signed");
             return true;
         }
 
-        final byte[] sig = new byte[SIGNATURE_LENGTH];
-        System.arraycopy(data, offset + SIGNATURE_OFFSET, sig, 0, SIGNATURE_LENGTH);
+        final Engine e = acquire();
+        try {
+            final byte[] expected = e.expected;
+            final int index = offset + SIGNATURE_OFFSET;
+            System.arraycopy(data, index, expected, 0, SIGNATURE_LENGTH);
+            for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+                data[index + i] = 0;
+            }
 
-        final int index = offset + SIGNATURE_OFFSET;
-        for (int i = 0; i < SIGNATURE_LENGTH; i++) {
-            data[index + i] = 0;
+            final byte[] cmp = e.compute(data, offset, length, payload, payloadOffset, payloadLength);
+            int diff = 0;
+            for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+                diff |= expected[i] ^ cmp[i];
+            }
+            return diff != 0;
+        } finally {
+            release(e);
+        }
+    }
+
+    private Engine acquire() {
+        final Engine e = this.engines.poll();
+        if (e != null) {
+            this.pooledEngines.decrementAndGet();
+            return e;
         }
+        try {
+            return new Engine(this.algorithm, this.key);
+        } catch (final GeneralSecurityException ex) {
+            // already succeeded once in the constructor
+            throw new IllegalStateException("Failed to initialize signing algorithm", ex);
+        }
+    }
 
-        this.digest.update(data, offset, length);
+    private void release(final Engine e) {
+        if (this.pooledEngines.incrementAndGet() <= MAX_POOLED_ENGINES) {
+            this.engines.offer(e);
+        } else {
+            this.pooledEngines.decrementAndGet();
+        }
+    }
 
-        final byte[] cmp = new byte[SIGNATURE_LENGTH];
-        System.arraycopy(this.digest.doFinal(), 0, cmp, 0, SIGNATURE_LENGTH);
-        if (!MessageDigest.isEqual(sig, cmp)) {
-            return true;
+    /**
+     * MAC state and scratch buffers, used by one thread at a time
+     */
+    private static final class Engine {
+
+        private static final int GMAC_NONCE_LENGTH = 12;
+        private static final int GMAC_TAG_BITS = 128;
+
+        private final SecretKeySpec key;
+        private final Mac mac;
+        private final Cipher gmac;
+        private final byte[] nonce = new byte[GMAC_NONCE_LENGTH];
+        private final byte[] out;
+        final byte[] expected = new byte[SIGNATURE_LENGTH];
+
+        Engine(final int algorithm, final SecretKeySpec key) throws GeneralSecurityException {
+            this.key = key;
+            switch (algorithm) {
+            case SigningNegotiateContext.SIGNING_HMAC_SHA256:
+                this.mac = Mac.getInstance("HmacSHA256");
+                this.gmac = null;
+                break;
+            case SigningNegotiateContext.SIGNING_AES_GMAC:
+                this.mac = null;
+                this.gmac = Cipher.getInstance("AES/GCM/NoPadding");
+                break;
+            default:
+                final Provider p = Crypto.getProvider();
+                this.mac = Mac.getInstance("AESCMAC", p);
+                this.gmac = null;
+                break;
+            }
+            if (this.mac != null) {
+                this.mac.init(key);
+                this.out = new byte[this.mac.getMacLength()];
+            } else {
+                this.out = new byte[SIGNATURE_LENGTH];
+            }
+        }
+
+        /**
+         * @return buffer holding the signature in its first 16 bytes, valid until the next call
+         */
+        byte[] compute(final byte[] data, final int offset, final int length, final byte[] payload, final int payloadOffset,
+                final int payloadLength) {
+            try {
+                if (this.mac != null) {
+                    this.mac.update(data, offset, length);
+                    if (payload != null) {
+                        this.mac.update(payload, payloadOffset, payloadLength);
+                    }
+                    this.mac.doFinal(this.out, 0);
+                    return this.out;
+                }
+
+                initGmac(data, offset);
+                this.gmac.updateAAD(data, offset, length);
+                if (payload != null) {
+                    this.gmac.updateAAD(payload, payloadOffset, payloadLength);
+                }
+                this.gmac.doFinal(this.out, 0);
+                return this.out;
+            } catch (final GeneralSecurityException e) {
+                throw new IllegalStateException("Failed to compute signature", e);
+            }
+        }
+
+        /**
+         * The GMAC nonce is the message id, followed by a flag for server to client messages and one for cancel
+         * requests
+         */
+        private void initGmac(final byte[] data, final int offset) throws GeneralSecurityException {
+            System.arraycopy(data, offset + 24, this.nonce, 0, 8);
+            final int flags = SMBUtil.readInt4(data, offset + 16);
+            final int command = SMBUtil.readInt2(data, offset + 12);
+            int role = 0;
+            if ((flags & ServerMessageBlock2.SMB2_FLAGS_SERVER_TO_REDIR) != 0) {
+                role |= 0x1;
+            }
+            if (command == ServerMessageBlock2.SMB2_CANCEL) {
+                role |= 0x2;
+            }
+            SMBUtil.writeInt4(role, this.nonce, 8);
+            try {
+                this.gmac.init(Cipher.ENCRYPT_MODE, this.key, new GCMParameterSpec(GMAC_TAG_BITS, this.nonce));
+            } catch (final InvalidAlgorithmParameterException e) {
+                // the provider refuses to reuse the previous nonce, e.g. when the same message is signed twice
+                final byte[] other = this.nonce.clone();
+                other[GMAC_NONCE_LENGTH - 1] ^= 0x80;
+                this.gmac.init(Cipher.ENCRYPT_MODE, this.key, new GCMParameterSpec(GMAC_TAG_BITS, other));
+                this.gmac.init(Cipher.ENCRYPT_MODE, this.key, new GCMParameterSpec(GMAC_TAG_BITS, this.nonce));
+            }
         }
-        return false;
     }
 
 }
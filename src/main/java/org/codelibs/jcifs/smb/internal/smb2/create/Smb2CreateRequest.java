@@ -18,6 +18,7 @@
 package org.codelibs.jcifs.smb.internal.smb2.create;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import org.codelibs.jcifs.smb.CIFSContext;
 import org.codelibs.jcifs.smb.Configuration;
@@ -348,6 +349,19 @@ public class Smb2CreateRequest extends ServerMessageBlock2Request<Smb2CreateResp
         this.requestedOplockLevel = requestedOplockLevel;
     }
 
+    /**
+     * Add a create context to this request
+     * @param createContext the create context to add
+     */
+    public void addCreateContext(final CreateContextRequest createContext) {
+        if (this.createContexts == null) {
+            this.createContexts = new CreateContextRequest[] { createContext };
+        } else {
+            this.createContexts = Arrays.copyOf(this.createContexts, this.createContexts.length + 1);
+            this.createContexts[this.createContexts.length - 1] = createContext;
+        }
+    }
+
     /**
      * Set the impersonation level for the create request
      * @param impersonationLevel the impersonationLevel to set
@@ -420,7 +434,7 @@ public class Smb2CreateRequest extends ServerMessageBlock2Request<Smb2CreateResp
         size += size8(nameLen);
         if (this.createContexts != null) {
             for (final CreateContextRequest ccr : this.createContexts) {
-                size += size8(ccr.size());
+                size += size8(16 + ccr.getName().length) + size8(ccr.size());
             }
         }
         return size8(size);
@@ -491,14 +505,15 @@ public class Smb2CreateRequest extends ServerMessageBlock2Request<Smb2CreateResp
         }
         int totalCreateContextLength = 0;
         if (this.createContexts != null) {
+            final int contextsStart = dstIndex;
             int lastStart = -1;
             for (final CreateContextRequest createContext : this.createContexts) {
                 final int structStart = dstIndex;
 
                 SMBUtil.writeInt4(0, dst, structStart); // Next
-                if (lastStart > 0) {
+                if (lastStart >= 0) {
                     // set next pointer of previous CREATE_CONTEXT
-                    SMBUtil.writeInt4(structStart - dstIndex, dst, lastStart);
+                    SMBUtil.writeInt4(structStart - lastStart, dst, lastStart);
                 }
 
                 dstIndex += 4;
@@ -521,10 +536,9 @@ public class Smb2CreateRequest extends ServerMessageBlock2Request<Smb2CreateResp
                 final int len = createContext.encode(dst, dstIndex);
                 SMBUtil.writeInt4(len, dst, dataLengthOffset);
                 dstIndex += len;
+                totalCreateContextLength = dstIndex - contextsStart;
 
-                final int pad = pad8(dstIndex);
-                totalCreateContextLength += len + pad;
-                dstIndex += pad;
+                dstIndex += pad8(dstIndex);
                 lastStart = structStart;
             }
         }
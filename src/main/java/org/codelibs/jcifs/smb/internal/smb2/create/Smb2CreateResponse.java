@@ -17,6 +17,8 @@
  */
 package org.codelibs.jcifs.smb.internal.smb2.create;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -26,6 +28,7 @@ import org.codelibs.jcifs.smb.internal.SMBProtocolDecodingException;
 import org.codelibs.jcifs.smb.internal.SmbBasicFileInfo;
 import org.codelibs.jcifs.smb.internal.smb2.RequestWithFileId;
 import org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2Response;
+import org.codelibs.jcifs.smb.internal.smb2.lease.Smb2LeaseContext;
 import org.codelibs.jcifs.smb.internal.util.SMBUtil;
 import org.codelibs.jcifs.smb.util.Hexdump;
 import org.slf4j.Logger;
@@ -42,6 +45,8 @@ public class Smb2CreateResponse extends ServerMessageBlock2Response implements S
 
     private static final Logger log = LoggerFactory.getLogger(Smb2CreateResponse.class);
 
+    private static final byte[] LEASE_CONTEXT_NAME = Smb2LeaseContext.NAME.getBytes(StandardCharsets.US_ASCII);
+
     private byte oplockLevel;
     private byte openFlags;
     private int createAction;
@@ -213,6 +218,21 @@ public class Smb2CreateResponse extends ServerMessageBlock2Response implements S
         return this.createContexts;
     }
 
+    /**
+     * Get the granted lease
+     * @return the lease create context response, null if no lease was granted
+     */
+    public Smb2LeaseContext getLeaseContext() {
+        if (this.createContexts != null) {
+            for (final CreateContextResponse cc : this.createContexts) {
+                if (cc instanceof final Smb2LeaseContext lease) {
+                    return lease;
+                }
+            }
+        }
+        return null;
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -322,6 +342,9 @@ public class Smb2CreateResponse extends ServerMessageBlock2Response implements S
      * @return
      */
     private static CreateContextResponse createContext(final byte[] nameBytes) {
+        if (Arrays.equals(nameBytes, LEASE_CONTEXT_NAME)) {
+            return new Smb2LeaseContext();
+        }
         return null;
     }
 
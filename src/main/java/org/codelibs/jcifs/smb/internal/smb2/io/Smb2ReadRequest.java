@@ -38,6 +38,10 @@ public class Smb2ReadRequest extends ServerMessageBlock2Request<Smb2ReadResponse
      * Flag to indicate unbuffered read operation
      */
     public static byte SMB2_READFLAG_READ_UNBUFFERED = 0x1;
+    /**
+     * Flag to request a compressed response (SMB 3.1.1)
+     */
+    public static final byte SMB2_READFLAG_REQUEST_COMPRESSED = 0x4;
     /**
      * Channel type for standard read without RDMA
      */
@@ -116,6 +120,15 @@ public class Smb2ReadRequest extends ServerMessageBlock2Request<Smb2ReadResponse
         this.readFlags = readFlags;
     }
 
+    /**
+     * Gets the read flags for the read operation
+     *
+     * @return the readFlags
+     */
+    public byte getReadFlags() {
+        return this.readFlags;
+    }
+
     /**
      * Sets the number of bytes to read
      *
@@ -126,6 +139,15 @@ public class Smb2ReadRequest extends ServerMessageBlock2Request<Smb2ReadResponse
         this.readLength = readLength;
     }
 
+    /**
+     * Gets the number of bytes to read
+     *
+     * @return the readLength
+     */
+    public int getReadLength() {
+        return this.readLength;
+    }
+
     /**
      * Sets the file offset from which to start reading
      *
@@ -156,6 +178,16 @@ public class Smb2ReadRequest extends ServerMessageBlock2Request<Smb2ReadResponse
         this.remainingBytes = remainingBytes;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2Request#getPayloadSize()
+     */
+    @Override
+    protected int getPayloadSize() {
+        return this.readLength;
+    }
+
     /**
      * {@inheritDoc}
      *
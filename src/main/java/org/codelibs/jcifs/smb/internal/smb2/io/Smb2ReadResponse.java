@@ -22,6 +22,7 @@ import org.codelibs.jcifs.smb.impl.NtStatus;
 import org.codelibs.jcifs.smb.internal.SMBProtocolDecodingException;
 import org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2Response;
 import org.codelibs.jcifs.smb.internal.smb2.Smb2Constants;
+import org.codelibs.jcifs.smb.internal.smb2.Smb2SigningDigest;
 import org.codelibs.jcifs.smb.internal.util.SMBUtil;
 
 /**
@@ -43,6 +44,7 @@ public class Smb2ReadResponse extends ServerMessageBlock2Response {
     private int dataLength;
     private final byte[] outputBuffer;
     private final int outputBufferOffset;
+    private int directDataOffset = -1;
 
     /**
      * Constructs a SMB2 read response with the specified configuration and output buffer
@@ -117,11 +119,93 @@ public class Smb2ReadResponse extends ServerMessageBlock2Response {
         if (this.dataLength + this.outputBufferOffset > this.outputBuffer.length) {
             throw new SMBProtocolDecodingException("Buffer to small for read response");
         }
+        if (this.directDataOffset >= 0) {
+            // data was already received into the output buffer, only the part up to the data is in buffer
+            if (dataOffset != this.directDataOffset) {
+                throw new SMBProtocolDecodingException("Data offset changed");
+            }
+            return Math.max(bufferIndex, dataStart) - start;
+        }
         System.arraycopy(buffer, dataStart, this.outputBuffer, this.outputBufferOffset, this.dataLength);
         bufferIndex = Math.max(bufferIndex, dataStart + this.dataLength);
         return bufferIndex - start;
     }
 
+    /**
+     * Check whether the data of this response can be received directly into the output buffer
+     *
+     * This is the case for successful, unencrypted responses whose data extends to the end of the message.
+     *
+     * @param buffer
+     *            buffer holding the message header and the fixed part of the response, {@link #OVERHEAD} bytes
+     * @param headerStart
+     *            offset of the message header
+     * @param msgSize
+     *            size of the whole message
+     * @return the data offset relative to the header start, -1 if the response must be decoded from a buffer
+     *         holding the whole message
+     */
+    public int getDirectDataOffset(final byte[] buffer, final int headerStart, final int msgSize) {
+        final int status = SMBUtil.readInt4(buffer, headerStart + 8);
+        final int flags = SMBUtil.readInt4(buffer, headerStart + 16);
+        final int nextCommand = SMBUtil.readInt4(buffer, headerStart + 20);
+        if (status != NtStatus.NT_STATUS_SUCCESS || nextCommand != 0 || (flags & SMB2_FLAGS_ASYNC_COMMAND) != 0) {
+            return -1;
+        }
+        final int bodyStart = headerStart + Smb2Constants.SMB2_HEADER_LENGTH;
+        if (SMBUtil.readInt2(buffer, bodyStart) != 17) {
+            return -1;
+        }
+        final int dataOffset = buffer[bodyStart + 2] & 0xFF;
+        final int len = SMBUtil.readInt4(buffer, bodyStart + 4);
+        if (dataOffset < OVERHEAD || len <= 0 || dataOffset + len != msgSize || len + this.outputBufferOffset > this.outputBuffer.length) {
+            return -1;
+        }
+        return dataOffset;
+    }
+
+    /**
+     * @return the buffer the data is read into
+     */
+    public byte[] getOutputBuffer() {
+        return this.outputBuffer;
+    }
+
+    /**
+     * @return offset in the output buffer the data is placed at
+     */
+    public int getOutputBufferOffset() {
+        return this.outputBufferOffset;
+    }
+
+    /**
+     * Mark the data as already received into the output buffer
+     *
+     * The response is then decoded from a buffer holding only the message up to the data offset.
+     *
+     * @param dataOffset
+     *            the data offset as returned by {@link #getDirectDataOffset(byte[], int, int)}
+     */
+    public void setDirectDataOffset(final int dataOffset) {
+        this.directDataOffset = dataOffset;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The signature of directly received responses also covers the data in the output buffer.
+     *
+     * @see org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2Response#verifyDigest(org.codelibs.jcifs.smb.internal.smb2.Smb2SigningDigest,
+     *      byte[], int, int)
+     */
+    @Override
+    protected boolean verifyDigest(final Smb2SigningDigest dgst, final byte[] buffer, final int i, final int size) {
+        if (this.directDataOffset < 0) {
+            return super.verifyDigest(dgst, buffer, i, size);
+        }
+        return dgst.verify(buffer, i, this.directDataOffset, this.outputBuffer, this.outputBufferOffset, this.dataLength);
+    }
+
     /**
      * {@inheritDoc}
      *
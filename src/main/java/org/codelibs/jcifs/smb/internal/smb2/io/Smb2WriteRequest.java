@@ -22,6 +22,7 @@ import org.codelibs.jcifs.smb.Configuration;
 import org.codelibs.jcifs.smb.internal.smb2.RequestWithFileId;
 import org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2Request;
 import org.codelibs.jcifs.smb.internal.smb2.Smb2Constants;
+import org.codelibs.jcifs.smb.internal.smb2.Smb2SigningDigest;
 import org.codelibs.jcifs.smb.internal.util.SMBUtil;
 
 /**
@@ -48,6 +49,7 @@ public class Smb2WriteRequest extends ServerMessageBlock2Request<Smb2WriteRespon
     private int channel;
     private int remainingBytes;
     private int writeFlags;
+    private boolean externalData;
 
     /**
      * Creates a new SMB2 write request for writing data to a file.
@@ -88,6 +90,51 @@ public class Smb2WriteRequest extends ServerMessageBlock2Request<Smb2WriteRespon
         this.dataLength = length;
     }
 
+    /**
+     * @return the buffer holding the data to write
+     */
+    public byte[] getData() {
+        return this.data;
+    }
+
+    /**
+     * @return the offset of the data in the buffer
+     */
+    public int getDataOffset() {
+        return this.dataOffset;
+    }
+
+    /**
+     * @return the number of bytes to write
+     */
+    public int getDataLength() {
+        return this.dataLength;
+    }
+
+    /**
+     * Encode the message without the data
+     *
+     * The data has to be sent directly following the encoded message, the signature is computed over both. This is
+     * only possible for a request that is not part of a compound.
+     *
+     * @param dst
+     *            destination buffer
+     * @param dstIndex
+     *            offset to encode at
+     * @return the encoded length, the data length is not included
+     */
+    public int encodeWithoutData(final byte[] dst, final int dstIndex) {
+        if (getNext() != null) {
+            throw new IllegalStateException("Cannot send data separately in a compound request");
+        }
+        this.externalData = true;
+        try {
+            return encode(dst, dstIndex);
+        } finally {
+            this.externalData = false;
+        }
+    }
+
     /**
      * Sets the number of bytes remaining to be written in a sequence of write operations.
      *
@@ -115,6 +162,16 @@ public class Smb2WriteRequest extends ServerMessageBlock2Request<Smb2WriteRespon
         this.offset = offset;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2Request#getPayloadSize()
+     */
+    @Override
+    protected int getPayloadSize() {
+        return this.dataLength;
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -122,6 +179,9 @@ public class Smb2WriteRequest extends ServerMessageBlock2Request<Smb2WriteRespon
      */
     @Override
     public int size() {
+        if (this.externalData) {
+            return OVERHEAD;
+        }
         return size8(Smb2Constants.SMB2_HEADER_LENGTH + 48 + this.dataLength);
     }
 
@@ -156,6 +216,10 @@ public class Smb2WriteRequest extends ServerMessageBlock2Request<Smb2WriteRespon
 
         SMBUtil.writeInt2(dstIndex - getHeaderStart(), dst, dataOffsetOffset);
 
+        if (this.externalData) {
+            return dstIndex - start;
+        }
+
         if (dstIndex + this.dataLength > dst.length) {
             throw new IllegalArgumentException(
                     String.format("Data exceeds buffer size ( remain buffer: %d data length: %d)", dst.length - dstIndex, this.dataLength));
@@ -166,6 +230,21 @@ public class Smb2WriteRequest extends ServerMessageBlock2Request<Smb2WriteRespon
         return dstIndex - start;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2#signMessage(org.codelibs.jcifs.smb.internal.smb2.Smb2SigningDigest,
+     *      byte[], int, int)
+     */
+    @Override
+    protected void signMessage(final Smb2SigningDigest dgst, final byte[] dst, final int start, final int len) {
+        if (this.externalData) {
+            dgst.sign(dst, start, len, this.data, this.dataOffset, this.dataLength);
+        } else {
+            super.signMessage(dgst, dst, start, len);
+        }
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -0,0 +1,168 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.internal.smb2.ioctl;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import org.codelibs.jcifs.smb.Decodable;
+import org.codelibs.jcifs.smb.internal.SMBProtocolDecodingException;
+import org.codelibs.jcifs.smb.internal.util.SMBUtil;
+
+/**
+ * SMB2 NETWORK_INTERFACE_INFO structure, one entry of the FSCTL_QUERY_NETWORK_INTERFACE_INFO response
+ *
+ * Describes a network interface of the server that can be used to establish additional channels.
+ */
+public class NetworkInterfaceInfo implements Decodable {
+
+    /**
+     * Interface supports receive side scaling
+     */
+    public static final int NETWORK_INTERFACE_CAP_RSS = 0x1;
+
+    /**
+     * Interface supports RDMA
+     */
+    public static final int NETWORK_INTERFACE_CAP_RDMA = 0x2;
+
+    /**
+     * Size of an encoded entry
+     */
+    public static final int SIZE = 152;
+
+    private static final int AF_INET = 0x2;
+    private static final int AF_INET6 = 0x17;
+
+    private int next;
+    private int interfaceIndex;
+    private int capability;
+    private long linkSpeed;
+    private InetAddress address;
+    private int port;
+
+    /**
+     * Constructs an empty interface info to decode into
+     */
+    public NetworkInterfaceInfo() {
+    }
+
+    /**
+     * @return offset of the next entry relative to the start of this one, 0 if this is the last entry
+     */
+    public int getNext() {
+        return this.next;
+    }
+
+    /**
+     * @return the server's interface index
+     */
+    public int getInterfaceIndex() {
+        return this.interfaceIndex;
+    }
+
+    /**
+     * @return the interface capabilities
+     */
+    public int getCapability() {
+        return this.capability;
+    }
+
+    /**
+     * @return whether the interface supports receive side scaling
+     */
+    public boolean isRssCapable() {
+        return (this.capability & NETWORK_INTERFACE_CAP_RSS) != 0;
+    }
+
+    /**
+     * @return whether the interface supports RDMA
+     */
+    public boolean isRdmaCapable() {
+        return (this.capability & NETWORK_INTERFACE_CAP_RDMA) != 0;
+    }
+
+    /**
+     * @return link speed in bits per second
+     */
+    public long getLinkSpeed() {
+        return this.linkSpeed;
+    }
+
+    /**
+     * @return the interface address, null if the address family is not supported
+     */
+    public InetAddress getAddress() {
+        return this.address;
+    }
+
+    /**
+     * @return the port, usually 0 meaning the port of the existing connection
+     */
+    public int getPort() {
+        return this.port;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Decodable#decode(byte[], int, int)
+     */
+    @Override
+    public int decode(final byte[] buffer, int bufferIndex, final int len) throws SMBProtocolDecodingException {
+        if (len < SIZE) {
+            throw new SMBProtocolDecodingException("Invalid network interface info");
+        }
+        final int start = bufferIndex;
+        this.next = SMBUtil.readInt4(buffer, bufferIndex);
+        bufferIndex += 4;
+        this.interfaceIndex = SMBUtil.readInt4(buffer, bufferIndex);
+        bufferIndex += 4;
+        this.capability = SMBUtil.readInt4(buffer, bufferIndex);
+        bufferIndex += 8; // Reserved
+        this.linkSpeed = SMBUtil.readInt8(buffer, bufferIndex);
+        bufferIndex += 8;
+
+        final int family = SMBUtil.readInt2(buffer, bufferIndex);
+        // port is in network byte order
+        this.port = (buffer[bufferIndex + 2] & 0xFF) << 8 | buffer[bufferIndex + 3] & 0xFF;
+        byte[] addr = null;
+        if (family == AF_INET) {
+            addr = new byte[4];
+            System.arraycopy(buffer, bufferIndex + 4, addr, 0, 4);
+        } else if (family == AF_INET6) {
+            addr = new byte[16];
+            System.arraycopy(buffer, bufferIndex + 8, addr, 0, 16);
+        }
+        if (addr != null) {
+            try {
+                this.address = InetAddress.getByAddress(addr);
+            } catch (final UnknownHostException e) {
+                throw new SMBProtocolDecodingException("Invalid interface address", e);
+            }
+        }
+        bufferIndex += 128;
+        return bufferIndex - start;
+    }
+
+    @Override
+    public String toString() {
+        return "NetworkInterfaceInfo[index=" + this.interfaceIndex + ",address=" + this.address + ",capability=" + this.capability
+                + ",linkSpeed=" + this.linkSpeed + "]";
+    }
+}
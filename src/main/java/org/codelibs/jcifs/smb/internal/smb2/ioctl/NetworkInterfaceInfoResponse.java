@@ -0,0 +1,73 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.internal.smb2.ioctl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.codelibs.jcifs.smb.Decodable;
+import org.codelibs.jcifs.smb.internal.SMBProtocolDecodingException;
+
+/**
+ * FSCTL_QUERY_NETWORK_INTERFACE_INFO response data, the list of the server's network interfaces
+ */
+public class NetworkInterfaceInfoResponse implements Decodable {
+
+    private final List<NetworkInterfaceInfo> interfaces = new ArrayList<>();
+
+    /**
+     * Constructs an empty response to decode into
+     */
+    public NetworkInterfaceInfoResponse() {
+    }
+
+    /**
+     * @return the server's network interfaces
+     */
+    public List<NetworkInterfaceInfo> getInterfaces() {
+        return Collections.unmodifiableList(this.interfaces);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Decodable#decode(byte[], int, int)
+     */
+    @Override
+    public int decode(final byte[] buffer, final int bufferIndex, final int len) throws SMBProtocolDecodingException {
+        int off = 0;
+        while (len - off >= NetworkInterfaceInfo.SIZE) {
+            final NetworkInterfaceInfo info = new NetworkInterfaceInfo();
+            info.decode(buffer, bufferIndex + off, len - off);
+            this.interfaces.add(info);
+            final int next = info.getNext();
+            if (next == 0) {
+                return off + NetworkInterfaceInfo.SIZE;
+            }
+            if (next < NetworkInterfaceInfo.SIZE) {
+                throw new SMBProtocolDecodingException("Invalid network interface info offset " + next);
+            }
+            off += next;
+        }
+        if (off != len) {
+            throw new SMBProtocolDecodingException("Truncated network interface info");
+        }
+        return off;
+    }
+}
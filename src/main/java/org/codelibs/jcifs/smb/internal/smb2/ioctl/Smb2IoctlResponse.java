@@ -235,6 +235,8 @@ public class Smb2IoctlResponse extends ServerMessageBlock2Response {
             return new ValidateNegotiateInfoResponse();
         case Smb2IoctlRequest.FSCTL_PIPE_PEEK:
             return new SrvPipePeekResponse();
+        case Smb2IoctlRequest.FSCTL_QUERY_NETWORK_INTERFACE_INFO:
+            return new NetworkInterfaceInfoResponse();
         }
         return null;
     }
@@ -0,0 +1,94 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.internal.smb2.lease;
+
+import org.codelibs.jcifs.smb.CIFSContext;
+import org.codelibs.jcifs.smb.Configuration;
+import org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2Request;
+import org.codelibs.jcifs.smb.internal.smb2.Smb2Constants;
+import org.codelibs.jcifs.smb.internal.util.SMBUtil;
+
+/**
+ * SMB2 Lease Break Acknowledgment
+ *
+ * Confirms the lease state the client holds after processing a lease break.
+ */
+public class Smb2LeaseBreakAcknowledgment extends ServerMessageBlock2Request<Smb2LeaseBreakResponse> {
+
+    private final Smb2LeaseKey leaseKey;
+    private final int leaseState;
+
+    /**
+     * @param config
+     * @param leaseKey
+     *            key of the broken lease
+     * @param leaseState
+     *            lease state retained by the client
+     */
+    public Smb2LeaseBreakAcknowledgment(final Configuration config, final Smb2LeaseKey leaseKey, final int leaseState) {
+        super(config, SMB2_OPLOCK_BREAK);
+        this.leaseKey = leaseKey;
+        this.leaseState = leaseState;
+    }
+
+    @Override
+    protected Smb2LeaseBreakResponse createResponse(final CIFSContext tc, final ServerMessageBlock2Request<Smb2LeaseBreakResponse> req) {
+        return new Smb2LeaseBreakResponse(tc.getConfig());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.internal.CommonServerMessageBlockRequest#size()
+     */
+    @Override
+    public int size() {
+        return size8(Smb2Constants.SMB2_HEADER_LENGTH + 36);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2#writeBytesWireFormat(byte[], int)
+     */
+    @Override
+    protected int writeBytesWireFormat(final byte[] dst, int dstIndex) {
+        final int start = dstIndex;
+        SMBUtil.writeInt2(36, dst, dstIndex);
+        SMBUtil.writeInt2(0, dst, dstIndex + 2); // Reserved
+        dstIndex += 4;
+        SMBUtil.writeInt4(0, dst, dstIndex); // Flags
+        dstIndex += 4;
+        dstIndex += this.leaseKey.encode(dst, dstIndex);
+        SMBUtil.writeInt4(this.leaseState, dst, dstIndex);
+        dstIndex += 4;
+        SMBUtil.writeInt8(0, dst, dstIndex); // LeaseDuration
+        dstIndex += 8;
+        return dstIndex - start;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2#readBytesWireFormat(byte[], int)
+     */
+    @Override
+    protected int readBytesWireFormat(final byte[] buffer, final int bufferIndex) {
+        return 0;
+    }
+}
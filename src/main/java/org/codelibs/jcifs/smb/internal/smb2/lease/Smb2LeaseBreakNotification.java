@@ -0,0 +1,147 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.internal.smb2.lease;
+
+import org.codelibs.jcifs.smb.Configuration;
+import org.codelibs.jcifs.smb.internal.SMBProtocolDecodingException;
+import org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2Response;
+import org.codelibs.jcifs.smb.internal.util.SMBUtil;
+
+/**
+ * SMB2 Lease Break notification
+ *
+ * Sent by the server, using the SMB2 OPLOCK_BREAK command, when a lease held by this client has to be downgraded
+ * because of a conflicting open or modification by another client.
+ */
+public class Smb2LeaseBreakNotification extends ServerMessageBlock2Response {
+
+    /**
+     * Structure size of a lease break notification, oplock breaks use 24
+     */
+    public static final int STRUCTURE_SIZE = 44;
+
+    /**
+     * The client has to acknowledge the break
+     */
+    public static final int SMB2_NOTIFY_BREAK_LEASE_FLAG_ACK_REQUIRED = 0x1;
+
+    private int newEpoch;
+    private int breakFlags;
+    private Smb2LeaseKey leaseKey;
+    private int currentLeaseState;
+    private int newLeaseState;
+
+    /**
+     * @param config
+     */
+    public Smb2LeaseBreakNotification(final Configuration config) {
+        super(config);
+    }
+
+    /**
+     * @return the new lease epoch (V2 leases)
+     */
+    public int getNewEpoch() {
+        return this.newEpoch;
+    }
+
+    /**
+     * @return the break flags
+     */
+    public int getBreakFlags() {
+        return this.breakFlags;
+    }
+
+    /**
+     * @return whether an acknowledgment has to be sent
+     */
+    public boolean isAckRequired() {
+        return (this.breakFlags & SMB2_NOTIFY_BREAK_LEASE_FLAG_ACK_REQUIRED) != 0;
+    }
+
+    /**
+     * @return the key of the broken lease
+     */
+    public Smb2LeaseKey getLeaseKey() {
+        return this.leaseKey;
+    }
+
+    /**
+     * @return the lease state before the break
+     */
+    public int getCurrentLeaseState() {
+        return this.currentLeaseState;
+    }
+
+    /**
+     * @return the lease state after the break
+     */
+    public int getNewLeaseState() {
+        return this.newLeaseState;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2#writeBytesWireFormat(byte[], int)
+     */
+    @Override
+    protected int writeBytesWireFormat(final byte[] dst, final int dstIndex) {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2#readBytesWireFormat(byte[], int)
+     */
+    @Override
+    protected int readBytesWireFormat(final byte[] buffer, int bufferIndex) throws SMBProtocolDecodingException {
+        final int start = bufferIndex;
+        final int structureSize = SMBUtil.readInt2(buffer, bufferIndex);
+        if (structureSize != STRUCTURE_SIZE) {
+            throw new SMBProtocolDecodingException("Expected structureSize = 44");
+        }
+        this.newEpoch = SMBUtil.readInt2(buffer, bufferIndex + 2);
+        bufferIndex += 4;
+        this.breakFlags = SMBUtil.readInt4(buffer, bufferIndex);
+        bufferIndex += 4;
+        this.leaseKey = new Smb2LeaseKey(buffer, bufferIndex);
+        bufferIndex += Smb2LeaseKey.LENGTH;
+        this.currentLeaseState = SMBUtil.readInt4(buffer, bufferIndex);
+        bufferIndex += 4;
+        this.newLeaseState = SMBUtil.readInt4(buffer, bufferIndex);
+        bufferIndex += 4;
+        bufferIndex += 4; // BreakReason
+        bufferIndex += 4; // AccessMaskHint
+        bufferIndex += 4; // ShareMaskHint
+        return bufferIndex - start;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2#toString()
+     */
+    @Override
+    public String toString() {
+        return "Smb2LeaseBreakNotification[key=" + this.leaseKey + ",current=" + Smb2LeaseState.toString(this.currentLeaseState)
+                + ",new=" + Smb2LeaseState.toString(this.newLeaseState) + ",epoch=" + this.newEpoch + ",flags=0x"
+                + Integer.toHexString(this.breakFlags) + "]";
+    }
+}
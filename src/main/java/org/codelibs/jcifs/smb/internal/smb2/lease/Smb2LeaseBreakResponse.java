@@ -0,0 +1,85 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.internal.smb2.lease;
+
+import org.codelibs.jcifs.smb.Configuration;
+import org.codelibs.jcifs.smb.internal.SMBProtocolDecodingException;
+import org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2Response;
+import org.codelibs.jcifs.smb.internal.util.SMBUtil;
+
+/**
+ * SMB2 Lease Break response
+ */
+public class Smb2LeaseBreakResponse extends ServerMessageBlock2Response {
+
+    private Smb2LeaseKey leaseKey;
+    private int leaseState;
+
+    /**
+     * @param config
+     */
+    public Smb2LeaseBreakResponse(final Configuration config) {
+        super(config);
+    }
+
+    /**
+     * @return the lease key
+     */
+    public Smb2LeaseKey getLeaseKey() {
+        return this.leaseKey;
+    }
+
+    /**
+     * @return the lease state
+     */
+    public int getLeaseState() {
+        return this.leaseState;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2#writeBytesWireFormat(byte[], int)
+     */
+    @Override
+    protected int writeBytesWireFormat(final byte[] dst, final int dstIndex) {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2#readBytesWireFormat(byte[], int)
+     */
+    @Override
+    protected int readBytesWireFormat(final byte[] buffer, int bufferIndex) throws SMBProtocolDecodingException {
+        final int start = bufferIndex;
+        final int structureSize = SMBUtil.readInt2(buffer, bufferIndex);
+        if (structureSize != 36) {
+            throw new SMBProtocolDecodingException("Expected structureSize = 36");
+        }
+        bufferIndex += 4;
+        bufferIndex += 4; // Flags
+        this.leaseKey = new Smb2LeaseKey(buffer, bufferIndex);
+        bufferIndex += Smb2LeaseKey.LENGTH;
+        this.leaseState = SMBUtil.readInt4(buffer, bufferIndex);
+        bufferIndex += 4;
+        bufferIndex += 8; // LeaseDuration
+        return bufferIndex - start;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.internal.smb2.lease;
+
+import java.nio.charset.StandardCharsets;
+
+import org.codelibs.jcifs.smb.internal.SMBProtocolDecodingException;
+import org.codelibs.jcifs.smb.internal.smb2.create.CreateContextRequest;
+import org.codelibs.jcifs.smb.internal.smb2.create.CreateContextResponse;
+import org.codelibs.jcifs.smb.internal.util.SMBUtil;
+
+/**
+ * SMB2_CREATE_REQUEST_LEASE(_V2) / SMB2_CREATE_RESPONSE_LEASE(_V2) create context
+ *
+ * The version 2 format adds the parent lease key and the lease epoch, it is used when the dialect is SMB 3.0 or
+ * later.
+ */
+public class Smb2LeaseContext implements CreateContextRequest, CreateContextResponse {
+
+    /**
+     * Name of the lease create context, the same for request and response
+     */
+    public static final String NAME = "RqLs";
+
+    /**
+     * Size of a version 1 lease context
+     */
+    public static final int V1_SIZE = 32;
+
+    /**
+     * Size of a version 2 lease context
+     */
+    public static final int V2_SIZE = 52;
+
+    /**
+     * The parent lease key is set (V2 only)
+     */
+    public static final int SMB2_LEASE_FLAG_PARENT_LEASE_KEY_SET = 0x4;
+
+    /**
+     * A break for this lease is in progress (response only)
+     */
+    public static final int SMB2_LEASE_FLAG_BREAK_IN_PROGRESS = 0x2;
+
+    private static final byte[] NAME_BYTES = NAME.getBytes(StandardCharsets.US_ASCII);
+
+    private Smb2LeaseKey leaseKey;
+    private int leaseState;
+    private int leaseFlags;
+    private Smb2LeaseKey parentLeaseKey;
+    private int epoch;
+    private boolean v2;
+
+    /**
+     * Create an empty context for decoding a response
+     */
+    public Smb2LeaseContext() {
+    }
+
+    /**
+     * @param leaseKey
+     *            lease key to request the lease for
+     * @param leaseState
+     *            requested lease state
+     * @param v2
+     *            whether to use the version 2 format
+     */
+    public Smb2LeaseContext(final Smb2LeaseKey leaseKey, final int leaseState, final boolean v2) {
+        this.leaseKey = leaseKey;
+        this.leaseState = leaseState;
+        this.v2 = v2;
+    }
+
+    @Override
+    public byte[] getName() {
+        return NAME_BYTES;
+    }
+
+    /**
+     * @return the lease key
+     */
+    public Smb2LeaseKey getLeaseKey() {
+        return this.leaseKey;
+    }
+
+    /**
+     * @return the requested or granted lease state
+     */
+    public int getLeaseState() {
+        return this.leaseState;
+    }
+
+    /**
+     * @return the lease flags
+     */
+    public int getLeaseFlags() {
+        return this.leaseFlags;
+    }
+
+    /**
+     * @return the parent lease key, null if not set
+     */
+    public Smb2LeaseKey getParentLeaseKey() {
+        return this.parentLeaseKey;
+    }
+
+    /**
+     * @param parentLeaseKey
+     *            the parent (directory) lease key, only sent in the version 2 format
+     */
+    public void setParentLeaseKey(final Smb2LeaseKey parentLeaseKey) {
+        this.parentLeaseKey = parentLeaseKey;
+    }
+
+    /**
+     * @return the lease epoch (V2 only)
+     */
+    public int getEpoch() {
+        return this.epoch;
+    }
+
+    /**
+     * @param epoch
+     *            the lease epoch
+     */
+    public void setEpoch(final int epoch) {
+        this.epoch = epoch;
+    }
+
+    /**
+     * @return whether this is a version 2 context
+     */
+    public boolean isV2() {
+        return this.v2;
+    }
+
+    @Override
+    public int size() {
+        return this.v2 ? V2_SIZE : V1_SIZE;
+    }
+
+    @Override
+    public int encode(final byte[] dst, int dstIndex) {
+        final int start = dstIndex;
+        dstIndex += this.leaseKey.encode(dst, dstIndex);
+        SMBUtil.writeInt4(this.leaseState, dst, dstIndex);
+        dstIndex += 4;
+        final boolean parent = this.v2 && this.parentLeaseKey != null;
+        SMBUtil.writeInt4(parent ? SMB2_LEASE_FLAG_PARENT_LEASE_KEY_SET : 0, dst, dstIndex);
+        dstIndex += 4;
+        SMBUtil.writeInt8(0, dst, dstIndex); // LeaseDuration
+        dstIndex += 8;
+
+        if (this.v2) {
+            if (parent) {
+                this.parentLeaseKey.encode(dst, dstIndex);
+            } else {
+                System.arraycopy(new byte[Smb2LeaseKey.LENGTH], 0, dst, dstIndex, Smb2LeaseKey.LENGTH);
+            }
+            dstIndex += Smb2LeaseKey.LENGTH;
+            SMBUtil.writeInt2(this.epoch, dst, dstIndex);
+            SMBUtil.writeInt2(0, dst, dstIndex + 2); // Reserved
+            dstIndex += 4;
+        }
+        return dstIndex - start;
+    }
+
+    @Override
+    public int decode(final byte[] buffer, int bufferIndex, final int len) throws SMBProtocolDecodingException {
+        if (len < V1_SIZE) {
+            throw new SMBProtocolDecodingException("Lease context too short " + len);
+        }
+        final int start = bufferIndex;
+        this.leaseKey = new Smb2LeaseKey(buffer, bufferIndex);
+        bufferIndex += Smb2LeaseKey.LENGTH;
+        this.leaseState = SMBUtil.readInt4(buffer, bufferIndex);
+        bufferIndex += 4;
+        this.leaseFlags = SMBUtil.readInt4(buffer, bufferIndex);
+        bufferIndex += 4;
+        bufferIndex += 8; // LeaseDuration
+
+        this.v2 = len >= V2_SIZE;
+        if (this.v2) {
+            if ((this.leaseFlags & SMB2_LEASE_FLAG_PARENT_LEASE_KEY_SET) != 0) {
+                this.parentLeaseKey = new Smb2LeaseKey(buffer, bufferIndex);
+            }
+            bufferIndex += Smb2LeaseKey.LENGTH;
+            this.epoch = SMBUtil.readInt2(buffer, bufferIndex);
+            bufferIndex += 4;
+        }
+        return bufferIndex - start;
+    }
+
+    @Override
+    public String toString() {
+        return "Smb2LeaseContext[key=" + this.leaseKey + ",state=" + Smb2LeaseState.toString(this.leaseState) + ",flags=0x"
+                + Integer.toHexString(this.leaseFlags) + ",epoch=" + this.epoch + ",v2=" + this.v2 + "]";
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.internal.smb2.lease;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import org.codelibs.jcifs.smb.util.Hexdump;
+
+/**
+ * SMB2 lease key
+ *
+ * A 16 byte client generated identifier, all opens of a file sharing a lease key share the same lease.
+ */
+public final class Smb2LeaseKey {
+
+    /**
+     * Length of a lease key
+     */
+    public static final int LENGTH = 16;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final byte[] key;
+
+    /**
+     * Create a new random lease key
+     */
+    public Smb2LeaseKey() {
+        this.key = new byte[LENGTH];
+        RANDOM.nextBytes(this.key);
+    }
+
+    /**
+     * @param key
+     *            lease key bytes
+     */
+    public Smb2LeaseKey(final byte[] key) {
+        this(key, 0);
+    }
+
+    /**
+     * @param buffer
+     * @param off
+     *            offset of the lease key in buffer
+     */
+    public Smb2LeaseKey(final byte[] buffer, final int off) {
+        if (buffer == null || buffer.length - off < LENGTH) {
+            throw new IllegalArgumentException("Lease key must be 16 bytes");
+        }
+        this.key = Arrays.copyOfRange(buffer, off, off + LENGTH);
+    }
+
+    /**
+     * @return a copy of the key bytes
+     */
+    public byte[] getKey() {
+        return this.key.clone();
+    }
+
+    /**
+     * @param dst
+     * @param dstIndex
+     * @return encoded length
+     */
+    public int encode(final byte[] dst, final int dstIndex) {
+        System.arraycopy(this.key, 0, dst, dstIndex, LENGTH);
+        return LENGTH;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return obj instanceof final Smb2LeaseKey o && Arrays.equals(this.key, o.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.key);
+    }
+
+    @Override
+    public String toString() {
+        return Hexdump.toHexString(this.key);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.internal.smb2.lease;
+
+/**
+ * SMB2 lease state flags
+ *
+ * A lease state is a combination of the caching flags, valid combinations for files are
+ * R, RH, RW and RWH.
+ */
+public final class Smb2LeaseState {
+
+    /**
+     * No caching
+     */
+    public static final int SMB2_LEASE_NONE = 0x00;
+
+    /**
+     * Read caching
+     */
+    public static final int SMB2_LEASE_READ_CACHING = 0x01;
+
+    /**
+     * Handle caching
+     */
+    public static final int SMB2_LEASE_HANDLE_CACHING = 0x02;
+
+    /**
+     * Write caching
+     */
+    public static final int SMB2_LEASE_WRITE_CACHING = 0x04;
+
+    /**
+     * Read and handle caching
+     */
+    public static final int SMB2_LEASE_READ_HANDLE = SMB2_LEASE_READ_CACHING | SMB2_LEASE_HANDLE_CACHING;
+
+    /**
+     * Read and write caching
+     */
+    public static final int SMB2_LEASE_READ_WRITE = SMB2_LEASE_READ_CACHING | SMB2_LEASE_WRITE_CACHING;
+
+    /**
+     * Read, handle and write caching
+     */
+    public static final int SMB2_LEASE_FULL = SMB2_LEASE_READ_CACHING | SMB2_LEASE_HANDLE_CACHING | SMB2_LEASE_WRITE_CACHING;
+
+    private Smb2LeaseState() {
+    }
+
+    /**
+     * @param state
+     * @return whether the state allows read caching
+     */
+    public static boolean canCacheRead(final int state) {
+        return (state & SMB2_LEASE_READ_CACHING) != 0;
+    }
+
+    /**
+     * @param state
+     * @return whether the state allows handle caching
+     */
+    public static boolean canCacheHandle(final int state) {
+        return (state & SMB2_LEASE_HANDLE_CACHING) != 0;
+    }
+
+    /**
+     * @param state
+     * @return whether the state allows write caching
+     */
+    public static boolean canCacheWrite(final int state) {
+        return (state & SMB2_LEASE_WRITE_CACHING) != 0;
+    }
+
+    /**
+     * @param state
+     * @return short representation of the state, e.g. RH
+     */
+    public static String toString(final int state) {
+        final StringBuilder sb = new StringBuilder(3);
+        if (canCacheRead(state)) {
+            sb.append('R');
+        }
+        if (canCacheHandle(state)) {
+            sb.append('H');
+        }
+        if (canCacheWrite(state)) {
+            sb.append('W');
+        }
+        return sb.length() == 0 ? "NONE" : sb.toString();
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.internal.smb2.nego;
+
+import org.codelibs.jcifs.smb.Configuration;
+import org.codelibs.jcifs.smb.internal.SMBProtocolDecodingException;
+import org.codelibs.jcifs.smb.internal.util.SMBUtil;
+
+/**
+ * SMB2 Compression Capabilities Negotiate Context.
+ *
+ * This negotiate context is used in SMB 3.1.1 to negotiate
+ * the compression algorithms and whether chained compression is supported.
+ */
+public class CompressionNegotiateContext implements NegotiateContextRequest, NegotiateContextResponse {
+
+    /**
+     * Context type
+     */
+    public static final int NEGO_CTX_COMPRESSION_TYPE = 0x3;
+
+    /**
+     * No compression
+     */
+    public static final int COMPRESSION_NONE = 0x0;
+
+    /**
+     * LZNT1
+     */
+    public static final int COMPRESSION_LZNT1 = 0x1;
+
+    /**
+     * Plain LZ77
+     */
+    public static final int COMPRESSION_LZ77 = 0x2;
+
+    /**
+     * LZ77+Huffman
+     */
+    public static final int COMPRESSION_LZ77_HUFFMAN = 0x3;
+
+    /**
+     * Pattern scanning, only valid with chained compression
+     */
+    public static final int COMPRESSION_PATTERN_V1 = 0x4;
+
+    /**
+     * Flag indicating support for chained compression
+     */
+    public static final int COMPRESSION_FLAG_CHAINED = 0x1;
+
+    private int[] algorithms;
+    private int flags;
+
+    /**
+     * Constructs a compression negotiate context.
+     *
+     * @param config the configuration (currently unused)
+     * @param algorithms compression algorithm IDs to negotiate, in order of preference
+     * @param flags compression capability flags
+     */
+    public CompressionNegotiateContext(final Configuration config, final int[] algorithms, final int flags) {
+        this.algorithms = algorithms;
+        this.flags = flags;
+    }
+
+    /**
+     * Default constructor for decoding.
+     */
+    public CompressionNegotiateContext() {
+    }
+
+    /**
+     * Gets the compression algorithms.
+     *
+     * @return array of compression algorithm IDs
+     */
+    public int[] getAlgorithms() {
+        return this.algorithms;
+    }
+
+    /**
+     * Gets the compression capability flags.
+     *
+     * @return the flags
+     */
+    public int getFlags() {
+        return this.flags;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.internal.smb2.nego.NegotiateContextRequest#getContextType()
+     */
+    @Override
+    public int getContextType() {
+        return NEGO_CTX_COMPRESSION_TYPE;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Encodable#encode(byte[], int)
+     */
+    @Override
+    public int encode(final byte[] dst, int dstIndex) {
+        final int start = dstIndex;
+        SMBUtil.writeInt2(this.algorithms != null ? this.algorithms.length : 0, dst, dstIndex);
+        SMBUtil.writeInt2(0, dst, dstIndex + 2);
+        SMBUtil.writeInt4(this.flags, dst, dstIndex + 4);
+        dstIndex += 8;
+
+        if (this.algorithms != null) {
+            for (final int algorithm : this.algorithms) {
+                SMBUtil.writeInt2(algorithm, dst, dstIndex);
+                dstIndex += 2;
+            }
+        }
+        return dstIndex - start;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Decodable#decode(byte[], int, int)
+     */
+    @Override
+    public int decode(final byte[] buffer, int bufferIndex, final int len) throws SMBProtocolDecodingException {
+        final int start = bufferIndex;
+        if (len < 8) {
+            throw new SMBProtocolDecodingException("Compression context too short");
+        }
+        final int nalgorithms = SMBUtil.readInt2(buffer, bufferIndex);
+        this.flags = SMBUtil.readInt4(buffer, bufferIndex + 4);
+        bufferIndex += 8;
+
+        if (8 + 2 * nalgorithms > len) {
+            throw new SMBProtocolDecodingException("Compression context too short");
+        }
+
+        this.algorithms = new int[nalgorithms];
+        for (int i = 0; i < nalgorithms; i++) {
+            this.algorithms[i] = SMBUtil.readInt2(buffer, bufferIndex);
+            bufferIndex += 2;
+        }
+
+        return bufferIndex - start;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Encodable#size()
+     */
+    @Override
+    public int size() {
+        return 8 + (this.algorithms != null ? 2 * this.algorithms.length : 0);
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.internal.smb2.nego;
+
+import org.codelibs.jcifs.smb.Configuration;
+import org.codelibs.jcifs.smb.internal.SMBProtocolDecodingException;
+import org.codelibs.jcifs.smb.internal.util.SMBUtil;
+
+/**
+ * SMB2 Signing Capabilities Negotiate Context.
+ *
+ * This negotiate context is used in SMB 3.1.1 to negotiate
+ * the message signing algorithm.
+ */
+public class SigningNegotiateContext implements NegotiateContextRequest, NegotiateContextResponse {
+
+    /**
+     * Context type
+     */
+    public static final int NEGO_CTX_SIGNING_TYPE = 0x8;
+
+    /**
+     * HMAC-SHA256
+     */
+    public static final int SIGNING_HMAC_SHA256 = 0x0;
+
+    /**
+     * AES-CMAC
+     */
+    public static final int SIGNING_AES_CMAC = 0x1;
+
+    /**
+     * AES-GMAC
+     */
+    public static final int SIGNING_AES_GMAC = 0x2;
+
+    private int[] algorithms;
+
+    /**
+     * Constructs a signing negotiate context.
+     *
+     * @param config the configuration (currently unused)
+     * @param algorithms signing algorithm IDs to negotiate, in order of preference
+     */
+    public SigningNegotiateContext(final Configuration config, final int[] algorithms) {
+        this.algorithms = algorithms;
+    }
+
+    /**
+     * Default constructor for decoding.
+     */
+    public SigningNegotiateContext() {
+    }
+
+    /**
+     * Gets the signing algorithms.
+     *
+     * @return array of signing algorithm IDs
+     */
+    public int[] getAlgorithms() {
+        return this.algorithms;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.internal.smb2.nego.NegotiateContextRequest#getContextType()
+     */
+    @Override
+    public int getContextType() {
+        return NEGO_CTX_SIGNING_TYPE;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Encodable#encode(byte[], int)
+     */
+    @Override
+    public int encode(final byte[] dst, int dstIndex) {
+        final int start = dstIndex;
+        SMBUtil.writeInt2(this.algorithms != null ? this.algorithms.length : 0, dst, dstIndex);
+        dstIndex += 2;
+
+        if (this.algorithms != null) {
+            for (final int algorithm : this.algorithms) {
+                SMBUtil.writeInt2(algorithm, dst, dstIndex);
+                dstIndex += 2;
+            }
+        }
+        return dstIndex - start;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Decodable#decode(byte[], int, int)
+     */
+    @Override
+    public int decode(final byte[] buffer, int bufferIndex, final int len) throws SMBProtocolDecodingException {
+        final int start = bufferIndex;
+        final int nalgorithms = SMBUtil.readInt2(buffer, bufferIndex);
+        bufferIndex += 2;
+
+        if (2 + 2 * nalgorithms > len) {
+            throw new SMBProtocolDecodingException("Signing context too short");
+        }
+
+        this.algorithms = new int[nalgorithms];
+        for (int i = 0; i < nalgorithms; i++) {
+            this.algorithms[i] = SMBUtil.readInt2(buffer, bufferIndex);
+            bufferIndex += 2;
+        }
+
+        return bufferIndex - start;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.codelibs.jcifs.smb.Encodable#size()
+     */
+    @Override
+    public int size() {
+        return 2 + (this.algorithms != null ? 2 * this.algorithms.length : 0);
+    }
+
+}
@@ -60,6 +60,10 @@ public class Smb2NegotiateRequest extends ServerMessageBlock2Request<Smb2Negotia
             this.capabilities |= Smb2Constants.SMB2_GLOBAL_CAP_DFS;
         }
 
+        if (config.getMaximumVersion() != null && config.getMaximumVersion().atLeast(DialectVersion.SMB210)) {
+            this.capabilities |= Smb2Constants.SMB2_GLOBAL_CAP_LARGE_MTU;
+        }
+
         if (config.isEncryptionEnabled() && config.getMaximumVersion() != null
                 && config.getMaximumVersion().atLeast(DialectVersion.SMB300)) {
             this.capabilities |= Smb2Constants.SMB2_GLOBAL_CAP_ENCRYPTION;
@@ -91,6 +95,17 @@ public class Smb2NegotiateRequest extends ServerMessageBlock2Request<Smb2Negotia
                 negoContexts.add(new EncryptionNegotiateContext(config,
                         new int[] { EncryptionNegotiateContext.CIPHER_AES128_GCM, EncryptionNegotiateContext.CIPHER_AES128_CCM }));
             }
+
+            if (config.isSigningGmacEnabled()) {
+                negoContexts.add(new SigningNegotiateContext(config,
+                        new int[] { SigningNegotiateContext.SIGNING_AES_GMAC, SigningNegotiateContext.SIGNING_AES_CMAC }));
+            }
+
+            if (config.isCompressionEnabled()) {
+                negoContexts.add(new CompressionNegotiateContext(config,
+                        new int[] { CompressionNegotiateContext.COMPRESSION_LZ77, CompressionNegotiateContext.COMPRESSION_PATTERN_V1 },
+                        CompressionNegotiateContext.COMPRESSION_FLAG_CHAINED));
+            }
         }
 
         this.negotiateContexts = negoContexts.toArray(new NegotiateContextRequest[negoContexts.size()]);
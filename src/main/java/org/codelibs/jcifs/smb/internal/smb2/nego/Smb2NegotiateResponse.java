@@ -17,6 +17,7 @@
  */
 package org.codelibs.jcifs.smb.internal.smb2.nego;
 
+import java.util.Arrays;
 import java.util.Date;
 
 import org.codelibs.jcifs.smb.CIFSContext;
@@ -26,8 +27,10 @@ import org.codelibs.jcifs.smb.internal.CommonServerMessageBlock;
 import org.codelibs.jcifs.smb.internal.SMBProtocolDecodingException;
 import org.codelibs.jcifs.smb.internal.SmbNegotiationRequest;
 import org.codelibs.jcifs.smb.internal.SmbNegotiationResponse;
+import org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2Request;
 import org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2Response;
 import org.codelibs.jcifs.smb.internal.smb2.Smb2Constants;
+import org.codelibs.jcifs.smb.internal.smb2.Smb2EncryptionContext;
 import org.codelibs.jcifs.smb.internal.smb2.io.Smb2ReadResponse;
 import org.codelibs.jcifs.smb.internal.smb2.io.Smb2WriteRequest;
 import org.codelibs.jcifs.smb.internal.util.SMBUtil;
@@ -65,6 +68,9 @@ public class Smb2NegotiateResponse extends ServerMessageBlock2Response implement
     private boolean supportsEncryption;
     private int selectedCipher = -1;
     private int selectedPreauthHash = -1;
+    private int selectedSigningAlgorithm = -1;
+    private int[] compressionAlgorithms = {};
+    private boolean compressionChained;
 
     /**
      * Constructs an SMB2 negotiate response with the given configuration.
@@ -129,6 +135,33 @@ public class Smb2NegotiateResponse extends ServerMessageBlock2Response implement
         return this.selectedPreauthHash;
     }
 
+    /**
+     * Gets the signing algorithm selected for SMB 3.1.1.
+     *
+     * @return the selected signing algorithm, -1 if the server did not return a signing capabilities context
+     */
+    public int getSelectedSigningAlgorithm() {
+        return this.selectedSigningAlgorithm;
+    }
+
+    /**
+     * Gets the compression algorithms supported by both client and server for SMB 3.1.1.
+     *
+     * @return the common compression algorithms in server preference order, empty if compression is not used
+     */
+    public int[] getCompressionAlgorithms() {
+        return this.compressionAlgorithms;
+    }
+
+    /**
+     * Checks whether the server supports chained compression.
+     *
+     * @return whether chained compression was negotiated
+     */
+    public boolean isCompressionChained() {
+        return this.compressionChained;
+    }
+
     /**
      * Gets the capabilities returned by the server.
      *
@@ -293,11 +326,12 @@ public class Smb2NegotiateResponse extends ServerMessageBlock2Response implement
         }
 
         final int maxBufferSize = tc.getConfig().getTransactionBufferSize();
-        this.maxReadSize =
-                Math.min(maxBufferSize - Smb2ReadResponse.OVERHEAD, Math.min(tc.getConfig().getReceiveBufferSize(), this.maxReadSize))
-                        & ~0x7;
-        this.maxWriteSize =
-                Math.min(maxBufferSize - Smb2WriteRequest.OVERHEAD, Math.min(tc.getConfig().getSendBufferSize(), this.maxWriteSize)) & ~0x7;
+        // leave room for the transform header and authentication tag
+        final int encOverhead = this.supportsEncryption ? Smb2EncryptionContext.ENCRYPTION_OVERHEAD : 0;
+        this.maxReadSize = Math.min(maxBufferSize - Smb2ReadResponse.OVERHEAD - encOverhead,
+                Math.min(tc.getConfig().getReceiveBufferSize() - encOverhead, this.maxReadSize)) & ~0x7;
+        this.maxWriteSize = Math.min(maxBufferSize - Smb2WriteRequest.OVERHEAD - encOverhead,
+                Math.min(tc.getConfig().getSendBufferSize() - encOverhead, this.maxWriteSize)) & ~0x7;
         this.maxTransactSize = Math.min(maxBufferSize - 512, this.maxTransactSize) & ~0x7;
 
         return true;
@@ -309,7 +343,7 @@ public class Smb2NegotiateResponse extends ServerMessageBlock2Response implement
             return false;
         }
 
-        boolean foundPreauth = false, foundEnc = false;
+        boolean foundPreauth = false, foundEnc = false, foundSigning = false, foundCompression = false;
         for (final NegotiateContextResponse ncr : this.negotiateContexts) {
             if (ncr == null) {
                 continue;
@@ -335,6 +369,30 @@ public class Smb2NegotiateResponse extends ServerMessageBlock2Response implement
             } else if (ncr.getContextType() == PreauthIntegrityNegotiateContext.NEGO_CTX_PREAUTH_TYPE) {
                 log.error("Multiple preauth negotiate contexts");
                 return false;
+            } else if (!foundSigning && ncr.getContextType() == SigningNegotiateContext.NEGO_CTX_SIGNING_TYPE) {
+                foundSigning = true;
+                final SigningNegotiateContext sc = (SigningNegotiateContext) ncr;
+                if (!checkSigningContext(req, sc)) {
+                    return false;
+                }
+                this.selectedSigningAlgorithm = sc.getAlgorithms()[0];
+            } else if (ncr.getContextType() == SigningNegotiateContext.NEGO_CTX_SIGNING_TYPE) {
+                log.error("Multiple signing negotiate contexts");
+                return false;
+            } else if (!foundCompression && ncr.getContextType() == CompressionNegotiateContext.NEGO_CTX_COMPRESSION_TYPE) {
+                foundCompression = true;
+                final CompressionNegotiateContext cc = (CompressionNegotiateContext) ncr;
+                if (!checkCompressionContext(req, cc)) {
+                    return false;
+                }
+                this.compressionAlgorithms = Arrays.stream(cc.getAlgorithms())
+                        .filter(a -> a != CompressionNegotiateContext.COMPRESSION_NONE)
+                        .toArray();
+                this.compressionChained = this.compressionAlgorithms.length > 0
+                        && (cc.getFlags() & CompressionNegotiateContext.COMPRESSION_FLAG_CHAINED) != 0;
+            } else if (ncr.getContextType() == CompressionNegotiateContext.NEGO_CTX_COMPRESSION_TYPE) {
+                log.error("Multiple compression negotiate contexts");
+                return false;
             }
         }
 
@@ -410,6 +468,68 @@ public class Smb2NegotiateResponse extends ServerMessageBlock2Response implement
         return true;
     }
 
+    private static boolean checkSigningContext(final Smb2NegotiateRequest req, final SigningNegotiateContext sc) {
+        if (sc.getAlgorithms() == null || sc.getAlgorithms().length != 1) {
+            log.error("Server returned no signing algorithm selection");
+            return false;
+        }
+
+        SigningNegotiateContext rsc = null;
+        for (final NegotiateContextRequest rnc : req.getNegotiateContexts()) {
+            if (rnc instanceof SigningNegotiateContext) {
+                rsc = (SigningNegotiateContext) rnc;
+            }
+        }
+        if (rsc == null) {
+            log.error("Server returned an unsolicited signing negotiate context");
+            return false;
+        }
+
+        boolean valid = false;
+        for (final int algorithm : rsc.getAlgorithms()) {
+            if (algorithm == sc.getAlgorithms()[0]) {
+                valid = true;
+            }
+        }
+        if (!valid) {
+            log.error("Server returned invalid signing algorithm selection");
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean checkCompressionContext(final Smb2NegotiateRequest req, final CompressionNegotiateContext cc) {
+        if (cc.getAlgorithms() == null || cc.getAlgorithms().length == 0) {
+            log.error("Server returned no compression algorithm selection");
+            return false;
+        }
+
+        CompressionNegotiateContext rcc = null;
+        for (final NegotiateContextRequest rnc : req.getNegotiateContexts()) {
+            if (rnc instanceof CompressionNegotiateContext) {
+                rcc = (CompressionNegotiateContext) rnc;
+            }
+        }
+        if (rcc == null) {
+            log.error("Server returned an unsolicited compression negotiate context");
+            return false;
+        }
+
+        for (final int algorithm : cc.getAlgorithms()) {
+            boolean valid = algorithm == CompressionNegotiateContext.COMPRESSION_NONE;
+            for (final int requested : rcc.getAlgorithms()) {
+                if (algorithm == requested) {
+                    valid = true;
+                }
+            }
+            if (!valid) {
+                log.error("Server returned invalid compression algorithm selection");
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -467,6 +587,24 @@ public class Smb2NegotiateResponse extends ServerMessageBlock2Response implement
      */
     @Override
     public void setupRequest(final CommonServerMessageBlock request) {
+        if (request instanceof final ServerMessageBlock2Request<?> req) {
+            final boolean multiCredit = isMultiCredit();
+            ServerMessageBlock2Request<?> cur = req;
+            while (cur != null) {
+                cur.setupCreditCharge(multiCredit);
+                cur = cur.getNext();
+            }
+        }
+    }
+
+    /**
+     * Checks whether multi-credit operations (large MTU) are supported on this connection.
+     *
+     * @return whether requests need to carry a credit charge
+     */
+    public boolean isMultiCredit() {
+        return this.selectedDialect != null && this.selectedDialect.atLeast(DialectVersion.SMB210)
+                && haveCapabilitiy(Smb2Constants.SMB2_GLOBAL_CAP_LARGE_MTU);
     }
 
     /**
@@ -567,6 +705,10 @@ public class Smb2NegotiateResponse extends ServerMessageBlock2Response implement
             return new EncryptionNegotiateContext();
         case PreauthIntegrityNegotiateContext.NEGO_CTX_PREAUTH_TYPE:
             return new PreauthIntegrityNegotiateContext();
+        case SigningNegotiateContext.NEGO_CTX_SIGNING_TYPE:
+            return new SigningNegotiateContext();
+        case CompressionNegotiateContext.NEGO_CTX_COMPRESSION_TYPE:
+            return new CompressionNegotiateContext();
         }
         return null;
     }
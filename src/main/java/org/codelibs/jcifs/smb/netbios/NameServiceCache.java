@@ -0,0 +1,248 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.netbios;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded, lock striped cache for name service lookups
+ *
+ * Keys are spread over a fixed number of stripes, each an access ordered map that evicts its least recently used entry
+ * once full. Entries expire at a fixed time, or never if the expiration is negative.
+ *
+ * Hits on entries that expire within the refresh-ahead window are flagged, once per entry, so that the caller can
+ * resolve the name again in the background before it drops out of the cache.
+ *
+ * @param <K>
+ *            key type
+ * @param <V>
+ *            value type
+ */
+final class NameServiceCache<K, V> {
+
+    static final int STRIPES = 16;
+
+    private final Stripe<K, V>[] stripes;
+    private final long refreshAhead;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxSize
+     *            maximum number of entries, non-positive for no limit
+     * @param refreshAhead
+     *            time before expiration in milliseconds during which a hit requests a refresh, 0 to disable
+     */
+    @SuppressWarnings("unchecked")
+    NameServiceCache(final int maxSize, final long refreshAhead) {
+        this.refreshAhead = refreshAhead;
+        this.stripes = (Stripe<K, V>[]) new Stripe<?, ?>[STRIPES];
+        final int perStripe = maxSize > 0 ? Math.max(1, (maxSize + STRIPES - 1) / STRIPES) : Integer.MAX_VALUE;
+        for (int i = 0; i < STRIPES; i++) {
+            this.stripes[i] = new Stripe<>(perStripe, this.evictions);
+        }
+    }
+
+    /**
+     * Cached value with its expiration
+     *
+     * @param <V>
+     *            value type
+     */
+    static final class Entry<V> {
+
+        final V value;
+        final long expiration;
+        private final AtomicBoolean refreshRequested = new AtomicBoolean();
+
+        Entry(final V value, final long expiration) {
+            this.value = value;
+            this.expiration = expiration;
+        }
+
+        boolean isExpired(final long now) {
+            return this.expiration >= 0 && this.expiration < now;
+        }
+    }
+
+    private static final class Stripe<K, V> extends LinkedHashMap<K, Entry<V>> {
+
+        private static final long serialVersionUID = 1L;
+
+        final transient ReentrantLock lock = new ReentrantLock();
+        private final int capacity;
+        private final transient LongAdder evictions;
+
+        Stripe(final int capacity, final LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<K, Entry<V>> eldest) {
+            if (size() > this.capacity) {
+                this.evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private Stripe<K, V> stripe(final Object key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return this.stripes[h & STRIPES - 1];
+    }
+
+    /**
+     * Look up an entry
+     *
+     * @param key
+     * @return the entry, null if there is none or it expired
+     */
+    Entry<V> get(final K key) {
+        final Stripe<K, V> s = stripe(key);
+        Entry<V> e;
+        s.lock.lock();
+        try {
+            e = s.get(key);
+            if (e != null && e.isExpired(System.currentTimeMillis())) {
+                s.remove(key);
+                e = null;
+            }
+        } finally {
+            s.lock.unlock();
+        }
+        if (e == null) {
+            this.misses.increment();
+        } else {
+            this.hits.increment();
+        }
+        return e;
+    }
+
+    /**
+     * Look up an entry without updating the statistics
+     *
+     * @param key
+     * @return the entry, null if there is none or it expired
+     */
+    Entry<V> peek(final K key) {
+        final Stripe<K, V> s = stripe(key);
+        s.lock.lock();
+        try {
+            final Entry<V> e = s.get(key);
+            return e != null && !e.isExpired(System.currentTimeMillis()) ? e : null;
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    /**
+     * Store an entry, replacing an existing one
+     *
+     * @param key
+     * @param value
+     * @param expiration
+     *            absolute expiration time, negative for none
+     */
+    void put(final K key, final V value, final long expiration) {
+        final Stripe<K, V> s = stripe(key);
+        s.lock.lock();
+        try {
+            s.put(key, new Entry<>(value, expiration));
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    /**
+     * Remove an entry
+     *
+     * @param key
+     */
+    void remove(final K key) {
+        final Stripe<K, V> s = stripe(key);
+        s.lock.lock();
+        try {
+            s.remove(key);
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    /**
+     * Check whether a hit should trigger a background refresh
+     *
+     * Returns true at most once per entry.
+     *
+     * @param e
+     *            entry returned by {@link #get(Object)}
+     * @return whether the entry is about to expire and no refresh has been requested for it yet
+     */
+    boolean shouldRefresh(final Entry<V> e) {
+        if (this.refreshAhead <= 0 || e.expiration < 0 || e.expiration - System.currentTimeMillis() > this.refreshAhead) {
+            return false;
+        }
+        return e.refreshRequested.compareAndSet(false, true);
+    }
+
+    /**
+     * @return number of entries, including expired ones not yet removed
+     */
+    int size() {
+        int n = 0;
+        for (final Stripe<K, V> s : this.stripes) {
+            s.lock.lock();
+            try {
+                n += s.size();
+            } finally {
+                s.lock.unlock();
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return number of lookups that found a valid entry
+     */
+    long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return number of lookups that found no valid entry
+     */
+    long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * @return number of entries evicted because the cache was full
+     */
+    long getEvictions() {
+        return this.evictions.sum();
+    }
+}
@@ -30,8 +30,21 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.codelibs.jcifs.smb.CIFSContext;
 import org.codelibs.jcifs.smb.Configuration;
@@ -58,12 +71,36 @@ public class NameServiceClientImpl implements Runnable, NameServiceClient {
 
     private static final Logger log = LoggerFactory.getLogger(NameServiceClientImpl.class);
 
+    /* resolvers that are not interruptible keep their thread after being cancelled, so both threads and queue are bounded */
+    private static final ThreadPoolExecutor RESOLVER_EXECUTOR =
+            new ThreadPoolExecutor(16, 16, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(64), r -> {
+                final Thread t = new Thread(r, "JCIFS-Resolver");
+                t.setDaemon(true);
+                return t;
+            });
+
+    /* refreshes are best effort, when the queue is full the entry simply expires */
+    private static final ThreadPoolExecutor REFRESH_EXECUTOR =
+            new ThreadPoolExecutor(2, 2, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(256), r -> {
+                final Thread t = new Thread(r, "JCIFS-NameRefresh");
+                t.setDaemon(true);
+                return t;
+            });
+
+    static {
+        RESOLVER_EXECUTOR.allowCoreThreadTimeOut(true);
+        REFRESH_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
     private final Object LOCK = new Object();
 
     private int nbnsIndex = 0;
 
-    private final Map<Name, CacheEntry> addressCache = new HashMap<>();
+    private final NameServiceCache<Name, NbtAddress> addressCache;
+    private final NameServiceCache<String, Boolean> hostFailureCache;
+    private final LongAdder negativeHits = new LongAdder();
     private final Set<Name> inFlightLookups = new HashSet<>();
+    private final Set<Name> inFlightRefreshes = ConcurrentHashMap.newKeySet();
 
     private final int lport;
 
@@ -105,29 +142,19 @@ public class NameServiceClientImpl implements Runnable, NameServiceClient {
         this.in = new DatagramPacket(this.rcv_buf, tc.getConfig().getNetbiosRcvBufSize());
         this.resolveOrder = tc.getConfig().getResolveOrder();
 
+        this.addressCache =
+                new NameServiceCache<>(tc.getConfig().getNetbiosCacheMaxSize(), tc.getConfig().getNetbiosCacheRefreshAhead() * 1000L);
+        this.hostFailureCache = new NameServiceCache<>(tc.getConfig().getNetbiosCacheMaxSize(), 0);
         initCache(tc);
     }
 
-    static final class CacheEntry {
-
-        Name hostName;
-        NbtAddress address;
-        long expiration;
-
-        CacheEntry(final Name hostName, final NbtAddress address, final long expiration) {
-            this.hostName = hostName;
-            this.address = address;
-            this.expiration = expiration;
-        }
-    }
-
     /**
      *
      */
     private void initCache(final CIFSContext tc) {
         this.unknownName = new Name(tc.getConfig(), "0.0.0.0", 0x00, null);
         this.unknownAddress = new NbtAddress(this.unknownName, 0, false, NbtAddress.B_NODE);
-        this.addressCache.put(this.unknownName, new CacheEntry(this.unknownName, this.unknownAddress, SmbConstants.FOREVER));
+        this.addressCache.put(this.unknownName, this.unknownAddress, SmbConstants.FOREVER);
 
         /*
          * Determine the InetAddress of the local interface
@@ -184,6 +211,9 @@ public class NameServiceClientImpl implements Runnable, NameServiceClient {
         }
         name.srcHashCode = svr != null ? svr.hashCode() : 0;
         addr = getCachedAddress(name);
+        if (addr != null && addr != this.unknownAddress) {
+            refreshIfExpiring(name, svr);
+        }
 
         /*
          * This is almost exactly like InetAddress.java. See the
@@ -196,9 +226,18 @@ public class NameServiceClientImpl implements Runnable, NameServiceClient {
             } catch (final UnknownHostException uhe) {
                 addr = this.unknownAddress;
             } finally {
-                cacheAddress(name, addr);
+                if (addr == this.unknownAddress) {
+                    // a query cancelled because another resolver answered first says nothing about the name
+                    if (!Thread.currentThread().isInterrupted()) {
+                        cacheFailure(name);
+                    }
+                } else {
+                    cacheAddress(name, addr);
+                }
                 updateLookupTable(name);
             }
+        } else if (addr == this.unknownAddress) {
+            this.negativeHits.increment();
         }
         if (addr == this.unknownAddress) {
             throw new UnknownHostException(name.toString());
@@ -206,6 +245,35 @@ public class NameServiceClientImpl implements Runnable, NameServiceClient {
         return addr;
     }
 
+    /**
+     * Start a background query for a name whose cache entry is about to expire
+     *
+     * Only one refresh is started per cache entry. If the query fails, the existing entry is kept until it expires.
+     */
+    private void refreshIfExpiring(final Name name, final InetAddress svr) {
+        final NameServiceCache.Entry<NbtAddress> e = this.addressCache.peek(name);
+        if (e == null || !this.addressCache.shouldRefresh(e)) {
+            return;
+        }
+        if (!this.inFlightRefreshes.add(name)) {
+            return;
+        }
+        try {
+            REFRESH_EXECUTOR.execute(() -> {
+                try {
+                    cacheAddress(name, getByName(name, svr));
+                } catch (final UnknownHostException uhe) {
+                    log.debug("Failed to refresh cached name {}", name, uhe);
+                } finally {
+                    this.inFlightRefreshes.remove(name);
+                }
+            });
+        } catch (final RejectedExecutionException ree) {
+            log.debug("Too many pending refreshes, not refreshing {}", name);
+            this.inFlightRefreshes.remove(name);
+        }
+    }
+
     private Object checkLookupTable(final Name name) {
         Object obj;
 
@@ -214,13 +282,18 @@ public class NameServiceClientImpl implements Runnable, NameServiceClient {
                 this.inFlightLookups.add(name);
                 return null;
             }
+            boolean interrupted = false;
             while (this.inFlightLookups.contains(name)) {
                 try {
                     this.inFlightLookups.wait();
                 } catch (final InterruptedException e) {
                     log.trace("Interrupted", e);
+                    interrupted = true;
                 }
             }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
         }
         obj = getCachedAddress(name);
         if (obj == null) {
@@ -239,66 +312,99 @@ public class NameServiceClientImpl implements Runnable, NameServiceClient {
         }
     }
 
+    private long expiration(final int policy) {
+        if (policy == SmbConstants.FOREVER) {
+            return -1;
+        }
+        return System.currentTimeMillis() + policy * 1000L;
+    }
+
     void cacheAddress(final Name hostName, final NbtAddress addr) {
         if (this.transportContext.getConfig().getNetbiosCachePolicy() == 0) {
             return;
         }
-        long expiration = -1;
-        if (this.transportContext.getConfig().getNetbiosCachePolicy() != SmbConstants.FOREVER) {
-            expiration = System.currentTimeMillis() + this.transportContext.getConfig().getNetbiosCachePolicy() * 1000;
-        }
-        cacheAddress(hostName, addr, expiration);
+        cacheAddress(hostName, addr, expiration(this.transportContext.getConfig().getNetbiosCachePolicy()));
     }
 
     void cacheAddress(final Name hostName, final NbtAddress addr, final long expiration) {
         if (this.transportContext.getConfig().getNetbiosCachePolicy() == 0) {
             return;
         }
-        synchronized (this.addressCache) {
-            CacheEntry entry = this.addressCache.get(hostName);
-            if (entry == null) {
-                entry = new CacheEntry(hostName, addr, expiration);
-                this.addressCache.put(hostName, entry);
-            } else {
-                entry.address = addr;
-                entry.expiration = expiration;
-            }
-        }
+        this.addressCache.put(hostName, addr, expiration);
     }
 
     void cacheAddressArray(final NbtAddress[] addrs) {
         if (this.transportContext.getConfig().getNetbiosCachePolicy() == 0) {
             return;
         }
-        long expiration = -1;
-        if (this.transportContext.getConfig().getNetbiosCachePolicy() != SmbConstants.FOREVER) {
-            expiration = System.currentTimeMillis() + this.transportContext.getConfig().getNetbiosCachePolicy() * 1000;
+        final long expiration = expiration(this.transportContext.getConfig().getNetbiosCachePolicy());
+        for (final NbtAddress addr : addrs) {
+            this.addressCache.put(addr.hostName, addr, expiration);
         }
-        synchronized (this.addressCache) {
-            for (final NbtAddress addr : addrs) {
-                CacheEntry entry = this.addressCache.get(addr.hostName);
-                if (entry == null) {
-                    entry = new CacheEntry(addr.hostName, addr, expiration);
-                    this.addressCache.put(addr.hostName, entry);
-                } else {
-                    entry.address = addr;
-                    entry.expiration = expiration;
-                }
-            }
+    }
+
+    /**
+     * Remember a failed name query
+     *
+     * Negative entries use {@link Configuration#getNetbiosNegativeCachePolicy()} instead of the regular cache policy.
+     */
+    void cacheFailure(final Name hostName) {
+        final int policy = this.transportContext.getConfig().getNetbiosNegativeCachePolicy();
+        if (policy == 0 || this.transportContext.getConfig().getNetbiosCachePolicy() == 0) {
+            return;
         }
+        this.addressCache.put(hostName, this.unknownAddress, expiration(policy));
     }
 
     NbtAddress getCachedAddress(final Name hostName) {
         if (this.transportContext.getConfig().getNetbiosCachePolicy() == 0) {
             return null;
         }
-        synchronized (this.addressCache) {
-            CacheEntry entry = this.addressCache.get(hostName);
-            if (entry != null && entry.expiration < System.currentTimeMillis() && entry.expiration >= 0) {
-                entry = null;
-            }
-            return entry != null ? entry.address : null;
+        if (hostName.equals(this.localhostAddress.hostName)) {
+            // never subject to eviction
+            return this.localhostAddress;
         }
+        final NameServiceCache.Entry<NbtAddress> entry = this.addressCache.get(hostName);
+        return entry != null ? entry.value : null;
+    }
+
+    private static String hostFailureKey(final String hostname, final boolean possibleNTDomainOrWorkgroup) {
+        return (possibleNTDomainOrWorkgroup ? "1:" : "0:") + hostname.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * @return number of cache lookups that found a valid entry, including negative ones
+     */
+    public long getCacheHits() {
+        return this.addressCache.getHits() + this.hostFailureCache.getHits();
+    }
+
+    /**
+     * @return number of cache lookups that found no valid entry
+     */
+    public long getCacheMisses() {
+        return this.addressCache.getMisses() + this.hostFailureCache.getMisses();
+    }
+
+    /**
+     * @return number of cache lookups that found a cached failure
+     */
+    public long getCacheNegativeHits() {
+        return this.negativeHits.sum();
+    }
+
+    /**
+     * @return number of entries evicted because the cache was full
+     */
+    public long getCacheEvictions() {
+        return this.addressCache.getEvictions() + this.hostFailureCache.getEvictions();
+    }
+
+    /**
+     * @return number of cached names, including negative entries
+     */
+    public int getCacheSize() {
+        return this.addressCache.size() + this.hostFailureCache.size();
     }
 
     int getNextNameTrnId() {
@@ -429,6 +535,7 @@ public class NameServiceClientImpl implements Runnable, NameServiceClient {
                     }
 
                 } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
                     throw new InterruptedIOException();
                 } finally {
                     this.responseTable.remove(nid);
@@ -907,61 +1014,108 @@ public class NameServiceClientImpl implements Runnable, NameServiceClient {
             return new UniAddress[] { new UniAddress(getNbtByName(hostname)) };
         }
 
+        final String failureKey = hostFailureKey(hostname, possibleNTDomainOrWorkgroup);
+        if (this.hostFailureCache.get(failureKey) != null) {
+            this.negativeHits.increment();
+            throw new UnknownHostException(hostname);
+        }
+
+        final List<ResolverType> order = this.transportContext.getConfig().getResolveOrder();
         if (log.isTraceEnabled()) {
-            log.trace("Resolver order is " + this.transportContext.getConfig().getResolveOrder());
+            log.trace("Resolver order is " + order);
         }
 
-        for (final ResolverType resolver : this.transportContext.getConfig().getResolveOrder()) {
-            NetbiosAddress[] addr = null;
-            try {
-                switch (resolver) {
-                case RESOLVER_LMHOSTS:
-                    NbtAddress lmaddr = getLmhosts().getByName(hostname, this.transportContext);
-                    if (lmaddr == null) {
-                        continue;
-                    }
-                    addr = new NetbiosAddress[] { lmaddr };
-                    break;
-                case RESOLVER_WINS:
-                    if (hostname.equals(NbtAddress.MASTER_BROWSER_NAME) || hostname.length() > 15) {
-                        // invalid netbios name
-                        continue;
-                    }
-                    if (possibleNTDomainOrWorkgroup) {
-                        addr = lookupServerOrWorkgroup(hostname, getWINSAddress());
-                    } else {
-                        addr = getNbtAllByName(hostname, 0x20, null, getWINSAddress());
-                    }
-                    break;
-                case RESOLVER_BCAST:
-                    if (hostname.length() > 15) {
-                        // invalid netbios name
-                        continue;
-                    }
-                    if (possibleNTDomainOrWorkgroup) {
-                        addr = lookupServerOrWorkgroup(hostname, this.transportContext.getConfig().getBroadcastAddress());
-                    } else {
-                        addr = getNbtAllByName(hostname, 0x20, null, this.transportContext.getConfig().getBroadcastAddress());
-                    }
-                    break;
-                case RESOLVER_DNS:
-                    if (isAllDigits(hostname)) {
-                        throw new UnknownHostException(hostname);
-                    }
-                    final UniAddress[] addrs = wrapInetAddresses(InetAddress.getAllByName(hostname));
-                    if (log.isDebugEnabled()) {
-                        log.debug("Resolved '{}' to {} using DNS", hostname, Arrays.toString(addrs));
-                    }
-                    return addrs; // Success
-                default:
-                    throw new UnknownHostException(hostname);
-                }
+        final UniAddress[] addrs;
+        if (this.transportContext.getConfig().isResolveParallel() && order.size() > 1) {
+            addrs = resolveParallel(hostname, possibleNTDomainOrWorkgroup, order);
+        } else {
+            addrs = resolveSequential(hostname, possibleNTDomainOrWorkgroup, order);
+        }
+        if (addrs != null) {
+            return addrs;
+        }
+        final int negativePolicy = this.transportContext.getConfig().getNetbiosNegativeCachePolicy();
+        if (negativePolicy != 0) {
+            this.hostFailureCache.put(failureKey, Boolean.TRUE, expiration(negativePolicy));
+        }
+        throw new UnknownHostException(hostname);
+    }
 
-                if (addr != null) { // Success
-                    if (log.isDebugEnabled()) {
-                        log.debug("Resolved '{}' to addrs {} via {}", hostname, Arrays.toString(addr), resolver);
-                    }
-                    return wrapNetbiosAddresses(addr);
+    /**
+     * Query a single resolver
+     *
+     * @return the resolved addresses, null if the resolver is not applicable to the name or found nothing
+     */
+    UniAddress[] resolve(final ResolverType resolver, final String hostname, final boolean possibleNTDomainOrWorkgroup)
+            throws IOException {
+        NetbiosAddress[] addr = null;
+        switch (resolver) {
+        case RESOLVER_LMHOSTS:
+            NbtAddress lmaddr = getLmhosts().getByName(hostname, this.transportContext);
+            if (lmaddr == null) {
+                return null;
+            }
+            addr = new NetbiosAddress[] { lmaddr };
+            break;
+        case RESOLVER_WINS:
+            if (hostname.equals(NbtAddress.MASTER_BROWSER_NAME) || hostname.length() > 15) {
+                // invalid netbios name
+                return null;
+            }
+            if (possibleNTDomainOrWorkgroup) {
+                addr = lookupServerOrWorkgroup(hostname, getWINSAddress());
+            } else {
+                addr = getNbtAllByName(hostname, 0x20, null, getWINSAddress());
+            }
+            break;
+        case RESOLVER_BCAST:
+            if (hostname.length() > 15) {
+                // invalid netbios name
+                return null;
+            }
+            if (possibleNTDomainOrWorkgroup) {
+                addr = lookupServerOrWorkgroup(hostname, this.transportContext.getConfig().getBroadcastAddress());
+            } else {
+                addr = getNbtAllByName(hostname, 0x20, null, this.transportContext.getConfig().getBroadcastAddress());
+            }
+            break;
+        case RESOLVER_DNS:
+            if (isAllDigits(hostname)) {
+                throw new UnknownHostException(hostname);
+            }
+            final UniAddress[] addrs = wrapInetAddresses(InetAddress.getAllByName(hostname));
+            if (log.isDebugEnabled()) {
+                log.debug("Resolved '{}' to {} using DNS", hostname, Arrays.toString(addrs));
+            }
+            return addrs; // Success
+        default:
+            throw new UnknownHostException(hostname);
+        }
+
+        if (addr != null) { // Success
+            if (log.isDebugEnabled()) {
+                log.debug("Resolved '{}' to addrs {} via {}", hostname, Arrays.toString(addr), resolver);
+            }
+            return wrapNetbiosAddresses(addr);
+        }
+        return null;
+    }
+
+    /**
+     * Query all resolvers concurrently
+     *
+     * The first successful answer is returned and the remaining queries are cancelled. If several answers are
+     * available at the same time, the one from the resolver listed first in the resolve order wins.
+     *
+     * @return the resolved addresses, null if no resolver succeeded within the resolve timeout
+     */
+    private UniAddress[] resolveSequential(final String hostname, final boolean possibleNTDomainOrWorkgroup,
+            final List<ResolverType> order) {
+        for (final ResolverType resolver : order) {
+            try {
+                final UniAddress[] addrs = resolve(resolver, hostname, possibleNTDomainOrWorkgroup);
+                if (addrs != null) {
+                    return addrs;
                 }
             } catch (final IOException ioe) {
                 // Failure
@@ -969,7 +1123,125 @@ public class NameServiceClientImpl implements Runnable, NameServiceClient {
                 log.trace("Exception is", ioe);
             }
         }
-        throw new UnknownHostException(hostname);
+        return null;
+    }
+
+    private UniAddress[] resolveParallel(final String hostname, final boolean possibleNTDomainOrWorkgroup, final List<ResolverType> order)
+            throws UnknownHostException {
+        final int timeout = this.transportContext.getConfig().getResolveTimeout();
+        final int resolverTimeout = this.transportContext.getConfig().getResolverTimeout();
+        final CompletionService<ResolverResult> cs = new ExecutorCompletionService<>(RESOLVER_EXECUTOR);
+        final List<Future<ResolverResult>> queries = new ArrayList<>(order.size());
+        final AtomicLongArray started = new AtomicLongArray(order.size());
+        try {
+            for (int i = 0; i < order.size(); i++) {
+                final int priority = i;
+                final ResolverType resolver = order.get(i);
+                queries.add(cs.submit(() -> {
+                    started.set(priority, System.currentTimeMillis());
+                    try {
+                        return new ResolverResult(priority, resolve(resolver, hostname, possibleNTDomainOrWorkgroup));
+                    } catch (final IOException ioe) {
+                        log.trace("Resolving {} via {} failed:", hostname, resolver);
+                        log.trace("Exception is", ioe);
+                        return new ResolverResult(priority, null);
+                    }
+                }));
+            }
+        } catch (final RejectedExecutionException ree) {
+            log.debug("Too many concurrent lookups, resolving {} sequentially", hostname);
+            for (final Future<ResolverResult> q : queries) {
+                q.cancel(true);
+            }
+            return resolveSequential(hostname, possibleNTDomainOrWorkgroup, order);
+        }
+
+        try {
+            final long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+            int remaining = queries.size();
+            while (remaining > 0) {
+                final long now = System.currentTimeMillis();
+                if (now >= deadline) {
+                    log.debug("Resolving {} timed out after {} ms", hostname, timeout);
+                    return null;
+                }
+                final long next =
+                        resolverTimeout > 0 ? Math.min(deadline, expireResolvers(queries, order, started, resolverTimeout, now)) : deadline;
+                final Future<ResolverResult> first = next == Long.MAX_VALUE ? cs.take() : cs.poll(next - now, TimeUnit.MILLISECONDS);
+
+                ResolverResult best = null;
+                Future<ResolverResult> done = first;
+                while (done != null) {
+                    remaining--;
+                    final ResolverResult r = getResult(done);
+                    if (r != null && r.addrs != null && (best == null || r.priority < best.priority)) {
+                        best = r;
+                    }
+                    done = cs.poll();
+                }
+                if (best != null) {
+                    return best.addrs;
+                }
+            }
+            return null;
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new UnknownHostException(hostname);
+        } finally {
+            for (final Future<ResolverResult> q : queries) {
+                q.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Cancel resolvers that have been running for longer than the resolver timeout
+     *
+     * A cancelled resolver is reported through the completion service like one that finished.
+     *
+     * @return the time the next running resolver expires
+     */
+    private static long expireResolvers(final List<Future<ResolverResult>> queries, final List<ResolverType> order,
+            final AtomicLongArray started, final int resolverTimeout, final long now) {
+        long next = Long.MAX_VALUE;
+        for (int i = 0; i < queries.size(); i++) {
+            final Future<ResolverResult> q = queries.get(i);
+            if (q.isDone()) {
+                continue;
+            }
+            final long start = started.get(i);
+            // a resolver still queued has at least the full timeout ahead of it
+            final long expires = (start != 0 ? start : now) + resolverTimeout;
+            if (expires <= now) {
+                log.debug("Resolver {} timed out after {} ms", order.get(i), resolverTimeout);
+                q.cancel(true);
+            } else {
+                next = Math.min(next, expires);
+            }
+        }
+        return next;
+    }
+
+    private static ResolverResult getResult(final Future<ResolverResult> f) throws InterruptedException {
+        try {
+            return f.get();
+        } catch (final CancellationException e) {
+            return null;
+        } catch (final ExecutionException e) {
+            log.debug("Resolver failed", e.getCause());
+            return null;
+        }
+    }
+
+    private static final class ResolverResult {
+
+        final int priority;
+        final UniAddress[] addrs;
+
+        ResolverResult(final int priority, final UniAddress[] addrs) {
+            this.priority = priority;
+            this.addrs = addrs;
+        }
     }
 
     private static UniAddress[] wrapInetAddresses(final InetAddress[] iaddrs) {
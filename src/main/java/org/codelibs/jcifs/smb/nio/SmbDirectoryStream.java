@@ -0,0 +1,103 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.nio;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.codelibs.jcifs.smb.CloseableIterator;
+import org.codelibs.jcifs.smb.SmbResource;
+
+/**
+ * Directory stream backed by a streaming SMB directory enumeration
+ *
+ * Entries are fetched from the server as the iterator advances, so large directories are not held in memory.
+ */
+final class SmbDirectoryStream implements DirectoryStream<Path> {
+
+    private final Path dir;
+    private final CloseableIterator<SmbResource> entries;
+    private final Filter<? super Path> filter;
+    private boolean iterated;
+    private volatile boolean closed;
+
+    SmbDirectoryStream(final Path dir, final CloseableIterator<SmbResource> entries, final Filter<? super Path> filter) {
+        this.dir = dir;
+        this.entries = entries;
+        this.filter = filter;
+    }
+
+    @Override
+    public synchronized Iterator<Path> iterator() {
+        if (this.closed) {
+            throw new IllegalStateException("Directory stream is closed");
+        }
+        if (this.iterated) {
+            throw new IllegalStateException("Iterator already obtained");
+        }
+        this.iterated = true;
+        return new Iterator<>() {
+
+            private Path next;
+
+            @Override
+            public boolean hasNext() {
+                while (this.next == null && !SmbDirectoryStream.this.closed && SmbDirectoryStream.this.entries.hasNext()) {
+                    final Path p;
+                    try (SmbResource r = SmbDirectoryStream.this.entries.next()) {
+                        String name = r.getName();
+                        if (name.endsWith("/")) {
+                            name = name.substring(0, name.length() - 1);
+                        }
+                        p = SmbDirectoryStream.this.dir.resolve(name);
+                    }
+                    try {
+                        if (SmbDirectoryStream.this.filter == null || SmbDirectoryStream.this.filter.accept(p)) {
+                            this.next = p;
+                        }
+                    } catch (final IOException e) {
+                        throw new DirectoryIteratorException(e);
+                    }
+                }
+                return this.next != null;
+            }
+
+            @Override
+            public Path next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final Path p = this.next;
+                this.next = null;
+                return p;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!this.closed) {
+            this.closed = true;
+            this.entries.close();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.nio;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * Basic attribute view of a SMB resource
+ */
+public final class SmbFileAttributeView implements BasicFileAttributeView {
+
+    private final Path path;
+
+    SmbFileAttributeView(final Path path) {
+        this.path = path;
+    }
+
+    @Override
+    public String name() {
+        return "basic";
+    }
+
+    @Override
+    public SmbFileAttributes readAttributes() throws IOException {
+        return SmbFileSystemProvider.readAttributes(this.path);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Times passed as {@code null} are left unchanged.
+     */
+    @Override
+    public void setTimes(final FileTime lastModifiedTime, final FileTime lastAccessTime, final FileTime createTime) throws IOException {
+        SmbFileSystemProvider.setTimes(this.path, toMillis(createTime), toMillis(lastModifiedTime), toMillis(lastAccessTime));
+    }
+
+    private static long toMillis(final FileTime time) {
+        // zero leaves the time unchanged
+        return time != null ? time.toMillis() : 0L;
+    }
+}
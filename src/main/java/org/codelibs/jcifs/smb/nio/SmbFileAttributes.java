@@ -0,0 +1,117 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.nio;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.codelibs.jcifs.smb.SmbConstants;
+import org.codelibs.jcifs.smb.impl.SmbException;
+import org.codelibs.jcifs.smb.impl.SmbFile;
+
+/**
+ * Snapshot of the basic attributes of a SMB resource
+ */
+public final class SmbFileAttributes implements BasicFileAttributes {
+
+    private final int attributes;
+    private final boolean directory;
+    private final long size;
+    private final long createTime;
+    private final long lastModified;
+    private final long lastAccess;
+    private final String key;
+
+    SmbFileAttributes(final SmbFile file) throws SmbException {
+        this.directory = file.isDirectory();
+        this.attributes = file.getAttributes();
+        this.size = this.directory ? 0 : file.length();
+        this.createTime = file.createTime();
+        this.lastModified = file.lastModified();
+        this.lastAccess = file.lastAccess();
+        this.key = file.getCanonicalPath();
+    }
+
+    /**
+     * @return the SMB file attributes, see {@link SmbConstants}
+     */
+    public int getAttributes() {
+        return this.attributes;
+    }
+
+    @Override
+    public FileTime lastModifiedTime() {
+        return FileTime.fromMillis(this.lastModified);
+    }
+
+    @Override
+    public FileTime lastAccessTime() {
+        return FileTime.fromMillis(this.lastAccess);
+    }
+
+    @Override
+    public FileTime creationTime() {
+        return FileTime.fromMillis(this.createTime);
+    }
+
+    @Override
+    public boolean isRegularFile() {
+        return !this.directory;
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return this.directory;
+    }
+
+    @Override
+    public boolean isSymbolicLink() {
+        return false;
+    }
+
+    @Override
+    public boolean isOther() {
+        return false;
+    }
+
+    @Override
+    public long size() {
+        return this.size;
+    }
+
+    @Override
+    public Object fileKey() {
+        return this.key;
+    }
+
+    Map<String, Object> toMap() {
+        final Map<String, Object> m = new HashMap<>();
+        m.put("lastModifiedTime", lastModifiedTime());
+        m.put("lastAccessTime", lastAccessTime());
+        m.put("creationTime", creationTime());
+        m.put("size", size());
+        m.put("isRegularFile", isRegularFile());
+        m.put("isDirectory", isDirectory());
+        m.put("isSymbolicLink", isSymbolicLink());
+        m.put("isOther", isOther());
+        m.put("fileKey", fileKey());
+        return m;
+    }
+}
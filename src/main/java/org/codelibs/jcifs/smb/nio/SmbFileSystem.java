@@ -0,0 +1,266 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.nio;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.nio.file.ClosedFileSystemException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.codelibs.jcifs.smb.CIFSContext;
+import org.codelibs.jcifs.smb.impl.SmbFile;
+
+/**
+ * File system for a single SMB server
+ *
+ * A file system is identified by the URI authority, i.e. optional user information, host and port. All paths of a file
+ * system share the same {@link CIFSContext}.
+ */
+public final class SmbFileSystem extends FileSystem {
+
+    private static final Set<String> VIEWS = Collections.singleton("basic");
+
+    private final SmbFileSystemProvider provider;
+    private final String authority;
+    private final CIFSContext context;
+    private volatile boolean open = true;
+
+    SmbFileSystem(final SmbFileSystemProvider provider, final String authority, final CIFSContext context) {
+        this.provider = provider;
+        this.authority = authority;
+        this.context = context;
+    }
+
+    /**
+     * @return the URI authority this file system was created for
+     */
+    public String getAuthority() {
+        return this.authority;
+    }
+
+    /**
+     * @return the context used to access the server
+     */
+    public CIFSContext getContext() {
+        return this.context;
+    }
+
+    @Override
+    public SmbFileSystemProvider provider() {
+        return this.provider;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.open) {
+            this.open = false;
+            this.provider.removeFileSystem(this);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return this.open;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return false;
+    }
+
+    @Override
+    public String getSeparator() {
+        return "/";
+    }
+
+    @Override
+    public Iterable<Path> getRootDirectories() {
+        checkOpen();
+        return List.of(new SmbPath(this, "/"));
+    }
+
+    /**
+     * Not supported
+     */
+    @Override
+    public Iterable<FileStore> getFileStores() {
+        throw new UnsupportedOperationException("File stores are not supported");
+    }
+
+    @Override
+    public Set<String> supportedFileAttributeViews() {
+        return VIEWS;
+    }
+
+    @Override
+    public SmbPath getPath(final String first, final String... more) {
+        checkOpen();
+        if (more.length == 0) {
+            return new SmbPath(this, first);
+        }
+        final StringBuilder sb = new StringBuilder(first);
+        for (final String m : more) {
+            if (m.isEmpty()) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append('/');
+            }
+            sb.append(m);
+        }
+        return new SmbPath(this, sb.toString());
+    }
+
+    @Override
+    public PathMatcher getPathMatcher(final String syntaxAndPattern) {
+        checkOpen();
+        final int colon = syntaxAndPattern.indexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("Expected syntax:pattern, got " + syntaxAndPattern);
+        }
+        final String syntax = syntaxAndPattern.substring(0, colon);
+        final String pattern = syntaxAndPattern.substring(colon + 1);
+        final Pattern regex;
+        if ("glob".equalsIgnoreCase(syntax)) {
+            regex = Pattern.compile(globToRegex(pattern));
+        } else if ("regex".equalsIgnoreCase(syntax)) {
+            regex = Pattern.compile(pattern);
+        } else {
+            throw new UnsupportedOperationException("Unsupported pattern syntax " + syntax);
+        }
+        return path -> regex.matcher(path.toString()).matches();
+    }
+
+    static String globToRegex(final String glob) {
+        final StringBuilder sb = new StringBuilder(glob.length() + 8);
+        boolean inGroup = false;
+        for (int i = 0; i < glob.length(); i++) {
+            final char c = glob.charAt(i);
+            switch (c) {
+            case '*':
+                if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                    sb.append(".*");
+                    i++;
+                } else {
+                    sb.append("[^/]*");
+                }
+                break;
+            case '?':
+                sb.append("[^/]");
+                break;
+            case '{':
+                sb.append("(?:");
+                inGroup = true;
+                break;
+            case '}':
+                sb.append(')');
+                inGroup = false;
+                break;
+            case ',':
+                sb.append(inGroup ? "|" : ",");
+                break;
+            case '[':
+                sb.append('[');
+                if (i + 1 < glob.length() && glob.charAt(i + 1) == '!') {
+                    sb.append('^');
+                    i++;
+                }
+                break;
+            case ']':
+                sb.append(']');
+                break;
+            case '\\':
+                if (i + 1 < glob.length()) {
+                    sb.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+                }
+                break;
+            default:
+                if ("().+|^$".indexOf(c) >= 0) {
+                    sb.append('\\');
+                }
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Not supported
+     */
+    @Override
+    public UserPrincipalLookupService getUserPrincipalLookupService() {
+        throw new UnsupportedOperationException("User principal lookup is not supported");
+    }
+
+    /**
+     * Not supported
+     */
+    @Override
+    public WatchService newWatchService() throws IOException {
+        throw new UnsupportedOperationException("Watching is not supported");
+    }
+
+    /**
+     * @throws ClosedFileSystemException
+     *             if this file system has been closed
+     */
+    void checkOpen() {
+        if (!this.open) {
+            throw new ClosedFileSystemException();
+        }
+    }
+
+    /**
+     * Map a path of this file system to a SMB resource
+     *
+     * @param path
+     *            path on this file system
+     * @param directory
+     *            whether the path refers to a directory
+     * @return the resource
+     * @throws IOException
+     *             if the path cannot be mapped
+     */
+    SmbFile toSmbFile(final Path path, final boolean directory) throws IOException {
+        checkOpen();
+        if (!(path instanceof final SmbPath p) || p.getFileSystem() != this) {
+            throw new ProviderMismatchException();
+        }
+        final Path abs = p.toAbsolutePath().normalize();
+        final StringBuilder url = new StringBuilder("smb://").append(this.authority).append(abs.toString());
+        // the server root and shares are always directories
+        if ((directory || abs.getNameCount() <= 1) && url.charAt(url.length() - 1) != '/') {
+            url.append('/');
+        }
+        try {
+            return new SmbFile(url.toString(), this.context);
+        } catch (final MalformedURLException e) {
+            throw new IOException("Invalid path " + path, e);
+        }
+    }
+}
@@ -0,0 +1,528 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.nio;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AccessMode;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.CopyOption;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.DirectoryStream.Filter;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+import org.codelibs.jcifs.smb.CIFSContext;
+import org.codelibs.jcifs.smb.CIFSException;
+import org.codelibs.jcifs.smb.CloseableIterator;
+import org.codelibs.jcifs.smb.SmbConstants;
+import org.codelibs.jcifs.smb.SmbResource;
+import org.codelibs.jcifs.smb.context.SingletonContext;
+import org.codelibs.jcifs.smb.impl.NtStatus;
+import org.codelibs.jcifs.smb.impl.SmbException;
+import org.codelibs.jcifs.smb.impl.SmbFile;
+
+/**
+ * {@link FileSystemProvider} for {@code smb://} URIs
+ *
+ * File systems are created per URI authority. Unless a context is passed in the environment using {@link #CONTEXT},
+ * the {@link SingletonContext} is used. {@link #getPath(URI)} creates missing file systems on demand.
+ *
+ * File channels map onto positional SMB2 reads and writes, so they require a SMB2 or newer connection. File locks and
+ * memory mapping are not supported.
+ */
+public class SmbFileSystemProvider extends FileSystemProvider {
+
+    /**
+     * Environment key for the {@link CIFSContext} to use
+     */
+    public static final String CONTEXT = "context";
+
+    private final Map<String, SmbFileSystem> fileSystems = new ConcurrentHashMap<>();
+
+    @Override
+    public String getScheme() {
+        return "smb";
+    }
+
+    private static String authority(final URI uri) {
+        if (!"smb".equalsIgnoreCase(uri.getScheme())) {
+            throw new IllegalArgumentException("Not a smb URI " + uri);
+        }
+        final String authority = uri.getRawAuthority();
+        if (authority == null || authority.isEmpty()) {
+            throw new IllegalArgumentException("Missing server in " + uri);
+        }
+        return authority;
+    }
+
+    private static CIFSContext context(final Map<String, ?> env) {
+        final Object ctx = env != null ? env.get(CONTEXT) : null;
+        if (ctx == null) {
+            return SingletonContext.getInstance();
+        }
+        if (!(ctx instanceof final CIFSContext c)) {
+            throw new IllegalArgumentException(CONTEXT + " must be a CIFSContext");
+        }
+        return c;
+    }
+
+    @Override
+    public SmbFileSystem newFileSystem(final URI uri, final Map<String, ?> env) throws IOException {
+        final String authority = authority(uri);
+        final SmbFileSystem fs = new SmbFileSystem(this, authority, context(env));
+        if (this.fileSystems.putIfAbsent(authority, fs) != null) {
+            throw new FileSystemAlreadyExistsException(authority);
+        }
+        return fs;
+    }
+
+    @Override
+    public SmbFileSystem getFileSystem(final URI uri) {
+        final SmbFileSystem fs = this.fileSystems.get(authority(uri));
+        if (fs == null) {
+            throw new FileSystemNotFoundException(uri.toString());
+        }
+        return fs;
+    }
+
+    void removeFileSystem(final SmbFileSystem fs) {
+        this.fileSystems.remove(fs.getAuthority(), fs);
+    }
+
+    @Override
+    public Path getPath(final URI uri) {
+        final SmbFileSystem fs = this.fileSystems.computeIfAbsent(authority(uri), a -> new SmbFileSystem(this, a, context(null)));
+        final String path = uri.getPath();
+        return fs.getPath(path == null || path.isEmpty() ? "/" : path);
+    }
+
+    private static SmbFileSystem fileSystem(final Path path) {
+        if (!(path instanceof final SmbPath p)) {
+            throw new ProviderMismatchException();
+        }
+        final SmbFileSystem fs = p.getFileSystem();
+        fs.checkOpen();
+        return fs;
+    }
+
+    private static SmbFile file(final Path path) throws IOException {
+        return fileSystem(path).toSmbFile(path, false);
+    }
+
+    private static SmbFile directory(final Path path) throws IOException {
+        return fileSystem(path).toSmbFile(path, true);
+    }
+
+    /**
+     * Resolve a path, using directory form if the target is a directory
+     */
+    private static SmbFile existing(final Path path) throws IOException {
+        final SmbFile f = file(path);
+        try {
+            if (f.isDirectory()) {
+                f.close();
+                return directory(path);
+            }
+        } catch (final SmbException e) {
+            f.close();
+            throw translate(e, path);
+        }
+        return f;
+    }
+
+    static int openFlags(final Set<? extends OpenOption> options) {
+        boolean read = options.contains(StandardOpenOption.READ);
+        final boolean write = options.contains(StandardOpenOption.WRITE);
+        final boolean append = options.contains(StandardOpenOption.APPEND);
+        if (append && read) {
+            throw new IllegalArgumentException("READ and APPEND are mutually exclusive");
+        }
+        if (append && options.contains(StandardOpenOption.TRUNCATE_EXISTING)) {
+            throw new IllegalArgumentException("APPEND and TRUNCATE_EXISTING are mutually exclusive");
+        }
+        if (options.contains(StandardOpenOption.DELETE_ON_CLOSE)) {
+            throw new UnsupportedOperationException("DELETE_ON_CLOSE is not supported");
+        }
+        if (!write && !append) {
+            read = true;
+        }
+
+        int flags = 0;
+        if (read) {
+            flags |= SmbConstants.O_RDONLY;
+        }
+        if (write || append) {
+            flags |= SmbConstants.O_WRONLY;
+            if (append) {
+                flags |= SmbConstants.O_APPEND;
+            }
+            if (options.contains(StandardOpenOption.CREATE_NEW)) {
+                flags |= SmbConstants.O_CREAT | SmbConstants.O_EXCL;
+            } else {
+                if (options.contains(StandardOpenOption.CREATE)) {
+                    flags |= SmbConstants.O_CREAT;
+                }
+                if (options.contains(StandardOpenOption.TRUNCATE_EXISTING)) {
+                    flags |= SmbConstants.O_TRUNC;
+                }
+            }
+        }
+        return flags;
+    }
+
+    private static void checkNoAttributes(final FileAttribute<?>... attrs) {
+        if (attrs.length > 0) {
+            throw new UnsupportedOperationException("Initial file attributes are not supported");
+        }
+    }
+
+    @Override
+    public SeekableByteChannel newByteChannel(final Path path, final Set<? extends OpenOption> options, final FileAttribute<?>... attrs)
+            throws IOException {
+        return newFileChannel(path, options, attrs);
+    }
+
+    @Override
+    public FileChannel newFileChannel(final Path path, final Set<? extends OpenOption> options, final FileAttribute<?>... attrs)
+            throws IOException {
+        checkNoAttributes(attrs);
+        final int flags = openFlags(options);
+        try (SmbFile f = file(path)) {
+            return f.openFileChannel(flags, SmbConstants.DEFAULT_SHARING);
+        } catch (final SmbException e) {
+            throw translate(e, path);
+        }
+    }
+
+    @Override
+    public AsynchronousFileChannel newAsynchronousFileChannel(final Path path, final Set<? extends OpenOption> options,
+            final ExecutorService executor, final FileAttribute<?>... attrs) throws IOException {
+        checkNoAttributes(attrs);
+        final int flags = openFlags(options);
+        if ((flags & SmbConstants.O_APPEND) != 0) {
+            throw new UnsupportedOperationException("APPEND is not supported for asynchronous channels");
+        }
+        try (SmbFile f = file(path)) {
+            return f.openAsyncFileChannel(flags, SmbConstants.DEFAULT_SHARING, executor);
+        } catch (final SmbException e) {
+            throw translate(e, path);
+        }
+    }
+
+    @Override
+    public DirectoryStream<Path> newDirectoryStream(final Path dir, final Filter<? super Path> filter) throws IOException {
+        try (SmbFile d = directory(dir)) {
+            final CloseableIterator<SmbResource> it = d.children();
+            return new SmbDirectoryStream(dir, it, filter);
+        } catch (final SmbException e) {
+            throw translate(e, dir);
+        } catch (final CIFSException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void createDirectory(final Path dir, final FileAttribute<?>... attrs) throws IOException {
+        checkNoAttributes(attrs);
+        try (SmbFile d = directory(dir)) {
+            d.mkdir();
+        } catch (final SmbException e) {
+            throw translate(e, dir);
+        }
+    }
+
+    @Override
+    public void delete(final Path path) throws IOException {
+        try (SmbFile f = existing(path)) {
+            if (!f.exists()) {
+                throw new NoSuchFileException(path.toString());
+            }
+            if (f.isDirectory()) {
+                // SmbFile deletes recursively
+                try (CloseableIterator<SmbResource> it = f.children()) {
+                    if (it.hasNext()) {
+                        throw new DirectoryNotEmptyException(path.toString());
+                    }
+                }
+            }
+            f.delete();
+        } catch (final SmbException e) {
+            throw translate(e, path);
+        } catch (final CIFSException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void copy(final Path source, final Path target, final CopyOption... options) throws IOException {
+        boolean replace = false;
+        for (final CopyOption o : options) {
+            if (o == StandardCopyOption.REPLACE_EXISTING) {
+                replace = true;
+            } else if (o == StandardCopyOption.ATOMIC_MOVE) {
+                throw new UnsupportedOperationException("ATOMIC_MOVE is not supported for copy");
+            }
+        }
+        fileSystem(target);
+        try (SmbFile src = existing(source)) {
+            if (!src.exists()) {
+                throw new NoSuchFileException(source.toString());
+            }
+            final boolean dir = src.isDirectory();
+            try (SmbFile dst = existing(target)) {
+                if (dst.exists()) {
+                    if (!replace) {
+                        throw new FileAlreadyExistsException(target.toString());
+                    }
+                    delete(target);
+                }
+            }
+            if (dir) {
+                createDirectory(target);
+                return;
+            }
+            try (SmbFile dst = file(target)) {
+                src.copyTo(dst);
+            }
+        } catch (final SmbException e) {
+            throw translate(e, source);
+        }
+    }
+
+    @Override
+    public void move(final Path source, final Path target, final CopyOption... options) throws IOException {
+        boolean replace = false, atomic = false;
+        for (final CopyOption o : options) {
+            if (o == StandardCopyOption.REPLACE_EXISTING) {
+                replace = true;
+            } else if (o == StandardCopyOption.ATOMIC_MOVE) {
+                atomic = true;
+            }
+        }
+        if (fileSystem(source) == fileSystem(target) && sameShare(source, target)) {
+            try (SmbFile src = existing(source); SmbFile dst = file(target)) {
+                src.renameTo(dst, replace);
+                return;
+            } catch (final SmbException e) {
+                throw translate(e, source);
+            }
+        }
+        if (atomic) {
+            throw new AtomicMoveNotSupportedException(source.toString(), target.toString(), "Different shares");
+        }
+        copy(source, target, replace ? new CopyOption[] { StandardCopyOption.REPLACE_EXISTING } : new CopyOption[0]);
+        delete(source);
+    }
+
+    /**
+     * A file system covers all shares of a server, renames only work within a share
+     */
+    private static boolean sameShare(final Path source, final Path target) {
+        final Path s = source.toAbsolutePath().normalize();
+        final Path t = target.toAbsolutePath().normalize();
+        return s.getNameCount() > 0 && t.getNameCount() > 0 && s.getName(0).toString().equalsIgnoreCase(t.getName(0).toString());
+    }
+
+    @Override
+    public boolean isSameFile(final Path path, final Path path2) throws IOException {
+        fileSystem(path);
+        if (path.equals(path2)) {
+            return true;
+        }
+        if (!(path2 instanceof SmbPath) || fileSystem(path) != fileSystem(path2)) {
+            return false;
+        }
+        return path.toAbsolutePath().normalize().equals(path2.toAbsolutePath().normalize());
+    }
+
+    @Override
+    public boolean isHidden(final Path path) throws IOException {
+        try (SmbFile f = file(path)) {
+            return f.isHidden();
+        } catch (final SmbException e) {
+            throw translate(e, path);
+        }
+    }
+
+    /**
+     * Not supported
+     */
+    @Override
+    public FileStore getFileStore(final Path path) throws IOException {
+        fileSystem(path);
+        throw new UnsupportedOperationException("File stores are not supported");
+    }
+
+    @Override
+    public void checkAccess(final Path path, final AccessMode... modes) throws IOException {
+        try (SmbFile f = file(path)) {
+            if (!f.exists()) {
+                throw new NoSuchFileException(path.toString());
+            }
+            for (final AccessMode m : modes) {
+                if (m == AccessMode.WRITE && !f.canWrite()) {
+                    throw new AccessDeniedException(path.toString());
+                }
+            }
+        } catch (final SmbException e) {
+            throw translate(e, path);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <V extends FileAttributeView> V getFileAttributeView(final Path path, final Class<V> type, final LinkOption... options) {
+        if (type != BasicFileAttributeView.class && type != SmbFileAttributeView.class) {
+            return null;
+        }
+        fileSystem(path);
+        return (V) new SmbFileAttributeView(path);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <A extends BasicFileAttributes> A readAttributes(final Path path, final Class<A> type, final LinkOption... options)
+            throws IOException {
+        if (type != BasicFileAttributes.class && type != SmbFileAttributes.class) {
+            throw new UnsupportedOperationException("Unsupported attributes " + type.getName());
+        }
+        return (A) readAttributes(path);
+    }
+
+    static SmbFileAttributes readAttributes(final Path path) throws IOException {
+        try (SmbFile f = file(path)) {
+            if (!f.exists()) {
+                throw new NoSuchFileException(path.toString());
+            }
+            return new SmbFileAttributes(f);
+        } catch (final SmbException e) {
+            throw translate(e, path);
+        }
+    }
+
+    @Override
+    public Map<String, Object> readAttributes(final Path path, final String attributes, final LinkOption... options) throws IOException {
+        final String names = stripView(attributes);
+        final SmbFileAttributes attrs = readAttributes(path);
+        final Map<String, Object> all = attrs.toMap();
+        if ("*".equals(names)) {
+            return all;
+        }
+        final Map<String, Object> result = new HashMap<>();
+        for (final String name : names.split(",")) {
+            if (!all.containsKey(name)) {
+                throw new IllegalArgumentException("Unknown attribute " + name);
+            }
+            result.put(name, all.get(name));
+        }
+        return result;
+    }
+
+    @Override
+    public void setAttribute(final Path path, final String attribute, final Object value, final LinkOption... options) throws IOException {
+        final String name = stripView(attribute);
+        final FileTime time = (FileTime) value;
+        final SmbFileAttributeView view = new SmbFileAttributeView(path);
+        switch (name) {
+        case "lastModifiedTime":
+            view.setTimes(time, null, null);
+            break;
+        case "lastAccessTime":
+            view.setTimes(null, time, null);
+            break;
+        case "creationTime":
+            view.setTimes(null, null, time);
+            break;
+        default:
+            throw new IllegalArgumentException("Cannot set attribute " + attribute);
+        }
+    }
+
+    private static String stripView(final String attributes) {
+        final int colon = attributes.indexOf(':');
+        if (colon < 0) {
+            return attributes;
+        }
+        final String view = attributes.substring(0, colon);
+        if (!"basic".equals(view)) {
+            throw new UnsupportedOperationException("Unsupported attribute view " + view);
+        }
+        return attributes.substring(colon + 1);
+    }
+
+    static void setTimes(final Path path, final long createTime, final long lastModified, final long lastAccess) throws IOException {
+        try (SmbFile f = existing(path)) {
+            f.setFileTimes(createTime, lastModified, lastAccess);
+        } catch (final SmbException e) {
+            throw translate(e, path);
+        }
+    }
+
+    /**
+     * Map a SMB error to the matching {@link java.nio.file.FileSystemException}
+     *
+     * @param e
+     *            SMB error
+     * @param path
+     *            path the operation was performed on
+     * @return exception to throw
+     */
+    static IOException translate(final SmbException e, final Path path) {
+        final String p = String.valueOf(path);
+        final IOException r = switch (e.getNtStatus()) {
+        case NtStatus.NT_STATUS_OBJECT_NAME_NOT_FOUND, NtStatus.NT_STATUS_OBJECT_PATH_NOT_FOUND, NtStatus.NT_STATUS_NO_SUCH_FILE,
+                NtStatus.NT_STATUS_BAD_NETWORK_NAME -> new NoSuchFileException(p);
+        case NtStatus.NT_STATUS_OBJECT_NAME_COLLISION -> new FileAlreadyExistsException(p);
+        case NtStatus.NT_STATUS_ACCESS_DENIED -> new AccessDeniedException(p);
+        case NtStatus.NT_STATUS_NOT_A_DIRECTORY -> new NotDirectoryException(p);
+        default -> null;
+        };
+        if (r == null) {
+            return e;
+        }
+        r.initCause(e);
+        return r;
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.nio;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.WatchEvent.Kind;
+import java.nio.file.WatchEvent.Modifier;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Path on a SMB server
+ *
+ * Absolute paths start with the share name, e.g. {@code /share/dir/file}. The root {@code /} stands for the server
+ * itself, listing it returns the shares.
+ */
+public final class SmbPath implements Path {
+
+    private final SmbFileSystem fileSystem;
+    private final String path;
+    private volatile String[] names;
+
+    SmbPath(final SmbFileSystem fileSystem, final String path) {
+        this.fileSystem = fileSystem;
+        this.path = normalizeSeparators(path);
+    }
+
+    private static String normalizeSeparators(final String path) {
+        final StringBuilder sb = new StringBuilder(path.length());
+        char prev = 0;
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '\\') {
+                c = '/';
+            }
+            if (c == '/' && prev == '/') {
+                continue;
+            }
+            sb.append(c);
+            prev = c;
+        }
+        if (sb.length() > 1 && sb.charAt(sb.length() - 1) == '/') {
+            sb.setLength(sb.length() - 1);
+        }
+        return sb.toString();
+    }
+
+    private String[] names() {
+        String[] n = this.names;
+        if (n == null) {
+            final String p = isAbsolute() ? this.path.substring(1) : this.path;
+            n = p.isEmpty() ? new String[0] : p.split("/");
+            this.names = n;
+        }
+        return n;
+    }
+
+    private SmbPath create(final boolean absolute, final List<String> parts) {
+        return new SmbPath(this.fileSystem, (absolute ? "/" : "") + String.join("/", parts));
+    }
+
+    private SmbPath check(final Path other) {
+        if (!(other instanceof final SmbPath p)) {
+            throw new ProviderMismatchException();
+        }
+        return p;
+    }
+
+    @Override
+    public SmbFileSystem getFileSystem() {
+        return this.fileSystem;
+    }
+
+    @Override
+    public boolean isAbsolute() {
+        return this.path.startsWith("/");
+    }
+
+    @Override
+    public Path getRoot() {
+        return isAbsolute() ? new SmbPath(this.fileSystem, "/") : null;
+    }
+
+    @Override
+    public Path getFileName() {
+        final String[] n = names();
+        return n.length == 0 ? null : new SmbPath(this.fileSystem, n[n.length - 1]);
+    }
+
+    @Override
+    public Path getParent() {
+        final String[] n = names();
+        if (n.length == 0 || n.length == 1 && !isAbsolute()) {
+            return null;
+        }
+        return create(isAbsolute(), List.of(n).subList(0, n.length - 1));
+    }
+
+    @Override
+    public int getNameCount() {
+        return names().length;
+    }
+
+    @Override
+    public Path getName(final int index) {
+        final String[] n = names();
+        if (index < 0 || index >= n.length) {
+            throw new IllegalArgumentException("Invalid name index " + index);
+        }
+        return new SmbPath(this.fileSystem, n[index]);
+    }
+
+    @Override
+    public Path subpath(final int beginIndex, final int endIndex) {
+        final String[] n = names();
+        if (beginIndex < 0 || endIndex > n.length || beginIndex >= endIndex) {
+            throw new IllegalArgumentException("Invalid subpath " + beginIndex + "-" + endIndex);
+        }
+        return create(false, List.of(n).subList(beginIndex, endIndex));
+    }
+
+    @Override
+    public boolean startsWith(final Path other) {
+        if (!(other instanceof final SmbPath o) || o.fileSystem != this.fileSystem || o.isAbsolute() != isAbsolute()) {
+            return false;
+        }
+        final String[] n = names(), on = o.names();
+        if (on.length > n.length) {
+            return false;
+        }
+        for (int i = 0; i < on.length; i++) {
+            if (!on[i].equals(n[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean endsWith(final Path other) {
+        if (!(other instanceof final SmbPath o) || o.fileSystem != this.fileSystem) {
+            return false;
+        }
+        if (o.isAbsolute()) {
+            return equals(o);
+        }
+        final String[] n = names(), on = o.names();
+        if (on.length > n.length || on.length == 0 && n.length != 0) {
+            return false;
+        }
+        for (int i = 0; i < on.length; i++) {
+            if (!on[on.length - 1 - i].equals(n[n.length - 1 - i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Path normalize() {
+        final List<String> out = new ArrayList<>();
+        for (final String name : names()) {
+            if (".".equals(name)) {
+                continue;
+            }
+            if ("..".equals(name)) {
+                if (!out.isEmpty() && !"..".equals(out.get(out.size() - 1))) {
+                    out.remove(out.size() - 1);
+                    continue;
+                }
+                if (isAbsolute()) {
+                    // cannot go above the root
+                    continue;
+                }
+            }
+            out.add(name);
+        }
+        return create(isAbsolute(), out);
+    }
+
+    @Override
+    public Path resolve(final Path other) {
+        final SmbPath o = check(other);
+        if (o.isAbsolute()) {
+            return o;
+        }
+        if (o.path.isEmpty()) {
+            return this;
+        }
+        if (this.path.isEmpty()) {
+            return o;
+        }
+        return new SmbPath(this.fileSystem, this.path + "/" + o.path);
+    }
+
+    @Override
+    public Path relativize(final Path other) {
+        final SmbPath o = check(other);
+        if (o.isAbsolute() != isAbsolute()) {
+            throw new IllegalArgumentException("Cannot relativize absolute and relative paths");
+        }
+        final String[] n = names(), on = o.names();
+        int common = 0;
+        while (common < n.length && common < on.length && n[common].equals(on[common])) {
+            common++;
+        }
+        final List<String> out = new ArrayList<>();
+        for (int i = common; i < n.length; i++) {
+            out.add("..");
+        }
+        for (int i = common; i < on.length; i++) {
+            out.add(on[i]);
+        }
+        return create(false, out);
+    }
+
+    @Override
+    public URI toUri() {
+        try {
+            final SmbPath abs = (SmbPath) toAbsolutePath();
+            return new URI("smb", this.fileSystem.getAuthority(), abs.getNameCount() <= 1 ? abs.path + "/" : abs.path, null, null);
+        } catch (final URISyntaxException e) {
+            throw new IllegalStateException("Cannot create URI for " + this, e);
+        }
+    }
+
+    @Override
+    public Path toAbsolutePath() {
+        return isAbsolute() ? this : new SmbPath(this.fileSystem, "/" + this.path);
+    }
+
+    @Override
+    public Path toRealPath(final LinkOption... options) throws IOException {
+        final Path real = toAbsolutePath().normalize();
+        this.fileSystem.provider().checkAccess(real);
+        return real;
+    }
+
+    /**
+     * Not supported
+     */
+    @Override
+    public WatchKey register(final WatchService watcher, final Kind<?>[] events, final Modifier... modifiers) throws IOException {
+        throw new UnsupportedOperationException("Watching is not supported");
+    }
+
+    @Override
+    public int compareTo(final Path other) {
+        return this.path.compareTo(check(other).path);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return obj instanceof final SmbPath o && o.fileSystem == this.fileSystem && o.path.equals(this.path);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.path.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return this.path;
+    }
+}
@@ -137,4 +137,46 @@ public interface Response extends Message {
      */
     Response getNextResponse();
 
+    /**
+     * Wait until this response is received or waiting threads are woken up
+     *
+     * The default implementation waits on the response monitor, implementations should provide a lock-free variant.
+     *
+     * @param timeout
+     *            maximum time to wait in milliseconds, 0 to wait without limit
+     * @throws InterruptedException
+     *             if the waiting thread was interrupted
+     */
+    default void awaitSignal(final long timeout) throws InterruptedException {
+        synchronized (this) {
+            if (!isReceived()) {
+                wait(timeout);
+            }
+        }
+    }
+
+    /**
+     * Wake up threads waiting for this response
+     */
+    default void signal() {
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Set a callback that is run whenever this response is signalled
+     *
+     * The callback runs on the thread signalling the response, usually the transport reader thread. It is also run for
+     * interim responses, so it needs to check the response state.
+     *
+     * @param listener
+     *            callback, null to remove
+     * @throws UnsupportedOperationException
+     *             if this response does not support listeners
+     */
+    default void setSignalListener(final Runnable listener) {
+        throw new UnsupportedOperationException("Signal listeners are not supported by " + getClass().getName());
+    }
+
 }
@@ -0,0 +1,143 @@
+/*
+ * © 2025 CodeLibs, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.codelibs.jcifs.smb.util.transport;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Completion signal for a response
+ *
+ * Waiting threads are parked instead of waiting on the response monitor, so that the reader thread never has to
+ * acquire a lock to complete a response and waiters do not pin carrier threads when running on virtual threads.
+ *
+ * Each call to {@link #signal()} wakes up all threads currently waiting and then runs the registered listener, if any.
+ */
+public final class ResponseSignal {
+
+    private static final Logger log = LoggerFactory.getLogger(ResponseSignal.class);
+
+    private static final AtomicIntegerFieldUpdater<ResponseSignal> SEQUENCE =
+            AtomicIntegerFieldUpdater.newUpdater(ResponseSignal.class, "sequence");
+    private static final AtomicReferenceFieldUpdater<ResponseSignal, Waiter> WAITERS =
+            AtomicReferenceFieldUpdater.newUpdater(ResponseSignal.class, Waiter.class, "waiters");
+
+    private volatile int sequence;
+    private volatile Waiter waiters;
+    private volatile Runnable listener;
+
+    /**
+     * Set a callback to run on every signal
+     *
+     * The listener runs on the signalling thread, usually the transport reader thread, so it must not block.
+     *
+     * @param listener
+     *            callback, null to remove
+     */
+    public void setListener(final Runnable listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Wait until signalled
+     *
+     * @param timeout
+     *            maximum time to wait in milliseconds, 0 to wait without limit
+     * @param done
+     *            condition checked before waiting, if it holds this returns immediately
+     * @throws InterruptedException
+     *             if the waiting thread was interrupted
+     */
+    public void await(final long timeout, final BooleanSupplier done) throws InterruptedException {
+        final int seq = this.sequence;
+        if (done.getAsBoolean()) {
+            return;
+        }
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+
+        final Waiter w = new Waiter(Thread.currentThread());
+        Waiter head;
+        do {
+            head = this.waiters;
+            w.next = head;
+        } while (!WAITERS.compareAndSet(this, head, w));
+
+        try {
+            final long deadline = timeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : 0;
+            while (this.sequence == seq) {
+                if (timeout > 0) {
+                    final long remain = deadline - System.nanoTime();
+                    if (remain <= 0) {
+                        return;
+                    }
+                    LockSupport.parkNanos(this, remain);
+                } else {
+                    LockSupport.park(this);
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            // unlinked by the next signal
+            w.thread = null;
+        }
+    }
+
+    /**
+     * Wake up all waiting threads
+     */
+    public void signal() {
+        SEQUENCE.incrementAndGet(this);
+        Waiter w = WAITERS.getAndSet(this, null);
+        while (w != null) {
+            final Thread t = w.thread;
+            if (t != null) {
+                LockSupport.unpark(t);
+            }
+            w = w.next;
+        }
+
+        final Runnable l = this.listener;
+        if (l != null) {
+            try {
+                l.run();
+            } catch (final RuntimeException e) {
+                log.warn("Response listener failed", e);
+            }
+        }
+    }
+
+    private static final class Waiter {
+
+        volatile Thread thread;
+        Waiter next;
+
+        Waiter(final Thread thread) {
+            this.thread = thread;
+        }
+    }
+}
@@ -25,6 +25,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.codelibs.jcifs.smb.RuntimeCIFSException;
 import org.codelibs.jcifs.smb.impl.RequestParam;
@@ -107,13 +108,13 @@ public abstract class Transport implements Runnable, AutoCloseable {
     private volatile TransportException te;
 
     /**
-     * Lock object for synchronizing input operations
+     * Lock for synchronizing input operations
      */
-    protected final Object inLock = new Object();
+    protected final ReentrantLock inLock = new ReentrantLock();
     /**
-     * Lock object for synchronizing output operations
+     * Lock for synchronizing output operations
      */
-    protected final Object outLock = new Object();
+    protected final ReentrantLock outLock = new ReentrantLock();
 
     /**
      * Map for tracking pending responses by their key
@@ -265,7 +266,8 @@ public abstract class Transport implements Runnable, AutoCloseable {
                 // we are in the transport thread, ie. on idle disconnecting
                 // this is synchronous operation
                 // This does not handle compound requests
-                synchronized (this.inLock) {
+                this.inLock.lock();
+                try {
                     final Long peekKey = peekKey();
                     if (peekKey == firstKey) {
                         doRecv(response);
@@ -273,6 +275,8 @@ public abstract class Transport implements Runnable, AutoCloseable {
                         return response;
                     }
                     doSkip(peekKey);
+                } finally {
+                    this.inLock.unlock();
                 }
             }
 
@@ -289,17 +293,84 @@ public abstract class Transport implements Runnable, AutoCloseable {
         } catch (final InterruptedException ie) {
             throw new TransportException(ie);
         } finally {
-            Response curResp = response;
-            Request curReq = request;
-            while (curResp != null) {
-                this.response_map.remove(curResp.getMid());
-                final Request next = curReq.getNext();
-                if (next == null) {
-                    break;
-                }
-                curReq = next;
-                curResp = next.getResponse();
+            removeResponses(request, response);
+        }
+    }
+
+    /**
+     * Send a request message without waiting for the response
+     *
+     * The response is registered for the request's message id and will be filled in by the
+     * transport thread once it arrives. Callers must collect it using {@link #waitForResponse(Request, Response)},
+     * otherwise it will stay registered with this transport.
+     *
+     * @param <T> the response type
+     * @param request the request to send
+     * @param response the response object to populate
+     * @param params additional parameters for the request
+     * @return the response, not yet received
+     * @throws IOException if an I/O error occurs
+     */
+    public <T extends Response> T sendAsync(final Request request, final T response, final Set<RequestParam> params) throws IOException {
+        if (isDisconnected() && this.state != 5) {
+            throw new TransportException("Transport is disconnected " + this.name);
+        }
+        if (Thread.currentThread() == this.thread) {
+            throw new TransportException("Cannot send asynchronously from the transport thread " + this.name);
+        }
+        try {
+            final long timeout = !params.contains(RequestParam.NO_TIMEOUT) ? getResponseTimeout(request) : 0;
+            doSend(request, response, params, timeout);
+            return response;
+        } catch (final IOException ioe) {
+            log.warn("sendAsync failed", ioe);
+            removeResponses(request, response);
+            try {
+                disconnect(true);
+            } catch (final IOException ioe2) {
+                ioe.addSuppressed(ioe2);
+                log.info("disconnect failed", ioe2);
+            }
+            throw ioe;
+        }
+    }
+
+    /**
+     * Wait for the response to a request previously sent using {@link #sendAsync(Request, Response, Set)}
+     *
+     * @param <T> the response type
+     * @param request the request that was sent
+     * @param response the response returned from sendAsync
+     * @return the response
+     * @throws IOException if an I/O error occurs or the response timed out
+     */
+    public <T extends Response> T waitForResponse(final Request request, final T response) throws IOException {
+        try {
+            final Long exp = response.getExpiration();
+            long timeout = 0;
+            if (exp != null) {
+                // a non-positive value would wait forever, make sure the expiration is checked
+                timeout = Math.max(1, exp - System.currentTimeMillis());
             }
+            return waitForResponses(request, response, timeout);
+        } catch (final InterruptedException ie) {
+            throw new TransportException(ie);
+        } finally {
+            removeResponses(request, response);
+        }
+    }
+
+    private void removeResponses(final Request request, final Response response) {
+        Response curResp = response;
+        Request curReq = request;
+        while (curResp != null) {
+            this.response_map.remove(curResp.getMid());
+            final Request next = curReq.getNext();
+            if (next == null) {
+                break;
+            }
+            curReq = next;
+            curResp = next.getResponse();
         }
     }
 
@@ -380,44 +451,42 @@ public abstract class Transport implements Runnable, AutoCloseable {
         Response curResp = response;
         Request curReq = request;
         while (curResp != null) {
-            synchronized (curResp) {
-                if (!curResp.isReceived()) {
-                    if (timeout > 0) {
-                        curResp.wait(timeout);
-                        if (!curResp.isReceived() && handleIntermediate(curReq, curResp)) {
-                            continue;
-                        }
-
-                        if (curResp.isError()) {
-                            throw new TransportException(this.name + " error reading response to " + curReq, curResp.getException());
-                        }
-                        if (isDisconnected() && this.state != 5) {
-                            throw new TransportException(
-                                    String.format("Transport was disconnected while waiting for a response (transport: %s state: %d),",
-                                            this.name, this.state));
-                        }
-                        timeout = curResp.getExpiration() - System.currentTimeMillis();
-                        if (timeout <= 0) {
-                            if (log.isDebugEnabled()) {
-                                log.debug("State is " + this.state);
-                            }
-                            throw new RequestTimeoutException(this.name + " timedout waiting for response to " + curReq);
-                        }
+            if (!curResp.isReceived()) {
+                if (timeout > 0) {
+                    curResp.awaitSignal(timeout);
+                    if (!curResp.isReceived() && handleIntermediate(curReq, curResp)) {
                         continue;
                     }
 
-                    curResp.wait();
-                    if (handleIntermediate(request, curResp)) {
-                        continue;
+                    if (curResp.isError()) {
+                        throw new TransportException(this.name + " error reading response to " + curReq, curResp.getException());
                     }
-                    if (log.isDebugEnabled()) {
-                        log.debug("Wait returned state is " + this.state);
+                    if (isDisconnected() && this.state != 5) {
+                        throw new TransportException(
+                                String.format("Transport was disconnected while waiting for a response (transport: %s state: %d),",
+                                        this.name, this.state));
                     }
-                    if (isDisconnected()) {
-                        throw new InterruptedException("Transport was disconnected while waiting for a response");
+                    timeout = curResp.getExpiration() - System.currentTimeMillis();
+                    if (timeout <= 0) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("State is " + this.state);
+                        }
+                        throw new RequestTimeoutException(this.name + " timedout waiting for response to " + curReq);
                     }
                     continue;
                 }
+
+                curResp.awaitSignal(0);
+                if (handleIntermediate(request, curResp)) {
+                    continue;
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("Wait returned state is " + this.state);
+                }
+                if (isDisconnected()) {
+                    throw new InterruptedException("Transport was disconnected while waiting for a response");
+                }
+                continue;
             }
 
             final Request next = curReq.getNext();
@@ -453,7 +522,8 @@ public abstract class Transport implements Runnable, AutoCloseable {
     private void loop() {
         while (this.thread == Thread.currentThread()) {
             try {
-                synchronized (this.inLock) {
+                this.inLock.lock();
+                try {
                     Long key;
                     try {
                         key = peekKey();
@@ -465,9 +535,7 @@ public abstract class Transport implements Runnable, AutoCloseable {
                             }
                             // notify, so that callers with timed-out requests can handle them
                             for (final Response response : this.response_map.values()) {
-                                synchronized (response) {
-                                    response.notifyAll();
-                                }
+                                response.signal();
                             }
                             continue;
                         }
@@ -496,6 +564,8 @@ public abstract class Transport implements Runnable, AutoCloseable {
                         doRecv(response);
                         response.received();
                     }
+                } finally {
+                    this.inLock.unlock();
                 }
             } catch (final Exception ex) {
                 final String msg = ex.getMessage();
@@ -623,8 +693,7 @@ public abstract class Transport implements Runnable, AutoCloseable {
             this.state = 1;
             this.te = null;
 
-            final Thread t = new Thread(this, this.name);
-            t.setDaemon(true);
+            final Thread t = newThread(this, this.name);
             this.thread = t;
 
             synchronized (this.thread) {
@@ -674,6 +743,21 @@ public abstract class Transport implements Runnable, AutoCloseable {
         }
     }
 
+    /**
+     * Create the thread establishing the connection and running the receive loop
+     *
+     * @param task
+     *            the task to run
+     * @param threadName
+     *            name of the thread
+     * @return a new, unstarted daemon thread
+     */
+    protected Thread newThread(final Runnable task, final String threadName) {
+        final Thread t = new Thread(task, threadName);
+        t.setDaemon(true);
+        return t;
+    }
+
     /**
      * Cleans up the transport thread.
      *
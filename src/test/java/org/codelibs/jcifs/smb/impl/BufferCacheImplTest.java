@@ -2,15 +2,24 @@ package org.codelibs.jcifs.smb.impl;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.codelibs.jcifs.smb.Configuration;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
@@ -39,6 +48,7 @@ class BufferCacheImplTest {
         // Verify interactions happen exactly once during construction
         verify(cfg, times(1)).getBufferCacheSize();
         verify(cfg, times(1)).getMaximumBufferSize();
+        verify(cfg, times(1)).isUseDirectBuffers();
         verifyNoMoreInteractions(cfg);
 
         // When cache is empty, getBuffer allocates a new buffer with configured size
@@ -113,9 +123,9 @@ class BufferCacheImplTest {
     @DisplayName("Cache capacity respected: extra releases dropped; retrieval order by first free slot")
     void cacheCapacityAndRetrievalOrder() {
         BufferCacheImpl impl = new BufferCacheImpl(2, 3);
-        byte[] a = new byte[1];
-        byte[] c = new byte[2];
-        byte[] d = new byte[4];
+        byte[] a = new byte[3];
+        byte[] c = new byte[3];
+        byte[] d = new byte[3];
 
         impl.releaseBuffer(a); // goes to slot 0
         impl.releaseBuffer(c); // goes to slot 1
@@ -137,7 +147,7 @@ class BufferCacheImplTest {
     @DisplayName("Parameterized: buffer reuse works for various small cache sizes")
     void reuseWorksForVariousCacheSizes(int cacheSize) {
         BufferCacheImpl impl = new BufferCacheImpl(cacheSize, 6);
-        byte[] toRelease = new byte[5];
+        byte[] toRelease = new byte[6];
         toRelease[0] = 42;
         impl.releaseBuffer(toRelease);
 
@@ -166,10 +176,10 @@ class BufferCacheImplTest {
         }
     }
 
-    // Heterogeneous buffer sizes: cache should return exactly what was released
+    // Heterogeneous buffer sizes: undersized buffers must never be handed out
     @Test
-    @DisplayName("Cache preserves and returns original buffer instances of varying sizes")
-    void returnsExactReleasedInstances() {
+    @DisplayName("Buffers smaller than the requested size class are not reused")
+    void undersizedBuffersAreDropped() {
         BufferCacheImpl impl = new BufferCacheImpl(3, 8);
         byte[] s1 = new byte[2];
         byte[] s2 = new byte[7];
@@ -178,12 +188,111 @@ class BufferCacheImplTest {
         impl.releaseBuffer(s2);
 
         byte[] r1 = impl.getBuffer();
-        byte[] r2 = impl.getBuffer();
+        assertNotSame(s1, r1);
+        assertNotSame(s2, r1);
+        assertEquals(8, r1.length);
+        assertEquals(0, impl.getCachedBuffers());
+    }
+
+    @Test
+    @DisplayName("Requests are served from the smallest sufficient size class")
+    void sizeClasses() {
+        BufferCacheImpl impl = new BufferCacheImpl(2, 65536 + 100);
+
+        assertEquals(BufferCacheImpl.MIN_CLASS_SIZE, impl.getBuffer(1).length);
+        assertEquals(8192, impl.getBuffer(BufferCacheImpl.MIN_CLASS_SIZE + 1).length);
+        assertEquals(65536, impl.getBuffer(65536).length);
+        assertEquals(65536 + 100, impl.getBuffer(65537).length);
+        assertEquals(65536 + 100, impl.getBuffer().length);
+        // larger than the maximum, allocated exactly
+        assertEquals(200000, impl.getBuffer(200000).length);
+
+        byte[] small = impl.getBuffer(100);
+        impl.releaseBuffer(small);
+        assertSame(small, impl.getBuffer(BufferCacheImpl.MIN_CLASS_SIZE));
+        impl.releaseBuffer(small);
+        assertNotSame(small, impl.getBuffer(BufferCacheImpl.MIN_CLASS_SIZE + 1), "Buffer too small for the larger class");
+    }
 
-        // Order is by first free slot (s1 then s2)
-        assertSame(s1, r1);
-        assertSame(s2, r2);
-        assertEquals(2, r1.length);
-        assertEquals(7, r2.length);
+    @Test
+    @DisplayName("Only the dirty range is cleared on release")
+    void dirtyRangeZeroing() {
+        BufferCacheImpl impl = new BufferCacheImpl(1, 16);
+        byte[] b = impl.getBuffer();
+        Arrays.fill(b, (byte) 1);
+        impl.releaseBuffer(b, 4);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(0, b[i]);
+        }
+        assertEquals(1, b[4]);
+
+        assertDoesNotThrow(() -> impl.releaseBuffer(new byte[16], 100));
+        assertDoesNotThrow(() -> impl.releaseBuffer(new byte[16], -1));
+    }
+
+    @Test
+    @DisplayName("Hits, misses and allocated bytes are counted")
+    void statistics() {
+        BufferCacheImpl impl = new BufferCacheImpl(2, 16);
+        byte[] b = impl.getBuffer();
+        assertEquals(0, impl.getCacheHits());
+        assertEquals(1, impl.getCacheMisses());
+        assertEquals(16, impl.getAllocatedBytes());
+
+        impl.releaseBuffer(b);
+        assertSame(b, impl.getBuffer());
+        assertEquals(1, impl.getCacheHits());
+        assertEquals(1, impl.getCacheMisses());
+        assertEquals(16, impl.getAllocatedBytes());
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = { false, true })
+    @DisplayName("Byte buffers are pooled per size class, direct if configured")
+    void byteBuffers(boolean direct) {
+        BufferCacheImpl impl = new BufferCacheImpl(2, 65536, direct);
+        ByteBuffer bb = impl.getByteBuffer(100);
+        assertEquals(direct, bb.isDirect());
+        assertEquals(BufferCacheImpl.MIN_CLASS_SIZE, bb.capacity());
+        assertEquals(100, bb.limit());
+        assertEquals(0, bb.position());
+
+        bb.put((byte) 1);
+        impl.releaseByteBuffer(bb);
+        ByteBuffer again = impl.getByteBuffer(200);
+        assertSame(bb, again);
+        assertEquals(200, again.limit());
+        assertEquals(0, again.position());
+        if (!direct) {
+            assertEquals(0, again.get(0));
+        }
+    }
+
+    @Test
+    @DisplayName("Concurrent use never hands out a buffer twice")
+    void concurrentUse() throws Exception {
+        BufferCacheImpl impl = new BufferCacheImpl(4, 64);
+        Set<byte[]> inUse = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        AtomicBoolean duplicate = new AtomicBoolean();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    byte[] b = impl.getBuffer();
+                    if (!inUse.add(b)) {
+                        duplicate.set(true);
+                    }
+                    inUse.remove(b);
+                    impl.releaseBuffer(b, 1);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertFalse(duplicate.get());
+        assertTrue(impl.getCachedBuffers() <= 4);
+        assertEquals(8 * 10000, impl.getCacheHits() + impl.getCacheMisses());
     }
 }
@@ -16,9 +16,11 @@
 package org.codelibs.jcifs.smb.impl;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
@@ -27,6 +29,8 @@ import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
@@ -171,6 +175,30 @@ class DfsImplTest {
         assertDoesNotThrow(() -> dfsImpl.cache(mockContext, "\\\\server\\share\\path", mockReferral));
     }
 
+    @Test
+    @DisplayName("Resolve returns the longest cached stand-alone referral")
+    void testResolve_LongestStandaloneMatch() throws SmbAuthException {
+        when(mockCredentials.getUserDomain()).thenReturn(null);
+        final long expiration = System.currentTimeMillis() + 60000;
+        final String path = "\\server\\share\\a\\b\\c";
+
+        DfsReferralDataInternal deep = mock(DfsReferralDataInternal.class);
+        when(deep.getPathConsumed()).thenReturn("\\server\\share\\a\\b".length());
+        when(deep.next()).thenReturn(deep);
+        when(deep.getExpiration()).thenReturn(expiration);
+        dfsImpl.cache(mockContext, path, deep);
+
+        DfsReferralDataInternal shallow = mock(DfsReferralDataInternal.class);
+        when(shallow.getPathConsumed()).thenReturn("\\server\\share\\a".length());
+        when(shallow.next()).thenReturn(shallow);
+        when(shallow.getExpiration()).thenReturn(expiration);
+        dfsImpl.cache(mockContext, path, shallow);
+
+        assertSame(deep, dfsImpl.resolve(mockContext, "SERVER", "share", "\\a\\b\\c\\file"));
+        assertSame(shallow, dfsImpl.resolve(mockContext, "server", "share", "\\a\\x"));
+        assertNull(dfsImpl.resolve(mockContext, "server", "share", "\\x"));
+    }
+
     // Additional tests for edge cases and concurrency
 
     @Nested
@@ -206,6 +234,76 @@ class DfsImplTest {
         }
     }
 
+    @Nested
+    @DisplayName("Referral Lookup Coalescing Tests")
+    class LookupCoalescingTests {
+
+        @Test
+        @DisplayName("Concurrent DC lookups for the same domain send one referral request")
+        void testConcurrentDcLookupsCoalesced() throws Exception {
+            SmbTransportImpl mockTransport = mock(SmbTransportImpl.class);
+            SmbTransportInternal mockInternal = mock(SmbTransportInternal.class);
+            when(mockTransportPool.getSmbTransport(any(CIFSContext.class), anyString(), anyInt(), anyBoolean(), anyBoolean()))
+                    .thenReturn(mockTransport);
+            when(mockTransport.unwrap(SmbTransportInternal.class)).thenReturn(mockInternal);
+            when(mockContext.withAnonymousCredentials()).thenReturn(mockContext);
+
+            CountDownLatch release = new CountDownLatch(1);
+            when(mockInternal.getDfsReferrals(any(), anyString(), anyString(), anyString(), anyInt())).thenAnswer(inv -> {
+                release.await(10, TimeUnit.SECONDS);
+                return null;
+            });
+
+            int threadCount = 8;
+            CountDownLatch doneLatch = new CountDownLatch(threadCount);
+            List<Exception> exceptions = Collections.synchronizedList(new ArrayList<>());
+            for (int i = 0; i < threadCount; i++) {
+                new Thread(() -> {
+                    try {
+                        assertNull(dfsImpl.getDc(mockContext, "DOMAIN.com"));
+                    } catch (Exception e) {
+                        exceptions.add(e);
+                    } finally {
+                        doneLatch.countDown();
+                    }
+                }).start();
+            }
+
+            long deadline = System.currentTimeMillis() + 10000;
+            while (dfsImpl.getCoalescedLookupCount() < threadCount - 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            assertTrue(doneLatch.await(10, TimeUnit.SECONDS), "All threads should complete");
+            assertTrue(exceptions.isEmpty(), "No exceptions should be thrown: " + exceptions);
+            verify(mockInternal, times(1)).getDfsReferrals(any(), anyString(), anyString(), anyString(), anyInt());
+            assertEquals(threadCount - 1, dfsImpl.getCoalescedLookupCount());
+            assertEquals(1, dfsImpl.getReferralRequestCount());
+            assertEquals(0, dfsImpl.getReferralFailureCount());
+        }
+
+        @Test
+        @DisplayName("Failed referral requests are counted")
+        void testReferralFailureCounted() throws Exception {
+            SmbTransportImpl mockTransport = mock(SmbTransportImpl.class);
+            SmbTransportInternal mockInternal = mock(SmbTransportInternal.class);
+            when(mockTransportPool.getSmbTransport(any(CIFSContext.class), anyString(), anyInt(), anyBoolean(), anyBoolean()))
+                    .thenReturn(mockTransport);
+            when(mockTransport.unwrap(SmbTransportInternal.class)).thenReturn(mockInternal);
+            when(mockInternal.getDfsReferrals(any(), anyString(), anyString(), anyString(), anyInt()))
+                    .thenThrow(new SmbException("Referral failed"));
+
+            assertNull(dfsImpl.getDc(mockContext, "domain.com"));
+            // the failure is cached
+            assertNull(dfsImpl.getDc(mockContext, "domain.com"));
+
+            assertEquals(1, dfsImpl.getReferralRequestCount());
+            assertEquals(1, dfsImpl.getReferralFailureCount());
+            assertTrue(dfsImpl.getReferralTimeNanos() >= 0);
+        }
+    }
+
     @Nested
     @DisplayName("Resolution Edge Cases")
     class ResolutionEdgeCaseTests {
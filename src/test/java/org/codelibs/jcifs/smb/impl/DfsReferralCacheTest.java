@@ -0,0 +1,99 @@
+package org.codelibs.jcifs.smb.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.Map;
+
+import org.codelibs.jcifs.smb.internal.dfs.DfsReferralDataInternal;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class DfsReferralCacheTest {
+
+    private final DfsReferralCache cache = new DfsReferralCache();
+    private final long now = System.currentTimeMillis();
+
+    @Test
+    @DisplayName("Lookup returns the longest matching prefix regardless of insertion order")
+    void longestPrefix() {
+        final DfsReferralDataInternal shallow = mock(DfsReferralDataInternal.class);
+        final DfsReferralDataInternal deep = mock(DfsReferralDataInternal.class);
+        this.cache.put("\\server\\share\\a", shallow, this.now + 60000);
+        this.cache.put("\\server\\share\\a\\b", deep, this.now + 60000);
+
+        assertSame(deep, this.cache.lookup("\\server\\share\\a\\b\\c\\file.txt", 2, this.now).getReferral());
+        assertSame(shallow, this.cache.lookup("\\server\\share\\a\\bc", 2, this.now).getReferral());
+        assertSame(shallow, this.cache.lookup("\\server\\share\\a\\", 2, this.now).getReferral());
+        assertNull(this.cache.lookup("\\server\\share\\ab", 2, this.now));
+        assertNull(this.cache.lookup("\\other\\share\\a", 2, this.now));
+    }
+
+    @Test
+    @DisplayName("Path components are matched case insensitively")
+    void caseInsensitive() {
+        final DfsReferralDataInternal dr = mock(DfsReferralDataInternal.class);
+        this.cache.put("\\Server\\Share\\Link", dr, this.now + 60000);
+
+        final DfsReferralCache.Entry e = this.cache.lookup("\\SERVER\\share\\LINK\\x", 2, this.now);
+        assertSame(dr, e.getReferral());
+        assertEquals("\\Server\\Share\\Link", e.getPath());
+        assertSame(dr, this.cache.get("\\server\\share\\link\\").getReferral());
+    }
+
+    @Test
+    @DisplayName("Expired entries are skipped individually and a shorter valid prefix is used")
+    void perEntryExpiration() {
+        final DfsReferralDataInternal shallow = mock(DfsReferralDataInternal.class);
+        final DfsReferralDataInternal deep = mock(DfsReferralDataInternal.class);
+        this.cache.put("\\server\\share", shallow, this.now + 60000);
+        this.cache.put("\\server\\share\\link", deep, this.now - 1);
+
+        assertSame(shallow, this.cache.lookup("\\server\\share\\link\\x", 2, this.now).getReferral());
+        assertNull(this.cache.get("\\server\\share\\link"));
+        assertEquals(1, this.cache.entries().size());
+    }
+
+    @Test
+    @DisplayName("Entries below the minimum depth do not match")
+    void minDepth() {
+        final DfsReferralDataInternal root = mock(DfsReferralDataInternal.class);
+        this.cache.put("\\", root, this.now + 60000);
+
+        assertSame(root, this.cache.get("\\").getReferral());
+        assertNull(this.cache.lookup("\\link", 1, this.now));
+        assertSame(root, this.cache.lookup("\\link", 0, this.now).getReferral());
+    }
+
+    @Test
+    @DisplayName("Refresh is claimed once, and only near the end of the lifetime")
+    void refreshClaim() {
+        final DfsReferralCache.Entry e = this.cache.put("\\server\\share", mock(DfsReferralDataInternal.class), this.now + 100000);
+
+        assertFalse(e.startRefresh(this.now));
+        assertTrue(e.startRefresh(this.now + 90000));
+        assertFalse(e.startRefresh(this.now + 90000));
+        e.refreshDone();
+        assertTrue(e.startRefresh(this.now + 90000));
+        assertFalse(e.startRefresh(this.now + 100001));
+    }
+
+    @Test
+    @DisplayName("Map view replaces the referral but keeps the expiration")
+    void mapView() {
+        final DfsReferralDataInternal first = mock(DfsReferralDataInternal.class);
+        final DfsReferralDataInternal second = mock(DfsReferralDataInternal.class);
+        final DfsReferralCache.Entry e = this.cache.put("\\", first, this.now + 60000);
+        final Map<String, DfsReferralDataInternal> view = this.cache.asMap();
+
+        assertSame(first, view.put("\\", second));
+        assertSame(second, view.get("\\"));
+        assertEquals(e.getExpiration(), this.cache.get("\\").getExpiration());
+        assertNull(view.put("\\missing", second));
+        assertNull(this.cache.get("\\missing"));
+    }
+}
@@ -34,15 +34,14 @@ public class RequestParamTest {
         RequestParam[] values = RequestParam.values();
 
         assertNotNull(values, "values() must not return null");
-        assertEquals(4, values.length, "There must be exactly 4 constants");
-        assertArrayEquals(
-                new RequestParam[] { RequestParam.NONE, RequestParam.NO_TIMEOUT, RequestParam.NO_RETRY, RequestParam.RETAIN_PAYLOAD },
-                values, "values() order should match declaration order");
+        assertEquals(5, values.length, "There must be exactly 5 constants");
+        assertArrayEquals(new RequestParam[] { RequestParam.NONE, RequestParam.NO_TIMEOUT, RequestParam.NO_RETRY,
+                RequestParam.RETAIN_PAYLOAD, RequestParam.NO_CREDIT_WAIT }, values, "values() order should match declaration order");
     }
 
     // Happy path: valueOf resolves each constant name; toString equals name; ordinal is stable
     @ParameterizedTest
-    @ValueSource(strings = { "NONE", "NO_TIMEOUT", "NO_RETRY", "RETAIN_PAYLOAD" })
+    @ValueSource(strings = { "NONE", "NO_TIMEOUT", "NO_RETRY", "RETAIN_PAYLOAD", "NO_CREDIT_WAIT" })
     @DisplayName("valueOf(name) returns the correct enum and toString matches name")
     void valueOfResolvesNamesAndToString(String name) {
         RequestParam rp = RequestParam.valueOf(name);
@@ -63,6 +62,9 @@ public class RequestParamTest {
         case "RETAIN_PAYLOAD":
             assertEquals(3, rp.ordinal());
             break;
+        case "NO_CREDIT_WAIT":
+            assertEquals(4, rp.ordinal());
+            break;
         default:
             fail("Unexpected name under test: " + name);
         }
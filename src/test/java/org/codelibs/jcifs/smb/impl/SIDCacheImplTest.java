@@ -2,11 +2,13 @@ package org.codelibs.jcifs.smb.impl;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.ArgumentMatchers.same;
 import static org.mockito.Mockito.doAnswer;
@@ -14,8 +16,22 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.codelibs.jcifs.smb.CIFSContext;
+import org.codelibs.jcifs.smb.CIFSException;
+import org.codelibs.jcifs.smb.Configuration;
 import org.codelibs.jcifs.smb.dcerpc.DcerpcHandle;
 import org.codelibs.jcifs.smb.dcerpc.UnicodeString;
 import org.codelibs.jcifs.smb.dcerpc.msrpc.LsaPolicyHandle;
@@ -257,6 +273,211 @@ class SIDCacheImplTest {
         assertThrows(ArrayIndexOutOfBoundsException.class, () -> cache.resolveSids(ctx, "server", sids, 1, 2));
     }
 
+    private static void fakeResolve(SID[] toResolve) {
+        for (SID s : toResolve) {
+            s.type = org.codelibs.jcifs.smb.SID.SID_TYPE_USER;
+            s.domainName = "DOM";
+            s.acctName = "user" + s.getRid();
+        }
+    }
+
+    @Test
+    @DisplayName("Concurrent resolveSids calls for the same server are merged into one lookup")
+    void resolveSids_concurrentCallsAreBatched() throws Exception {
+        CIFSContext ctx = mock(CIFSContext.class);
+        SIDCacheImpl cache = Mockito.spy(new SIDCacheImpl(ctx));
+
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        List<Integer> batchSizes = new ArrayList<>();
+        doAnswer(inv -> {
+            SID[] toResolve = inv.getArgument(2);
+            synchronized (batchSizes) {
+                batchSizes.add(toResolve.length);
+            }
+            if (firstStarted.getCount() > 0) {
+                firstStarted.countDown();
+                assertTrue(releaseFirst.await(10, TimeUnit.SECONDS));
+            }
+            fakeResolve(toResolve);
+            return null;
+        }).when(cache).resolveSids0(any(), any(), any());
+
+        ExecutorService exec = Executors.newFixedThreadPool(5);
+        try {
+            Future<?> first = exec.submit(() -> {
+                cache.resolveSids(ctx, "server", new org.codelibs.jcifs.smb.SID[] { sid("S-1-5-21-1-2-3-500") });
+                return null;
+            });
+            assertTrue(firstStarted.await(10, TimeUnit.SECONDS));
+
+            // while the first lookup is in flight, four callers request overlapping SIDs
+            List<Future<SID>> others = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                final int rid = 1000 + i % 2;
+                others.add(exec.submit(() -> {
+                    SID s = sid("S-1-5-21-1-2-3-" + rid);
+                    cache.resolveSids(ctx, "server", new org.codelibs.jcifs.smb.SID[] { s });
+                    return s;
+                }));
+            }
+            // give the callers time to queue up behind the first lookup
+            Thread.sleep(200);
+            releaseFirst.countDown();
+
+            first.get(10, TimeUnit.SECONDS);
+            for (Future<SID> f : others) {
+                SID s = f.get(10, TimeUnit.SECONDS);
+                assertEquals("user" + s.getRid(), s.getAccountName());
+            }
+        } finally {
+            exec.shutdownNow();
+        }
+
+        assertEquals(2, batchSizes.size(), "Queued callers should share one lookup: " + batchSizes);
+        assertEquals(2, batchSizes.get(1), "Duplicate SIDs should be requested once");
+        assertEquals(3, cache.getCacheSize());
+    }
+
+    @Test
+    @DisplayName("A failed lookup is reported to the caller and nothing is cached")
+    void resolveSids_failurePropagates() throws Exception {
+        CIFSContext ctx = mock(CIFSContext.class);
+        SIDCacheImpl cache = Mockito.spy(new SIDCacheImpl(ctx));
+        CIFSException err = new CIFSException("fail");
+        Mockito.doThrow(err).when(cache).resolveSids0(any(), any(), any());
+
+        CIFSException e = assertThrows(CIFSException.class,
+                () -> cache.resolveSids(ctx, "server", new org.codelibs.jcifs.smb.SID[] { sid("S-1-5-21-1-2-3-500") }));
+        assertSame(err, e);
+        assertEquals(0, cache.getCacheSize());
+    }
+
+    @Test
+    @DisplayName("Cache size is bounded by the configured maximum")
+    void resolveSids_cacheIsBounded() throws Exception {
+        CIFSContext ctx = mock(CIFSContext.class);
+        Configuration config = mock(Configuration.class);
+        when(ctx.getConfig()).thenReturn(config);
+        when(config.getSidCacheMaxSize()).thenReturn(10);
+        when(config.getSidCacheTtl()).thenReturn(3600);
+        SIDCacheImpl cache = Mockito.spy(new SIDCacheImpl(ctx));
+        doAnswer(inv -> {
+            fakeResolve(inv.getArgument(2));
+            return null;
+        }).when(cache).resolveSids0(any(), any(), any());
+
+        for (int i = 0; i < 50; i++) {
+            cache.resolveSids(ctx, "server", new org.codelibs.jcifs.smb.SID[] { sid("S-1-5-21-1-2-3-" + (2000 + i)) });
+            assertTrue(cache.getCacheSize() <= 10, "size " + cache.getCacheSize());
+        }
+    }
+
+    @Test
+    @DisplayName("Expired entries are resolved again")
+    void resolveSids_expiredEntriesAreResolvedAgain() throws Exception {
+        CIFSContext ctx = mock(CIFSContext.class);
+        Configuration config = mock(Configuration.class);
+        when(ctx.getConfig()).thenReturn(config);
+        when(config.getSidCacheMaxSize()).thenReturn(10);
+        when(config.getSidCacheTtl()).thenReturn(1);
+        SIDCacheImpl cache = Mockito.spy(new SIDCacheImpl(ctx));
+        doAnswer(inv -> {
+            fakeResolve(inv.getArgument(2));
+            return null;
+        }).when(cache).resolveSids0(any(), any(), any());
+
+        cache.resolveSids(ctx, "server", new org.codelibs.jcifs.smb.SID[] { sid("S-1-5-21-1-2-3-500") });
+        cache.resolveSids(ctx, "server", new org.codelibs.jcifs.smb.SID[] { sid("S-1-5-21-1-2-3-500") });
+        verify(cache, times(1)).resolveSids0(any(), any(), any());
+
+        Thread.sleep(1100);
+        cache.resolveSids(ctx, "server", new org.codelibs.jcifs.smb.SID[] { sid("S-1-5-21-1-2-3-500") });
+        verify(cache, times(2)).resolveSids0(any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Callers sharing a batch are released when the lookup throws an Error")
+    void resolveSids_errorReleasesFollowers() throws Exception {
+        CIFSContext ctx = mock(CIFSContext.class);
+        SIDCacheImpl cache = Mockito.spy(new SIDCacheImpl(ctx));
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        Error err = new Error("boom");
+        doAnswer(inv -> {
+            if (firstStarted.getCount() > 0) {
+                firstStarted.countDown();
+                assertTrue(releaseFirst.await(10, TimeUnit.SECONDS));
+                fakeResolve(inv.getArgument(2));
+                return null;
+            }
+            throw err;
+        }).when(cache).resolveSids0(any(), any(), any());
+
+        Thread first = new Thread(() -> resolveQuietly(cache, ctx, 500, null));
+        first.start();
+        assertTrue(firstStarted.await(10, TimeUnit.SECONDS));
+
+        // the next batch gets a leader waiting for the first lookup and a follower waiting for the leader
+        List<Throwable> leaderFailure = new ArrayList<>();
+        List<Throwable> followerFailure = new ArrayList<>();
+        Thread leader = new Thread(() -> resolveQuietly(cache, ctx, 1000, leaderFailure));
+        leader.start();
+        awaitWaiting(leader);
+        Thread follower = new Thread(() -> resolveQuietly(cache, ctx, 1001, followerFailure));
+        follower.start();
+        awaitWaiting(follower);
+        releaseFirst.countDown();
+
+        for (Thread t : Arrays.asList(first, leader, follower)) {
+            t.join(10_000);
+            assertFalse(t.isAlive());
+        }
+        assertSame(err, leaderFailure.get(0));
+        assertTrue(followerFailure.get(0) instanceof CIFSException);
+    }
+
+    private static void resolveQuietly(SIDCacheImpl cache, CIFSContext ctx, int rid, List<Throwable> failure) {
+        try {
+            cache.resolveSids(ctx, "server", new org.codelibs.jcifs.smb.SID[] { sid("S-1-5-21-1-2-3-" + rid) });
+        } catch (Throwable e) {
+            if (failure != null) {
+                failure.add(e);
+            }
+        }
+    }
+
+    private static void awaitWaiting(Thread t) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (t.getState() != Thread.State.WAITING && t.getState() != Thread.State.TIMED_WAITING) {
+            assertTrue(System.currentTimeMillis() < deadline, "thread did not block");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    @DisplayName("Per context lookup state is dropped once no batch is queued")
+    void resolveSids_lookupsDrain() throws Exception {
+        SIDCacheImpl cache = Mockito.spy(new SIDCacheImpl(mock(CIFSContext.class)));
+        doAnswer(inv -> {
+            fakeResolve(inv.getArgument(2));
+            return null;
+        }).when(cache).resolveSids0(any(), any(), any());
+        CIFSException err = new CIFSException("fail");
+        Mockito.doThrow(err).when(cache).resolveSids0(any(), any(), argThat(sids -> sids[0].getRid() == 666));
+
+        for (int i = 0; i < 20; i++) {
+            CIFSContext ctx = mock(CIFSContext.class);
+            cache.resolveSids(ctx, "server", new org.codelibs.jcifs.smb.SID[] { sid("S-1-5-21-1-2-3-" + (3000 + i)) });
+        }
+        assertThrows(CIFSException.class,
+                () -> cache.resolveSids(mock(CIFSContext.class), "server", new org.codelibs.jcifs.smb.SID[] { sid("S-1-5-21-1-2-3-666") }));
+
+        Field f = SIDCacheImpl.class.getDeclaredField("lookups");
+        f.setAccessible(true);
+        assertTrue(((Map<?, ?>) f.get(cache)).isEmpty());
+    }
+
     @Nested
     class EdgeCasesForResolveSids {
         @Test
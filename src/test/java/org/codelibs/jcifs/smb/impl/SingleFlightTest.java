@@ -0,0 +1,109 @@
+package org.codelibs.jcifs.smb.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class SingleFlightTest {
+
+    private static final int THREADS = 8;
+
+    private final SingleFlight<String, String> flight = new SingleFlight<>();
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    @AfterEach
+    void tearDown() {
+        this.executor.shutdownNow();
+    }
+
+    private void awaitCoalesced(final long expected) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (this.flight.getCoalescedCount() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(expected, this.flight.getCoalescedCount());
+    }
+
+    @Test
+    @DisplayName("Concurrent callers for the same key share one execution and its result")
+    void coalesces() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger executions = new AtomicInteger();
+        final List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(this.executor.submit(() -> this.flight.execute("key", () -> {
+                executions.incrementAndGet();
+                assertTrue(release.await(10, TimeUnit.SECONDS));
+                return new String("result");
+            })));
+        }
+
+        awaitCoalesced(THREADS - 1);
+        release.countDown();
+
+        final String first = results.get(0).get(10, TimeUnit.SECONDS);
+        for (final Future<String> f : results) {
+            assertSame(first, f.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, executions.get());
+        assertEquals(0, this.flight.getInFlightCount());
+    }
+
+    @Test
+    @DisplayName("Waiting callers receive the exception of the shared execution")
+    void sharesFailure() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final IOException failure = new IOException("failed");
+        final List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            results.add(this.executor.submit(() -> this.flight.execute("key", () -> {
+                assertTrue(release.await(10, TimeUnit.SECONDS));
+                throw failure;
+            })));
+        }
+
+        awaitCoalesced(1);
+        release.countDown();
+
+        for (final Future<String> f : results) {
+            final Exception e = assertThrows(Exception.class, () -> f.get(10, TimeUnit.SECONDS));
+            assertSame(failure, e.getCause());
+        }
+        assertEquals(0, this.flight.getInFlightCount());
+    }
+
+    @Test
+    @DisplayName("Different keys and sequential calls run separately")
+    void separateExecutions() throws Exception {
+        final AtomicInteger executions = new AtomicInteger();
+        assertEquals("a", this.flight.execute("a", () -> {
+            executions.incrementAndGet();
+            return "a";
+        }));
+        assertEquals("a", this.flight.execute("a", () -> {
+            executions.incrementAndGet();
+            return "a";
+        }));
+        assertEquals("b", this.flight.execute("b", () -> {
+            executions.incrementAndGet();
+            return "b";
+        }));
+        assertEquals(3, executions.get());
+        assertEquals(0, this.flight.getCoalescedCount());
+    }
+}
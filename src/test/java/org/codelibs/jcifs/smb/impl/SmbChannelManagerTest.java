@@ -0,0 +1,226 @@
+package org.codelibs.jcifs.smb.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.codelibs.jcifs.smb.CIFSContext;
+import org.codelibs.jcifs.smb.Configuration;
+import org.codelibs.jcifs.smb.config.PropertyConfiguration;
+import org.codelibs.jcifs.smb.context.BaseContext;
+import org.codelibs.jcifs.smb.internal.CommonServerMessageBlockResponse;
+import org.codelibs.jcifs.smb.internal.smb2.io.Smb2ReadRequest;
+import org.codelibs.jcifs.smb.internal.smb2.io.Smb2WriteRequest;
+import org.codelibs.jcifs.smb.internal.smb2.ioctl.NetworkInterfaceInfo;
+import org.codelibs.jcifs.smb.internal.smb2.ioctl.NetworkInterfaceInfoResponse;
+import org.codelibs.jcifs.smb.internal.smb2.ioctl.Smb2IoctlRequest;
+import org.codelibs.jcifs.smb.internal.smb2.ioctl.Smb2IoctlResponse;
+import org.codelibs.jcifs.smb.internal.smb2.info.Smb2QueryInfoRequest;
+import org.codelibs.jcifs.smb.internal.util.SMBUtil;
+import org.codelibs.jcifs.smb.netbios.UniAddress;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class SmbChannelManagerTest {
+
+    private SmbSessionImpl session;
+    private SmbTransportImpl primary;
+    private SmbChannelManager manager;
+    private final Configuration config = mock(Configuration.class);
+
+    @BeforeEach
+    void setUp() {
+        this.session = mock(SmbSessionImpl.class);
+        this.primary = mock(SmbTransportImpl.class);
+        when(this.session.getTransport()).thenReturn(this.primary);
+        this.manager = new SmbChannelManager(this.session, 4);
+    }
+
+    private static NetworkInterfaceInfo iface(final int index, final String addr, final boolean rss, final long speed) throws Exception {
+        final byte[] buf = new byte[NetworkInterfaceInfo.SIZE];
+        SMBUtil.writeInt4(index, buf, 4);
+        SMBUtil.writeInt4(rss ? NetworkInterfaceInfo.NETWORK_INTERFACE_CAP_RSS : 0, buf, 8);
+        SMBUtil.writeInt8(speed, buf, 16);
+        final byte[] a = InetAddress.getByName(addr).getAddress();
+        if (a.length == 4) {
+            SMBUtil.writeInt2(0x2, buf, 24);
+            System.arraycopy(a, 0, buf, 28, 4);
+        } else {
+            SMBUtil.writeInt2(0x17, buf, 24);
+            System.arraycopy(a, 0, buf, 32, 16);
+        }
+        final NetworkInterfaceInfo info = new NetworkInterfaceInfo();
+        info.decode(buf, 0, buf.length);
+        return info;
+    }
+
+    private SmbChannel channel(final int load) {
+        final SmbTransportImpl t = mock(SmbTransportImpl.class);
+        when(t.getInflightRequests()).thenReturn(load);
+        return new SmbChannel(t, null);
+    }
+
+    private void addChannel(final SmbChannel ch) throws Exception {
+        final Method m = SmbChannelManager.class.getDeclaredMethod("add", SmbChannel.class);
+        m.setAccessible(true);
+        m.invoke(this.manager, ch);
+    }
+
+    @Test
+    @DisplayName("Other interfaces get one connection each, the fastest first")
+    void selectsOtherInterfaces() throws Exception {
+        final NetworkInterfaceInfo primaryIf = iface(1, "10.0.0.1", false, 1_000_000_000L);
+        final NetworkInterfaceInfo slow = iface(2, "10.0.1.1", false, 1_000_000_000L);
+        final NetworkInterfaceInfo fast = iface(3, "10.0.2.1", false, 10_000_000_000L);
+        final List<NetworkInterfaceInfo> targets =
+                SmbChannelManager.selectTargets(Arrays.asList(primaryIf, slow, fast), InetAddress.getByName("10.0.0.1"), 3);
+        assertEquals(Arrays.asList(fast, slow), targets);
+    }
+
+    @Test
+    @DisplayName("RSS capable interfaces take several connections, including the primary one")
+    void rssInterfacesTakeMultiple() throws Exception {
+        final NetworkInterfaceInfo primaryIf = iface(1, "10.0.0.1", true, 10_000_000_000L);
+        final List<NetworkInterfaceInfo> targets =
+                SmbChannelManager.selectTargets(Arrays.asList(primaryIf), InetAddress.getByName("10.0.0.1"), 3);
+        assertEquals(Arrays.asList(primaryIf, primaryIf, primaryIf), targets);
+    }
+
+    @Test
+    @DisplayName("Alternate addresses of one interface and unusable addresses are skipped")
+    void skipsDuplicatesAndUnusable() throws Exception {
+        final NetworkInterfaceInfo v4 = iface(2, "10.0.1.1", false, 1_000_000_000L);
+        final NetworkInterfaceInfo v6 = iface(2, "2001:db8::1", false, 1_000_000_000L);
+        final NetworkInterfaceInfo loop = iface(3, "127.0.0.1", false, 1_000_000_000L);
+        final NetworkInterfaceInfo linkLocal = iface(4, "fe80::1", false, 1_000_000_000L);
+        final List<NetworkInterfaceInfo> targets =
+                SmbChannelManager.selectTargets(Arrays.asList(v6, v4, loop, linkLocal), InetAddress.getByName("10.0.0.1"), 3);
+        assertEquals(Arrays.asList(v4), targets);
+    }
+
+    @Test
+    @DisplayName("Loopback interfaces are used when the primary connection is made to one")
+    void loopbackPrimaryAllowsLoopback() throws Exception {
+        final NetworkInterfaceInfo primaryIf = iface(1, "127.0.0.1", false, 1_000_000_000L);
+        final NetworkInterfaceInfo other = iface(2, "127.0.0.2", false, 1_000_000_000L);
+        final List<NetworkInterfaceInfo> targets =
+                SmbChannelManager.selectTargets(Arrays.asList(primaryIf, other), InetAddress.getByName("127.0.0.1"), 3);
+        assertEquals(Arrays.asList(other), targets);
+    }
+
+    @Test
+    @DisplayName("Additional channels are opened to a stand-in server on another loopback address")
+    void establishConnectsToLoopbackStandIn() throws Exception {
+        try (ServerSocket primarySrv = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+                ServerSocket channelSrv = new ServerSocket(primarySrv.getLocalPort(), 50, InetAddress.getByName("127.0.0.2"))) {
+            final CompletableFuture<InetAddress> accepted = CompletableFuture.supplyAsync(() -> {
+                try (Socket s = channelSrv.accept()) {
+                    // no SMB spoken here, the negotiation fails and the channel is not bound
+                    return s.getLocalAddress();
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            final Properties props = new Properties();
+            props.setProperty("jcifs.smb.client.responseTimeout", "2000");
+            props.setProperty("jcifs.smb.client.connTimeout", "2000");
+            final CIFSContext ctx = new BaseContext(new PropertyConfiguration(props));
+            try {
+                when(this.primary.getContext()).thenReturn(ctx);
+                when(this.primary.getRemoteAddress()).thenReturn(new UniAddress(InetAddress.getByName("127.0.0.1")));
+                when(this.primary.getRemotePort()).thenReturn(primarySrv.getLocalPort());
+                when(this.session.getConfig()).thenReturn(ctx.getConfig());
+
+                final NetworkInterfaceInfoResponse ifs = mock(NetworkInterfaceInfoResponse.class);
+                when(ifs.getInterfaces()).thenReturn(
+                        Arrays.asList(iface(1, "127.0.0.1", false, 1_000_000_000L), iface(2, "127.0.0.2", false, 1_000_000_000L)));
+                final Smb2IoctlResponse resp = mock(Smb2IoctlResponse.class);
+                when(resp.getOutputData(NetworkInterfaceInfoResponse.class)).thenReturn(ifs);
+                final SmbTreeImpl tree = mock(SmbTreeImpl.class);
+                doReturn(resp).when(tree).send(any(Smb2IoctlRequest.class), any(RequestParam.class));
+
+                this.manager.establish(tree);
+
+                assertEquals(InetAddress.getByName("127.0.0.2"), accepted.get(10, TimeUnit.SECONDS));
+                assertTrue(this.manager.getChannels().isEmpty());
+            } finally {
+                ctx.close();
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Only reads and writes are spread, to the least loaded connection")
+    void selectLeastLoaded() throws Exception {
+        when(this.primary.getInflightRequests()).thenReturn(5);
+        final SmbChannel busy = channel(7);
+        final SmbChannel idle = channel(1);
+        addChannel(busy);
+        addChannel(idle);
+
+        assertSame(idle, this.manager.select(new Smb2ReadRequest(this.config, new byte[16], new byte[0], 0)));
+        assertSame(idle, this.manager.select(new Smb2WriteRequest(this.config, new byte[16])));
+        assertNull(this.manager.select(new Smb2QueryInfoRequest(this.config, new byte[16])));
+
+        when(this.primary.getInflightRequests()).thenReturn(0);
+        assertNull(this.manager.select(new Smb2WriteRequest(this.config, new byte[16])));
+    }
+
+    @Test
+    @DisplayName("Failed channels are removed, closed and no longer selected")
+    void failedChannel() throws Exception {
+        when(this.primary.getInflightRequests()).thenReturn(5);
+        final SmbChannel ch = channel(0);
+        addChannel(ch);
+
+        final CommonServerMessageBlockResponse resp = mock(CommonServerMessageBlockResponse.class);
+        this.manager.track(resp, ch);
+        assertEquals(1, ch.getRequestCount());
+
+        this.manager.fail(ch);
+        assertTrue(ch.isFailed());
+        assertTrue(this.manager.getChannels().isEmpty());
+        verify(ch.getTransport()).release();
+        assertNull(this.manager.select(new Smb2WriteRequest(this.config, new byte[16])));
+        assertSame(ch, this.manager.complete(resp));
+        assertNull(this.manager.complete(resp));
+    }
+
+    @Test
+    @DisplayName("Shutdown closes all channels")
+    void shutdown() throws Exception {
+        final List<SmbChannel> chs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final SmbChannel ch = channel(0);
+            chs.add(ch);
+            addChannel(ch);
+        }
+        this.manager.shutdown();
+        assertTrue(this.manager.getChannels().isEmpty());
+        for (final SmbChannel ch : chs) {
+            verify(ch.getTransport()).disconnect(true, false);
+            verify(ch.getTransport()).release();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package org.codelibs.jcifs.smb.impl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codelibs.jcifs.smb.CIFSContext;
+import org.codelibs.jcifs.smb.Configuration;
+import org.codelibs.jcifs.smb.internal.Request;
+import org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2;
+import org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2Request;
+import org.codelibs.jcifs.smb.internal.smb2.create.Smb2CloseRequest;
+import org.codelibs.jcifs.smb.internal.smb2.create.Smb2CreateRequest;
+import org.codelibs.jcifs.smb.internal.smb2.create.Smb2CreateResponse;
+import org.codelibs.jcifs.smb.internal.smb2.info.Smb2SetInfoRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class SmbCompoundBuilderTest {
+
+    @Mock
+    SmbTreeHandleImpl mockTree;
+
+    @Mock
+    Configuration mockConfig;
+
+    @Mock
+    CIFSContext mockContext;
+
+    private final List<Object> sent = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        when(mockTree.getConfig()).thenReturn(mockConfig);
+        when(mockContext.getConfig()).thenReturn(mockConfig);
+    }
+
+    private static boolean isRelated(final ServerMessageBlock2 req) {
+        return (req.getFlags() & ServerMessageBlock2.SMB2_FLAGS_RELATED_OPERATIONS) != 0;
+    }
+
+    private static void setFileId(final Smb2CreateResponse resp, final byte[] fileId) throws Exception {
+        final Field f = Smb2CreateResponse.class.getDeclaredField("fileId");
+        f.setAccessible(true);
+        f.set(resp, fileId);
+    }
+
+    @Test
+    @DisplayName("Requests are related to the last open, opens start a new chain")
+    void chaining() {
+        final SmbCompoundBuilder compound = new SmbCompoundBuilder(mockTree);
+        final Smb2CreateRequest open1 = compound.open("\\a", Smb2CreateRequest.FILE_OPEN, 0, 0, 0x80, 0);
+        final Smb2SetInfoRequest setInfo = compound.add(new Smb2SetInfoRequest(mockConfig));
+        final Smb2CloseRequest close1 = compound.close("\\a");
+        final Smb2CreateRequest open2 = compound.open("\\b", Smb2CreateRequest.FILE_CREATE, 1, 0, 0x80, 0);
+        final Smb2CloseRequest close2 = compound.close("\\b");
+
+        assertEquals(5, compound.size());
+        assertSame(open1, compound.getHead());
+        final List<ServerMessageBlock2Request<?>> chain = new ArrayList<>();
+        for (ServerMessageBlock2Request<?> cur = compound.getHead(); cur != null; cur = cur.getNext()) {
+            chain.add(cur);
+        }
+        assertEquals(List.of(open1, setInfo, close1, open2, close2), chain);
+
+        assertFalse(isRelated(open1));
+        assertTrue(isRelated(setInfo));
+        assertTrue(isRelated(close1));
+        assertFalse(isRelated(open2));
+        assertTrue(isRelated(close2));
+
+        assertEquals("\\b", open2.getPath());
+    }
+
+    @Test
+    @DisplayName("Invalid compounds are rejected")
+    void invalid() {
+        final SmbCompoundBuilder compound = new SmbCompoundBuilder(mockTree);
+        assertThrows(IllegalStateException.class, () -> compound.close("\\a"));
+        assertThrows(IllegalStateException.class, () -> compound.send());
+        compound.open("\\a", Smb2CreateRequest.FILE_OPEN, 0, 0, 0x80, 0);
+        compound.close("\\a");
+        assertThrows(IllegalStateException.class, () -> compound.close("\\a"));
+    }
+
+    @Test
+    @DisplayName("Successful compounds return the first response")
+    void send() throws Exception {
+        final SmbCompoundBuilder compound = new SmbCompoundBuilder(mockTree);
+        final Smb2CreateRequest open = compound.open("\\a", Smb2CreateRequest.FILE_OPEN, 0, 0, 0x80, 0);
+        compound.close("\\a");
+        final Smb2CreateResponse resp = new Smb2CreateResponse(mockConfig, "a");
+        when(mockTree.send(any(Request.class), any(RequestParam[].class))).thenAnswer(inv -> {
+            this.sent.add(inv.getArgument(0));
+            return resp;
+        });
+
+        assertSame(resp, compound.send());
+        assertEquals(List.of(open), this.sent);
+    }
+
+    @Test
+    @DisplayName("Files opened by a failed compound are closed")
+    void closesOnFailure() throws Exception {
+        final SmbCompoundBuilder compound = new SmbCompoundBuilder(mockTree);
+        final Smb2CreateRequest open1 = compound.open("\\a", Smb2CreateRequest.FILE_OPEN, 0, 0, 0x80, 0);
+        compound.close("\\a");
+        compound.open("\\a\\b", Smb2CreateRequest.FILE_OPEN, 0, 0, 0x80, 0);
+        compound.close("\\a\\b");
+
+        final byte[] fileId = new byte[16];
+        fileId[0] = 42;
+        final SmbException failure = new SmbException(NtStatus.NT_STATUS_ACCESS_DENIED, false);
+        when(mockTree.send(any(Request.class), any(RequestParam[].class))).thenAnswer(inv -> {
+            final Object req = inv.getArgument(0);
+            this.sent.add(req);
+            if (req == open1) {
+                // only the first open got through before failing
+                open1.initResponse(mockContext);
+                setFileId(open1.getResponse(), fileId);
+                open1.getResponse().received();
+                throw failure;
+            }
+            return null;
+        });
+
+        final SmbException e = assertThrows(SmbException.class, () -> compound.send());
+        assertSame(failure, e);
+        assertEquals(2, this.sent.size());
+        final Smb2CloseRequest close = assertInstanceOf(Smb2CloseRequest.class, this.sent.get(1));
+        assertNull(close.getNext());
+        final Field f = Smb2CloseRequest.class.getDeclaredField("fileId");
+        f.setAccessible(true);
+        assertArrayEquals(fileId, (byte[]) f.get(close));
+    }
+
+    @Test
+    @DisplayName("Compounds require SMB2")
+    void requiresSmb2() throws Exception {
+        when(mockTree.isSMB2()).thenReturn(false);
+        when(mockTree.compound()).thenCallRealMethod();
+        assertThrows(SmbUnsupportedOperationException.class, () -> mockTree.compound());
+    }
+}
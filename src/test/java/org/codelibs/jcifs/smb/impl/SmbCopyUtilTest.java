@@ -15,6 +15,7 @@ import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -28,7 +29,9 @@ import org.codelibs.jcifs.smb.internal.smb1.com.SmbComSetInformation;
 import org.codelibs.jcifs.smb.internal.smb1.trans2.Trans2SetFileInformation;
 import org.codelibs.jcifs.smb.internal.smb1.trans2.Trans2SetFileInformationResponse;
 import org.codelibs.jcifs.smb.internal.smb2.info.Smb2SetInfoRequest;
+import org.codelibs.jcifs.smb.internal.smb2.ioctl.Smb2IoctlRequest;
 import org.codelibs.jcifs.smb.internal.smb2.ioctl.Smb2IoctlResponse;
+import org.codelibs.jcifs.smb.internal.smb2.ioctl.SrvCopyChunkCopyResponse;
 import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
@@ -663,4 +666,185 @@ public class SmbCopyUtilTest {
         }
         w.join(2000);
     }
+
+    @Nested
+    @DisplayName("Server side copy requests")
+    class ServerSideCopyChunks {
+
+        private SmbTreeHandleImpl dh;
+        private SmbTransportImpl transport;
+        private Configuration config;
+        private int outstanding;
+        private int maxOutstanding;
+        private int requests;
+
+        @org.junit.jupiter.api.BeforeEach
+        void setUp() throws Exception {
+            dh = mock(SmbTreeHandleImpl.class);
+            config = mock(Configuration.class);
+            transport = mock(SmbTransportImpl.class);
+            final SmbSessionImpl session = mock(SmbSessionImpl.class);
+            lenient().when(dh.getConfig()).thenReturn(config);
+            lenient().when(dh.getSession()).thenReturn(session);
+            lenient().when(session.getTransport()).thenReturn(transport);
+            lenient().doCallRealMethod().when(transport).getCopyChunkLimits();
+            lenient().doCallRealMethod().when(transport).setCopyChunkLimits(any());
+            lenient().doCallRealMethod().when(transport).isCrossShareCopyUnsupported();
+            lenient().doCallRealMethod().when(transport).setCrossShareCopyUnsupported();
+        }
+
+        private Smb2IoctlResponse written(final long n) throws Exception {
+            final Smb2IoctlResponse resp = mock(Smb2IoctlResponse.class);
+            final SrvCopyChunkCopyResponse out = mock(SrvCopyChunkCopyResponse.class);
+            lenient().when(out.getTotalBytesWritten()).thenReturn((int) n);
+            lenient().when(resp.getOutputData(SrvCopyChunkCopyResponse.class)).thenReturn(out);
+            return resp;
+        }
+
+        private long requestSize(final Smb2IoctlRequest req) throws Exception {
+            final java.lang.reflect.Field in = Smb2IoctlRequest.class.getDeclaredField("inputData");
+            in.setAccessible(true);
+            final Object copy = in.get(req);
+            final java.lang.reflect.Field chunks = copy.getClass().getDeclaredField("chunks");
+            chunks.setAccessible(true);
+            long total = 0;
+            for (final Object c : (Object[]) chunks.get(copy)) {
+                final java.lang.reflect.Field len = c.getClass().getDeclaredField("length");
+                len.setAccessible(true);
+                total += ((Number) len.get(c)).longValue();
+            }
+            return total;
+        }
+
+        @Test
+        @DisplayName("Limits announced by the server are used for the retry and cached on the connection")
+        void learnsLimits() throws Exception {
+            final Smb2IoctlResponse rejected = mock(Smb2IoctlResponse.class);
+            final SrvCopyChunkCopyResponse limits = mock(SrvCopyChunkCopyResponse.class);
+            when(limits.getChunksWritten()).thenReturn(16);
+            when(limits.getChunkBytesWritten()).thenReturn(65536);
+            when(limits.getTotalBytesWritten()).thenReturn(1024 * 1024);
+            when(rejected.isReceived()).thenReturn(true);
+            when(rejected.isError()).thenReturn(false);
+            when(rejected.getStatus()).thenReturn(NtStatus.NT_STATUS_INVALID_PARAMETER);
+            when(rejected.getOutputData(SrvCopyChunkCopyResponse.class)).thenReturn(limits);
+
+            when(dh.send(any(Smb2IoctlRequest.class), eq(RequestParam.NO_RETRY))).thenAnswer(inv -> {
+                final Smb2IoctlRequest req = inv.getArgument(0);
+                req.setResponse(rejected);
+                throw new SmbException(NtStatus.NT_STATUS_INVALID_PARAMETER, null);
+            });
+            when(dh.sendAsync(any(Smb2IoctlRequest.class), any(RequestParam[].class))).thenAnswer(inv -> {
+                assertEquals(1024 * 1024, requestSize(inv.getArgument(0)));
+                requests++;
+                return written(1024 * 1024);
+            });
+            when(dh.waitForResponse(any(), any())).thenAnswer(inv -> inv.getArgument(1));
+
+            assertEquals(3L * 1024 * 1024, SmbCopyUtil.copyChunks(dh, new byte[24], mock(SmbFileHandleImpl.class), 0, 0, 3L * 1024 * 1024, false));
+            assertEquals(3, requests);
+            assertEquals(1024 * 1024, transport.getCopyChunkLimits().maxTotal);
+
+            // the next copy starts with the cached limits
+            requests = 0;
+            SmbCopyUtil.copyChunks(dh, new byte[24], mock(SmbFileHandleImpl.class), 0, 0, 2L * 1024 * 1024, false);
+            assertEquals(2, requests);
+            verify(dh, times(1)).send(any(Smb2IoctlRequest.class), eq(RequestParam.NO_RETRY));
+        }
+
+        @Test
+        @DisplayName("Large copies keep several requests in flight")
+        void pipelines() throws Exception {
+            transport.setCopyChunkLimits(SmbCopyUtil.ChunkLimits.DEFAULT);
+            when(config.getCopyChunkParallelism()).thenReturn(4);
+            when(dh.sendAsync(any(Smb2IoctlRequest.class), any(RequestParam[].class))).thenAnswer(inv -> {
+                requests++;
+                outstanding++;
+                maxOutstanding = Math.max(maxOutstanding, outstanding);
+                return written(requestSize(inv.getArgument(0)));
+            });
+            when(dh.waitForResponse(any(), any())).thenAnswer(inv -> {
+                outstanding--;
+                return inv.getArgument(1);
+            });
+
+            final long size = 100L * 1024 * 1024;
+            assertEquals(size, SmbCopyUtil.copyChunks(dh, new byte[24], mock(SmbFileHandleImpl.class), 0, 0, size, true));
+            assertEquals(7, requests);
+            assertEquals(4, maxOutstanding);
+            assertEquals(0, outstanding);
+        }
+
+        @Test
+        @DisplayName("A short copy stops at the end of the source")
+        void shortCopy() throws Exception {
+            transport.setCopyChunkLimits(new SmbCopyUtil.ChunkLimits(16, 1024, 16 * 1024));
+            when(config.getCopyChunkParallelism()).thenReturn(4);
+            when(dh.sendAsync(any(Smb2IoctlRequest.class), any(RequestParam[].class))).thenAnswer(inv -> {
+                final int n = requests++;
+                // source ends 1000 bytes into the second range
+                return written(n == 0 ? 16 * 1024 : n == 1 ? 1000 : 0);
+            });
+            when(dh.waitForResponse(any(), any())).thenAnswer(inv -> inv.getArgument(1));
+
+            assertEquals(16 * 1024 + 1000, SmbCopyUtil.copyChunks(dh, new byte[24], mock(SmbFileHandleImpl.class), 0, 0, 1024 * 1024, true));
+        }
+
+        @Test
+        @DisplayName("Copies between shares of one session are done on the server until one fails")
+        void crossShare() throws Exception {
+            final SmbTreeHandleImpl sh = mock(SmbTreeHandleImpl.class);
+            when(sh.isSMB2()).thenReturn(true);
+            when(dh.isSMB2()).thenReturn(true);
+            when(sh.isSameTree(dh)).thenReturn(false);
+            when(sh.isSameSession(dh)).thenReturn(true);
+
+            assertTrue(SmbCopyUtil.isServerSideCopyPossible(sh, dh));
+            SmbCopyUtil.crossShareCopyFailed(dh);
+            assertFalse(SmbCopyUtil.isServerSideCopyPossible(sh, dh));
+
+            when(sh.isSameSession(dh)).thenReturn(false);
+            assertFalse(SmbCopyUtil.isServerSideCopyPossible(sh, dh));
+        }
+
+        @Test
+        @DisplayName("Only an unsupported status disables copies between shares")
+        void crossShareFailureKinds() throws Exception {
+            final SmbTreeHandleImpl sh = mock(SmbTreeHandleImpl.class);
+            when(sh.isSMB2()).thenReturn(true);
+            when(dh.isSMB2()).thenReturn(true);
+            when(sh.isSameTree(dh)).thenReturn(false);
+            when(sh.isSameSession(dh)).thenReturn(true);
+            final SmbFile src = mock(SmbFile.class);
+            final SmbFile dest = mock(SmbFile.class);
+
+            // a transient failure only affects this copy
+            when(src.getAttributes()).thenThrow(new SmbException(NtStatus.NT_STATUS_SHARING_VIOLATION, false));
+            assertFalse(SmbCopyUtil.tryServerSideCopy(src, dest, sh, dh));
+            assertTrue(SmbCopyUtil.isServerSideCopyPossible(sh, dh));
+
+            reset(src);
+            when(src.getAttributes()).thenThrow(new SmbException(0xC0000024, false));
+            assertFalse(SmbCopyUtil.tryServerSideCopy(src, dest, sh, dh));
+            assertFalse(SmbCopyUtil.isServerSideCopyPossible(sh, dh));
+        }
+
+        @Test
+        @DisplayName("Failures within a share other than unsupported are thrown")
+        void sameTreeFailure() throws Exception {
+            final SmbTreeHandleImpl sh = mock(SmbTreeHandleImpl.class);
+            when(sh.isSMB2()).thenReturn(true);
+            when(dh.isSMB2()).thenReturn(true);
+            when(sh.isSameTree(dh)).thenReturn(true);
+            final SmbFile src = mock(SmbFile.class);
+            final SmbFile dest = mock(SmbFile.class);
+
+            when(src.getAttributes()).thenThrow(new SmbUnsupportedOperationException());
+            assertFalse(SmbCopyUtil.tryServerSideCopy(src, dest, sh, dh));
+
+            reset(src);
+            when(src.getAttributes()).thenThrow(new SmbException(NtStatus.NT_STATUS_ACCESS_DENIED, false));
+            assertThrows(SmbException.class, () -> SmbCopyUtil.tryServerSideCopy(src, dest, sh, dh));
+        }
+    }
 }
@@ -0,0 +1,229 @@
+package org.codelibs.jcifs.smb.impl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.codelibs.jcifs.smb.CIFSException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class SmbFileBlockCacheTest {
+
+    private static final int BLOCK = 16;
+
+    private byte[] file;
+    private final List<long[]> reads = new ArrayList<>();
+    private final List<long[]> writes = new ArrayList<>();
+    private CIFSException failWrite;
+
+    private final SmbFileBlockCache.Backend backend = new SmbFileBlockCache.Backend() {
+
+        @Override
+        public int read(final long pos, final byte[] b, final int off, final int len) {
+            SmbFileBlockCacheTest.this.reads.add(new long[] { pos, len });
+            if (pos >= SmbFileBlockCacheTest.this.file.length) {
+                return -1;
+            }
+            final int n = (int) Math.min(len, SmbFileBlockCacheTest.this.file.length - pos);
+            System.arraycopy(SmbFileBlockCacheTest.this.file, (int) pos, b, off, n);
+            return n;
+        }
+
+        @Override
+        public void write(final long pos, final byte[] b, final int off, final int len) throws CIFSException {
+            if (SmbFileBlockCacheTest.this.failWrite != null) {
+                throw SmbFileBlockCacheTest.this.failWrite;
+            }
+            SmbFileBlockCacheTest.this.writes.add(new long[] { pos, len });
+            final int end = (int) pos + len;
+            if (end > SmbFileBlockCacheTest.this.file.length) {
+                SmbFileBlockCacheTest.this.file = Arrays.copyOf(SmbFileBlockCacheTest.this.file, end);
+            }
+            System.arraycopy(b, off, SmbFileBlockCacheTest.this.file, (int) pos, len);
+        }
+    };
+
+    @BeforeEach
+    void setUp() {
+        this.file = new byte[BLOCK * 32];
+        for (int i = 0; i < this.file.length; i++) {
+            this.file[i] = (byte) i;
+        }
+    }
+
+    private byte[] expected(final int pos, final int len) {
+        return Arrays.copyOfRange(this.file, pos, pos + len);
+    }
+
+    @Test
+    @DisplayName("Small reads within a block are served from the cache")
+    void smallReadsCached() throws Exception {
+        final SmbFileBlockCache cache = new SmbFileBlockCache(this.backend, BLOCK, 8);
+        final byte[] b = new byte[4];
+        for (int pos = 0; pos < BLOCK; pos += 4) {
+            assertEquals(4, cache.read(pos, b, 0, 4));
+            assertArrayEquals(expected(pos, 4), b);
+        }
+        assertEquals(1, this.reads.size());
+        assertEquals(1, cache.getCachedBlocks());
+    }
+
+    @Test
+    @DisplayName("Sequential misses read ahead more blocks, random access resets")
+    void adaptiveReadAhead() throws Exception {
+        final SmbFileBlockCache cache = new SmbFileBlockCache(this.backend, BLOCK, 16);
+        final byte[] b = new byte[BLOCK];
+        for (int pos = 0; pos < BLOCK * 16; pos += BLOCK) {
+            assertEquals(BLOCK, cache.read(pos, b, 0, BLOCK));
+            assertArrayEquals(expected(pos, BLOCK), b);
+        }
+        assertTrue(this.reads.size() < 8, "reads " + this.reads.size());
+        assertEquals(8, cache.getReadAhead());
+
+        assertEquals(BLOCK, cache.read(BLOCK * 30, b, 0, BLOCK));
+        assertEquals(1, cache.getReadAhead());
+        assertEquals(BLOCK, this.reads.get(this.reads.size() - 1)[1]);
+    }
+
+    @Test
+    @DisplayName("Reads stop at the end of the file")
+    void endOfFile() throws Exception {
+        this.file = Arrays.copyOf(this.file, BLOCK + 5);
+        final SmbFileBlockCache cache = new SmbFileBlockCache(this.backend, BLOCK, 8);
+        final byte[] b = new byte[BLOCK * 4];
+        assertEquals(BLOCK, cache.read(0, b, 0, BLOCK));
+        assertEquals(5, cache.read(BLOCK, b, 0, b.length));
+        assertEquals(-1, cache.read(BLOCK + 5, b, 0, b.length));
+        assertEquals(-1, cache.read(BLOCK * 10, b, 0, b.length));
+    }
+
+    @Test
+    @DisplayName("Contiguous small writes are coalesced until flushed")
+    void writesCoalesced() throws Exception {
+        final SmbFileBlockCache cache = new SmbFileBlockCache(this.backend, BLOCK, 8);
+        for (int i = 0; i < 10; i++) {
+            cache.write(i, new byte[] { 'x' }, 0, 1);
+        }
+        assertEquals(0, this.writes.size());
+        assertEquals(10, cache.getPendingBytes());
+        cache.flush();
+        assertEquals(1, this.writes.size());
+        assertArrayEquals(new long[] { 0, 10 }, this.writes.get(0));
+        assertEquals('x', this.file[9]);
+    }
+
+    @Test
+    @DisplayName("Non-contiguous writes and full buffers are written out")
+    void writeFlushTriggers() throws Exception {
+        final SmbFileBlockCache cache = new SmbFileBlockCache(this.backend, BLOCK, 8);
+        cache.write(0, new byte[4], 0, 4);
+        cache.write(100, new byte[4], 0, 4);
+        assertEquals(1, this.writes.size());
+        cache.write(104, new byte[BLOCK], 0, BLOCK);
+        assertEquals(2, this.writes.size());
+        assertArrayEquals(new long[] { 100, BLOCK }, this.writes.get(1));
+        assertEquals(4, cache.getPendingBytes());
+
+        this.writes.clear();
+        cache.flush();
+        cache.write(200, new byte[BLOCK * 3], 0, BLOCK * 3);
+        assertArrayEquals(new long[] { 200, BLOCK * 3 }, this.writes.get(1));
+    }
+
+    @Test
+    @DisplayName("Reads see buffered writes")
+    void readAfterWrite() throws Exception {
+        final SmbFileBlockCache cache = new SmbFileBlockCache(this.backend, BLOCK, 8);
+        final byte[] b = new byte[4];
+        cache.read(0, b, 0, 4);
+        cache.write(2, new byte[] { 'a', 'b' }, 0, 2);
+        assertEquals(4, cache.read(0, b, 0, 4));
+        assertArrayEquals(new byte[] { 0, 1, 'a', 'b' }, b);
+
+        // a miss writes out the buffer before loading
+        cache.write(BLOCK * 20, new byte[] { 'c' }, 0, 1);
+        assertEquals(4, cache.read(BLOCK * 20, b, 0, 4));
+        assertEquals('c', b[0]);
+        assertEquals(2, this.writes.size());
+    }
+
+    @Test
+    @DisplayName("Writing past the end of the file extends cached blocks")
+    void writeExtendsFile() throws Exception {
+        this.file = new byte[5];
+        final SmbFileBlockCache cache = new SmbFileBlockCache(this.backend, BLOCK, 8);
+        final byte[] b = new byte[BLOCK * 2];
+        assertEquals(5, cache.read(0, b, 0, b.length));
+
+        cache.write(BLOCK + 2, new byte[] { 'z' }, 0, 1);
+        assertEquals(BLOCK + 3, cache.read(0, b, 0, b.length));
+        assertEquals(0, b[10]);
+        assertEquals('z', b[BLOCK + 2]);
+    }
+
+    @Test
+    @DisplayName("A failed buffered write is reported by the next operation")
+    void deferredFailure() throws Exception {
+        final SmbFileBlockCache cache = new SmbFileBlockCache(this.backend, BLOCK, 8);
+        cache.write(0, new byte[4], 0, 4);
+        final SmbException err = new SmbException(NtStatus.NT_STATUS_ACCESS_DENIED, true);
+        this.failWrite = err;
+        cache.flushDeferred();
+        this.failWrite = null;
+
+        final SmbException e = assertThrows(SmbException.class, () -> cache.read(0, new byte[4], 0, 4));
+        assertSame(err, e.getCause());
+        assertThrows(SmbException.class, () -> cache.write(0, new byte[4], 0, 4));
+    }
+
+    @Test
+    @DisplayName("Invalidation drops cached blocks")
+    void invalidate() throws Exception {
+        final SmbFileBlockCache cache = new SmbFileBlockCache(this.backend, BLOCK, 8);
+        final byte[] b = new byte[4];
+        cache.read(0, b, 0, 4);
+        cache.write(0, new byte[] { 'q' }, 0, 1);
+        cache.invalidate();
+        assertEquals(0, cache.getCachedBlocks());
+        assertEquals(1, this.writes.size());
+        cache.read(0, b, 0, 4);
+        assertEquals('q', b[0]);
+        assertEquals(2, this.reads.size());
+    }
+
+    @Test
+    @DisplayName("Range invalidation drops overlapping and short blocks, buffered data is written first")
+    void invalidateRange() throws Exception {
+        this.file = Arrays.copyOf(this.file, BLOCK * 10 + 4);
+        final SmbFileBlockCache cache = new SmbFileBlockCache(this.backend, BLOCK, 8);
+        final byte[] b = new byte[4];
+        cache.read(0, b, 0, 4);
+        cache.read(BLOCK * 5, b, 0, 4);
+        cache.read(BLOCK * 7, b, 0, 4);
+        cache.read(BLOCK * 10, b, 0, 4);
+        assertEquals(4, cache.getCachedBlocks());
+        cache.write(2, new byte[] { 'q' }, 0, 1);
+
+        cache.invalidate(BLOCK * 5 + 2, BLOCK);
+        assertEquals(1, this.writes.size());
+        assertEquals(3, cache.getCachedBlocks());
+        this.reads.clear();
+        cache.read(BLOCK * 7, b, 0, 4);
+        cache.read(0, b, 0, 4);
+        assertEquals('q', b[2]);
+        assertEquals(0, this.reads.size());
+
+        cache.invalidate(BLOCK * 12, 4);
+        assertEquals(2, cache.getCachedBlocks());
+        cache.read(BLOCK * 10, b, 0, 4);
+        assertEquals(BLOCK * 10, this.reads.get(0)[0]);
+    }
+}
@@ -0,0 +1,136 @@
+package org.codelibs.jcifs.smb.impl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.NonReadableChannelException;
+import java.nio.channels.NonWritableChannelException;
+
+import org.codelibs.jcifs.smb.internal.Request;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class SmbFileChannelTest {
+
+    private static final int FILE_SIZE = 100;
+
+    @Mock
+    SmbFileHandleImpl mockHandle;
+
+    @Mock
+    SmbFileHandleImpl mockHandle2;
+
+    @Mock
+    SmbTreeHandleImpl mockTree;
+
+    @Mock
+    SmbTreeHandleImpl mockTree2;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(mockHandle.getTree()).thenReturn(mockTree);
+        when(mockHandle2.getTree()).thenReturn(mockTree2);
+        when(mockHandle.read(any(ByteBuffer.class), anyLong())).thenAnswer(inv -> {
+            final ByteBuffer dst = inv.getArgument(0);
+            final long pos = inv.getArgument(1);
+            if (pos >= FILE_SIZE) {
+                return -1;
+            }
+            int n = 0;
+            while (dst.hasRemaining() && pos + n < FILE_SIZE) {
+                dst.put((byte) (pos + n));
+                n++;
+            }
+            return n;
+        });
+        when(mockHandle.write(any(ByteBuffer.class), anyLong())).thenAnswer(inv -> {
+            final ByteBuffer src = inv.getArgument(0);
+            final int n = src.remaining();
+            src.position(src.limit());
+            return n;
+        });
+    }
+
+    @Test
+    @DisplayName("Relative reads advance the channel position, positional reads do not")
+    void readPosition() throws Exception {
+        try (SmbFileChannel ch = new SmbFileChannel(mockHandle, true, false, false)) {
+            final ByteBuffer buf = ByteBuffer.allocate(10);
+            assertEquals(10, ch.read(buf));
+            assertEquals(10, ch.position());
+            buf.clear();
+            assertEquals(10, ch.read(buf, 50));
+            assertEquals(50, buf.get(0));
+            assertEquals(10, ch.position());
+
+            ch.position(95);
+            buf.clear();
+            assertEquals(5, ch.read(buf));
+            assertEquals(-1, ch.read(buf));
+            assertEquals(100, ch.position());
+        }
+        verify(mockHandle).close();
+    }
+
+    @Test
+    @DisplayName("Access mode is enforced")
+    void accessMode() throws Exception {
+        try (SmbFileChannel ro = new SmbFileChannel(mockHandle, true, false, false)) {
+            assertThrows(NonWritableChannelException.class, () -> ro.write(ByteBuffer.allocate(1)));
+        }
+        try (SmbFileChannel wo = new SmbFileChannel(mockHandle, false, true, false)) {
+            assertThrows(NonReadableChannelException.class, () -> wo.read(ByteBuffer.allocate(1)));
+            assertEquals(4, wo.write(ByteBuffer.allocate(4)));
+            assertEquals(4, wo.position());
+        }
+    }
+
+    @Test
+    @DisplayName("transferTo a non SMB channel copies through a buffer")
+    void transferToStream() throws Exception {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (SmbFileChannel ch = new SmbFileChannel(mockHandle, true, false, false)) {
+            assertEquals(10, ch.transferTo(90, 50, Channels.newChannel(bos)));
+        }
+        final byte[] expected = new byte[10];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = (byte) (90 + i);
+        }
+        assertArrayEquals(expected, bos.toByteArray());
+    }
+
+    @Test
+    @DisplayName("transferTo between channels on different shares does not use server side copy")
+    void transferToOtherTree() throws Exception {
+        when(mockTree.isSameTree(mockTree2)).thenReturn(false);
+        when(mockHandle2.write(any(ByteBuffer.class), anyLong())).thenAnswer(inv -> {
+            final ByteBuffer src = inv.getArgument(0);
+            final int n = src.remaining();
+            src.position(src.limit());
+            return n;
+        });
+        try (SmbFileChannel src = new SmbFileChannel(mockHandle, true, false, false);
+                SmbFileChannel dst = new SmbFileChannel(mockHandle2, false, true, false)) {
+            assertEquals(10, src.transferTo(0, 10, dst));
+            assertEquals(10, dst.position());
+        }
+        verify(mockTree2, never()).send(any(Request.class), any(RequestParam[].class));
+    }
+}
@@ -17,6 +17,11 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Stream;
 
 import org.codelibs.jcifs.smb.CIFSException;
@@ -24,7 +29,12 @@ import org.codelibs.jcifs.smb.Configuration;
 import org.codelibs.jcifs.smb.internal.CommonServerMessageBlockRequest;
 import org.codelibs.jcifs.smb.internal.smb1.com.SmbComBlankResponse;
 import org.codelibs.jcifs.smb.internal.smb1.com.SmbComClose;
+import org.codelibs.jcifs.smb.internal.Request;
 import org.codelibs.jcifs.smb.internal.smb2.create.Smb2CloseRequest;
+import org.codelibs.jcifs.smb.internal.smb2.io.Smb2ReadRequest;
+import org.codelibs.jcifs.smb.internal.smb2.io.Smb2ReadResponse;
+import org.codelibs.jcifs.smb.internal.smb2.io.Smb2WriteRequest;
+import org.codelibs.jcifs.smb.internal.smb2.io.Smb2WriteResponse;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -293,4 +303,159 @@ class SmbFileHandleImplTest {
         SmbFileHandleImpl h = new SmbFileHandleImpl(cfg, 1, tree, "//size", 0, 0, 0, 0, 987654321L);
         assertEquals(987654321L, h.getInitialSize());
     }
+
+    @Test
+    @DisplayName("readAsync advances the buffer by the bytes read")
+    void readAsync_advancesBuffer() throws Exception {
+        stubValidTree(1L, true, true);
+        when(tree.getReceiveBufferSize()).thenReturn(64);
+        final Smb2ReadResponse resp = mock(Smb2ReadResponse.class);
+        when(resp.getDataLength()).thenReturn(10);
+        when(tree.sendFuture(isA(Smb2ReadRequest.class))).thenReturn(CompletableFuture.completedFuture(resp));
+
+        SmbFileHandleImpl h = new SmbFileHandleImpl(cfg, new byte[16], tree, "//read", 0, 0, 0, 0, 0L);
+        final ByteBuffer buf = ByteBuffer.allocate(128);
+        assertEquals(10, h.readAsync(buf, 5L).get());
+        assertEquals(10, buf.position());
+        verify(tree).close();
+    }
+
+    @Test
+    @DisplayName("readAsync reports -1 at the end of the file")
+    void readAsync_endOfFile() throws Exception {
+        stubValidTree(1L, true, true);
+        when(tree.getReceiveBufferSize()).thenReturn(64);
+        when(tree.sendFuture(isA(Smb2ReadRequest.class)))
+                .thenReturn(CompletableFuture.failedFuture(new SmbException(NtStatus.NT_STATUS_END_OF_FILE, null)));
+
+        SmbFileHandleImpl h = new SmbFileHandleImpl(cfg, new byte[16], tree, "//read", 0, 0, 0, 0, 0L);
+        final ByteBuffer buf = ByteBuffer.allocateDirect(16);
+        assertEquals(-1, h.readAsync(buf, 100L).get());
+        assertEquals(0, buf.position());
+    }
+
+    @Test
+    @DisplayName("writeAsync advances the buffer by the bytes written")
+    void writeAsync_advancesBuffer() throws Exception {
+        stubValidTree(1L, true, true);
+        when(tree.getSendBufferSize()).thenReturn(8);
+        final Smb2WriteResponse resp = mock(Smb2WriteResponse.class);
+        when(resp.getCount()).thenReturn(8);
+        when(tree.sendFuture(isA(Smb2WriteRequest.class))).thenReturn(CompletableFuture.completedFuture(resp));
+
+        SmbFileHandleImpl h = new SmbFileHandleImpl(cfg, new byte[16], tree, "//write", 0, 0, 0, 0, 0L);
+        final ByteBuffer buf = ByteBuffer.allocateDirect(20);
+        assertEquals(8, h.writeAsync(buf, 0L).get());
+        assertEquals(8, buf.position());
+    }
+
+    @Test
+    @DisplayName("Asynchronous I/O fails without SMB2")
+    void readAsync_smb1Unsupported() throws Exception {
+        stubValidTree(1L, true, false);
+        SmbFileHandleImpl h = new SmbFileHandleImpl(cfg, 1, tree, "//smb1", 0, 0, 0, 0, 0L);
+        final ExecutionException e = assertThrows(ExecutionException.class, () -> h.readAsync(ByteBuffer.allocate(4), 0L).get());
+        assertTrue(e.getCause() instanceof SmbUnsupportedOperationException);
+        verify(tree, never()).sendFuture(any(Request.class));
+    }
+
+    private static Object field(final Object o, final String name) throws Exception {
+        final java.lang.reflect.Field f = o.getClass().getDeclaredField(name);
+        f.setAccessible(true);
+        return f.get(o);
+    }
+
+    private void stubFileContents(final int fileSize, final List<Long> offsets) throws CIFSException {
+        when(tree.sendFuture(isA(Smb2ReadRequest.class))).thenAnswer(inv -> {
+            final Smb2ReadRequest req = inv.getArgument(0);
+            final long off = (Long) field(req, "offset");
+            final int len = (Integer) field(req, "readLength");
+            final byte[] buf = (byte[]) field(req, "outputBuffer");
+            final int bufOff = (Integer) field(req, "outputBufferOffset");
+            offsets.add(off);
+            if (off >= fileSize) {
+                return CompletableFuture.failedFuture(new SmbException(NtStatus.NT_STATUS_END_OF_FILE, null));
+            }
+            final int n = (int) Math.min(len, fileSize - off);
+            for (int i = 0; i < n; i++) {
+                buf[bufOff + i] = (byte) (off + i);
+            }
+            final Smb2ReadResponse resp = mock(Smb2ReadResponse.class);
+            when(resp.getDataLength()).thenReturn(n);
+            return CompletableFuture.completedFuture(resp);
+        });
+    }
+
+    @Test
+    @DisplayName("Vectored read splits the range into independent requests and fills the buffers in order")
+    void read_vectored() throws Exception {
+        stubValidTree(1L, true, true);
+        when(tree.getReceiveBufferSize()).thenReturn(8);
+        final List<Long> offsets = new ArrayList<>();
+        stubFileContents(100, offsets);
+
+        SmbFileHandleImpl h = new SmbFileHandleImpl(cfg, new byte[16], tree, "//read", 0, 0, 0, 0, 0L);
+        final ByteBuffer a = ByteBuffer.allocate(10);
+        final ByteBuffer b = ByteBuffer.allocateDirect(6);
+        assertEquals(16, h.read(new ByteBuffer[] { a, b }, 20L));
+        assertEquals(List.of(20L, 28L, 30L), offsets);
+        assertEquals(10, a.position());
+        assertEquals(6, b.position());
+        assertEquals(20, a.get(0));
+        assertEquals(29, a.get(9));
+        assertEquals(30, b.get(0));
+        assertEquals(35, b.get(5));
+    }
+
+    @Test
+    @DisplayName("Positional read is short at the end of the file and -1 beyond it")
+    void read_endOfFile() throws Exception {
+        stubValidTree(1L, true, true);
+        when(tree.getReceiveBufferSize()).thenReturn(8);
+        stubFileContents(20, new ArrayList<>());
+
+        SmbFileHandleImpl h = new SmbFileHandleImpl(cfg, new byte[16], tree, "//read", 0, 0, 0, 0, 0L);
+        final ByteBuffer buf = ByteBuffer.allocate(32);
+        assertEquals(5, h.read(buf, 15L));
+        assertEquals(5, buf.position());
+        assertEquals(-1, h.read(buf, 20L));
+        assertEquals(5, buf.position());
+    }
+
+    @Test
+    @DisplayName("Positional write sends one request per chunk and reports the first failure")
+    void write_vectored() throws Exception {
+        stubValidTree(1L, true, true);
+        when(tree.getSendBufferSize()).thenReturn(4);
+        final List<Long> offsets = new ArrayList<>();
+        when(tree.sendFuture(isA(Smb2WriteRequest.class))).thenAnswer(inv -> {
+            final Smb2WriteRequest req = inv.getArgument(0);
+            offsets.add((Long) field(req, "offset"));
+            final Smb2WriteResponse resp = mock(Smb2WriteResponse.class);
+            when(resp.getCount()).thenReturn((Integer) field(req, "dataLength"));
+            return CompletableFuture.completedFuture(resp);
+        });
+
+        SmbFileHandleImpl h = new SmbFileHandleImpl(cfg, new byte[16], tree, "//write", 0, 0, 0, 0, 0L);
+        final ByteBuffer a = ByteBuffer.allocate(6);
+        final ByteBuffer b = ByteBuffer.allocate(3);
+        assertEquals(9, h.write(new ByteBuffer[] { a, b }, 100L));
+        assertEquals(List.of(100L, 104L, 106L), offsets);
+        assertEquals(0, a.remaining());
+        assertEquals(0, b.remaining());
+
+        when(tree.sendFuture(isA(Smb2WriteRequest.class)))
+                .thenReturn(CompletableFuture.failedFuture(new SmbException(NtStatus.NT_STATUS_DISK_FULL, null)));
+        final SmbException e = assertThrows(SmbException.class, () -> h.write(ByteBuffer.allocate(8), 0L));
+        assertEquals(NtStatus.NT_STATUS_DISK_FULL, e.getNtStatus());
+    }
+
+    @Test
+    @DisplayName("Positional I/O fails without SMB2")
+    void read_smb1Unsupported() throws Exception {
+        stubValidTree(1L, true, false);
+        SmbFileHandleImpl h = new SmbFileHandleImpl(cfg, 1, tree, "//smb1", 0, 0, 0, 0, 0L);
+        assertThrows(SmbUnsupportedOperationException.class, () -> h.read(ByteBuffer.allocate(4), 0L));
+        assertThrows(SmbUnsupportedOperationException.class, () -> h.write(ByteBuffer.allocate(4), 0L));
+    }
 }
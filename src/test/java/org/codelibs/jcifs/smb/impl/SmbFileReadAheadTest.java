@@ -0,0 +1,187 @@
+package org.codelibs.jcifs.smb.impl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codelibs.jcifs.smb.Configuration;
+import org.codelibs.jcifs.smb.internal.CommonServerMessageBlockRequest;
+import org.codelibs.jcifs.smb.internal.Request;
+import org.codelibs.jcifs.smb.internal.smb2.io.Smb2ReadRequest;
+import org.codelibs.jcifs.smb.internal.smb2.io.Smb2ReadResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class SmbFileReadAheadTest {
+
+    private static final int BLOCK = 16;
+
+    @Mock
+    SmbTreeHandleImpl mockTree;
+
+    @Mock
+    SmbFileHandleImpl mockHandle;
+
+    @Mock
+    Configuration mockConfig;
+
+    private int fileSize;
+    private int creditsLeft;
+    private final List<Long> sentOffsets = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        this.creditsLeft = Integer.MAX_VALUE;
+        when(mockHandle.acquire()).thenReturn(mockHandle);
+        when(mockHandle.getTree()).thenReturn(mockTree);
+        when(mockHandle.getFileId()).thenReturn(new byte[16]);
+        when(mockTree.getConfig()).thenReturn(mockConfig);
+
+        when(mockTree.sendAsync(any(Request.class), any(RequestParam[].class))).thenAnswer(inv -> {
+            final Smb2ReadRequest req = inv.getArgument(0);
+            if (inv.getArguments().length > 1 && this.creditsLeft <= 0) {
+                return null;
+            }
+            this.creditsLeft--;
+            this.sentOffsets.add(getField(req, "offset"));
+            final Smb2ReadResponse resp = mock(Smb2ReadResponse.class);
+            when(resp.isReceived()).thenReturn(true);
+            return resp;
+        });
+
+        when(mockTree.waitForResponse(any(CommonServerMessageBlockRequest.class), any())).thenAnswer(inv -> {
+            final Smb2ReadRequest req = inv.getArgument(0);
+            final Smb2ReadResponse resp = inv.getArgument(1);
+            final long offset = getField(req, "offset");
+            final int length = ((Number) getField(req, "readLength")).intValue();
+            if (offset >= this.fileSize) {
+                throw new SmbException(0xC0000011, true);
+            }
+            final byte[] buf = getField(req, "outputBuffer");
+            final int n = (int) Math.min(length, this.fileSize - offset);
+            for (int i = 0; i < n; i++) {
+                buf[i] = (byte) (offset + i);
+            }
+            when(resp.getDataLength()).thenReturn(n);
+            return resp;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T getField(final Object o, final String name) throws Exception {
+        final Field f = Smb2ReadRequest.class.getDeclaredField(name);
+        f.setAccessible(true);
+        return (T) f.get(o);
+    }
+
+    private static byte[] expected(final long offset, final int len) {
+        final byte[] b = new byte[len];
+        for (int i = 0; i < len; i++) {
+            b[i] = (byte) (offset + i);
+        }
+        return b;
+    }
+
+    @Test
+    @DisplayName("Sequential reads return file data in order and keep the window filled")
+    void sequentialRead() throws Exception {
+        this.fileSize = BLOCK * 10;
+        try (SmbFileReadAhead ra = new SmbFileReadAhead(4, BLOCK)) {
+            final byte[] buf = new byte[BLOCK * 10];
+            int pos = 0;
+            int n;
+            while ((n = ra.read(mockHandle, pos, buf, pos, Math.min(10, buf.length - pos))) > 0) {
+                pos += n;
+                if (pos == buf.length) {
+                    break;
+                }
+            }
+            assertEquals(BLOCK * 10, pos);
+            assertArrayEquals(expected(0, BLOCK * 10), buf);
+            for (int i = 0; i < this.sentOffsets.size(); i++) {
+                assertEquals((long) i * BLOCK, this.sentOffsets.get(i));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("A large read is served from several received blocks")
+    void readSpansBlocks() throws Exception {
+        this.fileSize = BLOCK * 8;
+        try (SmbFileReadAhead ra = new SmbFileReadAhead(4, BLOCK)) {
+            final byte[] buf = new byte[BLOCK * 3];
+            assertEquals(BLOCK * 3, ra.read(mockHandle, 0, buf, 0, buf.length));
+            assertArrayEquals(expected(0, BLOCK * 3), buf);
+            assertEquals(4, ra.getPendingCount());
+        }
+    }
+
+    @Test
+    @DisplayName("Short read at end of file is returned, followed by -1")
+    void endOfFile() throws Exception {
+        this.fileSize = BLOCK + 5;
+        try (SmbFileReadAhead ra = new SmbFileReadAhead(4, BLOCK)) {
+            final byte[] buf = new byte[BLOCK * 4];
+            assertEquals(BLOCK + 5, ra.read(mockHandle, 0, buf, 0, buf.length));
+            assertArrayEquals(expected(0, BLOCK + 5), java.util.Arrays.copyOf(buf, BLOCK + 5));
+            assertEquals(0, ra.getPendingCount());
+            assertEquals(-1, ra.read(mockHandle, BLOCK + 5, buf, 0, buf.length));
+        }
+    }
+
+    @Test
+    @DisplayName("Changing the position drops the outstanding requests")
+    void seekResets() throws Exception {
+        this.fileSize = BLOCK * 100;
+        try (SmbFileReadAhead ra = new SmbFileReadAhead(3, BLOCK)) {
+            final byte[] buf = new byte[4];
+            assertEquals(4, ra.read(mockHandle, 0, buf, 0, 4));
+            assertEquals(4, ra.read(mockHandle, BLOCK * 50, buf, 0, 4));
+            assertArrayEquals(expected(BLOCK * 50, 4), buf);
+            assertEquals((long) BLOCK * 50, this.sentOffsets.get(3));
+            verify(mockTree, times(1)).release();
+        }
+    }
+
+    @Test
+    @DisplayName("Window shrinks when no credits are immediately available")
+    void noCredits() throws Exception {
+        this.fileSize = BLOCK * 10;
+        this.creditsLeft = 1;
+        try (SmbFileReadAhead ra = new SmbFileReadAhead(8, BLOCK)) {
+            final byte[] buf = new byte[4];
+            assertEquals(4, ra.read(mockHandle, 0, buf, 0, 4));
+            assertEquals(1, ra.getPendingCount());
+        }
+    }
+
+    @Test
+    @DisplayName("Errors are propagated and release all resources")
+    void errorPropagates() throws Exception {
+        when(mockTree.waitForResponse(any(CommonServerMessageBlockRequest.class), any()))
+                .thenThrow(new SmbException(NtStatus.NT_STATUS_ACCESS_DENIED, true));
+        final SmbFileReadAhead ra = new SmbFileReadAhead(2, BLOCK);
+        assertThrows(SmbException.class, () -> ra.read(mockHandle, 0, new byte[4], 0, 4));
+        assertEquals(0, ra.getPendingCount());
+        verify(mockTree, atLeastOnce()).release();
+        verify(mockHandle, atLeastOnce()).release();
+    }
+}
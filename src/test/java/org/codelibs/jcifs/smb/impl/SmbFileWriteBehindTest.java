@@ -0,0 +1,165 @@
+package org.codelibs.jcifs.smb.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codelibs.jcifs.smb.Configuration;
+import org.codelibs.jcifs.smb.internal.CommonServerMessageBlockRequest;
+import org.codelibs.jcifs.smb.internal.Request;
+import org.codelibs.jcifs.smb.internal.smb2.io.Smb2WriteRequest;
+import org.codelibs.jcifs.smb.internal.smb2.io.Smb2WriteResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class SmbFileWriteBehindTest {
+
+    private static final int BLOCK = 16;
+
+    @Mock
+    SmbTreeHandleImpl mockTree;
+
+    @Mock
+    SmbFileHandleImpl mockHandle;
+
+    @Mock
+    Configuration mockConfig;
+
+    private final List<long[]> sent = new ArrayList<>();
+    private int maxOutstanding;
+    private int outstanding;
+    private int creditsLeft;
+    private SmbException failOnWait;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        this.creditsLeft = Integer.MAX_VALUE;
+        when(mockHandle.acquire()).thenReturn(mockHandle);
+        when(mockHandle.getTree()).thenReturn(mockTree);
+        when(mockHandle.getFileId()).thenReturn(new byte[16]);
+        when(mockTree.getConfig()).thenReturn(mockConfig);
+
+        when(mockTree.sendAsync(any(Request.class), any(RequestParam[].class))).thenAnswer(inv -> {
+            final Smb2WriteRequest req = inv.getArgument(0);
+            if (inv.getArguments().length > 1 && this.creditsLeft <= 0) {
+                return null;
+            }
+            this.creditsLeft--;
+            final long offset = getField(req, "offset");
+            final int length = getField(req, "dataLength");
+            this.sent.add(new long[] { offset, length });
+            this.outstanding++;
+            this.maxOutstanding = Math.max(this.maxOutstanding, this.outstanding);
+            final Smb2WriteResponse resp = mock(Smb2WriteResponse.class);
+            when(resp.getCount()).thenReturn(length);
+            return resp;
+        });
+
+        when(mockTree.waitForResponse(any(CommonServerMessageBlockRequest.class), any())).thenAnswer(inv -> {
+            this.outstanding--;
+            this.creditsLeft++;
+            if (this.failOnWait != null) {
+                throw this.failOnWait;
+            }
+            return inv.getArgument(1);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T getField(final Object o, final String name) throws Exception {
+        final Field f = Smb2WriteRequest.class.getDeclaredField(name);
+        f.setAccessible(true);
+        return (T) f.get(o);
+    }
+
+    @Test
+    @DisplayName("Writes are split into blocks and kept in flight up to the window")
+    void pipelinesWrites() throws Exception {
+        try (SmbFileWriteBehind wb = new SmbFileWriteBehind(4, Long.MAX_VALUE)) {
+            wb.write(mockHandle, 100, new byte[BLOCK * 10], 0, BLOCK * 10, BLOCK);
+            assertEquals(10, this.sent.size());
+            for (int i = 0; i < 10; i++) {
+                assertEquals(100L + i * BLOCK, this.sent.get(i)[0]);
+                assertEquals(BLOCK, this.sent.get(i)[1]);
+            }
+            assertEquals(4, this.maxOutstanding);
+            assertEquals(4, wb.getPendingCount());
+
+            wb.flush();
+            assertEquals(0, wb.getPendingCount());
+            assertEquals(0, this.outstanding);
+        }
+    }
+
+    @Test
+    @DisplayName("Unacknowledged data is bounded by the byte budget")
+    void respectsByteBudget() throws Exception {
+        try (SmbFileWriteBehind wb = new SmbFileWriteBehind(100, BLOCK * 2)) {
+            wb.write(mockHandle, 0, new byte[BLOCK * 10], 0, BLOCK * 10, BLOCK);
+            assertEquals(2, this.maxOutstanding);
+            assertTrue(wb.getPendingBytes() <= BLOCK * 2);
+        }
+    }
+
+    @Test
+    @DisplayName("Window shrinks when no credits are immediately available")
+    void noCredits() throws Exception {
+        this.creditsLeft = 2;
+        try (SmbFileWriteBehind wb = new SmbFileWriteBehind(8, Long.MAX_VALUE)) {
+            wb.write(mockHandle, 0, new byte[BLOCK * 6], 0, BLOCK * 6, BLOCK);
+            assertEquals(6, this.sent.size());
+            assertEquals(2, this.maxOutstanding);
+        }
+    }
+
+    @Test
+    @DisplayName("A failed write is reported on the next call and stays failed")
+    void errorReportedLater() throws Exception {
+        try (SmbFileWriteBehind wb = new SmbFileWriteBehind(4, Long.MAX_VALUE)) {
+            wb.write(mockHandle, 0, new byte[BLOCK], 0, BLOCK, BLOCK);
+            final SmbException err = new SmbException(NtStatus.NT_STATUS_ACCESS_DENIED, true);
+            this.failOnWait = err;
+
+            final SmbException e = assertThrows(SmbException.class, () -> wb.flush());
+            assertSame(err, e);
+            this.failOnWait = null;
+            final SmbException e2 = assertThrows(SmbException.class, () -> wb.write(mockHandle, BLOCK, new byte[BLOCK], 0, BLOCK, BLOCK));
+            assertSame(err, e2.getCause());
+            assertThrows(SmbException.class, () -> wb.flush());
+        }
+        verify(mockTree, atLeastOnce()).release();
+        verify(mockHandle, atLeastOnce()).release();
+    }
+
+    @Test
+    @DisplayName("Short writes are reported as errors")
+    void shortWrite() throws Exception {
+        when(mockTree.waitForResponse(any(CommonServerMessageBlockRequest.class), any())).thenAnswer(inv -> {
+            final Smb2WriteResponse resp = inv.getArgument(1);
+            when(resp.getCount()).thenReturn(1);
+            return resp;
+        });
+        try (SmbFileWriteBehind wb = new SmbFileWriteBehind(4, Long.MAX_VALUE)) {
+            wb.write(mockHandle, 0, new byte[BLOCK], 0, BLOCK, BLOCK);
+            assertThrows(SmbException.class, () -> wb.flush());
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package org.codelibs.jcifs.smb.impl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.codelibs.jcifs.smb.internal.SmbBasicFileInfo;
+import org.codelibs.jcifs.smb.internal.smb2.lease.Smb2LeaseState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class SmbLeaseManagerTest {
+
+    private static final String PATH = SmbLeaseManager.pathKey(1, "\\dir\\file.txt");
+
+    private SmbLeaseManager mgr;
+    private SmbBasicFileInfo info;
+
+    @BeforeEach
+    void setUp() {
+        this.mgr = new SmbLeaseManager(2, 60000, 1024);
+        this.info = mock(SmbBasicFileInfo.class);
+        when(this.info.getSize()).thenReturn(42L);
+        when(this.info.getAttributes()).thenReturn(0x20);
+    }
+
+    private SmbFileHandleImpl validHandle() {
+        final SmbFileHandleImpl fh = mock(SmbFileHandleImpl.class);
+        when(fh.isValid()).thenReturn(true);
+        return fh;
+    }
+
+    @Test
+    @DisplayName("The same lease key is used for all opens of a path")
+    void sameKey() {
+        final SmbLeaseManager.Lease a = this.mgr.requestLease(PATH);
+        assertSame(a, this.mgr.requestLease(SmbLeaseManager.pathKey(1, "\\DIR\\File.txt")));
+        assertNotSame(a, this.mgr.requestLease(SmbLeaseManager.pathKey(2, "\\dir\\file.txt")));
+        assertSame(a, this.mgr.getLease(a.getKey()));
+    }
+
+    @Test
+    @DisplayName("File information is cached while a read lease is held")
+    void cachesInfo() {
+        final SmbLeaseManager.Lease l = this.mgr.requestLease(PATH);
+        assertNull(this.mgr.getCachedInfo(PATH));
+        this.mgr.opened(l, Smb2LeaseState.SMB2_LEASE_READ_HANDLE, 1, null, this.info, false);
+        final SmbBasicFileInfo cached = this.mgr.getCachedInfo(PATH);
+        assertNotNull(cached);
+        assertEquals(42L, cached.getSize());
+        assertEquals(0x20, cached.getAttributes());
+
+        this.mgr.closed(l, false);
+        assertNull(this.mgr.getCachedInfo(PATH));
+    }
+
+    @Test
+    @DisplayName("Nothing is cached without a granted lease or while the file is open for writing")
+    void noCaching() {
+        final SmbLeaseManager.Lease l = this.mgr.requestLease(PATH);
+        this.mgr.opened(l, Smb2LeaseState.SMB2_LEASE_NONE, 0, null, this.info, false);
+        assertNull(this.mgr.getCachedInfo(PATH));
+        this.mgr.closed(l, false);
+
+        this.mgr.opened(l, Smb2LeaseState.SMB2_LEASE_READ_HANDLE, 1, null, this.info, false);
+        this.mgr.opened(l, Smb2LeaseState.SMB2_LEASE_READ_HANDLE, 1, null, this.info, true);
+        assertNull(this.mgr.getCachedInfo(PATH));
+        this.mgr.closed(l, true);
+        assertNull(this.mgr.getCachedInfo(PATH));
+    }
+
+    @Test
+    @DisplayName("Cached data is dropped on lease break and invalidation")
+    void dataInvalidation() {
+        final SmbLeaseManager.Lease l = this.mgr.requestLease(PATH);
+        this.mgr.opened(l, Smb2LeaseState.SMB2_LEASE_READ_HANDLE, 1, null, this.info, false);
+        final byte[] data = { 1, 2, 3 };
+        this.mgr.setCachedData(l, this.mgr.getGeneration(l), data);
+        assertArrayEquals(data, this.mgr.getCachedData(l));
+
+        this.mgr.invalidate(PATH);
+        assertNull(this.mgr.getCachedData(l));
+
+        this.mgr.setCachedData(l, this.mgr.getGeneration(l), data);
+        assertSame(l, this.mgr.leaseBroken(l.getKey(), Smb2LeaseState.SMB2_LEASE_NONE, 2));
+        assertNull(this.mgr.getCachedData(l));
+        assertNull(this.mgr.getCachedInfo(PATH));
+    }
+
+    @Test
+    @DisplayName("Data read before an invalidation is not stored")
+    void staleData() {
+        final SmbLeaseManager.Lease l = this.mgr.requestLease(PATH);
+        this.mgr.opened(l, Smb2LeaseState.SMB2_LEASE_READ_HANDLE, 1, null, this.info, false);
+        final long gen = this.mgr.getGeneration(l);
+        this.mgr.invalidate(PATH);
+        this.mgr.setCachedData(l, gen, new byte[1]);
+        assertNull(this.mgr.getCachedData(l));
+    }
+
+    @Test
+    @DisplayName("Oversized data is not cached")
+    void maxFileSize() {
+        final SmbLeaseManager.Lease l = this.mgr.requestLease(PATH);
+        this.mgr.opened(l, Smb2LeaseState.SMB2_LEASE_READ_HANDLE, 1, null, this.info, false);
+        assertFalse(this.mgr.isCacheableSize(1025));
+        this.mgr.setCachedData(l, this.mgr.getGeneration(l), new byte[1025]);
+        assertNull(this.mgr.getCachedData(l));
+    }
+
+    @Test
+    @DisplayName("Handles are only parked with a handle caching lease")
+    void parking() {
+        final SmbLeaseManager.Lease l = this.mgr.requestLease(PATH);
+        this.mgr.opened(l, Smb2LeaseState.SMB2_LEASE_READ_CACHING, 1, null, this.info, false);
+        assertFalse(this.mgr.park(l, validHandle()));
+        this.mgr.closed(l, false);
+
+        this.mgr.opened(l, Smb2LeaseState.SMB2_LEASE_READ_HANDLE, 1, null, this.info, false);
+        final SmbFileHandleImpl fh = validHandle();
+        assertTrue(this.mgr.park(l, fh));
+        assertNotNull(this.mgr.getCachedInfo(PATH));
+        assertSame(fh, this.mgr.unpark(l));
+        assertNull(this.mgr.unpark(l));
+    }
+
+    @Test
+    @DisplayName("Parked handles are closed when the lease table is full")
+    void eviction() throws Exception {
+        final SmbLeaseManager.Lease l = this.mgr.requestLease(PATH);
+        this.mgr.opened(l, Smb2LeaseState.SMB2_LEASE_READ_HANDLE, 1, null, this.info, false);
+        final SmbFileHandleImpl fh = validHandle();
+        assertTrue(this.mgr.park(l, fh));
+
+        final SmbLeaseManager.Lease active = this.mgr.requestLease(SmbLeaseManager.pathKey(1, "\\other"));
+        this.mgr.opened(active, Smb2LeaseState.SMB2_LEASE_READ_HANDLE, 1, null, this.info, false);
+        verify(fh, never()).closeParked();
+
+        this.mgr.requestLease(SmbLeaseManager.pathKey(1, "\\third"));
+        verify(fh).closeParked();
+        assertEquals(2, this.mgr.size());
+        assertNull(this.mgr.getLease(l.getKey()));
+        assertSame(active, this.mgr.getLease(active.getKey()));
+    }
+
+    @Test
+    @DisplayName("Parked handles are closed after the timeout")
+    void timeout() throws Exception {
+        this.mgr = new SmbLeaseManager(10, 0, 1024);
+        final SmbLeaseManager.Lease l = this.mgr.requestLease(PATH);
+        this.mgr.opened(l, Smb2LeaseState.SMB2_LEASE_READ_HANDLE, 1, null, this.info, false);
+        final SmbFileHandleImpl fh = validHandle();
+        assertTrue(this.mgr.park(l, fh));
+        this.mgr.getCachingLease(PATH);
+        verify(fh).closeParked();
+    }
+
+    @Test
+    @DisplayName("Deleting a file closes its parked handle")
+    void closeCached() throws Exception {
+        final SmbLeaseManager.Lease l = this.mgr.requestLease(PATH);
+        this.mgr.opened(l, Smb2LeaseState.SMB2_LEASE_READ_HANDLE, 1, null, this.info, false);
+        final SmbFileHandleImpl fh = validHandle();
+        assertTrue(this.mgr.park(l, fh));
+        this.mgr.closeCached(PATH);
+        verify(fh).closeParked();
+        assertNull(this.mgr.unpark(l));
+    }
+
+    @Test
+    @DisplayName("Clearing drops all leases and invalidates parked handles")
+    void clear() {
+        final SmbLeaseManager.Lease l = this.mgr.requestLease(PATH);
+        this.mgr.opened(l, Smb2LeaseState.SMB2_LEASE_READ_HANDLE, 1, null, this.info, false);
+        final SmbFileHandleImpl fh = validHandle();
+        assertTrue(this.mgr.park(l, fh));
+        this.mgr.clear();
+        verify(fh).markClosed();
+        assertEquals(0, this.mgr.size());
+        assertNull(this.mgr.getLease(l.getKey()));
+        // closing a handle afterwards must not fail
+        this.mgr.closed(l, false);
+    }
+}
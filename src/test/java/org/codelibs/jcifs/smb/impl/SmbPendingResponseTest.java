@@ -0,0 +1,145 @@
+package org.codelibs.jcifs.smb.impl;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.codelibs.jcifs.smb.Configuration;
+import org.codelibs.jcifs.smb.internal.CommonServerMessageBlockRequest;
+import org.codelibs.jcifs.smb.internal.CommonServerMessageBlockResponse;
+import org.codelibs.jcifs.smb.internal.smb2.io.Smb2WriteResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class SmbPendingResponseTest {
+
+    @Mock
+    SmbTreeHandleImpl mockTree;
+
+    @Mock
+    Configuration mockConfig;
+
+    @Mock
+    CommonServerMessageBlockRequest mockRequest;
+
+    private Smb2WriteResponse response;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(mockTree.acquire()).thenReturn(mockTree);
+        when(mockTree.getConfig()).thenReturn(mockConfig);
+        when(mockConfig.getResponseTimeout()).thenReturn(30000);
+        when(mockTree.waitForResponse(any(CommonServerMessageBlockRequest.class), any())).thenAnswer(inv -> {
+            final CommonServerMessageBlockResponse r = inv.getArgument(1);
+            if (!r.isReceived()) {
+                throw new SmbException("Timeout");
+            }
+            return r;
+        });
+        this.response = new Smb2WriteResponse(mockConfig);
+    }
+
+    @Test
+    @DisplayName("The future is completed when the response is received")
+    void completesOnReceive() throws Exception {
+        final CompletableFuture<Smb2WriteResponse> f = new SmbPendingResponse<>(mockTree, mockRequest, this.response).start();
+        assertFalse(f.isDone());
+        verify(mockTree, never()).waitForResponse(any(CommonServerMessageBlockRequest.class), any());
+
+        this.response.received();
+        assertTrue(f.isDone());
+        assertSame(this.response, f.get());
+        verify(mockTree, times(1)).waitForResponse(mockRequest, this.response);
+        verify(mockTree, times(1)).release();
+
+        // later signals are ignored
+        this.response.signal();
+        verify(mockTree, times(1)).waitForResponse(any(CommonServerMessageBlockRequest.class), any());
+    }
+
+    @Test
+    @DisplayName("A response received before registering completes the future immediately")
+    void alreadyReceived() throws Exception {
+        this.response.received();
+        final CompletableFuture<Smb2WriteResponse> f = new SmbPendingResponse<>(mockTree, mockRequest, this.response).start();
+        assertTrue(f.isDone());
+        assertSame(this.response, f.get());
+    }
+
+    @Test
+    @DisplayName("Errors reported when collecting the response fail the future")
+    void statusError() throws Exception {
+        final SmbException err = new SmbException(NtStatus.NT_STATUS_ACCESS_DENIED, true);
+        when(mockTree.waitForResponse(any(CommonServerMessageBlockRequest.class), any())).thenThrow(err);
+        final CompletableFuture<Smb2WriteResponse> f = new SmbPendingResponse<>(mockTree, mockRequest, this.response).start();
+        this.response.received();
+        final ExecutionException e = assertThrows(ExecutionException.class, () -> f.get());
+        assertSame(err, e.getCause());
+        verify(mockTree, times(1)).release();
+    }
+
+    @Test
+    @DisplayName("Compounds complete once all responses have been received")
+    void compound() throws Exception {
+        final CommonServerMessageBlockRequest next = mock(CommonServerMessageBlockRequest.class);
+        final Smb2WriteResponse second = new Smb2WriteResponse(mockConfig);
+        when(mockRequest.getNext()).thenReturn(next);
+        when(next.getResponse()).thenReturn(second);
+
+        final CompletableFuture<Smb2WriteResponse> f = new SmbPendingResponse<>(mockTree, mockRequest, this.response).start();
+        this.response.received();
+        assertFalse(f.isDone());
+        second.received();
+        assertSame(this.response, f.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("Transport failures fail the future")
+    void transportError() throws Exception {
+        final CompletableFuture<Smb2WriteResponse> f = new SmbPendingResponse<>(mockTree, mockRequest, this.response).start();
+        final IOException cause = new IOException("Connection reset");
+        this.response.exception(cause);
+        final ExecutionException e = assertThrows(ExecutionException.class, () -> f.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(SmbException.class, e.getCause());
+        assertSame(cause, e.getCause().getCause());
+        verify(mockTree, timeout(5000)).release();
+    }
+
+    @Test
+    @DisplayName("The future fails if no response arrives before the expiration")
+    void expires() throws Exception {
+        this.response.setExpiration(System.currentTimeMillis() + 50);
+        final SmbPendingResponse<Smb2WriteResponse> p = new SmbPendingResponse<>(mockTree, mockRequest, this.response);
+        final CompletableFuture<Smb2WriteResponse> f = p.start();
+        final ExecutionException e = assertThrows(ExecutionException.class, () -> f.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(SmbException.class, e.getCause());
+        assertTrue(p.isCollected());
+
+        // a late response must not be collected again
+        this.response.received();
+        verify(mockTree, times(1)).waitForResponse(any(CommonServerMessageBlockRequest.class), any());
+        verify(mockTree, times(1)).release();
+    }
+}
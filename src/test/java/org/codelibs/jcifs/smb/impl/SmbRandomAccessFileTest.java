@@ -2,11 +2,13 @@ package org.codelibs.jcifs.smb.impl;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.atLeastOnce;
@@ -21,6 +23,8 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.codelibs.jcifs.smb.CIFSException;
@@ -455,4 +459,84 @@ public class SmbRandomAccessFileTest {
             throw new RuntimeException(e);
         }
     }
+
+    @Test
+    @DisplayName("buffered mode: small reads and writes are served from the block cache")
+    void buffered_coalescesIo() throws Exception {
+        SmbRandomAccessFile raf = spy(newInstance("rw", true, false, false));
+        byte[] data = new byte[256];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        doAnswer(inv -> {
+            long pos = inv.getArgument(0);
+            byte[] b = inv.getArgument(1);
+            int off = inv.getArgument(2);
+            int len = inv.getArgument(3);
+            int n = (int) Math.min(len, data.length - pos);
+            if (n <= 0) {
+                return -1;
+            }
+            System.arraycopy(data, (int) pos, b, off, n);
+            return n;
+        }).when(raf).readDirect(anyLong(), any(byte[].class), anyInt(), anyInt());
+        doAnswer(inv -> (long) inv.getArgument(0) + (int) inv.getArgument(3)).when(raf)
+                .writeDirect(anyLong(), any(byte[].class), anyInt(), anyInt());
+
+        raf.setBuffering(64, 4);
+        assertTrue(raf.isBuffered());
+        assertEquals(0x00010203, raf.readInt());
+        assertEquals(0x04050607, raf.readInt());
+        assertEquals(8, raf.read());
+        verify(raf, times(1)).readDirect(anyLong(), any(byte[].class), anyInt(), anyInt());
+
+        raf.writeInt(1);
+        raf.writeLong(2L);
+        verify(raf, never()).writeDirect(anyLong(), any(byte[].class), anyInt(), anyInt());
+        raf.seek(0);
+        verify(raf, times(1)).writeDirect(eq(9L), any(byte[].class), anyInt(), eq(12));
+
+        raf.setBuffering(0, 0);
+        assertFalse(raf.isBuffered());
+    }
+
+    @Test
+    @DisplayName("buffered mode: positional reads flush buffered writes, positional writes drop cached blocks")
+    void buffered_positionalIoKeepsCacheConsistent() throws Exception {
+        SmbRandomAccessFile raf = spy(newInstance("rw", true, false, false));
+        AtomicInteger reads = new AtomicInteger();
+        doAnswer(inv -> {
+            reads.incrementAndGet();
+            return (int) inv.getArgument(3);
+        }).when(raf).readDirect(anyLong(), any(byte[].class), anyInt(), anyInt());
+        doAnswer(inv -> (long) inv.getArgument(0) + (int) inv.getArgument(3)).when(raf)
+                .writeDirect(anyLong(), any(byte[].class), anyInt(), anyInt());
+        SmbFileHandleImpl fh = raf.ensureOpen();
+        when(fh.read(any(ByteBuffer.class), anyLong())).thenReturn(4);
+        when(fh.write(any(ByteBuffer.class), anyLong())).thenReturn(4);
+        when(fh.writeAsync(any(ByteBuffer.class), anyLong())).thenReturn(CompletableFuture.completedFuture(4));
+
+        raf.setBuffering(64, 4);
+        raf.readInt();
+        raf.writeInt(1);
+        raf.read(ByteBuffer.allocate(4), 0);
+        verify(raf, times(1)).writeDirect(eq(4L), any(byte[].class), anyInt(), eq(4));
+
+        raf.seek(0);
+        raf.readInt();
+        assertEquals(1, reads.get());
+        raf.write(ByteBuffer.allocate(4), 2);
+        raf.seek(0);
+        raf.readInt();
+        assertEquals(2, reads.get());
+
+        raf.writeAsync(ByteBuffer.allocate(4), 130).get();
+        raf.seek(0);
+        raf.readInt();
+        assertEquals(2, reads.get());
+        raf.writeAsync(ByteBuffer.allocate(4), 60).get();
+        raf.seek(0);
+        raf.readInt();
+        assertEquals(3, reads.get());
+    }
 }
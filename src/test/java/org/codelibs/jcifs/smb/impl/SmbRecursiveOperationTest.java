@@ -0,0 +1,200 @@
+package org.codelibs.jcifs.smb.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codelibs.jcifs.smb.CIFSException;
+import org.codelibs.jcifs.smb.CloseableIterator;
+import org.codelibs.jcifs.smb.RecursiveOperationListener;
+import org.codelibs.jcifs.smb.RecursiveOperationResult;
+import org.codelibs.jcifs.smb.SmbConstants;
+import org.codelibs.jcifs.smb.SmbResource;
+import org.codelibs.jcifs.smb.SmbResourceLocator;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class SmbRecursiveOperationTest {
+
+    private final List<String> deleted = Collections.synchronizedList(new ArrayList<>());
+
+    private SmbFile file(final String path, final boolean directory, final SmbResource... children) throws Exception {
+        final SmbFile f = mock(SmbFile.class);
+        final SmbResourceLocator locator = mock(SmbResourceLocator.class);
+        when(locator.getUNCPath()).thenReturn(path);
+        when(f.getLocator()).thenReturn(locator);
+        when(f.getURL()).thenReturn(new URL("http://server" + path));
+        when(f.exists()).thenReturn(true);
+        when(f.isDirectory()).thenReturn(directory);
+        when(f.ensureTreeConnected()).thenReturn(mock(SmbTreeHandleImpl.class));
+        doAnswer(inv -> {
+            this.deleted.add(path);
+            return null;
+        }).when(f).deleteSingle(any(), eq(path));
+        if (directory) {
+            when(f.children("*")).thenAnswer(inv -> iterator(children));
+        }
+        return f;
+    }
+
+    private static CloseableIterator<SmbResource> iterator(final SmbResource... children) {
+        final Iterator<SmbResource> it = List.of(children).iterator();
+        return new CloseableIterator<>() {
+
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public SmbResource next() {
+                return it.next();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Test
+    @DisplayName("Directories are deleted after all their contents")
+    void deleteTree() throws Exception {
+        final SmbFile a = file("/share/root/a", false);
+        final SmbFile b = file("/share/root/sub/b", false);
+        final SmbFile c = file("/share/root/sub/c", false);
+        final SmbFile sub = file("/share/root/sub/", true, b, c);
+        final SmbFile root = file("/share/root/", true, a, sub);
+
+        final AtomicInteger completed = new AtomicInteger();
+        final RecursiveOperationListener listener = new RecursiveOperationListener() {
+
+            @Override
+            public void completed(final String path, final boolean directory, final long bytes) {
+                completed.incrementAndGet();
+            }
+        };
+
+        final RecursiveOperationResult result;
+        try (SmbRecursiveOperation op = new SmbRecursiveOperation(4, listener)) {
+            result = op.delete(root);
+        }
+
+        assertTrue(result.isSuccessful());
+        assertEquals(3, result.getFileCount());
+        assertEquals(2, result.getDirectoryCount());
+        assertEquals(5, completed.get());
+        assertEquals(5, this.deleted.size());
+        assertTrue(this.deleted.indexOf("/share/root/sub/") > this.deleted.indexOf("/share/root/sub/b"));
+        assertTrue(this.deleted.indexOf("/share/root/sub/") > this.deleted.indexOf("/share/root/sub/c"));
+        assertEquals("/share/root/", this.deleted.get(4));
+        verify(sub).close();
+        verify(root, never()).close();
+    }
+
+    @Test
+    @DisplayName("Failures are collected and keep their parents from being deleted")
+    void deleteFailure() throws Exception {
+        final SmbFile a = file("/share/root/a", false);
+        final SmbFile b = file("/share/root/sub/b", false);
+        final SmbFile c = file("/share/root/sub/c", false);
+        final SmbException err = new SmbException(NtStatus.NT_STATUS_ACCESS_DENIED, null);
+        doThrow(err).when(b).deleteSingle(any(), anyString());
+        final SmbFile sub = file("/share/root/sub/", true, b, c);
+        final SmbFile root = file("/share/root/", true, a, sub);
+
+        final List<String> failed = Collections.synchronizedList(new ArrayList<>());
+        final RecursiveOperationResult result;
+        try (SmbRecursiveOperation op = new SmbRecursiveOperation(2, new RecursiveOperationListener() {
+
+            @Override
+            public void failed(final String path, final CIFSException error) {
+                failed.add(path);
+            }
+        })) {
+            result = op.delete(root);
+        }
+
+        assertFalse(result.isSuccessful());
+        assertEquals(1, result.getFailures().size());
+        assertEquals(err, result.getFailures().get("http://server/share/root/sub/b"));
+        assertEquals(List.of("http://server/share/root/sub/b"), failed);
+        assertEquals(2, result.getFileCount());
+        assertEquals(0, result.getDirectoryCount());
+        assertFalse(this.deleted.contains("/share/root/sub/"));
+        assertFalse(this.deleted.contains("/share/root/"));
+    }
+
+    @Test
+    @DisplayName("A failing enumeration is reported and the directory is kept")
+    void enumerationFailure() throws Exception {
+        final SmbFile root = file("/share/root/", true);
+        when(root.children("*")).thenThrow(new SmbException(NtStatus.NT_STATUS_ACCESS_DENIED, null));
+
+        final RecursiveOperationResult result;
+        try (SmbRecursiveOperation op = new SmbRecursiveOperation(2, null)) {
+            result = op.delete(root);
+        }
+        assertEquals(1, result.getFailures().size());
+        assertTrue(this.deleted.isEmpty());
+    }
+
+    @Test
+    @DisplayName("Entries not deleted after the operation was closed are released")
+    void deleteRejected() throws Exception {
+        final SmbFile a = file("/share/root/a", false);
+        final SmbFile root = file("/share/root/", true);
+
+        final RecursiveOperationResult result;
+        try (SmbRecursiveOperation op = new SmbRecursiveOperation(2, null)) {
+            when(root.children("*")).thenAnswer(inv -> {
+                op.close();
+                return iterator(a);
+            });
+            result = op.delete(root);
+        }
+        verify(a).close();
+        verify(root, never()).close();
+        assertTrue(this.deleted.isEmpty());
+        assertEquals(0, result.getFileCount());
+    }
+
+    @Test
+    @DisplayName("Entries not copied after the operation was closed are released")
+    void copyRejected() throws Exception {
+        final SmbFile child = file("/share/src/x", false);
+        final SmbResourceLocator childLocator = child.getLocator();
+        when(childLocator.getName()).thenReturn("x");
+        when(childLocator.getType()).thenReturn(SmbConstants.TYPE_FILESYSTEM);
+        final SmbFile src = file("/share/src/", true);
+        final SmbFile dest = new SmbFile("smb://server/share/");
+
+        final RecursiveOperationResult result;
+        try (SmbRecursiveOperation op = new SmbRecursiveOperation(2, null)) {
+            when(src.children("*")).thenAnswer(inv -> {
+                op.close();
+                return iterator(child);
+            });
+            result = op.copy(src, dest, 1024);
+        }
+        verify(child).close();
+        verify(child, never()).ensureTreeConnected();
+        assertEquals(0, result.getFileCount());
+    }
+}
@@ -8,6 +8,7 @@ import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
@@ -21,6 +22,11 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.lang.reflect.Field;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.codelibs.jcifs.smb.CIFSContext;
 import org.codelibs.jcifs.smb.CIFSException;
@@ -29,6 +35,8 @@ import org.codelibs.jcifs.smb.Credentials;
 import org.codelibs.jcifs.smb.RuntimeCIFSException;
 import org.codelibs.jcifs.smb.internal.SMBSigningDigest;
 import org.codelibs.jcifs.smb.internal.smb2.Smb2EncryptionContext;
+import org.codelibs.jcifs.smb.internal.smb2.io.Smb2WriteRequest;
+import org.codelibs.jcifs.smb.internal.smb2.io.Smb2WriteResponse;
 import org.codelibs.jcifs.smb.internal.smb2.session.Smb2SessionSetupResponse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -382,4 +390,96 @@ class SmbSessionImplTest {
         when(transport.getNegotiateResponse()).thenThrow(new SmbException("fail"));
         assertThrows(CIFSException.class, session::reauthenticate);
     }
+
+    @Test
+    @DisplayName("SMB2 session setup does not hold the transport monitor")
+    void testSessionSetupSmb2NotSerializedOnTransport() throws Exception {
+        SmbSessionImpl session = newSession();
+        AtomicBoolean held = new AtomicBoolean(true);
+        when(transport.isSMB2()).thenReturn(true);
+        when(transport.getNegotiateResponse()).thenAnswer(inv -> {
+            held.set(Thread.holdsLock(transport));
+            throw new SmbException("fail");
+        });
+        assertThrows(SmbException.class, () -> session.sessionSetup(null, null));
+        assertFalse(held.get());
+        verify(transport, never()).sessionSetupCompleted(anyLong());
+    }
+
+    @Test
+    @DisplayName("SMB1 session setup stays serialized on the transport")
+    void testSessionSetupSmb1SerializedOnTransport() throws Exception {
+        SmbSessionImpl session = newSession();
+        AtomicBoolean held = new AtomicBoolean(false);
+        when(transport.isSMB2()).thenReturn(false);
+        when(transport.getNegotiateResponse()).thenAnswer(inv -> {
+            held.set(Thread.holdsLock(transport));
+            throw new SmbException("fail");
+        });
+        assertThrows(SmbException.class, () -> session.sessionSetup(null, null));
+        assertTrue(held.get());
+    }
+
+    @Test
+    @DisplayName("Concurrent setup of the same session waits for the first attempt")
+    void testSessionSetupWaitsForSameSession() throws Exception {
+        SmbSessionImpl session = newSession();
+        Field f = SmbSessionImpl.class.getDeclaredField("connectionState");
+        f.setAccessible(true);
+        AtomicInteger state = (AtomicInteger) f.get(session);
+        state.set(1);
+
+        when(transport.isSMB2()).thenReturn(true);
+        when(transport.getNegotiateResponse()).thenThrow(new SmbException("fail"));
+
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<Throwable> result = new AtomicReference<>();
+        Thread t = new Thread(() -> {
+            try {
+                session.sessionSetup(null, null);
+            } catch (Throwable e) {
+                result.set(e);
+            } finally {
+                done.countDown();
+            }
+        });
+        t.start();
+        assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+
+        // logoff resets the state and wakes the waiter, which then runs its own setup
+        assertFalse(session.logoff(true, false));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(result.get() instanceof SmbException);
+        assertEquals(0, state.get());
+    }
+
+    @Test
+    @DisplayName("Writes are not replayed from a reused buffer when their channel fails")
+    void channelFailoverDoesNotReplayWrites() throws Exception {
+        SmbSessionImpl session = newSession();
+        SmbTransportImpl channelTransport = mock(SmbTransportImpl.class);
+        SmbChannel ch = new SmbChannel(channelTransport, null);
+
+        byte[] data = new byte[] { 1, 2, 3, 4 };
+        Smb2WriteRequest request = new Smb2WriteRequest(configuration, new byte[16]);
+        request.setData(data, 0, data.length);
+        Smb2WriteResponse response = new Smb2WriteResponse(configuration);
+        Field f = SmbSessionImpl.class.getDeclaredField("channels");
+        f.setAccessible(true);
+        ((SmbChannelManager) f.get(session)).track(response, ch);
+
+        SmbException failure = new SmbException("Connection reset");
+        when(channelTransport.waitForResponse(request, response)).thenAnswer(inv -> {
+            // the caller already reused its buffer while the write was in flight
+            data[0] = 42;
+            when(channelTransport.isDisconnected()).thenReturn(true);
+            throw failure;
+        });
+
+        SmbException e = assertThrows(SmbException.class, () -> session.waitForResponse(request, response));
+        assertSame(failure, e.getCause());
+        assertTrue(ch.isFailed());
+        verify(transport, never()).send(any(), any(), any());
+        verify(transport, never()).sendAsync(any(), any());
+    }
 }
@@ -14,8 +14,12 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.lang.reflect.Field;
 import java.net.Socket;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.codelibs.jcifs.smb.Address;
@@ -30,8 +34,14 @@ import org.codelibs.jcifs.smb.internal.SMBSigningDigest;
 import org.codelibs.jcifs.smb.internal.SmbNegotiationResponse;
 import org.codelibs.jcifs.smb.internal.smb1.com.ServerData;
 import org.codelibs.jcifs.smb.internal.smb1.com.SmbComNegotiateResponse;
+import org.codelibs.jcifs.smb.internal.smb2.Smb2CompressionContext;
 import org.codelibs.jcifs.smb.internal.smb2.Smb2Constants;
 import org.codelibs.jcifs.smb.internal.smb2.Smb2EncryptionContext;
+import org.codelibs.jcifs.smb.internal.smb2.Smb2TransformHeader;
+import org.codelibs.jcifs.smb.internal.util.SMBUtil;
+import org.codelibs.jcifs.smb.internal.smb2.io.Smb2ReadRequest;
+import org.codelibs.jcifs.smb.internal.smb2.io.Smb2WriteRequest;
+import org.codelibs.jcifs.smb.internal.smb2.nego.CompressionNegotiateContext;
 import org.codelibs.jcifs.smb.internal.smb2.nego.EncryptionNegotiateContext;
 import org.codelibs.jcifs.smb.internal.smb2.nego.Smb2NegotiateResponse;
 import org.codelibs.jcifs.smb.util.transport.Request;
@@ -440,4 +450,139 @@ class SmbTransportImplTest {
         assertTrue(s.contains("state="));
         assertTrue(s.contains(":445"));
     }
+
+    @Test
+    @DisplayName("Session setup latency is accumulated per transport")
+    void sessionSetupMetrics() {
+        assertEquals(0, transport.getSessionSetupCount());
+        transport.sessionSetupCompleted(100);
+        transport.sessionSetupCompleted(300);
+        transport.sessionSetupCompleted(200);
+        // available through the public interface
+        SmbTransport pub = transport;
+        assertEquals(3, pub.getSessionSetupCount());
+        assertEquals(600, pub.getSessionSetupTime());
+        assertEquals(300, pub.getSessionSetupTimeMax());
+    }
+
+    @Nested
+    @MockitoSettings(strictness = Strictness.LENIENT)
+    class EncryptedReceive {
+
+        @BeforeEach
+        void setUpEncryption() {
+            when(ctx.getBufferCache()).thenReturn(new BufferCacheImpl(4, 0x10000));
+            when(cfg.getMaximumBufferSize()).thenReturn(0x10000);
+        }
+
+        @Test
+        @DisplayName("Messages filling the top of a buffer size class leave room for the authentication tag")
+        @SuppressWarnings("unchecked")
+        void receiveAtSizeClassBoundary() throws Exception {
+            final byte[] c2s = new byte[16];
+            final byte[] s2c = new byte[16];
+            Arrays.fill(s2c, (byte) 1);
+            final long sessId = 0x1234L;
+            final Smb2EncryptionContext client =
+                    new Smb2EncryptionContext(EncryptionNegotiateContext.CIPHER_AES128_GCM, DialectVersion.SMB311, c2s, s2c);
+            final Smb2EncryptionContext server =
+                    new Smb2EncryptionContext(EncryptionNegotiateContext.CIPHER_AES128_GCM, DialectVersion.SMB311, s2c, c2s);
+            ((Map<Long, Smb2EncryptionContext>) getField(transport, "encryptionContexts")).put(sessId, client);
+
+            final int msgSize = 4096 - Smb2EncryptionContext.AUTH_TAG_LENGTH + 1;
+            final byte[] msg = new byte[msgSize];
+            msg[0] = (byte) 0xFE;
+            msg[1] = 'S';
+            msg[2] = 'M';
+            msg[3] = 'B';
+            SMBUtil.writeInt8(7, msg, 24);
+            for (int i = Smb2Constants.SMB2_HEADER_LENGTH; i < msg.length; i++) {
+                msg[i] = (byte) i;
+            }
+
+            final byte[] frame = new byte[4 + Smb2EncryptionContext.ENCRYPTION_OVERHEAD + msgSize];
+            System.arraycopy(msg, 0, frame, 4 + Smb2TransformHeader.TRANSFORM_HEADER_SIZE, msgSize);
+            final int n = server.encrypt(frame, 4, msgSize, sessId);
+            frame[1] = (byte) (n >> 16);
+            frame[2] = (byte) (n >> 8);
+            frame[3] = (byte) n;
+            setField(transport, "in", new ByteArrayInputStream(frame, 0, 4 + n));
+
+            assertEquals(7L, transport.peekKey());
+            assertEquals(msgSize, getField(transport, "rbufLen"));
+            assertEquals(msgSize + Smb2EncryptionContext.AUTH_TAG_LENGTH, getField(transport, "rbufDirty"));
+            final byte[] rbuf = (byte[]) getField(transport, "rbuf");
+            assertArrayEquals(msg, Arrays.copyOf(rbuf, msgSize));
+        }
+    }
+
+    @Nested
+    @MockitoSettings(strictness = Strictness.LENIENT)
+    class Compression {
+
+        private final Smb2CompressionContext comp = new Smb2CompressionContext(
+                new int[] { CompressionNegotiateContext.COMPRESSION_LZ77, CompressionNegotiateContext.COMPRESSION_PATTERN_V1 }, true, 1024);
+
+        @BeforeEach
+        void setUpCompression() {
+            when(ctx.getBufferCache()).thenReturn(new BufferCacheImpl(4, 0x10000));
+            when(cfg.getMaximumBufferSize()).thenReturn(0x10000);
+            setField(transport, "smb2", true);
+            setField(transport, "compressionContext", comp);
+        }
+
+        @Test
+        @DisplayName("Compressed messages are decompressed and presented like plain ones")
+        void receiveCompressed() throws Exception {
+            final byte[] msg = new byte[Smb2Constants.SMB2_HEADER_LENGTH + 8000];
+            msg[0] = (byte) 0xFE;
+            msg[1] = 'S';
+            msg[2] = 'M';
+            msg[3] = 'B';
+            SMBUtil.writeInt8(42, msg, 24);
+            for (int i = Smb2Constants.SMB2_HEADER_LENGTH; i < msg.length; i++) {
+                msg[i] = (byte) ('a' + i % 7);
+            }
+
+            final byte[] frame = new byte[4 + Smb2CompressionContext.COMPRESSION_HEADER_SIZE + msg.length];
+            System.arraycopy(msg, 0, frame, 4 + Smb2CompressionContext.COMPRESSION_HEADER_SIZE, Smb2Constants.SMB2_HEADER_LENGTH);
+            final int n = comp.compress(frame, 4, Smb2Constants.SMB2_HEADER_LENGTH, msg, Smb2Constants.SMB2_HEADER_LENGTH,
+                    msg.length - Smb2Constants.SMB2_HEADER_LENGTH, frame.length);
+            assertTrue(n > 0);
+            frame[1] = (byte) (n >> 16);
+            frame[2] = (byte) (n >> 8);
+            frame[3] = (byte) n;
+            setField(transport, "in", new ByteArrayInputStream(frame, 0, 4 + n));
+
+            assertEquals(42L, transport.peekKey());
+            assertEquals(msg.length, getField(transport, "rbufLen"));
+            final byte[] rbuf = (byte[]) getField(transport, "rbuf");
+            assertArrayEquals(msg, Arrays.copyOf(rbuf, msg.length));
+        }
+
+        @Test
+        @DisplayName("Large writes are sent compressed and large reads request compression")
+        void sendCompressed() throws Exception {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            setField(transport, "out", out);
+
+            final byte[] data = new byte[16384];
+            Arrays.fill(data, 8192, data.length, (byte) 'x');
+            final Smb2WriteRequest wr = new Smb2WriteRequest(cfg, new byte[16]);
+            wr.setData(data, 0, data.length);
+            transport.doSend(wr);
+
+            final byte[] sent = out.toByteArray();
+            assertTrue(sent.length < 200);
+            assertTrue(Smb2CompressionContext.isCompressed(sent, 4));
+            final byte[] msg = new byte[Smb2WriteRequest.OVERHEAD + data.length];
+            assertEquals(msg.length, Smb2CompressionContext.decompress(sent, 4, sent.length - 4, msg, 0));
+            assertArrayEquals(data, Arrays.copyOfRange(msg, Smb2WriteRequest.OVERHEAD, msg.length));
+
+            final Smb2ReadRequest rr = new Smb2ReadRequest(cfg, new byte[16], new byte[4096], 0);
+            rr.setReadLength(4096);
+            transport.doSend(rr);
+            assertEquals(Smb2ReadRequest.SMB2_READFLAG_REQUEST_COMPRESSED, rr.getReadFlags());
+        }
+    }
 }
@@ -18,6 +18,12 @@ package org.codelibs.jcifs.smb.impl;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
@@ -28,6 +34,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -36,6 +43,7 @@ import org.codelibs.jcifs.smb.CIFSContext;
 import org.codelibs.jcifs.smb.Configuration;
 import org.codelibs.jcifs.smb.Credentials;
 import org.codelibs.jcifs.smb.NameServiceClient;
+import org.codelibs.jcifs.smb.internal.SmbNegotiationResponse;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -126,6 +134,45 @@ class SmbTransportPoolConcurrencyTest {
         assertFalse(transports.isEmpty(), "Transports should be created");
     }
 
+    @Test
+    @DisplayName("Should open a single connection when concurrent requests miss on the same server")
+    void testConcurrentMissCreatesOneTransport() throws Exception {
+        SmbTransportPoolImpl spyPool = spy(pool);
+        int threadCount = 8;
+        CountDownLatch bothCreating = new CountDownLatch(2);
+        AtomicInteger created = new AtomicInteger();
+        doAnswer(inv -> {
+            created.incrementAndGet();
+            // give a second caller the chance to miss as well before this transport is added
+            bothCreating.countDown();
+            bothCreating.await(500, TimeUnit.MILLISECONDS);
+            SmbTransportImpl t = mock(SmbTransportImpl.class);
+            SmbNegotiationResponse nego = mock(SmbNegotiationResponse.class);
+            when(t.matches(any(), anyInt(), any(), anyInt(), any())).thenReturn(true);
+            when(t.getNegotiateResponse()).thenReturn(nego);
+            when(nego.canReuse(any(), anyBoolean())).thenReturn(true);
+            when(t.acquire()).thenReturn(t);
+            return t;
+        }).when(spyPool).newTransport(any(), any(), anyInt(), any(), anyInt(), anyBoolean());
+
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Future<SmbTransportImpl>> results = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            results.add(executor.submit(() -> {
+                startLatch.await();
+                return spyPool.getSmbTransport(ctx, address, 445, false);
+            }));
+        }
+        startLatch.countDown();
+
+        Set<SmbTransportImpl> transports = ConcurrentHashMap.newKeySet();
+        for (Future<SmbTransportImpl> f : results) {
+            transports.add(f.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, created.get(), "Only one connection should be opened");
+        assertEquals(1, transports.size());
+    }
+
     @RepeatedTest(5)
     @DisplayName("Should maintain pool integrity under concurrent add/remove operations")
     void testConcurrentAddRemove() throws Exception {
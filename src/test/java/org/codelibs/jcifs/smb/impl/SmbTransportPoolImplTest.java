@@ -24,6 +24,7 @@ import java.lang.reflect.Field;
 import java.net.UnknownHostException;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.codelibs.jcifs.smb.Address;
 import org.codelibs.jcifs.smb.CIFSContext;
@@ -167,20 +168,21 @@ class SmbTransportPoolImplTest {
         Field connectionsField = SmbTransportPoolImpl.class.getDeclaredField("connections");
         connectionsField.setAccessible(true);
         @SuppressWarnings("unchecked")
-        List<SmbTransportImpl> connections = (List<SmbTransportImpl>) connectionsField.get(pool);
+        Map<SmbTransportImpl, Object> connections = (Map<SmbTransportImpl, Object>) connectionsField.get(pool);
 
         Field nonPooledField = SmbTransportPoolImpl.class.getDeclaredField("nonPooledConnections");
         nonPooledField.setAccessible(true);
         @SuppressWarnings("unchecked")
-        List<SmbTransportImpl> nonPooledConnections = (List<SmbTransportImpl>) nonPooledField.get(pool);
+        Set<SmbTransportImpl> nonPooledConnections = (Set<SmbTransportImpl>) nonPooledField.get(pool);
 
         // Create spies
         SmbTransportImpl pooledSpy = spy(pooled);
         SmbTransportImpl nonPooledSpy = spy(nonPooled);
 
         // Replace with spies
-        connections.set(connections.indexOf(pooled), pooledSpy);
-        nonPooledConnections.set(nonPooledConnections.indexOf(nonPooled), nonPooledSpy);
+        connections.put(pooledSpy, connections.remove(pooled));
+        nonPooledConnections.remove(nonPooled);
+        nonPooledConnections.add(nonPooledSpy);
 
         // Mock disconnect behavior
         when(pooledSpy.disconnect(false, false)).thenReturn(true); // In use
@@ -442,4 +444,79 @@ class SmbTransportPoolImplTest {
         assertEquals(3, failCounts.get("192.168.1.1"));
         assertEquals(1, failCounts.get("192.168.1.2"));
     }
-}
\ No newline at end of file
+
+    /**
+     * Replace a pooled transport with a spy that appears connected and reusable
+     */
+    @SuppressWarnings("unchecked")
+    private SmbTransportImpl reusableSpy(SmbTransportImpl conn, int sessions) throws Exception {
+        when(negotiationResponse.isSigningRequired()).thenReturn(false);
+        when(negotiationResponse.canReuse(any(CIFSContext.class), anyBoolean())).thenReturn(true);
+        SmbTransportImpl s = spy(conn);
+        doReturn(false).when(s).isFailed();
+        doReturn(false).when(s).isSigningEnforced();
+        doReturn(negotiationResponse).when(s).getNegotiateResponse();
+        doReturn(sessions).when(s).getNumSessions();
+
+        Field connectionsField = SmbTransportPoolImpl.class.getDeclaredField("connections");
+        connectionsField.setAccessible(true);
+        Map<SmbTransportImpl, Object> connections = (Map<SmbTransportImpl, Object>) connectionsField.get(pool);
+        connections.put(s, connections.remove(conn));
+
+        Field indexField = SmbTransportPoolImpl.class.getDeclaredField("index");
+        indexField.setAccessible(true);
+        for (List<SmbTransportImpl> l : ((Map<Object, List<SmbTransportImpl>>) indexField.get(pool)).values()) {
+            int i = l.indexOf(conn);
+            if (i >= 0) {
+                l.set(i, s);
+            }
+        }
+        return s;
+    }
+
+    @Test
+    @DisplayName("Should reuse a matching connection and keep different servers apart")
+    void testReuseByServer() throws Exception {
+        SmbTransportImpl first = reusableSpy(pool.getSmbTransport(ctx, address, 445, false), 0);
+
+        assertSame(first, pool.getSmbTransport(ctx, address, 445, false));
+
+        Address other = mock(Address.class);
+        when(other.getHostName()).thenReturn("other.host");
+        when(other.getHostAddress()).thenReturn("192.168.1.101");
+        assertNotSame(first, pool.getSmbTransport(ctx, other, 445, false));
+    }
+
+    @Test
+    @DisplayName("Should share the least loaded connection once the server connection limit is reached")
+    void testServerConnectionLimit() throws Exception {
+        when(config.getSessionLimit()).thenReturn(2);
+        SmbTransportImpl full = reusableSpy(pool.getSmbTransport(ctx, address, 445, false), 2);
+
+        // no limit, a new connection is opened
+        SmbTransportImpl second = pool.getSmbTransport(ctx, address, 445, false);
+        assertNotSame(full, second);
+        pool.removeTransport(second);
+
+        when(config.getServerConnectionLimit()).thenReturn(1);
+        assertSame(full, pool.getSmbTransport(ctx, address, 445, false));
+    }
+
+    @Test
+    @DisplayName("Should sweep transports that are neither connected nor in use")
+    void testSweep() throws Exception {
+        SmbTransportImpl unused = pool.getSmbTransport(ctx, address, 445, false);
+        SmbTransportImpl inUse = pool.getSmbTransport(ctx, address, 445, false);
+        SmbTransportImpl nonPooled = pool.getSmbTransport(ctx, address, 445, true);
+        unused.release();
+        nonPooled.release();
+
+        pool.sweep();
+
+        assertFalse(pool.contains(unused), "Unused transport should be swept");
+        assertTrue(pool.contains(inUse), "Acquired transport should stay in the pool");
+        Field nonPooledField = SmbTransportPoolImpl.class.getDeclaredField("nonPooledConnections");
+        nonPooledField.setAccessible(true);
+        assertFalse(((Set<?>) nonPooledField.get(pool)).contains(nonPooled));
+    }
+}
@@ -0,0 +1,120 @@
+package org.codelibs.jcifs.smb.internal.smb2;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.codelibs.jcifs.smb.internal.SMBProtocolDecodingException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Lz77Codec Tests")
+class Lz77CodecTest {
+
+    private static final byte[] ALPHABET = "abcdefghijklmnopqrstuvwxyz".getBytes(StandardCharsets.US_ASCII);
+
+    // [MS-XCA] 3.1 example 1
+    private static final byte[] ALPHABET_COMPRESSED = concat(new byte[] { 0x3f, 0, 0, 0 }, ALPHABET);
+
+    // [MS-XCA] 3.1 example 2, "abc" repeated 100 times
+    private static final byte[] ABC_COMPRESSED =
+            { (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x1f, 0x61, 0x62, 0x63, 0x17, 0x00, 0x0f, (byte) 0xff, 0x26, 0x01 };
+
+    private static byte[] concat(final byte[] a, final byte[] b) {
+        final byte[] r = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, r, a.length, b.length);
+        return r;
+    }
+
+    private static byte[] abc() {
+        final byte[] r = new byte[300];
+        for (int i = 0; i < r.length; i++) {
+            r[i] = (byte) ('a' + i % 3);
+        }
+        return r;
+    }
+
+    private static byte[] compress(final byte[] data) {
+        final byte[] out = new byte[data.length * 2 + 64];
+        final int n = new Lz77Codec().compress(data, 0, data.length, out, 0, out.length);
+        assertTrue(n > 0);
+        return Arrays.copyOf(out, n);
+    }
+
+    private static byte[] decompress(final byte[] data, final int size) throws SMBProtocolDecodingException {
+        final byte[] out = new byte[size];
+        assertEquals(size, Lz77Codec.decompress(data, 0, data.length, out, 0, out.length));
+        return out;
+    }
+
+    @Test
+    @DisplayName("Should produce the reference encoding for literals only")
+    void testCompressLiterals() {
+        assertArrayEquals(ALPHABET_COMPRESSED, compress(ALPHABET));
+    }
+
+    @Test
+    @DisplayName("Should produce the reference encoding for a long overlapping match")
+    void testCompressLongMatch() {
+        assertArrayEquals(ABC_COMPRESSED, compress(abc()));
+    }
+
+    @Test
+    @DisplayName("Should decode the reference vectors")
+    void testDecompressReference() throws Exception {
+        assertArrayEquals(ALPHABET, decompress(ALPHABET_COMPRESSED, ALPHABET.length));
+        assertArrayEquals(abc(), decompress(ABC_COMPRESSED, 300));
+    }
+
+    @Test
+    @DisplayName("Should round trip text, random data and very long runs")
+    void testRoundTrip() throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append("2025-01-01 12:00:").append(i % 60).append(" INFO request ").append(i).append(" completed\n");
+        }
+        final byte[] text = sb.toString().getBytes(StandardCharsets.US_ASCII);
+        final byte[] ctext = compress(text);
+        assertTrue(ctext.length * 5 < text.length);
+        assertArrayEquals(text, decompress(ctext, text.length));
+
+        final byte[] random = new byte[10000];
+        new Random(42).nextBytes(random);
+        assertArrayEquals(random, decompress(compress(random), random.length));
+
+        // needs the 32 bit match length encoding
+        final byte[] zeros = new byte[200000];
+        zeros[100] = 1;
+        final byte[] czeros = compress(zeros);
+        assertTrue(czeros.length < 64);
+        assertArrayEquals(zeros, decompress(czeros, zeros.length));
+
+        assertArrayEquals(new byte[0], decompress(compress(new byte[0]), 0));
+    }
+
+    @Test
+    @DisplayName("Should report output that does not fit")
+    void testCompressLimit() {
+        final byte[] random = new byte[1000];
+        new Random(1).nextBytes(random);
+        assertEquals(-1, new Lz77Codec().compress(random, 0, random.length, new byte[2000], 0, 999));
+    }
+
+    @Test
+    @DisplayName("Should reject malformed input")
+    void testDecompressInvalid() {
+        // literal flags without literals
+        assertThrows(SMBProtocolDecodingException.class, () -> Lz77Codec.decompress(new byte[] { 0, 0, 0, 0 }, 0, 4, new byte[10], 0, 10));
+        // match before any output
+        final byte[] badOffset = { 0, 0, 0, (byte) 0x80, 0x08, 0x00 };
+        assertThrows(SMBProtocolDecodingException.class, () -> Lz77Codec.decompress(badOffset, 0, badOffset.length, new byte[10], 0, 10));
+        // output larger than the destination
+        assertThrows(SMBProtocolDecodingException.class,
+                () -> Lz77Codec.decompress(ABC_COMPRESSED, 0, ABC_COMPRESSED.length, new byte[100], 0, 100));
+    }
+}
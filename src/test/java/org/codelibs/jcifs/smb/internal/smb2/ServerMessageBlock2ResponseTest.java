@@ -246,15 +246,11 @@ class ServerMessageBlock2ResponseTest {
             CountDownLatch latch = new CountDownLatch(1);
 
             Thread waiter = new Thread(() -> {
-                synchronized (response) {
-                    try {
-                        if (!response.isReceived()) {
-                            response.wait(1000);
-                        }
-                        latch.countDown();
-                    } catch (InterruptedException e) {
-                        // Ignore
-                    }
+                try {
+                    response.awaitSignal(1000);
+                    latch.countDown();
+                } catch (InterruptedException e) {
+                    // Ignore
                 }
             });
 
@@ -276,13 +272,11 @@ class ServerMessageBlock2ResponseTest {
             CountDownLatch latch = new CountDownLatch(1);
 
             Thread waiter = new Thread(() -> {
-                synchronized (response) {
-                    try {
-                        response.wait(100);
-                        latch.countDown();
-                    } catch (InterruptedException e) {
-                        // Ignore
-                    }
+                try {
+                    response.awaitSignal(100);
+                    latch.countDown();
+                } catch (InterruptedException e) {
+                    // Ignore
                 }
             });
 
@@ -313,15 +307,11 @@ class ServerMessageBlock2ResponseTest {
             CountDownLatch latch = new CountDownLatch(1);
 
             Thread waiter = new Thread(() -> {
-                synchronized (response) {
-                    try {
-                        if (!response.isError()) {
-                            response.wait(1000);
-                        }
-                        latch.countDown();
-                    } catch (InterruptedException e) {
-                        // Ignore
-                    }
+                try {
+                    response.awaitSignal(1000);
+                    latch.countDown();
+                } catch (InterruptedException e) {
+                    // Ignore
                 }
             });
 
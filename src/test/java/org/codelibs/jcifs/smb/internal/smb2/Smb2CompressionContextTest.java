@@ -0,0 +1,136 @@
+package org.codelibs.jcifs.smb.internal.smb2;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.codelibs.jcifs.smb.internal.SMBProtocolDecodingException;
+import org.codelibs.jcifs.smb.internal.smb2.nego.CompressionNegotiateContext;
+import org.codelibs.jcifs.smb.internal.util.SMBUtil;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Smb2CompressionContext Tests")
+class Smb2CompressionContextTest {
+
+    private static final int[] ALGORITHMS = { CompressionNegotiateContext.COMPRESSION_LZ77, CompressionNegotiateContext.COMPRESSION_PATTERN_V1 };
+    private static final int OFF = 20;
+
+    private static byte[] prefix() {
+        final byte[] p = new byte[Smb2Constants.SMB2_HEADER_LENGTH + 48];
+        p[0] = (byte) 0xFE;
+        p[1] = 'S';
+        p[2] = 'M';
+        p[3] = 'B';
+        for (int i = 4; i < p.length; i++) {
+            p[i] = (byte) i;
+        }
+        return p;
+    }
+
+    private static byte[] text(final int len) {
+        final byte[] line = "INFO [main] org.example.Service - request handled in 12ms\n".getBytes(StandardCharsets.US_ASCII);
+        final byte[] r = new byte[len];
+        for (int i = 0; i < len; i++) {
+            r[i] = line[i % line.length];
+        }
+        return r;
+    }
+
+    private static byte[] roundTrip(final Smb2CompressionContext ctx, final byte[] data, final int[] compressedLength) throws Exception {
+        final byte[] p = prefix();
+        final byte[] buffer = new byte[OFF + Smb2CompressionContext.COMPRESSION_HEADER_SIZE + p.length + data.length];
+        System.arraycopy(p, 0, buffer, OFF + Smb2CompressionContext.COMPRESSION_HEADER_SIZE, p.length);
+        final int n = ctx.compress(buffer, OFF, p.length, data, 0, data.length, buffer.length);
+        assertTrue(n > 0);
+        assertTrue(n < p.length + data.length);
+        compressedLength[0] = n;
+
+        assertEquals(p.length + data.length, Smb2CompressionContext.getOriginalSize(buffer, OFF, n));
+        final byte[] out = new byte[p.length + data.length];
+        assertEquals(out.length, Smb2CompressionContext.decompress(buffer, OFF, n, out, 0));
+        assertArrayEquals(p, Arrays.copyOf(out, p.length));
+        return Arrays.copyOfRange(out, p.length, out.length);
+    }
+
+    @Test
+    @DisplayName("Chained compression should round trip with pattern runs at both ends")
+    void testChainedRoundTrip() throws Exception {
+        final byte[] data = new byte[70000];
+        System.arraycopy(text(30000), 0, data, 20000, 30000);
+        final int[] n = new int[1];
+        final Smb2CompressionContext ctx = new Smb2CompressionContext(ALGORITHMS, true, 4096);
+        assertArrayEquals(data, roundTrip(ctx, data, n));
+        assertTrue(n[0] < 2000);
+    }
+
+    @Test
+    @DisplayName("Uniform data should be sent as a single pattern")
+    void testChainedPatternOnly() throws Exception {
+        final byte[] data = new byte[65536];
+        Arrays.fill(data, (byte) 0x55);
+        final int[] n = new int[1];
+        assertArrayEquals(data, roundTrip(new Smb2CompressionContext(ALGORITHMS, true, 4096), data, n));
+        assertEquals(Smb2CompressionContext.COMPRESSION_HEADER_SIZE + prefix().length + 16, n[0]);
+    }
+
+    @Test
+    @DisplayName("Unchained compression should round trip and keep the prefix uncompressed")
+    void testUnchainedRoundTrip() throws Exception {
+        final byte[] data = text(65536);
+        final int[] n = new int[1];
+        final Smb2CompressionContext ctx = new Smb2CompressionContext(ALGORITHMS, false, 4096);
+        assertFalse(ctx.isChained());
+        assertArrayEquals(data, roundTrip(ctx, data, n));
+        assertTrue(n[0] * 10 < data.length);
+    }
+
+    @Test
+    @DisplayName("Incompressible data should not be compressed")
+    void testIncompressible() {
+        final byte[] data = new byte[8192];
+        new Random(7).nextBytes(data);
+        final Smb2CompressionContext ctx = new Smb2CompressionContext(ALGORITHMS, true, 4096);
+        assertFalse(ctx.shouldCompress(data, 0, data.length));
+
+        final byte[] buffer = new byte[data.length + 200];
+        assertEquals(-1, ctx.compress(buffer, 0, 64, data, 0, data.length, buffer.length));
+    }
+
+    @Test
+    @DisplayName("Should only compress compressible data above the threshold")
+    void testShouldCompress() {
+        final Smb2CompressionContext ctx = new Smb2CompressionContext(ALGORITHMS, true, 4096);
+        assertTrue(ctx.shouldCompress(text(100000), 0, 100000));
+        assertTrue(ctx.shouldCompress(new byte[4096], 0, 4096));
+        assertFalse(ctx.shouldCompress(text(4095), 0, 4095));
+        assertFalse(new Smb2CompressionContext(new int[] { CompressionNegotiateContext.COMPRESSION_LZ77_HUFFMAN }, true, 0)
+                .shouldCompress(text(8192), 0, 8192));
+    }
+
+    @Test
+    @DisplayName("Should reject unsupported algorithms and inconsistent sizes")
+    void testDecompressInvalid() {
+        final byte[] msg = new byte[32];
+        SMBUtil.writeInt4(0x424D53FC, msg, 0);
+        SMBUtil.writeInt4(8, msg, 4);
+        SMBUtil.writeInt2(CompressionNegotiateContext.COMPRESSION_LZ77_HUFFMAN, msg, 8);
+        SMBUtil.writeInt2(Smb2CompressionContext.COMPRESSION_FLAG_CHAINED, msg, 10);
+        SMBUtil.writeInt4(12, msg, 12);
+        assertThrows(SMBProtocolDecodingException.class, () -> Smb2CompressionContext.decompress(msg, 0, 28, new byte[8], 0));
+
+        // uncompressed payload shorter than the announced size
+        SMBUtil.writeInt2(CompressionNegotiateContext.COMPRESSION_NONE, msg, 8);
+        SMBUtil.writeInt4(4, msg, 12);
+        assertThrows(SMBProtocolDecodingException.class, () -> Smb2CompressionContext.decompress(msg, 0, 20, new byte[8], 0));
+
+        // not a compression transform header
+        assertThrows(SMBProtocolDecodingException.class, () -> Smb2CompressionContext.decompress(new byte[32], 0, 32, new byte[8], 0));
+    }
+}
@@ -1,5 +1,6 @@
 package org.codelibs.jcifs.smb.internal.smb2;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -9,10 +10,14 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.security.SecureRandom;
 
+import org.codelibs.jcifs.smb.CIFSException;
 import org.codelibs.jcifs.smb.DialectVersion;
+import org.codelibs.jcifs.smb.internal.util.SMBUtil;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
 /**
  * Test class for Smb2EncryptionContext.
@@ -206,6 +211,68 @@ class Smb2EncryptionContextTest {
         assertEquals(count, nonceSet.size(), "All generated nonces should be unique");
     }
 
+    @ParameterizedTest
+    @ValueSource(ints = { Smb2EncryptionContext.CIPHER_AES_128_CCM, Smb2EncryptionContext.CIPHER_AES_128_GCM })
+    @DisplayName("Should encrypt and decrypt in place")
+    void testInPlaceRoundTrip(int cipherId) throws CIFSException {
+        // Given
+        Smb2EncryptionContext client = new Smb2EncryptionContext(cipherId, DialectVersion.SMB311, testEncryptionKey, testDecryptionKey);
+        Smb2EncryptionContext server = new Smb2EncryptionContext(cipherId, DialectVersion.SMB311, testDecryptionKey, testEncryptionKey);
+        byte[] plain = new byte[300];
+        new SecureRandom().nextBytes(plain);
+        byte[] buffer = new byte[8 + Smb2EncryptionContext.ENCRYPTION_OVERHEAD + plain.length];
+        System.arraycopy(plain, 0, buffer, 8 + 52, plain.length);
+
+        // When
+        int n = client.encrypt(buffer, 8, plain.length, 0x1122334455667788L);
+
+        // Then
+        assertEquals(52 + plain.length, n, "Transform header is prepended");
+        assertArrayEquals(new byte[] { (byte) 0xFD, 'S', 'M', 'B' }, java.util.Arrays.copyOfRange(buffer, 8, 12), "Transform protocol id");
+        assertEquals(plain.length, SMBUtil.readInt4(buffer, 8 + 36), "Original message size");
+        assertEquals(0x1122334455667788L, SMBUtil.readInt8(buffer, 8 + 44), "Session id");
+        assertFalse(java.util.Arrays.equals(plain, java.util.Arrays.copyOfRange(buffer, 60, 60 + plain.length)), "Data is encrypted");
+
+        byte[] header = java.util.Arrays.copyOfRange(buffer, 8, 60);
+        byte[] data = new byte[plain.length + Smb2EncryptionContext.AUTH_TAG_LENGTH];
+        System.arraycopy(buffer, 60, data, 0, plain.length);
+        assertEquals(plain.length, server.decrypt(header, 0, data, 0, plain.length));
+        assertArrayEquals(plain, java.util.Arrays.copyOf(data, plain.length));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { Smb2EncryptionContext.CIPHER_AES_128_CCM, Smb2EncryptionContext.CIPHER_AES_128_GCM })
+    @DisplayName("Should reject tampered messages")
+    void testTamperedMessage(int cipherId) throws CIFSException {
+        // Given
+        Smb2EncryptionContext client = new Smb2EncryptionContext(cipherId, DialectVersion.SMB311, testEncryptionKey, testDecryptionKey);
+        Smb2EncryptionContext server = new Smb2EncryptionContext(cipherId, DialectVersion.SMB311, testDecryptionKey, testEncryptionKey);
+        byte[] message = new byte[128];
+        new SecureRandom().nextBytes(message);
+        byte[] encrypted = client.encryptMessage(message, 1);
+
+        // When
+        encrypted[encrypted.length - 1] ^= 1;
+
+        // Then
+        assertThrows(CIFSException.class, () -> server.decryptMessage(encrypted));
+    }
+
+    @Test
+    @DisplayName("Should use distinct nonces for consecutive messages")
+    void testDistinctNonces() throws CIFSException {
+        // Given
+        byte[] message = new byte[64];
+
+        // When
+        byte[] first = encryptionContext.encryptMessage(message, 1);
+        byte[] second = encryptionContext.encryptMessage(message, 1);
+
+        // Then
+        assertFalse(java.util.Arrays.equals(java.util.Arrays.copyOfRange(first, 20, 36), java.util.Arrays.copyOfRange(second, 20, 36)));
+        assertFalse(java.util.Arrays.equals(first, second));
+    }
+
     private String bytesToHex(byte[] bytes) {
         StringBuilder result = new StringBuilder();
         for (byte b : bytes) {
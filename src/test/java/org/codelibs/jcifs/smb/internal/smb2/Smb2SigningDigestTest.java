@@ -1,5 +1,6 @@
 package org.codelibs.jcifs.smb.internal.smb2;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -14,11 +15,14 @@ import java.security.GeneralSecurityException;
 import java.security.Security;
 import java.util.Arrays;
 
+import javax.crypto.Cipher;
 import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.codelibs.jcifs.smb.internal.CommonServerMessageBlock;
+import org.codelibs.jcifs.smb.internal.smb2.nego.SigningNegotiateContext;
 import org.codelibs.jcifs.smb.internal.util.SMBUtil;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
@@ -53,6 +57,125 @@ class Smb2SigningDigestTest {
         Arrays.fill(preauthIntegrityHash, (byte) 0xBB);
     }
 
+    @Nested
+    @DisplayName("AES-GMAC Tests")
+    class GmacTests {
+
+        private Smb2SigningDigest digest;
+        private byte[] signingKey;
+
+        @BeforeEach
+        void setup() throws GeneralSecurityException {
+            digest = new Smb2SigningDigest(sessionKey, Smb2Constants.SMB2_DIALECT_0311, preauthIntegrityHash,
+                    SigningNegotiateContext.SIGNING_AES_GMAC);
+            signingKey = Smb3KeyDerivation.deriveSigningKey(Smb2Constants.SMB2_DIALECT_0311, sessionKey, preauthIntegrityHash);
+        }
+
+        private byte[] message(final long messageId, final int flags, final int command) {
+            byte[] data = new byte[128];
+            for (int i = 64; i < data.length; i++) {
+                data[i] = (byte) i;
+            }
+            SMBUtil.writeInt2(command, data, 12);
+            SMBUtil.writeInt4(flags, data, 16);
+            SMBUtil.writeInt8(messageId, data, 24);
+            return data;
+        }
+
+        @Test
+        @DisplayName("Should use GMAC only for SMB 3.1.1 when negotiated")
+        void testAlgorithmSelection() throws GeneralSecurityException {
+            assertEquals(SigningNegotiateContext.SIGNING_AES_GMAC, digest.getSigningAlgorithm());
+            assertEquals(SigningNegotiateContext.SIGNING_AES_CMAC,
+                    new Smb2SigningDigest(sessionKey, Smb2Constants.SMB2_DIALECT_0311, preauthIntegrityHash, -1).getSigningAlgorithm());
+            assertEquals(SigningNegotiateContext.SIGNING_HMAC_SHA256,
+                    new Smb2SigningDigest(sessionKey, Smb2Constants.SMB2_DIALECT_0210, null, SigningNegotiateContext.SIGNING_AES_GMAC)
+                            .getSigningAlgorithm());
+        }
+
+        private byte[] expectedTag(final byte[] signed, final long messageId, final int role) throws Exception {
+            byte[] nonce = new byte[12];
+            SMBUtil.writeInt8(messageId, nonce, 0);
+            SMBUtil.writeInt4(role, nonce, 8);
+            byte[] aad = signed.clone();
+            Arrays.fill(aad, SIGNATURE_OFFSET, SIGNATURE_OFFSET + SIGNATURE_LENGTH, (byte) 0);
+            Cipher c = Cipher.getInstance("AES/GCM/NoPadding");
+            c.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(signingKey, "AES"), new GCMParameterSpec(128, nonce));
+            c.updateAAD(aad);
+            return c.doFinal();
+        }
+
+        private byte[] signature(final byte[] data) {
+            return Arrays.copyOfRange(data, SIGNATURE_OFFSET, SIGNATURE_OFFSET + SIGNATURE_LENGTH);
+        }
+
+        @Test
+        @DisplayName("Signature should be the GCM tag over the message with a nonce built from the header")
+        void testSignatureMatchesGcmTag() throws Exception {
+            byte[] data = message(0x1122334455L, ServerMessageBlock2.SMB2_FLAGS_SERVER_TO_REDIR, 0x8);
+            digest.sign(data, 0, data.length, null, null);
+            assertArrayEquals(expectedTag(data, 0x1122334455L, 0x1), signature(data));
+        }
+
+        @Test
+        @DisplayName("Cancel requests set the cancel bit of the nonce")
+        void testCancelNonce() throws Exception {
+            byte[] data = message(7, 0, ServerMessageBlock2.SMB2_CANCEL);
+            digest.sign(data, 0, data.length, null, null);
+            assertArrayEquals(expectedTag(data, 7, 0x2), signature(data));
+        }
+
+        @Test
+        @DisplayName("Signing the same message twice gives the same signature")
+        void testSignTwice() {
+            byte[] first = message(9, 0, 0x8);
+            byte[] second = message(9, 0, 0x8);
+            digest.sign(first, 0, first.length, null, null);
+            digest.sign(second, 0, second.length, null, null);
+            assertArrayEquals(signature(first), signature(second));
+        }
+
+        @Test
+        @DisplayName("Should verify its own signatures and reject other message ids")
+        void testRoundTrip() {
+            byte[] data = message(42, 0, 0x5);
+            digest.sign(data, 0, data.length, null, null);
+            assertFalse(digest.verify(data.clone(), 0, data.length, 0, null));
+
+            byte[] tampered = data.clone();
+            SMBUtil.writeInt8(43, tampered, 24);
+            assertTrue(digest.verify(tampered, 0, tampered.length, 0, null));
+        }
+
+        @Test
+        @DisplayName("Concurrent signing and verification produce consistent results")
+        void testConcurrent() throws Exception {
+            int threadCount = 8;
+            Thread[] threads = new Thread[threadCount];
+            boolean[] failed = new boolean[threadCount];
+            for (int t = 0; t < threadCount; t++) {
+                final int index = t;
+                threads[t] = new Thread(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        byte[] data = message(index * 1000L + i, 0, 0x8);
+                        digest.sign(data, 0, data.length, null, null);
+                        SMBUtil.writeInt4(ServerMessageBlock2.SMB2_FLAGS_SIGNED, data, 16);
+                        if (digest.verify(data, 0, data.length, 0, null)) {
+                            failed[index] = true;
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread t : threads) {
+                t.join();
+            }
+            for (boolean f : failed) {
+                assertFalse(f);
+            }
+        }
+    }
+
     @Nested
     @DisplayName("Constructor Tests")
     class ConstructorTests {
@@ -332,6 +455,28 @@ class Smb2SigningDigestTest {
             assertFalse(result, "Should return false for valid signature");
         }
 
+        @Test
+        @DisplayName("Should verify signature over a separately stored payload")
+        void testVerifySegmented() throws Exception {
+            SMBUtil.writeInt4(ServerMessageBlock2.SMB2_FLAGS_SIGNED, data, 16);
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(sessionKey, "HmacSHA256"));
+            for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+                data[SIGNATURE_OFFSET + i] = 0;
+            }
+            mac.update(data, 0, data.length);
+            System.arraycopy(mac.doFinal(), 0, data, SIGNATURE_OFFSET, SIGNATURE_LENGTH);
+
+            // split the message after the fixed part, moving the rest into a separate buffer
+            final int split = 80;
+            final byte[] payload = new byte[data.length - split + 3];
+            System.arraycopy(data, split, payload, 3, data.length - split);
+
+            assertFalse(digest.verify(data.clone(), 0, split, payload, 3, data.length - split));
+            payload[3] ^= 1;
+            assertTrue(digest.verify(data.clone(), 0, split, payload, 3, data.length - split));
+        }
+
         @Test
         @DisplayName("Should detect invalid signature")
         void testVerifyInvalidSignature() {
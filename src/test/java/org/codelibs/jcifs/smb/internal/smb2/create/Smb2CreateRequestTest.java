@@ -12,6 +12,10 @@ import java.nio.charset.StandardCharsets;
 import org.codelibs.jcifs.smb.CIFSContext;
 import org.codelibs.jcifs.smb.Configuration;
 import org.codelibs.jcifs.smb.internal.smb2.Smb2Constants;
+import org.codelibs.jcifs.smb.internal.smb2.lease.Smb2LeaseContext;
+import org.codelibs.jcifs.smb.internal.smb2.lease.Smb2LeaseKey;
+import org.codelibs.jcifs.smb.internal.smb2.lease.Smb2LeaseState;
+import org.codelibs.jcifs.smb.internal.util.SMBUtil;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -486,4 +490,35 @@ class Smb2CreateRequestTest {
         request.setPath("\\\\fourth\\path\\\\");
         assertEquals("\\\\fourth\\path\\", request.getPath());
     }
+
+    @Test
+    @DisplayName("Test create contexts are chained and sized correctly")
+    void testCreateContextEncoding() {
+        request = new Smb2CreateRequest(mockConfig, "test.txt");
+        final Smb2LeaseContext first = new Smb2LeaseContext(new Smb2LeaseKey(), Smb2LeaseState.SMB2_LEASE_READ_HANDLE, true);
+        final Smb2LeaseContext second = new Smb2LeaseContext(new Smb2LeaseKey(), Smb2LeaseState.SMB2_LEASE_READ_CACHING, false);
+        request.addCreateContext(first);
+        request.addCreateContext(second);
+
+        byte[] buffer = new byte[1024];
+        int bytesWritten = request.writeBytesWireFormat(buffer, 0);
+        assertTrue(bytesWritten + Smb2Constants.SMB2_HEADER_LENGTH <= request.size());
+
+        int contextsOffset = SMBUtil.readInt4(buffer, 48);
+        int contextsLength = SMBUtil.readInt4(buffer, 52);
+        assertEquals(0, contextsOffset % 8);
+
+        int next = SMBUtil.readInt4(buffer, contextsOffset);
+        assertEquals(80, next); // 24 byte header + 52 byte V2 data, padded to 8
+        assertEquals(16, SMBUtil.readInt2(buffer, contextsOffset + 4));
+        assertEquals(4, SMBUtil.readInt2(buffer, contextsOffset + 6));
+        assertEquals("RqLs", new String(buffer, contextsOffset + 16, 4, StandardCharsets.US_ASCII));
+        assertEquals(24, SMBUtil.readInt2(buffer, contextsOffset + 10));
+        assertEquals(Smb2LeaseContext.V2_SIZE, SMBUtil.readInt4(buffer, contextsOffset + 12));
+
+        int secondStart = contextsOffset + next;
+        assertEquals(0, SMBUtil.readInt4(buffer, secondStart));
+        assertEquals(Smb2LeaseContext.V1_SIZE, SMBUtil.readInt4(buffer, secondStart + 12));
+        assertEquals(secondStart + 24 + Smb2LeaseContext.V1_SIZE - contextsOffset, contextsLength);
+    }
 }
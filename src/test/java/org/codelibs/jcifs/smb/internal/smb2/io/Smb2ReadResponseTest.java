@@ -595,4 +595,55 @@ class Smb2ReadResponseTest extends BaseTest {
         assertEquals(dataOffsetFromHeader + 10 - bodyStart, bytesRead);
         assertEquals(10, response.getDataLength());
     }
-}
\ No newline at end of file
+
+    private static byte[] readResponseMessage(final int status, final int dataOffset, final int dataLength) {
+        final byte[] msg = new byte[dataOffset + dataLength];
+        System.arraycopy(new byte[] { (byte) 0xFE, 'S', 'M', 'B' }, 0, msg, 0, 4);
+        SMBUtil.writeInt2(64, msg, 4);
+        SMBUtil.writeInt4(status, msg, 8);
+        SMBUtil.writeInt2(0x0008, msg, 12);
+        final int bodyStart = Smb2Constants.SMB2_HEADER_LENGTH;
+        SMBUtil.writeInt2(17, msg, bodyStart);
+        msg[bodyStart + 2] = (byte) dataOffset;
+        SMBUtil.writeInt4(dataLength, msg, bodyStart + 4);
+        for (int i = 0; i < dataLength; i++) {
+            msg[dataOffset + i] = (byte) i;
+        }
+        return msg;
+    }
+
+    @Test
+    @DisplayName("Should only allow direct data reception for plain successful responses")
+    void testGetDirectDataOffset() {
+        byte[] msg = readResponseMessage(0, 80, 100);
+        assertEquals(80, response.getDirectDataOffset(msg, 0, msg.length));
+        // data not extending to the end of the message
+        assertEquals(-1, response.getDirectDataOffset(msg, 0, msg.length + 8));
+        // error status
+        msg = readResponseMessage(NtStatus.NT_STATUS_BUFFER_OVERFLOW, 80, 100);
+        assertEquals(-1, response.getDirectDataOffset(msg, 0, msg.length));
+        // data overlapping the fixed part
+        msg = readResponseMessage(0, 70, 100);
+        assertEquals(-1, response.getDirectDataOffset(msg, 0, msg.length));
+        // output buffer too small
+        msg = readResponseMessage(0, 80, 100);
+        final Smb2ReadResponse small = new Smb2ReadResponse(mockConfig, new byte[150], 60);
+        assertEquals(-1, small.getDirectDataOffset(msg, 0, msg.length));
+    }
+
+    @Test
+    @DisplayName("Should decode from the fixed part when data was received directly")
+    void testDecodeDirect() throws Exception {
+        final byte[] msg = readResponseMessage(0, 80, 100);
+        final int dataOffset = response.getDirectDataOffset(msg, 0, msg.length);
+        System.arraycopy(msg, dataOffset, outputBuffer, outputBufferOffset, 100);
+        final byte[] fixed = Arrays.copyOf(msg, dataOffset);
+
+        response.setDirectDataOffset(dataOffset);
+        response.setReadSize(msg.length);
+        assertEquals(dataOffset, response.decode(fixed, 0));
+        assertEquals(100, response.getDataLength());
+        assertTrue(response.isReceived());
+        assertArrayEquals(Arrays.copyOfRange(msg, dataOffset, msg.length), Arrays.copyOf(outputBuffer, 100));
+    }
+}
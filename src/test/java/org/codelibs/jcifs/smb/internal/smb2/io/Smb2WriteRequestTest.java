@@ -3,6 +3,7 @@ package org.codelibs.jcifs.smb.internal.smb2.io;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -19,6 +20,7 @@ import org.codelibs.jcifs.smb.Configuration;
 import org.codelibs.jcifs.smb.internal.smb2.RequestWithFileId;
 import org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2Request;
 import org.codelibs.jcifs.smb.internal.smb2.Smb2Constants;
+import org.codelibs.jcifs.smb.internal.smb2.Smb2SigningDigest;
 import org.codelibs.jcifs.smb.internal.util.SMBUtil;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -527,6 +529,57 @@ class Smb2WriteRequestTest {
         }
     }
 
+    @Nested
+    @DisplayName("Separate Data Tests")
+    class SeparateDataTests {
+
+        @Test
+        @DisplayName("Should encode only the fixed part when sending data separately")
+        void testEncodeWithoutData() {
+            byte[] data = new byte[1024];
+            new Random(1).nextBytes(data);
+            request.setData(data, 0, data.length);
+
+            byte[] full = new byte[Smb2WriteRequest.OVERHEAD + data.length];
+            int n = request.encode(full, 0);
+            assertEquals(full.length, n);
+
+            byte[] fixed = new byte[Smb2WriteRequest.OVERHEAD];
+            assertEquals(Smb2WriteRequest.OVERHEAD, request.encodeWithoutData(fixed, 0));
+            // size is restored for the regular path
+            assertEquals(full.length, request.size());
+            assertArrayEquals(Arrays.copyOf(full, Smb2WriteRequest.OVERHEAD), fixed);
+        }
+
+        @Test
+        @DisplayName("Should compute the same signature over the separate data")
+        void testSignatureCoversData() throws Exception {
+            byte[] key = new byte[16];
+            Arrays.fill(key, (byte) 0x11);
+            byte[] data = new byte[4096];
+            new Random(2).nextBytes(data);
+            request.setData(data, 0, data.length);
+            request.setDigest(new Smb2SigningDigest(key, Smb2Constants.SMB2_DIALECT_0202, null));
+
+            byte[] full = new byte[Smb2WriteRequest.OVERHEAD + data.length];
+            request.encode(full, 0);
+            byte[] fixed = new byte[Smb2WriteRequest.OVERHEAD];
+            request.encodeWithoutData(fixed, 0);
+
+            assertArrayEquals(Arrays.copyOfRange(full, 48, 64), Arrays.copyOfRange(fixed, 48, 64));
+            assertFalse(new Smb2SigningDigest(key, Smb2Constants.SMB2_DIALECT_0202, null).verify(fixed, 0, fixed.length, data, 0,
+                    data.length));
+        }
+
+        @Test
+        @DisplayName("Should reject separate data for compound requests")
+        void testCompoundRejected() {
+            request.setData(new byte[16], 0, 16);
+            request.chain(new Smb2WriteRequest(mockConfig, testFileId));
+            assertThrows(IllegalStateException.class, () -> request.encodeWithoutData(new byte[1024], 0));
+        }
+    }
+
     @Nested
     @DisplayName("Edge Case Tests")
     class EdgeCaseTests {
@@ -0,0 +1,77 @@
+package org.codelibs.jcifs.smb.internal.smb2.ioctl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.net.InetAddress;
+import java.util.List;
+
+import org.codelibs.jcifs.smb.Configuration;
+import org.codelibs.jcifs.smb.internal.SMBProtocolDecodingException;
+import org.codelibs.jcifs.smb.internal.util.SMBUtil;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class NetworkInterfaceInfoResponseTest {
+
+    private static void writeEntry(final byte[] buf, final int off, final int next, final int index, final int cap, final long speed,
+            final int family, final byte[] addr) {
+        SMBUtil.writeInt4(next, buf, off);
+        SMBUtil.writeInt4(index, buf, off + 4);
+        SMBUtil.writeInt4(cap, buf, off + 8);
+        SMBUtil.writeInt8(speed, buf, off + 16);
+        SMBUtil.writeInt2(family, buf, off + 24);
+        if (family == 0x2) {
+            System.arraycopy(addr, 0, buf, off + 28, 4);
+        } else if (family == 0x17) {
+            System.arraycopy(addr, 0, buf, off + 32, 16);
+        }
+    }
+
+    @Test
+    @DisplayName("IPv4 and IPv6 entries are parsed following the Next offsets")
+    void parseEntries() throws Exception {
+        final byte[] buf = new byte[3 * NetworkInterfaceInfo.SIZE];
+        final byte[] v4 = { 10, 0, 0, 1 };
+        final byte[] v6 = InetAddress.getByName("2001:db8::1").getAddress();
+        writeEntry(buf, 0, NetworkInterfaceInfo.SIZE, 3, NetworkInterfaceInfo.NETWORK_INTERFACE_CAP_RSS, 10_000_000_000L, 0x2, v4);
+        writeEntry(buf, NetworkInterfaceInfo.SIZE, NetworkInterfaceInfo.SIZE, 3, 0, 10_000_000_000L, 0x17, v6);
+        writeEntry(buf, 2 * NetworkInterfaceInfo.SIZE, 0, 7, NetworkInterfaceInfo.NETWORK_INTERFACE_CAP_RDMA, 1_000_000_000L, 0x99, null);
+
+        final NetworkInterfaceInfoResponse resp = new NetworkInterfaceInfoResponse();
+        assertEquals(buf.length, resp.decode(buf, 0, buf.length));
+        final List<NetworkInterfaceInfo> ifs = resp.getInterfaces();
+        assertEquals(3, ifs.size());
+
+        assertEquals(3, ifs.get(0).getInterfaceIndex());
+        assertTrue(ifs.get(0).isRssCapable());
+        assertFalse(ifs.get(0).isRdmaCapable());
+        assertEquals(10_000_000_000L, ifs.get(0).getLinkSpeed());
+        assertEquals(InetAddress.getByAddress(v4), ifs.get(0).getAddress());
+
+        assertEquals(InetAddress.getByAddress(v6), ifs.get(1).getAddress());
+
+        assertTrue(ifs.get(2).isRdmaCapable());
+        assertNull(ifs.get(2).getAddress());
+    }
+
+    @Test
+    @DisplayName("Short entries are rejected")
+    void truncated() {
+        final byte[] buf = new byte[NetworkInterfaceInfo.SIZE + 10];
+        writeEntry(buf, 0, NetworkInterfaceInfo.SIZE, 1, 0, 0, 0x2, new byte[4]);
+        assertThrows(SMBProtocolDecodingException.class, () -> new NetworkInterfaceInfoResponse().decode(buf, 0, buf.length));
+    }
+
+    @Test
+    @DisplayName("IOCTL response creates the interface list decodable")
+    void ioctlResponseDecodable() {
+        final Smb2IoctlResponse resp =
+                new Smb2IoctlResponse(mock(Configuration.class), null, Smb2IoctlRequest.FSCTL_QUERY_NETWORK_INTERFACE_INFO);
+        assertTrue(resp.createOutputDecodable() instanceof NetworkInterfaceInfoResponse);
+    }
+}
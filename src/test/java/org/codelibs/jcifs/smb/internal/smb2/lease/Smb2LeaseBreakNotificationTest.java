@@ -0,0 +1,74 @@
+package org.codelibs.jcifs.smb.internal.smb2.lease;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.lang.reflect.Method;
+
+import org.codelibs.jcifs.smb.Configuration;
+import org.codelibs.jcifs.smb.internal.SMBProtocolDecodingException;
+import org.codelibs.jcifs.smb.internal.smb2.ServerMessageBlock2;
+import org.codelibs.jcifs.smb.internal.util.SMBUtil;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class Smb2LeaseBreakNotificationTest {
+
+    private final Configuration config = mock(Configuration.class);
+
+    private static int invoke(final ServerMessageBlock2 msg, final String name, final byte[] buf, final int idx) throws Exception {
+        final Method m = msg.getClass().getDeclaredMethod(name, byte[].class, int.class);
+        m.setAccessible(true);
+        try {
+            return (Integer) m.invoke(msg, buf, idx);
+        } catch (final java.lang.reflect.InvocationTargetException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    @Test
+    @DisplayName("Lease break notification fields are parsed")
+    void parse() throws Exception {
+        final Smb2LeaseKey key = new Smb2LeaseKey();
+        final byte[] buf = new byte[Smb2LeaseBreakNotification.STRUCTURE_SIZE];
+        SMBUtil.writeInt2(Smb2LeaseBreakNotification.STRUCTURE_SIZE, buf, 0);
+        SMBUtil.writeInt2(3, buf, 2);
+        SMBUtil.writeInt4(Smb2LeaseBreakNotification.SMB2_NOTIFY_BREAK_LEASE_FLAG_ACK_REQUIRED, buf, 4);
+        key.encode(buf, 8);
+        SMBUtil.writeInt4(Smb2LeaseState.SMB2_LEASE_READ_HANDLE, buf, 24);
+        SMBUtil.writeInt4(Smb2LeaseState.SMB2_LEASE_READ_CACHING, buf, 28);
+
+        final Smb2LeaseBreakNotification n = new Smb2LeaseBreakNotification(this.config);
+        assertEquals(Smb2LeaseBreakNotification.STRUCTURE_SIZE, invoke(n, "readBytesWireFormat", buf, 0));
+        assertEquals(3, n.getNewEpoch());
+        assertTrue(n.isAckRequired());
+        assertEquals(key, n.getLeaseKey());
+        assertEquals(Smb2LeaseState.SMB2_LEASE_READ_HANDLE, n.getCurrentLeaseState());
+        assertEquals(Smb2LeaseState.SMB2_LEASE_READ_CACHING, n.getNewLeaseState());
+    }
+
+    @Test
+    @DisplayName("Oplock break structures are rejected")
+    void wrongStructureSize() {
+        final byte[] buf = new byte[Smb2LeaseBreakNotification.STRUCTURE_SIZE];
+        SMBUtil.writeInt2(24, buf, 0);
+        assertThrows(SMBProtocolDecodingException.class,
+                () -> invoke(new Smb2LeaseBreakNotification(this.config), "readBytesWireFormat", buf, 0));
+    }
+
+    @Test
+    @DisplayName("Acknowledgment carries the lease key and the new state")
+    void acknowledgment() throws Exception {
+        final Smb2LeaseKey key = new Smb2LeaseKey();
+        final Smb2LeaseBreakAcknowledgment ack = new Smb2LeaseBreakAcknowledgment(this.config, key, Smb2LeaseState.SMB2_LEASE_READ_CACHING);
+        assertEquals(0x12, ack.getCommand());
+
+        final byte[] buf = new byte[36];
+        assertEquals(36, invoke(ack, "writeBytesWireFormat", buf, 0));
+        assertEquals(36, SMBUtil.readInt2(buf, 0));
+        assertEquals(key, new Smb2LeaseKey(buf, 8));
+        assertEquals(Smb2LeaseState.SMB2_LEASE_READ_CACHING, SMBUtil.readInt4(buf, 24));
+    }
+}
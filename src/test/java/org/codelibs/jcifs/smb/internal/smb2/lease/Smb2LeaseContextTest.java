@@ -0,0 +1,90 @@
+package org.codelibs.jcifs.smb.internal.smb2.lease;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.codelibs.jcifs.smb.internal.SMBProtocolDecodingException;
+import org.codelibs.jcifs.smb.internal.util.SMBUtil;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class Smb2LeaseContextTest {
+
+    @Test
+    @DisplayName("Context name is RqLs")
+    void name() {
+        assertArrayEquals("RqLs".getBytes(), new Smb2LeaseContext().getName());
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = { false, true })
+    @DisplayName("Encoded context decodes to the same values")
+    void roundTrip(final boolean v2) throws Exception {
+        final Smb2LeaseKey key = new Smb2LeaseKey();
+        final Smb2LeaseContext ctx = new Smb2LeaseContext(key, Smb2LeaseState.SMB2_LEASE_READ_HANDLE, v2);
+        ctx.setEpoch(7);
+
+        final byte[] buf = new byte[ctx.size() + 8];
+        assertEquals(v2 ? Smb2LeaseContext.V2_SIZE : Smb2LeaseContext.V1_SIZE, ctx.encode(buf, 4));
+
+        final Smb2LeaseContext dec = new Smb2LeaseContext();
+        assertEquals(ctx.size(), dec.decode(buf, 4, ctx.size()));
+        assertEquals(key, dec.getLeaseKey());
+        assertEquals(Smb2LeaseState.SMB2_LEASE_READ_HANDLE, dec.getLeaseState());
+        assertEquals(v2, dec.isV2());
+        assertEquals(v2 ? 7 : 0, dec.getEpoch());
+        assertNull(dec.getParentLeaseKey());
+    }
+
+    @Test
+    @DisplayName("Parent lease key is only sent in V2 contexts and sets the flag")
+    void parentKey() throws Exception {
+        final Smb2LeaseKey parent = new Smb2LeaseKey();
+        final Smb2LeaseContext ctx = new Smb2LeaseContext(new Smb2LeaseKey(), Smb2LeaseState.SMB2_LEASE_READ_CACHING, true);
+        ctx.setParentLeaseKey(parent);
+        final byte[] buf = new byte[ctx.size()];
+        ctx.encode(buf, 0);
+        assertEquals(Smb2LeaseContext.SMB2_LEASE_FLAG_PARENT_LEASE_KEY_SET, SMBUtil.readInt4(buf, 20));
+
+        final Smb2LeaseContext dec = new Smb2LeaseContext();
+        dec.decode(buf, 0, buf.length);
+        assertEquals(parent, dec.getParentLeaseKey());
+    }
+
+    @Test
+    @DisplayName("Lease state is written after the key")
+    void wireLayout() {
+        final byte[] raw = new byte[Smb2LeaseKey.LENGTH];
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = (byte) i;
+        }
+        final Smb2LeaseContext ctx = new Smb2LeaseContext(new Smb2LeaseKey(raw), Smb2LeaseState.SMB2_LEASE_FULL, false);
+        final byte[] buf = new byte[ctx.size()];
+        ctx.encode(buf, 0);
+        for (int i = 0; i < raw.length; i++) {
+            assertEquals(i, buf[i]);
+        }
+        assertEquals(Smb2LeaseState.SMB2_LEASE_FULL, SMBUtil.readInt4(buf, 16));
+    }
+
+    @Test
+    @DisplayName("Truncated contexts are rejected")
+    void tooShort() {
+        assertThrows(SMBProtocolDecodingException.class, () -> new Smb2LeaseContext().decode(new byte[16], 0, 16));
+    }
+
+    @Test
+    @DisplayName("Lease state helpers")
+    void states() {
+        assertTrue(Smb2LeaseState.canCacheRead(Smb2LeaseState.SMB2_LEASE_READ_HANDLE));
+        assertTrue(Smb2LeaseState.canCacheHandle(Smb2LeaseState.SMB2_LEASE_READ_HANDLE));
+        assertFalse(Smb2LeaseState.canCacheWrite(Smb2LeaseState.SMB2_LEASE_READ_HANDLE));
+        assertFalse(Smb2LeaseState.canCacheRead(Smb2LeaseState.SMB2_LEASE_NONE));
+    }
+}
@@ -0,0 +1,72 @@
+package org.codelibs.jcifs.smb.internal.smb2.nego;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.codelibs.jcifs.smb.Configuration;
+import org.codelibs.jcifs.smb.internal.SMBProtocolDecodingException;
+import org.codelibs.jcifs.smb.internal.util.SMBUtil;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("CompressionNegotiateContext Tests")
+class CompressionNegotiateContextTest {
+
+    @Mock
+    private Configuration mockConfig;
+
+    @Test
+    @DisplayName("Should encode count, padding, flags and algorithms")
+    void testEncode() {
+        CompressionNegotiateContext ctx = new CompressionNegotiateContext(mockConfig,
+                new int[] { CompressionNegotiateContext.COMPRESSION_LZ77, CompressionNegotiateContext.COMPRESSION_PATTERN_V1 },
+                CompressionNegotiateContext.COMPRESSION_FLAG_CHAINED);
+        byte[] buffer = new byte[16];
+
+        assertEquals(12, ctx.encode(buffer, 2));
+        assertEquals(12, ctx.size());
+        assertEquals(2, SMBUtil.readInt2(buffer, 2));
+        assertEquals(0, SMBUtil.readInt2(buffer, 4));
+        assertEquals(CompressionNegotiateContext.COMPRESSION_FLAG_CHAINED, SMBUtil.readInt4(buffer, 6));
+        assertEquals(CompressionNegotiateContext.COMPRESSION_LZ77, SMBUtil.readInt2(buffer, 10));
+        assertEquals(CompressionNegotiateContext.COMPRESSION_PATTERN_V1, SMBUtil.readInt2(buffer, 12));
+        assertEquals(CompressionNegotiateContext.NEGO_CTX_COMPRESSION_TYPE, ctx.getContextType());
+    }
+
+    @Test
+    @DisplayName("Should decode what it encodes")
+    void testRoundTrip() throws Exception {
+        int[] algorithms = { CompressionNegotiateContext.COMPRESSION_PATTERN_V1, CompressionNegotiateContext.COMPRESSION_LZ77 };
+        CompressionNegotiateContext ctx = new CompressionNegotiateContext(mockConfig, algorithms, 0);
+        byte[] buffer = new byte[ctx.size()];
+        ctx.encode(buffer, 0);
+
+        CompressionNegotiateContext decoded = new CompressionNegotiateContext();
+        assertEquals(buffer.length, decoded.decode(buffer, 0, buffer.length));
+        assertArrayEquals(algorithms, decoded.getAlgorithms());
+        assertEquals(0, decoded.getFlags());
+    }
+
+    @Test
+    @DisplayName("Should reject a context shorter than its algorithm count")
+    void testDecodeTruncated() {
+        byte[] buffer = new byte[10];
+        SMBUtil.writeInt2(2, buffer, 0);
+
+        assertThrows(SMBProtocolDecodingException.class, () -> new CompressionNegotiateContext().decode(buffer, 0, buffer.length));
+        assertThrows(SMBProtocolDecodingException.class, () -> new CompressionNegotiateContext().decode(buffer, 0, 4));
+    }
+
+    @Test
+    @DisplayName("Negotiate response should create compression contexts")
+    void testCreateContext() {
+        assertInstanceOf(CompressionNegotiateContext.class,
+                Smb2NegotiateResponse.createContext(CompressionNegotiateContext.NEGO_CTX_COMPRESSION_TYPE));
+    }
+}
@@ -0,0 +1,64 @@
+package org.codelibs.jcifs.smb.internal.smb2.nego;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.codelibs.jcifs.smb.Configuration;
+import org.codelibs.jcifs.smb.internal.SMBProtocolDecodingException;
+import org.codelibs.jcifs.smb.internal.util.SMBUtil;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("SigningNegotiateContext Tests")
+class SigningNegotiateContextTest {
+
+    @Mock
+    private Configuration mockConfig;
+
+    @Test
+    @DisplayName("Should encode the algorithm count followed by the algorithms")
+    void testEncode() {
+        SigningNegotiateContext ctx = new SigningNegotiateContext(mockConfig,
+                new int[] { SigningNegotiateContext.SIGNING_AES_GMAC, SigningNegotiateContext.SIGNING_AES_CMAC });
+        byte[] buffer = new byte[16];
+
+        assertEquals(6, ctx.encode(buffer, 2));
+        assertEquals(6, ctx.size());
+        assertEquals(2, SMBUtil.readInt2(buffer, 2));
+        assertEquals(SigningNegotiateContext.SIGNING_AES_GMAC, SMBUtil.readInt2(buffer, 4));
+        assertEquals(SigningNegotiateContext.SIGNING_AES_CMAC, SMBUtil.readInt2(buffer, 6));
+        assertEquals(SigningNegotiateContext.NEGO_CTX_SIGNING_TYPE, ctx.getContextType());
+    }
+
+    @Test
+    @DisplayName("Should decode what it encodes")
+    void testRoundTrip() throws SMBProtocolDecodingException {
+        int[] algorithms = { SigningNegotiateContext.SIGNING_AES_GMAC };
+        byte[] buffer = new byte[8];
+        int len = new SigningNegotiateContext(mockConfig, algorithms).encode(buffer, 0);
+
+        SigningNegotiateContext decoded = new SigningNegotiateContext();
+        assertEquals(len, decoded.decode(buffer, 0, len));
+        assertArrayEquals(algorithms, decoded.getAlgorithms());
+    }
+
+    @Test
+    @DisplayName("Should reject a count exceeding the context data")
+    void testDecodeTruncated() {
+        byte[] buffer = new byte[8];
+        SMBUtil.writeInt2(3, buffer, 0);
+        assertThrows(SMBProtocolDecodingException.class, () -> new SigningNegotiateContext().decode(buffer, 0, 4));
+    }
+
+    @Test
+    @DisplayName("Negotiate response should create signing contexts")
+    void testCreateContext() {
+        assertInstanceOf(SigningNegotiateContext.class, Smb2NegotiateResponse.createContext(SigningNegotiateContext.NEGO_CTX_SIGNING_TYPE));
+    }
+}
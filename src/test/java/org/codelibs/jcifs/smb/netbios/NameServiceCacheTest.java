@@ -0,0 +1,108 @@
+package org.codelibs.jcifs.smb.netbios;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class NameServiceCacheTest {
+
+    @Test
+    @DisplayName("Entries are returned until they expire")
+    void expiration() {
+        final NameServiceCache<String, String> cache = new NameServiceCache<>(0, 0);
+        final long now = System.currentTimeMillis();
+        cache.put("a", "A", now + 60000);
+        cache.put("b", "B", now - 1);
+        cache.put("c", "C", -1);
+
+        assertEquals("A", cache.get("a").value);
+        assertNull(cache.get("b"));
+        assertEquals("C", cache.get("c").value);
+        assertNull(cache.get("d"));
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        // expired entry was dropped on access
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    @DisplayName("Size is bounded and least recently used entries are evicted")
+    void eviction() {
+        final int max = NameServiceCache.STRIPES * 4;
+        final NameServiceCache<Integer, Integer> cache = new NameServiceCache<>(max, 0);
+        for (int i = 0; i < max * 4; i++) {
+            cache.put(i, i, -1);
+            // keep the first entry recently used
+            assertNotNull(cache.get(0));
+        }
+        assertTrue(cache.size() <= max, "size " + cache.size());
+        assertEquals(max * 4 - cache.size(), cache.getEvictions());
+        assertNotNull(cache.get(0));
+    }
+
+    @Test
+    @DisplayName("Replacing an entry updates value and expiration")
+    void replace() {
+        final NameServiceCache<String, String> cache = new NameServiceCache<>(10, 0);
+        cache.put("a", "A", System.currentTimeMillis() - 1);
+        cache.put("a", "B", -1);
+        assertEquals("B", cache.get("a").value);
+        cache.remove("a");
+        assertNull(cache.peek("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    @DisplayName("A refresh is requested once when an entry is close to expiring")
+    void refreshAhead() throws Exception {
+        final NameServiceCache<String, String> cache = new NameServiceCache<>(0, 10000);
+        final long now = System.currentTimeMillis();
+        cache.put("far", "F", now + 60000);
+        cache.put("near", "N", now + 5000);
+        cache.put("forever", "E", -1);
+
+        assertFalse(cache.shouldRefresh(cache.get("far")));
+        assertFalse(cache.shouldRefresh(cache.get("forever")));
+
+        final NameServiceCache.Entry<String> near = cache.get("near");
+        final ExecutorService exec = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Boolean>> res = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                res.add(exec.submit(() -> cache.shouldRefresh(near)));
+            }
+            int granted = 0;
+            for (final Future<Boolean> f : res) {
+                if (f.get()) {
+                    granted++;
+                }
+            }
+            assertEquals(1, granted);
+        } finally {
+            exec.shutdown();
+        }
+
+        // a replaced entry may be refreshed again
+        cache.put("near", "N2", now + 5000);
+        assertTrue(cache.shouldRefresh(cache.get("near")));
+    }
+
+    @Test
+    @DisplayName("Refresh-ahead can be disabled")
+    void refreshDisabled() {
+        final NameServiceCache<String, String> cache = new NameServiceCache<>(0, 0);
+        cache.put("near", "N", System.currentTimeMillis() + 10);
+        assertFalse(cache.shouldRefresh(cache.get("near")));
+    }
+}
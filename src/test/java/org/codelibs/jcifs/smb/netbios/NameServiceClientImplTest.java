@@ -3,15 +3,32 @@ package org.codelibs.jcifs.smb.netbios;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.codelibs.jcifs.smb.Address;
 import org.codelibs.jcifs.smb.CIFSContext;
@@ -246,4 +263,154 @@ class NameServiceClientImplTest {
         assertNotNull(client, "Client should be created successfully");
         verify(mockContext, atLeastOnce()).getConfig();
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Should remember failed host lookups for the negative cache period")
+    void testNegativeHostCache() {
+        when(mockConfig.getResolveOrder()).thenReturn(Arrays.asList(ResolverType.RESOLVER_DNS));
+        when(mockConfig.getNetbiosNegativeCachePolicy()).thenReturn(30);
+        NameServiceClientImpl client = new NameServiceClientImpl(mockContext);
+
+        // all digit names are rejected by the DNS resolver without a query
+        assertThrows(UnknownHostException.class, () -> client.getByName("12345"));
+        assertEquals(0, client.getCacheNegativeHits());
+        assertThrows(UnknownHostException.class, () -> client.getByName("12345"));
+        assertEquals(1, client.getCacheNegativeHits());
+        assertEquals(1, client.getCacheSize() - nameServiceClient.getCacheSize());
+
+        // lookups allowing domains or workgroups are cached separately
+        assertThrows(UnknownHostException.class, () -> client.getByName("12345", true));
+        assertEquals(1, client.getCacheNegativeHits());
+    }
+
+    @Test
+    @DisplayName("Should not cache failed host lookups when the negative cache is disabled")
+    void testNegativeHostCacheDisabled() {
+        when(mockConfig.getResolveOrder()).thenReturn(Arrays.asList(ResolverType.RESOLVER_DNS));
+        when(mockConfig.getNetbiosNegativeCachePolicy()).thenReturn(0);
+        NameServiceClientImpl client = new NameServiceClientImpl(mockContext);
+
+        assertThrows(UnknownHostException.class, () -> client.getByName("12345"));
+        assertThrows(UnknownHostException.class, () -> client.getByName("12345"));
+        assertEquals(0, client.getCacheNegativeHits());
+    }
+
+    @Test
+    @DisplayName("Should return the fastest answer when resolving in parallel")
+    void testParallelResolve() throws UnknownHostException {
+        when(mockConfig.getResolveOrder()).thenReturn(Arrays.asList(ResolverType.RESOLVER_BCAST, ResolverType.RESOLVER_DNS));
+        when(mockConfig.isResolveParallel()).thenReturn(true);
+        NameServiceClientImpl client = new NameServiceClientImpl(mockContext);
+
+        // the broadcast query would only give up after its retries, DNS answers right away
+        long start = System.currentTimeMillis();
+        UniAddress addr = client.getByName("localhost");
+        assertTrue(System.currentTimeMillis() - start < 3000, "Should not wait for the broadcast query");
+        assertTrue(((InetAddress) addr.getAddress()).isLoopbackAddress());
+    }
+
+    @Test
+    @DisplayName("Should fail when no resolver succeeds in parallel")
+    void testParallelResolveFailure() {
+        when(mockConfig.getResolveOrder()).thenReturn(Arrays.asList(ResolverType.RESOLVER_LMHOSTS, ResolverType.RESOLVER_DNS));
+        when(mockConfig.isResolveParallel()).thenReturn(true);
+        when(mockConfig.getResolveTimeout()).thenReturn(5000);
+        NameServiceClientImpl client = new NameServiceClientImpl(mockContext);
+
+        assertThrows(UnknownHostException.class, () -> client.getByName("12345"));
+    }
+
+    @Test
+    @DisplayName("Should refresh an expiring name only once while a refresh is in flight")
+    void testRefreshAheadDeduplicated() throws Exception {
+        when(mockConfig.getNetbiosCacheRefreshAhead()).thenReturn(60);
+        NameServiceClientImpl client = spy(new NameServiceClientImpl(mockContext));
+        Name name = new Name(mockConfig, "REFRESHME", 0x20, null);
+        NbtAddress addr = new NbtAddress(name, 0x7f000001, false, NbtAddress.B_NODE);
+
+        CountDownLatch refreshing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(inv -> {
+            refreshing.countDown();
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            return addr;
+        }).when(client).getByName(any(Name.class), nullable(InetAddress.class));
+
+        try {
+            // every hit on a fresh entry close to its expiration asks for a refresh
+            client.cacheAddress(name, addr, System.currentTimeMillis() + 1000);
+            assertEquals(addr, client.doNameQuery(name, null));
+            assertTrue(refreshing.await(5, TimeUnit.SECONDS));
+            client.cacheAddress(name, addr, System.currentTimeMillis() + 1000);
+            assertEquals(addr, client.doNameQuery(name, null));
+        } finally {
+            release.countDown();
+        }
+        verify(client, timeout(5000).times(1)).getByName(any(Name.class), nullable(InetAddress.class));
+    }
+
+    @Test
+    @DisplayName("Should not cache a failure for NetBIOS queries cancelled because DNS answered first")
+    void testCancelledNameQueryNotCached() throws Exception {
+        when(mockConfig.getNetbiosNegativeCachePolicy()).thenReturn(30);
+        NameServiceClientImpl client = spy(new NameServiceClientImpl(mockContext));
+        int initial = client.getCacheSize();
+
+        // the query blocks until interrupted and then fails like an interrupted NetBIOS send
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean block = new AtomicBoolean(true);
+        doAnswer(inv -> {
+            if (block.get()) {
+                started.countDown();
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            throw new UnknownHostException("SLOWHOST");
+        }).when(client).getByName(any(Name.class), nullable(InetAddress.class));
+
+        // cancelled the same way parallel resolution cancels the losing resolvers
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<NbtAddress> query = executor.submit(() -> client.getNbtByName("SLOWHOST"));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            query.cancel(true);
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        }
+        assertEquals(initial, client.getCacheSize(), "Cancelled query must not be cached as a failure");
+
+        // a query that really failed is still cached
+        block.set(false);
+        assertThrows(UnknownHostException.class, () -> client.getNbtByName("SLOWHOST"));
+        assertEquals(initial + 1, client.getCacheSize());
+    }
+
+    @Test
+    @DisplayName("Should give up on a resolver that exceeds the per-resolver timeout")
+    void testParallelResolverTimeout() throws Exception {
+        when(mockConfig.getResolveOrder()).thenReturn(Arrays.asList(ResolverType.RESOLVER_WINS, ResolverType.RESOLVER_DNS));
+        when(mockConfig.isResolveParallel()).thenReturn(true);
+        when(mockConfig.getResolverTimeout()).thenReturn(200);
+        NameServiceClientImpl client = spy(new NameServiceClientImpl(mockContext));
+
+        CountDownLatch interrupted = new CountDownLatch(1);
+        doAnswer(inv -> {
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return null;
+        }).when(client).resolve(eq(ResolverType.RESOLVER_WINS), anyString(), anyBoolean());
+        doReturn(null).when(client).resolve(eq(ResolverType.RESOLVER_DNS), anyString(), anyBoolean());
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            assertThrows(UnknownHostException.class, () -> client.getByName("HANGS"));
+        });
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS), "The slow resolver should have been cancelled");
+    }
+}
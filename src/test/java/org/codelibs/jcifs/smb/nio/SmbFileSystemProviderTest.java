@@ -0,0 +1,133 @@
+package org.codelibs.jcifs.smb.nio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.net.URI;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedFileSystemException;
+import java.nio.file.CopyOption;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+import org.codelibs.jcifs.smb.CIFSContext;
+import org.codelibs.jcifs.smb.SmbConstants;
+import org.codelibs.jcifs.smb.impl.NtStatus;
+import org.codelibs.jcifs.smb.impl.SmbException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class SmbFileSystemProviderTest {
+
+    @Test
+    @DisplayName("Provider is registered for the smb scheme")
+    void serviceRegistration() {
+        boolean found = false;
+        for (final java.nio.file.spi.FileSystemProvider p : ServiceLoader.load(java.nio.file.spi.FileSystemProvider.class)) {
+            found |= p instanceof SmbFileSystemProvider && "smb".equals(p.getScheme());
+        }
+        assertEquals(true, found);
+    }
+
+    @Test
+    @DisplayName("File systems are keyed by authority")
+    void fileSystems() throws Exception {
+        final SmbFileSystemProvider provider = new SmbFileSystemProvider();
+        final CIFSContext ctx = Mockito.mock(CIFSContext.class);
+        final URI uri = URI.create("smb://user@server/share/");
+        assertThrows(FileSystemNotFoundException.class, () -> provider.getFileSystem(uri));
+
+        final SmbFileSystem fs = provider.newFileSystem(uri, Map.of(SmbFileSystemProvider.CONTEXT, ctx));
+        assertSame(ctx, fs.getContext());
+        assertSame(fs, provider.getFileSystem(URI.create("smb://user@server/")));
+        assertThrows(FileSystemAlreadyExistsException.class, () -> provider.newFileSystem(uri, Map.of()));
+
+        final Path p = provider.getPath(URI.create("smb://user@server/share/dir/file"));
+        assertSame(fs, p.getFileSystem());
+        assertEquals("/share/dir/file", p.toString());
+
+        fs.close();
+        assertThrows(FileSystemNotFoundException.class, () -> provider.getFileSystem(uri));
+    }
+
+    @Test
+    @DisplayName("Operations on a closed file system fail")
+    void closedFileSystem() throws Exception {
+        final SmbFileSystemProvider provider = new SmbFileSystemProvider();
+        final SmbFileSystem fs = provider.newFileSystem(URI.create("smb://server/"), Map.of(SmbFileSystemProvider.CONTEXT,
+                Mockito.mock(CIFSContext.class)));
+        final Path source = fs.getPath("/shareA/x");
+        final Path target = fs.getPath("/shareB/x");
+        fs.close();
+
+        assertFalse(fs.isOpen());
+        assertThrows(ClosedFileSystemException.class, () -> fs.getPath("/share"));
+        assertThrows(ClosedFileSystemException.class, () -> provider.readAttributes(source, "*"));
+        assertThrows(ClosedFileSystemException.class, () -> provider.newByteChannel(source, Set.of()));
+        assertThrows(ClosedFileSystemException.class, () -> provider.delete(source));
+        assertThrows(ClosedFileSystemException.class, () -> provider.move(source, target, StandardCopyOption.ATOMIC_MOVE));
+        assertThrows(ClosedFileSystemException.class, () -> provider.isSameFile(source, source));
+        assertThrows(ClosedFileSystemException.class, () -> provider.getFileAttributeView(source, BasicFileAttributeView.class));
+    }
+
+    @Test
+    @DisplayName("Open options map onto SMB open flags")
+    void openFlags() {
+        assertEquals(SmbConstants.O_RDONLY, SmbFileSystemProvider.openFlags(Set.of()));
+        assertEquals(SmbConstants.O_WRONLY | SmbConstants.O_CREAT | SmbConstants.O_TRUNC, SmbFileSystemProvider
+                .openFlags(EnumSet.of(StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)));
+        assertEquals(SmbConstants.O_WRONLY | SmbConstants.O_CREAT | SmbConstants.O_EXCL,
+                SmbFileSystemProvider.openFlags(EnumSet.of(StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.TRUNCATE_EXISTING)));
+        assertEquals(SmbConstants.O_WRONLY | SmbConstants.O_APPEND, SmbFileSystemProvider.openFlags(EnumSet.of(StandardOpenOption.APPEND)));
+        assertEquals(SmbConstants.O_RDWR, SmbFileSystemProvider.openFlags(EnumSet.of(StandardOpenOption.READ, StandardOpenOption.WRITE)));
+        assertThrows(IllegalArgumentException.class,
+                () -> SmbFileSystemProvider.openFlags(EnumSet.of(StandardOpenOption.READ, StandardOpenOption.APPEND)));
+        assertThrows(UnsupportedOperationException.class,
+                () -> SmbFileSystemProvider.openFlags(EnumSet.of(StandardOpenOption.DELETE_ON_CLOSE)));
+    }
+
+    @Test
+    @DisplayName("SMB errors are translated to file system exceptions")
+    void translate() {
+        final Path p = new SmbFileSystem(new SmbFileSystemProvider(), "server", null).getPath("/share/f");
+        assertInstanceOf(NoSuchFileException.class,
+                SmbFileSystemProvider.translate(new SmbException(NtStatus.NT_STATUS_OBJECT_NAME_NOT_FOUND, false), p));
+        assertInstanceOf(FileAlreadyExistsException.class,
+                SmbFileSystemProvider.translate(new SmbException(NtStatus.NT_STATUS_OBJECT_NAME_COLLISION, false), p));
+        final SmbException other = new SmbException(NtStatus.NT_STATUS_UNSUCCESSFUL, false);
+        assertSame(other, SmbFileSystemProvider.translate(other, p));
+    }
+
+    @Test
+    @DisplayName("Moves between shares are copied and deleted instead of renamed")
+    void moveAcrossShares() throws Exception {
+        final SmbFileSystemProvider provider = Mockito.spy(new SmbFileSystemProvider());
+        final SmbFileSystem fs = new SmbFileSystem(provider, "server", null);
+        final Path source = fs.getPath("/shareA/x");
+        final Path target = fs.getPath("/shareB/x");
+        Mockito.doNothing().when(provider).copy(Mockito.any(), Mockito.any(), Mockito.any(CopyOption[].class));
+        Mockito.doNothing().when(provider).delete(Mockito.any());
+
+        assertThrows(AtomicMoveNotSupportedException.class, () -> provider.move(source, target, StandardCopyOption.ATOMIC_MOVE));
+        Mockito.verify(provider, Mockito.never()).copy(Mockito.any(), Mockito.any(), Mockito.any(CopyOption[].class));
+
+        provider.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        Mockito.verify(provider).copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        Mockito.verify(provider).delete(source);
+    }
+}
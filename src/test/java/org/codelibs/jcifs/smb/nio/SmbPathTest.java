@@ -0,0 +1,81 @@
+package org.codelibs.jcifs.smb.nio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class SmbPathTest {
+
+    private SmbFileSystem fs;
+
+    @BeforeEach
+    void setUp() {
+        this.fs = new SmbFileSystem(new SmbFileSystemProvider(), "server", null);
+    }
+
+    @Test
+    @DisplayName("Separators are normalized and names are split")
+    void names() {
+        final Path p = this.fs.getPath("\\share//dir/", "file.txt");
+        assertEquals("/share/dir/file.txt", p.toString());
+        assertTrue(p.isAbsolute());
+        assertEquals(3, p.getNameCount());
+        assertEquals("dir", p.getName(1).toString());
+        assertEquals("file.txt", p.getFileName().toString());
+        assertEquals("/share/dir", p.getParent().toString());
+        assertEquals("/", p.getRoot().toString());
+        assertEquals("dir/file.txt", p.subpath(1, 3).toString());
+        assertNull(this.fs.getPath("/").getFileName());
+        assertNull(this.fs.getPath("a").getParent());
+    }
+
+    @Test
+    @DisplayName("resolve, relativize and normalize")
+    void resolveRelativize() {
+        final Path base = this.fs.getPath("/share/a/b");
+        assertEquals("/share/a/b/c", base.resolve("c").toString());
+        assertEquals("/other", base.resolve("/other").toString());
+        assertEquals("/share/a/c", base.resolve("../c").normalize().toString());
+        assertEquals("/x", this.fs.getPath("/../../x").normalize().toString());
+        assertEquals("../b/c", this.fs.getPath("/share/a/x").relativize(this.fs.getPath("/share/a/b/c")).toString());
+        assertEquals("/share/a/b/c", base.resolveSibling("b").resolve("c").toString());
+    }
+
+    @Test
+    @DisplayName("startsWith and endsWith compare whole names")
+    void startsEndsWith() {
+        final Path p = this.fs.getPath("/share/dir/file");
+        assertTrue(p.startsWith("/share"));
+        assertFalse(p.startsWith("/sha"));
+        assertFalse(p.startsWith("share"));
+        assertTrue(p.endsWith("dir/file"));
+        assertFalse(p.endsWith("ir/file"));
+    }
+
+    @Test
+    @DisplayName("URIs carry the authority, shares are directories")
+    void toUri() {
+        assertEquals(URI.create("smb://server/share/dir/f%20x"), this.fs.getPath("/share/dir/f x").toUri());
+        assertEquals(URI.create("smb://server/share/"), this.fs.getPath("/share").toUri());
+        assertEquals(URI.create("smb://server/share/rel"), this.fs.getPath("share/rel").toUri());
+    }
+
+    @Test
+    @DisplayName("Glob and regex path matchers")
+    void matchers() {
+        assertTrue(this.fs.getPathMatcher("glob:*.txt").matches(this.fs.getPath("a.txt")));
+        assertFalse(this.fs.getPathMatcher("glob:*.txt").matches(this.fs.getPath("d/a.txt")));
+        assertTrue(this.fs.getPathMatcher("glob:**/*.{txt,log}").matches(this.fs.getPath("/s/d/a.log")));
+        assertTrue(this.fs.getPathMatcher("glob:file?.[!x]").matches(this.fs.getPath("file1.a")));
+        assertFalse(this.fs.getPathMatcher("glob:file?.[!x]").matches(this.fs.getPath("file1.x")));
+        assertTrue(this.fs.getPathMatcher("regex:.*\\d").matches(this.fs.getPath("a1")));
+    }
+}
@@ -0,0 +1,107 @@
+package org.codelibs.jcifs.smb.util.transport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class ResponseSignalTest {
+
+    @Test
+    @DisplayName("Returns immediately if the condition holds")
+    void conditionHolds() throws InterruptedException {
+        final ResponseSignal signal = new ResponseSignal();
+        final long start = System.nanoTime();
+        signal.await(0, () -> true);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    @DisplayName("Times out without a signal")
+    void timeout() throws InterruptedException {
+        final ResponseSignal signal = new ResponseSignal();
+        final long start = System.nanoTime();
+        signal.await(50, () -> false);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    @DisplayName("All waiting threads are woken up by a signal")
+    void wakesAllWaiters() throws InterruptedException {
+        final ResponseSignal signal = new ResponseSignal();
+        final AtomicBoolean done = new AtomicBoolean();
+        final CountDownLatch started = new CountDownLatch(3);
+        final CountDownLatch finished = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            final Thread t = new Thread(() -> {
+                started.countDown();
+                try {
+                    signal.await(0, done::get);
+                    finished.countDown();
+                } catch (final InterruptedException e) {
+                    // ignore
+                }
+            });
+            t.setDaemon(true);
+            t.start();
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertFalse(finished.await(0, TimeUnit.MILLISECONDS));
+
+        done.set(true);
+        signal.signal();
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("A signal racing with the condition check is not lost")
+    void noLostSignal() throws InterruptedException {
+        for (int i = 0; i < 1000; i++) {
+            final ResponseSignal signal = new ResponseSignal();
+            final AtomicBoolean done = new AtomicBoolean();
+            final Thread t = new Thread(() -> {
+                done.set(true);
+                signal.signal();
+            });
+            t.start();
+            signal.await(5000, done::get);
+            assertTrue(done.get());
+            t.join();
+        }
+    }
+
+    @Test
+    @DisplayName("Interrupting a waiting thread ends the wait")
+    void interrupted() {
+        final ResponseSignal signal = new ResponseSignal();
+        Thread.currentThread().interrupt();
+        assertThrows(InterruptedException.class, () -> signal.await(0, () -> false));
+    }
+
+    @Test
+    @DisplayName("The listener runs on every signal, failures do not propagate")
+    void listener() {
+        final ResponseSignal signal = new ResponseSignal();
+        final AtomicInteger calls = new AtomicInteger();
+        signal.setListener(() -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException();
+        });
+        signal.signal();
+        signal.signal();
+        assertEquals(2, calls.get());
+
+        signal.setListener(null);
+        signal.signal();
+        assertEquals(2, calls.get());
+    }
+}
@@ -3,6 +3,7 @@ package org.codelibs.jcifs.smb.util.transport;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -251,6 +252,23 @@ class TransportTest {
             assertThrows(TransportException.class, () -> transport.connect(1000));
         }
 
+        @Test
+        @DisplayName("connect should run the transport on the thread created by newThread")
+        void shouldUseCreatedThread() throws TransportException {
+            final Thread[] created = new Thread[1];
+            final TestableTransport t = new TestableTransport() {
+                @Override
+                protected Thread newThread(final Runnable task, final String threadName) {
+                    created[0] = super.newThread(task, threadName);
+                    return created[0];
+                }
+            };
+            assertTrue(t.connect(1000));
+            assertNotNull(created[0]);
+            assertTrue(created[0].isDaemon());
+            assertEquals(t.toString(), created[0].getName());
+        }
+
         @Test
         @DisplayName("disconnect should succeed when connected")
         void shouldDisconnectWhenConnected() throws IOException {